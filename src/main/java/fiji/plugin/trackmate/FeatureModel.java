@@ -388,23 +388,34 @@ public class FeatureModel
 	 * Note that no checks are made to ensures that the track ID exists in the
 	 * {@link TrackModel}, and that the feature is declared in this
 	 * {@link FeatureModel}.
+	 * <p>
+	 * Track feature values are stored in a concurrent map, which cannot hold
+	 * <code>null</code> values. Passing a <code>null</code> value therefore
+	 * removes the feature value of the track, like
+	 * {@link #removeTrackFeature(Integer, String)} does, and
+	 * {@link #getTrackFeature(Integer, String)} returns <code>null</code>
+	 * afterwards.
 	 *
 	 * @param trackID
 	 *            the ID of the track. It must be an existing track ID.
 	 * @param feature
 	 *            the feature.
 	 * @param value
-	 *            the feature value.
+	 *            the feature value, or <code>null</code> to remove it.
 	 */
 	public synchronized void putTrackFeature( final Integer trackID, final String feature, final Double value )
 	{
 		Map< String, Double > trackFeatureMap = trackFeatureValues.get( trackID );
 		if ( null == trackFeatureMap )
 		{
-			trackFeatureMap = new HashMap<>( trackFeatures.size() );
+			// Concurrent: track analyzers may run and read at the same time.
+			trackFeatureMap = new ConcurrentHashMap<>( trackFeatures.size() );
 			trackFeatureValues.put( trackID, trackFeatureMap );
 		}
-		trackFeatureMap.put( feature, value );
+		if ( null == value )
+			trackFeatureMap.remove( feature );
+		else
+			trackFeatureMap.put( feature, value );
 	}
 
 	/**
@@ -21,14 +21,19 @@
  */
 package fiji.plugin.trackmate;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.SimpleWeightedGraph;
 
+import fiji.plugin.trackmate.features.FeatureColumnCache;
 import fiji.plugin.trackmate.features.FeatureFilter;
 
 /**
@@ -64,6 +69,11 @@ public class Model
 
 	private final TrackModel trackModel;
 
+	/**
+	 * The sorted feature values cache of this model.
+	 */
+	private final FeatureColumnCache featureColumns;
+
 	// SPOTS
 
 	/** The spots managed by this model. */
@@ -83,7 +93,11 @@ public class Model
 
 	private final HashSet< Spot > spotsRemoved = new HashSet< >();
 
-	private final HashSet< Spot > spotsMoved = new HashSet< >();
+	/**
+	 * The spots moved to another frame, with the frame they were in when the
+	 * transaction started.
+	 */
+	private final HashMap< Spot, Integer > spotsMoved = new HashMap< >();
 
 	private final HashSet< Spot > spotsUpdated = new HashSet< >();
 
@@ -128,6 +142,9 @@ public class Model
 	{
 		featureModel = createFeatureModel();
 		trackModel = createTrackModel();
+		// First listener, so that other listeners do not read stale values.
+		featureColumns = new FeatureColumnCache( this );
+		modelChangeListeners.add( featureColumns );
 	}
 
 	/*
@@ -473,6 +490,18 @@ public class Model
 		return featureModel;
 	}
 
+	/**
+	 * Returns the cache of sorted feature values of this model. It is kept up
+	 * to date with the model changes, and is meant to serve the statistics
+	 * (ranges, histograms, thresholds) needed by the GUIs.
+	 *
+	 * @return the feature column cache.
+	 */
+	public FeatureColumnCache getFeatureColumns()
+	{
+		return featureColumns;
+	}
+
 	/*
 	 * MODEL CHANGE METHODS
 	 */
@@ -523,7 +552,8 @@ public class Model
 
 		// Mark for update spot and edges
 		trackModel.edgesModified.addAll( trackModel.edgesOf( spotToMove ) );
-		spotsMoved.add( spotToMove );
+		trackModel.invalidateTrackIndices( spotToMove );
+		spotsMoved.putIfAbsent( spotToMove, fromFrame );
 		return spotToMove;
 	}
 
@@ -601,6 +631,102 @@ public class Model
 		return null;
 	}
 
+	/**
+	 * Removes the specified spots from the collections managed by this model.
+	 * Spots that cannot be found are ignored.
+	 * <p>
+	 * This is equivalent to calling {@link #removeSpot(Spot)} for each spot,
+	 * but the tracks the spots belonged to are split only once, after all the
+	 * spots have been removed. Prefer this method when removing many spots.
+	 * <p>
+	 * For the model update to happen correctly and listeners to be notified
+	 * properly, a call to this method must happen within a transaction, as in:
+	 *
+	 * <pre>
+	 * model.beginUpdate();
+	 * try {
+	 * 	... // model modifications here
+	 * } finally {
+	 * 	model.endUpdate();
+	 * }
+	 * </pre>
+	 *
+	 * @param spotsToRemove
+	 *            the spots to remove.
+	 * @return the number of spots removed.
+	 */
+	public synchronized int removeSpots( final Collection< Spot > spotsToRemove )
+	{
+		final List< Spot > removed = new ArrayList<>( spotsToRemove.size() );
+		for ( final Spot spot : spotsToRemove )
+		{
+			final int fromFrame = spot.getFeature( Spot.FRAME ).intValue();
+			if ( spots.remove( spot, fromFrame ) )
+				removed.add( spot );
+			else if ( DEBUG )
+				System.err.println( "[TrackMateModel] The spot " + spot + " cannot be found in frame " + fromFrame );
+		}
+		spotsRemoved.addAll( removed ); // TRANSACTION
+		if ( DEBUG )
+			System.out.println( "[TrackMateModel] Removing " + removed.size() + " spots." );
+
+		trackModel.removeSpots( removed );
+		return removed.size();
+	}
+
+	/**
+	 * Adds spots and edges to this model in bulk, and replaces its tracks by
+	 * the specified ones.
+	 * <p>
+	 * The specified graph must contain all the spots and edges of this model,
+	 * plus the ones to add, and the track maps must describe its connected
+	 * components. This is faster than adding spots and edges one by one when
+	 * the new tracks are already known, since the connected components are
+	 * not searched for. Only the tracks made of new edges are signaled as
+	 * updated.
+	 * <p>
+	 * For the model update to happen correctly and listeners to be notified
+	 * properly, a call to this method must happen within a transaction, as in:
+	 *
+	 * <pre>
+	 * model.beginUpdate();
+	 * try {
+	 * 	... // model modifications here
+	 * } finally {
+	 * 	model.endUpdate();
+	 * }
+	 * </pre>
+	 *
+	 * @param spotsToAdd
+	 *            the spots to add, with the frame to add each of them to.
+	 * @param graph
+	 *            the graph of the model after the addition.
+	 * @param trackSpots
+	 *            the spots of each track, by track ID.
+	 * @param trackEdges
+	 *            the edges of each track, by track ID.
+	 * @param trackVisibility
+	 *            the visibility of each track, by track ID.
+	 * @param trackNames
+	 *            the name of each track, by track ID.
+	 */
+	public synchronized void append(
+			final Map< Spot, Integer > spotsToAdd,
+			final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph,
+			final Map< Integer, Set< Spot > > trackSpots,
+			final Map< Integer, Set< DefaultWeightedEdge > > trackEdges,
+			final Map< Integer, Boolean > trackVisibility,
+			final Map< Integer, String > trackNames )
+	{
+		for ( final Map.Entry< Spot, Integer > entry : spotsToAdd.entrySet() )
+			spots.add( entry.getKey(), entry.getValue() );
+		spotsAdded.addAll( spotsToAdd.keySet() ); // TRANSACTION
+		if ( DEBUG )
+			System.out.println( "[TrackMateModel] Appending " + spotsToAdd.size() + " spots." );
+
+		trackModel.append( graph, trackSpots, trackEdges, trackVisibility, trackNames );
+	}
+
 	/**
 	 * Mark the specified spot for update. At the end of the model transaction,
 	 * its features will be recomputed, and other edge and track features that
@@ -700,6 +826,35 @@ public class Model
 		return trackModel.removeEdge( edge );
 	}
 
+	/**
+	 * Removes the specified edges from the model. Edges that cannot be found
+	 * are ignored.
+	 * <p>
+	 * This is equivalent to calling {@link #removeEdge(DefaultWeightedEdge)}
+	 * for each edge, but the tracks the edges belonged to are split only once,
+	 * after all the edges have been removed.
+	 * <p>
+	 * For the model update to happen correctly and listeners to be notified
+	 * properly, a call to this method must happen within a transaction, as in:
+	 *
+	 * <pre>
+	 * model.beginUpdate();
+	 * try {
+	 * 	... // model modifications here
+	 * } finally {
+	 * 	model.endUpdate();
+	 * }
+	 * </pre>
+	 *
+	 * @param edgesToRemove
+	 *            the edges to remove.
+	 * @return the number of edges removed.
+	 */
+	public synchronized int removeEdges( final Collection< DefaultWeightedEdge > edgesToRemove )
+	{
+		return trackModel.removeEdges( edgesToRemove );
+	}
+
 	/**
 	 * Sets the weight of the specified edge.
 	 * <p>
@@ -798,7 +953,7 @@ public class Model
 		{
 			final HashSet< Spot > spotsToUpdate = new HashSet< >( nSpotsToUpdate );
 			spotsToUpdate.addAll( spotsAdded );
-			spotsToUpdate.addAll( spotsMoved );
+			spotsToUpdate.addAll( spotsMoved.keySet() );
 			spotsToUpdate.addAll( spotsUpdated );
 		}
 
@@ -811,7 +966,7 @@ public class Model
 		{
 			event.addAllSpots( spotsAdded );
 			event.addAllSpots( spotsRemoved );
-			event.addAllSpots( spotsMoved );
+			event.addAllSpots( spotsMoved.keySet() );
 			event.addAllSpots( spotsUpdated );
 
 			for ( final Spot spot : spotsAdded )
@@ -822,9 +977,11 @@ public class Model
 			{
 				event.putSpotFlag( spot, ModelChangeEvent.FLAG_SPOT_REMOVED );
 			}
-			for ( final Spot spot : spotsMoved )
+			for ( final Spot spot : spotsMoved.keySet() )
 			{
 				event.putSpotFlag( spot, ModelChangeEvent.FLAG_SPOT_FRAME_CHANGED );
+				event.putFromFrame( spot, spotsMoved.get( spot ) );
+				event.putToFrame( spot, spot.getFeature( Spot.FRAME ).intValue() );
 			}
 			for ( final Spot spot : spotsUpdated )
 			{
@@ -0,0 +1,611 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate;
+
+import static fiji.plugin.trackmate.tracking.TrackerKeys.DEFAULT_ALTERNATIVE_LINKING_COST_FACTOR;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALTERNATIVE_LINKING_COST_FACTOR;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_FEATURE_PENALTIES;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_MAX_DISTANCE;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+
+import fiji.plugin.trackmate.tracking.sparselap.SparseLAPFrameToFrameTracker;
+import net.imglib2.algorithm.Algorithm;
+import net.imglib2.algorithm.Benchmark;
+import net.imglib2.realtransform.AffineTransform3D;
+
+/**
+ * Appends the content of a {@link Model} to another one in bulk.
+ * <p>
+ * Spots of the source model are copied with all their features, shifted in
+ * time by a frame offset and optionally transformed in space. They receive new
+ * spot IDs. The tracks of the source model are given new track IDs that do not
+ * collide with the ones of the target model, and keep their names, visibility
+ * and features. Feature declarations of the source model that are unknown to
+ * the target model are added to it.
+ * <p>
+ * Contrary to adding spots and edges one by one in a model transaction, the
+ * track structure of the target model is rebuilt once, from the connected
+ * components already known in both models. This makes it possible to process
+ * a long movie in chunks and to merge the results quickly. The target model is
+ * modified in a single transaction, so its listeners receive one
+ * {@link ModelChangeEvent#MODEL_MODIFIED} event for the whole merge.
+ * <p>
+ * Optionally, tracks can be stitched across the time seam: the track ends in
+ * the last frame of the target before the first frame of the source are
+ * linked to the track starts in this first frame by a frame-to-frame LAP step.
+ * The features of the tracks that are stitched this way are not updated and
+ * should be recomputed. The features of the tracks that are merged into
+ * another one are removed.
+ * <p>
+ * The source model is not modified.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+public class ModelMerger implements Algorithm, Benchmark
+{
+
+	private static final String BASE_ERROR_MSG = "[ModelMerger] ";
+
+	private final Model target;
+
+	private final Model source;
+
+	private int frameOffset = 0;
+
+	private double frameInterval = 1.;
+
+	private AffineTransform3D transform = null;
+
+	private boolean visibleTracksOnly = false;
+
+	private double stitchingMaxDistance = Double.NaN;
+
+	private final Map< Integer, Integer > trackIDMap = new HashMap<>();
+
+	private int nSpots;
+
+	private int nStitched;
+
+	private long processingTime;
+
+	private String errorMessage;
+
+	/**
+	 * Creates a merger that will append the content of the source model to the
+	 * target model.
+	 *
+	 * @param target
+	 *            the model to append to.
+	 * @param source
+	 *            the model to append.
+	 */
+	public ModelMerger( final Model target, final Model source )
+	{
+		this.target = target;
+		this.source = source;
+	}
+
+	/*
+	 * SETTERS.
+	 */
+
+	/**
+	 * Sets the offset to add to the frame of the source spots.
+	 *
+	 * @param frameOffset
+	 *            the offset, in frames.
+	 * @param frameInterval
+	 *            the frame interval, used to shift the
+	 *            {@link Spot#POSITION_T} feature of the source spots.
+	 */
+	public void setTimeOffset( final int frameOffset, final double frameInterval )
+	{
+		this.frameOffset = frameOffset;
+		this.frameInterval = frameInterval;
+	}
+
+	/**
+	 * Sets the transform to apply to the position of the source spots. Their
+	 * radius is scaled by the mean scale of the transform. If
+	 * <code>null</code>, positions are copied as they are.
+	 *
+	 * @param transform
+	 *            the transform.
+	 */
+	public void setTransform( final AffineTransform3D transform )
+	{
+		this.transform = transform;
+	}
+
+	/**
+	 * Sets whether only the spots of the visible tracks of the source model
+	 * are appended. If <code>false</code> (the default), all the spots are
+	 * appended, including the ones that do not belong to a track.
+	 *
+	 * @param visibleTracksOnly
+	 *            whether to append only visible tracks.
+	 */
+	public void setVisibleTracksOnly( final boolean visibleTracksOnly )
+	{
+		this.visibleTracksOnly = visibleTracksOnly;
+	}
+
+	/**
+	 * Sets the maximal distance for stitching tracks across the time seam. If
+	 * it is not a strictly positive number (the default), tracks are not
+	 * stitched.
+	 *
+	 * @param maxDistance
+	 *            the maximal linking distance, in physical units.
+	 */
+	public void setStitching( final double maxDistance )
+	{
+		this.stitchingMaxDistance = maxDistance;
+	}
+
+	/*
+	 * METHODS.
+	 */
+
+	@Override
+	public boolean checkInput()
+	{
+		if ( null == target )
+		{
+			errorMessage = BASE_ERROR_MSG + "Target model is null.";
+			return false;
+		}
+		if ( null == source )
+		{
+			errorMessage = BASE_ERROR_MSG + "Source model is null.";
+			return false;
+		}
+		if ( target == source )
+		{
+			errorMessage = BASE_ERROR_MSG + "Cannot merge a model into itself.";
+			return false;
+		}
+		if ( !source.getSpots().keySet().isEmpty() && source.getSpots().firstKey().intValue() + frameOffset < 0 )
+		{
+			errorMessage = BASE_ERROR_MSG + "Frame offset " + frameOffset + " would give negative frames.";
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean process()
+	{
+		final long start = System.currentTimeMillis();
+		trackIDMap.clear();
+		nSpots = 0;
+		nStitched = 0;
+
+		final TrackModel targetTracks = target.getTrackModel();
+		final TrackModel sourceTracks = source.getTrackModel();
+		final FeatureModel targetFeatures = target.getFeatureModel();
+		final FeatureModel sourceFeatures = source.getFeatureModel();
+
+		/*
+		 * Current content of the target, as the maps the track model is
+		 * rebuilt from. Edges are kept, so that their features stay valid.
+		 * The target itself is only modified at the end, in one transaction.
+		 */
+
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = new SimpleWeightedGraph<>( DefaultWeightedEdge.class );
+		for ( final Spot spot : targetTracks.vertexSet() )
+			graph.addVertex( spot );
+		for ( final DefaultWeightedEdge edge : targetTracks.edgeSet() )
+		{
+			graph.addEdge( targetTracks.getEdgeSource( edge ), targetTracks.getEdgeTarget( edge ), edge );
+			graph.setEdgeWeight( edge, targetTracks.getEdgeWeight( edge ) );
+		}
+
+		final Map< Integer, Set< Spot > > trackSpots = new HashMap<>();
+		final Map< Integer, Set< DefaultWeightedEdge > > trackEdges = new HashMap<>();
+		final Map< Integer, Boolean > trackVisibility = new HashMap<>();
+		final Map< Integer, String > trackNames = new HashMap<>();
+		int maxID = -1;
+		for ( final Integer id : targetTracks.trackIDs( false ) )
+		{
+			trackSpots.put( id, new HashSet<>( targetTracks.trackSpots( id ) ) );
+			trackEdges.put( id, new HashSet<>( targetTracks.trackEdges( id ) ) );
+			trackVisibility.put( id, Boolean.valueOf( targetTracks.isVisible( id ) ) );
+			trackNames.put( id, targetTracks.name( id ) );
+			maxID = Math.max( maxID, id.intValue() );
+		}
+
+		/*
+		 * Copy the source spots.
+		 */
+
+		final Collection< Spot > sourceSpots;
+		if ( visibleTracksOnly )
+		{
+			sourceSpots = new ArrayList<>();
+			for ( final Integer id : sourceTracks.trackIDs( true ) )
+				sourceSpots.addAll( sourceTracks.trackSpots( id ) );
+		}
+		else
+		{
+			sourceSpots = new ArrayList<>( source.getSpots().getNSpots( false ) );
+			for ( final Spot spot : source.getSpots().iterable( false ) )
+				sourceSpots.add( spot );
+		}
+
+		final double radiusScale = ( null == transform ) ? 1. : Math.cbrt( Math.abs( determinant( transform ) ) );
+		final double[] pos = new double[ 3 ];
+		final Map< Spot, Spot > oldToNew = new LinkedHashMap<>( sourceSpots.size() );
+		final Map< Spot, Integer > newSpotFrames = new LinkedHashMap<>( sourceSpots.size() );
+		for ( final Spot oldSpot : sourceSpots )
+		{
+			final Spot newSpot = new Spot( oldSpot );
+			newSpot.getFeatures().putAll( oldSpot.getFeatures() );
+			if ( null != transform )
+			{
+				oldSpot.localize( pos );
+				transform.apply( pos, pos );
+				for ( int d = 0; d < 3; d++ )
+					newSpot.putFeature( Spot.POSITION_FEATURES[ d ], Double.valueOf( pos[ d ] ) );
+				newSpot.putFeature( Spot.RADIUS, Double.valueOf( radiusScale * oldSpot.getFeature( Spot.RADIUS ).doubleValue() ) );
+			}
+			final Double t = oldSpot.getFeature( Spot.POSITION_T );
+			if ( null != t )
+				newSpot.putFeature( Spot.POSITION_T, Double.valueOf( t.doubleValue() + frameOffset * frameInterval ) );
+
+			final int frame = oldSpot.getFeature( Spot.FRAME ).intValue() + frameOffset;
+			newSpot.putFeature( Spot.FRAME, Double.valueOf( frame ) );
+			graph.addVertex( newSpot );
+			oldToNew.put( oldSpot, newSpot );
+			newSpotFrames.put( newSpot, Integer.valueOf( frame ) );
+		}
+
+		/*
+		 * Copy the source tracks with new IDs.
+		 */
+
+		final Map< Spot, Integer > trackOf = new HashMap<>();
+		final Map< DefaultWeightedEdge, DefaultWeightedEdge > newToOldEdges = new HashMap<>();
+		for ( final Integer oldID : sourceTracks.trackIDs( visibleTracksOnly ) )
+		{
+			final Integer newID = Integer.valueOf( ++maxID );
+			trackIDMap.put( oldID, newID );
+
+			final Set< Spot > spots = new HashSet<>();
+			for ( final Spot spot : sourceTracks.trackSpots( oldID ) )
+			{
+				final Spot newSpot = oldToNew.get( spot );
+				spots.add( newSpot );
+				trackOf.put( newSpot, newID );
+			}
+
+			final Set< DefaultWeightedEdge > edges = new HashSet<>();
+			for ( final DefaultWeightedEdge oldEdge : sourceTracks.trackEdges( oldID ) )
+			{
+				final DefaultWeightedEdge edge = graph.addEdge(
+						oldToNew.get( sourceTracks.getEdgeSource( oldEdge ) ),
+						oldToNew.get( sourceTracks.getEdgeTarget( oldEdge ) ) );
+				graph.setEdgeWeight( edge, sourceTracks.getEdgeWeight( oldEdge ) );
+				edges.add( edge );
+				newToOldEdges.put( edge, oldEdge );
+			}
+
+			trackSpots.put( newID, spots );
+			trackEdges.put( newID, edges );
+			trackVisibility.put( newID, Boolean.valueOf( sourceTracks.isVisible( oldID ) ) );
+			trackNames.put( newID, sourceTracks.name( oldID ) );
+		}
+
+		/*
+		 * Stitch across the seam.
+		 */
+
+		final Set< Integer > absorbed = new HashSet<>();
+		if ( stitchingMaxDistance > 0. && !newSpotFrames.isEmpty() )
+		{
+			int seam = Integer.MAX_VALUE;
+			for ( final Integer frame : newSpotFrames.values() )
+				seam = Math.min( seam, frame.intValue() );
+			final Integer before = target.getSpots().keySet().lower( Integer.valueOf( seam ) );
+			if ( null != before )
+			{
+				final List< Spot > ends = new ArrayList<>();
+				for ( final Spot spot : target.getSpots().iterable( before.intValue(), false ) )
+					if ( !hasNeighbor( graph, spot, true ) )
+						ends.add( spot );
+				final List< Spot > starts = new ArrayList<>();
+				for ( final Map.Entry< Spot, Integer > entry : newSpotFrames.entrySet() )
+					if ( entry.getValue().intValue() == seam && !hasNeighbor( graph, entry.getKey(), false ) )
+						starts.add( entry.getKey() );
+
+				if ( !ends.isEmpty() && !starts.isEmpty() )
+				{
+					final SimpleWeightedGraph< Spot, DefaultWeightedEdge > links = stitch( ends, starts, before.intValue(), seam );
+					if ( null == links )
+						return false;
+
+					for ( final DefaultWeightedEdge link : links.edgeSet() )
+					{
+						final Spot s = links.getEdgeSource( link );
+						final Spot t = links.getEdgeTarget( link );
+						final DefaultWeightedEdge edge = graph.addEdge( s, t );
+						graph.setEdgeWeight( edge, links.getEdgeWeight( link ) );
+						maxID = join( s, t, edge, targetTracks, trackOf, trackSpots, trackEdges, trackVisibility, trackNames, absorbed, maxID );
+						nStitched++;
+					}
+				}
+			}
+		}
+
+		/*
+		 * Modify the target in one transaction.
+		 */
+
+		target.beginUpdate();
+		try
+		{
+			mergeFeatureDeclarations( sourceFeatures, targetFeatures );
+			target.append( newSpotFrames, graph, trackSpots, trackEdges, trackVisibility, trackNames );
+
+			// Adding makes the spots visible.
+			for ( final Map.Entry< Spot, Spot > entry : oldToNew.entrySet() )
+			{
+				final Double visibility = entry.getKey().getFeature( SpotCollection.VISIBILITY );
+				if ( null != visibility )
+					entry.getValue().putFeature( SpotCollection.VISIBILITY, visibility );
+			}
+
+			final Collection< String > edgeFeatures = sourceFeatures.getEdgeFeatures();
+			for ( final Map.Entry< DefaultWeightedEdge, DefaultWeightedEdge > entry : newToOldEdges.entrySet() )
+			{
+				for ( final String feature : edgeFeatures )
+				{
+					final Double val = sourceFeatures.getEdgeFeature( entry.getValue(), feature );
+					if ( null != val )
+						targetFeatures.putEdgeFeature( entry.getKey(), feature, val );
+				}
+			}
+
+			// Tracks that were stitched to another one no longer exist.
+			for ( final Integer id : absorbed )
+				for ( final String feature : targetFeatures.getTrackFeatures() )
+					targetFeatures.removeTrackFeature( id, feature );
+
+			final Collection< String > trackFeatures = sourceFeatures.getTrackFeatures();
+			for ( final Map.Entry< Integer, Integer > entry : trackIDMap.entrySet() )
+			{
+				if ( absorbed.contains( entry.getValue() ) )
+					continue;
+				for ( final String feature : trackFeatures )
+				{
+					final Double val = sourceFeatures.getTrackFeature( entry.getKey(), feature );
+					if ( null != val )
+						targetFeatures.putTrackFeature( entry.getValue(), feature, val );
+				}
+			}
+		}
+		finally
+		{
+			target.endUpdate();
+		}
+		nSpots = oldToNew.size();
+
+		processingTime = System.currentTimeMillis() - start;
+		return true;
+	}
+
+	/**
+	 * Returns the mapping from the track IDs of the source model to the track
+	 * IDs they were given in the target model. Tracks that were stitched to
+	 * another track map to the ID they had before stitching.
+	 *
+	 * @return the track ID mapping.
+	 */
+	public Map< Integer, Integer > getTrackIDMap()
+	{
+		return trackIDMap;
+	}
+
+	/**
+	 * Returns the number of spots appended to the target model.
+	 *
+	 * @return the number of spots.
+	 */
+	public int getNSpotsAppended()
+	{
+		return nSpots;
+	}
+
+	/**
+	 * Returns the number of links created across the time seam.
+	 *
+	 * @return the number of links.
+	 */
+	public int getNStitched()
+	{
+		return nStitched;
+	}
+
+	@Override
+	public String getErrorMessage()
+	{
+		return errorMessage;
+	}
+
+	@Override
+	public long getProcessingTime()
+	{
+		return processingTime;
+	}
+
+	/*
+	 * PRIVATE METHODS.
+	 */
+
+	/**
+	 * Links the specified track ends and starts with a frame-to-frame LAP.
+	 */
+	private SimpleWeightedGraph< Spot, DefaultWeightedEdge > stitch( final List< Spot > ends, final List< Spot > starts, final int before, final int seam )
+	{
+		// The spot collection changes the visibility of the spots it is given.
+		final Map< Spot, Double > visibilities = new HashMap<>( ends.size() + starts.size() );
+		for ( final Spot spot : ends )
+			visibilities.put( spot, spot.getFeature( SpotCollection.VISIBILITY ) );
+		for ( final Spot spot : starts )
+			visibilities.put( spot, spot.getFeature( SpotCollection.VISIBILITY ) );
+
+		final SpotCollection seamSpots = new SpotCollection();
+		seamSpots.put( before, ends );
+		seamSpots.put( seam, starts );
+		seamSpots.setVisible( true );
+
+		final Map< String, Object > settings = new HashMap<>();
+		settings.put( KEY_LINKING_MAX_DISTANCE, Double.valueOf( stitchingMaxDistance ) );
+		settings.put( KEY_ALTERNATIVE_LINKING_COST_FACTOR, Double.valueOf( DEFAULT_ALTERNATIVE_LINKING_COST_FACTOR ) );
+		settings.put( KEY_LINKING_FEATURE_PENALTIES, new HashMap< String, Double >() );
+		final SparseLAPFrameToFrameTracker tracker = new SparseLAPFrameToFrameTracker( seamSpots, settings );
+		tracker.setNumThreads( 1 );
+		final boolean ok = tracker.checkInput() && tracker.process();
+
+		for ( final Map.Entry< Spot, Double > entry : visibilities.entrySet() )
+			if ( null != entry.getValue() )
+				entry.getKey().putFeature( SpotCollection.VISIBILITY, entry.getValue() );
+
+		if ( !ok )
+		{
+			errorMessage = BASE_ERROR_MSG + tracker.getErrorMessage();
+			return null;
+		}
+		return tracker.getResult();
+	}
+
+	/**
+	 * Updates the track maps after the specified spots were linked by the
+	 * specified edge. The ID of a track merged into another one is added to
+	 * the absorbed set, so that its features can be removed. Returns the new
+	 * max track ID.
+	 */
+	private static int join(
+			final Spot s,
+			final Spot t,
+			final DefaultWeightedEdge edge,
+			final TrackModel targetTracks,
+			final Map< Spot, Integer > trackOf,
+			final Map< Integer, Set< Spot > > trackSpots,
+			final Map< Integer, Set< DefaultWeightedEdge > > trackEdges,
+			final Map< Integer, Boolean > trackVisibility,
+			final Map< Integer, String > trackNames,
+			final Set< Integer > absorbed,
+			final int maxID )
+	{
+		final Integer idS = trackOf.containsKey( s ) ? trackOf.get( s ) : targetTracks.trackIDOf( s );
+		final Integer idT = trackOf.containsKey( t ) ? trackOf.get( t ) : targetTracks.trackIDOf( t );
+		int newMaxID = maxID;
+		final Integer id;
+		if ( null == idS && null == idT )
+		{
+			// Two lonely spots make a new track.
+			id = Integer.valueOf( ++newMaxID );
+			trackSpots.put( id, new HashSet<>() );
+			trackEdges.put( id, new HashSet<>() );
+			trackVisibility.put( id, Boolean.TRUE );
+			trackNames.put( id, "Track_" + id );
+		}
+		else if ( null == idS )
+		{
+			id = idT;
+		}
+		else if ( null == idT || idS.equals( idT ) )
+		{
+			id = idS;
+		}
+		else
+		{
+			// Move the track of the target spot into the one of the source.
+			id = idS;
+			final Set< Spot > moved = trackSpots.remove( idT );
+			for ( final Spot spot : moved )
+				trackOf.put( spot, id );
+			trackSpots.get( id ).addAll( moved );
+			trackEdges.get( id ).addAll( trackEdges.remove( idT ) );
+			trackVisibility.remove( idT );
+			trackNames.remove( idT );
+			absorbed.add( idT );
+		}
+		trackSpots.get( id ).add( s );
+		trackSpots.get( id ).add( t );
+		trackEdges.get( id ).add( edge );
+		trackOf.put( s, id );
+		trackOf.put( t, id );
+		return newMaxID;
+	}
+
+	private static boolean hasNeighbor( final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph, final Spot spot, final boolean forward )
+	{
+		final int frame = spot.getFeature( Spot.FRAME ).intValue();
+		for ( final DefaultWeightedEdge edge : graph.edgesOf( spot ) )
+		{
+			final Spot other = graph.getEdgeSource( edge ) == spot ? graph.getEdgeTarget( edge ) : graph.getEdgeSource( edge );
+			final int otherFrame = other.getFeature( Spot.FRAME ).intValue();
+			if ( forward ? otherFrame > frame : otherFrame < frame )
+				return true;
+		}
+		return false;
+	}
+
+	private static void mergeFeatureDeclarations( final FeatureModel from, final FeatureModel to )
+	{
+		final Collection< String > spotFeatures = new LinkedHashSet<>( from.getSpotFeatures() );
+		spotFeatures.removeAll( to.getSpotFeatures() );
+		if ( !spotFeatures.isEmpty() )
+			to.declareSpotFeatures( spotFeatures, from.getSpotFeatureNames(), from.getSpotFeatureShortNames(), from.getSpotFeatureDimensions(), from.getSpotFeatureIsInt() );
+
+		final Collection< String > edgeFeatures = new LinkedHashSet<>( from.getEdgeFeatures() );
+		edgeFeatures.removeAll( to.getEdgeFeatures() );
+		if ( !edgeFeatures.isEmpty() )
+			to.declareEdgeFeatures( edgeFeatures, from.getEdgeFeatureNames(), from.getEdgeFeatureShortNames(), from.getEdgeFeatureDimensions(), from.getEdgeFeatureIsInt() );
+
+		final Collection< String > trackFeatures = new LinkedHashSet<>( from.getTrackFeatures() );
+		trackFeatures.removeAll( to.getTrackFeatures() );
+		if ( !trackFeatures.isEmpty() )
+			to.declareTrackFeatures( trackFeatures, from.getTrackFeatureNames(), from.getTrackFeatureShortNames(), from.getTrackFeatureDimensions(), from.getTrackFeatureIsInt() );
+	}
+
+	private static double determinant( final AffineTransform3D t )
+	{
+		return t.get( 0, 0 ) * ( t.get( 1, 1 ) * t.get( 2, 2 ) - t.get( 1, 2 ) * t.get( 2, 1 ) )
+				- t.get( 0, 1 ) * ( t.get( 1, 0 ) * t.get( 2, 2 ) - t.get( 1, 2 ) * t.get( 2, 0 ) )
+				+ t.get( 0, 2 ) * ( t.get( 1, 0 ) * t.get( 2, 1 ) - t.get( 1, 1 ) * t.get( 2, 0 ) );
+	}
+}
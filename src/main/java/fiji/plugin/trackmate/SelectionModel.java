@@ -28,10 +28,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
 
 import org.jgrapht.graph.DefaultWeightedEdge;
-import org.jgrapht.traverse.GraphIterator;
 
 /**
  * A component of {@link Model} that handles spot and edges selection.
@@ -269,66 +267,33 @@ public class SelectionModel {
 			inspectionSpots.add(model.getTrackModel().getEdgeTarget(edge));
 		}
 
-		// Walk across tracks to build selection
+		// Use the track sets and lineage indices to build selection
+		final TrackModel trackModel = model.getTrackModel();
 		final HashSet<Spot> lSpotSelection 					= new HashSet<>();
 		final HashSet<DefaultWeightedEdge> lEdgeSelection 	= new HashSet<>();
 
-		if (direction == 0) { // Unconditionally
-			for (Spot spot : inspectionSpots) {
+		// Group spots per track
+		final Map<Integer, List<Spot>> seedsPerTrack = new HashMap<>();
+		for (Spot spot : inspectionSpots) {
+			final Integer trackID = trackModel.trackIDOf(spot);
+			if (null == trackID) {
+				// Lonely spot.
 				lSpotSelection.add(spot);
-				GraphIterator<Spot, DefaultWeightedEdge> walker = model.getTrackModel().getDepthFirstIterator(spot, false);
-				while (walker.hasNext()) { 
-					Spot target = walker.next();
-					lSpotSelection.add(target); 
-					// Deal with edges
-					Set<DefaultWeightedEdge> targetEdges = model.getTrackModel().edgesOf(target);
-					for(DefaultWeightedEdge targetEdge : targetEdges) {
-						lEdgeSelection.add(targetEdge);
-					}
-				}
-			}
-
-		} else { // Only upward or backward in time 
-			for (Spot spot : inspectionSpots) {
-				lSpotSelection.add(spot);
-
-				// A bit more complicated: we want to walk in only one direction,
-				// when branching is occurring, we do not want to get back in time.
-				Stack<Spot> stack = new Stack<>();
-				stack.add(spot);
-				while (!stack.isEmpty()) { 
-					Spot inspected = stack.pop();
-					Set<DefaultWeightedEdge> targetEdges = model.getTrackModel().edgesOf(inspected);
-					for(DefaultWeightedEdge targetEdge : targetEdges) {
-						Spot other;
-						if (direction > 0) {
-							// Upward in time: we just have to search through edges using their source spots
-							other = model.getTrackModel().getEdgeSource(targetEdge);
-						} else {
-							other = model.getTrackModel().getEdgeTarget(targetEdge);
-						}
-
-						if (other != inspected) {
-							lSpotSelection.add(other);
-							lEdgeSelection.add(targetEdge);
-							stack.add(other);
-						}
-					}
-				}
+				continue;
 			}
+			seedsPerTrack.computeIfAbsent(trackID, id -> new ArrayList<>()).add(spot);
 		}
 
-		// Cut "tail": remove the first an last edges in time, so that the selection only has conencted 
-		// edges in it.
-		ArrayList<DefaultWeightedEdge> edgesToRemove = new ArrayList<>();
-		for(DefaultWeightedEdge edge : lEdgeSelection) {
-			Spot source = model.getTrackModel().getEdgeSource(edge);
-			Spot target = model.getTrackModel().getEdgeTarget(edge);
-			if ( !(lSpotSelection.contains(source) && lSpotSelection.contains(target)) ) {
-				edgesToRemove.add(edge);
+		for (Integer trackID : seedsPerTrack.keySet()) {
+			if (direction == 0) { // Unconditionally
+				lSpotSelection.addAll(trackModel.trackSpots(trackID));
+				lEdgeSelection.addAll(trackModel.trackEdges(trackID));
+			} else if (direction > 0) { // Upward in time
+				trackModel.getLineageIndex(trackID).collectAncestors(seedsPerTrack.get(trackID), lSpotSelection, lEdgeSelection);
+			} else { // Backward in time
+				trackModel.getLineageIndex(trackID).collectDescendants(seedsPerTrack.get(trackID), lSpotSelection, lEdgeSelection);
 			}
 		}
-		lEdgeSelection.removeAll(edgesToRemove);
 
 		// Set selection
 		addSpotToSelection(lSpotSelection);
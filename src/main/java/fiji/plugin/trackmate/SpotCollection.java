@@ -30,11 +30,10 @@ import java.util.Map;
 import java.util.NavigableSet;
 import java.util.Set;
 import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ExecutionException;
 
 import fiji.plugin.trackmate.features.FeatureFilter;
+import fiji.plugin.trackmate.util.TrackMateExecutor;
 import net.imglib2.algorithm.MultiThreaded;
 
 /**
@@ -59,18 +58,6 @@ public class SpotCollection implements MultiThreaded
 
 	public static final String VISIBILITY = "VISIBILITY";
 
-	/**
-	 * Time units for filtering and cropping operation timeouts. Filtering
-	 * should not take more than 1 minute.
-	 */
-	private static final TimeUnit TIME_OUT_UNITS = TimeUnit.MINUTES;
-
-	/**
-	 * Time for filtering and cropping operation timeouts. Filtering should not
-	 * take more than 1 minute.
-	 */
-	private static final long TIME_OUT_DELAY = 1;
-
 	/** The frame by frame list of spot this object wrap. */
 	private ConcurrentSkipListMap< Integer, Set< Spot > > content = new ConcurrentSkipListMap<>();
 
@@ -188,7 +175,7 @@ public class SpotCollection implements MultiThreaded
 		final Double val = visible ? ONE : ZERO;
 		final Collection< Integer > frames = content.keySet();
 
-		final ExecutorService executors = Executors.newFixedThreadPool( numThreads );
+		final List< Runnable > commands = new ArrayList<>( frames.size() );
 		for ( final Integer frame : frames )
 		{
 
@@ -203,17 +190,14 @@ public class SpotCollection implements MultiThreaded
 						spot.putFeature( VISIBILITY, val );
 				}
 			};
-			executors.execute( command );
+			commands.add( command );
 		}
 
-		executors.shutdown();
 		try
 		{
-			final boolean ok = executors.awaitTermination( TIME_OUT_DELAY, TIME_OUT_UNITS );
-			if ( !ok )
-				System.err.println( "[SpotCollection.setVisible()] Timeout of " + TIME_OUT_DELAY + " " + TIME_OUT_UNITS + " reached." );
+			TrackMateExecutor.current().runAll( "Spot visibility", commands, numThreads );
 		}
-		catch ( final InterruptedException e )
+		catch ( final InterruptedException | ExecutionException e )
 		{
 			e.printStackTrace();
 		}
@@ -231,7 +215,7 @@ public class SpotCollection implements MultiThreaded
 	{
 
 		final Collection< Integer > frames = content.keySet();
-		final ExecutorService executors = Executors.newFixedThreadPool( numThreads );
+		final List< Runnable > commands = new ArrayList<>( frames.size() );
 
 		for ( final Integer frame : frames )
 		{
@@ -263,17 +247,14 @@ public class SpotCollection implements MultiThreaded
 					}
 				}
 			};
-			executors.execute( command );
+			commands.add( command );
 		}
 
-		executors.shutdown();
 		try
 		{
-			final boolean ok = executors.awaitTermination( TIME_OUT_DELAY, TIME_OUT_UNITS );
-			if ( !ok )
-				System.err.println( "[SpotCollection.filter()] Timeout of " + TIME_OUT_DELAY + " " + TIME_OUT_UNITS + " reached while filtering." );
+			TrackMateExecutor.current().runAll( "Spot filtering", commands, numThreads );
 		}
-		catch ( final InterruptedException e )
+		catch ( final InterruptedException | ExecutionException e )
 		{
 			e.printStackTrace();
 		}
@@ -292,7 +273,7 @@ public class SpotCollection implements MultiThreaded
 	{
 
 		final Collection< Integer > frames = content.keySet();
-		final ExecutorService executors = Executors.newFixedThreadPool( numThreads );
+		final List< Runnable > commands = new ArrayList<>( frames.size() );
 
 		for ( final Integer frame : frames )
 		{
@@ -301,45 +282,66 @@ public class SpotCollection implements MultiThreaded
 				@Override
 				public void run()
 				{
-					final Set< Spot > spots = content.get( frame );
-					for ( final Spot spot : spots )
-					{
-
-						boolean shouldNotBeVisible = false;
-						for ( final FeatureFilter featureFilter : filters )
-						{
-
-							final Double val = spot.getFeature( featureFilter.feature );
-							final double tval = featureFilter.value;
-							final boolean isAbove = featureFilter.isAbove;
-
-							if ( null == val || isAbove && val.compareTo( tval ) < 0 || !isAbove && val.compareTo( tval ) > 0 )
-							{
-								shouldNotBeVisible = true;
-								break;
-							}
-						} // loop over filters
-						spot.putFeature( VISIBILITY, shouldNotBeVisible ? ZERO : ONE );
-
-					} // loop over spots
+					filter( content.get( frame ), filters );
 				}
 			};
-			executors.execute( command );
+			commands.add( command );
 		}
 
-		executors.shutdown();
 		try
 		{
-			final boolean ok = executors.awaitTermination( TIME_OUT_DELAY, TIME_OUT_UNITS );
-			if ( !ok )
-				System.err.println( "[SpotCollection.filter()] Timeout of " + TIME_OUT_DELAY + " " + TIME_OUT_UNITS + " reached while filtering." );
+			TrackMateExecutor.current().runAll( "Spot filtering", commands, numThreads );
 		}
-		catch ( final InterruptedException e )
+		catch ( final InterruptedException | ExecutionException e )
 		{
 			e.printStackTrace();
 		}
 	}
 
+	/**
+	 * Filters out the content of the specified frame of this collection using
+	 * the specified {@link FeatureFilter} collection, in the calling thread.
+	 * Spots that are filtered out are marked as invisible, and visible
+	 * otherwise. The spots of other frames are not affected.
+	 *
+	 * @param frame
+	 *            the frame to filter.
+	 * @param filters
+	 *            the filter collection to use.
+	 */
+	public final void filter( final int frame, final Collection< FeatureFilter > filters )
+	{
+		final Set< Spot > spots = content.get( frame );
+		if ( null == spots )
+			return;
+
+		filter( spots, filters );
+	}
+
+	private static final void filter( final Set< Spot > spots, final Collection< FeatureFilter > filters )
+	{
+		for ( final Spot spot : spots )
+		{
+
+			boolean shouldNotBeVisible = false;
+			for ( final FeatureFilter featureFilter : filters )
+			{
+
+				final Double val = spot.getFeature( featureFilter.feature );
+				final double tval = featureFilter.value;
+				final boolean isAbove = featureFilter.isAbove;
+
+				if ( null == val || isAbove && val.compareTo( tval ) < 0 || !isAbove && val.compareTo( tval ) > 0 )
+				{
+					shouldNotBeVisible = true;
+					break;
+				}
+			} // loop over filters
+			spot.putFeature( VISIBILITY, shouldNotBeVisible ? ZERO : ONE );
+
+		} // loop over spots
+	}
+
 	/**
 	 * Returns the closest {@link Spot} to the given location (encoded as a
 	 * Spot), contained in the frame <code>frame</code>. If the frame has no
@@ -26,28 +26,34 @@ import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
 import org.scijava.Cancelable;
 import org.scijava.Named;
 import org.scijava.util.VersionUtils;
 
+import fiji.plugin.trackmate.detection.DetectionCache;
+import fiji.plugin.trackmate.detection.LogDetector;
 import fiji.plugin.trackmate.detection.ManualDetectorFactory;
 import fiji.plugin.trackmate.detection.SpotDetector;
 import fiji.plugin.trackmate.detection.SpotDetectorFactory;
 import fiji.plugin.trackmate.detection.SpotDetectorFactoryBase;
 import fiji.plugin.trackmate.detection.SpotGlobalDetector;
 import fiji.plugin.trackmate.detection.SpotGlobalDetectorFactory;
+import fiji.plugin.trackmate.features.EdgeAndTrackFeatureCalculator;
 import fiji.plugin.trackmate.features.EdgeFeatureCalculator;
 import fiji.plugin.trackmate.features.FeatureFilter;
 import fiji.plugin.trackmate.features.SpotFeatureCalculator;
 import fiji.plugin.trackmate.features.TrackFeatureCalculator;
+import fiji.plugin.trackmate.tracking.FrameToFrameTracker;
 import fiji.plugin.trackmate.tracking.SpotTracker;
+import fiji.plugin.trackmate.util.CachedFrameSource;
+import fiji.plugin.trackmate.util.FrameSource;
 import fiji.plugin.trackmate.util.TMUtils;
+import fiji.plugin.trackmate.util.TrackMateExecutor;
 import net.imagej.ImgPlus;
 import net.imagej.axis.Axes;
 import net.imglib2.Interval;
@@ -98,6 +104,31 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 
 	private final List< Cancelable > cancelables = Collections.synchronizedList( new ArrayList<>() );
 
+	/**
+	 * The executor to run parallel tasks on. If <code>null</code>, the
+	 * executor bound to the calling thread is used.
+	 */
+	private TrackMateExecutor executor;
+
+	/**
+	 * If <code>true</code>, {@link #process()} runs detection, spot filtering
+	 * and tracking frame by frame, as a pipeline.
+	 */
+	private boolean pipelined = false;
+
+	/**
+	 * The source to read frames from during detection and spot feature
+	 * calculation. If <code>null</code>, frames are sliced from the whole
+	 * image, or read through a cache for virtual stacks.
+	 */
+	private FrameSource frameSource;
+
+	/**
+	 * The cache LoG and DoG detections read and store their local maxima in.
+	 * If <code>null</code>, detections are not cached.
+	 */
+	private DetectionCache detectionCache;
+
 	/*
 	 * CONSTRUCTORS
 	 */
@@ -136,6 +167,113 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 		return settings;
 	}
 
+	/**
+	 * Returns the executor this instance and the components it calls run
+	 * their parallel tasks on.
+	 *
+	 * @return the executor.
+	 */
+	public TrackMateExecutor getExecutor()
+	{
+		return ( null == executor ) ? TrackMateExecutor.current() : executor;
+	}
+
+	/**
+	 * Sets the executor this instance and the components it calls run their
+	 * parallel tasks on. By default, the process-wide executor is used, so
+	 * that several TrackMate instances share the same threads.
+	 * <p>
+	 * The number of threads set with {@link #setNumThreads(int)} still limits
+	 * the number of tasks run at once.
+	 *
+	 * @param executor
+	 *            the executor to use. If <code>null</code>, the executor bound
+	 *            to the calling thread is used.
+	 */
+	public void setExecutor( final TrackMateExecutor executor )
+	{
+		this.executor = executor;
+	}
+
+	/**
+	 * Returns whether {@link #process()} runs the steps from detection to
+	 * tracking as a pipeline.
+	 *
+	 * @return <code>true</code> if the pipelined mode is on.
+	 * @see #setPipelined(boolean)
+	 */
+	public boolean isPipelined()
+	{
+		return pipelined;
+	}
+
+	/**
+	 * Sets whether {@link #process()} runs the steps from detection to
+	 * tracking as a pipeline, with {@link #execPipelined()}, rather than one
+	 * step after the other.
+	 *
+	 * @param pipelined
+	 *            if <code>true</code>, the pipelined mode is used when the
+	 *            detector and the tracker allow it.
+	 */
+	public void setPipelined( final boolean pipelined )
+	{
+		this.pipelined = pipelined;
+	}
+
+	/**
+	 * Returns the frame source set with {@link #setFrameSource(FrameSource)}.
+	 *
+	 * @return the frame source, or <code>null</code> if none was set.
+	 */
+	public FrameSource getFrameSource()
+	{
+		return frameSource;
+	}
+
+	/**
+	 * Sets the source detectors and spot analyzers read the frames of the
+	 * image from, one frame at a time. This allows processing images that do
+	 * not fit in memory, for instance with a {@link CachedFrameSource}.
+	 * <p>
+	 * If <code>null</code>, the frames are sliced from the whole image. For
+	 * virtual stacks, a {@link CachedFrameSource} is then created for each
+	 * step, with a budget of a quarter of the maximal memory.
+	 *
+	 * @param frameSource
+	 *            the frame source to use. Can be <code>null</code>.
+	 */
+	public void setFrameSource( final FrameSource frameSource )
+	{
+		this.frameSource = frameSource;
+	}
+
+	/**
+	 * Returns the detection cache set with
+	 * {@link #setDetectionCache(DetectionCache)}.
+	 *
+	 * @return the detection cache, or <code>null</code> if none was set.
+	 */
+	public DetectionCache getDetectionCache()
+	{
+		return detectionCache;
+	}
+
+	/**
+	 * Sets the cache the LoG and DoG detectors read and store the local
+	 * maxima of the filtered image in. Running the detection again on the
+	 * same image with another threshold is then a filter over the cached
+	 * local maxima. Tiled detections are not cached.
+	 *
+	 * @param detectionCache
+	 *            the cache to use. If <code>null</code>, detections are not
+	 *            cached.
+	 */
+	public void setDetectionCache( final DetectionCache detectionCache )
+	{
+		this.detectionCache = detectionCache;
+	}
+
 	/*
 	 * PROCESSES
 	 */
@@ -155,30 +293,47 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 	 */
 	public boolean computeSpotFeatures( final boolean doLogIt )
 	{
-		isCanceled = false;
-		cancelReason = null;
-		cancelables.clear();
-
-		final Logger logger = model.getLogger();
-		final SpotFeatureCalculator calculator = new SpotFeatureCalculator( model, settings );
-		cancelables.add( calculator );
-		calculator.setNumThreads( numThreads );
-		if ( calculator.checkInput() && calculator.process() )
+		final TrackMateExecutor previous = TrackMateExecutor.bind( getExecutor() );
+		try
 		{
-			if ( doLogIt )
+			isCanceled = false;
+			cancelReason = null;
+			cancelables.clear();
+
+			final Logger logger = model.getLogger();
+			final SpotFeatureCalculator calculator = new SpotFeatureCalculator( model, settings );
+			cancelables.add( calculator );
+			calculator.setNumThreads( numThreads );
+			final FrameSource source = openFrameSource();
+			calculator.setFrameSource( source );
+			try
 			{
-				if ( isCanceled() )
-					logger.log( "Spot feature calculation canceled. Reason:\n" + getCancelReason() + "\n" );
+				if ( calculator.checkInput() && calculator.process() )
+				{
+					if ( doLogIt )
+					{
+						if ( isCanceled() )
+							logger.log( "Spot feature calculation canceled. Reason:\n" + getCancelReason() + "\n" );
 
-				logger.log( "Computation done in " + calculator.getProcessingTime() + " ms.\n" );
+						logger.log( "Computation done in " + calculator.getProcessingTime() + " ms.\n" );
+					}
+
+					model.notifyFeaturesComputed();
+					return true;
+				}
+			}
+			finally
+			{
+				closeFrameSource( source );
 			}
 
-			model.notifyFeaturesComputed();
-			return true;
+			errorMessage = "Spot features calculation failed:\n" + calculator.getErrorMessage();
+			return false;
+		}
+		finally
+		{
+			TrackMateExecutor.bind( previous );
 		}
-
-		errorMessage = "Spot features calculation failed:\n" + calculator.getErrorMessage();
-		return false;
 	}
 
 	/**
@@ -196,29 +351,37 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 	 */
 	public boolean computeEdgeFeatures( final boolean doLogIt )
 	{
-		isCanceled = false;
-		cancelReason = null;
-		cancelables.clear();
-
-		final Logger logger = model.getLogger();
-		final EdgeFeatureCalculator calculator = new EdgeFeatureCalculator( model, settings );
-		cancelables.add( calculator );
-		calculator.setNumThreads( numThreads );
-		if ( !calculator.checkInput() || !calculator.process() )
+		final TrackMateExecutor previous = TrackMateExecutor.bind( getExecutor() );
+		try
 		{
-			errorMessage = "Edge features calculation failed:\n" + calculator.getErrorMessage();
-			return false;
+			isCanceled = false;
+			cancelReason = null;
+			cancelables.clear();
+
+			final Logger logger = model.getLogger();
+			final EdgeFeatureCalculator calculator = new EdgeFeatureCalculator( model, settings );
+			cancelables.add( calculator );
+			calculator.setNumThreads( numThreads );
+			if ( !calculator.checkInput() || !calculator.process() )
+			{
+				errorMessage = "Edge features calculation failed:\n" + calculator.getErrorMessage();
+				return false;
+			}
+			if ( doLogIt )
+			{
+				if ( isCanceled() )
+					logger.log( "Spot feature calculation canceled. Reason:\n" + getCancelReason() + "\n" );
+
+				logger.log( "Computation done in " + calculator.getProcessingTime() + " ms.\n" );
+			}
+
+			model.notifyFeaturesComputed();
+			return true;
 		}
-		if ( doLogIt )
+		finally
 		{
-			if ( isCanceled() )
-				logger.log( "Spot feature calculation canceled. Reason:\n" + getCancelReason() + "\n" );
-
-			logger.log( "Computation done in " + calculator.getProcessingTime() + " ms.\n" );
+			TrackMateExecutor.bind( previous );
 		}
-
-		model.notifyFeaturesComputed();
-		return true;
 	}
 
 	/**
@@ -230,20 +393,75 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 	 */
 	public boolean computeTrackFeatures( final boolean doLogIt )
 	{
-		isCanceled = false;
-		cancelReason = null;
-		cancelables.clear();
+		final TrackMateExecutor previous = TrackMateExecutor.bind( getExecutor() );
+		try
+		{
+			isCanceled = false;
+			cancelReason = null;
+			cancelables.clear();
+
+			final Logger logger = model.getLogger();
+			final TrackFeatureCalculator calculator = new TrackFeatureCalculator( model, settings );
+			cancelables.add( calculator );
+			calculator.setNumThreads( numThreads );
+			if ( calculator.checkInput() && calculator.process() )
+			{
+				if ( doLogIt )
+				{
+					if ( isCanceled() )
+						logger.log( "Spot feature calculation canceled. Reason:\n" + getCancelReason() + "\n" );
 
-		final Logger logger = model.getLogger();
-		final TrackFeatureCalculator calculator = new TrackFeatureCalculator( model, settings );
-		cancelables.add( calculator );
-		calculator.setNumThreads( numThreads );
-		if ( calculator.checkInput() && calculator.process() )
+					logger.log( "Computation done in " + calculator.getProcessingTime() + " ms.\n" );
+				}
+
+				model.notifyFeaturesComputed();
+				return true;
+			}
+
+			errorMessage = "Track features calculation failed:\n" + calculator.getErrorMessage();
+			return false;
+		}
+		finally
 		{
+			TrackMateExecutor.bind( previous );
+		}
+	}
+
+	/**
+	 * Calculate all features for all edges and all tracks, in one go.
+	 * <p>
+	 * The edge and track analyzers are scheduled together, so that the
+	 * analyzers that do not depend on each other run concurrently, whatever
+	 * their type. This gives the same result as calling
+	 * {@link #computeEdgeFeatures(boolean)} then
+	 * {@link #computeTrackFeatures(boolean)}.
+	 *
+	 * @param doLogIt
+	 *            if <code>true</code>, messages will be sent to the logger.
+	 * @return <code>true</code> if the computation completed without errors.
+	 */
+	public boolean computeEdgeAndTrackFeatures( final boolean doLogIt )
+	{
+		final TrackMateExecutor previous = TrackMateExecutor.bind( getExecutor() );
+		try
+		{
+			isCanceled = false;
+			cancelReason = null;
+			cancelables.clear();
+
+			final Logger logger = model.getLogger();
+			final EdgeAndTrackFeatureCalculator calculator = new EdgeAndTrackFeatureCalculator( model, settings );
+			cancelables.add( calculator );
+			calculator.setNumThreads( numThreads );
+			if ( !calculator.checkInput() || !calculator.process() )
+			{
+				errorMessage = "Edge and track features calculation failed:\n" + calculator.getErrorMessage();
+				return false;
+			}
 			if ( doLogIt )
 			{
 				if ( isCanceled() )
-					logger.log( "Spot feature calculation canceled. Reason:\n" + getCancelReason() + "\n" );
+					logger.log( "Edge and track feature calculation canceled. Reason:\n" + getCancelReason() + "\n" );
 
 				logger.log( "Computation done in " + calculator.getProcessingTime() + " ms.\n" );
 			}
@@ -251,9 +469,10 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 			model.notifyFeaturesComputed();
 			return true;
 		}
-
-		errorMessage = "Track features calculation failed:\n" + calculator.getErrorMessage();
-		return false;
+		finally
+		{
+			TrackMateExecutor.bind( previous );
+		}
 	}
 
 	/**
@@ -272,41 +491,49 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 	 */
 	public boolean execTracking()
 	{
-		isCanceled = false;
-		cancelReason = null;
-		cancelables.clear();
+		final TrackMateExecutor previous = TrackMateExecutor.bind( getExecutor() );
+		try
+		{
+			isCanceled = false;
+			cancelReason = null;
+			cancelables.clear();
 
-		final Logger logger = model.getLogger();
-		logger.log( "Starting tracking process.\n", Logger.BLUE_COLOR );
+			final Logger logger = model.getLogger();
+			logger.log( "Starting tracking process.\n", Logger.BLUE_COLOR );
 
-		if ( settings.trackerFactory == null )
-		{
-			logger.log( "Tracker factory is not defined. Skipping tracking.\n" );
-			return true; // Not an error.
-		}
+			if ( settings.trackerFactory == null )
+			{
+				logger.log( "Tracker factory is not defined. Skipping tracking.\n" );
+				return true; // Not an error.
+			}
 
-		final SpotTracker tracker = settings.trackerFactory.create( model.getSpots(), settings.trackerSettings );
-		if ( tracker == null )
-		{
-			logger.log( "Tracker return by factory is null. Skipping tracking.\n" );
-			return true; // Not an error.
-		}
+			final SpotTracker tracker = settings.trackerFactory.create( model.getSpots(), settings.trackerSettings );
+			if ( tracker == null )
+			{
+				logger.log( "Tracker return by factory is null. Skipping tracking.\n" );
+				return true; // Not an error.
+			}
 
-		if ( tracker instanceof Cancelable )
-			cancelables.add( ( Cancelable ) tracker );
-		tracker.setNumThreads( numThreads );
-		tracker.setLogger( logger );
-		if ( tracker.checkInput() && tracker.process() )
-		{
-			if ( isCanceled() )
-				logger.log( "Tracking canceled. Reason:\n" + getCancelReason() + "\n" );
+			if ( tracker instanceof Cancelable )
+				cancelables.add( ( Cancelable ) tracker );
+			tracker.setNumThreads( numThreads );
+			tracker.setLogger( logger );
+			if ( tracker.checkInput() && tracker.process() )
+			{
+				if ( isCanceled() )
+					logger.log( "Tracking canceled. Reason:\n" + getCancelReason() + "\n" );
 
-			model.setTracks( tracker.getResult(), true );
-			return true;
-		}
+				model.setTracks( tracker.getResult(), true );
+				return true;
+			}
 
-		errorMessage = "Tracking process failed:\n" + tracker.getErrorMessage();
-		return false;
+			errorMessage = "Tracking process failed:\n" + tracker.getErrorMessage();
+			return false;
+		}
+		finally
+		{
+			TrackMateExecutor.bind( previous );
+		}
 	}
 
 	/**
@@ -322,60 +549,68 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 	@SuppressWarnings( { "rawtypes", "unchecked" } )
 	public boolean execDetection()
 	{
-		isCanceled = false;
-		cancelReason = null;
-		cancelables.clear();
+		final TrackMateExecutor previous = TrackMateExecutor.bind( getExecutor() );
+		try
+		{
+			isCanceled = false;
+			cancelReason = null;
+			cancelables.clear();
 
-		final Logger logger = model.getLogger();
-		logger.log( "Starting detection process using "
-				+ ( ( numThreads > 1 ) ? ( numThreads + " threads" ) : "1 thread" )
-				+ ".\n", Logger.BLUE_COLOR );
+			final Logger logger = model.getLogger();
+			logger.log( "Starting detection process using "
+					+ ( ( numThreads > 1 ) ? ( numThreads + " threads" ) : "1 thread" )
+					+ ".\n", Logger.BLUE_COLOR );
 
-		final SpotDetectorFactoryBase< ? > factory = settings.detectorFactory;
-		if ( null == factory )
-		{
-			errorMessage = "Detector factory is null.\n";
-			return false;
-		}
-		if ( null == settings.detectorSettings )
-		{
-			errorMessage = "Detector settings is null.\n";
-			return false;
-		}
-		if ( factory instanceof ManualDetectorFactory )
-		{
-			// Skip detection (don't delete anything) if we received this
-			// factory.
-			return true;
-		}
+			final SpotDetectorFactoryBase< ? > factory = settings.detectorFactory;
+			if ( null == factory )
+			{
+				errorMessage = "Detector factory is null.\n";
+				return false;
+			}
+			if ( null == settings.detectorSettings )
+			{
+				errorMessage = "Detector settings is null.\n";
+				return false;
+			}
+			if ( factory instanceof ManualDetectorFactory )
+			{
+				// Skip detection (don't delete anything) if we received this
+				// factory.
+				return true;
+			}
 
-		/*
-		 * Prepare interval
-		 */
-		final ImgPlus img = TMUtils.rawWraps( settings.imp );
+			/*
+			 * Prepare interval
+			 */
+			final ImgPlus img = TMUtils.rawWraps( settings.imp );
 
-		if ( !factory.setTarget( img, settings.detectorSettings ) )
-		{
-			errorMessage = factory.getErrorMessage();
-			return false;
-		}
+			if ( !factory.setTarget( img, settings.detectorSettings ) )
+			{
+				errorMessage = factory.getErrorMessage();
+				return false;
+			}
 
-		/*
-		 * Separate frame-by-frame or global detection depending on the factory
-		 * type.
-		 */
+			/*
+			 * Separate frame-by-frame or global detection depending on the factory
+			 * type.
+			 */
 
-		if ( factory instanceof SpotGlobalDetectorFactory )
-		{
-			return processGlobal( ( SpotGlobalDetectorFactory ) factory, img, logger );
+			if ( factory instanceof SpotGlobalDetectorFactory )
+			{
+				return processGlobal( ( SpotGlobalDetectorFactory ) factory, img, logger );
+			}
+			else if ( factory instanceof SpotDetectorFactory )
+			{ 
+				return processFrameByFrame( ( SpotDetectorFactory ) factory, img, logger ); 
+			}
+
+			errorMessage = "Don't know how to handle detector factory of type: " + factory.getClass();
+			return false;
 		}
-		else if ( factory instanceof SpotDetectorFactory )
-		{ 
-			return processFrameByFrame( ( SpotDetectorFactory ) factory, img, logger ); 
+		finally
+		{
+			TrackMateExecutor.bind( previous );
 		}
-
-		errorMessage = "Don't know how to handle detector factory of type: " + factory.getClass();
-		return false;
 	}
 
 	@SuppressWarnings( "rawtypes" )
@@ -455,7 +690,6 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 	private boolean processFrameByFrame( final SpotDetectorFactory factory, final ImgPlus img, final Logger logger )
 	{
 		final Interval interval = TMUtils.getInterval( img, settings );
-		final int zindex = img.dimensionIndex( Axes.Z );
 		final int numFrames = settings.tend - settings.tstart + 1;
 		// Final results holder, for all frames
 		final SpotCollection spots = new SpotCollection();
@@ -463,8 +697,6 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 		// To report progress
 		final AtomicInteger spotFound = new AtomicInteger( 0 );
 		final AtomicInteger progress = new AtomicInteger( 0 );
-		// To translate spots, later
-		final double[] calibration = TMUtils.getSpatialCalibration( settings.imp );
 
 		/*
 		 * Fine tune multi-threading: If we have 10 threads and 15 frames to
@@ -483,8 +715,8 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 				+ ( ( threadsPerFrame > 1 ) ? ( threadsPerFrame + " threads" ) : "1 thread" )
 				+ " per frame.\n" );
 
-		final ExecutorService executorService = Executors.newFixedThreadPool( nSimultaneousFrames );
-		final List< Future< Boolean > > tasks = new ArrayList<>( numFrames );
+		final FrameSource source = openFrameSource();
+		final List< Callable< Boolean > > tasks = new ArrayList<>( numFrames );
 		for ( int i = settings.tstart; i <= settings.tend; i++ )
 		{
 			final int frame = i;
@@ -497,79 +729,19 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 					if ( isCanceled() )
 						return Boolean.TRUE; // ok to be canceled.
 
-					// Yield detector for target frame
-					final SpotDetector< ? > detector = factory.getDetector( interval, frame );
-					if ( detector instanceof MultiThreaded )
-					{
-						final MultiThreaded md = ( MultiThreaded ) detector;
-						md.setNumThreads( threadsPerFrame );
-					}
-
-					if ( detector instanceof Cancelable )
-						cancelables.add( ( Cancelable ) detector );
-
-					// Execute detection
-					if ( detector.checkInput() && detector.process() )
-					{
-						// On success, get results.
-						final List< Spot > spotsThisFrame = detector.getResult();
-
-						/*
-						 * Special case: if we have a single column image, then
-						 * the detectors internally dealt with a single line
-						 * image. We need to permute back the X & Y coordinates
-						 * if it's the case.
-						 */
-						if ( img.dimension( 0 ) < 2 && zindex < 0 )
-						{
-							for ( final Spot spot : spotsThisFrame )
-							{
-								spot.putFeature( Spot.POSITION_Y, spot.getDoublePosition( 0 ) );
-								spot.putFeature( Spot.POSITION_X, 0d );
-							}
-						}
-
-						List< Spot > prunedSpots;
-						if ( settings.roi != null )
-						{
-							prunedSpots = new ArrayList<>();
-							for ( final Spot spot : spotsThisFrame )
-							{
-								if ( settings.roi.contains(
-										( int ) Math.round( spot.getFeature( Spot.POSITION_X ) / calibration[ 0 ] ),
-										( int ) Math.round( spot.getFeature( Spot.POSITION_Y ) / calibration[ 1 ] ) ) )
-									prunedSpots.add( spot );
-							}
-						}
-						else
-						{
-							prunedSpots = spotsThisFrame;
-						}
-						// Add detection feature other than position
-						for ( final Spot spot : prunedSpots )
-						{
-							// FRAME will be set upon adding to
-							// SpotCollection.
-							spot.putFeature( Spot.POSITION_T, frame * settings.dt );
-						}
-						// Store final results for this frame
-						spots.put( frame, prunedSpots );
-						// Report
-						spotFound.addAndGet( prunedSpots.size() );
-						logger.setProgress( progress.incrementAndGet() / ( double ) numFrames );
-
-					}
-					else
-					{
-						// Fail: exit and report error.
-						errorMessage = detector.getErrorMessage();
+					final List< Spot > prunedSpots = detectFrame( factory, source, img, interval, frame, threadsPerFrame );
+					if ( null == prunedSpots )
 						return Boolean.FALSE;
-					}
+
+					// Store final results for this frame
+					spots.put( frame, prunedSpots );
+					// Report
+					spotFound.addAndGet( prunedSpots.size() );
+					logger.setProgress( progress.incrementAndGet() / ( double ) numFrames );
 					return Boolean.TRUE;
 				}
 			};
-			final Future< Boolean > task = executorService.submit( callable );
-			tasks.add( task );
+			tasks.add( callable );
 		}
 		logger.setStatus( "Detection..." );
 		logger.setProgress( 0 );
@@ -577,9 +749,9 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 		final AtomicBoolean reportOk = new AtomicBoolean( true );
 		try
 		{
-			for ( final Future< Boolean > task : tasks )
+			final List< Boolean > results = getExecutor().invokeAll( "Detection", tasks, nSimultaneousFrames );
+			for ( final Boolean ok : results )
 			{
-				final Boolean ok = task.get();
 				if ( !ok )
 				{
 					reportOk.set( false );
@@ -593,6 +765,10 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 			reportOk.set( false );
 			e.printStackTrace();
 		}
+		finally
+		{
+			closeFrameSource( source );
+		}
 
 		model.setSpots( spots, true );
 
@@ -612,6 +788,104 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 		return reportOk.get();
 	}
 
+	/**
+	 * Runs the detection on a single frame, in the calling thread.
+	 *
+	 * @param source
+	 *            the source to read the frame from. If <code>null</code>, the
+	 *            factory is used as is.
+	 * @return the spots found in the frame, pruned with the ROI, or
+	 *         <code>null</code> if detection failed. In that case the error
+	 *         message is set.
+	 */
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	private List< Spot > detectFrame( final SpotDetectorFactory factory, final FrameSource source, final ImgPlus img, final Interval interval, final int frame, final int nThreads )
+	{
+		final SpotDetectorFactory frameFactory;
+		if ( null == source )
+		{
+			frameFactory = factory;
+		}
+		else
+		{
+			// Target a copy of the factory at the image of this frame only.
+			frameFactory = ( SpotDetectorFactory ) factory.copy();
+			if ( !frameFactory.setTarget( source.getFrame( frame ), settings.detectorSettings ) )
+			{
+				errorMessage = frameFactory.getErrorMessage();
+				return null;
+			}
+		}
+
+		// Yield detector for target frame
+		final SpotDetector< ? > detector = frameFactory.getDetector( interval, frame );
+		if ( null != detectionCache && detector instanceof LogDetector )
+		{
+			final DetectionCache.Key key = DetectionCache.key( settings.imp, factory.getKey(), settings.detectorSettings, frame, interval );
+			( ( LogDetector< ? > ) detector ).setCache( detectionCache, key );
+		}
+		if ( detector instanceof MultiThreaded )
+		{
+			final MultiThreaded md = ( MultiThreaded ) detector;
+			md.setNumThreads( nThreads );
+		}
+
+		if ( detector instanceof Cancelable )
+			cancelables.add( ( Cancelable ) detector );
+
+		// Execute detection
+		if ( !detector.checkInput() || !detector.process() )
+		{
+			// Fail: exit and report error.
+			errorMessage = detector.getErrorMessage();
+			return null;
+		}
+
+		// On success, get results.
+		final List< Spot > spotsThisFrame = detector.getResult();
+
+		/*
+		 * Special case: if we have a single column image, then the detectors
+		 * internally dealt with a single line image. We need to permute back
+		 * the X & Y coordinates if it's the case.
+		 */
+		final int zindex = img.dimensionIndex( Axes.Z );
+		if ( img.dimension( 0 ) < 2 && zindex < 0 )
+		{
+			for ( final Spot spot : spotsThisFrame )
+			{
+				spot.putFeature( Spot.POSITION_Y, spot.getDoublePosition( 0 ) );
+				spot.putFeature( Spot.POSITION_X, 0d );
+			}
+		}
+
+		final List< Spot > prunedSpots;
+		if ( settings.roi != null )
+		{
+			// To translate spots.
+			final double[] calibration = TMUtils.getSpatialCalibration( settings.imp );
+			prunedSpots = new ArrayList<>();
+			for ( final Spot spot : spotsThisFrame )
+			{
+				if ( settings.roi.contains(
+						( int ) Math.round( spot.getFeature( Spot.POSITION_X ) / calibration[ 0 ] ),
+						( int ) Math.round( spot.getFeature( Spot.POSITION_Y ) / calibration[ 1 ] ) ) )
+					prunedSpots.add( spot );
+			}
+		}
+		else
+		{
+			prunedSpots = spotsThisFrame;
+		}
+		// Add detection feature other than position
+		for ( final Spot spot : prunedSpots )
+		{
+			// FRAME will be set upon adding to SpotCollection.
+			spot.putFeature( Spot.POSITION_T, frame * settings.dt );
+		}
+		return prunedSpots;
+	}
+
 	/**
 	 * Execute the initial spot filtering part.
 	 * <p>
@@ -638,17 +912,25 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 	 */
 	public boolean execInitialSpotFiltering()
 	{
-		// Cannot be canceled.
-		final Logger logger = model.getLogger();
-		logger.log( "Starting initial filtering process.\n" );
+		final TrackMateExecutor previous = TrackMateExecutor.bind( getExecutor() );
+		try
+		{
+			// Cannot be canceled.
+			final Logger logger = model.getLogger();
+			logger.log( "Starting initial filtering process.\n" );
 
-		final Double initialSpotFilterValue = settings.initialSpotFilterValue;
-		final FeatureFilter featureFilter = new FeatureFilter( Spot.QUALITY, initialSpotFilterValue, true );
+			final Double initialSpotFilterValue = settings.initialSpotFilterValue;
+			final FeatureFilter featureFilter = new FeatureFilter( Spot.QUALITY, initialSpotFilterValue, true );
 
-		final SpotCollection spots = model.getSpots();
-		spots.filter( featureFilter );
-		spots.crop();
-		return true;
+			final SpotCollection spots = model.getSpots();
+			spots.filter( featureFilter );
+			spots.crop();
+			return true;
+		}
+		finally
+		{
+			TrackMateExecutor.bind( previous );
+		}
 	}
 
 	/**
@@ -672,66 +954,369 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 	 */
 	public boolean execSpotFiltering( final boolean doLogIt )
 	{
-		// Cannot be canceled.
-		if ( doLogIt )
+		final TrackMateExecutor previous = TrackMateExecutor.bind( getExecutor() );
+		try
 		{
-			final Logger logger = model.getLogger();
-			logger.log( "Starting spot filtering process.\n" );
+			// Cannot be canceled.
+			if ( doLogIt )
+			{
+				final Logger logger = model.getLogger();
+				logger.log( "Starting spot filtering process.\n" );
+			}
+			model.filterSpots( settings.getSpotFilters(), true );
+			return true;
+		}
+		finally
+		{
+			TrackMateExecutor.bind( previous );
 		}
-		model.filterSpots( settings.getSpotFilters(), true );
-		return true;
 	}
 
 	public boolean execTrackFiltering( final boolean doLogIt )
 	{
-		// Cannot be canceled.
+		final TrackMateExecutor previous = TrackMateExecutor.bind( getExecutor() );
+		try
+		{
+			// Cannot be canceled.
+
+			if ( doLogIt )
+			{
+				final Logger logger = model.getLogger();
+				logger.log( "Starting track filtering process.\n" );
+			}
+
+			model.beginUpdate();
+			try
+			{
+				for ( final Integer trackID : model.getTrackModel().trackIDs( false ) )
+				{
+					boolean trackIsOk = true;
+					for ( final FeatureFilter filter : settings.getTrackFilters() )
+					{
+						final Double tval = filter.value;
+						final Double val = model.getFeatureModel().getTrackFeature( trackID, filter.feature );
+						if ( null == val )
+							continue;
 
-		if ( doLogIt )
+						if ( filter.isAbove )
+						{
+							if ( val < tval )
+							{
+								trackIsOk = false;
+								break;
+							}
+						}
+						else
+						{
+							if ( val > tval )
+							{
+								trackIsOk = false;
+								break;
+							}
+						}
+					}
+					model.setTrackVisibility( trackID, trackIsOk );
+				}
+			}
+			finally
+			{
+				model.endUpdate();
+			}
+			return true;
+		}
+		finally
 		{
-			final Logger logger = model.getLogger();
-			logger.log( "Starting track filtering process.\n" );
+			TrackMateExecutor.bind( previous );
+		}
+	}
+
+	/**
+	 * Executes the detection, initial spot filtering, spot feature
+	 * calculation, spot filtering and tracking steps as a pipeline.
+	 * <p>
+	 * Each frame goes through detection, initial filtering, spot feature
+	 * calculation and spot filtering as soon as it is ready, independently of
+	 * the other frames. The links between two consecutive frames are created
+	 * as soon as both of them went through these steps. The frames are
+	 * processed roughly in order, and no more frames are processed at once
+	 * than with the staged detection, so linking runs behind detection while
+	 * the number of frames being processed is bounded.
+	 * <p>
+	 * This requires a frame-by-frame detector ({@link SpotDetectorFactory})
+	 * and a tracker that only links consecutive frames
+	 * ({@link FrameToFrameTracker}). Otherwise, the steps are executed one
+	 * after the other, as in {@link #process()}.
+	 * <p>
+	 * The {@link ModelChangeListener}s of the model are notified at the end
+	 * of the process, with the same events as for the staged execution.
+	 *
+	 * @return <code>true</code> if the computation completed without errors.
+	 */
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	public boolean execPipelined()
+	{
+		final SpotDetectorFactoryBase< ? > factory = settings.detectorFactory;
+		final SpotCollection spots = new SpotCollection();
+		spots.setNumThreads( numThreads );
+		final SpotTracker tracker = ( null == settings.trackerFactory || null == settings.trackerSettings )
+				? null
+				: settings.trackerFactory.create( spots, settings.trackerSettings );
+		if ( !( factory instanceof SpotDetectorFactory )
+				|| factory instanceof ManualDetectorFactory
+				|| !( tracker instanceof FrameToFrameTracker )
+				|| !( ( FrameToFrameTracker ) tracker ).isFrameToFrame() )
+		{
+			model.getLogger().log( "Detector or tracker cannot be run frame by frame. Executing steps one after the other.\n" );
+			return execStaged();
 		}
 
-		model.beginUpdate();
+		final TrackMateExecutor previous = TrackMateExecutor.bind( getExecutor() );
 		try
 		{
-			for ( final Integer trackID : model.getTrackModel().trackIDs( false ) )
+			isCanceled = false;
+			cancelReason = null;
+			cancelables.clear();
+
+			final Logger logger = model.getLogger();
+			logger.log( "Starting pipelined detection and tracking process using "
+					+ ( ( numThreads > 1 ) ? ( numThreads + " threads" ) : "1 thread" )
+					+ ".\n", Logger.BLUE_COLOR );
+
+			if ( null == settings.detectorSettings )
 			{
-				boolean trackIsOk = true;
-				for ( final FeatureFilter filter : settings.getTrackFilters() )
-				{
-					final Double tval = filter.value;
-					final Double val = model.getFeatureModel().getTrackFeature( trackID, filter.feature );
-					if ( null == val )
-						continue;
+				errorMessage = "Detector settings is null.\n";
+				return false;
+			}
 
-					if ( filter.isAbove )
+			final ImgPlus img = TMUtils.rawWraps( settings.imp );
+			if ( !factory.setTarget( img, settings.detectorSettings ) )
+			{
+				errorMessage = factory.getErrorMessage();
+				return false;
+			}
+
+			final FrameToFrameTracker linker = ( FrameToFrameTracker ) tracker;
+			if ( !linker.checkInput() )
+			{
+				errorMessage = "Tracking process failed:\n" + linker.getErrorMessage();
+				return false;
+			}
+			if ( linker instanceof Cancelable )
+				cancelables.add( ( Cancelable ) linker );
+			linker.setLogger( logger );
+
+			final Interval interval = TMUtils.getInterval( img, settings );
+			final int numFrames = settings.tend - settings.tstart + 1;
+			final int nSimultaneousFrames = ( ( SpotDetectorFactory ) factory ).forbidMultithreading()
+					? 1
+					: Math.max( 1, Math.min( numThreads, numFrames ) );
+			final int threadsPerFrame = Math.max( 1, numThreads / nSimultaneousFrames );
+			linker.setNumThreads( threadsPerFrame );
+
+			final FrameSource source = openFrameSource();
+			final SpotFeatureCalculator calculator = new SpotFeatureCalculator( model, settings );
+			cancelables.add( calculator );
+			calculator.setNumThreads( threadsPerFrame );
+			calculator.setFrameSource( source );
+			calculator.declareFeatures();
+
+			logger.log( "Pipeline processes "
+					+ ( ( nSimultaneousFrames > 1 ) ? ( nSimultaneousFrames + " frames" ) : "1 frame" )
+					+ " simultaneously and allocates "
+					+ ( ( threadsPerFrame > 1 ) ? ( threadsPerFrame + " threads" ) : "1 thread" )
+					+ " per frame.\n" );
+
+			final Double initialSpotFilterValue = settings.initialSpotFilterValue;
+			final List< FeatureFilter > spotFilters = settings.getSpotFilters();
+			final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = new SimpleWeightedGraph<>( DefaultWeightedEdge.class );
+			// Frames that went through spot filtering.
+			final boolean[] ready = new boolean[ numFrames ];
+			final AtomicBoolean ok = new AtomicBoolean( true );
+			final AtomicInteger spotFound = new AtomicInteger( 0 );
+			final AtomicInteger progress = new AtomicInteger( 0 );
+
+			final List< Callable< Boolean > > tasks = new ArrayList<>( numFrames );
+			for ( int i = settings.tstart; i <= settings.tend; i++ )
+			{
+				final int frame = i;
+				tasks.add( new Callable< Boolean >()
+				{
+					@Override
+					public Boolean call() throws Exception
 					{
-						if ( val < tval )
+						if ( !ok.get() || isCanceled() )
+							return Boolean.TRUE;
+
+						// Detection.
+						final List< Spot > detected = detectFrame( ( SpotDetectorFactory ) factory, source, img, interval, frame, threadsPerFrame );
+						if ( null == detected )
 						{
-							trackIsOk = false;
-							break;
+							ok.set( false );
+							return Boolean.FALSE;
 						}
-					}
-					else
-					{
-						if ( val > tval )
+
+						// Initial filtering.
+						final List< Spot > frameSpots = new ArrayList<>( detected.size() );
+						for ( final Spot spot : detected )
+							if ( null == initialSpotFilterValue || spot.getFeature( Spot.QUALITY ).compareTo( initialSpotFilterValue ) >= 0 )
+								frameSpots.add( spot );
+						spots.put( frame, frameSpots );
+
+						// Spot features and spot filtering.
+						calculator.computeSpotFeatures( frame, spots.iterable( frame, false ) );
+						spots.filter( frame, spotFilters );
+						spotFound.addAndGet( frameSpots.size() );
+
+						// Link to the neighbor frames that are ready.
+						final int index = frame - settings.tstart;
+						final boolean linkPrevious;
+						final boolean linkNext;
+						synchronized ( ready )
 						{
-							trackIsOk = false;
-							break;
+							ready[ index ] = true;
+							linkPrevious = index > 0 && ready[ index - 1 ];
+							linkNext = index < numFrames - 1 && ready[ index + 1 ];
 						}
+						if ( linkPrevious && !linkFrames( linker, spots, frame - 1, frame, graph )
+								|| linkNext && !linkFrames( linker, spots, frame, frame + 1, graph ) )
+						{
+							ok.set( false );
+							return Boolean.FALSE;
+						}
+
+						logger.setProgress( progress.incrementAndGet() / ( double ) numFrames );
+						return Boolean.TRUE;
 					}
-				}
-				model.setTrackVisibility( trackID, trackIsOk );
+				} );
+			}
+
+			logger.setStatus( "Detection and tracking..." );
+			logger.setProgress( 0 );
+			try
+			{
+				getExecutor().invokeAll( "Pipeline", tasks, nSimultaneousFrames );
+			}
+			catch ( InterruptedException | ExecutionException e )
+			{
+				errorMessage = "Problem during pipelined detection and tracking: " + e.getMessage();
+				ok.set( false );
+				e.printStackTrace();
+			}
+			finally
+			{
+				closeFrameSource( source );
 			}
+			logger.setProgress( 1 );
+			logger.setStatus( "" );
+
+			model.setSpots( spots, true );
+			model.notifyFeaturesComputed();
+			model.filterSpots( spotFilters, true );
+			if ( !ok.get() )
+			{
+				logger.error( "Pipelined detection and tracking failed after " + progress.get() + " frames:\n" + errorMessage );
+				return false;
+			}
+
+			if ( isCanceled() )
+				logger.log( "Pipelined detection and tracking canceled after " + progress.get() + " frames. Reason:\n" + getCancelReason() + "\n" );
+			logger.log( "Found " + spotFound.get() + " spots.\n" );
+			model.setTracks( graph, true );
+			return true;
 		}
 		finally
 		{
-			model.endUpdate();
+			TrackMateExecutor.bind( previous );
+		}
+	}
+
+	/**
+	 * Returns the frame source to use for one step. If none was set and the
+	 * image is a virtual stack, a new {@link CachedFrameSource} is created. It
+	 * must be released with {@link #closeFrameSource(FrameSource)} at the end
+	 * of the step.
+	 *
+	 * @return the frame source, or <code>null</code> if frames are to be
+	 *         sliced from the whole image.
+	 */
+	private FrameSource openFrameSource()
+	{
+		FrameSource source = frameSource;
+		if ( null == source )
+		{
+			if ( null == settings.imp || !settings.imp.getStack().isVirtual() )
+				return null;
+
+			final CachedFrameSource cached = new CachedFrameSource( settings.imp, Runtime.getRuntime().maxMemory() / 4, numThreads );
+			model.getLogger().log( "Reading frames of the virtual stack through a cache of "
+					+ cached.getCapacity() + " frames.\n" );
+			source = cached;
+		}
+
+		final int[] order = new int[ settings.tend - settings.tstart + 1 ];
+		for ( int i = 0; i < order.length; i++ )
+			order[ i ] = settings.tstart + i;
+		source.setProcessingOrder( order );
+		return source;
+	}
+
+	private void closeFrameSource( final FrameSource source )
+	{
+		if ( null != source && source != frameSource )
+			source.close();
+	}
+
+	/**
+	 * Links the visible spots of two frames with the specified tracker.
+	 */
+	private boolean linkFrames( final FrameToFrameTracker linker, final SpotCollection spots, final int frame0, final int frame1, final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph )
+	{
+		final List< Spot > sources = new ArrayList<>();
+		for ( final Spot spot : spots.iterable( frame0, true ) )
+			sources.add( spot );
+		final List< Spot > targets = new ArrayList<>();
+		for ( final Spot spot : spots.iterable( frame1, true ) )
+			targets.add( spot );
+
+		if ( sources.isEmpty() || targets.isEmpty() || isCanceled() )
+			return true;
+
+		if ( !linker.linkFrames( sources, targets, graph ) )
+		{
+			errorMessage = "Tracking process failed:\n" + linker.getErrorMessage();
+			return false;
 		}
 		return true;
 	}
 
+	/**
+	 * Executes the steps from detection to tracking one after the other.
+	 */
+	private boolean execStaged()
+	{
+		if ( !execDetection() )
+			return false;
+		if ( isCanceled() )
+			return true;
+
+		if ( !execInitialSpotFiltering() )
+			return false;
+		if ( isCanceled() )
+			return true;
+
+		if ( !computeSpotFeatures( true ) )
+			return false;
+		if ( isCanceled() )
+			return true;
+
+		if ( !execSpotFiltering( true ) )
+			return false;
+		if ( isCanceled() )
+			return true;
+
+		return execTracking();
+	}
+
 	@Override
 	public String toString()
 	{
@@ -772,37 +1357,12 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 	@Override
 	public boolean process()
 	{
-		if ( !execDetection() )
-			return false;
-		if ( isCanceled() )
-			return true;
-
-		if ( !execInitialSpotFiltering() )
-			return false;
-		if ( isCanceled() )
-			return true;
-
-		if ( !computeSpotFeatures( true ) )
-			return false;
-		if ( isCanceled() )
-			return true;
-
-		if ( !execSpotFiltering( true ) )
-			return false;
-		if ( isCanceled() )
-			return true;
-
-		if ( !execTracking() )
-			return false;
-		if ( isCanceled() )
-			return true;
-
-		if ( !computeEdgeFeatures( true ) )
+		if ( !( pipelined ? execPipelined() : execStaged() ) )
 			return false;
 		if ( isCanceled() )
 			return true;
 
-		if ( !computeTrackFeatures( true ) )
+		if ( !computeEdgeAndTrackFeatures( true ) )
 			return false;
 		if ( isCanceled() )
 			return true;
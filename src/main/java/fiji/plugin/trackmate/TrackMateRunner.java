@@ -36,6 +36,7 @@ import java.util.Set;
 
 import javax.swing.JFrame;
 
+import fiji.plugin.trackmate.action.CaptureOverlayAction;
 import fiji.plugin.trackmate.action.ExportTracksToXML;
 import fiji.plugin.trackmate.detection.DetectorKeys;
 import fiji.plugin.trackmate.detection.LogDetectorFactory;
@@ -47,6 +48,7 @@ import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings;
 import fiji.plugin.trackmate.gui.wizard.WizardSequence;
 import fiji.plugin.trackmate.gui.wizard.descriptors.ConfigureViewsDescriptor;
 import fiji.plugin.trackmate.gui.wizard.descriptors.LogPanelDescriptor2;
+import fiji.plugin.trackmate.io.StatsExporter;
 import fiji.plugin.trackmate.io.TmXmlWriter;
 import fiji.plugin.trackmate.tracking.TrackerKeys;
 import fiji.plugin.trackmate.tracking.sparselap.SimpleSparseLAPTrackerFactory;
@@ -159,6 +161,19 @@ public class TrackMateRunner extends TrackMatePlugIn
 	 */
 	private static final String ARG_EXPORT_TO = "export_to";
 
+	/**
+	 * The macro parameter to set the path to a folder to export the spot,
+	 * edge, track and branch statistics to. See {@link StatsExporter}. Is
+	 * ignored if the {@link #ARG_USE_GUI} is set to <code>true</code>.
+	 */
+	private static final String ARG_STATS_TO = "stats_to";
+
+	/**
+	 * The macro parameter to set the format of the statistics export. Accept
+	 * <code>csv</code> (default) or <code>binary</code>.
+	 */
+	private static final String ARG_STATS_FORMAT = "stats_format";
+
 	/**
 	 * The macro parameter to set whether we should display results after
 	 * processing. Accept boolean values. Is ignored if the {@link #ARG_USE_GUI}
@@ -166,6 +181,16 @@ public class TrackMateRunner extends TrackMatePlugIn
 	 */
 	private static final String ARG_DISPLAY_RESULTS = "display_results";
 
+	/**
+	 * The macro parameter to set the path to save a capture of the TrackMate
+	 * overlay to, once the tracking process has completed. If the path ends
+	 * with <code>.tif</code>, all the frames are saved in one TIFF file.
+	 * Otherwise the path is a folder in which one PNG file is saved per frame.
+	 * The capture is made offscreen and does not require a display. Is ignored
+	 * if the {@link #ARG_USE_GUI} is set to <code>true</code>.
+	 */
+	private static final String ARG_CAPTURE_TO = "capture_to";
+
 	/**
 	 * The macro parameter to set the track filter value on the number of spots
 	 * in tracks. If used, tracks made of less spots than the specified value
@@ -180,6 +205,7 @@ public class TrackMateRunner extends TrackMatePlugIn
 
 	static
 	{
+		SUPPORTED_ARGS.add( ARG_CAPTURE_TO );
 		SUPPORTED_ARGS.add( ARG_CHANNEL );
 		SUPPORTED_ARGS.add( ARG_DISPLAY_RESULTS );
 		SUPPORTED_ARGS.add( ARG_EXPORT_TO );
@@ -191,6 +217,8 @@ public class TrackMateRunner extends TrackMatePlugIn
 		SUPPORTED_ARGS.add( ARG_MAX_GAP_FRAMES );
 		SUPPORTED_ARGS.add( ARG_MEDIAN );
 		SUPPORTED_ARGS.add( ARG_SAVE_TO );
+		SUPPORTED_ARGS.add( ARG_STATS_FORMAT );
+		SUPPORTED_ARGS.add( ARG_STATS_TO );
 		SUPPORTED_ARGS.add( ARG_SUBPIXEL );
 		SUPPORTED_ARGS.add( ARG_THRESHOLD );
 		SUPPORTED_ARGS.add( ARG_USE_GUI );
@@ -490,6 +518,46 @@ public class TrackMateRunner extends TrackMatePlugIn
 
 				}
 
+				/*
+				 * Export statistics.
+				 */
+
+				if ( macroOptions.containsKey( ARG_STATS_TO ) )
+				{
+					final File stats_path = new File( macroOptions.get( ARG_STATS_TO ) );
+					final String format_str = macroOptions.containsKey( ARG_STATS_FORMAT ) ? macroOptions.get( ARG_STATS_FORMAT ) : "csv";
+					final StatsExporter.Format format;
+					if ( format_str.equalsIgnoreCase( "csv" ) )
+						format = StatsExporter.Format.CSV;
+					else if ( format_str.equalsIgnoreCase( "binary" ) )
+						format = StatsExporter.Format.BINARY;
+					else
+					{
+						logger.error( "Unknown statistics format: " + format_str + ". Expected csv or binary.\n" );
+						return;
+					}
+
+					final StatsExporter exporter = new StatsExporter( model, stats_path, format, logger );
+					exporter.setNumThreads( trackmate.getNumThreads() );
+					if ( !exporter.checkInput() || !exporter.process() )
+					{
+						logger.error( "When exporting statistics to " + stats_path + ":\n" + exporter.getErrorMessage() + '\n' );
+						return;
+					}
+					logger.log( "Statistics exported to: " + stats_path.toString() + '\n' );
+				}
+
+				/*
+				 * Capture the overlay to disk.
+				 */
+
+				if ( macroOptions.containsKey( ARG_CAPTURE_TO ) )
+				{
+					final File capture_path = new File( macroOptions.get( ARG_CAPTURE_TO ) );
+					if ( !CaptureOverlayAction.capture( trackmate, selectionModel, displaySettings, capture_path, 1, imp.getNFrames(), false, 1. ) )
+						return;
+				}
+
 
 				/*
 				 * Display results.
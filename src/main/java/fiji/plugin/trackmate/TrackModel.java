@@ -21,6 +21,8 @@
  */
 package fiji.plugin.trackmate;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -50,7 +52,10 @@ import org.jgrapht.graph.SimpleWeightedGraph;
 import org.jgrapht.traverse.BreadthFirstIterator;
 import org.jgrapht.traverse.DepthFirstIterator;
 import org.jgrapht.traverse.GraphIterator;
+import fiji.plugin.trackmate.graph.ConvexBranchesDecomposition;
+import fiji.plugin.trackmate.graph.ConvexBranchesDecomposition.TrackBranchDecomposition;
 import fiji.plugin.trackmate.graph.Function1;
+import fiji.plugin.trackmate.graph.LineageIndex;
 import fiji.plugin.trackmate.graph.SortedDepthFirstIterator;
 import fiji.plugin.trackmate.graph.TimeDirectedDepthFirstIterator;
 import fiji.plugin.trackmate.graph.TimeDirectedNeighborIndex;
@@ -143,6 +148,33 @@ public class TrackModel
 
 	private final Iterator< String > nameGenerator = new DefaultNameGenerator();
 
+	/**
+	 * The lineage indices built so far, per track ID. They are built on demand
+	 * and discarded as soon as their track changes.
+	 */
+	private final Map< Integer, LineageIndex > lineageIndices = new HashMap<>();
+
+	/**
+	 * The convex branch decompositions computed so far, per track ID, for
+	 * each combination of decomposition parameters. Like the lineage indices,
+	 * they are discarded as soon as their track changes.
+	 */
+	private final Map< Integer, TrackBranchDecomposition[] > branchDecompositions = new HashMap<>();
+
+	/**
+	 * Incremented each time a track index is discarded. Used to detect
+	 * changes while a decomposition is computed without lock.
+	 */
+	private long trackIndicesStamp = 0;
+
+	/**
+	 * When not <code>null</code>, the graph listener is in bulk mode: removed
+	 * edges and spots are only recorded, and the IDs of the tracks they
+	 * belonged to are collected here, so that the connected components can be
+	 * recomputed once at the end.
+	 */
+	private Set< Integer > bulkAffected = null;
+
 	/*
 	 * Constructors -----------------------------------------------------------
 	 */
@@ -179,6 +211,7 @@ public class TrackModel
 		}
 		this.graph = new DefaultListenableGraph< >( graph );
 		this.graph.addGraphListener( mgl );
+		clearTrackIndices();
 		init( graph );
 	}
 
@@ -222,6 +255,7 @@ public class TrackModel
 		}
 		this.graph = new DefaultListenableGraph< >( lGraph );
 		this.graph.addGraphListener( mgl );
+		clearTrackIndices();
 
 		edgesAdded.clear();
 		edgesModified.clear();
@@ -274,6 +308,50 @@ public class TrackModel
 
 	}
 
+	/**
+	 * Replaces the content of this model like
+	 * {@link #from(SimpleWeightedGraph, Map, Map, Map, Map)}, for a graph that
+	 * contains all the spots and edges of this model and new ones. Contrary to
+	 * the former, the pending transaction is kept, and the edges that are not
+	 * in this model yet are recorded as added, with the tracks they belong
+	 * to.
+	 *
+	 * @param lGraph
+	 *            the mother graph for the model.
+	 * @param trackSpots
+	 *            the mapping of track IDs vs the connected components as sets
+	 *            of spots.
+	 * @param trackEdges
+	 *            the mapping of track IDs vs the connected components as sets
+	 *            of edges.
+	 * @param trackVisibility
+	 *            the track visibility.
+	 * @param trackNames
+	 *            the track names.
+	 */
+	void append( final SimpleWeightedGraph< Spot, DefaultWeightedEdge > lGraph, final Map< Integer, Set< Spot > > trackSpots, final Map< Integer, Set< DefaultWeightedEdge > > trackEdges, final Map< Integer, Boolean > trackVisibility, final Map< Integer, String > trackNames )
+	{
+		final Set< DefaultWeightedEdge > previousEdges = new HashSet<>( graph.edgeSet() );
+		final Set< DefaultWeightedEdge > added = new HashSet<>( edgesAdded );
+		final Set< DefaultWeightedEdge > removed = new HashSet<>( edgesRemoved );
+		final Set< DefaultWeightedEdge > modified = new HashSet<>( edgesModified );
+		final Set< Integer > updated = new HashSet<>( tracksUpdated );
+
+		from( lGraph, trackSpots, trackEdges, trackVisibility, trackNames );
+
+		edgesAdded.addAll( added );
+		edgesRemoved.addAll( removed );
+		edgesModified.addAll( modified );
+		tracksUpdated.addAll( updated );
+		for ( final DefaultWeightedEdge edge : lGraph.edgeSet() )
+		{
+			if ( previousEdges.contains( edge ) )
+				continue;
+			edgesAdded.add( edge );
+			tracksUpdated.add( edgeToID.get( edge ) );
+		}
+	}
+
 	/*
 	 * DEFAULT VISIBILIT METHODS made to be called from the mother model.
 	 */
@@ -288,6 +366,35 @@ public class TrackModel
 		graph.removeVertex( spotToRemove );
 	}
 
+	/**
+	 * Removes the specified spots and their edges from the graph. Contrary to
+	 * removing them one by one, the tracks they belonged to are split or
+	 * discarded only once, after all the spots have been removed.
+	 * <p>
+	 * The resulting tracks are the same as with the one-by-one removal: in
+	 * each affected track, the largest remaining piece (in spots) keeps the
+	 * track ID, name and visibility, and the other pieces that still have
+	 * edges become new tracks with the same visibility.
+	 *
+	 * @param spotsToRemove
+	 *            the spots to remove.
+	 */
+	void removeSpots( final Collection< Spot > spotsToRemove )
+	{
+		bulkAffected = new HashSet<>();
+		try
+		{
+			for ( final Spot spot : spotsToRemove )
+				graph.removeVertex( spot );
+		}
+		finally
+		{
+			final Set< Integer > affected = bulkAffected;
+			bulkAffected = null;
+			rebuildTracks( affected );
+		}
+	}
+
 	DefaultWeightedEdge addEdge( final Spot source, final Spot target, final double weight )
 	{
 		if ( !graph.containsVertex( source ) )
@@ -313,6 +420,34 @@ public class TrackModel
 		return graph.removeEdge( edge );
 	}
 
+	/**
+	 * Removes the specified edges from the graph, splitting the tracks they
+	 * belonged to only once, after all the edges have been removed.
+	 *
+	 * @param edgesToRemove
+	 *            the edges to remove.
+	 * @return the number of edges that were found and removed.
+	 * @see #removeSpots(Collection)
+	 */
+	int removeEdges( final Collection< DefaultWeightedEdge > edgesToRemove )
+	{
+		int nRemoved = 0;
+		bulkAffected = new HashSet<>();
+		try
+		{
+			for ( final DefaultWeightedEdge edge : edgesToRemove )
+				if ( graph.removeEdge( edge ) )
+					nRemoved++;
+		}
+		finally
+		{
+			final Set< Integer > affected = bulkAffected;
+			bulkAffected = null;
+			rebuildTracks( affected );
+		}
+		return nRemoved;
+	}
+
 	void setEdgeWeight( final DefaultWeightedEdge edge, final double weight )
 	{
 		graph.setEdgeWeight( edge, weight );
@@ -802,6 +937,101 @@ public class TrackModel
 		return new TimeDirectedNeighborIndex( graph );
 	}
 
+	/**
+	 * Returns the lineage index of the track with the specified ID. The index
+	 * is built on the first call, and kept until the track is modified.
+	 *
+	 * @param trackID
+	 *            the track ID.
+	 * @return the lineage index, or <code>null</code> if there is no track
+	 *         with this ID.
+	 */
+	public synchronized LineageIndex getLineageIndex( final Integer trackID )
+	{
+		LineageIndex index = lineageIndices.get( trackID );
+		if ( null == index && connectedVertexSets.containsKey( trackID ) )
+		{
+			index = new LineageIndex( this, trackID );
+			lineageIndices.put( trackID, index );
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the convex branch decomposition of the track with the specified
+	 * ID. The decomposition is computed on the first call, and kept until the
+	 * track is modified. It is computed without holding the lock on this
+	 * model, so that several tracks can be decomposed concurrently.
+	 * <p>
+	 * The returned instance is shared and must not be modified.
+	 *
+	 * @param trackID
+	 *            the track ID.
+	 * @param forbidMiddleLinks
+	 *            if <code>true</code>, links between branches can only join
+	 *            the end of a branch to the start of another.
+	 * @param forbidGaps
+	 *            if <code>true</code>, branches cannot contain gaps.
+	 * @return the branch decomposition, or <code>null</code> if there is no
+	 *         track with this ID.
+	 * @see ConvexBranchesDecomposition#processTrack(Integer, TrackModel,
+	 *      TimeDirectedNeighborIndex, boolean, boolean)
+	 */
+	public TrackBranchDecomposition getBranchDecomposition( final Integer trackID, final boolean forbidMiddleLinks, final boolean forbidGaps )
+	{
+		final int slot = ( forbidMiddleLinks ? 1 : 0 ) + ( forbidGaps ? 2 : 0 );
+		final long stamp;
+		synchronized ( this )
+		{
+			final TrackBranchDecomposition[] cached = branchDecompositions.get( trackID );
+			if ( null != cached && null != cached[ slot ] )
+				return cached[ slot ];
+			if ( !connectedVertexSets.containsKey( trackID ) )
+				return null;
+			stamp = trackIndicesStamp;
+		}
+
+		final TrackBranchDecomposition decomposition = ConvexBranchesDecomposition.processTrack(
+				trackID, this, getDirectedNeighborIndex(), forbidMiddleLinks, forbidGaps );
+
+		synchronized ( this )
+		{
+			// Only cache if no track changed in the meantime.
+			if ( stamp == trackIndicesStamp )
+				branchDecompositions.computeIfAbsent( trackID, id -> new TrackBranchDecomposition[ 4 ] )[ slot ] = decomposition;
+		}
+		return decomposition;
+	}
+
+	/**
+	 * Discards the lineage index and the branch decompositions of the track
+	 * the specified spot belongs to. Must be called when the frame of a spot
+	 * changes.
+	 *
+	 * @param spot
+	 *            the spot.
+	 */
+	synchronized void invalidateTrackIndices( final Spot spot )
+	{
+		final Integer id = vertexToID.get( spot );
+		if ( null != id )
+			invalidateTrackIndices( id );
+	}
+
+	private synchronized void invalidateTrackIndices( final Integer id )
+	{
+		lineageIndices.remove( id );
+		branchDecompositions.remove( id );
+		trackIndicesStamp++;
+	}
+
+	private synchronized void clearTrackIndices()
+	{
+		lineageIndices.clear();
+		branchDecompositions.clear();
+		trackIndicesStamp++;
+	}
+
 	/**
 	 * Returns the shortest path between two connected spot, using Dijkstra's
 	 * algorithm. The edge weights, if any, are ignored here, meaning that the
@@ -826,6 +1056,82 @@ public class TrackModel
 		return path;
 	}
 
+	/**
+	 * Recomputes the connected components of the specified tracks after spots
+	 * or edges have been removed from them in bulk. Only the spots of these
+	 * tracks are traversed: removals cannot connect a track to another one.
+	 *
+	 * @param ids
+	 *            the IDs of the tracks that lost spots or edges.
+	 */
+	private void rebuildTracks( final Set< Integer > ids )
+	{
+		for ( final Integer id : ids )
+		{
+			invalidateTrackIndices( id );
+			final Set< Spot > oldSpots = connectedVertexSets.remove( id );
+			connectedEdgeSets.remove( id );
+			final Boolean trackVisibility = visibility.remove( id );
+			final String name = names.remove( id );
+			tracksUpdated.remove( id );
+			if ( null == oldSpots )
+				continue;
+
+			final List< Set< Spot > > vertexSets = new ArrayList<>();
+			final List< Set< DefaultWeightedEdge > > edgeSets = new ArrayList<>();
+			final Set< Spot > visited = new HashSet<>( oldSpots.size() );
+			for ( final Spot start : oldSpots )
+			{
+				if ( visited.contains( start ) || !graph.containsVertex( start ) )
+					continue;
+
+				final Set< Spot > vcs = new HashSet<>();
+				final Set< DefaultWeightedEdge > ecs = new HashSet<>();
+				final BreadthFirstIterator< Spot, DefaultWeightedEdge > it = new BreadthFirstIterator<>( graph, start );
+				while ( it.hasNext() )
+				{
+					final Spot v = it.next();
+					vcs.add( v );
+					ecs.addAll( graph.edgesOf( v ) );
+				}
+				visited.addAll( vcs );
+
+				if ( ecs.isEmpty() )
+				{
+					// A solitary vertex has no right to be called a track.
+					for ( final Spot v : vcs )
+						vertexToID.remove( v );
+					continue;
+				}
+				vertexSets.add( vcs );
+				edgeSets.add( ecs );
+			}
+
+			// The largest piece keeps the ID and the name.
+			int largest = -1;
+			for ( int i = 0; i < vertexSets.size(); i++ )
+				if ( largest < 0 || vertexSets.get( i ).size() > vertexSets.get( largest ).size() )
+					largest = i;
+
+			for ( int i = 0; i < vertexSets.size(); i++ )
+			{
+				final Integer nid = ( i == largest ) ? id : Integer.valueOf( IDcounter++ );
+				final Set< Spot > vcs = vertexSets.get( i );
+				final Set< DefaultWeightedEdge > ecs = edgeSets.get( i );
+				for ( final Spot v : vcs )
+					vertexToID.put( v, nid );
+				for ( final DefaultWeightedEdge e : ecs )
+					edgeToID.put( e, nid );
+				connectedVertexSets.put( nid, vcs );
+				connectedEdgeSets.put( nid, ecs );
+				visibility.put( nid, trackVisibility );
+				names.put( nid, ( i == largest ) ? name : nameGenerator.next() );
+				// Transaction: all the remaining pieces are marked for update.
+				tracksUpdated.add( nid );
+			}
+		}
+	}
+
 	/*
 	 * Inner Classes
 	 */
@@ -951,6 +1257,14 @@ public class TrackModel
 			if ( null == connectedEdgeSets ) { return; }
 
 			final Spot v = event.getVertex();
+			if ( null != bulkAffected )
+			{
+				final Integer id = vertexToID.remove( v );
+				if ( null != id )
+					bulkAffected.add( id );
+				return;
+			}
+			invalidateTrackIndices( v );
 			vertexToID.remove( v );
 			final Integer id = vertexToID.get( v );
 			if ( id != null )
@@ -992,6 +1306,8 @@ public class TrackModel
 			final Integer sid = vertexToID.get( sv );
 			final Spot tv = graph.getEdgeTarget( e );
 			final Integer tid = vertexToID.get( tv );
+			invalidateTrackIndices( sv );
+			invalidateTrackIndices( tv );
 
 			if ( null != tid && null != sid )
 			{
@@ -1146,8 +1462,17 @@ public class TrackModel
 			// To maintain connected sets coherence
 
 			final DefaultWeightedEdge e = event.getEdge();
+			if ( null != bulkAffected )
+			{
+				// Split tracks later, once.
+				final Integer id = edgeToID.remove( e );
+				if ( null != id )
+					bulkAffected.add( id );
+				return;
+			}
 			final Integer id = edgeToID.get( e );
 			if ( null == id ) { throw new RuntimeException( "Edge is unkown to this model: " + e ); }
+			invalidateTrackIndices( id );
 			final Set< DefaultWeightedEdge > set = connectedEdgeSets.get( id );
 			if ( null == set ) { throw new RuntimeException( "Unknown set ID: " + id ); }
 
@@ -27,9 +27,11 @@ import static fiji.plugin.trackmate.gui.Icons.TRACKMATE_ICON;
 import java.awt.Frame;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.io.File;
 
 import javax.swing.ImageIcon;
 import javax.swing.JOptionPane;
+import javax.swing.filechooser.FileNameExtensionFilter;
 
 import org.scijava.plugin.Plugin;
 
@@ -37,9 +39,13 @@ import fiji.plugin.trackmate.Logger;
 import fiji.plugin.trackmate.SelectionModel;
 import fiji.plugin.trackmate.TrackMate;
 import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings;
+import fiji.plugin.trackmate.util.FileChooser;
+import fiji.plugin.trackmate.util.FileChooser.DialogType;
+import fiji.plugin.trackmate.util.FileChooser.SelectionMode;
 import fiji.plugin.trackmate.util.TMUtils;
 import fiji.plugin.trackmate.visualization.ViewUtils;
 import fiji.plugin.trackmate.visualization.hyperstack.HyperStackDisplayer;
+import fiji.plugin.trackmate.visualization.hyperstack.OffscreenOverlayCapture;
 import ij.ImagePlus;
 import ij.ImageStack;
 import ij.measure.Calibration;
@@ -61,6 +67,10 @@ public class CaptureOverlayAction extends AbstractTMAction
 			"It can take long since we pause between each frame to ensure the whole <br>" +
 			"overlay is redrawn. The current zoom is taken into account. <br>" +
 			"Also, make sure nothing is moved over the image while capturing. " +
+			"<p>" +
+			"Alternatively, the capture can be saved directly to disk, as a TIFF <br>" +
+			"file or as a PNG sequence. Frames are then painted offscreen and in <br>" +
+			"parallel, and are not all kept in memory, which suits long movies. " +
 			"</html>";
 
 	private static int firstFrame = -1;
@@ -69,6 +79,10 @@ public class CaptureOverlayAction extends AbstractTMAction
 
 	private static boolean hideImage = false;
 
+	private static boolean saveToDisk = false;
+
+	private static String selectedFile = null;
+
 	@Override
 	public void execute( final TrackMate trackmate, final SelectionModel selectionModel, final DisplaySettings displaySettings, final Frame gui )
 	{
@@ -83,7 +97,7 @@ public class CaptureOverlayAction extends AbstractTMAction
 
 		if ( gui != null )
 		{
-			final CaptureOverlayPanel panel = new CaptureOverlayPanel( firstFrame, lastFrame, hideImage );
+			final CaptureOverlayPanel panel = new CaptureOverlayPanel( firstFrame, lastFrame, hideImage, saveToDisk );
 			final int userInput = JOptionPane.showConfirmDialog(
 					gui,
 					panel,
@@ -102,6 +116,28 @@ public class CaptureOverlayAction extends AbstractTMAction
 			firstFrame = Math.max( 1, firstFrame );
 			lastFrame = Math.min( imp.getNFrames(), lastFrame );
 			hideImage = panel.isHideImage();
+			saveToDisk = panel.isSaveToDisk();
+		}
+
+		if ( saveToDisk )
+		{
+			if ( null == selectedFile )
+				selectedFile = new File( System.getProperty( "user.home" ), imp.getShortTitle() + "-capture.tif" ).getAbsolutePath();
+			final File file = FileChooser.chooseFile(
+					gui,
+					selectedFile,
+					new FileNameExtensionFilter( "TIFF files, or a folder for a PNG sequence", "tif", "tiff" ),
+					"Save TrackMate capture",
+					DialogType.SAVE,
+					SelectionMode.FILES_AND_DIRECTORIES );
+			if ( null == file )
+				return;
+
+			selectedFile = file.getAbsolutePath();
+			final double magnification = ( null == imp.getCanvas() ) ? 1. : imp.getCanvas().getMagnification();
+			if ( !capture( trackmate, selectionModel, displaySettings, file, firstFrame, lastFrame, hideImage, magnification ) )
+				logger.error( "Capture failed.\n" );
+			return;
 		}
 
 		if ( hideImage )
@@ -204,6 +240,69 @@ public class CaptureOverlayAction extends AbstractTMAction
 		return capture;
 	}
 
+	/**
+	 * Captures the TrackMate display of the specified frames offscreen, and
+	 * saves it to disk as the frames are painted. Frames are painted in
+	 * parallel, with the current channel and Z-slice of the image, and the
+	 * specified magnification. Does not require a display.
+	 * <p>
+	 * If the target file name ends with <code>.tif</code> or
+	 * <code>.tiff</code>, the capture is saved as a single TIFF file.
+	 * Otherwise, the target is a folder in which a PNG file is saved for each
+	 * frame.
+	 *
+	 * @param trackmate
+	 *            the TrackMate instance to capture.
+	 * @param selectionModel
+	 *            the selection to highlight, can be <code>null</code>.
+	 * @param displaySettings
+	 *            the display settings to use.
+	 * @param target
+	 *            the TIFF file or the folder to save to.
+	 * @param first
+	 *            the first frame, inclusive, to capture.
+	 * @param last
+	 *            the last frame, inclusive, to capture.
+	 * @param hideImage
+	 *            if <code>true</code>, only the overlay is captured.
+	 * @param magnification
+	 *            the magnification of the capture.
+	 * @return <code>true</code> if the capture was saved successfully.
+	 */
+	public static boolean capture(
+			final TrackMate trackmate,
+			final SelectionModel selectionModel,
+			final DisplaySettings displaySettings,
+			final File target,
+			final int first,
+			final int last,
+			final boolean hideImage,
+			final double magnification )
+	{
+		final Logger logger = trackmate.getModel().getLogger();
+		final ImagePlus imp = trackmate.getSettings().imp;
+		final OffscreenOverlayCapture capture = new OffscreenOverlayCapture( trackmate.getModel(), selectionModel, imp, displaySettings );
+		capture.setHideImage( hideImage );
+		capture.setMagnification( magnification );
+		capture.setNumThreads( trackmate.getNumThreads() );
+		capture.setLogger( logger );
+
+		final String name = target.getName().toLowerCase();
+		final boolean ok;
+		if ( name.endsWith( ".tif" ) || name.endsWith( ".tiff" ) )
+			ok = capture.exportToTiff( target, first, last );
+		else
+			ok = capture.exportToPngSequence( target, imp.getShortTitle() + "-", first, last );
+
+		if ( !ok )
+		{
+			logger.error( capture.getErrorMessage() + '\n' );
+			return false;
+		}
+		logger.log( "Capture saved to " + target + ".\n" );
+		return true;
+	}
+
 	/**
 	 * Transfers the calibration of an {@link ImagePlus} to another one,
 	 * generated from a capture of the first one. Pixels sizes are adapter
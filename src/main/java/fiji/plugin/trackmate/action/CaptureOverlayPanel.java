@@ -46,17 +46,25 @@ public class CaptureOverlayPanel extends JPanel
 
 	private boolean hideImage;
 
+	private boolean saveToDisk;
+
 	public CaptureOverlayPanel( final int firstFrame, final int lastFrame, final boolean hideImage )
+	{
+		this( firstFrame, lastFrame, hideImage, false );
+	}
+
+	public CaptureOverlayPanel( final int firstFrame, final int lastFrame, final boolean hideImage, final boolean saveToDisk )
 	{
 		this.firstFrame = firstFrame;
 		this.lastFrame = lastFrame;
 		this.hideImage = hideImage;
+		this.saveToDisk = saveToDisk;
 
 		final GridBagLayout gridBagLayout = new GridBagLayout();
 		gridBagLayout.columnWidths = new int[] { 0, 0, 0 };
-		gridBagLayout.rowHeights = new int[] { 0, 0, 0, 0, 0 };
+		gridBagLayout.rowHeights = new int[] { 0, 0, 0, 0, 0, 0 };
 		gridBagLayout.columnWeights = new double[] { 1.0, 1.0, Double.MIN_VALUE };
-		gridBagLayout.rowWeights = new double[] { 0.0, 0.0, 0.0, 1.0, Double.MIN_VALUE };
+		gridBagLayout.rowWeights = new double[] { 0.0, 0.0, 0.0, 0.0, 1.0, Double.MIN_VALUE };
 		setLayout( gridBagLayout );
 
 		final JLabel lblFirstFrame = new JLabel( "First frame:" );
@@ -113,6 +121,25 @@ public class CaptureOverlayPanel extends JPanel
 		gbc_chckbxHideImage.gridy = 2;
 		add( chckbxHideImage, gbc_chckbxHideImage );
 
+		final JLabel lblSaveToDisk = new JLabel( "Save to disk:" );
+		lblSaveToDisk.setToolTipText( "<html>Capture offscreen and save to a TIFF file, or to a <br>"
+				+ "folder as a PNG sequence, instead of a new image window.</html>" );
+		final GridBagConstraints gbc_lblSaveToDisk = new GridBagConstraints();
+		gbc_lblSaveToDisk.anchor = GridBagConstraints.EAST;
+		gbc_lblSaveToDisk.insets = new Insets( 0, 0, 5, 5 );
+		gbc_lblSaveToDisk.gridx = 0;
+		gbc_lblSaveToDisk.gridy = 3;
+		add( lblSaveToDisk, gbc_lblSaveToDisk );
+
+		final JCheckBox chckbxSaveToDisk = new JCheckBox();
+		chckbxSaveToDisk.setSelected( saveToDisk );
+		final GridBagConstraints gbc_chckbxSaveToDisk = new GridBagConstraints();
+		gbc_chckbxSaveToDisk.anchor = GridBagConstraints.WEST;
+		gbc_chckbxSaveToDisk.insets = new Insets( 0, 0, 5, 0 );
+		gbc_chckbxSaveToDisk.gridx = 1;
+		gbc_chckbxSaveToDisk.gridy = 3;
+		add( chckbxSaveToDisk, gbc_chckbxSaveToDisk );
+
 		final FocusListener fl = new FocusAdapter()
 		{
 			@Override
@@ -134,6 +161,7 @@ public class CaptureOverlayPanel extends JPanel
 		tftFirst.addPropertyChangeListener( "value", ( e ) -> this.firstFrame = ( ( Number ) tftFirst.getValue() ).intValue() );
 		tftLast.addPropertyChangeListener( "value", ( e ) -> this.lastFrame = ( ( Number ) tftLast.getValue() ).intValue() );
 		chckbxHideImage.addActionListener( e -> this.hideImage = chckbxHideImage.isSelected() );
+		chckbxSaveToDisk.addActionListener( e -> this.saveToDisk = chckbxSaveToDisk.isSelected() );
 	}
 
 	public int getFirstFrame()
@@ -151,4 +179,9 @@ public class CaptureOverlayPanel extends JPanel
 		return hideImage;
 	}
 
+	public boolean isSaveToDisk()
+	{
+		return saveToDisk;
+	}
+
 }
@@ -25,11 +25,13 @@ import static fiji.plugin.trackmate.gui.Icons.LABEL_IMG_ICON;
 import static fiji.plugin.trackmate.gui.Icons.TRACKMATE_ICON;
 
 import java.awt.Frame;
+import java.io.File;
+import java.util.Arrays;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.ImageIcon;
 import javax.swing.JOptionPane;
+import javax.swing.filechooser.FileNameExtensionFilter;
 
 import org.scijava.plugin.Plugin;
 
@@ -39,6 +41,9 @@ import fiji.plugin.trackmate.SelectionModel;
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.TrackMate;
 import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings;
+import fiji.plugin.trackmate.util.FileChooser;
+import fiji.plugin.trackmate.util.FileChooser.DialogType;
+import fiji.plugin.trackmate.util.FileChooser.SelectionMode;
 import fiji.plugin.trackmate.util.SpotUtil;
 import fiji.plugin.trackmate.util.TMUtils;
 import ij.ImagePlus;
@@ -50,6 +55,7 @@ import net.imglib2.FinalDimensions;
 import net.imglib2.RandomAccess;
 import net.imglib2.img.Img;
 import net.imglib2.img.display.imagej.ImageJFunctions;
+import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.integer.UnsignedShortType;
 import net.imglib2.util.Util;
 import net.imglib2.view.Views;
@@ -65,15 +71,57 @@ public class LabelImgExporter extends AbstractTMAction
 			+ "everywhere, except where there are spots. Each spot is painted with "
 			+ "a uniform integer value equal to the trackID it belongs to. "
 			+ "Spots that do not belong to tracks are painted with a unique integer "
-			+ "larger than the last trackID in the dataset. "
+			+ "larger than the last trackID in the dataset, numbered from there by "
+			+ "increasing spot ID. "
 			+ "<p> "
 			+ "Only visible spots are painted. "
+			+ "<p> "
+			+ "Alternatively, spots can be painted with their spot ID, and the "
+			+ "label image can be saved directly to disk, as a 32-bit TIFF file "
+			+ "or as one TIFF file per frame. Frames are then painted in parallel "
+			+ "and are not all kept in memory, which suits long movies and "
+			+ "datasets with more than 65,535 tracks. "
 			+ "</html>";
 
 	public static final String KEY = "EXPORT_LABEL_IMG";
 
 	public static final String NAME = "Export label image";
 
+	/**
+	 * The value spots are painted with in a label image.
+	 */
+	public enum LabelIdPainting
+	{
+		/**
+		 * Spots are painted with 1 + the ID of their track. Spots that do not
+		 * belong to a visible track are painted with a unique value, larger
+		 * than all the track labels. These values are consecutive, in the
+		 * order of the spot IDs.
+		 */
+		LABEL_IS_TRACK_ID( "Track ID" ),
+		/**
+		 * Spots are painted with 1 + their ID.
+		 */
+		LABEL_IS_SPOT_ID( "Spot ID" );
+
+		private final String name;
+
+		private LabelIdPainting( final String name )
+		{
+			this.name = name;
+		}
+
+		@Override
+		public String toString()
+		{
+			return name;
+		}
+	}
+
+	private static boolean saveToDisk = false;
+
+	private static String selectedFile = null;
+
 	@Override
 	public void execute( final TrackMate trackmate, final SelectionModel selectionModel, final DisplaySettings displaySettings, final Frame gui )
 	{
@@ -83,9 +131,10 @@ public class LabelImgExporter extends AbstractTMAction
 
 		final boolean exportSpotsAsDots;
 		final boolean exportTracksOnly;
+		final LabelIdPainting labelIdPainting;
 		if ( gui != null )
 		{
-			final LabelImgExporterPanel panel = new LabelImgExporterPanel();
+			final LabelImgExporterPanel panel = new LabelImgExporterPanel( saveToDisk );
 			final int userInput = JOptionPane.showConfirmDialog(
 					gui,
 					panel,
@@ -99,18 +148,108 @@ public class LabelImgExporter extends AbstractTMAction
 
 			exportSpotsAsDots = panel.isExportSpotsAsDots();
 			exportTracksOnly = panel.isExportTracksOnly();
+			labelIdPainting = panel.getLabelIdPainting();
+			saveToDisk = panel.isSaveToDisk();
 		}
 		else
 		{
 			exportSpotsAsDots = false;
 			exportTracksOnly = false;
+			labelIdPainting = LabelIdPainting.LABEL_IS_TRACK_ID;
+		}
+
+		final ImagePlus imp = trackmate.getSettings().imp;
+		if ( saveToDisk )
+		{
+			if ( null == selectedFile )
+				selectedFile = new File( System.getProperty( "user.home" ), "LblImg_" + imp.getShortTitle() + ".tif" ).getAbsolutePath();
+			final File file = FileChooser.chooseFile(
+					gui,
+					selectedFile,
+					new FileNameExtensionFilter( "TIFF files, or a folder for one file per frame", "tif", "tiff" ),
+					"Save label image",
+					DialogType.SAVE,
+					SelectionMode.FILES_AND_DIRECTORIES );
+			if ( null == file )
+				return;
+
+			selectedFile = file.getAbsolutePath();
+			if ( !writeLabelImage( trackmate.getModel(), imp, file, exportSpotsAsDots, exportTracksOnly, labelIdPainting, trackmate.getNumThreads(), logger ) )
+				logger.error( "Label image export failed.\n" );
+			return;
 		}
 
 		/*
 		 * Generate label image.
 		 */
 
-		createLabelImagePlus( trackmate, exportSpotsAsDots, exportTracksOnly, logger ).show();
+		createLabelImagePlus( trackmate.getModel(), imp, exportSpotsAsDots, exportTracksOnly, labelIdPainting, logger ).show();
+	}
+
+	/**
+	 * Paints the spots of the specified model in a 32-bit label image, and
+	 * saves it to disk as it is painted. Frames are painted in parallel, and
+	 * only a few of them are kept in memory at once.
+	 * <p>
+	 * If the target file name ends with <code>.tif</code> or
+	 * <code>.tiff</code>, the label image is saved as a single TIFF file.
+	 * Otherwise, the target is a folder in which a TIFF file is saved for each
+	 * frame.
+	 *
+	 * @param model
+	 *            the model from which we takes the spots to paint.
+	 * @param imp
+	 *            a source image to read calibration, name and dimension from.
+	 * @param target
+	 *            the TIFF file or the folder to save to.
+	 * @param exportSpotsAsDots
+	 *            if <code>true</code>, spots will be painted as single dots
+	 *            instead of ellipsoids.
+	 * @param exportTracksOnly
+	 *            if <code>true</code>, only the spots belonging to visible
+	 *            tracks will be painted.
+	 * @param labelIdPainting
+	 *            the value to paint spots with.
+	 * @param numThreads
+	 *            the number of frames to paint at once.
+	 * @param logger
+	 *            a {@link Logger} instance, to report progress of the export
+	 *            process.
+	 * @return <code>true</code> if the label image was saved successfully.
+	 */
+	public static boolean writeLabelImage(
+			final Model model,
+			final ImagePlus imp,
+			final File target,
+			final boolean exportSpotsAsDots,
+			final boolean exportTracksOnly,
+			final LabelIdPainting labelIdPainting,
+			final int numThreads,
+			final Logger logger )
+	{
+		final int[] dimensions = imp.getDimensions();
+		final int[] dims = new int[] { dimensions[ 0 ], dimensions[ 1 ], dimensions[ 3 ], dimensions[ 4 ] };
+		final LabelImgWriter writer = new LabelImgWriter( model, dims, imp.getCalibration() );
+		writer.setExportSpotsAsDots( exportSpotsAsDots );
+		writer.setExportTracksOnly( exportTracksOnly );
+		writer.setLabelIdPainting( labelIdPainting );
+		writer.setNumThreads( numThreads );
+		writer.setLogger( logger );
+
+		final String name = target.getName().toLowerCase();
+		final boolean ok;
+		if ( name.endsWith( ".tif" ) || name.endsWith( ".tiff" ) )
+			ok = writer.exportToTiff( target );
+		else
+			ok = writer.exportToTiffSeries( target, "LblImg_" + imp.getShortTitle() + "-" );
+
+		if ( !ok )
+		{
+			logger.error( writer.getErrorMessage() + '\n' );
+			return false;
+		}
+		logger.log( "Label image saved to " + target + ".\n" );
+		return true;
 	}
 
 	/**
@@ -243,6 +382,43 @@ public class LabelImgExporter extends AbstractTMAction
 			final boolean exportSpotsAsDots,
 			final boolean exportTracksOnly,
 			final Logger logger )
+	{
+		return createLabelImagePlus( model, imp, exportSpotsAsDots, exportTracksOnly, LabelIdPainting.LABEL_IS_TRACK_ID, logger );
+	}
+
+	/**
+	 * Creates a new label {@link ImagePlus} where the spots of the specified
+	 * model are painted as ellipsoids taken from their shape, with their track
+	 * ID or their spot ID as pixel value.
+	 *
+	 * @param model
+	 *            the model from which we takes the spots to paint.
+	 * @param imp
+	 *            a source image to read calibration, name and dimension from.
+	 *            The output label image will have the same size that of this
+	 *            source image, except for the number of channels, which will be
+	 *            1.
+	 * @param exportSpotsAsDots
+	 *            if <code>true</code>, spots will be painted as single dots
+	 *            instead of ellipsoids.
+	 * @param exportTracksOnly
+	 *            if <code>true</code>, only the spots belonging to visible
+	 *            tracks will be painted.
+	 * @param labelIdPainting
+	 *            the value to paint spots with.
+	 * @param logger
+	 *            a {@link Logger} instance, to report progress of the export
+	 *            process.
+	 *
+	 * @return a new {@link ImagePlus}.
+	 */
+	public static final ImagePlus createLabelImagePlus(
+			final Model model,
+			final ImagePlus imp,
+			final boolean exportSpotsAsDots,
+			final boolean exportTracksOnly,
+			final LabelIdPainting labelIdPainting,
+			final Logger logger )
 	{
 		final int[] dimensions = imp.getDimensions();
 		final int[] dims = new int[] { dimensions[ 0 ], dimensions[ 1 ], dimensions[ 3 ], dimensions[ 4 ] };
@@ -252,7 +428,7 @@ public class LabelImgExporter extends AbstractTMAction
 				imp.getCalibration().pixelDepth,
 				imp.getCalibration().frameInterval
 		};
-		final ImagePlus lblImp = createLabelImagePlus( model, dims, calibration, exportSpotsAsDots, exportTracksOnly, logger );
+		final ImagePlus lblImp = createLabelImagePlus( model, dims, calibration, exportSpotsAsDots, exportTracksOnly, labelIdPainting, logger );
 		lblImp.setCalibration( imp.getCalibration().copy() );
 		lblImp.setTitle( "LblImg_" + imp.getTitle() );
 		return lblImp;
@@ -323,12 +499,49 @@ public class LabelImgExporter extends AbstractTMAction
 			final boolean exportSpotsAsDots,
 			final boolean exportTracksOnly,
 			final Logger logger )
+	{
+		return createLabelImagePlus( model, dimensions, calibration, exportSpotsAsDots, exportTracksOnly, LabelIdPainting.LABEL_IS_TRACK_ID, logger );
+	}
+
+	/**
+	 * Creates a new label {@link ImagePlus} where the spots of the specified
+	 * model are painted as ellipsoids taken from their shape, with their track
+	 * ID or their spot ID as pixel value.
+	 *
+	 * @param model
+	 *            the model from which we takes the spots to paint.
+	 * @param dimensions
+	 *            the desired dimensions of the output image (width, height,
+	 *            nZSlices, nFrames) as a 4 element int array. Spots outside
+	 *            these dimensions are ignored.
+	 * @param exportSpotsAsDots
+	 *            if <code>true</code>, spots will be painted as single dots
+	 *            instead of ellipsoids.
+	 * @param exportTracksOnly
+	 *            if <code>true</code>, only the spots belonging to visible
+	 *            tracks will be painted.
+	 * @param labelIdPainting
+	 *            the value to paint spots with.
+	 * @param logger
+	 *            a {@link Logger} instance, to report progress of the export
+	 *            process.
+	 *
+	 * @return a new {@link ImagePlus}.
+	 */
+	public static final ImagePlus createLabelImagePlus(
+			final Model model,
+			final int[] dimensions,
+			final double[] calibration,
+			final boolean exportSpotsAsDots,
+			final boolean exportTracksOnly,
+			final LabelIdPainting labelIdPainting,
+			final Logger logger )
 	{
 		final long[] dims = new long[ 4 ];
 		for ( int d = 0; d < dims.length; d++ )
 			dims[ d ] = dimensions[ d ];
 
-		final ImagePlus lblImp = ImageJFunctions.wrap( createLabelImg( model, dims, calibration, exportSpotsAsDots, exportTracksOnly, logger ), "LblImage" );
+		final ImagePlus lblImp = ImageJFunctions.wrap( createLabelImg( model, dims, calibration, exportSpotsAsDots, exportTracksOnly, labelIdPainting, logger ), "LblImage" );
 		lblImp.setDimensions( 1, dimensions[ 2 ], dimensions[ 3 ] );
 		lblImp.setOpenAsHyperStack( true );
 		lblImp.resetDisplayRange();
@@ -399,6 +612,45 @@ public class LabelImgExporter extends AbstractTMAction
 			final boolean exportSpotsAsDots,
 			final boolean exportTracksOnly,
 			final Logger logger )
+	{
+		return createLabelImg( model, dimensions, calibration, exportSpotsAsDots, exportTracksOnly, LabelIdPainting.LABEL_IS_TRACK_ID, logger );
+	}
+
+	/**
+	 * Creates a new label {@link Img} of {@link UnsignedShortType} where the
+	 * spots of the specified model are painted as ellipsoids taken from their
+	 * shape, with their track ID or their spot ID as pixel value. Labels
+	 * larger than 65,535 overflow, which is reported in the logger; use
+	 * {@link LabelImgWriter} for large datasets.
+	 *
+	 * @param model
+	 *            the model from which we takes the spots to paint.
+	 * @param dimensions
+	 *            the desired dimensions of the output image (width, height,
+	 *            nZSlices, nFrames) as a 4 element int array. Spots outside
+	 *            these dimensions are ignored.
+	 * @param exportSpotsAsDots
+	 *            if <code>true</code>, spots will be painted as single dots
+	 *            instead of ellipsoids.
+	 * @param exportTracksOnly
+	 *            if <code>true</code>, only the spots belonging to visible
+	 *            tracks will be painted.
+	 * @param labelIdPainting
+	 *            the value to paint spots with.
+	 * @param logger
+	 *            a {@link Logger} instance, to report progress of the export
+	 *            process.
+	 *
+	 * @return a new {@link Img}.
+	 */
+	public static final Img< UnsignedShortType > createLabelImg(
+			final Model model,
+			final long[] dimensions,
+			final double[] calibration,
+			final boolean exportSpotsAsDots,
+			final boolean exportTracksOnly,
+			final LabelIdPainting labelIdPainting,
+			final Logger logger )
 	{
 		/*
 		 * Create target image.
@@ -412,17 +664,9 @@ public class LabelImgExporter extends AbstractTMAction
 				Axes.TIME };
 		final ImgPlus< UnsignedShortType > imgPlus = new ImgPlus<>( lblImg, "LblImg", axes, calibration );
 
-		/*
-		 * Determine the starting id for spots not in tracks.
-		 */
-
-		int maxTrackID = -1;
-		final Set< Integer > trackIDs = model.getTrackModel().trackIDs( false );
-		if ( null != trackIDs )
-			for ( final Integer trackID : trackIDs )
-				if ( trackID > maxTrackID )
-					maxTrackID = trackID.intValue();
-		final AtomicInteger lonelySpotID = new AtomicInteger( maxTrackID + 2 );
+		final SpotLabels labels = new SpotLabels( model, labelIdPainting, exportTracksOnly );
+		if ( labels.maxLabel() > 0xffff )
+			logger.log( "Some labels are larger than 65535 and overflow in a 16-bit image.\n", Logger.ERROR_COLOR );
 
 		/*
 		 * Frame by frame iteration.
@@ -433,32 +677,137 @@ public class LabelImgExporter extends AbstractTMAction
 		{
 			final ImgPlus< UnsignedShortType > imgCT = TMUtils.hyperSlice( imgPlus, 0, frame );
 			final SpotWriter spotWriter = exportSpotsAsDots
-					? new SpotAsDotWriter( imgCT )
-					: new SpotRoiWriter( imgCT );
+					? new SpotAsDotWriter<>( imgCT )
+					: new SpotRoiWriter<>( imgCT );
 
 			for ( final Spot spot : model.getSpots().iterable( frame, true ) )
 			{
-				final int id;
-				final Integer trackID = model.getTrackModel().trackIDOf( spot );
-				if ( null == trackID || !model.getTrackModel().isVisible( trackID ) )
-				{
-					if ( exportTracksOnly )
-						continue;
+				final int id = labels.labelOf( spot );
+				if ( id > 0 )
+					spotWriter.write( spot, id );
+			}
+			logger.setProgress( ( double ) ( 1 + frame ) / dimensions[ 3 ] );
+		}
+		logger.log( "Done.\n" );
+
+		return lblImg;
+	}
+
+	/**
+	 * The values spots are painted with in a label image. They are computed
+	 * once for all the visible spots of a model, and depend only on the spot,
+	 * so that frames can be painted in any order.
+	 */
+	static final class SpotLabels
+	{
+
+		private final Model model;
+
+		private final LabelIdPainting labelIdPainting;
+
+		private final boolean exportTracksOnly;
+
+		/**
+		 * The label of the first spot not in a visible track, when labels are
+		 * track IDs. It is larger than all the track labels.
+		 */
+		private final int lonelySpotOffset;
+
+		/**
+		 * The sorted IDs of the visible spots not in a visible track. The
+		 * label of such a spot is the offset plus the index of its ID in this
+		 * array, so that these labels are consecutive whatever the spot IDs.
+		 */
+		private final int[] lonelySpotIDs;
 
-					id = lonelySpotID.getAndIncrement();
+		private final int maxLabel;
+
+		SpotLabels( final Model model, final LabelIdPainting labelIdPainting, final boolean exportTracksOnly )
+		{
+			this.model = model;
+			this.labelIdPainting = labelIdPainting;
+			this.exportTracksOnly = exportTracksOnly;
+
+			int maxTrackID = -1;
+			final Set< Integer > trackIDs = model.getTrackModel().trackIDs( false );
+			if ( null != trackIDs )
+				for ( final Integer trackID : trackIDs )
+					if ( trackID > maxTrackID )
+						maxTrackID = trackID.intValue();
+			this.lonelySpotOffset = maxTrackID + 2;
+
+			int maxSpotLabel = 0;
+			int maxTrackLabel = 0;
+			int nLonely = 0;
+			int[] ids = new int[ 16 ];
+			for ( final Spot spot : model.getSpots().iterable( true ) )
+			{
+				if ( inVisibleTrack( spot ) )
+				{
+					maxTrackLabel = Math.max( maxTrackLabel, 1 + model.getTrackModel().trackIDOf( spot ).intValue() );
 				}
 				else
 				{
-					id = 1 + trackID.intValue();
+					if ( exportTracksOnly )
+						continue;
+					if ( nLonely == ids.length )
+						ids = Arrays.copyOf( ids, 2 * ids.length );
+					ids[ nLonely++ ] = spot.ID();
 				}
+				maxSpotLabel = Math.max( maxSpotLabel, 1 + spot.ID() );
+			}
+			this.lonelySpotIDs = Arrays.copyOf( ids, nLonely );
+			Arrays.sort( lonelySpotIDs );
 
-				spotWriter.write( spot, id );
+			switch ( labelIdPainting )
+			{
+			case LABEL_IS_SPOT_ID:
+				this.maxLabel = maxSpotLabel;
+				break;
+			case LABEL_IS_TRACK_ID:
+			default:
+				this.maxLabel = ( nLonely > 0 ) ? lonelySpotOffset + nLonely - 1 : maxTrackLabel;
+				break;
 			}
-			logger.setProgress( ( double ) ( 1 + frame ) / dimensions[ 3 ] );
 		}
-		logger.log( "Done.\n" );
 
-		return lblImg;
+		private boolean inVisibleTrack( final Spot spot )
+		{
+			final Integer trackID = model.getTrackModel().trackIDOf( spot );
+			return null != trackID && model.getTrackModel().isVisible( trackID );
+		}
+
+		/**
+		 * Returns the value to paint the specified spot with, or 0 if it must
+		 * not be painted.
+		 */
+		int labelOf( final Spot spot )
+		{
+			final boolean inTrack = inVisibleTrack( spot );
+			if ( !inTrack && exportTracksOnly )
+				return 0;
+
+			switch ( labelIdPainting )
+			{
+			case LABEL_IS_SPOT_ID:
+				return 1 + spot.ID();
+			case LABEL_IS_TRACK_ID:
+			default:
+				if ( inTrack )
+					return 1 + model.getTrackModel().trackIDOf( spot ).intValue();
+				final int index = Arrays.binarySearch( lonelySpotIDs, spot.ID() );
+				return ( index < 0 ) ? 0 : lonelySpotOffset + index;
+			}
+		}
+
+		/**
+		 * Returns the largest label of the visible spots, or 0 if none of
+		 * them is painted.
+		 */
+		int maxLabel()
+		{
+			return maxLabel;
+		}
 	}
 
 	@Plugin( type = TrackMateActionFactory.class )
@@ -499,17 +848,17 @@ public class LabelImgExporter extends AbstractTMAction
 	/**
 	 * Interface for classes that can 'write' a spot into a label image.
 	 */
-	private static interface SpotWriter
+	static interface SpotWriter
 	{
 		public void write( Spot spot, int id );
 	}
 
-	private static final class SpotRoiWriter implements SpotWriter
+	static final class SpotRoiWriter< T extends RealType< T > > implements SpotWriter
 	{
 
-		private final ImgPlus< UnsignedShortType > img;
+		private final ImgPlus< T > img;
 
-		public SpotRoiWriter( final ImgPlus< UnsignedShortType > img )
+		public SpotRoiWriter( final ImgPlus< T > img )
 		{
 			this.img = img;
 		}
@@ -517,21 +866,21 @@ public class LabelImgExporter extends AbstractTMAction
 		@Override
 		public void write( final Spot spot, final int id )
 		{
-			for ( final UnsignedShortType pixel : SpotUtil.iterable( spot, img ) )
-				pixel.set( id );
+			for ( final T pixel : SpotUtil.iterable( spot, img ) )
+				pixel.setReal( id );
 		}
 	}
 
-	private static final class SpotAsDotWriter implements SpotWriter
+	static final class SpotAsDotWriter< T extends RealType< T > > implements SpotWriter
 	{
 
 		private final double[] calibration;
 
 		private final long[] center;
 
-		private final RandomAccess< UnsignedShortType > ra;
+		private final RandomAccess< T > ra;
 
-		public SpotAsDotWriter( final ImgPlus< UnsignedShortType > img )
+		public SpotAsDotWriter( final ImgPlus< T > img )
 		{
 			this.calibration = TMUtils.getSpatialCalibration( img );
 			this.center = new long[ img.numDimensions() ];
@@ -545,7 +894,7 @@ public class LabelImgExporter extends AbstractTMAction
 				center[ d ] = Math.round( spot.getFeature( Spot.POSITION_FEATURES[ d ] ).doubleValue() / calibration[ d ] );
 
 			ra.setPosition( center );
-			ra.get().set( id );
+			ra.get().setReal( id );
 		}
 	}
 }
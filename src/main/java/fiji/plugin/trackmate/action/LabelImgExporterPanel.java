@@ -21,13 +21,18 @@
  */
 package fiji.plugin.trackmate.action;
 
+import java.awt.FlowLayout;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
 
 import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
 
+import fiji.plugin.trackmate.action.LabelImgExporter.LabelIdPainting;
+
 public class LabelImgExporterPanel extends JPanel
 {
 
@@ -37,7 +42,16 @@ public class LabelImgExporterPanel extends JPanel
 
 	private final JCheckBox exportTracksOnly;
 
+	private final JComboBox< LabelIdPainting > labelIdPainting;
+
+	private final JCheckBox saveToDisk;
+
 	public LabelImgExporterPanel()
+	{
+		this( false );
+	}
+
+	public LabelImgExporterPanel( final boolean saveToDisk )
 	{
 		final GridBagLayout gridBagLayout = new GridBagLayout();
 		setLayout( gridBagLayout );
@@ -55,6 +69,18 @@ public class LabelImgExporterPanel extends JPanel
 		gbc.gridy++;
 		add( exportTracksOnly, gbc );
 
+		final JPanel panelLabel = new JPanel( new FlowLayout( FlowLayout.LEADING, 0, 0 ) );
+		panelLabel.add( new JLabel( "Label is: " ) );
+		labelIdPainting = new JComboBox<>( LabelIdPainting.values() );
+		panelLabel.add( labelIdPainting );
+		gbc.gridy++;
+		add( panelLabel, gbc );
+
+		this.saveToDisk = new JCheckBox( "Save to disk as 32-bit TIFF", saveToDisk );
+		this.saveToDisk.setToolTipText( "<html>Paint frames in parallel and save them to a TIFF file, <br>"
+				+ "or to a folder with one file per frame, instead of a new image window.</html>" );
+		gbc.gridy++;
+		add( this.saveToDisk, gbc );
 	}
 
 	public boolean isExportSpotsAsDots()
@@ -66,4 +92,14 @@ public class LabelImgExporterPanel extends JPanel
 	{
 		return exportTracksOnly.isSelected();
 	}
+
+	public LabelIdPainting getLabelIdPainting()
+	{
+		return ( LabelIdPainting ) labelIdPainting.getSelectedItem();
+	}
+
+	public boolean isSaveToDisk()
+	{
+		return saveToDisk.isSelected();
+	}
 }
@@ -0,0 +1,354 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.action;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import fiji.plugin.trackmate.Logger;
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.action.LabelImgExporter.LabelIdPainting;
+import fiji.plugin.trackmate.action.LabelImgExporter.SpotAsDotWriter;
+import fiji.plugin.trackmate.action.LabelImgExporter.SpotLabels;
+import fiji.plugin.trackmate.action.LabelImgExporter.SpotRoiWriter;
+import fiji.plugin.trackmate.action.LabelImgExporter.SpotWriter;
+import fiji.plugin.trackmate.io.TiffStackWriter;
+import fiji.plugin.trackmate.io.TiffStackWriter.PixelType;
+import fiji.plugin.trackmate.util.TrackMateExecutor;
+import ij.measure.Calibration;
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+
+/**
+ * Paints the spots of a model in a 32-bit label image, and writes it to disk
+ * frame by frame.
+ * <p>
+ * Unlike {@link LabelImgExporter#createLabelImg(Model, long[], double[], boolean, boolean)},
+ * the whole label image is never in memory. Several frames are painted
+ * concurrently, each in a buffer holding one frame, and written in order as
+ * soon as they are ready, either to a single TIFF file or to one TIFF file
+ * per frame. The buffers are reused from one frame to the next.
+ * <p>
+ * Labels are stored as 32-bit floats, which is what ImageJ reads. They are
+ * exact up to 16,777,216, much more than the 65,535 labels of a 16-bit image.
+ * Larger labels would collide, so the export fails if there are any.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+public class LabelImgWriter
+{
+
+	private static final String BASE_ERROR_MESSAGE = "[LabelImgWriter] ";
+
+	/**
+	 * The largest integer stored exactly in a 32-bit float.
+	 */
+	private static final int MAX_EXACT_LABEL = 1 << 24;
+
+	private final Model model;
+
+	private final int width;
+
+	private final int height;
+
+	private final int nSlices;
+
+	private final int nFrames;
+
+	private final Calibration calibration;
+
+	private boolean exportSpotsAsDots = false;
+
+	private boolean exportTracksOnly = false;
+
+	private LabelIdPainting labelIdPainting = LabelIdPainting.LABEL_IS_TRACK_ID;
+
+	private int numThreads;
+
+	private Logger logger = Logger.VOID_LOGGER;
+
+	private String errorMessage;
+
+	/**
+	 * Creates a label image writer for the specified model.
+	 *
+	 * @param model
+	 *            the model from which we takes the spots to paint.
+	 * @param dimensions
+	 *            the dimensions of the label image (width, height, nZSlices,
+	 *            nFrames) as a 4 element int array. Spots outside these
+	 *            dimensions are ignored.
+	 * @param calibration
+	 *            the calibration of the label image.
+	 */
+	public LabelImgWriter( final Model model, final int[] dimensions, final Calibration calibration )
+	{
+		this.model = model;
+		this.width = dimensions[ 0 ];
+		this.height = dimensions[ 1 ];
+		this.nSlices = Math.max( 1, dimensions[ 2 ] );
+		this.nFrames = Math.max( 1, dimensions[ 3 ] );
+		this.calibration = calibration;
+		this.numThreads = TrackMateExecutor.current().getNumThreads();
+	}
+
+	/*
+	 * SETTERS
+	 */
+
+	/**
+	 * Sets whether spots are painted as single pixels instead of their
+	 * shape. Default is <code>false</code>.
+	 *
+	 * @param exportSpotsAsDots
+	 *            whether to paint spots as dots.
+	 */
+	public void setExportSpotsAsDots( final boolean exportSpotsAsDots )
+	{
+		this.exportSpotsAsDots = exportSpotsAsDots;
+	}
+
+	/**
+	 * Sets whether only the spots of visible tracks are painted. Default is
+	 * <code>false</code>.
+	 *
+	 * @param exportTracksOnly
+	 *            whether to paint only the spots in tracks.
+	 */
+	public void setExportTracksOnly( final boolean exportTracksOnly )
+	{
+		this.exportTracksOnly = exportTracksOnly;
+	}
+
+	/**
+	 * Sets the value spots are painted with. Default is
+	 * {@link LabelIdPainting#LABEL_IS_TRACK_ID}.
+	 *
+	 * @param labelIdPainting
+	 *            the value to paint spots with.
+	 */
+	public void setLabelIdPainting( final LabelIdPainting labelIdPainting )
+	{
+		this.labelIdPainting = labelIdPainting;
+	}
+
+	/**
+	 * Sets the number of frames painted at once.
+	 *
+	 * @param numThreads
+	 *            the number of threads.
+	 */
+	public void setNumThreads( final int numThreads )
+	{
+		this.numThreads = Math.max( 1, numThreads );
+	}
+
+	public void setLogger( final Logger logger )
+	{
+		this.logger = ( null == logger ) ? Logger.VOID_LOGGER : logger;
+	}
+
+	public String getErrorMessage()
+	{
+		return errorMessage;
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	/**
+	 * Paints the specified frame in a new array. Labels larger than
+	 * 16,777,216 are not stored exactly.
+	 *
+	 * @param frame
+	 *            the frame to paint, 0-based.
+	 * @return a new array, containing the Z-slices of the frame one after the
+	 *         other, each of them row by row.
+	 */
+	public float[] render( final int frame )
+	{
+		final float[] buffer = new float[ width * height * nSlices ];
+		paint( frame, buffer, new SpotLabels( model, labelIdPainting, exportTracksOnly ) );
+		return buffer;
+	}
+
+	/**
+	 * Paints all the frames and writes them to a single TIFF file, readable
+	 * by ImageJ as a calibrated hyperstack.
+	 *
+	 * @param file
+	 *            the file to write to.
+	 * @return <code>true</code> if all the frames were written.
+	 */
+	public boolean exportToTiff( final File file )
+	{
+		final String description = TiffStackWriter.imageJDescription( 1, nSlices, nFrames, calibration );
+		try (final TiffStackWriter writer = new TiffStackWriter( file, width, height, nSlices * nFrames, PixelType.FLOAT, description, calibration.pixelWidth, calibration.pixelHeight ))
+		{
+			return stream( ( frame, buffer ) -> {
+				for ( int z = 0; z < nSlices; z++ )
+					writer.writeFloat( buffer, z * width * height );
+			} );
+		}
+		catch ( final IOException e )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "Could not write to " + file + ":\n" + e.getMessage();
+			return false;
+		}
+	}
+
+	/**
+	 * Paints all the frames and writes them in the specified folder, one TIFF
+	 * file per frame. The files are named after the prefix and the frame
+	 * number, 0-based.
+	 *
+	 * @param folder
+	 *            the folder to write to. Created if it does not exist.
+	 * @param prefix
+	 *            the file name prefix.
+	 * @return <code>true</code> if all the frames were written.
+	 */
+	public boolean exportToTiffSeries( final File folder, final String prefix )
+	{
+		if ( !folder.isDirectory() && !folder.mkdirs() )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "Could not create folder " + folder + ".";
+			return false;
+		}
+		final int nDigits = Math.max( 4, Integer.toString( nFrames - 1 ).length() );
+		final String format = "%s%0" + nDigits + "d.tif";
+		final String description = TiffStackWriter.imageJDescription( 1, nSlices, 1, calibration );
+		return stream( ( frame, buffer ) -> {
+			final File file = new File( folder, String.format( format, prefix, frame ) );
+			try (final TiffStackWriter writer = new TiffStackWriter( file, width, height, nSlices, PixelType.FLOAT, description, calibration.pixelWidth, calibration.pixelHeight ))
+			{
+				for ( int z = 0; z < nSlices; z++ )
+					writer.writeFloat( buffer, z * width * height );
+			}
+		} );
+	}
+
+	/**
+	 * Paints all the frames concurrently and passes them in order to the
+	 * specified consumer. At most two frames per thread are kept in memory,
+	 * and their buffers are reused.
+	 */
+	private boolean stream( final FrameConsumer consumer )
+	{
+		final SpotLabels labels = new SpotLabels( model, labelIdPainting, exportTracksOnly );
+		if ( labels.maxLabel() > MAX_EXACT_LABEL )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "The largest label, " + labels.maxLabel()
+					+ ", is larger than " + MAX_EXACT_LABEL + ". Labels above this value "
+					+ "cannot be stored exactly in a 32-bit image and would collide.";
+			return false;
+		}
+
+		logger.log( "Writing label image.\n" );
+		final Queue< float[] > buffers = new ConcurrentLinkedQueue<>();
+
+		final ExecutorService executorService = TrackMateExecutor.current().getExecutorService( "Label image export", numThreads );
+		final Deque< Future< float[] > > pending = new ArrayDeque<>();
+		int next = 0;
+		try
+		{
+			for ( int frame = 0; frame < nFrames; frame++ )
+			{
+				while ( next < nFrames && pending.size() < 2 * numThreads )
+				{
+					final int toPaint = next++;
+					pending.add( executorService.submit( () -> {
+						float[] buffer = buffers.poll();
+						if ( null == buffer )
+							buffer = new float[ width * height * nSlices ];
+						paint( toPaint, buffer, labels );
+						return buffer;
+					} ) );
+				}
+				final float[] buffer = pending.poll().get();
+				consumer.accept( frame, buffer );
+				buffers.add( buffer );
+				logger.setProgress( ( double ) ( frame + 1 ) / nFrames );
+			}
+			logger.log( "Done.\n" );
+			return true;
+		}
+		catch ( final InterruptedException | ExecutionException | IOException e )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "Export failed:\n" + e.getMessage();
+			for ( final Future< float[] > future : pending )
+				future.cancel( true );
+			return false;
+		}
+		finally
+		{
+			executorService.shutdown();
+			logger.setProgress( 0. );
+		}
+	}
+
+	/**
+	 * Paints one frame in the specified buffer, which is cleared first.
+	 */
+	private void paint( final int frame, final float[] buffer, final SpotLabels labels )
+	{
+		Arrays.fill( buffer, 0f );
+		final ImgPlus< FloatType > img;
+		if ( nSlices > 1 )
+			img = new ImgPlus<>( ArrayImgs.floats( buffer, width, height, nSlices ), "LblImg",
+					new AxisType[] { Axes.X, Axes.Y, Axes.Z },
+					new double[] { calibration.pixelWidth, calibration.pixelHeight, calibration.pixelDepth } );
+		else
+			img = new ImgPlus<>( ArrayImgs.floats( buffer, width, height ), "LblImg",
+					new AxisType[] { Axes.X, Axes.Y },
+					new double[] { calibration.pixelWidth, calibration.pixelHeight } );
+
+		final SpotWriter spotWriter = exportSpotsAsDots
+				? new SpotAsDotWriter<>( img )
+				: new SpotRoiWriter<>( img );
+		for ( final Spot spot : model.getSpots().iterable( frame, true ) )
+		{
+			final int id = labels.labelOf( spot );
+			if ( id > 0 )
+				spotWriter.write( spot, id );
+		}
+	}
+
+	@FunctionalInterface
+	private static interface FrameConsumer
+	{
+		public void accept( int frame, float[] buffer ) throws IOException;
+	}
+}
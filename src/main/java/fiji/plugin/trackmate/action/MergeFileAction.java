@@ -28,17 +28,14 @@ import static fiji.plugin.trackmate.gui.Icons.MERGE_ICON;
 
 import java.awt.Frame;
 import java.io.File;
-import java.util.HashMap;
-import java.util.Set;
 
 import javax.swing.ImageIcon;
 
-import org.jgrapht.graph.DefaultWeightedEdge;
 import org.scijava.plugin.Plugin;
 
 import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.ModelMerger;
 import fiji.plugin.trackmate.SelectionModel;
-import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.TrackMate;
 import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings;
 import fiji.plugin.trackmate.gui.wizard.descriptors.SomeDialogDescriptor;
@@ -92,75 +89,16 @@ public class MergeFileAction extends AbstractTMAction
 		// Model
 		final Model modelToMerge = reader.getModel();
 		final Model model = trackmate.getModel();
-		final int nNewTracks = modelToMerge.getTrackModel().nTracks( true );
 
-		int progress = 0;
-		model.beginUpdate();
-
-		int nNewSpots = 0;
-		try
-		{
-			for ( final int id : modelToMerge.getTrackModel().trackIDs( true ) )
-			{
-
-				/*
-				 * Add new spots built on the ones in the file.
-				 */
-
-				final Set< Spot > spots = modelToMerge.getTrackModel().trackSpots( id );
-				final HashMap< Spot, Spot > mapOldToNew = new HashMap<>( spots.size() );
-
-				Spot newSpot = null;
-				for ( final Spot oldSpot : spots )
-				{
-					/*
-					 * An awkward way to avoid spot ID conflicts after loading
-					 * two files
-					 */
-					newSpot = new Spot( oldSpot );
-					for ( final String feature : oldSpot.getFeatures().keySet() )
-						newSpot.putFeature( feature, oldSpot.getFeature( feature ) );
-
-					mapOldToNew.put( oldSpot, newSpot );
-					model.addSpotTo( newSpot, oldSpot.getFeature( Spot.FRAME ).intValue() );
-					nNewSpots++;
-				}
-
-				/*
-				 * Link new spots from info in the file.
-				 */
-
-				final Set< DefaultWeightedEdge > edges = modelToMerge.getTrackModel().trackEdges( id );
-				for ( final DefaultWeightedEdge edge : edges )
-				{
-					final Spot oldSource = modelToMerge.getTrackModel().getEdgeSource( edge );
-					final Spot oldTarget = modelToMerge.getTrackModel().getEdgeTarget( edge );
-					final Spot newSource = mapOldToNew.get( oldSource );
-					final Spot newTarget = mapOldToNew.get( oldTarget );
-					final double weight = modelToMerge.getTrackModel().getEdgeWeight( edge );
-
-					model.addEdge( newSource, newTarget, weight );
-				}
-
-				/*
-				 * Put back track names
-				 */
-
-				final String trackName = modelToMerge.getTrackModel().name( id );
-				final int newId = model.getTrackModel().trackIDOf( newSpot );
-				model.getTrackModel().setName( newId, trackName );
-
-				progress++;
-				logger.setProgress( ( double ) progress / nNewTracks );
-			}
-
-		}
-		finally
+		final ModelMerger merger = new ModelMerger( model, modelToMerge );
+		merger.setVisibleTracksOnly( true );
+		if ( !merger.checkInput() || !merger.process() )
 		{
-			model.endUpdate();
-			logger.setProgress( 0 );
-			logger.log( "Imported " + nNewTracks + " tracks made of " + nNewSpots + " spots.\n" );
+			logger.error( merger.getErrorMessage() );
+			logger.error( "Aborting.\n" );
+			return;
 		}
+		logger.log( "Imported " + merger.getTrackIDMap().size() + " tracks made of " + merger.getNSpotsAppended() + " spots.\n" );
 	}
 
 	@Plugin( type = TrackMateActionFactory.class, visible = true )
@@ -21,13 +21,15 @@
  */
 package fiji.plugin.trackmate.action;
 
+import static fiji.plugin.trackmate.action.fit.GaussianRefiner.CHUNK_SIZE;
 import static fiji.plugin.trackmate.detection.DetectorKeys.KEY_TARGET_CHANNEL;
 
 import java.awt.Frame;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.ImageIcon;
 
@@ -39,27 +41,15 @@ import fiji.plugin.trackmate.SelectionModel;
 import fiji.plugin.trackmate.Settings;
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.TrackMate;
-import fiji.plugin.trackmate.action.fit.Gaussian2DFixedRadius;
-import fiji.plugin.trackmate.action.fit.Gaussian3D;
-import fiji.plugin.trackmate.action.fit.Gaussian3DFixedRadius;
-import fiji.plugin.trackmate.action.fit.MLGaussian2DFixedRadiusEstimator;
-import fiji.plugin.trackmate.action.fit.MLGaussian3DEstimator;
-import fiji.plugin.trackmate.action.fit.MLGaussian3DFixedRadiusEstimator;
+import fiji.plugin.trackmate.action.fit.GaussianRefiner;
+import fiji.plugin.trackmate.action.fit.GaussianRefiner.Estimator;
 import fiji.plugin.trackmate.detection.DetectionUtils;
 import fiji.plugin.trackmate.gui.Icons;
 import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings;
 import fiji.plugin.trackmate.util.TMUtils;
+import fiji.plugin.trackmate.util.TrackMateExecutor;
 import net.imagej.ImgPlus;
-import net.imglib2.Localizable;
-import net.imglib2.Point;
 import net.imglib2.algorithm.MultiThreadedBenchmarkAlgorithm;
-import net.imglib2.algorithm.localization.FitFunction;
-import net.imglib2.algorithm.localization.FunctionFitter;
-import net.imglib2.algorithm.localization.Gaussian;
-import net.imglib2.algorithm.localization.LevenbergMarquardtSolver;
-import net.imglib2.algorithm.localization.MLGaussianEstimator;
-import net.imglib2.algorithm.localization.PeakFitter;
-import net.imglib2.algorithm.localization.StartPointEstimator;
 import net.imglib2.type.numeric.RealType;
 
 public class SpotGaussianFitter extends MultiThreadedBenchmarkAlgorithm
@@ -75,15 +65,38 @@ public class SpotGaussianFitter extends MultiThreadedBenchmarkAlgorithm
 
 	private final boolean fixRadius;
 
+	private final Estimator estimator;
+
 	public SpotGaussianFitter( final Model model, final Settings settings, final Logger logger, final boolean fixRadius )
+	{
+		this( model, settings, logger, fixRadius, Estimator.LEAST_SQUARES );
+	}
+
+	/**
+	 * Creates a fitter for the visible spots of the model.
+	 *
+	 * @param model
+	 *            the model containing the spots to refine.
+	 * @param settings
+	 *            the settings containing the image and the target channel.
+	 * @param logger
+	 *            the logger to report progress to.
+	 * @param fixRadius
+	 *            if <code>true</code>, the spot radius is not fitted.
+	 * @param estimator
+	 *            the estimator to use. Poisson maximum-likelihood is best
+	 *            suited for images whose pixel values are photon counts.
+	 */
+	public SpotGaussianFitter( final Model model, final Settings settings, final Logger logger, final boolean fixRadius, final Estimator estimator )
 	{
 		this.model = model;
 		this.settings = settings;
 		this.logger = logger;
 		this.fixRadius = fixRadius;
+		this.estimator = estimator;
 	}
 
-	@SuppressWarnings( "unchecked" )
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
 	@Override
 	public boolean process()
 	{
@@ -95,31 +108,57 @@ public class SpotGaussianFitter extends MultiThreadedBenchmarkAlgorithm
 		final Object obj = settings.detectorSettings.get( KEY_TARGET_CHANNEL );
 		final int channel = ( Integer ) obj - 1;
 
-		@SuppressWarnings( "rawtypes" )
 		final ImgPlus img = TMUtils.rawWraps( settings.imp );
+		final double[] calibration = TMUtils.getSpatialCalibration( img );
 
-		// Do it. Frame by frame.
-		final List< Integer > frameSet = new ArrayList<>( model.getSpots().keySet() );
-		final int numFrames = frameSet.size();
-		for ( int i = 0; i < numFrames; i++ )
+		/*
+		 * Chunks of spots of all frames are fitted together, so that frames
+		 * with few spots do not leave threads idle.
+		 */
+		final List< Callable< Integer > > tasks = new ArrayList<>();
+		final int nSpots = model.getSpots().getNSpots( true );
+		final AtomicInteger nDone = new AtomicInteger( 0 );
+		for ( final Integer frame : model.getSpots().keySet() )
 		{
-			logger.setProgress( ( double ) i / numFrames );
-			final int frame = frameSet.get( i );
-			@SuppressWarnings( "rawtypes" )
+			final List< Spot > spots = new ArrayList<>();
+			for ( final Spot spot : model.getSpots().iterable( frame, true ) )
+				spots.add( spot );
+			if ( spots.isEmpty() )
+				continue;
+
 			final ImgPlus imgCT = TMUtils.hyperSlice( img, channel, frame );
-			final MultiThreadedBenchmarkAlgorithm algo = spotSubLocalizer( imgCT, model.getSpots().iterable( frame, true ), fixRadius );
-			algo.setNumThreads( numThreads );
-			if ( !algo.checkInput() || !algo.process() )
+			final int nDims = DetectionUtils.is2D( imgCT ) ? 2 : 3;
+			final GaussianRefiner refiner = new GaussianRefiner( nDims, calibration, fixRadius, estimator );
+			final List< Callable< Integer > > frameTasks = refiner.createTasks( imgCT, imgCT, spots );
+			for ( final Callable< Integer > task : frameTasks )
 			{
-				errorMessage = BASE_ERROR_MSG + algo.getErrorMessage();
-				logger.setProgress( 1. );
-				logger.setStatus( "Error in spot gaussian fitter at frame " + frame );
-				final long end = System.currentTimeMillis();
-				processingTime = end - start;
-				return false;
+				tasks.add( () -> {
+					final Integer n = task.call();
+					logger.setProgress( Math.min( 1., ( double ) nDone.addAndGet( CHUNK_SIZE ) / nSpots ) );
+					return n;
+				} );
 			}
 		}
 
+		int nRefined = 0;
+		try
+		{
+			for ( final Integer n : TrackMateExecutor.current().invokeAll( "Gaussian refinement", tasks, numThreads ) )
+				nRefined += n.intValue();
+		}
+		catch ( InterruptedException | ExecutionException e )
+		{
+			errorMessage = BASE_ERROR_MSG + "Error while fitting spots: " + e.getMessage();
+			logger.setProgress( 1. );
+			logger.setStatus( "Error in spot gaussian fitter." );
+			final long end = System.currentTimeMillis();
+			processingTime = end - start;
+			return false;
+		}
+
+		if ( nRefined < nSpots )
+			logger.log( "Could not fit " + ( nSpots - nRefined ) + " spots out of " + nSpots + ". They were left untouched.\n" );
+
 		logger.setProgress( 1. );
 		logger.setStatus( "" );
 		final long end = System.currentTimeMillis();
@@ -185,117 +224,20 @@ public class SpotGaussianFitter extends MultiThreadedBenchmarkAlgorithm
 		public boolean process()
 		{
 			final double[] calibration = TMUtils.getSpatialCalibration( img );
-			final Map< Spot, Localizable > points = new HashMap<>();
-			/*
-			 * We treat 2D and 3D differently. In 2D we can assume the pixels
-			 * are square (hehehehe) and use an isotropic gaussian (fewer
-			 * params). In 3D, we cannot, and have to use an orthogonal
-			 * gaussian.
-			 */
-			final StartPointEstimator estimator;
-			final FitFunction function;
-			if ( DetectionUtils.is2D( img ) )
-			{
-				double sumSigma = 0.;
-				for ( final Spot spot : spots )
-				{
-					sumSigma += spot.getFeature( Spot.RADIUS ) / calibration[ 0 ] / Math.sqrt( 2. );
-
-					final long[] pixelPos = new long[ 2 ];
-					for ( int d = 0; d < 2; d++ )
-						pixelPos[ d ] = Math.round( spot.getDoublePosition( d ) / calibration[ d ] );
-
-					points.put( spot, Point.wrap( pixelPos ) );
-				}
-				final double typicalSigma = sumSigma / points.size();
-				if (fixRadius)
-				{
-					estimator = new MLGaussian2DFixedRadiusEstimator( typicalSigma );
-					function = new Gaussian2DFixedRadius();
-				}
-				else
-				{
-					estimator = new MLGaussianEstimator( typicalSigma, 2 );
-					function = new Gaussian();
-				}
-			}
-			else
+			final int nDims = DetectionUtils.is2D( img ) ? 2 : 3;
+			final List< Spot > list = new ArrayList<>();
+			for ( final Spot spot : spots )
+				list.add( spot );
+			final GaussianRefiner refiner = new GaussianRefiner( nDims, calibration, fixRadius, Estimator.LEAST_SQUARES );
+			try
 			{
-				final double[] typicalSigmas = new double[ 3 ];
-				for ( final Spot spot : spots )
-				{
-					final long[] pixelPos = new long[ 3 ];
-					for ( int d = 0; d < 3; d++ )
-					{
-						typicalSigmas[ d ] += spot.getFeature( Spot.RADIUS ) / calibration[ d ] / Math.sqrt( 3. );
-						pixelPos[ d ] = Math.round( spot.getDoublePosition( d ) / calibration[ d ] );
-					}
-					points.put( spot, Point.wrap( pixelPos ) );
-				}
-				// Average typical sigmas.
-				for ( int d = 0; d < 3; d++ )
-					typicalSigmas[ d ] /= points.size();
-
-				if ( fixRadius )
-				{
-					estimator = new MLGaussian3DFixedRadiusEstimator( typicalSigmas );
-					function = new Gaussian3DFixedRadius();
-				}
-				else
-				{
-					estimator = new MLGaussian3DEstimator( typicalSigmas );
-					function = new Gaussian3D();
-				}
+				refiner.refine( img, img, list, numThreads );
 			}
-
-			final FunctionFitter solver = new LevenbergMarquardtSolver();
-
-			// Execute.
-			final PeakFitter< T > fitter = new PeakFitter< T >( img, points.values(), solver, function, estimator );
-			fitter.setNumThreads( numThreads );
-			if ( !fitter.checkInput() || !fitter.process() )
+			catch ( InterruptedException | ExecutionException e )
 			{
-				errorMessage = fitter.getErrorMessage();
+				errorMessage = BASE_ERROR_MSG + "Error while fitting spots: " + e.getMessage();
 				return false;
 			}
-
-			// Update spot position.
-			final Map< Localizable, double[] > fitParams = fitter.getResult();
-			if ( DetectionUtils.is2D( img ) )
-			{
-				for ( final Spot spot : spots )
-				{
-					final Localizable localizable = points.get( spot );
-					final double[] fitParam = fitParams.get( localizable );
-					final double x0 = fitParam[ 0 ];
-					final double y0 = fitParam[ 1 ];
-					final double sigma = 1. / Math.sqrt( fitParam[ 3 ] );
-
-					spot.putFeature( Spot.POSITION_X, x0 * calibration[ 0 ] );
-					spot.putFeature( Spot.POSITION_Y, y0 * calibration[ 1 ] );
-					spot.putFeature( Spot.RADIUS, sigma * calibration[ 0 ] * Math.sqrt( 2 ) );
-				}
-			}
-			else
-			{
-				for ( final Spot spot : spots )
-				{
-					final Localizable localizable = points.get( spot );
-					final double[] fitParam = fitParams.get( localizable );
-					final double x0 = fitParam[ 0 ];
-					final double y0 = fitParam[ 1 ];
-					final double z0 = fitParam[ 2 ];
-
-					spot.putFeature( Spot.POSITION_X, x0 * calibration[ 0 ] );
-					spot.putFeature( Spot.POSITION_Y, y0 * calibration[ 1 ] );
-					spot.putFeature( Spot.POSITION_Z, z0 * calibration[ 2 ] );
-					if ( !fixRadius )
-					{
-						final double sigmaX = fitParam[ 4 ];
-						spot.putFeature( Spot.RADIUS, sigmaX * calibration[ 0 ] * Math.sqrt( 3 ) );
-					}
-				}
-			}
 			return true;
 		}
 	}
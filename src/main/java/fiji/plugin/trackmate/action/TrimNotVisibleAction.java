@@ -86,8 +86,7 @@ public class TrimNotVisibleAction extends AbstractTMAction
 		model.beginUpdate();
 		try
 		{
-			for ( final Spot spot : toRemove )
-				model.removeSpot( spot );
+			model.removeSpots( toRemove );
 
 			model.setSpots( spots, false );
 		}
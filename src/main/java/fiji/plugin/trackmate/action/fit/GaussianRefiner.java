@@ -0,0 +1,572 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.action.fit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.util.TrackMateExecutor;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Refines the position (and optionally the radius) of spots by fitting a
+ * Gaussian with a constant offset on the pixels around each spot.
+ * <p>
+ * In 2D the Gaussian is isotropic. In 3D it is elliptic with its axes along X,
+ * Y and Z, with the same sigma in X and Y and a separate one in Z. Positions
+ * and sigmas are expressed in physical units, so that anisotropic calibrations
+ * are accounted for.
+ * <p>
+ * The fit is a Levenberg-Marquardt minimization using the analytic Jacobian of
+ * the model. Two estimators are offered: least-squares, and Poisson maximum
+ * likelihood, which is solved by Fisher scoring (the normal equations are
+ * weighted by the inverse of the model value). The latter is the efficient
+ * estimator when pixel values are photon counts.
+ * <p>
+ * The pixel values and the normal equations are stored in a workspace that is
+ * allocated once per thread and reused for all the spots, so that refining a
+ * spot does not allocate. Spots are processed in chunks, so that the chunks of
+ * one or several frames can be executed concurrently on the
+ * {@link TrackMateExecutor}.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+public class GaussianRefiner
+{
+
+	/**
+	 * The estimators that can be used to fit the Gaussian model.
+	 */
+	public enum Estimator
+	{
+		/** Minimizes the sum of squared residuals. */
+		LEAST_SQUARES,
+		/** Maximizes the likelihood of the pixel values as Poisson counts. */
+		POISSON_MLE;
+	}
+
+	/** Number of spots per task. */
+	public static final int CHUNK_SIZE = 64;
+
+	/** The half-size of the fitted patch, in sigmas. */
+	private static final double PATCH_HALF_SIZE = 3.;
+
+	private static final int MAX_ITERATIONS = 100;
+
+	private static final double MAX_LAMBDA = 1e10;
+
+	private final int nDims;
+
+	private final double[] calibration;
+
+	private final boolean fixRadius;
+
+	private final Estimator estimator;
+
+	private final ThreadLocal< Workspace > workspaces;
+
+	/**
+	 * Creates a new refiner.
+	 *
+	 * @param nDims
+	 *            the dimensionality of the images, 2 or 3.
+	 * @param calibration
+	 *            the pixel sizes.
+	 * @param fixRadius
+	 *            if <code>true</code>, the sigmas of the Gaussian are set from
+	 *            the spot radius and not fitted, and the spot radius is left
+	 *            untouched.
+	 * @param estimator
+	 *            the estimator to use.
+	 */
+	public GaussianRefiner( final int nDims, final double[] calibration, final boolean fixRadius, final Estimator estimator )
+	{
+		if ( nDims != 2 && nDims != 3 )
+			throw new IllegalArgumentException( "Gaussian refinement only works in 2D and 3D, got " + nDims + "D." );
+		this.nDims = nDims;
+		this.calibration = calibration;
+		this.fixRadius = fixRadius;
+		this.estimator = estimator;
+		this.workspaces = ThreadLocal.withInitial( () -> new Workspace() );
+	}
+
+	/**
+	 * Refines the specified spots, using the executor of the current thread.
+	 *
+	 * @param img
+	 *            the image the spots were found in, in pixel coordinates.
+	 * @param interval
+	 *            the interval of the image that can be read.
+	 * @param spots
+	 *            the spots to refine. They are updated in place.
+	 * @param numThreads
+	 *            the number of threads to use.
+	 * @return the number of spots that were successfully refined.
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted while waiting.
+	 * @throws ExecutionException
+	 *             if the refinement of a spot threw an exception. The spots
+	 *             already refined are left updated.
+	 */
+	public < T extends RealType< T > > int refine( final RandomAccessible< T > img, final Interval interval, final List< Spot > spots, final int numThreads ) throws InterruptedException, ExecutionException
+	{
+		final List< Callable< Integer > > tasks = createTasks( img, interval, spots );
+		int nRefined = 0;
+		if ( tasks.size() == 1 || numThreads <= 1 )
+		{
+			for ( final Callable< Integer > task : tasks )
+			{
+				try
+				{
+					nRefined += task.call().intValue();
+				}
+				catch ( final Exception e )
+				{
+					// Same as when running in the executor.
+					throw new ExecutionException( e );
+				}
+			}
+			return nRefined;
+		}
+
+		for ( final Integer n : TrackMateExecutor.current().invokeAll( "Gaussian refinement", tasks, numThreads ) )
+			nRefined += n.intValue();
+		return nRefined;
+	}
+
+	/**
+	 * Splits the refinement of the specified spots in tasks of at most
+	 * {@link #CHUNK_SIZE} spots. The tasks return the number of spots they
+	 * refined. Tasks created for several frames can be submitted together.
+	 *
+	 * @param img
+	 *            the image the spots were found in, in pixel coordinates.
+	 * @param interval
+	 *            the interval of the image that can be read.
+	 * @param spots
+	 *            the spots to refine. They are updated in place when the
+	 *            tasks are executed.
+	 * @return a new list of tasks.
+	 */
+	public < T extends RealType< T > > List< Callable< Integer > > createTasks( final RandomAccessible< T > img, final Interval interval, final List< Spot > spots )
+	{
+		if ( spots.isEmpty() )
+			return Collections.emptyList();
+
+		final List< Callable< Integer > > tasks = new ArrayList<>( 1 + spots.size() / CHUNK_SIZE );
+		for ( int from = 0; from < spots.size(); from += CHUNK_SIZE )
+		{
+			final List< Spot > chunk = spots.subList( from, Math.min( spots.size(), from + CHUNK_SIZE ) );
+			tasks.add( () -> {
+				final RandomAccess< T > ra = img.randomAccess( interval );
+				int nRefined = 0;
+				for ( final Spot spot : chunk )
+					if ( refine( ra, interval, spot ) )
+						nRefined++;
+				return Integer.valueOf( nRefined );
+			} );
+		}
+		return tasks;
+	}
+
+	/**
+	 * Refines a single spot.
+	 *
+	 * @param ra
+	 *            a random access on the image the spot was found in, in pixel
+	 *            coordinates.
+	 * @param interval
+	 *            the interval of the image that can be read.
+	 * @param spot
+	 *            the spot to refine. It is updated in place.
+	 * @return <code>true</code> if the fit succeeded and the spot was
+	 *         updated. If <code>false</code>, the spot is left untouched.
+	 */
+	public < T extends RealType< T > > boolean refine( final RandomAccess< T > ra, final Interval interval, final Spot spot )
+	{
+		final Workspace ws = workspaces.get();
+		if ( !ws.load( ra, interval, spot ) || !ws.fit() )
+			return false;
+
+		final double[] p = ws.params;
+		for ( int d = 0; d < nDims; d++ )
+			if ( p[ d ] < ws.lower[ d ] || p[ d ] > ws.upper[ d ] )
+				return false;
+
+		for ( int d = 0; d < nDims; d++ )
+			spot.putFeature( Spot.POSITION_FEATURES[ d ], Double.valueOf( p[ d ] ) );
+		if ( !fixRadius )
+			spot.putFeature( Spot.RADIUS, Double.valueOf( p[ nDims + 2 ] * Math.sqrt( nDims ) ) );
+		return true;
+	}
+
+	/**
+	 * Per-thread storage for the pixels of the patch and the normal equations.
+	 * Parameters are laid out as <code>[ x, y, (z), A, b, sigma, (sigmaZ) ]</code>.
+	 */
+	private final class Workspace
+	{
+
+		private final int iA = nDims;
+
+		private final int iB = nDims + 1;
+
+		private final int iS = nDims + 2;
+
+		private final int iSZ = nDims + 3;
+
+		/** Total number of parameters, fitted or not. */
+		private final int nAll = ( nDims == 3 ) ? nDims + 4 : nDims + 3;
+
+		/** Number of fitted parameters. They come first. */
+		private final int nParams = fixRadius ? nDims + 2 : nAll;
+
+		private final double[] params = new double[ nAll ];
+
+		private final double[] trial = new double[ nAll ];
+
+		private final double[] gradient = new double[ nParams ];
+
+		private final double[] hessian = new double[ nParams * nParams ];
+
+		private final double[] lhs = new double[ nParams * nParams ];
+
+		private final double[] delta = new double[ nParams ];
+
+		private final double[] derivatives = new double[ nParams ];
+
+		private final double[] lower = new double[ nDims ];
+
+		private final double[] upper = new double[ nDims ];
+
+		private final long[] min = new long[ nDims ];
+
+		private final long[] max = new long[ nDims ];
+
+		private final long[] pos = new long[ nDims ];
+
+		private double[] coords = new double[ 0 ];
+
+		private double[] values = new double[ 0 ];
+
+		private int nPixels;
+
+		/**
+		 * Reads the pixels around the spot and sets the start point of the
+		 * fit. Returns <code>false</code> if the patch is too small to be fitted.
+		 */
+		private < T extends RealType< T > > boolean load( final RandomAccess< T > ra, final Interval interval, final Spot spot )
+		{
+			final double radius = spot.getFeature( Spot.RADIUS ).doubleValue();
+			final double sigma = radius / Math.sqrt( nDims );
+			if ( !( sigma > 0. ) )
+				return false;
+
+			int n = 1;
+			for ( int d = 0; d < nDims; d++ )
+			{
+				final double x = spot.getDoublePosition( d );
+				final long center = Math.round( x / calibration[ d ] );
+				final long halfSize = Math.max( 1, ( long ) Math.ceil( PATCH_HALF_SIZE * sigma / calibration[ d ] ) );
+				min[ d ] = Math.max( interval.min( d ), center - halfSize );
+				max[ d ] = Math.min( interval.max( d ), center + halfSize );
+				if ( max[ d ] - min[ d ] < 2 )
+					return false;
+				lower[ d ] = min[ d ] * calibration[ d ];
+				upper[ d ] = max[ d ] * calibration[ d ];
+				params[ d ] = x;
+				n *= ( int ) ( max[ d ] - min[ d ] + 1 );
+			}
+
+			if ( values.length < n )
+			{
+				values = new double[ n ];
+				coords = new double[ n * nDims ];
+			}
+			nPixels = n;
+
+			double vmin = Double.POSITIVE_INFINITY;
+			double vmax = Double.NEGATIVE_INFINITY;
+			for ( int d = 0; d < nDims; d++ )
+				pos[ d ] = min[ d ];
+			for ( int k = 0; k < n; k++ )
+			{
+				ra.setPosition( pos );
+				final double v = ra.get().getRealDouble();
+				values[ k ] = v;
+				vmin = Math.min( vmin, v );
+				vmax = Math.max( vmax, v );
+				for ( int d = 0; d < nDims; d++ )
+					coords[ k * nDims + d ] = pos[ d ] * calibration[ d ];
+
+				for ( int d = 0; d < nDims; d++ )
+				{
+					if ( ++pos[ d ] <= max[ d ] )
+						break;
+					pos[ d ] = min[ d ];
+				}
+			}
+
+			final double amplitude = vmax - vmin;
+			if ( !( amplitude > 0. ) )
+				return false;
+			params[ iA ] = amplitude;
+			params[ iB ] = vmin;
+			// The Poisson likelihood needs a model that is positive everywhere.
+			if ( estimator == Estimator.POISSON_MLE && params[ iB ] <= 0. )
+				params[ iB ] = 1e-3 * amplitude;
+			params[ iS ] = sigma;
+			if ( nDims == 3 )
+				params[ iSZ ] = sigma;
+			return true;
+		}
+
+		/**
+		 * Runs the Levenberg-Marquardt iterations from the start point. The
+		 * result is left in {@link #params}.
+		 */
+		private boolean fit()
+		{
+			double lambda = 1e-3;
+			double cost = accumulate( params );
+			if ( Double.isNaN( cost ) )
+				return false;
+
+			for ( int iteration = 0; iteration < MAX_ITERATIONS; iteration++ )
+			{
+				for ( int i = 0; i < nParams * nParams; i++ )
+					lhs[ i ] = hessian[ i ];
+				for ( int i = 0; i < nParams; i++ )
+				{
+					lhs[ i * nParams + i ] *= 1. + lambda;
+					delta[ i ] = gradient[ i ];
+				}
+
+				if ( !solve() )
+				{
+					lambda *= 10.;
+					if ( lambda > MAX_LAMBDA )
+						return false;
+					continue;
+				}
+
+				System.arraycopy( params, 0, trial, 0, nAll );
+				for ( int i = 0; i < nParams; i++ )
+					trial[ i ] += delta[ i ];
+
+				final double trialCost = isValid( trial ) ? cost( trial ) : Double.NaN;
+				if ( trialCost < cost )
+				{
+					System.arraycopy( trial, 0, params, 0, nAll );
+					final double decrease = cost - trialCost;
+					cost = accumulate( params );
+					lambda = Math.max( 1e-12, lambda / 10. );
+					if ( isSmallStep() || decrease <= 1e-10 * ( Math.abs( cost ) + 1. ) )
+						return true;
+				}
+				else
+				{
+					lambda *= 10.;
+					// We cannot go further down: we are at the minimum.
+					if ( lambda > MAX_LAMBDA )
+						return true;
+				}
+			}
+			return true;
+		}
+
+		private boolean isSmallStep()
+		{
+			for ( int d = 0; d < nDims; d++ )
+				if ( Math.abs( delta[ d ] ) > 1e-4 * calibration[ d ] )
+					return false;
+			for ( int i = iS; i < nParams; i++ )
+				if ( Math.abs( delta[ i ] ) > 1e-5 * params[ i ] )
+					return false;
+			return true;
+		}
+
+		private boolean isValid( final double[] p )
+		{
+			if ( !( p[ iA ] > 0. ) || !( p[ iS ] > 0. ) )
+				return false;
+			if ( nDims == 3 && !( p[ iSZ ] > 0. ) )
+				return false;
+			return estimator != Estimator.POISSON_MLE || p[ iB ] > 0.;
+		}
+
+		/**
+		 * Evaluates the model at one pixel and stores its derivatives in
+		 * {@link #derivatives} if asked to. Returns the model value.
+		 */
+		private double evaluate( final double[] p, final int k, final boolean withDerivatives )
+		{
+			final double a = p[ iA ];
+			final double s2 = p[ iS ] * p[ iS ];
+			final double sz2 = ( nDims == 3 ) ? p[ iSZ ] * p[ iSZ ] : s2;
+			double r2xy = 0.;
+			for ( int d = 0; d < Math.min( 2, nDims ); d++ )
+			{
+				final double dx = coords[ k * nDims + d ] - p[ d ];
+				r2xy += dx * dx;
+			}
+			double r2z = 0.;
+			if ( nDims == 3 )
+			{
+				final double dz = coords[ k * nDims + 2 ] - p[ 2 ];
+				r2z = dz * dz;
+			}
+			final double g = Math.exp( -0.5 * ( r2xy / s2 + r2z / sz2 ) );
+			if ( withDerivatives )
+			{
+				final double ag = a * g;
+				for ( int d = 0; d < nDims; d++ )
+				{
+					final double dx = coords[ k * nDims + d ] - p[ d ];
+					derivatives[ d ] = ag * dx / ( d < 2 ? s2 : sz2 );
+				}
+				derivatives[ iA ] = g;
+				derivatives[ iB ] = 1.;
+				if ( !fixRadius )
+				{
+					if ( nDims == 3 )
+					{
+						derivatives[ iS ] = ag * r2xy / ( s2 * p[ iS ] );
+						derivatives[ iSZ ] = ag * r2z / ( sz2 * p[ iSZ ] );
+					}
+					else
+					{
+						derivatives[ iS ] = ag * r2xy / ( s2 * p[ iS ] );
+					}
+				}
+			}
+			return a * g + p[ iB ];
+		}
+
+		/**
+		 * Contribution of one pixel to the cost function.
+		 */
+		private double pixelCost( final double f, final double v )
+		{
+			if ( estimator == Estimator.LEAST_SQUARES )
+			{
+				final double r = v - f;
+				return r * r;
+			}
+			// Negative log-likelihood, without the terms that only depend on the data.
+			return ( v > 0. ) ? f - v * Math.log( f ) : f;
+		}
+
+		private double cost( final double[] p )
+		{
+			double cost = 0.;
+			for ( int k = 0; k < nPixels; k++ )
+				cost += pixelCost( evaluate( p, k, false ), values[ k ] );
+			return cost;
+		}
+
+		/**
+		 * Computes the cost at the specified parameters, and accumulates the
+		 * approximate Hessian and the gradient of the normal equations.
+		 */
+		private double accumulate( final double[] p )
+		{
+			for ( int i = 0; i < nParams * nParams; i++ )
+				hessian[ i ] = 0.;
+			for ( int i = 0; i < nParams; i++ )
+				gradient[ i ] = 0.;
+
+			double cost = 0.;
+			for ( int k = 0; k < nPixels; k++ )
+			{
+				final double f = evaluate( p, k, true );
+				final double v = values[ k ];
+				cost += pixelCost( f, v );
+				final double w = ( estimator == Estimator.LEAST_SQUARES ) ? 1. : 1. / f;
+				final double wr = w * ( v - f );
+				for ( int i = 0; i < nParams; i++ )
+				{
+					final double wdi = w * derivatives[ i ];
+					gradient[ i ] += wr * derivatives[ i ];
+					for ( int j = 0; j <= i; j++ )
+						hessian[ i * nParams + j ] += wdi * derivatives[ j ];
+				}
+			}
+			for ( int i = 0; i < nParams; i++ )
+				for ( int j = 0; j < i; j++ )
+					hessian[ j * nParams + i ] = hessian[ i * nParams + j ];
+			return cost;
+		}
+
+		/**
+		 * Solves <code>lhs . x = delta</code> in place by Cholesky
+		 * decomposition. Returns <code>false</code> if the matrix is not
+		 * positive definite.
+		 */
+		private boolean solve()
+		{
+			final int n = nParams;
+			for ( int i = 0; i < n; i++ )
+			{
+				for ( int j = 0; j <= i; j++ )
+				{
+					double sum = lhs[ i * n + j ];
+					for ( int k = 0; k < j; k++ )
+						sum -= lhs[ i * n + k ] * lhs[ j * n + k ];
+					if ( i == j )
+					{
+						if ( !( sum > 0. ) )
+							return false;
+						lhs[ i * n + i ] = Math.sqrt( sum );
+					}
+					else
+					{
+						lhs[ i * n + j ] = sum / lhs[ j * n + j ];
+					}
+				}
+			}
+			// Forward then backward substitution.
+			for ( int i = 0; i < n; i++ )
+			{
+				double sum = delta[ i ];
+				for ( int k = 0; k < i; k++ )
+					sum -= lhs[ i * n + k ] * delta[ k ];
+				delta[ i ] = sum / lhs[ i * n + i ];
+			}
+			for ( int i = n - 1; i >= 0; i-- )
+			{
+				double sum = delta[ i ];
+				for ( int k = i + 1; k < n; k++ )
+					sum -= lhs[ k * n + i ] * delta[ k ];
+				delta[ i ] = sum / lhs[ i * n + i ];
+			}
+			return true;
+		}
+	}
+}
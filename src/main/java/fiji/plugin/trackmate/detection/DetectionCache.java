@@ -0,0 +1,499 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.detection;
+
+import static fiji.plugin.trackmate.detection.DetectorKeys.KEY_DO_GAUSSIAN_REFINEMENT;
+import static fiji.plugin.trackmate.detection.DetectorKeys.KEY_DO_SUBPIXEL_LOCALIZATION;
+import static fiji.plugin.trackmate.detection.DetectorKeys.KEY_THRESHOLD;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.util.TMUtils;
+import fiji.plugin.trackmate.util.TrackMateExecutor;
+import ij.ImagePlus;
+import ij.ImageStack;
+import net.imglib2.Interval;
+import net.imglib2.Point;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.localextrema.LocalExtrema;
+import net.imglib2.algorithm.localextrema.LocalExtrema.LocalNeighborhoodCheck;
+import net.imglib2.algorithm.localextrema.RefinedPeak;
+import net.imglib2.algorithm.localextrema.SubpixelLocalization;
+import net.imglib2.algorithm.neighborhood.RectangleShape;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.IntervalView;
+import net.imglib2.view.Views;
+
+/**
+ * A cache for the threshold-independent part of the LoG and DoG detections.
+ * <p>
+ * Filtering the image and finding its local maxima is what takes time in a
+ * detection, and it does not depend on the quality threshold. This cache
+ * stores every local maximum of the filtered image with its quality, so that
+ * running the detection again with another threshold, or without sub-pixel
+ * localization, is only a filter over the cached candidates. Enabling
+ * sub-pixel localization on candidates cached without it triggers a new
+ * detection.
+ * <p>
+ * Entries are keyed by the image, the frame, the detection interval and the
+ * detector settings other than the threshold, the sub-pixel localization and
+ * the Gaussian refinement. The median filter changes the filtered image, so
+ * it is part of the key. The image is identified by its ID and by a hash of
+ * the pixel values of the frame, so that editing the pixels of a frame misses
+ * the cache. Hashing a frame reads each pixel once, which is cheap compared to
+ * filtering it. Virtual stacks are not hashed: after editing the files they
+ * are read from, the cache must be cleared with {@link #clear()}.
+ * <p>
+ * The memory used by the cache is bounded by a maximal number of candidates.
+ * When it is exceeded, the least recently used entries are evicted.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+public class DetectionCache
+{
+
+	/**
+	 * The default maximal number of candidates held in a cache. A candidate
+	 * uses about 52 bytes with sub-pixel positions.
+	 */
+	public static final long DEFAULT_MAX_CANDIDATES = 1_000_000l;
+
+	private static DetectionCache shared;
+
+	private final long maxCandidates;
+
+	/** Key -> candidates, in access order. */
+	private final LinkedHashMap< Key, Candidates > cache = new LinkedHashMap<>( 16, 0.75f, true );
+
+	private long nCandidates = 0l;
+
+	private long hits = 0l;
+
+	private long misses = 0l;
+
+	/**
+	 * Creates a new cache.
+	 *
+	 * @param maxCandidates
+	 *            the maximal number of candidates held by the cache. At least
+	 *            one entry is kept, whatever its size.
+	 */
+	public DetectionCache( final long maxCandidates )
+	{
+		this.maxCandidates = maxCandidates;
+	}
+
+	/**
+	 * Returns the cache shared by the interactive detection previews and
+	 * runs.
+	 *
+	 * @return the shared cache.
+	 */
+	public static synchronized DetectionCache getShared()
+	{
+		if ( null == shared )
+			shared = new DetectionCache( DEFAULT_MAX_CANDIDATES );
+		return shared;
+	}
+
+	/**
+	 * Returns the candidates stored for the specified key.
+	 *
+	 * @param key
+	 *            the key.
+	 * @param subpixel
+	 *            whether the candidates must have sub-pixel positions.
+	 * @return the candidates, or <code>null</code> if the key is not in the
+	 *         cache or if sub-pixel positions are required and the candidates
+	 *         do not have them.
+	 */
+	public synchronized Candidates get( final Key key, final boolean subpixel )
+	{
+		final Candidates candidates = cache.get( key );
+		if ( null == candidates || ( subpixel && !candidates.hasSubpixel() ) )
+		{
+			misses++;
+			return null;
+		}
+		hits++;
+		return candidates;
+	}
+
+	/**
+	 * Stores candidates, and evicts the least recently used entries if the
+	 * cache grows beyond its capacity.
+	 *
+	 * @param key
+	 *            the key.
+	 * @param candidates
+	 *            the candidates to store.
+	 */
+	public synchronized void put( final Key key, final Candidates candidates )
+	{
+		final Candidates previous = cache.put( key, candidates );
+		if ( null != previous )
+			nCandidates -= previous.size();
+		nCandidates += candidates.size();
+
+		final Iterator< Candidates > it = cache.values().iterator();
+		while ( nCandidates > maxCandidates && cache.size() > 1 )
+		{
+			nCandidates -= it.next().size();
+			it.remove();
+		}
+	}
+
+	/**
+	 * Removes all the entries of this cache.
+	 */
+	public synchronized void clear()
+	{
+		cache.clear();
+		nCandidates = 0l;
+	}
+
+	/**
+	 * Returns the number of entries in this cache.
+	 *
+	 * @return the number of entries.
+	 */
+	public synchronized int size()
+	{
+		return cache.size();
+	}
+
+	/**
+	 * Returns the total number of candidates held by this cache.
+	 *
+	 * @return the number of candidates.
+	 */
+	public synchronized long getNCandidates()
+	{
+		return nCandidates;
+	}
+
+	public long getMaxCandidates()
+	{
+		return maxCandidates;
+	}
+
+	public synchronized long getHits()
+	{
+		return hits;
+	}
+
+	public synchronized long getMisses()
+	{
+		return misses;
+	}
+
+	/**
+	 * Creates the key for the detection in one frame of an image.
+	 *
+	 * @param imp
+	 *            the image.
+	 * @param detectorKey
+	 *            the key of the detector factory.
+	 * @param detectorSettings
+	 *            the detector settings. The threshold, the sub-pixel
+	 *            localization and the Gaussian refinement settings are
+	 *            ignored.
+	 * @param frame
+	 *            the frame.
+	 * @param interval
+	 *            the interval the detection is run on.
+	 * @return a new key.
+	 */
+	public static Key key( final ImagePlus imp, final String detectorKey, final Map< String, Object > detectorSettings, final int frame, final Interval interval )
+	{
+		final Map< String, Object > settings = new HashMap<>( detectorSettings );
+		settings.remove( KEY_THRESHOLD );
+		settings.remove( KEY_DO_SUBPIXEL_LOCALIZATION );
+		settings.remove( KEY_DO_GAUSSIAN_REFINEMENT );
+		return new Key( imp.getID(), contentStamp( imp, frame ), TMUtils.getSpatialCalibration( imp ), detectorKey, settings, frame, Intervals.minAsLongArray( interval ), Intervals.maxAsLongArray( interval ) );
+	}
+
+	/**
+	 * Returns a hash of the pixel values of all the channels and Z-slices of
+	 * one frame of an image, or 0 for a virtual stack.
+	 *
+	 * @param imp
+	 *            the image.
+	 * @param frame
+	 *            the frame, 0-based.
+	 * @return the hash of the frame pixels.
+	 */
+	public static long contentStamp( final ImagePlus imp, final int frame )
+	{
+		final ImageStack stack = imp.getStack();
+		if ( stack.isVirtual() )
+			return 0l;
+
+		long stamp = 1l;
+		for ( int c = 1; c <= imp.getNChannels(); c++ )
+			for ( int z = 1; z <= imp.getNSlices(); z++ )
+				stamp = 31l * stamp + hashPixels( stack.getPixels( imp.getStackIndex( c, z, frame + 1 ) ) );
+		return stamp;
+	}
+
+	private static int hashPixels( final Object pixels )
+	{
+		if ( pixels instanceof byte[] )
+			return Arrays.hashCode( ( byte[] ) pixels );
+		if ( pixels instanceof short[] )
+			return Arrays.hashCode( ( short[] ) pixels );
+		if ( pixels instanceof float[] )
+			return Arrays.hashCode( ( float[] ) pixels );
+		if ( pixels instanceof int[] )
+			return Arrays.hashCode( ( int[] ) pixels );
+		return 0;
+	}
+
+	/**
+	 * Identifies a threshold-independent detection.
+	 */
+	public static final class Key
+	{
+
+		private final int imageID;
+
+		private final long contentStamp;
+
+		private final double[] calibration;
+
+		private final String detectorKey;
+
+		private final Map< String, Object > settings;
+
+		private final int frame;
+
+		private final long[] min;
+
+		private final long[] max;
+
+		private final int hash;
+
+		public Key( final int imageID, final long contentStamp, final double[] calibration, final String detectorKey, final Map< String, Object > settings, final int frame, final long[] min, final long[] max )
+		{
+			this.imageID = imageID;
+			this.contentStamp = contentStamp;
+			this.calibration = calibration.clone();
+			this.detectorKey = detectorKey;
+			this.settings = Collections.unmodifiableMap( new HashMap<>( settings ) );
+			this.frame = frame;
+			this.min = min.clone();
+			this.max = max.clone();
+			this.hash = Objects.hash( imageID, contentStamp, Arrays.hashCode( this.calibration ), detectorKey, this.settings, frame, Arrays.hashCode( this.min ), Arrays.hashCode( this.max ) );
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		@Override
+		public boolean equals( final Object obj )
+		{
+			if ( this == obj )
+				return true;
+			if ( !( obj instanceof Key ) )
+				return false;
+			final Key o = ( Key ) obj;
+			return imageID == o.imageID
+					&& contentStamp == o.contentStamp
+					&& frame == o.frame
+					&& Objects.equals( detectorKey, o.detectorKey )
+					&& Arrays.equals( calibration, o.calibration )
+					&& Arrays.equals( min, o.min )
+					&& Arrays.equals( max, o.max )
+					&& settings.equals( o.settings );
+		}
+
+		@Override
+		public String toString()
+		{
+			return "Key[image " + imageID + ", frame " + frame + ", " + detectorKey + ", " + Arrays.toString( min ) + " -> " + Arrays.toString( max ) + ", " + settings + "]";
+		}
+	}
+
+	/**
+	 * All the local maxima of a filtered image, with their quality, their
+	 * position in physical units and optionally their sub-pixel position.
+	 */
+	public static final class Candidates
+	{
+
+		private final float[] quality;
+
+		/** X, Y, Z for each candidate. */
+		private final double[] positions;
+
+		/** X, Y, Z for each candidate, or <code>null</code>. */
+		private final double[] refined;
+
+		Candidates( final float[] quality, final double[] positions, final double[] refined )
+		{
+			this.quality = quality;
+			this.positions = positions;
+			this.refined = refined;
+		}
+
+		public int size()
+		{
+			return quality.length;
+		}
+
+		public boolean hasSubpixel()
+		{
+			return null != refined;
+		}
+
+		/**
+		 * Creates spots for the candidates whose quality is above the
+		 * specified threshold. The spots are the ones
+		 * {@link DetectionUtils#findLocalMaxima(RandomAccessibleInterval, double, double[], double, boolean, int)}
+		 * returns for the same threshold.
+		 *
+		 * @param threshold
+		 *            the quality threshold.
+		 * @param subpixel
+		 *            whether to use the sub-pixel positions. Must be
+		 *            <code>false</code> if {@link #hasSubpixel()} returns
+		 *            <code>false</code>.
+		 * @param radius
+		 *            the radius of the spots.
+		 * @return a new list of new spots.
+		 */
+		public List< Spot > filter( final double threshold, final boolean subpixel, final double radius )
+		{
+			if ( subpixel && !hasSubpixel() )
+				throw new IllegalStateException( "Candidates have no sub-pixel positions." );
+
+			final double[] pos = subpixel ? refined : positions;
+			// Same comparison as the local maxima check, on floats.
+			final float t = ( float ) threshold;
+			final List< Spot > spots = new ArrayList<>();
+			for ( int i = 0; i < quality.length; i++ )
+				if ( quality[ i ] >= t )
+					spots.add( new Spot( pos[ 3 * i ], pos[ 3 * i + 1 ], pos[ 3 * i + 2 ], radius, quality[ i ] ) );
+			return spots;
+		}
+
+		/**
+		 * Finds all the local maxima of a filtered image.
+		 *
+		 * @param source
+		 *            the filtered image.
+		 * @param calibration
+		 *            the pixel sizes.
+		 * @param subpixel
+		 *            whether to compute the sub-pixel positions as well.
+		 * @param numThreads
+		 *            the number of threads to use.
+		 * @return new candidates, or <code>null</code> if the search failed or
+		 *         was interrupted.
+		 */
+		public static Candidates create( final RandomAccessibleInterval< FloatType > source, final double[] calibration, final boolean subpixel, final int numThreads )
+		{
+			final FloatType val = new FloatType( Float.NEGATIVE_INFINITY );
+			final LocalNeighborhoodCheck< Point, FloatType > localNeighborhoodCheck = new LocalExtrema.MaximumCheck<>( val );
+			final IntervalView< FloatType > dogWithBorder = Views.interval( Views.extendMirrorSingle( source ), Intervals.expand( source, 1 ) );
+			final ExecutorService service = TrackMateExecutor.current().getExecutorService( "Local maxima", numThreads );
+			final List< Point > peaks;
+			try
+			{
+				peaks = LocalExtrema.findLocalExtrema( dogWithBorder, localNeighborhoodCheck, new RectangleShape( 1, true ), service, numThreads );
+			}
+			catch ( final InterruptedException e )
+			{
+				Thread.currentThread().interrupt();
+				return null;
+			}
+			catch ( final ExecutionException e )
+			{
+				return null;
+			}
+			finally
+			{
+				service.shutdown();
+			}
+
+			final int nDims = Math.min( 3, source.numDimensions() );
+			final int n = peaks.size();
+			final float[] quality = new float[ n ];
+			final double[] positions = new double[ 3 * n ];
+			final RandomAccess< FloatType > ra = source.randomAccess();
+			for ( int i = 0; i < n; i++ )
+			{
+				final Point peak = peaks.get( i );
+				ra.setPosition( peak );
+				quality[ i ] = ra.get().get();
+				for ( int d = 0; d < nDims; d++ )
+					positions[ 3 * i + d ] = peak.getDoublePosition( d ) * calibration[ d ];
+			}
+
+			double[] refined = null;
+			if ( subpixel )
+			{
+				refined = positions.clone();
+				if ( n > 0 )
+				{
+					final Map< Point, Integer > index = new IdentityHashMap<>( n );
+					for ( int i = 0; i < n; i++ )
+						index.put( peaks.get( i ), Integer.valueOf( i ) );
+
+					final SubpixelLocalization< Point, FloatType > spl = new SubpixelLocalization<>( source.numDimensions() );
+					spl.setNumThreads( numThreads );
+					spl.setReturnInvalidPeaks( true );
+					spl.setCanMoveOutside( true );
+					spl.setAllowMaximaTolerance( true );
+					spl.setMaxNumMoves( 10 );
+					final ArrayList< RefinedPeak< Point > > refinedPeaks = spl.process( peaks, dogWithBorder, source );
+					for ( final RefinedPeak< Point > refinedPeak : refinedPeaks )
+					{
+						final Integer i = index.get( refinedPeak.getOriginalPeak() );
+						if ( null == i )
+							continue;
+						for ( int d = 0; d < nDims; d++ )
+							refined[ 3 * i + d ] = refinedPeak.getDoublePosition( d ) * calibration[ d ];
+					}
+				}
+			}
+			return new Candidates( quality, positions, refined );
+		}
+	}
+}
@@ -28,7 +28,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.function.Consumer;
 
 import fiji.plugin.trackmate.Logger;
@@ -38,6 +37,7 @@ import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.SpotCollection;
 import fiji.plugin.trackmate.TrackMate;
 import fiji.plugin.trackmate.detection.util.MedianFilter2D;
+import fiji.plugin.trackmate.util.TrackMateExecutor;
 import ij.ImagePlus;
 import net.imagej.ImgPlus;
 import net.imagej.axis.Axes;
@@ -127,6 +127,8 @@ public class DetectionUtils
 
 					final TrackMate trackmate = new TrackMate( lSettings );
 					trackmate.getModel().setLogger( logger );
+					// Previews with another threshold reuse the filtered image maxima.
+					trackmate.setDetectionCache( DetectionCache.getShared() );
 
 					final boolean detectionOk = trackmate.execDetection();
 					if ( !detectionOk )
@@ -345,7 +347,7 @@ public class DetectionUtils
 		val.setReal( threshold );
 		final LocalNeighborhoodCheck< Point, FloatType > localNeighborhoodCheck = new LocalExtrema.MaximumCheck<>( val );
 		final IntervalView< FloatType > dogWithBorder = Views.interval( Views.extendMirrorSingle( source ), Intervals.expand( source, 1 ) );
-		final ExecutorService service = Executors.newFixedThreadPool( numThreads );
+		final ExecutorService service = TrackMateExecutor.current().getExecutorService( "Local maxima", numThreads );
 		List< Point > peaks;
 		try
 		{
@@ -127,4 +127,45 @@ public class DetectorKeys
 	/** A default value for the {@link #KEY_DO_SUBPIXEL_LOCALIZATION} parameter. */
 	public static final boolean DEFAULT_DO_SUBPIXEL_LOCALIZATION = true;
 
+	/**
+	 * The key identifying the optional parameter setting whether large frames
+	 * are processed as a set of overlapping tiles, to bound the memory used
+	 * by detection. Accepted values are {@link Boolean}s. If the key is
+	 * absent, frames are not tiled.
+	 * <p>
+	 * Currently used by:
+	 * <ul>
+	 * <li> {@link LogDetector}
+	 * <li> {@link DogDetector}
+	 * </ul>
+	 * The {@link ThresholdDetector} accepts it but does not tile: the regions
+	 * it finds can be arbitrarily large, and no halo would guarantee the same
+	 * results as untiled detection.
+	 *
+	 * @see TiledDetector
+	 */
+	public static final String KEY_DO_TILING = "DO_TILING";
+
+	/** A default value for the {@link #KEY_DO_TILING} parameter. */
+	public static final boolean DEFAULT_DO_TILING = false;
+
+	/**
+	 * The key identifying the optional parameter setting whether the position
+	 * of detected spots is refined by fitting a Gaussian on the source image,
+	 * after detection. Accepted values are {@link Boolean}s. If the key is
+	 * absent, spots are not refined.
+	 * <p>
+	 * Currently used by:
+	 * <ul>
+	 * <li> {@link LogDetector}
+	 * <li> {@link DogDetector}
+	 * </ul>
+	 *
+	 * @see fiji.plugin.trackmate.action.fit.GaussianRefiner
+	 */
+	public static final String KEY_DO_GAUSSIAN_REFINEMENT = "DO_GAUSSIAN_REFINEMENT";
+
+	/** A default value for the {@link #KEY_DO_GAUSSIAN_REFINEMENT} parameter. */
+	public static final boolean DEFAULT_DO_GAUSSIAN_REFINEMENT = false;
+
 }
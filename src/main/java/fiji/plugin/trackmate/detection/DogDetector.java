@@ -59,25 +59,28 @@ public class DogDetector< T extends RealType< T > & NativeType< T >> extends Log
 	 */
 
 	@Override
-	public boolean process()
+	protected RandomAccessibleInterval< FloatType > filter()
 	{
-
-		final long start = System.currentTimeMillis();
-
 		RandomAccessibleInterval< T > view = Views.interval( img, interval );
 
 		/*
 		 * Do median filtering (or not).
 		 */
 
+		// We need to shift coordinates by -min[] to have the correct location.
+		final long[] min = new long[ interval.numDimensions() ];
+		interval.min( min );
+
 		if ( doMedianFilter )
 		{
-			view = DetectionUtils.applyMedianFilter( view );
-			if ( null == view )
+			final RandomAccessibleInterval< T > filtered = DetectionUtils.applyMedianFilter( Views.zeroMin( view ) );
+			if ( null == filtered )
 			{
 				errorMessage = BASE_ERROR_MESSAGE + "Failed to apply median filter.";
-				return false;
+				return null;
 			}
+			// The median filter works on and returns zero-min images.
+			view = Views.translate( filtered, min );
 		}
 
 		/*
@@ -85,9 +88,6 @@ public class DogDetector< T extends RealType< T > & NativeType< T >> extends Log
 		 */
 
 		final RandomAccessible< T > extended = Views.extendMirrorSingle( view );
-		// We need to shift coordinates by -min[] to have the correct location.
-		final long[] min = new long[ interval.numDimensions() ];
-		interval.min( min );
 		final FloatType type = new FloatType();
 		final RandomAccessibleInterval< FloatType > dog = Views.translate( Util.getArrayOrCellImgFactory( interval, type ).create( interval ), min );
 		final RandomAccessibleInterval< FloatType > dog2 = Views.translate( Util.getArrayOrCellImgFactory( interval, type ).create( interval ), min );
@@ -121,11 +121,6 @@ public class DogDetector< T extends RealType< T > & NativeType< T >> extends Log
 		while ( dogCursor.hasNext() )
 			dogCursor.next().sub( tmpCursor.next() );
 
-		spots = DetectionUtils.findLocalMaxima( dog, threshold, calibration, radius, doSubPixelLocalization, numThreads );
-
-		final long end = System.currentTimeMillis();
-		processingTime = end - start;
-
-		return true;
+		return dog;
 	}
 }
@@ -21,6 +21,7 @@
  */
 package fiji.plugin.trackmate.detection;
 
+import static fiji.plugin.trackmate.detection.DetectorKeys.KEY_DO_GAUSSIAN_REFINEMENT;
 import static fiji.plugin.trackmate.detection.DetectorKeys.KEY_DO_MEDIAN_FILTERING;
 import static fiji.plugin.trackmate.detection.DetectorKeys.KEY_DO_SUBPIXEL_LOCALIZATION;
 import static fiji.plugin.trackmate.detection.DetectorKeys.KEY_RADIUS;
@@ -66,10 +67,23 @@ public class DogDetectorFactory< T extends RealType< T > & NativeType< T >> exte
 		final double threshold = ( Double ) settings.get( KEY_THRESHOLD );
 		final boolean doMedian = ( Boolean ) settings.get( KEY_DO_MEDIAN_FILTERING );
 		final boolean doSubpixel = ( Boolean ) settings.get( KEY_DO_SUBPIXEL_LOCALIZATION );
+		final boolean doRefinement = Boolean.TRUE.equals( settings.get( KEY_DO_GAUSSIAN_REFINEMENT ) );
 		final double[] calibration = TMUtils.getSpatialCalibration( img );
 
 		final RandomAccessible< T > imFrame = prepareFrameImg( frame );
+
+		// DoG uses a sigma 10% larger than the LoG one.
+		final int nDims = DetectionUtils.squeeze( interval ).numDimensions();
+		final SpotDetector< T > tiled = getTiledDetector( interval, calibration, 1.1 * radius / Math.sqrt( nDims ), tile -> {
+			final DogDetector< T > tileDetector = new DogDetector<>( imFrame, tile, calibration, radius, threshold, doSubpixel, doMedian );
+			tileDetector.setGaussianRefinement( doRefinement );
+			return tileDetector;
+		} );
+		if ( null != tiled )
+			return tiled;
+
 		final DogDetector< T > detector = new DogDetector<>( imFrame, interval, calibration, radius, threshold, doSubpixel, doMedian );
+		detector.setGaussianRefinement( doRefinement );
 		detector.setNumThreads( 1 );
 		return detector;
 	}
@@ -26,8 +26,10 @@ import static fiji.plugin.trackmate.detection.DetectorKeys.DEFAULT_DO_SUBPIXEL_L
 import static fiji.plugin.trackmate.detection.DetectorKeys.DEFAULT_RADIUS;
 import static fiji.plugin.trackmate.detection.DetectorKeys.DEFAULT_TARGET_CHANNEL;
 import static fiji.plugin.trackmate.detection.DetectorKeys.DEFAULT_THRESHOLD;
+import static fiji.plugin.trackmate.detection.DetectorKeys.KEY_DO_GAUSSIAN_REFINEMENT;
 import static fiji.plugin.trackmate.detection.DetectorKeys.KEY_DO_MEDIAN_FILTERING;
 import static fiji.plugin.trackmate.detection.DetectorKeys.KEY_DO_SUBPIXEL_LOCALIZATION;
+import static fiji.plugin.trackmate.detection.DetectorKeys.KEY_DO_TILING;
 import static fiji.plugin.trackmate.detection.DetectorKeys.KEY_RADIUS;
 import static fiji.plugin.trackmate.detection.DetectorKeys.KEY_TARGET_CHANNEL;
 import static fiji.plugin.trackmate.detection.DetectorKeys.KEY_THRESHOLD;
@@ -35,6 +37,7 @@ import static fiji.plugin.trackmate.io.IOUtils.readBooleanAttribute;
 import static fiji.plugin.trackmate.io.IOUtils.readDoubleAttribute;
 import static fiji.plugin.trackmate.io.IOUtils.readIntegerAttribute;
 import static fiji.plugin.trackmate.io.IOUtils.writeDoMedian;
+import static fiji.plugin.trackmate.io.IOUtils.writeAttribute;
 import static fiji.plugin.trackmate.io.IOUtils.writeDoSubPixel;
 import static fiji.plugin.trackmate.io.IOUtils.writeRadius;
 import static fiji.plugin.trackmate.io.IOUtils.writeTargetChannel;
@@ -46,6 +49,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
 import javax.swing.ImageIcon;
 
@@ -156,7 +160,51 @@ public class LogDetectorFactory< T extends RealType< T > & NativeType< T >> impl
 		final double[] calibration = TMUtils.getSpatialCalibration( img );
 		final RandomAccessible< T > imFrame = prepareFrameImg( frame );
 
+		final boolean doRefinement = Boolean.TRUE.equals( settings.get( KEY_DO_GAUSSIAN_REFINEMENT ) );
+
+		final int nDims = DetectionUtils.squeeze( interval ).numDimensions();
+		final SpotDetector< T > tiled = getTiledDetector( interval, calibration, radius / Math.sqrt( nDims ), tile -> {
+			final LogDetector< T > tileDetector = new LogDetector<>( imFrame, tile, calibration, radius, threshold, doSubpixel, doMedian );
+			tileDetector.setGaussianRefinement( doRefinement );
+			return tileDetector;
+		} );
+		if ( null != tiled )
+			return tiled;
+
 		final LogDetector< T > detector = new LogDetector<>( imFrame, interval, calibration, radius, threshold, doSubpixel, doMedian );
+		detector.setGaussianRefinement( doRefinement );
+		detector.setNumThreads( 1 );
+		return detector;
+	}
+
+	/**
+	 * Returns a {@link TiledDetector} for the specified interval if tiling is
+	 * on in the current settings and the interval spans several tiles.
+	 *
+	 * @param interval
+	 *            the interval to process.
+	 * @param calibration
+	 *            the pixel sizes.
+	 * @param sigma
+	 *            the largest sigma of the filter used by the detector, in
+	 *            physical units. Used to size the tile halo.
+	 * @param tileDetectorFactory
+	 *            creates the detector for one tile.
+	 * @return a new tiled detector, or <code>null</code> if the interval
+	 *         should be processed in one go.
+	 */
+	protected SpotDetector< T > getTiledDetector( final Interval interval, final double[] calibration, final double sigma, final Function< Interval, SpotDetector< T > > tileDetectorFactory )
+	{
+		if ( !Boolean.TRUE.equals( settings.get( KEY_DO_TILING ) ) )
+			return null;
+
+		final int nDims = DetectionUtils.squeeze( interval ).numDimensions();
+		final long[] halo = TiledDetector.getHalo( sigma, calibration, nDims );
+		final long[] coreSize = TiledDetector.getCoreSize( halo );
+		if ( !TiledDetector.isWorthTiling( interval, coreSize, halo ) )
+			return null;
+
+		final TiledDetector< T > detector = new TiledDetector<>( interval, calibration, coreSize, halo, tileDetectorFactory );
 		detector.setNumThreads( 1 );
 		return detector;
 	}
@@ -183,13 +231,20 @@ public class LogDetectorFactory< T extends RealType< T > & NativeType< T >> impl
 		ok = ok & checkParameter( lSettings, KEY_THRESHOLD, Double.class, errorHolder );
 		ok = ok & checkParameter( lSettings, KEY_DO_MEDIAN_FILTERING, Boolean.class, errorHolder );
 		ok = ok & checkParameter( lSettings, KEY_DO_SUBPIXEL_LOCALIZATION, Boolean.class, errorHolder );
+		if ( lSettings.containsKey( KEY_DO_TILING ) )
+			ok = ok & checkParameter( lSettings, KEY_DO_TILING, Boolean.class, errorHolder );
+		if ( lSettings.containsKey( KEY_DO_GAUSSIAN_REFINEMENT ) )
+			ok = ok & checkParameter( lSettings, KEY_DO_GAUSSIAN_REFINEMENT, Boolean.class, errorHolder );
 		final List< String > mandatoryKeys = new ArrayList<>();
 		mandatoryKeys.add( KEY_TARGET_CHANNEL );
 		mandatoryKeys.add( KEY_RADIUS );
 		mandatoryKeys.add( KEY_THRESHOLD );
 		mandatoryKeys.add( KEY_DO_MEDIAN_FILTERING );
 		mandatoryKeys.add( KEY_DO_SUBPIXEL_LOCALIZATION );
-		ok = ok & checkMapKeys( lSettings, mandatoryKeys, null, errorHolder );
+		final List< String > optionalKeys = new ArrayList<>();
+		optionalKeys.add( KEY_DO_TILING );
+		optionalKeys.add( KEY_DO_GAUSSIAN_REFINEMENT );
+		ok = ok & checkMapKeys( lSettings, mandatoryKeys, optionalKeys, errorHolder );
 		if ( !ok )
 		{
 			errorMessage = errorHolder.toString();
@@ -201,7 +256,11 @@ public class LogDetectorFactory< T extends RealType< T > & NativeType< T >> impl
 	public boolean marshall( final Map< String, Object > lSettings, final Element element )
 	{
 		final StringBuilder errorHolder = new StringBuilder();
-		final boolean ok = writeTargetChannel( lSettings, element, errorHolder ) && writeRadius( lSettings, element, errorHolder ) && writeThreshold( lSettings, element, errorHolder ) && writeDoMedian( lSettings, element, errorHolder ) && writeDoSubPixel( lSettings, element, errorHolder );
+		boolean ok = writeTargetChannel( lSettings, element, errorHolder ) && writeRadius( lSettings, element, errorHolder ) && writeThreshold( lSettings, element, errorHolder ) && writeDoMedian( lSettings, element, errorHolder ) && writeDoSubPixel( lSettings, element, errorHolder );
+		if ( lSettings.containsKey( KEY_DO_TILING ) )
+			ok = ok && writeAttribute( lSettings, element, KEY_DO_TILING, Boolean.class, errorHolder );
+		if ( lSettings.containsKey( KEY_DO_GAUSSIAN_REFINEMENT ) )
+			ok = ok && writeAttribute( lSettings, element, KEY_DO_GAUSSIAN_REFINEMENT, Boolean.class, errorHolder );
 		if ( !ok )
 		{
 			errorMessage = errorHolder.toString();
@@ -220,6 +279,10 @@ public class LogDetectorFactory< T extends RealType< T > & NativeType< T >> impl
 		ok = ok & readBooleanAttribute( element, lSettings, KEY_DO_SUBPIXEL_LOCALIZATION, errorHolder );
 		ok = ok & readBooleanAttribute( element, lSettings, KEY_DO_MEDIAN_FILTERING, errorHolder );
 		ok = ok & readIntegerAttribute( element, lSettings, KEY_TARGET_CHANNEL, errorHolder );
+		if ( null != element.getAttributeValue( KEY_DO_TILING ) )
+			ok = ok & readBooleanAttribute( element, lSettings, KEY_DO_TILING, errorHolder );
+		if ( null != element.getAttributeValue( KEY_DO_GAUSSIAN_REFINEMENT ) )
+			ok = ok & readBooleanAttribute( element, lSettings, KEY_DO_GAUSSIAN_REFINEMENT, errorHolder );
 		if ( !ok )
 		{
 			errorMessage = errorHolder.toString();
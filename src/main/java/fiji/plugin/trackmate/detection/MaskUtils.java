@@ -26,10 +26,10 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.SpotRoi;
+import fiji.plugin.trackmate.util.TrackMateExecutor;
 import ij.ImagePlus;
 import ij.gui.PolygonRoi;
 import ij.measure.Measurements;
@@ -207,9 +207,7 @@ public class MaskUtils
 		final StructuringElement se = StructuringElement.FOUR_CONNECTED;
 
 		// Get connected components.
-		final ExecutorService executorService = numThreads > 1
-				? Executors.newFixedThreadPool( numThreads )
-				: Executors.newSingleThreadExecutor();
+		final ExecutorService executorService = TrackMateExecutor.current().getExecutorService( "Connected components", numThreads );
 
 		ConnectedComponents.labelAllConnectedComponents(
 				bitMask,
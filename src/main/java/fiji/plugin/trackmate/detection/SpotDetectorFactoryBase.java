@@ -144,4 +144,28 @@ public interface SpotDetectorFactoryBase< T extends RealType< T > & NativeType<
 	{
 		return false;
 	}
+
+	/**
+	 * Returns a new factory of the same class as this one, not targeted at
+	 * any image yet. This allows targeting several images at once, for
+	 * instance one per frame, with {@link #setTarget(ImgPlus, Map)}.
+	 * <p>
+	 * By default, the copy is created with the public no-argument
+	 * constructor factories have to be discovered as SciJava plugins.
+	 * Factories that lack it must override this method.
+	 *
+	 * @return a new factory.
+	 */
+	@SuppressWarnings( "unchecked" )
+	public default SpotDetectorFactoryBase< T > copy()
+	{
+		try
+		{
+			return getClass().getDeclaredConstructor().newInstance();
+		}
+		catch ( final ReflectiveOperationException e )
+		{
+			throw new IllegalStateException( "Cannot copy detector factory " + getClass().getName() + ".", e );
+		}
+	}
 }
@@ -22,6 +22,7 @@
 package fiji.plugin.trackmate.detection;
 
 import static fiji.plugin.trackmate.detection.DetectorKeys.DEFAULT_TARGET_CHANNEL;
+import static fiji.plugin.trackmate.detection.DetectorKeys.KEY_DO_TILING;
 import static fiji.plugin.trackmate.detection.DetectorKeys.KEY_TARGET_CHANNEL;
 import static fiji.plugin.trackmate.io.IOUtils.readBooleanAttribute;
 import static fiji.plugin.trackmate.io.IOUtils.readDoubleAttribute;
@@ -114,6 +115,7 @@ public class ThresholdDetectorFactory< T extends RealType< T > & NativeType< T >
 		final int channel = ( Integer ) settings.get( KEY_TARGET_CHANNEL ) - 1;
 		final RandomAccessible< T > imFrame = DetectionUtils.prepareFrameImg( img, channel, frame );
 
+		// Never tiled, see DetectorKeys#KEY_DO_TILING.
 		final ThresholdDetector< T > detector = new ThresholdDetector<>(
 				imFrame,
 				interval,
@@ -150,11 +152,15 @@ public class ThresholdDetectorFactory< T extends RealType< T > & NativeType< T >
 		ok = ok & checkParameter( lSettings, KEY_TARGET_CHANNEL, Integer.class, errorHolder );
 		ok = ok & checkParameter( lSettings, KEY_INTENSITY_THRESHOLD, Double.class, errorHolder );
 		ok = ok & checkParameter( lSettings, KEY_SIMPLIFY_CONTOURS, Boolean.class, errorHolder );
+		if ( lSettings.containsKey( KEY_DO_TILING ) )
+			ok = ok & checkParameter( lSettings, KEY_DO_TILING, Boolean.class, errorHolder );
 		final List< String > mandatoryKeys = new ArrayList<>();
 		mandatoryKeys.add( KEY_TARGET_CHANNEL );
 		mandatoryKeys.add( KEY_INTENSITY_THRESHOLD );
 		mandatoryKeys.add( KEY_SIMPLIFY_CONTOURS );
-		ok = ok & checkMapKeys( lSettings, mandatoryKeys, null, errorHolder );
+		final List< String > optionalKeys = new ArrayList<>();
+		optionalKeys.add( KEY_DO_TILING );
+		ok = ok & checkMapKeys( lSettings, mandatoryKeys, optionalKeys, errorHolder );
 		if ( !ok )
 		{
 			errorMessage = errorHolder.toString();
@@ -166,9 +172,11 @@ public class ThresholdDetectorFactory< T extends RealType< T > & NativeType< T >
 	public boolean marshall( final Map< String, Object > lSettings, final Element element )
 	{
 		final StringBuilder errorHolder = new StringBuilder();
-		final boolean ok = writeTargetChannel( lSettings, element, errorHolder )
+		boolean ok = writeTargetChannel( lSettings, element, errorHolder )
 				&& writeAttribute( lSettings, element, KEY_INTENSITY_THRESHOLD, Double.class, errorHolder )
 				&& writeAttribute( lSettings, element, KEY_SIMPLIFY_CONTOURS, Boolean.class, errorHolder );
+		if ( lSettings.containsKey( KEY_DO_TILING ) )
+			ok = ok && writeAttribute( lSettings, element, KEY_DO_TILING, Boolean.class, errorHolder );
 
 		if ( !ok )
 			errorMessage = errorHolder.toString();
@@ -185,6 +193,8 @@ public class ThresholdDetectorFactory< T extends RealType< T > & NativeType< T >
 		ok = ok & readIntegerAttribute( element, lSettings, KEY_TARGET_CHANNEL, errorHolder );
 		ok = ok & readDoubleAttribute( element, lSettings, KEY_INTENSITY_THRESHOLD, errorHolder );
 		ok = ok & readBooleanAttribute( element, lSettings, KEY_SIMPLIFY_CONTOURS, errorHolder );
+		if ( null != element.getAttributeValue( KEY_DO_TILING ) )
+			ok = ok & readBooleanAttribute( element, lSettings, KEY_DO_TILING, errorHolder );
 		if ( !ok )
 		{
 			errorMessage = errorHolder.toString();
@@ -0,0 +1,372 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.detection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.util.TrackMateExecutor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.algorithm.MultiThreaded;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * A {@link SpotDetector} that processes a large interval as a set of smaller,
+ * overlapping tiles.
+ * <p>
+ * The interval is cut in non-overlapping <i>cores</i>. Each core is enlarged
+ * by a <i>halo</i> on all sides, and the resulting tile is processed by a
+ * regular detector, created for the tile interval. Tiles are processed
+ * concurrently on the {@link TrackMateExecutor}, so the memory used at once is
+ * bounded by the tile size times the number of threads, and not by the size
+ * of the whole interval.
+ * <p>
+ * A spot is kept only if its position, rounded to the nearest pixel, lies in
+ * the core of the tile it was found in. Since the cores do not overlap, spots
+ * found in the halo of a tile, which are also found in the core of a
+ * neighbor tile, are kept only once. If the halo is larger than the extent of
+ * the filter used by the detector, the values computed in a core are the same
+ * as when processing the whole interval, and so are the spots found there.
+ * Detectors whose results depend on regions of unbounded size, like the
+ * {@link ThresholdDetector}, cannot be tiled this way.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ *
+ * @param <T>
+ *            the type of the pixels in the source image.
+ */
+public class TiledDetector< T extends RealType< T > & NativeType< T > > implements SpotDetector< T >, MultiThreaded
+{
+
+	private final static String BASE_ERROR_MESSAGE = "TiledDetector: ";
+
+	/**
+	 * The minimal size, in pixels, of the core of a tile along each dimension.
+	 * Smaller tiles spend most of their time on the halo.
+	 */
+	public static final int MIN_CORE_SIZE = 256;
+
+	/**
+	 * The minimal ratio between the core size and the halo size along each
+	 * dimension.
+	 */
+	public static final int CORE_TO_HALO_RATIO = 4;
+
+	/**
+	 * Margin added to the halo on top of the filter extent, for the median
+	 * filter, the local maxima neighborhood and the sub-pixel localization.
+	 */
+	private static final int HALO_MARGIN = 3;
+
+	private final Interval interval;
+
+	private final double[] calibration;
+
+	private final long[] coreSize;
+
+	private final long[] halo;
+
+	private final Function< Interval, SpotDetector< T > > tileDetectorFactory;
+
+	private List< Spot > spots = new ArrayList<>();
+
+	private String errorMessage;
+
+	private long processingTime;
+
+	private int numThreads;
+
+	/**
+	 * Creates a new tiled detector.
+	 *
+	 * @param interval
+	 *            the interval to process, in pixel coordinates.
+	 * @param calibration
+	 *            the pixel sizes, used to convert the spot positions back to
+	 *            pixel coordinates.
+	 * @param coreSize
+	 *            the size of the tile cores along each non-singleton
+	 *            dimension of the interval.
+	 * @param halo
+	 *            the size of the halo along each non-singleton dimension of
+	 *            the interval.
+	 * @param tileDetectorFactory
+	 *            a function that returns a new detector for the specified
+	 *            tile interval.
+	 */
+	public TiledDetector(
+			final Interval interval,
+			final double[] calibration,
+			final long[] coreSize,
+			final long[] halo,
+			final Function< Interval, SpotDetector< T > > tileDetectorFactory )
+	{
+		this.interval = DetectionUtils.squeeze( interval );
+		this.calibration = calibration;
+		this.coreSize = coreSize;
+		this.halo = halo;
+		this.tileDetectorFactory = tileDetectorFactory;
+		setNumThreads();
+	}
+
+	@Override
+	public boolean checkInput()
+	{
+		final int n = interval.numDimensions();
+		if ( coreSize.length < n || halo.length < n )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "Tile sizes must be specified for the " + n + " dimensions of the interval.";
+			return false;
+		}
+		for ( int d = 0; d < n; d++ )
+		{
+			if ( coreSize[ d ] < 1 || halo[ d ] < 0 )
+			{
+				errorMessage = BASE_ERROR_MESSAGE + "Invalid tile size along dimension " + d + ": core = " + coreSize[ d ] + ", halo = " + halo[ d ] + ".";
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean process()
+	{
+		final long start = System.currentTimeMillis();
+
+		final List< Interval > cores = getCores( interval, coreSize );
+		final List< Callable< List< Spot > > > tasks = new ArrayList<>( cores.size() );
+		for ( final Interval core : cores )
+			tasks.add( () -> processTile( core ) );
+
+		final List< List< Spot > > results;
+		try
+		{
+			results = TrackMateExecutor.current().invokeAll( "Tiled detection", tasks, numThreads );
+		}
+		catch ( InterruptedException | ExecutionException e )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "Problem processing tiles: " + e.getMessage();
+			return false;
+		}
+
+		final List< Spot > lSpots = new ArrayList<>();
+		for ( final List< Spot > result : results )
+		{
+			if ( null == result )
+				return false;
+			lSpots.addAll( result );
+		}
+		spots = lSpots;
+
+		final long end = System.currentTimeMillis();
+		processingTime = end - start;
+		return true;
+	}
+
+	/**
+	 * Detects spots in the tile made of the specified core plus its halo, and
+	 * returns the ones that lie in the core.
+	 *
+	 * @return the spots in the core, or <code>null</code> if detection
+	 *         failed.
+	 */
+	private List< Spot > processTile( final Interval core )
+	{
+		final int n = core.numDimensions();
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		for ( int d = 0; d < n; d++ )
+		{
+			min[ d ] = Math.max( interval.min( d ), core.min( d ) - halo[ d ] );
+			max[ d ] = Math.min( interval.max( d ), core.max( d ) + halo[ d ] );
+		}
+		final SpotDetector< T > detector = tileDetectorFactory.apply( new FinalInterval( min, max ) );
+		if ( detector instanceof MultiThreaded )
+			( ( MultiThreaded ) detector ).setNumThreads( 1 );
+
+		if ( !detector.checkInput() || !detector.process() )
+		{
+			synchronized ( this )
+			{
+				errorMessage = BASE_ERROR_MESSAGE + detector.getErrorMessage();
+			}
+			return null;
+		}
+
+		final List< Spot > detected = detector.getResult();
+		final List< Spot > inCore = new ArrayList<>( detected.size() );
+		for ( final Spot spot : detected )
+			if ( isInCore( spot, core ) )
+				inCore.add( spot );
+		return inCore;
+	}
+
+	private boolean isInCore( final Spot spot, final Interval core )
+	{
+		for ( int d = 0; d < core.numDimensions(); d++ )
+		{
+			final long pos = Math.round( spot.getDoublePosition( d ) / calibration[ d ] );
+			if ( pos < core.min( d ) || pos > core.max( d ) )
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Cuts the specified interval in non-overlapping cores of the specified
+	 * size. The cores on the upper border of the interval may be smaller.
+	 */
+	private static List< Interval > getCores( final Interval interval, final long[] coreSize )
+	{
+		final int n = interval.numDimensions();
+		final long[] nTiles = new long[ n ];
+		long total = 1;
+		for ( int d = 0; d < n; d++ )
+		{
+			nTiles[ d ] = ( interval.dimension( d ) + coreSize[ d ] - 1 ) / coreSize[ d ];
+			total *= nTiles[ d ];
+		}
+
+		final List< Interval > cores = new ArrayList<>( ( int ) total );
+		final long[] index = new long[ n ];
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		for ( long i = 0; i < total; i++ )
+		{
+			long rest = i;
+			for ( int d = 0; d < n; d++ )
+			{
+				index[ d ] = rest % nTiles[ d ];
+				rest /= nTiles[ d ];
+				min[ d ] = interval.min( d ) + index[ d ] * coreSize[ d ];
+				max[ d ] = Math.min( interval.max( d ), min[ d ] + coreSize[ d ] - 1 );
+			}
+			cores.add( new FinalInterval( min, max ) );
+		}
+		return cores;
+	}
+
+	/**
+	 * Returns the halo needed around a tile for a detector that filters the
+	 * image with a Gaussian-like kernel of the specified sigma.
+	 *
+	 * @param sigma
+	 *            the largest sigma of the filter, in physical units.
+	 * @param calibration
+	 *            the pixel sizes.
+	 * @param nDims
+	 *            the number of non-singleton dimensions of the interval.
+	 * @return the halo size in pixels, along each dimension.
+	 */
+	public static long[] getHalo( final double sigma, final double[] calibration, final int nDims )
+	{
+		final long[] halo = new long[ nDims ];
+		for ( int d = 0; d < nDims; d++ )
+		{
+			// Same kernel half-size as in Gauss3 and the LoG kernel.
+			final double sigmaPixels = sigma / calibration[ d ];
+			final int hksize = Math.max( 2, ( int ) ( 3 * sigmaPixels + 0.5 ) + 1 );
+			halo[ d ] = 1 + hksize + HALO_MARGIN;
+		}
+		return halo;
+	}
+
+	/**
+	 * Returns the core size to use for tiles with the specified halo.
+	 *
+	 * @param halo
+	 *            the halo size, in pixels, along each dimension.
+	 * @return the core size in pixels, along each dimension.
+	 */
+	public static long[] getCoreSize( final long[] halo )
+	{
+		final long[] coreSize = new long[ halo.length ];
+		for ( int d = 0; d < halo.length; d++ )
+			coreSize[ d ] = Math.max( MIN_CORE_SIZE, CORE_TO_HALO_RATIO * halo[ d ] );
+		return coreSize;
+	}
+
+	/**
+	 * Returns <code>true</code> if the specified interval is larger than one
+	 * tile of the specified core and halo size along at least one dimension.
+	 * Smaller intervals are better processed in one go.
+	 *
+	 * @param interval
+	 *            the interval to process.
+	 * @param coreSize
+	 *            the core size.
+	 * @param halo
+	 *            the halo size.
+	 * @return whether tiling the interval would make smaller tiles.
+	 */
+	public static boolean isWorthTiling( final Interval interval, final long[] coreSize, final long[] halo )
+	{
+		final Interval squeezed = DetectionUtils.squeeze( interval );
+		for ( int d = 0; d < squeezed.numDimensions(); d++ )
+			if ( squeezed.dimension( d ) > coreSize[ d ] + 2 * halo[ d ] )
+				return true;
+		return false;
+	}
+
+	@Override
+	public List< Spot > getResult()
+	{
+		return spots;
+	}
+
+	@Override
+	public String getErrorMessage()
+	{
+		return errorMessage;
+	}
+
+	@Override
+	public long getProcessingTime()
+	{
+		return processingTime;
+	}
+
+	@Override
+	public void setNumThreads()
+	{
+		this.numThreads = Runtime.getRuntime().availableProcessors();
+	}
+
+	@Override
+	public void setNumThreads( final int numThreads )
+	{
+		this.numThreads = numThreads;
+	}
+
+	@Override
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+}
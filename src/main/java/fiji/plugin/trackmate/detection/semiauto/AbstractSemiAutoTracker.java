@@ -28,9 +28,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 
 import fiji.plugin.trackmate.Logger;
 import fiji.plugin.trackmate.Model;
@@ -38,6 +35,7 @@ import fiji.plugin.trackmate.SelectionModel;
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.detection.LogDetector;
 import fiji.plugin.trackmate.detection.SpotDetector;
+import fiji.plugin.trackmate.util.TrackMateExecutor;
 import net.imglib2.Interval;
 import net.imglib2.RandomAccessible;
 import net.imglib2.algorithm.Algorithm;
@@ -156,19 +154,13 @@ public abstract class AbstractSemiAutoTracker< T extends RealType< T > & NativeT
 
 		ok = true;
 		final int nThreads = Math.min( numThreads, spots.size() );
-		final ExecutorService executors = Executors.newFixedThreadPool( nThreads );
-		final List< Future< ? > > futures = new ArrayList<>( spots.size() );
+		final List< Runnable > tasks = new ArrayList<>( spots.size() );
 		for ( final Spot spot : spots )
-		{
-			final Future< ? > future = executors.submit( () -> processSpot( spot ) );
-			futures.add( future );
-		}
+			tasks.add( () -> processSpot( spot ) );
+
 		try
 		{
-			for ( final Future< ? > future : futures )
-				future.get();
-
-			executors.shutdown();
+			TrackMateExecutor.current().runAll( "Semi-automatic tracking", tasks, nThreads );
 		}
 		catch ( InterruptedException | ExecutionException e )
 		{
@@ -0,0 +1,220 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.features;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.scijava.Cancelable;
+
+import fiji.plugin.trackmate.Logger;
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Settings;
+import fiji.plugin.trackmate.features.edges.EdgeAnalyzer;
+import fiji.plugin.trackmate.features.track.TrackAnalyzer;
+import net.imglib2.algorithm.MultiThreadedBenchmarkAlgorithm;
+
+/**
+ * Calculates the edge and track features together, through
+ * {@link EdgeAnalyzer}s and {@link TrackAnalyzer}s.
+ * <p>
+ * Contrary to running an {@link EdgeFeatureCalculator} and then a
+ * {@link TrackFeatureCalculator}, all the analyzers are scheduled at once by
+ * the {@link FeatureAnalyzerScheduler}. A track analyzer that does not depend
+ * on edge features can therefore run at the same time as the edge analyzers,
+ * and an edge analyzer may consume track features.
+ * <p>
+ * Spot analyzers are not part of the schedule: they run frame by frame, before
+ * the tracks exist.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+public class EdgeAndTrackFeatureCalculator extends MultiThreadedBenchmarkAlgorithm implements Cancelable
+{
+
+	private static final String BASE_ERROR_MSG = "[EdgeAndTrackFeatureCalculator] ";
+
+	private final Settings settings;
+
+	private final Model model;
+
+	private boolean isCanceled;
+
+	private String cancelReason;
+
+	public EdgeAndTrackFeatureCalculator( final Model model, final Settings settings )
+	{
+		this.settings = settings;
+		this.model = model;
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	@Override
+	public boolean checkInput()
+	{
+		if ( null == model )
+		{
+			errorMessage = BASE_ERROR_MSG + "Model object is null.";
+			return false;
+		}
+		if ( null == settings )
+		{
+			errorMessage = BASE_ERROR_MSG + "Settings object is null.";
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Calculates the edge and track features configured in the
+	 * {@link Settings} for all the edges and tracks of this model.
+	 */
+	@Override
+	public boolean process()
+	{
+		final long start = System.currentTimeMillis();
+
+		// Declare what you do.
+		new EdgeFeatureCalculator( model, settings ).declareFeatures();
+		new TrackFeatureCalculator( model, settings ).declareFeatures();
+
+		// Do it.
+		final Collection< DefaultWeightedEdge > edges = model.getTrackModel().edgeSet();
+		final Map< EdgeAnalyzer, Collection< DefaultWeightedEdge > > edgeMap = new HashMap<>();
+		for ( final EdgeAnalyzer analyzer : settings.getEdgeAnalyzers() )
+			edgeMap.put( analyzer, edges );
+		final Collection< Integer > trackIDs = model.getTrackModel().trackIDs( false );
+		final Map< TrackAnalyzer, Collection< Integer > > trackMap = new HashMap<>();
+		for ( final TrackAnalyzer analyzer : settings.getTrackAnalyzers() )
+			trackMap.put( analyzer, trackIDs );
+		final boolean ok = computeFeaturesAgent( settings.getEdgeAnalyzers(), edgeMap, settings.getTrackAnalyzers(), trackMap, true );
+
+		final long end = System.currentTimeMillis();
+		processingTime = end - start;
+		return ok;
+	}
+
+	/**
+	 * Calculates the edge and track features of the specified analyzers, each
+	 * on its own collection of edges or tracks. Analyzers that are not in the
+	 * maps, or that are mapped to an empty collection, are not executed.
+	 * Track analyzers that are not local are executed on all the tracks.
+	 *
+	 * @param edges
+	 *            the edges to compute, per analyzer.
+	 * @param trackIDs
+	 *            the IDs of the tracks to compute, per analyzer.
+	 * @param doLogIt
+	 *            if <code>true</code>, the logger of the model will be notified
+	 *            of the calculation.
+	 * @return <code>true</code> if the calculation completed without errors.
+	 */
+	public boolean computeFeatures(
+			final Map< EdgeAnalyzer, ? extends Collection< DefaultWeightedEdge > > edges,
+			final Map< TrackAnalyzer, ? extends Collection< Integer > > trackIDs,
+			final boolean doLogIt )
+	{
+		final List< EdgeAnalyzer > edgeAnalyzers = new ArrayList<>( edges.size() );
+		for ( final EdgeAnalyzer analyzer : edges.keySet() )
+			if ( !edges.get( analyzer ).isEmpty() )
+				edgeAnalyzers.add( analyzer );
+		final List< TrackAnalyzer > trackAnalyzers = new ArrayList<>( trackIDs.size() );
+		for ( final TrackAnalyzer analyzer : trackIDs.keySet() )
+			if ( !trackIDs.get( analyzer ).isEmpty() )
+				trackAnalyzers.add( analyzer );
+		return computeFeaturesAgent( edgeAnalyzers, edges, trackAnalyzers, trackIDs, doLogIt );
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private boolean computeFeaturesAgent(
+			final List< EdgeAnalyzer > edgeAnalyzers,
+			final Map< EdgeAnalyzer, ? extends Collection< DefaultWeightedEdge > > edges,
+			final List< TrackAnalyzer > trackAnalyzers,
+			final Map< TrackAnalyzer, ? extends Collection< Integer > > trackIDs,
+			final boolean doLogIt )
+	{
+		isCanceled = false;
+		cancelReason = null;
+
+		final Logger logger = model.getLogger();
+		if ( doLogIt )
+			logger.log( "Computing edge and track features:\n", Logger.BLUE_COLOR );
+
+		// Skip manual features.
+		final List< FeatureAnalyzer > toRun = new ArrayList<>( edgeAnalyzers.size() + trackAnalyzers.size() );
+		for ( final EdgeAnalyzer analyzer : edgeAnalyzers )
+			if ( !analyzer.isManualFeature() )
+				toRun.add( analyzer );
+		for ( final TrackAnalyzer analyzer : trackAnalyzers )
+			if ( !analyzer.isManualFeature() )
+				toRun.add( analyzer );
+
+		// Analyzers that do not depend on each other run concurrently, whatever their type.
+		try
+		{
+			FeatureAnalyzerScheduler.execute( toRun, numThreads, ( analyzer, nThreads ) -> {
+				if ( analyzer instanceof EdgeAnalyzer )
+					EdgeFeatureCalculator.run( ( EdgeAnalyzer ) analyzer, edges.get( analyzer ), nThreads, model, doLogIt );
+				else
+					TrackFeatureCalculator.run( ( TrackAnalyzer ) analyzer, trackIDs.get( analyzer ), nThreads, model, doLogIt );
+			}, this::isCanceled );
+		}
+		catch ( InterruptedException | ExecutionException e )
+		{
+			errorMessage = BASE_ERROR_MSG + "Error while computing edge and track features: " + e.getMessage();
+			return false;
+		}
+		return true;
+	}
+
+	// --- org.scijava.Cancelable methods ---
+
+	@Override
+	public boolean isCanceled()
+	{
+		return isCanceled;
+	}
+
+	@Override
+	public void cancel( final String reason )
+	{
+		isCanceled = true;
+		cancelReason = reason;
+	}
+
+	@Override
+	public String getCancelReason()
+	{
+		return cancelReason;
+	}
+}
@@ -21,9 +21,12 @@
  */
 package fiji.plugin.trackmate.features;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
 
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.scijava.Cancelable;
@@ -91,6 +94,23 @@ public class EdgeFeatureCalculator extends MultiThreadedBenchmarkAlgorithm imple
 		final long start = System.currentTimeMillis();
 
 		// Declare what you do.
+		declareFeatures();
+
+		// Do it.
+		final Collection< DefaultWeightedEdge > edges = model.getTrackModel().edgeSet();
+		final boolean ok = computeEdgeFeaturesAgent( analyzer -> edges, settings.getEdgeAnalyzers(), true );
+
+		final long end = System.currentTimeMillis();
+		processingTime = end - start;
+		return ok;
+	}
+
+	/**
+	 * Declares the edge features configured in the {@link Settings} in the
+	 * feature model of the model.
+	 */
+	public void declareFeatures()
+	{
 		for ( final EdgeAnalyzer analyzer : settings.getEdgeAnalyzers() )
 		{
 			final Collection< String > features = analyzer.getFeatures();
@@ -100,13 +120,6 @@ public class EdgeFeatureCalculator extends MultiThreadedBenchmarkAlgorithm imple
 			final Map< String, Boolean > isIntFeature = analyzer.getIsIntFeature();
 			model.getFeatureModel().declareEdgeFeatures( features, featureNames, featureShortNames, featureDimensions, isIntFeature );
 		}
-
-		// Do it.
-		computeEdgeFeaturesAgent( model.getTrackModel().edgeSet(), settings.getEdgeAnalyzers(), true );
-
-		final long end = System.currentTimeMillis();
-		processingTime = end - start;
-		return true;
 	}
 
 	/**
@@ -118,18 +131,40 @@ public class EdgeFeatureCalculator extends MultiThreadedBenchmarkAlgorithm imple
 	 * @param doLogIt
 	 *            if <code>true</code>, the logger of the model will be notified
 	 *            of the calculation.
+	 * @return <code>true</code> if the calculation completed without errors.
 	 */
-	public void computeEdgesFeatures( final Collection< DefaultWeightedEdge > edges, final boolean doLogIt )
+	public boolean computeEdgesFeatures( final Collection< DefaultWeightedEdge > edges, final boolean doLogIt )
 	{
 		final List< EdgeAnalyzer > spotFeatureAnalyzers = settings.getEdgeAnalyzers();
-		computeEdgeFeaturesAgent( edges, spotFeatureAnalyzers, doLogIt );
+		return computeEdgeFeaturesAgent( analyzer -> edges, spotFeatureAnalyzers, doLogIt );
+	}
+
+	/**
+	 * Calculates the edge features of the specified analyzers, each on its own
+	 * collection of edges. Analyzers that are not in the map, or that are
+	 * mapped to an empty collection, are not executed.
+	 *
+	 * @param edges
+	 *            the edges to compute, per analyzer.
+	 * @param doLogIt
+	 *            if <code>true</code>, the logger of the model will be notified
+	 *            of the calculation.
+	 * @return <code>true</code> if the calculation completed without errors.
+	 */
+	public boolean computeEdgesFeatures( final Map< EdgeAnalyzer, ? extends Collection< DefaultWeightedEdge > > edges, final boolean doLogIt )
+	{
+		final List< EdgeAnalyzer > analyzers = new ArrayList<>( edges.size() );
+		for ( final EdgeAnalyzer analyzer : edges.keySet() )
+			if ( !edges.get( analyzer ).isEmpty() )
+				analyzers.add( analyzer );
+		return computeEdgeFeaturesAgent( edges::get, analyzers, doLogIt );
 	}
 
 	/*
 	 * PRIVATE METHODS
 	 */
 
-	private void computeEdgeFeaturesAgent( final Collection< DefaultWeightedEdge > edges, final List< EdgeAnalyzer > analyzers, final boolean doLogIt )
+	private boolean computeEdgeFeaturesAgent( final Function< EdgeAnalyzer, ? extends Collection< DefaultWeightedEdge > > edges, final List< EdgeAnalyzer > analyzers, final boolean doLogIt )
 	{
 		isCanceled = false;
 		cancelReason = null;
@@ -138,21 +173,36 @@ public class EdgeFeatureCalculator extends MultiThreadedBenchmarkAlgorithm imple
 		if ( doLogIt )
 			logger.log( "Computing edge features:\n", Logger.BLUE_COLOR );
 
+		// Skip manual features.
+		final List< EdgeAnalyzer > toRun = new ArrayList<>( analyzers.size() );
 		for ( final EdgeAnalyzer analyzer : analyzers )
+			if ( !analyzer.isManualFeature() )
+				toRun.add( analyzer );
+
+		// Analyzers that do not depend on each other run concurrently.
+		try
+		{
+			FeatureAnalyzerScheduler.execute( toRun, numThreads,
+					( analyzer, nThreads ) -> run( analyzer, edges.apply( analyzer ), nThreads, model, doLogIt ),
+					this::isCanceled );
+		}
+		catch ( InterruptedException | ExecutionException e )
 		{
-			if ( isCanceled() )
-				return;
-			
-			if ( analyzer.isManualFeature() )
-			{
-				// Skip manual features.
-				continue;
-			}
-			analyzer.setNumThreads( numThreads );
-			analyzer.process( edges, model );
-			if ( doLogIt )
-				logger.log( "  - " + analyzer.getName() + " in " + analyzer.getProcessingTime() + " ms.\n" );
+			errorMessage = BASE_ERROR_MSG + "Error while computing edge features: " + e.getMessage();
+			return false;
 		}
+		return true;
+	}
+
+	/**
+	 * Executes one edge analyzer on the specified edges.
+	 */
+	static void run( final EdgeAnalyzer analyzer, final Collection< DefaultWeightedEdge > edges, final int numThreads, final Model model, final boolean doLogIt )
+	{
+		analyzer.setNumThreads( numThreads );
+		analyzer.process( edges, model );
+		if ( doLogIt )
+			model.getLogger().log( "  - " + analyzer.getName() + " in " + analyzer.getProcessingTime() + " ms.\n" );
 	}
 
 	// --- org.scijava.Cancelable methods ---
@@ -21,8 +21,11 @@
  */
 package fiji.plugin.trackmate.features;
 
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import fiji.plugin.trackmate.Dimension;
 import fiji.plugin.trackmate.TrackMateModule;
@@ -73,4 +76,36 @@ public interface FeatureAnalyzer extends TrackMateModule
 	 *         manual feature.
 	 */
 	public boolean isManualFeature();
+
+	/**
+	 * Returns the list of feature keys this analyzer reads to compute its own
+	 * features. They can be features of spots, edges or tracks.
+	 * <p>
+	 * This is used by the {@link FeatureAnalyzerScheduler} to order the
+	 * analyzers and to determine which ones can be run concurrently. Features
+	 * computed by analyzers of an earlier stage (for instance spot features
+	 * read by a track analyzer) are always available and need not be
+	 * declared, but declaring them does no harm.
+	 *
+	 * @return the list of feature keys this analyzer depends on. By default,
+	 *         an empty list.
+	 */
+	public default List< String > getInputFeatures()
+	{
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Returns the kinds of model changes the features of this analyzer depend
+	 * on, beyond the object they are computed for.
+	 * <p>
+	 * This is used by the {@link ModelFeatureUpdater} to recompute only the
+	 * analyzers whose inputs changed after a model edit.
+	 *
+	 * @return the set of dependencies. By default, all of them.
+	 */
+	public default Set< FeatureDependency > getDependencies()
+	{
+		return EnumSet.allOf( FeatureDependency.class );
+	}
 }
@@ -0,0 +1,224 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.features;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+
+import fiji.plugin.trackmate.util.TrackMateExecutor;
+
+/**
+ * Orders {@link FeatureAnalyzer}s according to the features they consume and
+ * produce, and executes them concurrently when they do not depend on each
+ * other.
+ * <p>
+ * Dependencies are read from {@link FeatureAnalyzer#getInputFeatures()} and
+ * matched against the features declared by the other analyzers in
+ * {@link FeatureAnalyzer#getFeatures()}. The analyzers are then sorted in
+ * levels: all the analyzers of a level depend only on analyzers of previous
+ * levels, so the analyzers of one level can safely run at the same time.
+ * <p>
+ * Spot, edge and track analyzers can be given together. The features an
+ * analyzer needs but that no analyzer of the collection computes (for
+ * instance spot positions, or features computed in a previous stage) are
+ * considered to be available already.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+public class FeatureAnalyzerScheduler
+{
+
+	private FeatureAnalyzerScheduler()
+	{}
+
+	/**
+	 * Sorts the specified analyzers in dependency levels. The analyzers of the
+	 * first level depend on no other analyzer of the collection. The analyzers
+	 * of level <code>n</code> depend on at least one analyzer of level
+	 * <code>n-1</code>, and only on analyzers of levels lower than
+	 * <code>n</code>.
+	 * <p>
+	 * Within a level, the analyzers are kept in the order of the input
+	 * collection. If the dependencies are cyclic, the analyzers involved in
+	 * the cycle are appended at the end, one per level, in the order of the
+	 * input collection.
+	 *
+	 * @param analyzers
+	 *            the analyzers to sort.
+	 * @return a new list of levels.
+	 */
+	public static < A extends FeatureAnalyzer > List< List< A > > sortInLevels( final Collection< A > analyzers )
+	{
+		// Who computes what.
+		final Map< String, A > producers = new HashMap<>();
+		for ( final A analyzer : analyzers )
+			for ( final String feature : analyzer.getFeatures() )
+				producers.putIfAbsent( feature, analyzer );
+
+		// What does each analyzer wait for.
+		final Map< A, Set< A > > dependencies = new HashMap<>( analyzers.size() );
+		for ( final A analyzer : analyzers )
+		{
+			final Set< A > deps = new LinkedHashSet<>();
+			for ( final String input : analyzer.getInputFeatures() )
+			{
+				final A producer = producers.get( input );
+				if ( null != producer && producer != analyzer )
+					deps.add( producer );
+			}
+			dependencies.put( analyzer, deps );
+		}
+
+		final List< List< A > > levels = new ArrayList<>();
+		final Set< A > done = new LinkedHashSet<>( analyzers.size() );
+		final List< A > remaining = new ArrayList<>( new LinkedHashSet<>( analyzers ) );
+		while ( !remaining.isEmpty() )
+		{
+			final List< A > level = new ArrayList<>();
+			for ( final A analyzer : remaining )
+				if ( done.containsAll( dependencies.get( analyzer ) ) )
+					level.add( analyzer );
+
+			if ( level.isEmpty() )
+			{
+				// Cycle. Run what's left serially.
+				for ( final A analyzer : remaining )
+					levels.add( new ArrayList<>( Collections.singletonList( analyzer ) ) );
+				break;
+			}
+
+			remaining.removeAll( level );
+			done.addAll( level );
+			levels.add( level );
+		}
+		return levels;
+	}
+
+	/**
+	 * Returns the specified analyzers in an order compatible with their
+	 * dependencies.
+	 *
+	 * @param analyzers
+	 *            the analyzers to sort.
+	 * @return a new list.
+	 */
+	public static < A extends FeatureAnalyzer > List< A > sort( final Collection< A > analyzers )
+	{
+		final List< A > sorted = new ArrayList<>( analyzers.size() );
+		for ( final List< A > level : sortInLevels( analyzers ) )
+			sorted.addAll( level );
+		return sorted;
+	}
+
+	/**
+	 * Executes the specified analyzers, running the analyzers that do not
+	 * depend on each other concurrently.
+	 * <p>
+	 * The analyzers of one level are executed concurrently, and the next level
+	 * is started only when all the analyzers of the current level are done.
+	 * The threads are split between the analyzers of a level: each analyzer is
+	 * passed the number of threads it may use.
+	 *
+	 * @param analyzers
+	 *            the analyzers to execute.
+	 * @param numThreads
+	 *            the total number of threads to use.
+	 * @param runner
+	 *            the action that executes one analyzer, given the number of
+	 *            threads allocated to it.
+	 * @param isCanceled
+	 *            checked before starting each analyzer. If it returns
+	 *            <code>true</code>, the analyzers not started yet are skipped.
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted while waiting.
+	 * @throws ExecutionException
+	 *             if an analyzer threw an exception. The analyzers of the
+	 *             next levels are not executed.
+	 */
+	public static < A extends FeatureAnalyzer > void execute(
+			final Collection< A > analyzers,
+			final int numThreads,
+			final BiConsumer< A, Integer > runner,
+			final BooleanSupplier isCanceled ) throws InterruptedException, ExecutionException
+	{
+		final List< List< A > > levels = sortInLevels( analyzers );
+		int maxWidth = 1;
+		for ( final List< A > level : levels )
+			maxWidth = Math.max( maxWidth, level.size() );
+
+		final int nSimultaneous = Math.max( 1, Math.min( numThreads, maxWidth ) );
+		if ( nSimultaneous == 1 )
+		{
+			// Don't bother with an executor.
+			for ( final List< A > level : levels )
+				for ( final A analyzer : level )
+				{
+					if ( isCanceled.getAsBoolean() )
+						return;
+					try
+					{
+						runner.accept( analyzer, Integer.valueOf( Math.max( 1, numThreads ) ) );
+					}
+					catch ( final RuntimeException e )
+					{
+						// Same as when running in the executor.
+						throw new ExecutionException( e );
+					}
+				}
+			return;
+		}
+
+		final TrackMateExecutor executor = TrackMateExecutor.current();
+		for ( final List< A > level : levels )
+		{
+			if ( isCanceled.getAsBoolean() )
+				return;
+
+			final int threadsPerAnalyzer = Math.max( 1, numThreads / Math.min( nSimultaneous, level.size() ) );
+			final List< Callable< Void > > tasks = new ArrayList<>( level.size() );
+			for ( final A analyzer : level )
+			{
+				tasks.add( new Callable< Void >()
+				{
+					@Override
+					public Void call() throws Exception
+					{
+						if ( !isCanceled.getAsBoolean() )
+							runner.accept( analyzer, Integer.valueOf( threadsPerAnalyzer ) );
+						return null;
+					}
+				} );
+			}
+			executor.invokeAll( "Feature analyzers", tasks, nSimultaneous );
+		}
+	}
+}
@@ -0,0 +1,317 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.features;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import fiji.plugin.trackmate.util.TMUtils;
+
+/**
+ * The values of one feature over a collection of TrackMate objects, stored
+ * sorted in a primitive array.
+ * <p>
+ * Because the values are sorted, the statistics needed by the filter and
+ * color-by GUIs are cheap: the min and max are the first and last values,
+ * counting the objects above or below a threshold is a binary search, and a
+ * histogram is made of one binary search per bin edge. Histograms are
+ * cached for each bin count requested.
+ * <p>
+ * Instances are immutable and can be shared between threads. They are
+ * typically obtained from a {@link FeatureColumnCache}.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+public class FeatureColumn
+{
+
+	private static final FeatureColumn EMPTY = new FeatureColumn( new double[ 0 ] );
+
+	private final double[] sorted;
+
+	private final Map< Integer, int[] > histograms = new HashMap<>();
+
+	private FeatureColumn( final double[] sorted )
+	{
+		this.sorted = sorted;
+	}
+
+	/**
+	 * Creates a column from the specified values. The array is copied and
+	 * <code>NaN</code> values are discarded.
+	 *
+	 * @param values
+	 *            the feature values, in any order.
+	 * @return a new column.
+	 */
+	public static FeatureColumn of( final double[] values )
+	{
+		if ( values == null || values.length == 0 )
+			return EMPTY;
+
+		int n = 0;
+		final double[] sorted = new double[ values.length ];
+		for ( final double val : values )
+			if ( !Double.isNaN( val ) )
+				sorted[ n++ ] = val;
+
+		final double[] arr = ( n == sorted.length ) ? sorted : Arrays.copyOf( sorted, n );
+		Arrays.parallelSort( arr );
+		return new FeatureColumn( arr );
+	}
+
+	/**
+	 * Returns the number of values in this column.
+	 *
+	 * @return the number of values.
+	 */
+	public int size()
+	{
+		return sorted.length;
+	}
+
+	public boolean isEmpty()
+	{
+		return sorted.length == 0;
+	}
+
+	/**
+	 * Returns the smallest value, or {@link Double#POSITIVE_INFINITY} if the
+	 * column is empty.
+	 *
+	 * @return the min value.
+	 */
+	public double min()
+	{
+		return sorted.length == 0 ? Double.POSITIVE_INFINITY : sorted[ 0 ];
+	}
+
+	/**
+	 * Returns the largest value, or {@link Double#NEGATIVE_INFINITY} if the
+	 * column is empty.
+	 *
+	 * @return the max value.
+	 */
+	public double max()
+	{
+		return sorted.length == 0 ? Double.NEGATIVE_INFINITY : sorted[ sorted.length - 1 ];
+	}
+
+	/**
+	 * Returns the value at the specified rank, in ascending order.
+	 *
+	 * @param rank
+	 *            the rank, from 0 to <code>size() - 1</code>.
+	 * @return the value.
+	 */
+	public double get( final int rank )
+	{
+		return sorted[ rank ];
+	}
+
+	/**
+	 * Returns a copy of the sorted values.
+	 *
+	 * @return a new array.
+	 */
+	public double[] toArray()
+	{
+		return sorted.clone();
+	}
+
+	/**
+	 * Returns the number of values strictly larger than the specified
+	 * threshold.
+	 *
+	 * @param threshold
+	 *            the threshold.
+	 * @return the number of values.
+	 */
+	public int countAbove( final double threshold )
+	{
+		return sorted.length - upperBound( threshold );
+	}
+
+	/**
+	 * Returns the number of values strictly smaller than the specified
+	 * threshold.
+	 *
+	 * @param threshold
+	 *            the threshold.
+	 * @return the number of values.
+	 */
+	public int countBelow( final double threshold )
+	{
+		return lowerBound( threshold );
+	}
+
+	/**
+	 * Returns an estimate of the <code>p</code>th percentile of the values,
+	 * computed as in {@link TMUtils#getPercentile(double[], double)}.
+	 *
+	 * @param p
+	 *            the percentile, in <code>]0, 1]</code>.
+	 * @return the percentile value, or <code>NaN</code> if the column is empty.
+	 */
+	public double getPercentile( final double p )
+	{
+		final int size = sorted.length;
+		if ( ( p > 1 ) || ( p <= 0 ) )
+			throw new IllegalArgumentException( "invalid quantile value: " + p );
+		if ( size == 0 )
+			return Double.NaN;
+		if ( size == 1 )
+			return sorted[ 0 ];
+
+		final double n = size;
+		final double pos = p * ( n + 1 );
+		final double fpos = Math.floor( pos );
+		final int intPos = ( int ) fpos;
+		final double dif = pos - fpos;
+		if ( pos < 1 )
+			return sorted[ 0 ];
+		if ( pos >= n )
+			return sorted[ size - 1 ];
+		final double lower = sorted[ intPos - 1 ];
+		final double upper = sorted[ intPos ];
+		return lower + dif * ( upper - lower );
+	}
+
+	/**
+	 * Returns the optimal bin number for a histogram of the values, using the
+	 * Freedman and Diaconis rule, as in
+	 * {@link TMUtils#getNBins(double[], int, int)}.
+	 *
+	 * @param minBinNumber
+	 *            the smallest bin number to return.
+	 * @param maxBinNumber
+	 *            the largest bin number to return.
+	 * @return the bin number.
+	 */
+	public int getNBins( final int minBinNumber, final int maxBinNumber )
+	{
+		final double iqr = getPercentile( 0.75 ) - getPercentile( 0.25 );
+		final double binWidth = 2 * iqr * Math.pow( sorted.length, -0.33 );
+		int nBin = ( int ) ( ( max() - min() ) / binWidth + 1 );
+
+		if ( nBin > maxBinNumber )
+			nBin = maxBinNumber;
+		else if ( nBin < minBinNumber )
+			nBin = minBinNumber;
+
+		return nBin;
+	}
+
+	/**
+	 * Returns the histogram of the values over <code>nBins</code> bins of
+	 * equal width spanning from the min to the max value. The last bin
+	 * includes the max value.
+	 * <p>
+	 * The histogram is computed once per bin count and cached. The returned
+	 * array must not be modified.
+	 *
+	 * @param nBins
+	 *            the number of bins.
+	 * @return the bin counts.
+	 */
+	public int[] histogram( final int nBins )
+	{
+		synchronized ( histograms )
+		{
+			return histograms.computeIfAbsent( Integer.valueOf( nBins ), n -> computeHistogram( nBins ) );
+		}
+	}
+
+	/**
+	 * Returns a threshold for the values, using the Otsu method on a histogram
+	 * of these values, as in {@link TMUtils#otsuThreshold(double[])}.
+	 *
+	 * @return the threshold, or <code>NaN</code> if the column is empty.
+	 */
+	public double otsuThreshold()
+	{
+		if ( sorted.length == 0 )
+			return Double.NaN;
+
+		final int nBins = getNBins( 8, 256 );
+		final int[] hist = histogram( nBins );
+		final int thresholdIndex = TMUtils.otsuThresholdIndex( hist, sorted.length );
+		final double binWidth = ( max() - min() ) / nBins;
+		return min() + binWidth * thresholdIndex;
+	}
+
+	private int[] computeHistogram( final int nBins )
+	{
+		final int[] hist = new int[ Math.max( 0, nBins ) ];
+		if ( nBins <= 0 || sorted.length == 0 )
+			return hist;
+
+		final double min = min();
+		final double binWidth = ( max() - min ) / nBins;
+		int start = 0;
+		for ( int i = 0; i < nBins - 1; i++ )
+		{
+			final int end = lowerBound( min + ( i + 1 ) * binWidth );
+			hist[ i ] = end - start;
+			start = end;
+		}
+		hist[ nBins - 1 ] = sorted.length - start;
+		return hist;
+	}
+
+	/**
+	 * Index of the first value larger than or equal to the specified value.
+	 */
+	private int lowerBound( final double value )
+	{
+		int lo = 0;
+		int hi = sorted.length;
+		while ( lo < hi )
+		{
+			final int mid = ( lo + hi ) >>> 1;
+			if ( sorted[ mid ] < value )
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Index of the first value strictly larger than the specified value.
+	 */
+	private int upperBound( final double value )
+	{
+		int lo = 0;
+		int hi = sorted.length;
+		while ( lo < hi )
+		{
+			final int mid = ( lo + hi ) >>> 1;
+			if ( sorted[ mid ] <= value )
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+}
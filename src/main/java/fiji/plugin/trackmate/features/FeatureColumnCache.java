@@ -0,0 +1,185 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.features;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.ModelChangeEvent;
+import fiji.plugin.trackmate.ModelChangeListener;
+import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings.TrackMateObject;
+
+/**
+ * Caches the values of the features of a model as sorted
+ * {@link FeatureColumn}s, so that the filter and color-by GUIs do not iterate
+ * over all the objects of the model each time a threshold or a feature
+ * changes.
+ * <p>
+ * A column is built the first time it is requested, and kept until a model
+ * change invalidates it. Spot columns are invalidated when spots are
+ * computed, filtered or edited; edge and track columns when tracks are
+ * computed, their visibility changes, or when edges are edited. All the
+ * columns are invalidated when features are computed. Features changed
+ * without a model event, for instance manual colors, must be invalidated
+ * with {@link #invalidate(TrackMateObject, String)}.
+ * <p>
+ * Each {@link Model} has one instance of this class, that is notified before
+ * the other model change listeners.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ * @see Model#getFeatureColumns()
+ */
+public class FeatureColumnCache implements ModelChangeListener
+{
+
+	private final Model model;
+
+	private final ConcurrentHashMap< Key, FeatureColumn > columns = new ConcurrentHashMap<>();
+
+	public FeatureColumnCache( final Model model )
+	{
+		this.model = model;
+	}
+
+	/**
+	 * Returns the sorted values of a feature. Missing or undefined values are
+	 * not included.
+	 *
+	 * @param target
+	 *            the type of objects to read the feature of.
+	 * @param feature
+	 *            the feature key.
+	 * @param visibleOnly
+	 *            if <code>true</code>, only the visible objects are included.
+	 * @return the feature column.
+	 */
+	public FeatureColumn get( final TrackMateObject target, final String feature, final boolean visibleOnly )
+	{
+		if ( target == TrackMateObject.DEFAULT )
+			return FeatureColumn.of( null );
+
+		return columns.computeIfAbsent( new Key( target, feature, visibleOnly ),
+				k -> FeatureColumn.of( FeatureUtils.collectFeatureValues( feature, target, model, null, visibleOnly ) ) );
+	}
+
+	/**
+	 * Discards the cached values of one feature.
+	 *
+	 * @param target
+	 *            the type of objects the feature belongs to.
+	 * @param feature
+	 *            the feature key.
+	 */
+	public void invalidate( final TrackMateObject target, final String feature )
+	{
+		columns.remove( new Key( target, feature, true ) );
+		columns.remove( new Key( target, feature, false ) );
+	}
+
+	/**
+	 * Discards the cached values of all the features of one type of objects.
+	 *
+	 * @param target
+	 *            the type of objects.
+	 */
+	public void invalidate( final TrackMateObject target )
+	{
+		columns.keySet().removeIf( k -> k.target == target );
+	}
+
+	/**
+	 * Discards all the cached values.
+	 */
+	public void clear()
+	{
+		columns.clear();
+	}
+
+	@Override
+	public void modelChanged( final ModelChangeEvent event )
+	{
+		if ( columns.isEmpty() )
+			return;
+
+		switch ( event.getEventID() )
+		{
+		case ModelChangeEvent.SPOTS_FILTERED:
+			invalidate( TrackMateObject.SPOTS );
+			break;
+
+		case ModelChangeEvent.TRACKS_COMPUTED:
+		case ModelChangeEvent.TRACKS_VISIBILITY_CHANGED:
+			invalidate( TrackMateObject.EDGES );
+			invalidate( TrackMateObject.TRACKS );
+			break;
+
+		case ModelChangeEvent.MODEL_MODIFIED:
+			if ( !event.getSpots().isEmpty() )
+				invalidate( TrackMateObject.SPOTS );
+			if ( !event.getEdges().isEmpty() )
+				invalidate( TrackMateObject.EDGES );
+			if ( !event.getEdges().isEmpty()
+					|| ( event.getTrackUpdated() != null && !event.getTrackUpdated().isEmpty() ) )
+				invalidate( TrackMateObject.TRACKS );
+			break;
+
+		case ModelChangeEvent.SPOTS_COMPUTED:
+		case ModelChangeEvent.FEATURES_COMPUTED:
+		default:
+			clear();
+			break;
+		}
+	}
+
+	private static final class Key
+	{
+
+		private final TrackMateObject target;
+
+		private final String feature;
+
+		private final boolean visibleOnly;
+
+		private Key( final TrackMateObject target, final String feature, final boolean visibleOnly )
+		{
+			this.target = target;
+			this.feature = feature;
+			this.visibleOnly = visibleOnly;
+		}
+
+		@Override
+		public boolean equals( final Object obj )
+		{
+			if ( !( obj instanceof Key ) )
+				return false;
+			final Key o = ( Key ) obj;
+			return target == o.target && visibleOnly == o.visibleOnly && Objects.equals( feature, o.feature );
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return Objects.hash( target, feature, Boolean.valueOf( visibleOnly ) );
+		}
+	}
+}
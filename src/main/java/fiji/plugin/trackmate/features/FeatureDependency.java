@@ -0,0 +1,59 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.features;
+
+/**
+ * The kinds of model changes the values computed by a {@link FeatureAnalyzer}
+ * may depend on, beyond the object it computes them for.
+ * <p>
+ * They are used by the {@link ModelFeatureUpdater} to determine what must be
+ * recomputed after the model is edited. Objects that are new or whose own
+ * data changed (added spots, added edges, tracks whose spots or links
+ * changed) are always recomputed by all analyzers. The dependencies declared
+ * here say which <b>other</b> objects must be recomputed too. Dependencies on
+ * the features computed by other analyzers are declared with
+ * {@link FeatureAnalyzer#getInputFeatures()}.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+public enum FeatureDependency
+{
+	/**
+	 * The position, radius, shape or frame of the spots the object is made of
+	 * or connected to. For instance, the speed of an edge depends on the
+	 * position of its source and target spots.
+	 */
+	SPOT_GEOMETRY,
+
+	/**
+	 * The spot features computed from the image by the spot analyzers, for
+	 * the spots the object is made of or connected to. They are recomputed
+	 * only when an image is available.
+	 */
+	SPOT_INTENSITY,
+
+	/**
+	 * The links around the object. For instance, the directional change of
+	 * an edge depends on the edge that precedes it.
+	 */
+	GRAPH_TOPOLOGY;
+}
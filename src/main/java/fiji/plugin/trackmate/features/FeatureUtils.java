@@ -383,18 +383,8 @@ public class FeatureUtils
 		case SPOTS:
 		case TRACKS:
 		{
-			final double[] values = collectFeatureValues( feature, type, model, settings, true );
-			double min = Double.POSITIVE_INFINITY;
-			double max = Double.NEGATIVE_INFINITY;
-			for ( final double val : values )
-			{
-				if ( val < min )
-					min = val;
-
-				if ( val > max )
-					max = val;
-			}
-			return new double[] { min, max };
+			final FeatureColumn column = model.getFeatureColumns().get( type, feature, true );
+			return new double[] { column.min(), column.max() };
 		}
 
 		default:
@@ -22,6 +22,15 @@
 package fiji.plugin.trackmate.features;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import org.jgrapht.graph.DefaultWeightedEdge;
 
@@ -31,85 +40,472 @@ import fiji.plugin.trackmate.ModelChangeListener;
 import fiji.plugin.trackmate.Settings;
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.TrackModel;
+import fiji.plugin.trackmate.features.edges.EdgeAnalyzer;
+import fiji.plugin.trackmate.features.spot.SpotAnalyzerFactoryBase;
+import fiji.plugin.trackmate.features.track.TrackAnalyzer;
+import fiji.plugin.trackmate.util.TrackMateExecutor;
 import net.imglib2.algorithm.MultiThreaded;
 
 /**
  * A utility class that listens to the change occurring in a model, and updates
- * its spot, edge and track features accordingly. Useful to keep the model in 
+ * its spot, edge and track features accordingly. Useful to keep the model in
  * sync with manual editing.
- *    
- * @author Jean-Yves Tinevez - 2013
+ * <p>
+ * Only the analyzers whose inputs changed are executed, and only on the
+ * objects whose inputs changed. New objects are computed by all analyzers.
+ * For the other ones, the analyzers are selected using their
+ * {@link FeatureAnalyzer#getDependencies()} and
+ * {@link FeatureAnalyzer#getInputFeatures()}. For instance, moving a spot
+ * updates the speed of its edges but not their source and target IDs, and
+ * adding a link does not recompute any spot feature.
+ * <p>
+ * By default, the features are computed when the model event is received, on
+ * the thread that fires it. They are up to date when
+ * {@link Model#endUpdate()} returns.
+ * <p>
+ * An asynchronous updater can be created instead, for interactive editing of
+ * large models. The objects to update are still collected when the model event
+ * is received, while the model is locked, but the features are computed in the
+ * background, in the order of the events. Events fired in quick succession are
+ * coalesced and processed together. The analyzers that read the track graph
+ * run while holding the model lock, so that they never see a model being
+ * edited. The other spot analyzers run without it; if the spots they read are
+ * edited in the meantime, they will be updated again by the next update. Each
+ * background update ends with a {@link ModelChangeEvent#FEATURES_COMPUTED}
+ * event, so that the views and the feature column cache pick up the new
+ * values. Call {@link #waitForUpdates()} to wait until the features are up to
+ * date.
+ * <p>
+ * Manual features are never recomputed.
+ *
+ * @author Jean-Yves Tinevez - 2013. Revised 2021.
  */
 public class ModelFeatureUpdater implements ModelChangeListener, MultiThreaded
 {
 
 	private final SpotFeatureCalculator spotFeatureCalculator;
-	private final EdgeFeatureCalculator edgeFeatureCalculator;
-	private final TrackFeatureCalculator trackFeatureCalculator;
+
+	private final EdgeAndTrackFeatureCalculator edgeAndTrackFeatureCalculator;
+
 	private final Model model;
 
+	private final Settings settings;
+
+	/**
+	 * The thread that computes the features, or <code>null</code> if they are
+	 * computed synchronously.
+	 */
+	private final ExecutorService background;
+
 	private int numThreads;
 
 	/**
-	 * Constructs and activate a {@link ModelFeatureUpdater}. The new instance is 
-	 * registered to listen to model changes, and update its feature.
-	 * @param model  the model to listen to. 
-	 * @param settings the {@link Settings} the model is built against. Required 
-	 * to access the raw data.
+	 * The updates planned and not processed yet.
 	 */
-	public ModelFeatureUpdater(Model model, Settings settings) {
+	private Plan pending = new Plan();
+
+	/**
+	 * Whether an update is queued or running in the background.
+	 */
+	private boolean updating = false;
+
+	/**
+	 * Constructs and activate a {@link ModelFeatureUpdater} that updates the
+	 * features synchronously. The new instance is registered to listen to
+	 * model changes, and update its feature.
+	 *
+	 * @param model
+	 *            the model to listen to.
+	 * @param settings
+	 *            the {@link Settings} the model is built against. Required to
+	 *            access the raw data.
+	 */
+	public ModelFeatureUpdater( final Model model, final Settings settings )
+	{
+		this( model, settings, false );
+	}
+
+	/**
+	 * Constructs and activate a {@link ModelFeatureUpdater}. The new instance
+	 * is registered to listen to model changes, and update its feature.
+	 *
+	 * @param model
+	 *            the model to listen to.
+	 * @param settings
+	 *            the {@link Settings} the model is built against. Required to
+	 *            access the raw data.
+	 * @param asynchronous
+	 *            if <code>true</code>, the features are computed in the
+	 *            background after each change, and a
+	 *            {@link ModelChangeEvent#FEATURES_COMPUTED} event is fired when
+	 *            they are up to date. If <code>false</code>, they are computed
+	 *            when the change is notified.
+	 */
+	public ModelFeatureUpdater( final Model model, final Settings settings, final boolean asynchronous )
+	{
 		this.model = model;
-		this.spotFeatureCalculator = new SpotFeatureCalculator(model, settings);
-		this.edgeFeatureCalculator = new EdgeFeatureCalculator(model, settings);
-		this.trackFeatureCalculator = new TrackFeatureCalculator(model, settings);
-		model.addModelChangeListener(this);
+		this.settings = settings;
+		this.spotFeatureCalculator = new SpotFeatureCalculator( model, settings );
+		this.edgeAndTrackFeatureCalculator = new EdgeAndTrackFeatureCalculator( model, settings );
+		this.background = asynchronous
+				? TrackMateExecutor.current().getExecutorService( "Feature update", 1 )
+				: null;
+		model.addModelChangeListener( this );
 		setNumThreads();
 	}
 
 	/**
-	 * Updates the model features against the change notified here.
-	 * If the event is not a {@link ModelChangeEvent#MODEL_MODIFIED},
-	 * does nothing.
+	 * Updates the model features against the change notified here, or
+	 * schedules their update if this updater is asynchronous. If the event is
+	 * not a {@link ModelChangeEvent#MODEL_MODIFIED}, does nothing.
 	 */
 	@Override
-	public void modelChanged(ModelChangeEvent event) {
-		if (event.getEventID() != ModelChangeEvent.MODEL_MODIFIED) {
+	public void modelChanged( final ModelChangeEvent event )
+	{
+		if ( event.getEventID() != ModelChangeEvent.MODEL_MODIFIED )
 			return;
-		}
 
-		// Build spot list
-		ArrayList<Spot> spots = new ArrayList<>(event.getSpots().size());
-		for (Spot spot : event.getSpots()) {
-			if (event.getSpotFlag(spot) != ModelChangeEvent.FLAG_SPOT_REMOVED) {
-				spots.add(spot);
+		// Events are fired under the model lock; we take it anyway.
+		final Plan plan;
+		synchronized ( model )
+		{
+			plan = plan( event );
+			if ( null == background )
+			{
+				update( plan );
+				return;
 			}
 		}
-		SpotCollection sc = SpotCollection.fromCollection(spots);
-		
-		// Build edge list
-		ArrayList<DefaultWeightedEdge> edges = new ArrayList<>(event.getEdges().size());
-		for (DefaultWeightedEdge edge : event.getEdges()) {
-			if (event.getEdgeFlag(edge) != ModelChangeEvent.FLAG_EDGE_REMOVED) {
-				edges.add(edge);
-			}
+
+		synchronized ( this )
+		{
+			pending.addAll( plan );
+			if ( updating || pending.isEmpty() )
+				return;
+
+			updating = true;
 		}
+		background.submit( this::processPending );
+	}
 
-		// Update spot features
-		spotFeatureCalculator.computeSpotFeatures(sc, false);
-		
-		// Update edge features
-		edgeFeatureCalculator.computeEdgesFeatures(edges, false);
-		
-		// Update track features
-		trackFeatureCalculator.computeTrackFeatures(event.getTrackUpdated(), false);
+	/**
+	 * Waits until all the changes notified so far are processed, and the
+	 * corresponding {@link ModelChangeEvent#FEATURES_COMPUTED} event is fired.
+	 * Returns immediately if this updater is synchronous.
+	 *
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted while waiting.
+	 */
+	public synchronized void waitForUpdates() throws InterruptedException
+	{
+		while ( updating )
+			wait();
 	}
-	
+
 	/**
 	 * Re-registers this instance from the listeners of the model, and stop
 	 * updating its features.
 	 */
-	public void quit() {
-		model.removeModelChangeListener(this);
+	public void quit()
+	{
+		model.removeModelChangeListener( this );
+		if ( null != background )
+			background.shutdown();
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private void processPending()
+	{
+		while ( true )
+		{
+			final Plan plan;
+			synchronized ( this )
+			{
+				if ( pending.isEmpty() )
+				{
+					updating = false;
+					notifyAll();
+					return;
+				}
+				plan = pending;
+				pending = new Plan();
+			}
+
+			try
+			{
+				update( plan );
+			}
+			catch ( final RuntimeException e )
+			{
+				logError( e.getMessage() );
+			}
+			model.notifyFeaturesComputed();
+		}
+	}
+
+	/**
+	 * Computes the features listed in the specified plan.
+	 */
+	private void update( final Plan plan )
+	{
+		/*
+		 * Spot features that do not depend on the links. They are computed
+		 * without locking the model.
+		 */
+
+		final List< SpotAnalyzerFactoryBase< ? > > factories = new ArrayList<>( plan.spotFactories );
+		factories.removeAll( plan.linkFactories );
+		if ( !plan.spots.isEmpty() && !factories.isEmpty()
+				&& !spotFeatureCalculator.computeSpotFeatures( SpotCollection.fromCollection( plan.spots ), factories, false ) )
+			logError( spotFeatureCalculator.getErrorMessage() );
+
+		/*
+		 * Spot features that depend on the links, edge and track features.
+		 */
+
+		synchronized ( model )
+		{
+			// Discard what was removed since the plan was made.
+			plan.retainExisting( model.getTrackModel() );
+
+			final Set< Spot > linked = new HashSet<>( plan.spots );
+			linked.addAll( plan.linkedSpots );
+			if ( !linked.isEmpty() && !plan.linkFactories.isEmpty()
+					&& !spotFeatureCalculator.computeSpotFeatures( SpotCollection.fromCollection( linked ), plan.linkFactories, false ) )
+				logError( spotFeatureCalculator.getErrorMessage() );
+
+			if ( !edgeAndTrackFeatureCalculator.computeFeatures( plan.edges, plan.tracks, false ) )
+				logError( edgeAndTrackFeatureCalculator.getErrorMessage() );
+		}
+	}
+
+	private void logError( final String errorMessage )
+	{
+		model.getLogger().error( "Could not update features: " + errorMessage + '\n' );
+	}
+
+	/**
+	 * Determines the spots, edges and tracks to update after the specified
+	 * event, for each analyzer. Must be called while holding the model lock.
+	 */
+	private Plan plan( final ModelChangeEvent event )
+	{
+		final TrackModel trackModel = model.getTrackModel();
+		final Plan plan = new Plan();
+
+		// Discard what does not exist anymore.
+		final Set< Spot > spots = new HashSet<>();
+		for ( final Spot spot : event.getSpots() )
+			if ( !Integer.valueOf( ModelChangeEvent.FLAG_SPOT_REMOVED ).equals( event.getSpotFlag( spot ) )
+					&& trackModel.vertexSet().contains( spot ) )
+				spots.add( spot );
+		/*
+		 * Edges flagged as modified are the edges of modified spots. They are
+		 * handled with the spot geometry below. The tracks of the event only
+		 * changed topology if edges were added or removed.
+		 */
+		final Set< DefaultWeightedEdge > edges = new HashSet<>();
+		boolean topologyChanged = false;
+		for ( final DefaultWeightedEdge edge : event.getEdges() )
+		{
+			final Integer flag = event.getEdgeFlag( edge );
+			if ( Integer.valueOf( ModelChangeEvent.FLAG_EDGE_MODIFIED ).equals( flag ) )
+				continue;
+			topologyChanged = true;
+			if ( !Integer.valueOf( ModelChangeEvent.FLAG_EDGE_REMOVED ).equals( flag )
+					&& trackModel.edgeSet().contains( edge ) )
+				edges.add( edge );
+		}
+		for ( final Spot spot : event.getSpots() )
+			if ( Integer.valueOf( ModelChangeEvent.FLAG_SPOT_REMOVED ).equals( event.getSpotFlag( spot ) ) )
+				topologyChanged = true;
+		final Set< Integer > tracks = new HashSet<>();
+		if ( topologyChanged && null != event.getTrackUpdated() )
+			for ( final Integer trackID : event.getTrackUpdated() )
+				if ( null != trackModel.trackSpots( trackID ) )
+					tracks.add( trackID );
+
+		/*
+		 * Spot features.
+		 */
+
+		final Set< Spot > recomputedSpots = new HashSet<>();
+		final Set< String > recomputedSpotFeatures = new HashSet<>();
+		if ( null != settings.imp )
+		{
+			final List< SpotAnalyzerFactoryBase< ? > > factories = automatic( settings.getSpotAnalyzerFactories() );
+			final List< SpotAnalyzerFactoryBase< ? > > linkFactories = dependingOn( factories, FeatureDependency.GRAPH_TOPOLOGY );
+			plan.spotFactories.addAll( factories );
+			plan.linkFactories.addAll( linkFactories );
+			if ( !spots.isEmpty() && !factories.isEmpty() )
+			{
+				plan.spots.addAll( spots );
+				recomputedSpots.addAll( spots );
+				for ( final SpotAnalyzerFactoryBase< ? > factory : factories )
+					recomputedSpotFeatures.addAll( factory.getFeatures() );
+			}
+
+			// Spot analyzers that depend on the links.
+			if ( !linkFactories.isEmpty() )
+			{
+				final Set< Spot > linked = new HashSet<>();
+				for ( final DefaultWeightedEdge edge : edges )
+				{
+					linked.add( trackModel.getEdgeSource( edge ) );
+					linked.add( trackModel.getEdgeTarget( edge ) );
+				}
+				for ( final Integer trackID : tracks )
+					linked.addAll( trackModel.trackSpots( trackID ) );
+				linked.removeAll( spots );
+				if ( !linked.isEmpty() )
+				{
+					plan.linkedSpots.addAll( linked );
+					recomputedSpots.addAll( linked );
+					for ( final SpotAnalyzerFactoryBase< ? > factory : linkFactories )
+						recomputedSpotFeatures.addAll( factory.getFeatures() );
+				}
+			}
+		}
+
+		/*
+		 * Edge features.
+		 */
+
+		final List< EdgeAnalyzer > edgeAnalyzers = FeatureAnalyzerScheduler.sort( automatic( settings.getEdgeAnalyzers() ) );
+		final Set< DefaultWeightedEdge > geometryEdges = dependingOn( edgeAnalyzers, FeatureDependency.SPOT_GEOMETRY ).isEmpty()
+				? new HashSet<>()
+				: edgesAround( spots, true );
+		final Set< DefaultWeightedEdge > intensityEdges = edgesAround( recomputedSpots, false );
+		final Set< DefaultWeightedEdge > topologyEdges = new HashSet<>();
+		if ( !dependingOn( edgeAnalyzers, FeatureDependency.GRAPH_TOPOLOGY ).isEmpty() )
+			for ( final Integer trackID : tracks )
+				topologyEdges.addAll( trackModel.trackEdges( trackID ) );
+
+		final Map< String, Set< DefaultWeightedEdge > > edgesPerFeature = new HashMap<>();
+		for ( final EdgeAnalyzer analyzer : edgeAnalyzers )
+		{
+			final Set< FeatureDependency > dependencies = analyzer.getDependencies();
+			final Set< DefaultWeightedEdge > dirty = new HashSet<>( edges );
+			if ( dependencies.contains( FeatureDependency.SPOT_GEOMETRY ) )
+				dirty.addAll( geometryEdges );
+			if ( dependencies.contains( FeatureDependency.SPOT_INTENSITY ) )
+				dirty.addAll( intensityEdges );
+			if ( dependencies.contains( FeatureDependency.GRAPH_TOPOLOGY ) )
+				dirty.addAll( topologyEdges );
+			for ( final String input : analyzer.getInputFeatures() )
+			{
+				if ( recomputedSpotFeatures.contains( input ) )
+					dirty.addAll( intensityEdges );
+				final Set< DefaultWeightedEdge > upstream = edgesPerFeature.get( input );
+				if ( null != upstream )
+					dirty.addAll( upstream );
+			}
+
+			plan.edges.put( analyzer, dirty );
+			for ( final String feature : analyzer.getFeatures() )
+				edgesPerFeature.put( feature, dirty );
+		}
+
+		/*
+		 * Track features.
+		 */
+
+		final List< TrackAnalyzer > trackAnalyzers = FeatureAnalyzerScheduler.sort( automatic( settings.getTrackAnalyzers() ) );
+		final Set< Integer > geometryTracks = tracksOf( spots );
+		final Set< Integer > intensityTracks = tracksOf( recomputedSpots );
+
+		final Map< String, Set< Integer > > tracksPerFeature = new HashMap<>();
+		for ( final TrackAnalyzer analyzer : trackAnalyzers )
+		{
+			final Set< FeatureDependency > dependencies = analyzer.getDependencies();
+			final Set< Integer > dirty = new HashSet<>( tracks );
+			if ( dependencies.contains( FeatureDependency.SPOT_GEOMETRY ) )
+				dirty.addAll( geometryTracks );
+			if ( dependencies.contains( FeatureDependency.SPOT_INTENSITY ) )
+				dirty.addAll( intensityTracks );
+			for ( final String input : analyzer.getInputFeatures() )
+			{
+				if ( recomputedSpotFeatures.contains( input ) )
+					dirty.addAll( intensityTracks );
+				final Set< DefaultWeightedEdge > upstreamEdges = edgesPerFeature.get( input );
+				if ( null != upstreamEdges )
+					for ( final DefaultWeightedEdge edge : upstreamEdges )
+						addTrackOf( trackModel.trackIDOf( edge ), dirty );
+				final Set< Integer > upstream = tracksPerFeature.get( input );
+				if ( null != upstream )
+					dirty.addAll( upstream );
+			}
+
+			plan.tracks.put( analyzer, dirty );
+			for ( final String feature : analyzer.getFeatures() )
+				tracksPerFeature.put( feature, dirty );
+		}
+		return plan;
+	}
+
+	/**
+	 * Returns the edges of the specified spots, and optionally the edges of
+	 * their neighbors. Some edge features, like the directional change, depend
+	 * on the spots of the neighbor edges.
+	 */
+	private Set< DefaultWeightedEdge > edgesAround( final Collection< Spot > spots, final boolean withNeighbors )
+	{
+		final TrackModel trackModel = model.getTrackModel();
+		final Set< DefaultWeightedEdge > edges = new HashSet<>();
+		for ( final Spot spot : spots )
+		{
+			for ( final DefaultWeightedEdge edge : trackModel.edgesOf( spot ) )
+			{
+				edges.add( edge );
+				if ( withNeighbors )
+				{
+					final Spot source = trackModel.getEdgeSource( edge );
+					final Spot other = source == spot ? trackModel.getEdgeTarget( edge ) : source;
+					edges.addAll( trackModel.edgesOf( other ) );
+				}
+			}
+		}
+		return edges;
+	}
+
+	private Set< Integer > tracksOf( final Collection< Spot > spots )
+	{
+		final TrackModel trackModel = model.getTrackModel();
+		final Set< Integer > trackIDs = new HashSet<>();
+		for ( final Spot spot : spots )
+			addTrackOf( trackModel.trackIDOf( spot ), trackIDs );
+		return trackIDs;
+	}
+
+	private static void addTrackOf( final Integer trackID, final Set< Integer > trackIDs )
+	{
+		if ( null != trackID )
+			trackIDs.add( trackID );
+	}
+
+	/**
+	 * Returns the analyzers that are not manual.
+	 */
+	private static < A extends FeatureAnalyzer > List< A > automatic( final Collection< A > analyzers )
+	{
+		final List< A > list = new ArrayList<>( analyzers.size() );
+		for ( final A analyzer : analyzers )
+			if ( !analyzer.isManualFeature() )
+				list.add( analyzer );
+		return list;
+	}
+
+	private static < A extends FeatureAnalyzer > List< A > dependingOn( final Collection< A > analyzers, final FeatureDependency dependency )
+	{
+		final List< A > list = new ArrayList<>( analyzers.size() );
+		for ( final A analyzer : analyzers )
+			if ( analyzer.getDependencies().contains( dependency ) )
+				list.add( analyzer );
+		return list;
 	}
 
 	@Override
@@ -125,12 +521,84 @@ public class ModelFeatureUpdater implements ModelChangeListener, MultiThreaded
 	}
 
 	@Override
-	public void setNumThreads( int numThreads )
+	public void setNumThreads( final int numThreads )
 	{
 		this.numThreads = numThreads;
 		spotFeatureCalculator.setNumThreads( numThreads );
-		edgeFeatureCalculator.setNumThreads( numThreads );
-		trackFeatureCalculator.setNumThreads( numThreads );
+		edgeAndTrackFeatureCalculator.setNumThreads( numThreads );
 	}
 
+	/**
+	 * The spots, edges and tracks to update for each analyzer, accumulated
+	 * over several events.
+	 */
+	private static final class Plan
+	{
+
+		/**
+		 * The automatic spot analyzer factories, in the order of the settings.
+		 */
+		private final Set< SpotAnalyzerFactoryBase< ? > > spotFactories = new LinkedHashSet<>();
+
+		/**
+		 * The spot analyzer factories that depend on the links.
+		 */
+		private final List< SpotAnalyzerFactoryBase< ? > > linkFactories = new ArrayList<>();
+
+		/**
+		 * The spots to update with all the spot analyzers.
+		 */
+		private final Set< Spot > spots = new HashSet<>();
+
+		/**
+		 * The spots to update with the spot analyzers that depend on the
+		 * links.
+		 */
+		private final Set< Spot > linkedSpots = new HashSet<>();
+
+		private final Map< EdgeAnalyzer, Set< DefaultWeightedEdge > > edges = new LinkedHashMap<>();
+
+		private final Map< TrackAnalyzer, Set< Integer > > tracks = new LinkedHashMap<>();
+
+		private void addAll( final Plan other )
+		{
+			spotFactories.addAll( other.spotFactories );
+			for ( final SpotAnalyzerFactoryBase< ? > factory : other.linkFactories )
+				if ( !linkFactories.contains( factory ) )
+					linkFactories.add( factory );
+			spots.addAll( other.spots );
+			linkedSpots.addAll( other.linkedSpots );
+			for ( final Map.Entry< EdgeAnalyzer, Set< DefaultWeightedEdge > > entry : other.edges.entrySet() )
+				edges.computeIfAbsent( entry.getKey(), k -> new HashSet<>() ).addAll( entry.getValue() );
+			for ( final Map.Entry< TrackAnalyzer, Set< Integer > > entry : other.tracks.entrySet() )
+				tracks.computeIfAbsent( entry.getKey(), k -> new HashSet<>() ).addAll( entry.getValue() );
+		}
+
+		/**
+		 * Discards the objects that were removed from the specified track
+		 * model. Must be called while holding the model lock.
+		 */
+		private void retainExisting( final TrackModel trackModel )
+		{
+			spots.retainAll( trackModel.vertexSet() );
+			linkedSpots.retainAll( trackModel.vertexSet() );
+			for ( final Set< DefaultWeightedEdge > set : edges.values() )
+				set.retainAll( trackModel.edgeSet() );
+			for ( final Set< Integer > set : tracks.values() )
+				set.removeIf( trackID -> null == trackModel.trackSpots( trackID ) );
+		}
+
+		private boolean isEmpty()
+		{
+			if ( !spots.isEmpty() || !linkedSpots.isEmpty() )
+				return false;
+			for ( final Set< DefaultWeightedEdge > set : edges.values() )
+				if ( !set.isEmpty() )
+					return false;
+			for ( final Set< Integer > set : tracks.values() )
+				if ( !set.isEmpty() )
+					return false;
+			return true;
+		}
+	}
 }
@@ -27,9 +27,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.scijava.Cancelable;
@@ -38,10 +35,13 @@ import fiji.plugin.trackmate.Dimension;
 import fiji.plugin.trackmate.Logger;
 import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Settings;
+import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.SpotCollection;
 import fiji.plugin.trackmate.features.spot.SpotAnalyzer;
 import fiji.plugin.trackmate.features.spot.SpotAnalyzerFactoryBase;
+import fiji.plugin.trackmate.util.FrameSource;
 import fiji.plugin.trackmate.util.TMUtils;
+import fiji.plugin.trackmate.util.TrackMateExecutor;
 import net.imagej.ImgPlus;
 import net.imglib2.algorithm.MultiThreaded;
 import net.imglib2.algorithm.MultiThreadedBenchmarkAlgorithm;
@@ -66,6 +66,8 @@ public class SpotFeatureCalculator extends MultiThreadedBenchmarkAlgorithm imple
 
 	private String cancelReason;
 
+	private FrameSource frameSource;
+
 	public SpotFeatureCalculator( final Model model, final Settings settings )
 	{
 		this.settings = settings;
@@ -76,6 +78,18 @@ public class SpotFeatureCalculator extends MultiThreadedBenchmarkAlgorithm imple
 	 * METHODS
 	 */
 
+	/**
+	 * Sets the source to read frames from. If <code>null</code>, the default,
+	 * frames are sliced from the whole image of the settings.
+	 *
+	 * @param frameSource
+	 *            the frame source. Can be <code>null</code>.
+	 */
+	public void setFrameSource( final FrameSource frameSource )
+	{
+		this.frameSource = frameSource;
+	}
+
 	@Override
 	public boolean checkInput()
 	{
@@ -105,6 +119,18 @@ public class SpotFeatureCalculator extends MultiThreadedBenchmarkAlgorithm imple
 	{
 
 		// Declare what you do.
+		declareFeatures();
+
+		// Do it.
+		return computeSpotFeaturesAgent( model.getSpots(), settings.getSpotAnalyzerFactories(), true );
+	}
+
+	/**
+	 * Declares the spot features configured in the {@link Settings} in the
+	 * feature model of the model.
+	 */
+	public void declareFeatures()
+	{
 		for ( final SpotAnalyzerFactoryBase< ? > factory : settings.getSpotAnalyzerFactories() )
 		{
 			final Collection< String > features = factory.getFeatures();
@@ -114,21 +140,63 @@ public class SpotFeatureCalculator extends MultiThreadedBenchmarkAlgorithm imple
 			final Map< String, Boolean > isIntFeature = factory.getIsIntFeature();
 			model.getFeatureModel().declareSpotFeatures( features, featureNames, featureShortNames, featureDimensions, isIntFeature );
 		}
+	}
 
-		// Do it.
-		computeSpotFeaturesAgent( model.getSpots(), settings.getSpotAnalyzerFactories(), true );
-		return true;
+	/**
+	 * Calculates all the spot features configured in the {@link Settings}
+	 * object for the specified spots, all belonging to the specified frame.
+	 * <p>
+	 * The frame is processed in the calling thread, and the analyzers that
+	 * are multithreaded are given the number of threads of this calculator.
+	 * Features are not declared in the feature model by this method; call
+	 * {@link #declareFeatures()} once beforehand.
+	 *
+	 * @param frame
+	 *            the frame the spots belong to.
+	 * @param spots
+	 *            the spots to compute.
+	 */
+	public void computeSpotFeatures( final int frame, final Iterable< Spot > spots )
+	{
+		// Can't compute any spot feature without an image to compute on.
+		if ( settings.imp == null )
+			return;
+
+		@SuppressWarnings( "rawtypes" )
+		final ImgPlus img = TMUtils.rawWraps( settings.imp );
+		final List< SpotAnalyzerFactoryBase< ? > > sortedFactories = FeatureAnalyzerScheduler.sort( settings.getSpotAnalyzerFactories() );
+		computeFrame( img, frame, spots, sortedFactories, numThreads, Logger.VOID_LOGGER, new AtomicInteger( 0 ), 1 );
 	}
 
 	/**
 	 * Calculates all the spot features configured in the {@link Settings}
 	 * object, but only for the spots in the specified collection. Features are
 	 * calculated for each spot, using their location, and the raw image.
+	 *
+	 * @return <code>true</code> if the calculation completed without errors.
 	 */
-	public void computeSpotFeatures( final SpotCollection toCompute, final boolean doLogIt )
+	public boolean computeSpotFeatures( final SpotCollection toCompute, final boolean doLogIt )
 	{
 		final List< SpotAnalyzerFactoryBase< ? > > spotFeatureAnalyzers = settings.getSpotAnalyzerFactories();
-		computeSpotFeaturesAgent( toCompute, spotFeatureAnalyzers, doLogIt );
+		return computeSpotFeaturesAgent( toCompute, spotFeatureAnalyzers, doLogIt );
+	}
+
+	/**
+	 * Calculates the spot features of the specified analyzer factories only,
+	 * for the spots in the specified collection.
+	 *
+	 * @param toCompute
+	 *            the spots to compute.
+	 * @param analyzerFactories
+	 *            the analyzer factories to use, typically a subset of the ones
+	 *            configured in the {@link Settings}.
+	 * @param doLogIt
+	 *            whether we should report progress to the user.
+	 * @return <code>true</code> if the calculation completed without errors.
+	 */
+	public boolean computeSpotFeatures( final SpotCollection toCompute, final List< SpotAnalyzerFactoryBase< ? > > analyzerFactories, final boolean doLogIt )
+	{
+		return computeSpotFeaturesAgent( toCompute, analyzerFactories, doLogIt );
 	}
 
 	/**
@@ -141,8 +209,9 @@ public class SpotFeatureCalculator extends MultiThreadedBenchmarkAlgorithm imple
 	 *            the analyzer factories to use for computation.
 	 * @param doLogIt
 	 *            whether we should report progress to the user.
+	 * @return <code>true</code> if the calculation completed without errors.
 	 */
-	private void computeSpotFeaturesAgent( final SpotCollection toCompute, final List< SpotAnalyzerFactoryBase< ? > > analyzerFactories, final boolean doLogIt )
+	private boolean computeSpotFeaturesAgent( final SpotCollection toCompute, final List< SpotAnalyzerFactoryBase< ? > > analyzerFactories, final boolean doLogIt )
 	{
 		isCanceled = false;
 		cancelReason = null;
@@ -151,7 +220,7 @@ public class SpotFeatureCalculator extends MultiThreadedBenchmarkAlgorithm imple
 
 		// Can't compute any spot feature without an image to compute on.
 		if ( settings.imp == null )
-			return;
+			return true;
 
 		@SuppressWarnings( "rawtypes" )
 		final ImgPlus img = TMUtils.rawWraps( settings.imp );
@@ -166,6 +235,14 @@ public class SpotFeatureCalculator extends MultiThreadedBenchmarkAlgorithm imple
 		 * frame. But if we have 10 threads and 2 frames, we process the 2
 		 * frames at once, and allocate 5 threads per frame if we can.
 		 */
+		if ( null != frameSource )
+		{
+			final int[] order = new int[ numFrames ];
+			for ( int i = 0; i < numFrames; i++ )
+				order[ i ] = frameSet.get( i );
+			frameSource.setProcessingOrder( order );
+		}
+
 		final int nSimultaneousFrames = Math.max( 1, Math.min( numThreads, numFrames ) );
 		final int threadsPerFrame = Math.max( 1, numThreads / nSimultaneousFrames );
 
@@ -179,6 +256,9 @@ public class SpotFeatureCalculator extends MultiThreadedBenchmarkAlgorithm imple
 			logger.setStatus( "Calculating " + toCompute.getNSpots( false ) + " spots features..." );
 		}
 
+		// Make sure analyzers run after the ones they depend on.
+		final List< SpotAnalyzerFactoryBase< ? > > sortedFactories = FeatureAnalyzerScheduler.sort( analyzerFactories );
+
 		final AtomicInteger progress = new AtomicInteger( 0 );
 		final List< Callable< Void > > tasks = new ArrayList<>( numFrames );
 		final int workToDo = numFrames * analyzerFactories.size() * settings.imp.getNChannels();
@@ -192,50 +272,60 @@ public class SpotFeatureCalculator extends MultiThreadedBenchmarkAlgorithm imple
 				public Void call() throws Exception
 				{
 					final int frame = frameSet.get( index );
-
-					for ( int channel = 0; channel < settings.imp.getNChannels(); channel++ )
-					{
-						for ( final SpotAnalyzerFactoryBase< ? > factory : analyzerFactories )
-						{
-							if ( isCanceled() )
-								return null;
-
-							@SuppressWarnings( "unchecked" )
-							final SpotAnalyzer< ? > analyzer = factory.getAnalyzer( img, frame, channel );
-							// Fine-tune multithreading if we can.
-							if ( analyzer instanceof MultiThreaded )
-								( ( MultiThreaded ) analyzer ).setNumThreads( threadsPerFrame );
-
-							analyzer.process( toCompute.iterable( frame, false ) );
-
-							logger.setProgress( progress.incrementAndGet() / ( double ) workToDo );
-						} // Finished looping over analyzers
-					} // Finished looping over channels
-
+					computeFrame( img, frame, toCompute.iterable( frame, false ), sortedFactories, threadsPerFrame, logger, progress, workToDo );
 					return null;
 				}
 			};
 			tasks.add( frameTask );
 		}
 
-		final ExecutorService executorService = Executors.newFixedThreadPool( nSimultaneousFrames );
-		List< Future< Void > > futures;
+		boolean ok = true;
 		try
 		{
-			futures = executorService.invokeAll( tasks );
-			for ( final Future< Void > future : futures )
-				future.get();
+			TrackMateExecutor.current().invokeAll( "Spot features", tasks, nSimultaneousFrames );
 		}
 		catch ( InterruptedException | ExecutionException e )
 		{
-			e.printStackTrace();
+			errorMessage = BASE_ERROR_MSG + "Error while computing spot features: " + e.getMessage();
+			ok = false;
 		}
 
-		executorService.shutdown();
 		logger.setProgress( 1 );
 		logger.setStatus( "" );
 		final long end = System.currentTimeMillis();
 		processingTime = end - start;
+		return ok;
+	}
+
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	private void computeFrame(
+			final ImgPlus img,
+			final int frame,
+			final Iterable< Spot > spots,
+			final List< SpotAnalyzerFactoryBase< ? > > sortedFactories,
+			final int nThreads,
+			final Logger logger,
+			final AtomicInteger progress,
+			final int workToDo )
+	{
+		final ImgPlus frameImg = ( null == frameSource ) ? img : frameSource.getFrame( frame );
+		for ( int channel = 0; channel < settings.imp.getNChannels(); channel++ )
+		{
+			for ( final SpotAnalyzerFactoryBase< ? > factory : sortedFactories )
+			{
+				if ( isCanceled() )
+					return;
+
+				final SpotAnalyzer< ? > analyzer = factory.getAnalyzer( frameImg, frame, channel );
+				// Fine-tune multithreading if we can.
+				if ( analyzer instanceof MultiThreaded )
+					( ( MultiThreaded ) analyzer ).setNumThreads( nThreads );
+
+				analyzer.process( spots );
+
+				logger.setProgress( progress.incrementAndGet() / ( double ) workToDo );
+			} // Finished looping over analyzers
+		} // Finished looping over channels
 	}
 
 	// --- org.scijava.Cancelable methods ---
@@ -21,9 +21,12 @@
  */
 package fiji.plugin.trackmate.features;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
 
 import org.scijava.Cancelable;
 
@@ -90,6 +93,23 @@ public class TrackFeatureCalculator extends MultiThreadedBenchmarkAlgorithm impl
 		final long start = System.currentTimeMillis();
 
 		// Declare what you do.
+		declareFeatures();
+
+		// Do it.
+		final Collection< Integer > trackIDs = model.getTrackModel().trackIDs( false );
+		final boolean ok = computeTrackFeaturesAgent( analyzer -> trackIDs, settings.getTrackAnalyzers(), true );
+
+		final long end = System.currentTimeMillis();
+		processingTime = end - start;
+		return ok;
+	}
+
+	/**
+	 * Declares the track features configured in the {@link Settings} in the
+	 * feature model of the model.
+	 */
+	public void declareFeatures()
+	{
 		for ( final TrackAnalyzer analyzer : settings.getTrackAnalyzers() )
 		{
 			final Collection< String > features = analyzer.getFeatures();
@@ -99,23 +119,40 @@ public class TrackFeatureCalculator extends MultiThreadedBenchmarkAlgorithm impl
 			final Map< String, Boolean > isIntFeature = analyzer.getIsIntFeature();
 			model.getFeatureModel().declareTrackFeatures( features, featureNames, featureShortNames, featureDimensions, isIntFeature );
 		}
-
-		// Do it.
-		computeTrackFeaturesAgent( model.getTrackModel().trackIDs( false ), settings.getTrackAnalyzers(), true );
-
-		final long end = System.currentTimeMillis();
-		processingTime = end - start;
-		return true;
 	}
 
 	/**
 	 * Calculates all the track features configured in the {@link Settings}
 	 * object for the specified tracks.
+	 *
+	 * @return <code>true</code> if the calculation completed without errors.
 	 */
-	public void computeTrackFeatures( final Collection< Integer > trackIDs, final boolean doLogIt )
+	public boolean computeTrackFeatures( final Collection< Integer > trackIDs, final boolean doLogIt )
 	{
 		final List< TrackAnalyzer > trackFeatureAnalyzers = settings.getTrackAnalyzers();
-		computeTrackFeaturesAgent( trackIDs, trackFeatureAnalyzers, doLogIt );
+		return computeTrackFeaturesAgent( analyzer -> trackIDs, trackFeatureAnalyzers, doLogIt );
+	}
+
+	/**
+	 * Calculates the track features of the specified analyzers, each on its
+	 * own collection of tracks. Analyzers that are not in the map, or that are
+	 * mapped to an empty collection, are not executed. Analyzers that are not
+	 * local are executed on all the tracks.
+	 *
+	 * @param trackIDs
+	 *            the IDs of the tracks to compute, per analyzer.
+	 * @param doLogIt
+	 *            if <code>true</code>, the logger of the model will be notified
+	 *            of the calculation.
+	 * @return <code>true</code> if the calculation completed without errors.
+	 */
+	public boolean computeTrackFeatures( final Map< TrackAnalyzer, ? extends Collection< Integer > > trackIDs, final boolean doLogIt )
+	{
+		final List< TrackAnalyzer > analyzers = new ArrayList<>( trackIDs.size() );
+		for ( final TrackAnalyzer analyzer : trackIDs.keySet() )
+			if ( !trackIDs.get( analyzer ).isEmpty() )
+				analyzers.add( analyzer );
+		return computeTrackFeaturesAgent( trackIDs::get, analyzers, doLogIt );
 	}
 
 	/*
@@ -125,7 +162,7 @@ public class TrackFeatureCalculator extends MultiThreadedBenchmarkAlgorithm impl
 	/**
 	 * Calculate all features for the tracks with the given IDs.
 	 */
-	private void computeTrackFeaturesAgent( final Collection< Integer > trackIDs, final List< TrackAnalyzer > analyzers, final boolean doLogIt )
+	private boolean computeTrackFeaturesAgent( final Function< TrackAnalyzer, ? extends Collection< Integer > > trackIDs, final List< TrackAnalyzer > analyzers, final boolean doLogIt )
 	{
 		isCanceled = false;
 		cancelReason = null;
@@ -136,31 +173,41 @@ public class TrackFeatureCalculator extends MultiThreadedBenchmarkAlgorithm impl
 			logger.log( "Computing track features:\n", Logger.BLUE_COLOR );
 		}
 
+		// Skip manual analyzers.
+		final List< TrackAnalyzer > toRun = new ArrayList<>( analyzers.size() );
 		for ( final TrackAnalyzer analyzer : analyzers )
-		{
-			if ( isCanceled() )
-				return;
-
-			if ( analyzer.isManualFeature() )
-			{
-				// Skip manual analyzers
-				continue;
-			}
-
-			analyzer.setNumThreads( numThreads );
-			if ( analyzer.isLocal() )
-			{
-				analyzer.process( trackIDs, model );
-			}
-			else
-			{
-				analyzer.process( model.getTrackModel().trackIDs( false ), model );
-			}
-
-			if ( doLogIt )
-				logger.log( "  - " + analyzer.getName() + " in " + analyzer.getProcessingTime() + " ms.\n" );
+			if ( !analyzer.isManualFeature() )
+				toRun.add( analyzer );
 
+		// Analyzers that do not depend on each other run concurrently.
+		try
+		{
+			FeatureAnalyzerScheduler.execute( toRun, numThreads,
+					( analyzer, nThreads ) -> run( analyzer, trackIDs.apply( analyzer ), nThreads, model, doLogIt ),
+					this::isCanceled );
+		}
+		catch ( InterruptedException | ExecutionException e )
+		{
+			errorMessage = BASE_ERROR_MSG + "Error while computing track features: " + e.getMessage();
+			return false;
 		}
+		return true;
+	}
+
+	/**
+	 * Executes one track analyzer on the specified tracks, or on all the
+	 * tracks if it is not local.
+	 */
+	static void run( final TrackAnalyzer analyzer, final Collection< Integer > trackIDs, final int numThreads, final Model model, final boolean doLogIt )
+	{
+		analyzer.setNumThreads( numThreads );
+		if ( analyzer.isLocal() )
+			analyzer.process( trackIDs, model );
+		else
+			analyzer.process( model.getTrackModel().trackIDs( false ), model );
+
+		if ( doLogIt )
+			model.getLogger().log( "  - " + analyzer.getName() + " in " + analyzer.getProcessingTime() + " ms.\n" );
 	}
 
 	// --- org.scijava.Cancelable methods ---
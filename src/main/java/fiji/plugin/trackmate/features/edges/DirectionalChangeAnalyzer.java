@@ -22,6 +22,7 @@
 package fiji.plugin.trackmate.features.edges;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -34,6 +35,7 @@ import fiji.plugin.trackmate.Dimension;
 import fiji.plugin.trackmate.FeatureModel;
 import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.features.FeatureDependency;
 
 @Plugin( type = EdgeAnalyzer.class )
 public class DirectionalChangeAnalyzer extends AbstractEdgeAnalyzer
@@ -62,6 +64,12 @@ public class DirectionalChangeAnalyzer extends AbstractEdgeAnalyzer
 		super( KEY, KEY, FEATURES, FEATURE_NAMES, FEATURE_SHORT_NAMES, FEATURE_DIMENSIONS, IS_INT );
 	}
 
+	@Override
+	public Set< FeatureDependency > getDependencies()
+	{
+		return EnumSet.of( FeatureDependency.SPOT_GEOMETRY, FeatureDependency.GRAPH_TOPOLOGY );
+	}
+
 	@Override
 	protected void analyze( final DefaultWeightedEdge edge, final Model model )
 	{
@@ -22,9 +22,11 @@
 package fiji.plugin.trackmate.features.edges;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.scijava.plugin.Plugin;
@@ -33,6 +35,7 @@ import fiji.plugin.trackmate.Dimension;
 import fiji.plugin.trackmate.FeatureModel;
 import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.features.FeatureDependency;
 
 @Plugin( type = EdgeAnalyzer.class )
 public class EdgeSpeedAnalyzer extends AbstractEdgeAnalyzer
@@ -71,6 +74,12 @@ public class EdgeSpeedAnalyzer extends AbstractEdgeAnalyzer
 		super( KEY, KEY, FEATURES, FEATURE_NAMES, FEATURE_SHORT_NAMES, FEATURE_DIMENSIONS, IS_INT );
 	}
 
+	@Override
+	public Set< FeatureDependency > getDependencies()
+	{
+		return EnumSet.of( FeatureDependency.SPOT_GEOMETRY );
+	}
+
 	@Override
 	protected void analyze( final DefaultWeightedEdge edge, final Model model )
 	{
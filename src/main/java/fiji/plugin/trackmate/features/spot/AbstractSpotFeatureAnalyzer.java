@@ -25,11 +25,9 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 
 import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.util.TrackMateExecutor;
 import net.imglib2.algorithm.Benchmark;
 import net.imglib2.algorithm.MultiThreaded;
 import net.imglib2.type.numeric.RealType;
@@ -77,19 +75,15 @@ public abstract class AbstractSpotFeatureAnalyzer< T extends RealType< T > > imp
 			tasks.add( task );
 		}
 
-		final ExecutorService executorService = Executors.newFixedThreadPool( numThreads );
 		try
 		{
-			final List< Future< Void > > futures = executorService.invokeAll( tasks );
-			for ( final Future< Void > future : futures )
-				future.get();
+			TrackMateExecutor.current().invokeAll( "Spot features", tasks, numThreads );
 		}
 		catch ( final InterruptedException | ExecutionException e )
 		{
 			e.printStackTrace();
 		}
 
-		executorService.shutdown();
 		processingTime = System.currentTimeMillis() - start;
 	}
 
@@ -21,7 +21,11 @@
  */
 package fiji.plugin.trackmate.features.spot;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 import fiji.plugin.trackmate.features.FeatureAnalyzer;
+import fiji.plugin.trackmate.features.FeatureDependency;
 import net.imagej.ImgPlus;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.RealType;
@@ -74,4 +78,14 @@ public interface SpotAnalyzerFactoryBase< T extends RealType< T > & NativeType<
 		 * Do nothing. Most analyzer factories need not to know this in advance.
 		 */
 	}
+
+	/**
+	 * Spot analyzers depend on the spot geometry and on the image, but not on
+	 * the links of the spot by default.
+	 */
+	@Override
+	public default Set< FeatureDependency > getDependencies()
+	{
+		return EnumSet.of( FeatureDependency.SPOT_GEOMETRY, FeatureDependency.SPOT_INTENSITY );
+	}
 }
@@ -100,6 +100,19 @@ public class SpotContrastAndSNRAnalyzerFactory< T extends RealType< T > & Native
 		return features;
 	}
 
+	@Override
+	public List< String > getInputFeatures()
+	{
+		final List< String > inputs = new ArrayList<>( nChannels * 3 );
+		for ( int c = 0; c < nChannels; c++ )
+		{
+			inputs.add( makeFeatureKey( SpotIntensityMultiCAnalyzerFactory.MEAN_INTENSITY, c ) );
+			inputs.add( makeFeatureKey( SpotIntensityMultiCAnalyzerFactory.STD_INTENSITY, c ) );
+			inputs.add( makeFeatureKey( SpotIntensityMultiCAnalyzerFactory.TOTAL_INTENSITY, c ) );
+		}
+		return inputs;
+	}
+
 	@Override
 	public Map< String, String > getFeatureShortNames()
 	{
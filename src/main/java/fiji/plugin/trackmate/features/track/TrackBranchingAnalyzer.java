@@ -22,6 +22,7 @@
 package fiji.plugin.trackmate.features.track;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -34,6 +35,7 @@ import org.scijava.plugin.Plugin;
 import fiji.plugin.trackmate.Dimension;
 import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.features.FeatureDependency;
 
 @Plugin( type = TrackAnalyzer.class )
 public class TrackBranchingAnalyzer extends AbstractTrackAnalyzer
@@ -96,6 +98,12 @@ public class TrackBranchingAnalyzer extends AbstractTrackAnalyzer
 		super( KEY, KEY, FEATURES, FEATURE_NAMES, FEATURE_SHORT_NAMES, FEATURE_DIMENSIONS, IS_INT );
 	}
 
+	@Override
+	public Set< FeatureDependency > getDependencies()
+	{
+		return EnumSet.of( FeatureDependency.SPOT_GEOMETRY, FeatureDependency.GRAPH_TOPOLOGY );
+	}
+
 	@Override
 	protected void analyze( final Integer trackID, final Model model )
 	{
@@ -23,9 +23,11 @@ package fiji.plugin.trackmate.features.track;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.swing.ImageIcon;
 
@@ -34,6 +36,7 @@ import org.scijava.plugin.Plugin;
 import fiji.plugin.trackmate.Dimension;
 import fiji.plugin.trackmate.FeatureModel;
 import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.features.FeatureDependency;
 
 @Plugin( type = TrackAnalyzer.class )
 public class TrackIndexAnalyzer implements TrackAnalyzer
@@ -76,6 +79,12 @@ public class TrackIndexAnalyzer implements TrackAnalyzer
 	 * {@link TrackIndexAnalyzer} is not local, since the indices are
 	 * re-arranged according to names.
 	 */
+	@Override
+	public Set< FeatureDependency > getDependencies()
+	{
+		return EnumSet.of( FeatureDependency.GRAPH_TOPOLOGY );
+	}
+
 	@Override
 	public boolean isLocal()
 	{
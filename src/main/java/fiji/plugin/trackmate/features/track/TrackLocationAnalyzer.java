@@ -22,6 +22,7 @@
 package fiji.plugin.trackmate.features.track;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -33,6 +34,7 @@ import fiji.plugin.trackmate.Dimension;
 import fiji.plugin.trackmate.FeatureModel;
 import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.features.FeatureDependency;
 
 @Plugin( type = TrackAnalyzer.class )
 public class TrackLocationAnalyzer extends AbstractTrackAnalyzer
@@ -77,6 +79,12 @@ public class TrackLocationAnalyzer extends AbstractTrackAnalyzer
 		super( KEY, KEY, FEATURES, FEATURE_NAMES, FEATURE_SHORT_NAMES, FEATURE_DIMENSIONS, IS_INT );
 	}
 
+	@Override
+	public Set< FeatureDependency > getDependencies()
+	{
+		return EnumSet.of( FeatureDependency.SPOT_GEOMETRY, FeatureDependency.GRAPH_TOPOLOGY );
+	}
+
 	@Override
 	protected void analyze( final Integer trackID, final Model model )
 	{
@@ -22,17 +22,16 @@
 package fiji.plugin.trackmate.features.track;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 
 import javax.swing.ImageIcon;
 
@@ -44,7 +43,9 @@ import fiji.plugin.trackmate.Dimension;
 import fiji.plugin.trackmate.FeatureModel;
 import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.features.FeatureDependency;
 import fiji.plugin.trackmate.features.edges.DirectionalChangeAnalyzer;
+import fiji.plugin.trackmate.util.TrackMateExecutor;
 
 @Plugin( type = TrackAnalyzer.class, priority = Priority.LOW )
 public class TrackMotilityAnalyzer implements TrackAnalyzer
@@ -74,6 +75,12 @@ public class TrackMotilityAnalyzer implements TrackAnalyzer
 
 	public static final Map< String, Boolean > IS_INT = new HashMap<>( FEATURES.size() );
 
+	private static final List< String > INPUT_FEATURES = Arrays.asList(
+			TrackDurationAnalyzer.TRACK_DISPLACEMENT,
+			TrackDurationAnalyzer.TRACK_DURATION,
+			TrackSpeedStatisticsAnalyzer.TRACK_MEAN_SPEED,
+			DirectionalChangeAnalyzer.DIRECTIONAL_CHANGE_RATE );
+
 	static
 	{
 		FEATURES.add( TRACK_TOTAL_DISTANCE_TRAVELED );
@@ -157,6 +164,18 @@ public class TrackMotilityAnalyzer implements TrackAnalyzer
 		return IS_INT;
 	}
 
+	@Override
+	public List< String > getInputFeatures()
+	{
+		return INPUT_FEATURES;
+	}
+
+	@Override
+	public Set< FeatureDependency > getDependencies()
+	{
+		return EnumSet.of( FeatureDependency.SPOT_GEOMETRY, FeatureDependency.GRAPH_TOPOLOGY );
+	}
+
 	@Override
 	public boolean isManualFeature()
 	{
@@ -237,19 +256,14 @@ public class TrackMotilityAnalyzer implements TrackAnalyzer
 			tasks.add( task );
 		}
 
-		final ExecutorService executorService = Executors.newFixedThreadPool( numThreads );
-		List< Future< Void > > futures;
 		try
 		{
-			futures = executorService.invokeAll( tasks );
-			for ( final Future< Void > future : futures )
-				future.get();
+			TrackMateExecutor.current().invokeAll( "Track features", tasks, numThreads );
 		}
 		catch ( InterruptedException | ExecutionException e )
 		{
 			e.printStackTrace();
 		}
-		executorService.shutdown();
 
 		final long end = System.currentTimeMillis();
 		processingTime = end - start;
@@ -27,9 +27,13 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import org.jgrapht.alg.connectivity.ConnectivityInspector;
 import org.jgrapht.graph.DefaultEdge;
 import org.jgrapht.graph.DefaultWeightedEdge;
@@ -39,6 +43,7 @@ import org.jgrapht.graph.SimpleGraph;
 import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.TrackModel;
+import fiji.plugin.trackmate.util.TrackMateExecutor;
 import net.imglib2.algorithm.Algorithm;
 import net.imglib2.algorithm.Benchmark;
 
@@ -182,8 +187,6 @@ public class ConvexBranchesDecomposition implements Algorithm, Benchmark
 
 	private final TrackModel tm;
 
-	private final TimeDirectedNeighborIndex neighborIndex;
-
 	private final boolean forbidMiddleLinks;
 
 	private final boolean forbidGaps;
@@ -211,7 +214,6 @@ public class ConvexBranchesDecomposition implements Algorithm, Benchmark
 		this.forbidMiddleLinks = forbidMiddleLinks;
 		this.forbidGaps = forbidGaps;
 		this.tm = model.getTrackModel();
-		this.neighborIndex = tm.getDirectedNeighborIndex();
 	}
 
 	/**
@@ -258,6 +260,16 @@ public class ConvexBranchesDecomposition implements Algorithm, Benchmark
 		final long startT = System.currentTimeMillis();
 
 		final Set< Integer > trackIDs = tm.trackIDs( true );
+		final Map< Integer, TrackBranchDecomposition > decompositions;
+		try
+		{
+			decompositions = processTracks( trackIDs, tm, forbidMiddleLinks, forbidGaps );
+		}
+		catch ( InterruptedException | ExecutionException e )
+		{
+			errorMessage = BASE_ERROR_MSG + "Problem decomposing tracks: " + e.getMessage() + '\n';
+			return false;
+		}
 
 		branches = new ArrayList<>();
 		branchesPerTrack = new HashMap<>();
@@ -265,7 +277,7 @@ public class ConvexBranchesDecomposition implements Algorithm, Benchmark
 		linksPerTrack = new HashMap<>();
 		for ( final Integer trackID : trackIDs )
 		{
-			final TrackBranchDecomposition branchDecomposition = processTrack( trackID, tm, neighborIndex, forbidMiddleLinks, forbidGaps );
+			final TrackBranchDecomposition branchDecomposition = decompositions.get( trackID );
 
 			branchesPerTrack.put( trackID, branchDecomposition.branches );
 			linksPerTrack.put( trackID, branchDecomposition.links );
@@ -281,6 +293,52 @@ public class ConvexBranchesDecomposition implements Algorithm, Benchmark
 
 	}
 
+	/**
+	 * Returns the convex branch decompositions of several tracks of a model.
+	 * <p>
+	 * The decompositions are taken from the cache of the track model, see
+	 * {@link TrackModel#getBranchDecomposition(Integer, boolean, boolean)}.
+	 * The tracks that are not in the cache are decomposed concurrently, with
+	 * the {@link TrackMateExecutor} of the current thread, and are cached for
+	 * later calls. The returned decompositions are shared and must not be
+	 * modified.
+	 *
+	 * @param trackIDs
+	 *            the IDs of the tracks to decompose.
+	 * @param tm
+	 *            the {@link TrackModel} in which the tracks are stored.
+	 * @param forbidMiddleLinks
+	 *            if <code>true</code>, links between branches can only join
+	 *            the end of a branch to the start of another.
+	 * @param forbidGaps
+	 *            if <code>true</code>, branches cannot contain gaps.
+	 * @return a new map from track ID to decomposition, iterated in the order
+	 *         of the specified track IDs.
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted while waiting.
+	 * @throws ExecutionException
+	 *             if the decomposition of a track failed.
+	 */
+	public static final Map< Integer, TrackBranchDecomposition > processTracks(
+			final Collection< Integer > trackIDs,
+			final TrackModel tm,
+			final boolean forbidMiddleLinks,
+			final boolean forbidGaps ) throws InterruptedException, ExecutionException
+	{
+		final List< Callable< TrackBranchDecomposition > > tasks = new ArrayList<>( trackIDs.size() );
+		for ( final Integer trackID : trackIDs )
+			tasks.add( () -> tm.getBranchDecomposition( trackID, forbidMiddleLinks, forbidGaps ) );
+
+		final TrackMateExecutor executor = TrackMateExecutor.current();
+		final List< TrackBranchDecomposition > results = executor.invokeAll( "Branch decomposition", tasks, executor.getNumThreads() );
+
+		final Map< Integer, TrackBranchDecomposition > decompositions = new LinkedHashMap<>( trackIDs.size() );
+		final Iterator< TrackBranchDecomposition > it = results.iterator();
+		for ( final Integer trackID : trackIDs )
+			decompositions.put( trackID, it.next() );
+		return decompositions;
+	}
+
 	/**
 	 * A static utility that generates the convex branch decomposition of a
 	 * specific track in a model.
@@ -0,0 +1,84 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.graph;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import org.jgrapht.alg.util.NeighborCache;
+import org.jgrapht.graph.SimpleDirectedGraph;
+
+/**
+ * Accumulates a value from the leaves of a directed graph towards its roots:
+ * the value of each vertex is combined with the values of its successors,
+ * once their own values are complete.
+ * <p>
+ * The values are the vertices themselves, and are modified in place. The
+ * computation is done in an iterative post-order traversal, so that deep
+ * graphs do not overflow the stack. Each vertex is processed only once, even
+ * if it is reachable from several vertices.
+ */
+public class CumSum<V, E> {
+
+	private final NeighborCache<V, E> cache;
+	private final Function2<V, V> function;
+
+	public CumSum(final SimpleDirectedGraph<V, E> graph, final Function2<V, V> function) {
+		this.cache = new NeighborCache<>(graph);
+		this.function = function;
+	}
+
+	public V apply(final V current) {
+
+		final Set<V> done = Collections.newSetFromMap(new IdentityHashMap<>());
+		final Set<V> expanded = Collections.newSetFromMap(new IdentityHashMap<>());
+		final Deque<V> stack = new ArrayDeque<>();
+		stack.push(current);
+		while (!stack.isEmpty()) {
+			final V val = stack.peek();
+			if (done.contains(val)) {
+				stack.pop();
+				continue;
+			}
+
+			final Set<V> children = cache.successorsOf(val);
+			if (expanded.add(val)) {
+				// First visit: process the children first.
+				for (final V child : children)
+					if (!done.contains(child))
+						stack.push(child);
+				continue;
+			}
+
+			// Second visit: all children are done.
+			for (final V child : children)
+				function.compute(val, child, val);
+			done.add(val);
+			stack.pop();
+		}
+		return current;
+	}
+
+}
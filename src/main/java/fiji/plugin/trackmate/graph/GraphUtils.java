@@ -24,19 +24,22 @@ package fiji.plugin.trackmate.graph;
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.TrackModel;
 
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
-import java.util.function.Supplier;
 import org.jgrapht.alg.util.NeighborCache;
 import org.jgrapht.graph.DefaultWeightedEdge;
-import org.jgrapht.graph.SimpleDirectedWeightedGraph;
 
 public class GraphUtils {
 
@@ -272,96 +275,73 @@ public class GraphUtils {
 	
 	
 	
+	/**
+	 * Returns the cumulative branch width of each spot of the model: 1 for a
+	 * leaf, and the sum of the widths of its successors otherwise. That is:
+	 * the number of leaves below each spot.
+	 * <p>
+	 * The widths are computed in one iterative post-order pass, so deep
+	 * lineages do not overflow the stack, and the width of each spot is
+	 * computed only once.
+	 *
+	 * @param model
+	 *            the track model.
+	 * @return a new map of spot vs width.
+	 */
 	public static final Map<Spot, Integer> cumulativeBranchWidth(final TrackModel model) {
+		return cumulativeBranchWidth(model.getDirectedNeighborIndex(), model.vertexSet());
+	}
 
-		/*
-		 * Elements stored:
-		 * 	0. cumsum of leaf
-		 */
-		Supplier<int[]> factory = new Supplier<int[]>() {
-			@Override
-			public int[] get() {
-				return new int[1];
-			}
-		};
-
-		/*
-		 * Build isleaf tree
-		 */
-
-		final TimeDirectedNeighborIndex cache = model.getDirectedNeighborIndex();
-
-		Function1<Spot, int[]> isLeafFun = new Function1<Spot, int[]>() {
-			@Override
-			public void compute(Spot input, int[] output) {
-				if (cache.successorsOf(input).size() == 0) {
-					output[0] = 1;
-				} else {
-					output[0] = 0;
+	/**
+	 * Returns the cumulative branch width of the specified spots, as
+	 * {@link #cumulativeBranchWidth(TrackModel)} does for all the spots of the
+	 * model. The specified spots must contain all their successors, for
+	 * instance if they are whole tracks.
+	 *
+	 * @param cache
+	 *            the neighbor index of the track model.
+	 * @param vertices
+	 *            the spots to compute the width of.
+	 * @return a new map of spot vs width.
+	 */
+	public static final Map<Spot, Integer> cumulativeBranchWidth(final TimeDirectedNeighborIndex cache, final Collection<Spot> vertices) {
+
+		final Map<Spot, Integer> widths = new IdentityHashMap<>(vertices.size());
+		final Set<Spot> expanded = Collections.newSetFromMap(new IdentityHashMap<>(vertices.size()));
+		final Deque<Spot> stack = new ArrayDeque<>();
+
+		for (final Spot root : vertices) {
+			if (widths.containsKey(root))
+				continue;
+
+			stack.push(root);
+			while (!stack.isEmpty()) {
+				final Spot spot = stack.peek();
+				if (widths.containsKey(spot)) {
+					stack.pop();
+					continue;
 				}
-			}
-		};
-
-
-		Map<Spot, int[]> mappings = new HashMap<>();
-		SimpleDirectedWeightedGraph<int[], DefaultWeightedEdge> leafTree = model.copy(factory, isLeafFun, mappings);
-
-		/*
-		 * Find root spots & first spots
-		 * Roots are spots without any ancestors. There might be more than one per track.
-		 * First spots are the first root found in a track. There is only one per track.
-		 * 
-		 * By the way we compute the largest spot name
-		 */
-
-		Set<Spot> roots = new HashSet<>(model.nTracks(false)); // approx
-		Set<Spot> firsts = new HashSet<>(model.nTracks(false)); // exact
-		Set<Integer> ids = model.trackIDs(false);
-		for (Integer id : ids) {
-			Set<Spot> track = model.trackSpots(id);
-			boolean firstFound = false;
-			for (Spot spot : track) {
 
-				if (cache.predecessorsOf(spot).size() == 0) {
-					if (!firstFound) {
-						firsts.add(spot);
-					}
-					roots.add(spot);
-					firstFound = true;
+				final Set<Spot> successors = cache.successorsOf(spot);
+				if (expanded.add(spot)) {
+					// First visit: process the successors first.
+					for (final Spot successor : successors)
+						if (!widths.containsKey(successor))
+							stack.push(successor);
+					continue;
 				}
-			}
-		}
 
-		/*
-		 * Build cumsum value
-		 */
-
-		Function2<int[], int[]> cumsumFun = new Function2<int[], int[]>() {
-			@Override
-			public void compute(int[] input1, int[] input2, int[] output) {
-				output[0] = input1[0] + input2[0];
+				// Second visit: all successors are done.
+				int width = 0;
+				for (final Spot successor : successors)
+					width += widths.get(successor);
+				widths.put(spot, successors.isEmpty() ? 1 : width);
+				stack.pop();
 			}
-		};
-
-		RecursiveCumSum<int[], DefaultWeightedEdge> cumsum = new RecursiveCumSum<>(leafTree, cumsumFun);
-		for(Spot root : firsts) {
-			int[] current = mappings.get(root);
-			cumsum.apply(current);
 		}
-		
-		/*
-		 * Convert to map of spot vs integer 
-		 */
-		Map<Spot, Integer> widths = new HashMap<>();
-		for (Spot spot : model.vertexSet()) {
-			widths.put(spot, mappings.get(spot)[0]);
-		}
-		
 		return widths;
 	}
-	
-	
-	
+
 
 	private static char[] makeSpaces(int width) {
 		return makeChars(width, ' ');
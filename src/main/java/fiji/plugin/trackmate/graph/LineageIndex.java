@@ -0,0 +1,449 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.graph;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.TrackModel;
+
+/**
+ * An index of the lineage of one track, to answer ancestry queries without
+ * walking the graph.
+ * <p>
+ * The spots of the track are stored sorted by frame, so that the spots of a
+ * frame are found by a binary search. Edges are oriented in time, from the
+ * spot with the lower frame to the spot with the higher frame. When every
+ * spot has at most one predecessor (the track divides but never merges), the
+ * spots are also labelled with their rank in a pre-order traversal of the
+ * lineage, and with the size of their sub-lineage. The descendants of a spot
+ * are then the spots whose rank lies in an interval, and ancestry is checked
+ * by comparing ranks. Tracks with merge events fall back on a traversal of
+ * the index.
+ * <p>
+ * Instances are immutable snapshots of a track. The {@link TrackModel}
+ * discards them when the track changes, see
+ * {@link TrackModel#getLineageIndex(Integer)}.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+public class LineageIndex
+{
+
+	private static final Comparator< Spot > TIME_COMPARATOR = Comparator
+			.comparingInt( ( final Spot s ) -> s.getFeature( Spot.FRAME ).intValue() )
+			.thenComparingInt( Spot::ID );
+
+	/** The spots, sorted by frame. */
+	private final Spot[] spots;
+
+	private final int[] frames;
+
+	private final Map< Spot, Integer > indices;
+
+	/*
+	 * Predecessors and successors in compressed rows: the predecessors of
+	 * spot i are at indices predStart[i] (incl.) to predStart[i+1] (excl.).
+	 */
+
+	private final int[] predStart;
+
+	private final int[] preds;
+
+	private final DefaultWeightedEdge[] predEdges;
+
+	private final int[] succStart;
+
+	private final int[] succs;
+
+	/** Whether no spot has more than one predecessor. */
+	private final boolean isTree;
+
+	/** Pre-order rank of each spot. Only if the lineage is a tree. */
+	private final int[] rank;
+
+	/** Number of spots in the sub-lineage of each spot, including itself. */
+	private final int[] subtreeSize;
+
+	/** The spot index at each pre-order rank. */
+	private final int[] preorder;
+
+	/**
+	 * Builds the lineage index of the specified track.
+	 *
+	 * @param trackModel
+	 *            the track model.
+	 * @param trackID
+	 *            the ID of the track to index.
+	 */
+	public LineageIndex( final TrackModel trackModel, final Integer trackID )
+	{
+		this( trackModel.trackSpots( trackID ), trackModel.trackEdges( trackID ), trackModel );
+	}
+
+	private LineageIndex( final Set< Spot > trackSpots, final Set< DefaultWeightedEdge > trackEdges, final TrackModel trackModel )
+	{
+		final int n = trackSpots.size();
+		this.spots = trackSpots.toArray( new Spot[ n ] );
+		Arrays.sort( spots, TIME_COMPARATOR );
+		this.frames = new int[ n ];
+		this.indices = new HashMap<>( 2 * n );
+		for ( int i = 0; i < n; i++ )
+		{
+			frames[ i ] = spots[ i ].getFeature( Spot.FRAME ).intValue();
+			indices.put( spots[ i ], Integer.valueOf( i ) );
+		}
+
+		/*
+		 * Orient edges in time. Edges between spots in the same frame carry
+		 * no ancestry and are skipped.
+		 */
+
+		final int nEdges = trackEdges.size();
+		final int[] from = new int[ nEdges ];
+		final int[] to = new int[ nEdges ];
+		final DefaultWeightedEdge[] edges = new DefaultWeightedEdge[ nEdges ];
+		int nOriented = 0;
+		this.predStart = new int[ n + 1 ];
+		this.succStart = new int[ n + 1 ];
+		for ( final DefaultWeightedEdge edge : trackEdges )
+		{
+			final int a = indices.get( trackModel.getEdgeSource( edge ) ).intValue();
+			final int b = indices.get( trackModel.getEdgeTarget( edge ) ).intValue();
+			if ( frames[ a ] == frames[ b ] )
+				continue;
+			final int early = frames[ a ] < frames[ b ] ? a : b;
+			final int late = early == a ? b : a;
+			from[ nOriented ] = early;
+			to[ nOriented ] = late;
+			edges[ nOriented ] = edge;
+			nOriented++;
+			predStart[ late + 1 ]++;
+			succStart[ early + 1 ]++;
+		}
+		for ( int i = 0; i < n; i++ )
+		{
+			predStart[ i + 1 ] += predStart[ i ];
+			succStart[ i + 1 ] += succStart[ i ];
+		}
+		this.preds = new int[ nOriented ];
+		this.predEdges = new DefaultWeightedEdge[ nOriented ];
+		this.succs = new int[ nOriented ];
+		final int[] predFill = Arrays.copyOf( predStart, n );
+		final int[] succFill = Arrays.copyOf( succStart, n );
+		boolean tree = true;
+		for ( int e = 0; e < nOriented; e++ )
+		{
+			final int p = predFill[ to[ e ] ]++;
+			preds[ p ] = from[ e ];
+			predEdges[ p ] = edges[ e ];
+			succs[ succFill[ from[ e ] ]++ ] = to[ e ];
+			if ( p > predStart[ to[ e ] ] )
+				tree = false;
+		}
+		this.isTree = tree;
+
+		/*
+		 * Pre-order labels, iteratively. Roots are visited in time order.
+		 */
+
+		if ( isTree )
+		{
+			this.rank = new int[ n ];
+			this.subtreeSize = new int[ n ];
+			this.preorder = new int[ n ];
+			final ArrayDeque< Integer > stack = new ArrayDeque<>();
+			int next = 0;
+			for ( int root = 0; root < n; root++ )
+			{
+				if ( predStart[ root + 1 ] > predStart[ root ] )
+					continue;
+				stack.push( Integer.valueOf( root ) );
+				while ( !stack.isEmpty() )
+				{
+					final int i = stack.pop().intValue();
+					rank[ i ] = next;
+					preorder[ next ] = i;
+					next++;
+					// Push in reverse order so that children are visited in
+					// time order.
+					for ( int k = succStart[ i + 1 ] - 1; k >= succStart[ i ]; k-- )
+						stack.push( Integer.valueOf( succs[ k ] ) );
+				}
+			}
+			// Sub-lineage sizes, children before parents.
+			for ( int r = n - 1; r >= 0; r-- )
+			{
+				final int i = preorder[ r ];
+				subtreeSize[ i ] += 1;
+				if ( predStart[ i + 1 ] > predStart[ i ] )
+					subtreeSize[ preds[ predStart[ i ] ] ] += subtreeSize[ i ];
+			}
+		}
+		else
+		{
+			this.rank = null;
+			this.subtreeSize = null;
+			this.preorder = null;
+		}
+	}
+
+	/**
+	 * Returns the number of spots in the track.
+	 *
+	 * @return the number of spots.
+	 */
+	public int size()
+	{
+		return spots.length;
+	}
+
+	/**
+	 * Returns <code>true</code> if no spot of the track has more than one
+	 * predecessor in time. Ancestry queries are then answered in constant time.
+	 *
+	 * @return whether the lineage is a tree.
+	 */
+	public boolean isTree()
+	{
+		return isTree;
+	}
+
+	/**
+	 * Returns whether the specified spot belongs to the indexed track.
+	 *
+	 * @param spot
+	 *            the spot.
+	 * @return <code>true</code> if the spot is in the track.
+	 */
+	public boolean contains( final Spot spot )
+	{
+		return indices.containsKey( spot );
+	}
+
+	/**
+	 * Returns the spots of the track, sorted by frame.
+	 *
+	 * @return an unmodifiable list.
+	 */
+	public List< Spot > getSpots()
+	{
+		return Collections.unmodifiableList( Arrays.asList( spots ) );
+	}
+
+	/**
+	 * Returns the spots of the track in the specified frame.
+	 *
+	 * @param frame
+	 *            the frame.
+	 * @return an unmodifiable list, possibly empty.
+	 */
+	public List< Spot > getSpotsAt( final int frame )
+	{
+		final int start = firstAtOrAfter( frame );
+		final int end = firstAtOrAfter( frame + 1 );
+		return getSpots().subList( start, end );
+	}
+
+	private int firstAtOrAfter( final int frame )
+	{
+		int lo = 0;
+		int hi = frames.length;
+		while ( lo < hi )
+		{
+			final int mid = ( lo + hi ) >>> 1;
+			if ( frames[ mid ] < frame )
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Returns <code>true</code> if the first spot is a strict ancestor of the
+	 * second one, that is, if there is a path going forward in time from the
+	 * first to the second.
+	 *
+	 * @param ancestor
+	 *            the candidate ancestor.
+	 * @param descendant
+	 *            the candidate descendant.
+	 * @return whether <code>ancestor</code> is an ancestor of
+	 *         <code>descendant</code>. <code>false</code> if one of the spots
+	 *         is not in the track.
+	 */
+	public boolean isAncestor( final Spot ancestor, final Spot descendant )
+	{
+		final Integer ia = indices.get( ancestor );
+		final Integer id = indices.get( descendant );
+		if ( null == ia || null == id )
+			return false;
+		final int a = ia.intValue();
+		final int d = id.intValue();
+		if ( frames[ a ] >= frames[ d ] )
+			return false;
+
+		if ( isTree )
+			return rank[ a ] < rank[ d ] && rank[ d ] < rank[ a ] + subtreeSize[ a ];
+
+		// Walk back in time from the descendant, not earlier than the ancestor.
+		final boolean[] visited = new boolean[ spots.length ];
+		final ArrayDeque< Integer > queue = new ArrayDeque<>();
+		queue.add( Integer.valueOf( d ) );
+		visited[ d ] = true;
+		while ( !queue.isEmpty() )
+		{
+			final int i = queue.poll().intValue();
+			for ( int k = predStart[ i ]; k < predStart[ i + 1 ]; k++ )
+			{
+				final int p = preds[ k ];
+				if ( p == a )
+					return true;
+				if ( !visited[ p ] && frames[ p ] > frames[ a ] )
+				{
+					visited[ p ] = true;
+					queue.add( Integer.valueOf( p ) );
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds the specified spots and all their descendants to the specified
+	 * spot collection, and the edges between them to the specified edge
+	 * collection. Seeds that are not in the track are ignored.
+	 *
+	 * @param seeds
+	 *            the spots to start from.
+	 * @param spotsOut
+	 *            the collection to add spots to.
+	 * @param edgesOut
+	 *            the collection to add edges to.
+	 */
+	public void collectDescendants( final Collection< Spot > seeds, final Collection< Spot > spotsOut, final Collection< DefaultWeightedEdge > edgesOut )
+	{
+		final boolean[] selected = new boolean[ spots.length ];
+		if ( isTree )
+		{
+			// Union of the rank intervals of the seeds.
+			final int[] delta = new int[ spots.length + 1 ];
+			for ( final Spot seed : seeds )
+			{
+				final Integer i = indices.get( seed );
+				if ( null == i )
+					continue;
+				delta[ rank[ i ] ]++;
+				delta[ rank[ i ] + subtreeSize[ i ] ]--;
+			}
+			int depth = 0;
+			for ( int r = 0; r < spots.length; r++ )
+			{
+				depth += delta[ r ];
+				if ( depth > 0 )
+					selected[ preorder[ r ] ] = true;
+			}
+		}
+		else
+		{
+			walk( seeds, selected, succStart, succs );
+		}
+		collect( selected, spotsOut, edgesOut );
+	}
+
+	/**
+	 * Adds the specified spots and all their ancestors to the specified spot
+	 * collection, and the edges between them to the specified edge
+	 * collection. Seeds that are not in the track are ignored.
+	 *
+	 * @param seeds
+	 *            the spots to start from.
+	 * @param spotsOut
+	 *            the collection to add spots to.
+	 * @param edgesOut
+	 *            the collection to add edges to.
+	 */
+	public void collectAncestors( final Collection< Spot > seeds, final Collection< Spot > spotsOut, final Collection< DefaultWeightedEdge > edgesOut )
+	{
+		final boolean[] selected = new boolean[ spots.length ];
+		walk( seeds, selected, predStart, preds );
+		collect( selected, spotsOut, edgesOut );
+	}
+
+	/**
+	 * Marks the seeds and all the spots reachable from them in the specified
+	 * neighbor rows. Each spot is visited once, whatever the number of seeds.
+	 */
+	private void walk( final Collection< Spot > seeds, final boolean[] selected, final int[] start, final int[] neighbors )
+	{
+		final ArrayDeque< Integer > stack = new ArrayDeque<>();
+		for ( final Spot seed : seeds )
+		{
+			final Integer i = indices.get( seed );
+			if ( null == i || selected[ i ] )
+				continue;
+			selected[ i ] = true;
+			stack.push( i );
+			while ( !stack.isEmpty() )
+			{
+				final int j = stack.pop().intValue();
+				for ( int k = start[ j ]; k < start[ j + 1 ]; k++ )
+				{
+					final int o = neighbors[ k ];
+					if ( !selected[ o ] )
+					{
+						selected[ o ] = true;
+						stack.push( Integer.valueOf( o ) );
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the marked spots and the time-oriented edges between two marked
+	 * spots to the specified collections.
+	 */
+	private void collect( final boolean[] selected, final Collection< Spot > spotsOut, final Collection< DefaultWeightedEdge > edgesOut )
+	{
+		for ( int i = 0; i < spots.length; i++ )
+		{
+			if ( !selected[ i ] )
+				continue;
+			spotsOut.add( spots[ i ] );
+			for ( int k = predStart[ i ]; k < predStart[ i + 1 ]; k++ )
+				if ( selected[ preds[ k ] ] )
+					edgesOut.add( predEdges[ k ] );
+		}
+	}
+}
@@ -22,7 +22,6 @@
 package fiji.plugin.trackmate.gui.components;
 
 import static fiji.plugin.trackmate.features.FeatureUtils.collectFeatureKeys;
-import static fiji.plugin.trackmate.features.FeatureUtils.collectFeatureValues;
 import static fiji.plugin.trackmate.features.FeatureUtils.nObjects;
 import static fiji.plugin.trackmate.gui.Fonts.BIG_FONT;
 import static fiji.plugin.trackmate.gui.Fonts.SMALL_FONT;
@@ -59,6 +58,7 @@ import javax.swing.event.ChangeListener;
 import fiji.plugin.trackmate.Logger;
 import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Settings;
+import fiji.plugin.trackmate.features.FeatureColumn;
 import fiji.plugin.trackmate.features.FeatureFilter;
 import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings.TrackMateObject;
 import fiji.plugin.trackmate.util.OnRequestUpdater;
@@ -283,7 +283,7 @@ public class FilterGuiPanel extends JPanel implements ChangeListener
 	public void addFilterPanel( final FeatureFilter filter )
 	{
 		final Map< String, String > featureNames = collectFeatureKeys( target, model, settings );
-		final Function< String, double[] > valueCollector = ( featureKey ) -> collectFeatureValues( featureKey, target, model, settings, false );
+		final Function< String, FeatureColumn > valueCollector = ( featureKey ) -> model.getFeatureColumns().get( target, featureKey, false );
 		final FilterPanel tp = new FilterPanel( featureNames, valueCollector, filter );
 
 		tp.addChangeListener( this );
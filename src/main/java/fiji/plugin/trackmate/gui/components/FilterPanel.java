@@ -68,8 +68,8 @@ import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.StandardXYBarPainter;
 import org.jfree.chart.renderer.xy.XYBarRenderer;
 
+import fiji.plugin.trackmate.features.FeatureColumn;
 import fiji.plugin.trackmate.features.FeatureFilter;
-import fiji.plugin.trackmate.util.TMUtils;
 import fiji.util.NumberParser;
 
 /**
@@ -100,7 +100,7 @@ public class FilterPanel extends javax.swing.JPanel
 
 	private double threshold;
 
-	private final Function< String, double[] > valueCollector;
+	private final Function< String, FeatureColumn > valueCollector;
 
 	private final XYTextSimpleAnnotation annotation;
 
@@ -119,7 +119,7 @@ public class FilterPanel extends javax.swing.JPanel
 
 	public FilterPanel(
 			final Map< String, String > keyNames,
-			final Function< String, double[] > valueCollector,
+			final Function< String, FeatureColumn > valueCollector,
 			final FeatureFilter filter )
 	{
 		this.valueCollector = valueCollector;
@@ -330,10 +330,10 @@ public class FilterPanel extends javax.swing.JPanel
 	{
 		final double old = threshold;
 		final String key = ( String ) cmbboxFeatureKeys.getSelectedItem();
-		final double[] values = valueCollector.apply( key );
+		final FeatureColumn values = valueCollector.apply( key );
 
 		final LogHistogramDataset dataset;
-		if ( null == values || 0 == values.length )
+		if ( null == values || values.isEmpty() )
 		{
 			dataset = new LogHistogramDataset();
 			annotation.setLocation( 0.5f, 0.5f );
@@ -341,10 +341,7 @@ public class FilterPanel extends javax.swing.JPanel
 		}
 		else
 		{
-			final int nBins = TMUtils.getNBins( values, 8, 100 );
-			dataset = new LogHistogramDataset();
-			if ( nBins > 1 )
-				dataset.addSeries( DATA_SERIES_NAME, values, nBins );
+			dataset = createDataset( values );
 		}
 		plot.setDataset( dataset );
 		threshold = old;
@@ -365,10 +362,10 @@ public class FilterPanel extends javax.swing.JPanel
 	private void comboBoxSelectionChanged()
 	{
 		final String key = ( String ) cmbboxFeatureKeys.getSelectedItem();
-		final double[] values = valueCollector.apply( key );
+		final FeatureColumn values = valueCollector.apply( key );
 
 		final LogHistogramDataset dataset;
-		if ( null == values || 0 == values.length )
+		if ( null == values || values.isEmpty() )
 		{
 			dataset = new LogHistogramDataset();
 			threshold = Double.NaN;
@@ -378,11 +375,7 @@ public class FilterPanel extends javax.swing.JPanel
 		}
 		else
 		{
-			final int nBins = TMUtils.getNBins( values, 8, 100 );
-			dataset = new LogHistogramDataset();
-
-			if ( nBins > 1 )
-				dataset.addSeries( DATA_SERIES_NAME, values, nBins );
+			dataset = createDataset( values );
 		}
 		plot.setDataset( dataset );
 		resetAxes();
@@ -392,14 +385,26 @@ public class FilterPanel extends javax.swing.JPanel
 	private void autoThreshold()
 	{
 		final String key = ( String ) cmbboxFeatureKeys.getSelectedItem();
-		final double[] values = valueCollector.apply( key );
-		if ( null != values && values.length > 0 )
+		final FeatureColumn values = valueCollector.apply( key );
+		if ( null != values && !values.isEmpty() )
 		{
-			threshold = TMUtils.otsuThreshold( values );
+			threshold = values.otsuThreshold();
 			redrawThresholdMarker();
 		}
 	}
 
+	/**
+	 * Builds the histogram dataset from the cached histogram of the column.
+	 */
+	private static LogHistogramDataset createDataset( final FeatureColumn values )
+	{
+		final LogHistogramDataset dataset = new LogHistogramDataset();
+		final int nBins = values.getNBins( 8, 100 );
+		if ( nBins > 1 )
+			dataset.addSeries( DATA_SERIES_NAME, values.histogram( nBins ), values.min(), values.max() );
+		return dataset;
+	}
+
 	private double getXFromChartEvent( final MouseEvent mouseEvent, final ChartPanel chartPanel )
 	{
 		final Rectangle2D plotArea = chartPanel.getScreenDataArea();
@@ -409,7 +414,7 @@ public class FilterPanel extends javax.swing.JPanel
 	private void redrawThresholdMarker()
 	{
 		final String key = ( String ) cmbboxFeatureKeys.getSelectedItem();
-		final double[] values = valueCollector.apply( key );
+		final FeatureColumn values = valueCollector.apply( key );
 		if ( null == values )
 			return;
 
@@ -36,6 +36,7 @@ import javax.swing.JPanel;
 import javax.swing.SpringLayout;
 
 import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.features.FeatureColumn;
 import fiji.plugin.trackmate.features.FeatureFilter;
 import fiji.plugin.trackmate.util.OnRequestUpdater;
 
@@ -50,13 +51,13 @@ public class InitFilterPanel extends JPanel
 
 	private final OnRequestUpdater updater;
 
-	private final Function< String, double[] > valueCollector;
+	private final Function< String, FeatureColumn > valueCollector;
 
 	private final FilterPanel filterPanel;
 
 	private final JLabel lblSelectedSpots;
 
-	private double[] values;
+	private FeatureColumn values;
 
 
 	/**
@@ -65,7 +66,7 @@ public class InitFilterPanel extends JPanel
 	 * @param filter
 	 * @param valueCollector
 	 */
-	public InitFilterPanel( final FeatureFilter filter, final Function< String, double[] > valueCollector )
+	public InitFilterPanel( final FeatureFilter filter, final Function< String, FeatureColumn > valueCollector )
 	{
 		this.valueCollector = valueCollector;
 		this.updater = new OnRequestUpdater( () -> thresholdChanged() );
@@ -155,20 +156,10 @@ public class InitFilterPanel extends JPanel
 
 		if ( null == values )
 			return;
-		final int nspots = values.length;
-		int nselected = 0;
-		if ( isAbove )
-		{
-			for ( final double val : values )
-				if ( val > threshold )
-					nselected++;
-		}
-		else
-		{
-			for ( final double val : values )
-				if ( val < threshold )
-					nselected++;
-		}
+		final int nspots = values.size();
+		final int nselected = isAbove
+				? values.countAbove( threshold )
+				: values.countBelow( threshold );
 		lblSelectedSpots.setText( String.format( SELECTED_SPOT_STRING, nselected, nspots ) );
 	}
 }
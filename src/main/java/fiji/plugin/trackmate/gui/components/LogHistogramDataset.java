@@ -21,22 +21,138 @@
  */
 package fiji.plugin.trackmate.gui.components;
 
-import org.jfree.data.statistics.HistogramDataset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jfree.data.xy.AbstractIntervalXYDataset;
 
 /**
- * A {@link HistogramDataset} that returns the log of the count in each bin (plus one),
+ * A histogram dataset that returns the log of the count in each bin (plus one),
  * so as to have a logarithmic plot.
+ * <p>
+ * The bin counts can be given directly, so that a histogram computed once, for
+ * instance by a {@link fiji.plugin.trackmate.features.FeatureColumn}, is not
+ * binned again each time it is displayed.
+ * 
  * @author Jean-Yves Tinevez &lt;jeanyves.tinevez@gmail.com&gt; Dec 28, 2010
  *
  */
-public class LogHistogramDataset extends HistogramDataset {
+public class LogHistogramDataset extends AbstractIntervalXYDataset {
 	
 	private static final long serialVersionUID = 6012084169414194555L;
 
+	private final List<Series> series = new ArrayList<>();
+
+	/**
+	 * Adds a series made of the specified bin counts. The bins have equal
+	 * width and span from <code>min</code> to <code>max</code>.
+	 * 
+	 * @param key
+	 *            the series key.
+	 * @param counts
+	 *            the number of values in each bin.
+	 * @param min
+	 *            the lower bound of the first bin.
+	 * @param max
+	 *            the upper bound of the last bin.
+	 */
+	public void addSeries(final Comparable<?> key, final int[] counts, final double min, final double max) {
+		series.add(new Series(key, counts.clone(), min, max));
+		fireDatasetChanged();
+	}
+
+	/**
+	 * Adds a series made of the histogram of the specified values, over bins
+	 * of equal width spanning from the min to the max value.
+	 * 
+	 * @param key
+	 *            the series key.
+	 * @param values
+	 *            the values.
+	 * @param bins
+	 *            the number of bins.
+	 */
+	public void addSeries(final Comparable<?> key, final double[] values, final int bins) {
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		for (final double val : values) {
+			min = Math.min(min, val);
+			max = Math.max(max, val);
+		}
+		final int[] counts = new int[bins];
+		final double binWidth = (max - min) / bins;
+		for (final double val : values) {
+			final int index = binWidth > 0 ? (int) ((val - min) / binWidth) : 0;
+			counts[Math.min(index, bins - 1)]++;
+		}
+		series.add(new Series(key, counts, min, max));
+		fireDatasetChanged();
+	}
+
+	@Override
+	public int getSeriesCount() {
+		return series.size();
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public Comparable getSeriesKey(final int s) {
+		return series.get(s).key;
+	}
+
+	@Override
+	public int getItemCount(final int s) {
+		return series.get(s).counts.length;
+	}
+
+	@Override
+	public Number getX(final int s, final int item) {
+		final Series ser = series.get(s);
+		return ser.min + (item + 0.5) * ser.binWidth;
+	}
+
 	@Override
-	public Number getY(int series, int item) {
-		Number val = super.getY(series, item);
-		return Math.log(1+val.doubleValue());
+	public Number getY(final int s, final int item) {
+		return Math.log(1 + series.get(s).counts[item]);
 	}
 
+	@Override
+	public Number getStartX(final int s, final int item) {
+		final Series ser = series.get(s);
+		return ser.min + item * ser.binWidth;
+	}
+
+	@Override
+	public Number getEndX(final int s, final int item) {
+		final Series ser = series.get(s);
+		return ser.min + (item + 1) * ser.binWidth;
+	}
+
+	@Override
+	public Number getStartY(final int s, final int item) {
+		return getY(s, item);
+	}
+
+	@Override
+	public Number getEndY(final int s, final int item) {
+		return getY(s, item);
+	}
+
+	private static final class Series {
+
+		private final Comparable<?> key;
+
+		private final int[] counts;
+
+		private final double min;
+
+		private final double binWidth;
+
+		private Series(final Comparable<?> key, final int[] counts, final double min, final double max) {
+			this.key = key;
+			this.counts = counts;
+			this.min = min;
+			this.binWidth = (max - min) / counts.length;
+		}
+	}
 }
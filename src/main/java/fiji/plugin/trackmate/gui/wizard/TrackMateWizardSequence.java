@@ -22,6 +22,7 @@
 package fiji.plugin.trackmate.gui.wizard;
 
 import static fiji.plugin.trackmate.gui.Icons.SPOT_TABLE_ICON;
+import static fiji.plugin.trackmate.gui.Icons.TRACK_SCHEME_ICON;
 import static fiji.plugin.trackmate.gui.Icons.TRACK_SCHEME_ICON_16x16;
 import static fiji.plugin.trackmate.gui.Icons.TRACK_TABLES_ICON;
 
@@ -32,6 +33,7 @@ import java.util.List;
 import java.util.Map;
 
 import javax.swing.AbstractAction;
+import javax.swing.JOptionPane;
 
 import fiji.plugin.trackmate.Logger;
 import fiji.plugin.trackmate.Model;
@@ -71,6 +73,7 @@ import fiji.plugin.trackmate.tracking.ManualTrackerFactory;
 import fiji.plugin.trackmate.tracking.SpotTrackerFactory;
 import fiji.plugin.trackmate.visualization.trackscheme.SpotImageUpdater;
 import fiji.plugin.trackmate.visualization.trackscheme.TrackScheme;
+import fiji.plugin.trackmate.visualization.trackscheme.VirtualTrackScheme;
 
 public class TrackMateWizardSequence implements WizardSequence
 {
@@ -441,6 +444,31 @@ public class TrackMateWizardSequence implements WizardSequence
 				@Override
 				public void run()
 				{
+					final Model model = trackmate.getModel();
+					final int nSpots = model.getSpots().getNSpots( true );
+					if ( nSpots > VirtualTrackScheme.SPOT_NUMBER_THRESHOLD )
+					{
+						final int userInput = JOptionPane.showConfirmDialog(
+								null,
+								"<html>The model has " + nSpots + " visible spots. The full TrackScheme<br>"
+										+ "may need a lot of time and memory to display them.<p>"
+										+ "Open the TrackScheme for large models instead? It shows<br>"
+										+ "the whole model, but without spot thumbnails, and only<br>"
+										+ "offers selection, deletion and linking.</html>",
+								"Large model",
+								JOptionPane.YES_NO_CANCEL_OPTION,
+								JOptionPane.QUESTION_MESSAGE,
+								TRACK_SCHEME_ICON );
+						if ( userInput == JOptionPane.CANCEL_OPTION || userInput == JOptionPane.CLOSED_OPTION )
+							return;
+
+						if ( userInput == JOptionPane.YES_OPTION )
+						{
+							model.getLogger().log( "Opening the TrackScheme for large models on " + nSpots + " spots.\n" );
+							new VirtualTrackScheme( model, selectionModel, displaySettings ).render();
+							return;
+						}
+					}
 					final TrackScheme trackscheme = new TrackScheme( trackmate.getModel(), selectionModel, displaySettings );
 					final SpotImageUpdater thumbnailUpdater = new SpotImageUpdater( trackmate.getSettings() );
 					trackscheme.setSpotImageUpdater( thumbnailUpdater );
@@ -24,6 +24,7 @@ package fiji.plugin.trackmate.gui.wizard.descriptors;
 import org.scijava.Cancelable;
 
 import fiji.plugin.trackmate.TrackMate;
+import fiji.plugin.trackmate.detection.DetectionCache;
 import fiji.plugin.trackmate.gui.components.LogPanel;
 import fiji.plugin.trackmate.gui.wizard.WizardPanelDescriptor;
 
@@ -46,6 +47,8 @@ public class ExecuteDetectionDescriptor extends WizardPanelDescriptor
 	{
 		return () -> {
 			final long start = System.currentTimeMillis();
+			// Shares the local maxima found by the previews.
+			trackmate.setDetectionCache( DetectionCache.getShared() );
 			trackmate.execDetection();
 			final long end = System.currentTimeMillis();
 			trackmate.getModel().getLogger().log( String.format( "Detection done in %.1f s.\n", ( end - start ) / 1e3f ) );
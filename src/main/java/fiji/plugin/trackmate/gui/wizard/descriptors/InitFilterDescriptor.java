@@ -26,8 +26,8 @@ import java.util.function.Function;
 import fiji.plugin.trackmate.Logger;
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.TrackMate;
+import fiji.plugin.trackmate.features.FeatureColumn;
 import fiji.plugin.trackmate.features.FeatureFilter;
-import fiji.plugin.trackmate.features.FeatureUtils;
 import fiji.plugin.trackmate.gui.components.InitFilterPanel;
 import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings.TrackMateObject;
 import fiji.plugin.trackmate.gui.wizard.WizardPanelDescriptor;
@@ -43,8 +43,8 @@ public class InitFilterDescriptor extends WizardPanelDescriptor
 	{
 		super( KEY );
 		this.trackmate = trackmate;
-		final Function< String, double[] > valuesCollector = key -> FeatureUtils.collectFeatureValues(
-				Spot.QUALITY, TrackMateObject.SPOTS, trackmate.getModel(), trackmate.getSettings(), false );
+		final Function< String, FeatureColumn > valuesCollector = key -> trackmate.getModel().getFeatureColumns().get(
+				TrackMateObject.SPOTS, Spot.QUALITY, false );
 		this.targetPanel = new InitFilterPanel( filter, valuesCollector );
 	}
 
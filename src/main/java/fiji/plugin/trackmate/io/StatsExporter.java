@@ -0,0 +1,904 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import net.imglib2.algorithm.Algorithm;
+import net.imglib2.algorithm.Benchmark;
+import net.imglib2.algorithm.MultiThreaded;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import com.opencsv.CSVWriter;
+
+import fiji.plugin.trackmate.Dimension;
+import fiji.plugin.trackmate.FeatureModel;
+import fiji.plugin.trackmate.Logger;
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.TrackModel;
+import fiji.plugin.trackmate.util.TMUtils;
+import fiji.plugin.trackmate.util.TrackMateExecutor;
+import fiji.plugin.trackmate.visualization.table.BranchTableView;
+import fiji.plugin.trackmate.visualization.table.BranchTableView.Branch;
+
+/**
+ * Exports the spot, edge, track and branch statistics of a model to files,
+ * without building the table views and without requiring a GUI.
+ * <p>
+ * One file is written per table in the target folder. Spots are written
+ * ordered by frame, then by ID. Edges and branches are written ordered by
+ * track ID, edges by source frame within a track. Tracks are written ordered
+ * by ID.
+ * <p>
+ * Rows are not gathered in memory before writing: they are encoded by chunks,
+ * several chunks concurrently, and the chunks are written in order as they
+ * are ready. Only the branch decompositions of the exported tracks are
+ * computed beforehand.
+ * <p>
+ * Two formats are supported:
+ * <ul>
+ * <li>{@link Format#CSV}: the same layout as the CSV export of the table
+ * views, with 4 header lines (feature keys, names, short names and units)
+ * followed by one line per object.
+ * <li>{@link Format#BINARY}: a compact columnar format, that can be read back
+ * with {@link #readBinary(File)}. The file starts with a header declaring the
+ * columns, followed by row groups. In each row group, the labels are stored
+ * first, then the values column by column: 32-bit integers for integer
+ * features, 64-bit floats for the others. Missing values are stored as
+ * {@link Integer#MIN_VALUE} and {@link Double#NaN} respectively.
+ * </ul>
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+public class StatsExporter implements Algorithm, Benchmark, MultiThreaded
+{
+
+	public enum Format
+	{
+		CSV( ".csv" ),
+		BINARY( ".tmstats" );
+
+		private final String extension;
+
+		private Format( final String extension )
+		{
+			this.extension = extension;
+		}
+
+		public String getExtension()
+		{
+			return extension;
+		}
+	}
+
+	public static final String SPOTS = "spots";
+
+	public static final String EDGES = "edges";
+
+	public static final String TRACKS = "tracks";
+
+	public static final String BRANCHES = "branches";
+
+	public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+	private static final int MAGIC = 0x544D5354; // "TMST"
+
+	private static final int VERSION = 1;
+
+	private static final String BASE_ERROR_MSG = "[StatsExporter] ";
+
+	private static final String ID = "ID";
+
+	private static final String TRACK_ID = "TRACK_ID";
+
+	private final Model model;
+
+	private final File folder;
+
+	private final Format format;
+
+	private final Logger logger;
+
+	private boolean visibleOnly = true;
+
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+	private int numThreads;
+
+	private String errorMessage;
+
+	private long processingTime;
+
+	public StatsExporter( final Model model, final File folder, final Format format, final Logger logger )
+	{
+		this.model = model;
+		this.folder = folder;
+		this.format = format;
+		this.logger = logger;
+		setNumThreads();
+	}
+
+	public StatsExporter( final Model model, final File folder, final Format format )
+	{
+		this( model, folder, format, Logger.VOID_LOGGER );
+	}
+
+	/**
+	 * Sets whether only visible data is exported: the visible spots, and the
+	 * edges, tracks and branches of visible tracks. This is the default.
+	 *
+	 * @param visibleOnly
+	 *            whether to export only visible data.
+	 */
+	public void setVisibleOnly( final boolean visibleOnly )
+	{
+		this.visibleOnly = visibleOnly;
+	}
+
+	/**
+	 * Sets the number of rows encoded together.
+	 *
+	 * @param chunkSize
+	 *            the number of rows per chunk.
+	 */
+	public void setChunkSize( final int chunkSize )
+	{
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Returns the file the specified table is written to.
+	 *
+	 * @param table
+	 *            the table, one of {@link #SPOTS}, {@link #EDGES},
+	 *            {@link #TRACKS} or {@link #BRANCHES}.
+	 * @return the file.
+	 */
+	public File getFile( final String table )
+	{
+		return new File( folder, table + format.getExtension() );
+	}
+
+	@Override
+	public boolean checkInput()
+	{
+		if ( null == model )
+		{
+			errorMessage = BASE_ERROR_MSG + "Model is null.";
+			return false;
+		}
+		if ( null == folder )
+		{
+			errorMessage = BASE_ERROR_MSG + "Target folder is null.";
+			return false;
+		}
+		if ( folder.exists() && !folder.isDirectory() )
+		{
+			errorMessage = BASE_ERROR_MSG + "Target " + folder + " is not a folder.";
+			return false;
+		}
+		if ( chunkSize < 1 )
+		{
+			errorMessage = BASE_ERROR_MSG + "Chunk size must be at least 1, was " + chunkSize + ".";
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean process()
+	{
+		final long start = System.currentTimeMillis();
+		if ( !folder.exists() && !folder.mkdirs() )
+		{
+			errorMessage = BASE_ERROR_MSG + "Could not create folder " + folder + ".";
+			return false;
+		}
+
+		final TrackModel tm = model.getTrackModel();
+		final List< Integer > trackIDs = new ArrayList<>( tm.unsortedTrackIDs( visibleOnly ) );
+		Collections.sort( trackIDs );
+
+		try
+		{
+			logger.log( "Exporting spot statistics.\n" );
+			write( createSpotTable() );
+			logger.setProgress( 0.25 );
+
+			logger.log( "Exporting edge statistics.\n" );
+			write( createEdgeTable( trackIDs ) );
+			logger.setProgress( 0.5 );
+
+			logger.log( "Exporting track statistics.\n" );
+			write( createTrackTable( trackIDs ) );
+			logger.setProgress( 0.75 );
+
+			logger.log( "Exporting branch statistics.\n" );
+			write( createBranchTable( trackIDs ) );
+			logger.setProgress( 1. );
+		}
+		catch ( final IOException e )
+		{
+			errorMessage = BASE_ERROR_MSG + "Input/Output error:\n" + e.getMessage();
+			return false;
+		}
+		catch ( InterruptedException | ExecutionException e )
+		{
+			errorMessage = BASE_ERROR_MSG + "Problem encoding statistics:\n" + e.getMessage();
+			return false;
+		}
+
+		processingTime = System.currentTimeMillis() - start;
+		return true;
+	}
+
+	/**
+	 * Exports the statistics of the visible data of the specified model to
+	 * the specified folder.
+	 *
+	 * @param model
+	 *            the model to export.
+	 * @param folder
+	 *            the folder to write the files to.
+	 * @param format
+	 *            the file format.
+	 * @throws IOException
+	 *             if the export fails.
+	 */
+	public static void export( final Model model, final File folder, final Format format ) throws IOException
+	{
+		final StatsExporter exporter = new StatsExporter( model, folder, format );
+		if ( !exporter.checkInput() || !exporter.process() )
+			throw new IOException( exporter.getErrorMessage() );
+	}
+
+	/*
+	 * TABLES.
+	 */
+
+	private Table< Spot > createSpotTable()
+	{
+		final FeatureModel fm = model.getFeatureModel();
+		final TrackModel tm = model.getTrackModel();
+		final SpotCollection spots = model.getSpots();
+		final Table< Spot > table = new Table<>(
+				SPOTS,
+				fm.getSpotFeatures(),
+				fm.getSpotFeatureNames(),
+				fm.getSpotFeatureShortNames(),
+				fm.getSpotFeatureDimensions(),
+				fm.getSpotFeatureIsInt(),
+				Spot::getName,
+				( spot, feature ) -> spot.getFeature( feature ) );
+		table.addColumn( TRACK_ID, "Track ID", "Track ID", ( spot ) -> {
+			final Integer id = tm.trackIDOf( spot );
+			return ( null == id ) ? null : Double.valueOf( id.doubleValue() );
+		} );
+		table.addColumn( ID, "Spot ID", "Spot ID", ( spot ) -> Double.valueOf( spot.ID() ) );
+
+		table.keys = new ArrayList<>( spots.keySet() );
+		table.group = ( frame ) -> {
+			final List< Spot > list = new ArrayList<>( spots.getNSpots( frame, visibleOnly ) );
+			for ( final Spot spot : spots.iterable( frame, visibleOnly ) )
+				list.add( spot );
+			list.sort( Comparator.comparingInt( Spot::ID ) );
+			return list;
+		};
+		return table;
+	}
+
+	private Table< DefaultWeightedEdge > createEdgeTable( final List< Integer > trackIDs )
+	{
+		final FeatureModel fm = model.getFeatureModel();
+		final TrackModel tm = model.getTrackModel();
+		final Table< DefaultWeightedEdge > table = new Table<>(
+				EDGES,
+				fm.getEdgeFeatures(),
+				fm.getEdgeFeatureNames(),
+				fm.getEdgeFeatureShortNames(),
+				fm.getEdgeFeatureDimensions(),
+				fm.getEdgeFeatureIsInt(),
+				( edge ) -> String.format( "%s → %s", tm.getEdgeSource( edge ).getName(), tm.getEdgeTarget( edge ).getName() ),
+				( edge, feature ) -> fm.getEdgeFeature( edge, feature ) );
+		table.addColumn( TRACK_ID, "Track ID", "Track ID", ( edge ) -> {
+			final Integer id = tm.trackIDOf( edge );
+			return ( null == id ) ? null : Double.valueOf( id.doubleValue() );
+		} );
+
+		table.keys = trackIDs;
+		table.group = ( trackID ) -> {
+			final List< DefaultWeightedEdge > list = new ArrayList<>( tm.trackEdges( trackID ) );
+			list.sort( Comparator
+					.comparingInt( ( final DefaultWeightedEdge edge ) -> tm.getEdgeSource( edge ).getFeature( Spot.FRAME ).intValue() )
+					.thenComparingInt( edge -> tm.getEdgeSource( edge ).ID() )
+					.thenComparingInt( edge -> tm.getEdgeTarget( edge ).ID() ) );
+			return list;
+		};
+		return table;
+	}
+
+	private Table< Integer > createTrackTable( final List< Integer > trackIDs )
+	{
+		final FeatureModel fm = model.getFeatureModel();
+		final TrackModel tm = model.getTrackModel();
+		final Table< Integer > table = new Table<>(
+				TRACKS,
+				fm.getTrackFeatures(),
+				fm.getTrackFeatureNames(),
+				fm.getTrackFeatureShortNames(),
+				fm.getTrackFeatureDimensions(),
+				fm.getTrackFeatureIsInt(),
+				tm::name,
+				( trackID, feature ) -> fm.getTrackFeature( trackID, feature ) );
+		table.addColumn( TRACK_ID, "Track ID", "Track ID", ( trackID ) -> Double.valueOf( trackID.doubleValue() ) );
+
+		table.keys = trackIDs;
+		table.group = Collections::singletonList;
+		return table;
+	}
+
+	private Table< Branch > createBranchTable( final List< Integer > trackIDs )
+	{
+		final Map< Integer, List< Branch > > branches = BranchTableView.createBranches( model, trackIDs );
+		final Table< Branch > table = new Table<>(
+				BRANCHES,
+				BranchTableView.getBranchFeatures(),
+				BranchTableView.getBranchFeatureNames(),
+				BranchTableView.getBranchFeatureShortNames(),
+				BranchTableView.getBranchFeatureDimensions(),
+				BranchTableView.getBranchFeatureIsInt(),
+				Branch::toString,
+				Branch::getFeature );
+
+		table.keys = trackIDs;
+		table.group = ( trackID ) -> branches.getOrDefault( trackID, Collections.emptyList() );
+		return table;
+	}
+
+	/*
+	 * WRITING.
+	 */
+
+	private < O > void write( final Table< O > table ) throws IOException, InterruptedException, ExecutionException
+	{
+		final Encoder< O > encoder = ( format == Format.CSV ) ? new CsvEncoder<>( table ) : new BinaryEncoder<>( table );
+		final int window = Math.max( 1, 2 * numThreads );
+		try (final OutputStream os = new BufferedOutputStream( new FileOutputStream( getFile( table.name ) ), 1 << 16 ))
+		{
+			os.write( encoder.header() );
+
+			final List< Callable< byte[] > > tasks = new ArrayList<>( window );
+			List< O > chunk = new ArrayList<>( chunkSize );
+			for ( final Integer key : table.keys )
+			{
+				for ( final O o : table.group.apply( key ) )
+				{
+					chunk.add( o );
+					if ( chunk.size() < chunkSize )
+						continue;
+
+					final List< O > toEncode = chunk;
+					tasks.add( () -> encoder.encode( toEncode ) );
+					chunk = new ArrayList<>( chunkSize );
+					if ( tasks.size() == window )
+						flush( tasks, os );
+				}
+			}
+			if ( !chunk.isEmpty() )
+			{
+				final List< O > toEncode = chunk;
+				tasks.add( () -> encoder.encode( toEncode ) );
+			}
+			flush( tasks, os );
+
+			os.write( encoder.footer() );
+		}
+	}
+
+	private void flush( final List< Callable< byte[] > > tasks, final OutputStream os ) throws IOException, InterruptedException, ExecutionException
+	{
+		if ( tasks.isEmpty() )
+			return;
+		for ( final byte[] bytes : TrackMateExecutor.current().invokeAll( "Statistics export", tasks, numThreads ) )
+			os.write( bytes );
+		tasks.clear();
+	}
+
+	/**
+	 * The description of a table to write.
+	 *
+	 * @param <O>
+	 *            the type of objects in the table.
+	 */
+	private final class Table< O >
+	{
+
+		private final String name;
+
+		private final List< String > features;
+
+		private final Map< String, String > names;
+
+		private final Map< String, String > shortNames;
+
+		private final Map< String, String > units;
+
+		private final Map< String, Boolean > isInts;
+
+		private final Function< O, String > labelFun;
+
+		private final Map< String, Function< O, Double > > extraColumns = new HashMap<>();
+
+		private final BiFunction< O, String, Double > featureFun;
+
+		/**
+		 * The keys of the groups of rows, in writing order.
+		 */
+		private List< Integer > keys;
+
+		/**
+		 * Returns the rows of a group, in writing order.
+		 */
+		private Function< Integer, List< O > > group;
+
+		private Table(
+				final String name,
+				final Collection< String > features,
+				final Map< String, String > names,
+				final Map< String, String > shortNames,
+				final Map< String, Dimension > dimensions,
+				final Map< String, Boolean > isInts,
+				final Function< O, String > labelFun,
+				final BiFunction< O, String, Double > featureFun )
+		{
+			this.name = name;
+			this.features = new ArrayList<>( features );
+			this.names = new HashMap<>( names );
+			this.shortNames = new HashMap<>( shortNames );
+			this.isInts = new HashMap<>( isInts );
+			this.labelFun = labelFun;
+			this.featureFun = featureFun;
+			this.units = new HashMap<>();
+			for ( final String feature : features )
+			{
+				final Dimension dimension = dimensions.get( feature );
+				units.put( feature, ( null == dimension ) ? "" : TMUtils.getUnitsFor( dimension, model.getSpaceUnits(), model.getTimeUnits() ) );
+			}
+		}
+
+		/**
+		 * Adds an integer column in first position. If a feature with this
+		 * key is already declared, it is moved to first position and its
+		 * values are taken from the specified function, as the analyzer
+		 * computing it may not have run.
+		 */
+		private void addColumn( final String feature, final String name, final String shortName, final Function< O, Double > fun )
+		{
+			if ( !features.remove( feature ) )
+			{
+				names.put( feature, name );
+				shortNames.put( feature, shortName );
+				units.put( feature, "" );
+				isInts.put( feature, Boolean.TRUE );
+			}
+			features.add( 0, feature );
+			extraColumns.put( feature, fun );
+		}
+
+		private Double value( final O o, final String feature )
+		{
+			final Function< O, Double > fun = extraColumns.get( feature );
+			if ( null != fun )
+				return fun.apply( o );
+			return featureFun.apply( o, feature );
+		}
+
+		private boolean isInt( final String feature )
+		{
+			final Boolean isInt = isInts.get( feature );
+			return null != isInt && isInt.booleanValue();
+		}
+	}
+
+	private static interface Encoder< O >
+	{
+		public byte[] header() throws IOException;
+
+		public byte[] encode( List< O > chunk ) throws IOException;
+
+		public byte[] footer() throws IOException;
+	}
+
+	private static final class CsvEncoder< O > implements Encoder< O >
+	{
+
+		private final StatsExporter.Table< O > table;
+
+		private CsvEncoder( final StatsExporter.Table< O > table )
+		{
+			this.table = table;
+		}
+
+		private static CSVWriter writer( final StringWriter sw )
+		{
+			return new CSVWriter( sw,
+					CSVWriter.DEFAULT_SEPARATOR,
+					CSVWriter.DEFAULT_QUOTE_CHARACTER,
+					CSVWriter.DEFAULT_ESCAPE_CHARACTER,
+					CSVWriter.DEFAULT_LINE_END );
+		}
+
+		@Override
+		public byte[] header() throws IOException
+		{
+			final List< String > features = table.features;
+			final StringWriter sw = new StringWriter();
+			try (final CSVWriter writer = writer( sw ))
+			{
+				final String[] content = new String[ features.size() + 1 ];
+
+				content[ 0 ] = "NAME";
+				for ( int i = 1; i < content.length; i++ )
+					content[ i ] = features.get( i - 1 );
+				writer.writeNext( content );
+
+				content[ 0 ] = "";
+				for ( int i = 1; i < content.length; i++ )
+					content[ i ] = table.names.get( features.get( i - 1 ) );
+				writer.writeNext( content );
+
+				for ( int i = 1; i < content.length; i++ )
+					content[ i ] = table.shortNames.get( features.get( i - 1 ) );
+				writer.writeNext( content );
+
+				for ( int i = 1; i < content.length; i++ )
+				{
+					final String units = table.units.get( features.get( i - 1 ) );
+					content[ i ] = ( units == null || units.isEmpty() ) ? "" : "(" + units + ")";
+				}
+				writer.writeNext( content );
+			}
+			return sw.toString().getBytes( StandardCharsets.UTF_8 );
+		}
+
+		@Override
+		public byte[] encode( final List< O > chunk ) throws IOException
+		{
+			final List< String > features = table.features;
+			final StringWriter sw = new StringWriter( chunk.size() * ( features.size() + 1 ) * 16 );
+			try (final CSVWriter writer = writer( sw ))
+			{
+				final String[] content = new String[ features.size() + 1 ];
+				for ( final O o : chunk )
+				{
+					content[ 0 ] = table.labelFun.apply( o );
+					for ( int i = 1; i < content.length; i++ )
+					{
+						final String feature = features.get( i - 1 );
+						final Double val = table.value( o, feature );
+						if ( null == val )
+							content[ i ] = "";
+						else if ( table.isInt( feature ) )
+							content[ i ] = Integer.toString( val.intValue() );
+						else
+							content[ i ] = Double.toString( val.doubleValue() );
+					}
+					writer.writeNext( content );
+				}
+			}
+			return sw.toString().getBytes( StandardCharsets.UTF_8 );
+		}
+
+		@Override
+		public byte[] footer()
+		{
+			return new byte[ 0 ];
+		}
+	}
+
+	private static final class BinaryEncoder< O > implements Encoder< O >
+	{
+
+		private final StatsExporter.Table< O > table;
+
+		private BinaryEncoder( final StatsExporter.Table< O > table )
+		{
+			this.table = table;
+		}
+
+		@Override
+		public byte[] header() throws IOException
+		{
+			final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			final DataOutputStream dos = new DataOutputStream( bos );
+			dos.writeInt( MAGIC );
+			dos.writeInt( VERSION );
+			dos.writeInt( table.features.size() );
+			for ( final String feature : table.features )
+			{
+				dos.writeUTF( feature );
+				dos.writeUTF( nonNull( table.names.get( feature ) ) );
+				dos.writeUTF( nonNull( table.shortNames.get( feature ) ) );
+				dos.writeUTF( nonNull( table.units.get( feature ) ) );
+				dos.writeBoolean( table.isInt( feature ) );
+			}
+			dos.flush();
+			return bos.toByteArray();
+		}
+
+		@Override
+		public byte[] encode( final List< O > chunk ) throws IOException
+		{
+			final ByteArrayOutputStream bos = new ByteArrayOutputStream( 4 + chunk.size() * ( 16 + 8 * table.features.size() ) );
+			final DataOutputStream dos = new DataOutputStream( bos );
+			dos.writeInt( chunk.size() );
+			for ( final O o : chunk )
+				dos.writeUTF( nonNull( table.labelFun.apply( o ) ) );
+
+			for ( final String feature : table.features )
+			{
+				if ( table.isInt( feature ) )
+				{
+					for ( final O o : chunk )
+					{
+						final Double val = table.value( o, feature );
+						dos.writeInt( null == val ? Integer.MIN_VALUE : val.intValue() );
+					}
+				}
+				else
+				{
+					for ( final O o : chunk )
+					{
+						final Double val = table.value( o, feature );
+						dos.writeDouble( null == val ? Double.NaN : val.doubleValue() );
+					}
+				}
+			}
+			dos.flush();
+			return bos.toByteArray();
+		}
+
+		@Override
+		public byte[] footer() throws IOException
+		{
+			// Empty row group marks the end of the table.
+			return new byte[] { 0, 0, 0, 0 };
+		}
+
+		private static String nonNull( final String str )
+		{
+			return ( null == str ) ? "" : str;
+		}
+	}
+
+	/*
+	 * READING.
+	 */
+
+	/**
+	 * Reads a table written in the {@link Format#BINARY} format.
+	 *
+	 * @param file
+	 *            the file to read.
+	 * @return a new table.
+	 * @throws IOException
+	 *             if the file cannot be read or is not in the expected
+	 *             format.
+	 */
+	public static StatsTable readBinary( final File file ) throws IOException
+	{
+		try (final DataInputStream dis = new DataInputStream( new BufferedInputStream( new FileInputStream( file ), 1 << 16 ) ))
+		{
+			if ( dis.readInt() != MAGIC )
+				throw new IOException( "File " + file + " is not a TrackMate statistics file." );
+			final int version = dis.readInt();
+			if ( version != VERSION )
+				throw new IOException( "Unsupported TrackMate statistics file version: " + version + "." );
+
+			final int nCols = dis.readInt();
+			final StatsTable table = new StatsTable();
+			final boolean[] isInts = new boolean[ nCols ];
+			for ( int c = 0; c < nCols; c++ )
+			{
+				final String feature = dis.readUTF();
+				table.features.add( feature );
+				table.names.put( feature, dis.readUTF() );
+				table.shortNames.put( feature, dis.readUTF() );
+				table.units.put( feature, dis.readUTF() );
+				isInts[ c ] = dis.readBoolean();
+				table.isInts.put( feature, Boolean.valueOf( isInts[ c ] ) );
+			}
+
+			final List< String > labels = new ArrayList<>();
+			final double[][] columns = new double[ nCols ][ 1024 ];
+			while ( true )
+			{
+				final int nRows;
+				try
+				{
+					nRows = dis.readInt();
+				}
+				catch ( final EOFException e )
+				{
+					throw new IOException( "File " + file + " is truncated." );
+				}
+				if ( nRows == 0 )
+					break;
+
+				final int offset = labels.size();
+				for ( int r = 0; r < nRows; r++ )
+					labels.add( dis.readUTF() );
+
+				for ( int c = 0; c < nCols; c++ )
+				{
+					if ( columns[ c ].length < offset + nRows )
+						columns[ c ] = Arrays.copyOf( columns[ c ], Math.max( offset + nRows, 2 * columns[ c ].length ) );
+					final double[] column = columns[ c ];
+					for ( int r = 0; r < nRows; r++ )
+					{
+						if ( isInts[ c ] )
+						{
+							final int val = dis.readInt();
+							column[ offset + r ] = ( val == Integer.MIN_VALUE ) ? Double.NaN : val;
+						}
+						else
+						{
+							column[ offset + r ] = dis.readDouble();
+						}
+					}
+				}
+			}
+
+			table.labels = labels.toArray( new String[ labels.size() ] );
+			for ( int c = 0; c < nCols; c++ )
+				table.columns.put( table.features.get( c ), Arrays.copyOf( columns[ c ], labels.size() ) );
+			return table;
+		}
+	}
+
+	/**
+	 * A table read from a file in the {@link Format#BINARY} format. Missing
+	 * values are returned as {@link Double#NaN}.
+	 */
+	public static final class StatsTable
+	{
+
+		private final List< String > features = new ArrayList<>();
+
+		private final Map< String, String > names = new HashMap<>();
+
+		private final Map< String, String > shortNames = new HashMap<>();
+
+		private final Map< String, String > units = new HashMap<>();
+
+		private final Map< String, Boolean > isInts = new HashMap<>();
+
+		private final Map< String, double[] > columns = new LinkedHashMap<>();
+
+		private String[] labels = new String[ 0 ];
+
+		private StatsTable()
+		{}
+
+		public int size()
+		{
+			return labels.length;
+		}
+
+		public List< String > getFeatures()
+		{
+			return Collections.unmodifiableList( features );
+		}
+
+		public String getLabel( final int row )
+		{
+			return labels[ row ];
+		}
+
+		public double[] getColumn( final String feature )
+		{
+			return columns.get( feature );
+		}
+
+		public Map< String, String > getFeatureNames()
+		{
+			return Collections.unmodifiableMap( names );
+		}
+
+		public Map< String, String > getFeatureShortNames()
+		{
+			return Collections.unmodifiableMap( shortNames );
+		}
+
+		public Map< String, String > getFeatureUnits()
+		{
+			return Collections.unmodifiableMap( units );
+		}
+
+		public Map< String, Boolean > getIsIntFeature()
+		{
+			return Collections.unmodifiableMap( isInts );
+		}
+	}
+
+	/*
+	 * ALGORITHM METHODS.
+	 */
+
+	@Override
+	public String getErrorMessage()
+	{
+		return errorMessage;
+	}
+
+	@Override
+	public long getProcessingTime()
+	{
+		return processingTime;
+	}
+
+	@Override
+	public void setNumThreads()
+	{
+		this.numThreads = Runtime.getRuntime().availableProcessors();
+	}
+
+	@Override
+	public void setNumThreads( final int numThreads )
+	{
+		this.numThreads = numThreads;
+	}
+
+	@Override
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+}
@@ -21,27 +21,36 @@
  */
 package fiji.plugin.trackmate.io;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import net.imglib2.algorithm.Benchmark;
+import net.imglib2.algorithm.MultiThreaded;
 import net.imglib2.algorithm.OutputAlgorithm;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.util.LinAlgHelpers;
 import net.imglib2.util.Util;
 
-import org.jdom2.Document;
-import org.jdom2.Element;
-import org.jdom2.JDOMException;
-import org.jdom2.input.SAXBuilder;
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.SimpleWeightedGraph;
 
@@ -51,8 +60,9 @@ import fiji.plugin.trackmate.Logger;
 import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.util.TrackMateExecutor;
 
-public class TGMMImporter implements OutputAlgorithm< Model >, Benchmark
+public class TGMMImporter implements OutputAlgorithm< Model >, Benchmark, MultiThreaded
 {
 
 	private static final FilenameFilter xmlFilter = new FilenameFilter()
@@ -98,6 +108,8 @@ public class TGMMImporter implements OutputAlgorithm< Model >, Benchmark
 
 	private long processingTime;
 
+	private int numThreads;
+
 	/*
 	 * CONSTRUCTORS
 	 */
@@ -108,6 +120,7 @@ public class TGMMImporter implements OutputAlgorithm< Model >, Benchmark
 		this.framePattern = framePattern;
 		this.transforms = transforms;
 		this.logger = logger;
+		setNumThreads();
 	}
 
 	public TGMMImporter( final File file, final List< AffineTransform3D > transforms, final Pattern framePattern )
@@ -163,10 +176,6 @@ public class TGMMImporter implements OutputAlgorithm< Model >, Benchmark
 
 		model = new Model();
 		final SpotCollection sc = new SpotCollection();
-		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = new SimpleWeightedGraph< >( DefaultWeightedEdge.class );
-
-		final double[] targetCoordsHolder = new double[ 3 ];
-		final double[] sourceCoordsHolder = new double[ 3 ];
 
 		/*
 		 * Grab all the XML files
@@ -206,93 +215,200 @@ public class TGMMImporter implements OutputAlgorithm< Model >, Benchmark
 			}
 		}
 
+		// Parents are looked for in the previous frame, so sort by frame.
+		final Integer[] order = new Integer[ frames.length ];
+		for ( int i = 0; i < order.length; i++ )
+			order[ i ] = Integer.valueOf( i );
+		Arrays.sort( order, Comparator.comparingInt( i -> frames[ i ] ) );
+
 		/*
-		 * Read XML
+		 * Read XML. Files are parsed concurrently, a window of files at a
+		 * time to bound memory. The links are resolved in frame order as
+		 * windows complete, and the graph is built in one go at the end.
 		 */
 
-		File xmlFile = null;
+		final List< Spot > edgeSources = new ArrayList<>();
+		final List< Spot > edgeTargets = new ArrayList<>();
+		final int window = Math.max( 1, 2 * numThreads );
 		try
 		{
-			final SAXBuilder saxBuilder = new SAXBuilder();
-
 			Map< Integer, Spot > previousSpotID = null;
-			Map< Integer, Spot > currentSpotID;
-
-			for ( int t = 0; t < frames.length; t++ )
+			for ( int from = 0; from < order.length; from += window )
 			{
-				logger.log( "Processing frame " + frames[ t ] + ". " );
-				final AffineTransform3D transform = transforms.get( frames[ t ] );
+				final List< Callable< FrameBuffer > > tasks = new ArrayList<>( window );
+				for ( int t = from; t < Math.min( order.length, from + window ); t++ )
+				{
+					final File xmlFile = xmlFiles[ order[ t ] ];
+					final int frame = frames[ order[ t ] ];
+					final AffineTransform3D transform = transforms.get( frame );
+					tasks.add( () -> readFrame( xmlFile, frame, transform ) );
+				}
+
+				final List< FrameBuffer > buffers = TrackMateExecutor.current().invokeAll( "TGMM import", tasks, numThreads );
+				for ( final FrameBuffer buffer : buffers )
+				{
+					if ( null != buffer.error )
+					{
+						errorMessage = buffer.error;
+						return false;
+					}
+
+					logger.log( "Processing frame " + buffer.frame + ". " );
+					final Collection< Spot > spots = new ArrayList<>( buffer.size );
+					final Map< Integer, Spot > currentSpotID = new HashMap<>( buffer.size );
+					for ( int i = 0; i < buffer.size; i++ )
+					{
+						final Spot spot = buffer.createSpot( i );
+						spots.add( spot );
+						final int id = buffer.ints[ 3 * i ];
+						final int parent = buffer.ints[ 3 * i + 2 ];
+						currentSpotID.put( Integer.valueOf( id ), spot );
+
+						if ( parent >= 0 && previousSpotID != null )
+						{
+							final Spot source = previousSpotID.get( Integer.valueOf( parent ) );
+							if ( null == source )
+							{
+								System.out.println( BASE_ERROR_MSG + "The parent of the current spot (frame " + buffer.frame + ", id = " + id + " could not be found (was expected in frame " + ( buffer.frame - 1 ) + " with id = " + parent + ".\n" );
+								continue;
+							}
+							edgeSources.add( source );
+							edgeTargets.add( spot );
+						}
+					}
+
+					/*
+					 * Finished inspecting a frame. Store it in the spot collection.
+					 */
 
-				xmlFile = xmlFiles[ t ];
-				final Document doc = saxBuilder.build( xmlFile );
-				final Element root = doc.getRootElement();
-				final List< Element > detectionEls = root.getChildren( XML_DETECTION_NAME );
+					sc.put( buffer.frame, spots );
+					previousSpotID = currentSpotID;
+					logger.log( "Found " + spots.size() + " spots.\n" );
+					logger.setProgress( ( double ) sc.keySet().size() / frames.length );
+				}
+			}
+		}
+		catch ( InterruptedException | ExecutionException e )
+		{
+			errorMessage = BASE_ERROR_MSG + "Error while reading TGMM files.\n" + e.getMessage() + "\n";
+			return false;
+		}
+		finally
+		{
+			/*
+			 * Build the graph in bulk.
+			 */
+
+			final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = new SimpleWeightedGraph<>( DefaultWeightedEdge.class );
+			for ( final Spot spot : sc.iterable( false ) )
+				graph.addVertex( spot );
+			for ( int i = 0; i < edgeSources.size(); i++ )
+			{
+				final DefaultWeightedEdge edge = graph.addEdge( edgeSources.get( i ), edgeTargets.get( i ) );
+				if ( null == edge )
+					System.out.println( BASE_ERROR_MSG + "Trouble adding edge between " + edgeSources.get( i ) + " and " + edgeTargets.get( i ) + ". Edge already exists?" );
+			}
 
-				final Collection< Spot > spots = new ArrayList< >( detectionEls.size() );
+			sc.setVisible( true );
+			model.setSpots( sc, false );
+			model.setTracks( graph, false );
 
-				/*
-				 * Parse all detections
-				 */
+			final long end = System.currentTimeMillis();
+			processingTime = end - start;
+			logger.setProgress( 0d );
+			logger.log( String.format( "Import completed in %.1f s.\n", ( processingTime / 1000d ) ) );
+			logger.setStatus( "" );
+		}
 
-				currentSpotID = new HashMap< >( detectionEls.size() );
+		return true;
+	}
 
-				for ( final Element detectionEl : detectionEls )
+	/**
+	 * Parses one TGMM file with a streaming parser. The detections are stored
+	 * in a compact buffer; spots are only created when links are resolved.
+	 * Errors are reported in the buffer.
+	 */
+	private static FrameBuffer readFrame( final File xmlFile, final int frame, final AffineTransform3D transform )
+	{
+		final FrameBuffer buffer = new FrameBuffer( frame );
+		final double[] targetCoordsHolder = new double[ 3 ];
+		final double[] sourceCoordsHolder = new double[ 3 ];
+		final double[][] T = new double[ 3 ][ 3 ];
+		for ( int r = 0; r < 3; ++r )
+			for ( int c = 0; c < 3; ++c )
+				T[ r ][ c ] = transform.get( r, c );
+		final double[][] TS = new double[ 3 ][ 3 ];
+		final double[] vals = new double[ 9 ];
+
+		final XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty( XMLInputFactory.SUPPORT_DTD, Boolean.FALSE );
+		try (final InputStream is = new BufferedInputStream( new FileInputStream( xmlFile ) ))
+		{
+			final XMLStreamReader reader = factory.createXMLStreamReader( is );
+			try
+			{
+				int index = -1;
+				while ( reader.hasNext() )
 				{
+					if ( reader.next() != XMLStreamConstants.START_ELEMENT || !XML_DETECTION_NAME.equals( reader.getLocalName() ) )
+						continue;
+					index++;
+					final String detectionEl = XML_DETECTION_NAME + " #" + index;
 
 					/*
 					 * Fetch and check attribute strings.
 					 */
 
-					final String pixelPosStr = detectionEl.getAttributeValue( XML_CENTROID );
+					final String pixelPosStr = reader.getAttributeValue( null, XML_CENTROID );
 					if ( null == pixelPosStr )
 					{
-						errorMessage = BASE_ERROR_MSG + "Element " + detectionEl + " in file " + xmlFile + " misses the centroid attribute (" + XML_CENTROID + ").\n";
-						return false;
+						buffer.error = BASE_ERROR_MSG + "Element " + detectionEl + " in file " + xmlFile + " misses the centroid attribute (" + XML_CENTROID + ").\n";
+						return buffer;
 					}
-					final String[] pixelPosStrs = pixelPosStr.split( " " );
+					final String[] pixelPosStrs = pixelPosStr.trim().split( " " );
 
-					final String idStr = detectionEl.getAttributeValue( XML_ID );
+					final String idStr = reader.getAttributeValue( null, XML_ID );
 					if ( null == idStr )
 					{
-						errorMessage = BASE_ERROR_MSG + "Element " + detectionEl + " in file " + xmlFile + " misses the ID attribute (" + XML_ID + ").\n";
-						return false;
+						buffer.error = BASE_ERROR_MSG + "Element " + detectionEl + " in file " + xmlFile + " misses the ID attribute (" + XML_ID + ").\n";
+						return buffer;
 					}
 
-					final String lineageStr = detectionEl.getAttributeValue( XML_LINEAGE );
+					final String lineageStr = reader.getAttributeValue( null, XML_LINEAGE );
 					if ( null == lineageStr )
 					{
-						errorMessage = BASE_ERROR_MSG + "Element " + detectionEl + " in file " + xmlFile + " misses the lineage attribute (" + XML_LINEAGE + ").\n";
-						return false;
+						buffer.error = BASE_ERROR_MSG + "Element " + detectionEl + " in file " + xmlFile + " misses the lineage attribute (" + XML_LINEAGE + ").\n";
+						return buffer;
 					}
 
-					final String parentStr = detectionEl.getAttributeValue( XML_PARENT );
+					final String parentStr = reader.getAttributeValue( null, XML_PARENT );
 					if ( null == parentStr )
 					{
-						errorMessage = BASE_ERROR_MSG + "Element " + detectionEl + " in file " + xmlFile + " misses the parent attribute (" + XML_LINEAGE + ").\n";
-						return false;
+						buffer.error = BASE_ERROR_MSG + "Element " + detectionEl + " in file " + xmlFile + " misses the parent attribute (" + XML_LINEAGE + ").\n";
+						return buffer;
 					}
 
-					final String scoreStr = detectionEl.getAttributeValue( XML_SCORE );
+					final String scoreStr = reader.getAttributeValue( null, XML_SCORE );
 					if ( null == scoreStr )
 					{
-						errorMessage = BASE_ERROR_MSG + "Element " + detectionEl + " in file " + xmlFile + " misses the score attribute (" + XML_SCORE + ").\n";
-						return false;
+						buffer.error = BASE_ERROR_MSG + "Element " + detectionEl + " in file " + xmlFile + " misses the score attribute (" + XML_SCORE + ").\n";
+						return buffer;
 					}
 
-					final String nuStr = detectionEl.getAttributeValue( XML_NU );
+					final String nuStr = reader.getAttributeValue( null, XML_NU );
 					if ( null == nuStr )
 					{
-						errorMessage = BASE_ERROR_MSG + "Element " + detectionEl + " in file " + xmlFile + " misses the nu attribute (" + XML_NU + ").\n";
-						return false;
+						buffer.error = BASE_ERROR_MSG + "Element " + detectionEl + " in file " + xmlFile + " misses the nu attribute (" + XML_NU + ").\n";
+						return buffer;
 					}
 
-					final String precMatStr = detectionEl.getAttributeValue( XML_PRECISION_MATRIX );
+					final String precMatStr = reader.getAttributeValue( null, XML_PRECISION_MATRIX );
 					if ( null == precMatStr )
 					{
-						errorMessage = BASE_ERROR_MSG + "Element " + detectionEl + " in file " + xmlFile + " misses the prevision matrix attribute (" + XML_PRECISION_MATRIX + ").\n";
-						return false;
+						buffer.error = BASE_ERROR_MSG + "Element " + detectionEl + " in file " + xmlFile + " misses the prevision matrix attribute (" + XML_PRECISION_MATRIX + ").\n";
+						return buffer;
 					}
-					final String[] precMatStrs = precMatStr.split( " " );
+					final String[] precMatStrs = precMatStr.trim().split( " " );
 
 					/*
 					 * Parse attribute strings.
@@ -301,29 +417,14 @@ public class TGMMImporter implements OutputAlgorithm< Model >, Benchmark
 					try
 					{
 						/*
-						 * Build position
+						 * Build position and map it back to global coordinate
+						 * system.
 						 */
 
-						{
-							final double x = Double.parseDouble( pixelPosStrs[ 0 ] );
-							final double y = Double.parseDouble( pixelPosStrs[ 1 ] );
-							final double z = Double.parseDouble( pixelPosStrs[ 2 ] );
-
-							/*
-							 * Map it back to global coordinate system.
-							 */
-
-							sourceCoordsHolder[ 0 ] = x;
-							sourceCoordsHolder[ 1 ] = y;
-							sourceCoordsHolder[ 2 ] = z;
-						}
-
+						for ( int d = 0; d < 3; d++ )
+							sourceCoordsHolder[ d ] = Double.parseDouble( pixelPosStrs[ d ] );
 						transform.apply( sourceCoordsHolder, targetCoordsHolder );
 
-						final double mx = targetCoordsHolder[ 0 ];
-						final double my = targetCoordsHolder[ 1 ];
-						final double mz = targetCoordsHolder[ 2 ];
-
 						/*
 						 * ID and parent and lineage and score.
 						 */
@@ -338,11 +439,8 @@ public class TGMMImporter implements OutputAlgorithm< Model >, Benchmark
 						 */
 
 						final double nu = Double.parseDouble( nuStr );
-						final double[] vals = new double[ 9 ];
 						for ( int j = 0; j < vals.length; j++ )
-						{
 							vals[ j ] = nu * Double.parseDouble( precMatStrs[ j ] );
-						}
 						final Matrix precMat = new Matrix( vals, 3 );
 						final Matrix covMat = precMat.inverse();
 
@@ -351,11 +449,6 @@ public class TGMMImporter implements OutputAlgorithm< Model >, Benchmark
 						 */
 
 						final double[][] S = covMat.getArray();
-						final double[][] T = new double[ 3 ][ 3 ];
-						for ( int r = 0; r < 3; ++r )
-							for ( int c = 0; c < 3; ++c )
-								T[ r ][ c ] = transform.get( r, c );
-						final double[][] TS = new double[ 3 ][ 3 ];
 						LinAlgHelpers.mult( T, S, TS );
 						LinAlgHelpers.multABT( TS, T, S );
 						// note that by writing to S we write the internal array
@@ -373,74 +466,29 @@ public class TGMMImporter implements OutputAlgorithm< Model >, Benchmark
 							radii[ i ] = Math.sqrt( radii[ i ] );
 						final double radius = nSigmas * Util.average( radii );
 
-						/*
-						 * Make a spot and add it to this frame collection.
-						 */
-
-						final Spot spot = new Spot( mx, my, mz, radius, score, lineage + " (" + id + ")" );
-						spots.add( spot );
-						currentSpotID.put( Integer.valueOf( id ), spot );
-
-						graph.addVertex( spot );
-						if ( parent >= 0 && previousSpotID != null )
-						{
-							final Spot source = previousSpotID.get( Integer.valueOf( parent ) );
-							if ( null == source )
-							{
-								System.out.println( BASE_ERROR_MSG + "The parent of the current spot (frame " + frames[ t ] + ", id = " + id + " could not be found (was expected in frame " + ( frames[ t ] - 1 ) + " with id = " + parent + ".\n" );
-								continue;
-							}
-							final DefaultWeightedEdge edge = graph.addEdge( source, spot );
-							if ( null == edge )
-							{
-								System.out.println( BASE_ERROR_MSG + "Trouble adding edge between " + source + " and " + spot + ". Edge already exists?" );
-								continue;
-							}
-						}
+						buffer.add( targetCoordsHolder, radius, score, id, lineage, parent );
 					}
-					catch ( final NumberFormatException nfe )
+					catch ( final NumberFormatException | ArrayIndexOutOfBoundsException nfe )
 					{
-						errorMessage = BASE_ERROR_MSG + "Could not parse attributes of element " + detectionEl + " in xmlFile " + xmlFile + ".\n" + nfe.getMessage() + "\n";
-//					return false;
-						System.out.println( errorMessage );
+						System.out.println( BASE_ERROR_MSG + "Could not parse attributes of element " + detectionEl + " in xmlFile " + xmlFile + ".\n" + nfe.getMessage() + "\n" );
 						continue;
 					}
 				}
-
-				/*
-				 * Finished inspecting a frame. Store it in the spot collection.
-				 */
-
-				sc.put( frames[ t ], spots );
-				previousSpotID = currentSpotID;
-				logger.log( "Found " + spots.size() + " spots.\n" );
-				logger.setProgress( ( double ) t / frames.length );
+			}
+			finally
+			{
+				reader.close();
 			}
 		}
-		catch ( final JDOMException e )
+		catch ( final XMLStreamException e )
 		{
-			errorMessage = BASE_ERROR_MSG + "File " + xmlFile + " is not a poperly formed XML file.\n" + e.getMessage() + "\n";
-			return false;
+			buffer.error = BASE_ERROR_MSG + "File " + xmlFile + " is not a poperly formed XML file.\n" + e.getMessage() + "\n";
 		}
 		catch ( final IOException e )
 		{
-			errorMessage = BASE_ERROR_MSG + "Could not open file " + xmlFile + " for reading.\n" + e.getMessage() + "\n";
-			return false;
-		}
-		finally
-		{
-			sc.setVisible( true );
-			model.setSpots( sc, false );
-			model.setTracks( graph, false );
-
-			final long end = System.currentTimeMillis();
-			processingTime = end - start;
-			logger.setProgress( 0d );
-			logger.log( String.format( "Import completed in %.1f s.\n", ( processingTime / 1000d ) ) );
-			logger.setStatus( "" );
+			buffer.error = BASE_ERROR_MSG + "Could not open file " + xmlFile + " for reading.\n" + e.getMessage() + "\n";
 		}
-
-		return true;
+		return buffer;
 	}
 
 	@Override
@@ -461,4 +509,68 @@ public class TGMMImporter implements OutputAlgorithm< Model >, Benchmark
 		return processingTime;
 	}
 
+	@Override
+	public void setNumThreads()
+	{
+		this.numThreads = Runtime.getRuntime().availableProcessors();
+	}
+
+	@Override
+	public void setNumThreads( final int numThreads )
+	{
+		this.numThreads = numThreads;
+	}
+
+	@Override
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+
+	/**
+	 * The detections of one frame, stored in primitive arrays.
+	 */
+	private static final class FrameBuffer
+	{
+
+		private final int frame;
+
+		/** X, Y, Z, radius and score of each detection. */
+		private double[] doubles = new double[ 5 * 64 ];
+
+		/** ID, lineage and parent ID of each detection. */
+		private int[] ints = new int[ 3 * 64 ];
+
+		private int size = 0;
+
+		private String error;
+
+		private FrameBuffer( final int frame )
+		{
+			this.frame = frame;
+		}
+
+		private void add( final double[] position, final double radius, final double score, final int id, final int lineage, final int parent )
+		{
+			if ( 3 * size == ints.length )
+			{
+				doubles = Arrays.copyOf( doubles, 2 * doubles.length );
+				ints = Arrays.copyOf( ints, 2 * ints.length );
+			}
+			doubles[ 5 * size ] = position[ 0 ];
+			doubles[ 5 * size + 1 ] = position[ 1 ];
+			doubles[ 5 * size + 2 ] = position[ 2 ];
+			doubles[ 5 * size + 3 ] = radius;
+			doubles[ 5 * size + 4 ] = score;
+			ints[ 3 * size ] = id;
+			ints[ 3 * size + 1 ] = lineage;
+			ints[ 3 * size + 2 ] = parent;
+			size++;
+		}
+
+		private Spot createSpot( final int i )
+		{
+			return new Spot( doubles[ 5 * i ], doubles[ 5 * i + 1 ], doubles[ 5 * i + 2 ], doubles[ 5 * i + 3 ], doubles[ 5 * i + 4 ], ints[ 3 * i + 1 ] + " (" + ints[ 3 * i ] + ")" );
+		}
+	}
 }
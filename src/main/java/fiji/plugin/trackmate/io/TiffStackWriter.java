@@ -0,0 +1,439 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.io;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import ij.measure.Calibration;
+
+/**
+ * Writes a multi-page TIFF file one plane at a time, so that stacks larger
+ * than the memory can be saved as they are generated.
+ * <p>
+ * The layout is the one of ImageJ TIFF stacks: the first image file directory
+ * (IFD) and the description come first, then the pixels of all planes,
+ * contiguous, then the IFDs of the other planes. Since all planes have the
+ * same size, all offsets are known in advance and the file is written
+ * sequentially. As with ImageJ, files larger than 4 GB can only be read back
+ * by readers that use the number of images stored in the ImageJ description.
+ * <p>
+ * Planes are either RGB or 32-bit float.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+public class TiffStackWriter implements Closeable
+{
+
+	public enum PixelType
+	{
+		RGB( 3 ), FLOAT( 4 );
+
+		private final int bytesPerPixel;
+
+		private PixelType( final int bytesPerPixel )
+		{
+			this.bytesPerPixel = bytesPerPixel;
+		}
+	}
+
+	private static final int IMAGE_WIDTH = 256;
+
+	private static final int IMAGE_LENGTH = 257;
+
+	private static final int BITS_PER_SAMPLE = 258;
+
+	private static final int COMPRESSION = 259;
+
+	private static final int PHOTOMETRIC_INTERPRETATION = 262;
+
+	private static final int IMAGE_DESCRIPTION = 270;
+
+	private static final int STRIP_OFFSETS = 273;
+
+	private static final int SAMPLES_PER_PIXEL = 277;
+
+	private static final int ROWS_PER_STRIP = 278;
+
+	private static final int STRIP_BYTE_COUNTS = 279;
+
+	private static final int X_RESOLUTION = 282;
+
+	private static final int Y_RESOLUTION = 283;
+
+	private static final int RESOLUTION_UNIT = 296;
+
+	private static final int SAMPLE_FORMAT = 339;
+
+	private static final int SHORT = 3;
+
+	private static final int LONG = 4;
+
+	private static final int ASCII = 2;
+
+	private static final int RATIONAL = 5;
+
+	private static final int RESOLUTION_SCALE = 1_000_000;
+
+	private final DataOutputStream out;
+
+	private final int width;
+
+	private final int height;
+
+	private final int nPlanes;
+
+	private final PixelType pixelType;
+
+	private final byte[] description;
+
+	private final long planeBytes;
+
+	private final long bitsPerSampleOffset;
+
+	private final long xResolutionOffset;
+
+	private final long yResolutionOffset;
+
+	private final long descriptionOffset;
+
+	private final long dataOffset;
+
+	private final long ifdsOffset;
+
+	private final int ifdSize;
+
+	private final byte[] buffer;
+
+	private int nWritten = 0;
+
+	/**
+	 * Creates the file and writes its header.
+	 *
+	 * @param file
+	 *            the file to write.
+	 * @param width
+	 *            the width of the planes.
+	 * @param height
+	 *            the height of the planes.
+	 * @param nPlanes
+	 *            the number of planes that will be written.
+	 * @param pixelType
+	 *            the pixel type.
+	 * @param description
+	 *            the image description, stored in the first IFD. Typically
+	 *            generated by
+	 *            {@link #imageJDescription(int, int, int, Calibration)}. Can be
+	 *            <code>null</code>.
+	 * @param pixelWidth
+	 *            the pixel width, stored as X resolution.
+	 * @param pixelHeight
+	 *            the pixel height, stored as Y resolution.
+	 * @throws IOException
+	 *             if the file cannot be created or written.
+	 */
+	public TiffStackWriter(
+			final File file,
+			final int width,
+			final int height,
+			final int nPlanes,
+			final PixelType pixelType,
+			final String description,
+			final double pixelWidth,
+			final double pixelHeight ) throws IOException
+	{
+		if ( width <= 0 || height <= 0 || nPlanes <= 0 )
+			throw new IllegalArgumentException( "Invalid stack size: " + width + " x " + height + " x " + nPlanes + "." );
+
+		this.width = width;
+		this.height = height;
+		this.nPlanes = nPlanes;
+		this.pixelType = pixelType;
+		this.description = ( null == description ) ? null : ( description + '\0' ).getBytes( StandardCharsets.US_ASCII );
+		this.planeBytes = ( long ) width * height * pixelType.bytesPerPixel;
+		this.buffer = new byte[ width * pixelType.bytesPerPixel ];
+
+		final int nEntries = nEntries();
+		final int firstIfdSize = 2 + ( nEntries + ( null == this.description ? 0 : 1 ) ) * 12 + 4;
+		this.ifdSize = 2 + nEntries * 12 + 4;
+		this.bitsPerSampleOffset = 8 + firstIfdSize;
+		final int bitsPerSampleSize = ( pixelType == PixelType.RGB ) ? 8 : 0;
+		this.xResolutionOffset = bitsPerSampleOffset + bitsPerSampleSize;
+		this.yResolutionOffset = xResolutionOffset + 8;
+		this.descriptionOffset = yResolutionOffset + 8;
+		final int descriptionSize = ( null == this.description ) ? 0 : this.description.length + ( this.description.length % 2 );
+		this.dataOffset = descriptionOffset + descriptionSize;
+		this.ifdsOffset = dataOffset + nPlanes * planeBytes;
+
+		this.out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( file ), 1 << 16 ) );
+
+		// Header, big-endian.
+		out.writeByte( 'M' );
+		out.writeByte( 'M' );
+		out.writeShort( 42 );
+		out.writeInt( 8 );
+
+		// First IFD and the values it points to.
+		writeIFD( 0, null != this.description );
+		if ( pixelType == PixelType.RGB )
+		{
+			out.writeShort( 8 );
+			out.writeShort( 8 );
+			out.writeShort( 8 );
+			out.writeShort( 0 );
+		}
+		writeResolution( pixelWidth );
+		writeResolution( pixelHeight );
+		if ( null != this.description )
+		{
+			out.write( this.description );
+			if ( this.description.length % 2 != 0 )
+				out.writeByte( 0 );
+		}
+	}
+
+	private int nEntries()
+	{
+		// Common entries, plus photometric and sample format.
+		return ( pixelType == PixelType.FLOAT ) ? 13 : 12;
+	}
+
+	private void writeResolution( final double pixelSize ) throws IOException
+	{
+		final double scale = ( pixelSize > 0 ) ? 1. / pixelSize : 1.;
+		out.writeInt( ( int ) Math.min( Integer.MAX_VALUE, Math.round( scale * RESOLUTION_SCALE ) ) );
+		out.writeInt( RESOLUTION_SCALE );
+	}
+
+	private void writeIFD( final int plane, final boolean withDescription ) throws IOException
+	{
+		out.writeShort( nEntries() + ( withDescription ? 1 : 0 ) );
+		writeEntry( IMAGE_WIDTH, LONG, 1, width );
+		writeEntry( IMAGE_LENGTH, LONG, 1, height );
+		if ( pixelType == PixelType.RGB )
+			writeEntry( BITS_PER_SAMPLE, SHORT, 3, bitsPerSampleOffset );
+		else
+			writeShortEntry( BITS_PER_SAMPLE, 32 );
+		writeShortEntry( COMPRESSION, 1 );
+		writeShortEntry( PHOTOMETRIC_INTERPRETATION, ( pixelType == PixelType.RGB ) ? 2 : 1 );
+		if ( withDescription )
+			writeEntry( IMAGE_DESCRIPTION, ASCII, description.length, descriptionOffset );
+		writeEntry( STRIP_OFFSETS, LONG, 1, dataOffset + plane * planeBytes );
+		writeShortEntry( SAMPLES_PER_PIXEL, ( pixelType == PixelType.RGB ) ? 3 : 1 );
+		writeEntry( ROWS_PER_STRIP, LONG, 1, height );
+		writeEntry( STRIP_BYTE_COUNTS, LONG, 1, planeBytes );
+		writeEntry( X_RESOLUTION, RATIONAL, 1, xResolutionOffset );
+		writeEntry( Y_RESOLUTION, RATIONAL, 1, yResolutionOffset );
+		writeShortEntry( RESOLUTION_UNIT, 1 );
+		if ( pixelType == PixelType.FLOAT )
+			writeShortEntry( SAMPLE_FORMAT, 3 );
+
+		// Offset of the next IFD.
+		final long next = ( plane == nPlanes - 1 ) ? 0l : ifdsOffset + ( long ) plane * ifdSize;
+		out.writeInt( ( int ) next );
+	}
+
+	private void writeEntry( final int tag, final int type, final int count, final long value ) throws IOException
+	{
+		out.writeShort( tag );
+		out.writeShort( type );
+		out.writeInt( count );
+		// Offsets above 4 GB are truncated, as ImageJ does.
+		out.writeInt( ( int ) value );
+	}
+
+	private void writeShortEntry( final int tag, final int value ) throws IOException
+	{
+		out.writeShort( tag );
+		out.writeShort( SHORT );
+		out.writeInt( 1 );
+		// Left-justified in the 4-byte value field.
+		out.writeShort( value );
+		out.writeShort( 0 );
+	}
+
+	/**
+	 * Writes the next plane of an RGB stack.
+	 *
+	 * @param pixels
+	 *            the pixels, packed as <code>0xRRGGBB</code> integers, row by
+	 *            row.
+	 * @throws IOException
+	 *             if the plane cannot be written.
+	 */
+	public void writeRGB( final int[] pixels ) throws IOException
+	{
+		checkPlane( PixelType.RGB, pixels.length );
+		for ( int y = 0; y < height; y++ )
+		{
+			int k = 0;
+			for ( int x = 0; x < width; x++ )
+			{
+				final int rgb = pixels[ y * width + x ];
+				buffer[ k++ ] = ( byte ) ( rgb >> 16 );
+				buffer[ k++ ] = ( byte ) ( rgb >> 8 );
+				buffer[ k++ ] = ( byte ) rgb;
+			}
+			out.write( buffer );
+		}
+		nWritten++;
+	}
+
+	/**
+	 * Writes the next plane of a 32-bit float stack.
+	 *
+	 * @param pixels
+	 *            the pixels, row by row.
+	 * @throws IOException
+	 *             if the plane cannot be written.
+	 */
+	public void writeFloat( final float[] pixels ) throws IOException
+	{
+		checkPlane( PixelType.FLOAT, pixels.length );
+		writeFloat( pixels, 0 );
+	}
+
+	/**
+	 * Writes the next plane of a 32-bit float stack, read from a larger array,
+	 * for instance a whole Z-stack.
+	 *
+	 * @param pixels
+	 *            the array to read from.
+	 * @param offset
+	 *            the index in the array of the first pixel of the plane. The
+	 *            plane is read row by row from there.
+	 * @throws IOException
+	 *             if the plane cannot be written.
+	 */
+	public void writeFloat( final float[] pixels, final int offset ) throws IOException
+	{
+		if ( offset < 0 || offset + width * height > pixels.length )
+			throw new IllegalArgumentException( "Not enough pixels after offset " + offset + "." );
+		checkPlane( PixelType.FLOAT, width * height );
+		for ( int y = 0; y < height; y++ )
+		{
+			int k = 0;
+			for ( int x = 0; x < width; x++ )
+			{
+				final int bits = Float.floatToRawIntBits( pixels[ offset + y * width + x ] );
+				buffer[ k++ ] = ( byte ) ( bits >> 24 );
+				buffer[ k++ ] = ( byte ) ( bits >> 16 );
+				buffer[ k++ ] = ( byte ) ( bits >> 8 );
+				buffer[ k++ ] = ( byte ) bits;
+			}
+			out.write( buffer );
+		}
+		nWritten++;
+	}
+
+	private void checkPlane( final PixelType type, final int length )
+	{
+		if ( type != pixelType )
+			throw new IllegalArgumentException( "This stack stores " + pixelType + " planes." );
+		if ( length != width * height )
+			throw new IllegalArgumentException( "Expected " + ( width * height ) + " pixels, got " + length + "." );
+		if ( nWritten >= nPlanes )
+			throw new IllegalStateException( "All the " + nPlanes + " planes have already been written." );
+	}
+
+	/**
+	 * Returns the number of planes written so far.
+	 *
+	 * @return the number of planes written.
+	 */
+	public int getNPlanesWritten()
+	{
+		return nWritten;
+	}
+
+	/**
+	 * Writes the IFDs of the planes after the first one and closes the file.
+	 * If fewer planes than announced were written, the missing ones are
+	 * written as zeros so that the file stays readable.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			final byte[] zeros = new byte[ buffer.length ];
+			while ( nWritten < nPlanes )
+			{
+				for ( int y = 0; y < height; y++ )
+					out.write( zeros );
+				nWritten++;
+			}
+			for ( int plane = 1; plane < nPlanes; plane++ )
+				writeIFD( plane, false );
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Returns an image description that ImageJ reads to restore the dimensions
+	 * and calibration of a stack.
+	 *
+	 * @param nChannels
+	 *            the number of channels.
+	 * @param nSlices
+	 *            the number of Z-slices.
+	 * @param nFrames
+	 *            the number of frames.
+	 * @param calibration
+	 *            the calibration, can be <code>null</code>.
+	 * @return a new description.
+	 */
+	public static String imageJDescription( final int nChannels, final int nSlices, final int nFrames, final Calibration calibration )
+	{
+		final StringBuilder str = new StringBuilder();
+		str.append( "ImageJ=1.53t\n" );
+		str.append( "images=" + ( nChannels * nSlices * nFrames ) + "\n" );
+		if ( nChannels > 1 )
+			str.append( "channels=" + nChannels + "\n" );
+		if ( nSlices > 1 )
+			str.append( "slices=" + nSlices + "\n" );
+		if ( nFrames > 1 )
+			str.append( "frames=" + nFrames + "\n" );
+		if ( ( nChannels > 1 ? 1 : 0 ) + ( nSlices > 1 ? 1 : 0 ) + ( nFrames > 1 ? 1 : 0 ) > 1 )
+			str.append( "hyperstack=true\n" );
+		if ( null != calibration )
+		{
+			str.append( "unit=" + calibration.getUnit() + "\n" );
+			if ( nSlices > 1 )
+				str.append( "spacing=" + calibration.pixelDepth + "\n" );
+			if ( nFrames > 1 && calibration.frameInterval > 0. )
+				str.append( "finterval=" + calibration.frameInterval + "\n" );
+			if ( nFrames > 1 )
+				str.append( "tunit=" + calibration.getTimeUnit() + "\n" );
+		}
+		str.append( "loop=false\n" );
+		return str.toString();
+	}
+}
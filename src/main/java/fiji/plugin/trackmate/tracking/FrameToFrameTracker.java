@@ -0,0 +1,74 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.tracking;
+
+import java.util.List;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+
+import fiji.plugin.trackmate.Spot;
+
+/**
+ * Interface for {@link SpotTracker}s that only create links between spots of
+ * two consecutive frames. Such trackers can link a pair of frames as soon as
+ * the spots of these two frames are available, without waiting for the
+ * detection of the whole movie to complete.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+public interface FrameToFrameTracker extends SpotTracker
+{
+
+	/**
+	 * Returns whether this tracker, with its current settings, only links
+	 * spots of consecutive frames. If <code>false</code>, the tracker must be
+	 * run on the whole spot collection with {@link #process()}.
+	 *
+	 * @return <code>true</code> if {@link #linkFrames(List, List, SimpleWeightedGraph)}
+	 *         yields the same links that {@link #process()} would.
+	 */
+	public default boolean isFrameToFrame()
+	{
+		return true;
+	}
+
+	/**
+	 * Links the specified spots of a frame to the specified spots of the next
+	 * frame, and adds the links and the linked spots to the specified graph.
+	 * <p>
+	 * This method may be called concurrently for different frame pairs with
+	 * the same graph. Implementations must synchronize on the graph when they
+	 * modify it.
+	 *
+	 * @param sources
+	 *            the spots of the first frame.
+	 * @param targets
+	 *            the spots of the next frame.
+	 * @param graph
+	 *            the graph to add the links to.
+	 * @return <code>true</code> if linking completed without errors. If
+	 *         <code>false</code>, the error message can be retrieved with
+	 *         {@link #getErrorMessage()}.
+	 */
+	public boolean linkFrames( List< Spot > sources, List< Spot > targets, SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph );
+}
@@ -25,6 +25,7 @@ import static fiji.plugin.trackmate.io.IOUtils.marshallMap;
 import static fiji.plugin.trackmate.io.IOUtils.readBooleanAttribute;
 import static fiji.plugin.trackmate.io.IOUtils.readDoubleAttribute;
 import static fiji.plugin.trackmate.io.IOUtils.readIntegerAttribute;
+import static fiji.plugin.trackmate.io.IOUtils.readStringAttribute;
 import static fiji.plugin.trackmate.io.IOUtils.unmarshallMap;
 import static fiji.plugin.trackmate.io.IOUtils.writeAttribute;
 import static fiji.plugin.trackmate.tracking.LAPUtils.XML_ELEMENT_NAME_FEATURE_PENALTIES;
@@ -41,6 +42,7 @@ import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_CUTOFF_PERCENTILE;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_FEATURE_PENALTIES;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_MAX_DISTANCE;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_MAX_FRAME_GAP;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LAP_SOLVER;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_FEATURE_PENALTIES;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_MAX_DISTANCE;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_MERGING_FEATURE_PENALTIES;
@@ -142,6 +144,8 @@ public abstract class LAPTrackerFactory implements SpotTrackerFactory
 		ok = ok & writeAttribute( settings, element, KEY_CUTOFF_PERCENTILE, Double.class, str );
 		ok = ok & writeAttribute( settings, element, KEY_ALTERNATIVE_LINKING_COST_FACTOR, Double.class, str );
 		ok = ok & writeAttribute( settings, element, KEY_BLOCKING_VALUE, Double.class, str );
+		if ( settings.containsKey( KEY_LAP_SOLVER ) )
+			ok = ok & writeAttribute( settings, element, KEY_LAP_SOLVER, String.class, str );
 
 		return ok;
 	}
@@ -249,6 +253,8 @@ public abstract class LAPTrackerFactory implements SpotTrackerFactory
 		ok = ok & readDoubleAttribute( element, settings, KEY_CUTOFF_PERCENTILE, errorHolder );
 		ok = ok & readDoubleAttribute( element, settings, KEY_ALTERNATIVE_LINKING_COST_FACTOR, errorHolder );
 		ok = ok & readDoubleAttribute( element, settings, KEY_BLOCKING_VALUE, errorHolder );
+		if ( null != element.getAttributeValue( KEY_LAP_SOLVER ) )
+			ok = ok & readStringAttribute( element, settings, KEY_LAP_SOLVER, errorHolder );
 
 		if ( !checkSettingsValidity( settings ) )
 		{
@@ -310,6 +316,9 @@ public abstract class LAPTrackerFactory implements SpotTrackerFactory
 			str.append( "  Track merging not allowed.\n" );
 		}
 
+		if ( sm.containsKey( KEY_LAP_SOLVER ) )
+			str.append( "  LAP solver: " + LAPUtils.getLAPSolverType( sm ) + ".\n" );
+
 		return str.toString();
 	}
 
@@ -30,6 +30,7 @@ import static fiji.plugin.trackmate.tracking.TrackerKeys.DEFAULT_CUTOFF_PERCENTI
 import static fiji.plugin.trackmate.tracking.TrackerKeys.DEFAULT_GAP_CLOSING_FEATURE_PENALTIES;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.DEFAULT_GAP_CLOSING_MAX_DISTANCE;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.DEFAULT_GAP_CLOSING_MAX_FRAME_GAP;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.DEFAULT_LAP_SOLVER;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.DEFAULT_LINKING_FEATURE_PENALTIES;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.DEFAULT_LINKING_MAX_DISTANCE;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.DEFAULT_MERGING_FEATURE_PENALTIES;
@@ -45,6 +46,7 @@ import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_CUTOFF_PERCENTILE;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_FEATURE_PENALTIES;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_MAX_DISTANCE;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_MAX_FRAME_GAP;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LAP_SOLVER;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_FEATURE_PENALTIES;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_MAX_DISTANCE;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_MERGING_FEATURE_PENALTIES;
@@ -58,6 +60,7 @@ import java.awt.Color;
 import java.awt.Component;
 import java.awt.Dimension;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -76,6 +79,7 @@ import javax.swing.table.TableCellRenderer;
 import javax.swing.table.TableModel;
 
 import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.tracking.sparselap.linker.LAPSolverType;
 
 public class LAPUtils {
 
@@ -262,6 +266,7 @@ public class LAPUtils {
 		ok = ok & checkParameter( settings, KEY_CUTOFF_PERCENTILE, Double.class, errorHolder );
 		ok = ok & checkParameter( settings, KEY_ALTERNATIVE_LINKING_COST_FACTOR, Double.class, errorHolder );
 		ok = ok & checkParameter( settings, KEY_BLOCKING_VALUE, Double.class, errorHolder );
+		ok = ok & checkLAPSolver( settings, errorHolder );
 
 		// Check keys
 		final List<String> mandatoryKeys = new ArrayList<>();
@@ -281,6 +286,7 @@ public class LAPUtils {
 		optionalKeys.add(KEY_GAP_CLOSING_FEATURE_PENALTIES);
 		optionalKeys.add(KEY_SPLITTING_FEATURE_PENALTIES);
 		optionalKeys.add(KEY_MERGING_FEATURE_PENALTIES);
+		optionalKeys.add(KEY_LAP_SOLVER);
 		ok = ok & checkMapKeys( settings, mandatoryKeys, optionalKeys, errorHolder );
 
 		return ok;
@@ -331,6 +337,45 @@ public class LAPUtils {
 		return ok;
 	}
 
+	/**
+	 * Check the validity of the optional LAP solver setting in a settings map.
+	 * <p>
+	 * The setting is valid if it is absent, or if it is the name of a
+	 * {@link LAPSolverType}.
+	 *
+	 * @param map
+	 *            the map to inspect.
+	 * @param errorHolder
+	 *            will be appended with an error message.
+	 * @return true if the LAP solver setting is valid.
+	 */
+	public static final boolean checkLAPSolver(final Map<String, Object> map, final StringBuilder errorHolder) {
+		if (!map.containsKey(KEY_LAP_SOLVER))
+			return true; // Not here is acceptable
+		if (!checkParameter(map, KEY_LAP_SOLVER, String.class, errorHolder))
+			return false;
+		try {
+			LAPSolverType.valueOf((String) map.get(KEY_LAP_SOLVER));
+			return true;
+		} catch (final IllegalArgumentException e) {
+			errorHolder.append("Unknown LAP solver: " + map.get(KEY_LAP_SOLVER) + ". Expected one of " + Arrays.toString(LAPSolverType.values()) + ".\n");
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the LAP solver type specified in a settings map.
+	 *
+	 * @param map
+	 *            the settings map.
+	 * @return the LAP solver type, or the default one if the settings map does
+	 *         not specify it.
+	 */
+	public static final LAPSolverType getLAPSolverType(final Map<String, Object> map) {
+		final Object obj = map.get(KEY_LAP_SOLVER);
+		return LAPSolverType.valueOf(null == obj ? DEFAULT_LAP_SOLVER : (String) obj);
+	}
+
 	public static final void echoMatrix(final double[][] m) {
 		final int nlines = m.length;
 		if (nlines == 0) {
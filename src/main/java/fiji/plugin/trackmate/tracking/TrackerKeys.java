@@ -259,4 +259,16 @@ public class TrackerKeys
 
 	/** A default value for the {@value #KEY_BLOCKING_VALUE} parameter. */
 	public static final double DEFAULT_BLOCKING_VALUE = Double.POSITIVE_INFINITY;
+
+	/**
+	 * Key for the optional parameter that selects the solver of the linear
+	 * assignment problems of the LAP trackers. Expected values are the
+	 * {@link String} names of the
+	 * {@link fiji.plugin.trackmate.tracking.sparselap.linker.LAPSolverType}
+	 * constants.
+	 */
+	public static final String KEY_LAP_SOLVER = "LAP_SOLVER";
+
+	/** A default value for the {@value #KEY_LAP_SOLVER} parameter. */
+	public static final String DEFAULT_LAP_SOLVER = "JONKER_VOLGENANT";
 }
@@ -32,9 +32,6 @@ import java.util.Map;
 import java.util.TreeSet;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jgrapht.graph.DefaultWeightedEdge;
@@ -44,13 +41,14 @@ import org.scijava.Cancelable;
 import fiji.plugin.trackmate.Logger;
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.SpotCollection;
-import fiji.plugin.trackmate.tracking.SpotTracker;
+import fiji.plugin.trackmate.tracking.FrameToFrameTracker;
 import fiji.plugin.trackmate.util.TMUtils;
+import fiji.plugin.trackmate.util.TrackMateExecutor;
 import net.imglib2.KDTree;
 import net.imglib2.RealPoint;
 import net.imglib2.algorithm.MultiThreadedBenchmarkAlgorithm;
 
-public class NearestNeighborTracker extends MultiThreadedBenchmarkAlgorithm implements SpotTracker, Cancelable
+public class NearestNeighborTracker extends MultiThreadedBenchmarkAlgorithm implements FrameToFrameTracker, Cancelable
 {
 
 	/*
@@ -108,14 +106,13 @@ public class NearestNeighborTracker extends MultiThreadedBenchmarkAlgorithm impl
 		final double maxDistSquare = maxLinkingDistance * maxLinkingDistance;
 		final TreeSet< Integer > frames = new TreeSet<>( spots.keySet() );
 
-		// Prepare executors.
+		// Prepare tasks.
 		final AtomicInteger progress = new AtomicInteger( 0 );
-		final ExecutorService executors = Executors.newFixedThreadPool( numThreads );
-		final List< Future< Void > > futures = new ArrayList<>( frames.size() );
+		final List< Callable< Void > > tasks = new ArrayList<>( frames.size() );
 		for ( int i = frames.first(); i < frames.last(); i++ )
 		{
 			final int frame = i;
-			final Future< Void > future = executors.submit( new Callable< Void >()
+			tasks.add( new Callable< Void >()
 			{
 
 				@Override
@@ -128,69 +125,19 @@ public class NearestNeighborTracker extends MultiThreadedBenchmarkAlgorithm impl
 					final int sourceFrame = frame;
 					final int targetFrame = frames.higher( frame );
 
-					final int nTargetSpots = spots.getNSpots( targetFrame, true );
-					if ( nTargetSpots < 1 )
-					{
-						logger.setProgress( progress.incrementAndGet() / ( double ) frames.size() );
-						return null;
-					}
-
-					final List< RealPoint > targetCoords = new ArrayList<>( nTargetSpots );
-					final List< FlagNode< Spot > > targetNodes = new ArrayList<>( nTargetSpots );
-					final Iterator< Spot > targetIt = spots.iterator( targetFrame, true );
-					while ( targetIt.hasNext() )
-					{
-						final double[] coords = new double[ 3 ];
-						final Spot spot = targetIt.next();
-						TMUtils.localize( spot, coords );
-						targetCoords.add( new RealPoint( coords ) );
-						targetNodes.add( new FlagNode<>( spot ) );
-					}
-
-					final KDTree< FlagNode< Spot > > tree = new KDTree<>( targetNodes, targetCoords );
-					final NearestNeighborFlagSearchOnKDTree< Spot > search = new NearestNeighborFlagSearchOnKDTree<>( tree );
-
-					/*
-					 * For each spot in the source frame, find its nearest
-					 * neighbor in the target frame.
-					 */
-					final Iterator< Spot > sourceIt = spots.iterator( sourceFrame, true );
-					while ( sourceIt.hasNext() )
-					{
-						final Spot source = sourceIt.next();
-						final double[] coords = new double[ 3 ];
-						TMUtils.localize( source, coords );
-						final RealPoint sourceCoords = new RealPoint( coords );
-						search.search( sourceCoords );
-
-						final double squareDist = search.getSquareDistance();
-						final FlagNode< Spot > targetNode = search.getSampler().get();
-
-						/*
-						 * The closest we could find is too far. We skip this
-						 * source spot and do not create a link
-						 */
-						if ( squareDist > maxDistSquare )
-							continue;
-
-						/*
-						 * Everything is ok. This node is free and below max
-						 * dist. We create a link and mark this node as
-						 * assigned.
-						 */
-
-						targetNode.setVisited( true );
-						synchronized ( graph )
-						{
-							final DefaultWeightedEdge edge = graph.addEdge( source, targetNode.getValue() );
-							graph.setEdgeWeight( edge, squareDist );
-						}
-					}
+					final List< Spot > sources = new ArrayList<>( spots.getNSpots( sourceFrame, true ) );
+					for ( final Iterator< Spot > iterator = spots.iterator( sourceFrame, true ); iterator.hasNext(); )
+						sources.add( iterator.next() );
+
+					final List< Spot > targets = new ArrayList<>( spots.getNSpots( targetFrame, true ) );
+					for ( final Iterator< Spot > iterator = spots.iterator( targetFrame, true ); iterator.hasNext(); )
+						targets.add( iterator.next() );
+
+					link( sources, targets, maxDistSquare, graph );
 					logger.setProgress( progress.incrementAndGet() / ( double ) frames.size() );
 					return null;
 				}
 			} );
-			futures.add( future );
 		}
 
 		logger.setStatus( "Tracking..." );
@@ -198,10 +145,7 @@ public class NearestNeighborTracker extends MultiThreadedBenchmarkAlgorithm impl
 
 		try
 		{
-			for ( final Future< Void > future : futures )
-				future.get();
-
-			executors.shutdown();
+			TrackMateExecutor.current().invokeAll( "Nearest-neighbor tracking", tasks, numThreads );
 		}
 		catch ( InterruptedException | ExecutionException e )
 		{
@@ -220,6 +164,81 @@ public class NearestNeighborTracker extends MultiThreadedBenchmarkAlgorithm impl
 		return true;
 	}
 
+	@Override
+	public boolean linkFrames( final List< Spot > sources, final List< Spot > targets, final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph )
+	{
+		if ( !checkInput() )
+			return false;
+
+		final double maxLinkingDistance = ( Double ) settings.get( KEY_LINKING_MAX_DISTANCE );
+		synchronized ( graph )
+		{
+			for ( final Spot spot : sources )
+				graph.addVertex( spot );
+			for ( final Spot spot : targets )
+				graph.addVertex( spot );
+		}
+		link( sources, targets, maxLinkingDistance * maxLinkingDistance, graph );
+		return true;
+	}
+
+	/**
+	 * Links each source spot to its nearest neighbor in the target spots, if
+	 * it is closer than the max distance.
+	 */
+	private static void link( final List< Spot > sources, final List< Spot > targets, final double maxDistSquare, final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph )
+	{
+		if ( targets.isEmpty() )
+			return;
+
+		final List< RealPoint > targetCoords = new ArrayList<>( targets.size() );
+		final List< FlagNode< Spot > > targetNodes = new ArrayList<>( targets.size() );
+		for ( final Spot spot : targets )
+		{
+			final double[] coords = new double[ 3 ];
+			TMUtils.localize( spot, coords );
+			targetCoords.add( new RealPoint( coords ) );
+			targetNodes.add( new FlagNode<>( spot ) );
+		}
+
+		final KDTree< FlagNode< Spot > > tree = new KDTree<>( targetNodes, targetCoords );
+		final NearestNeighborFlagSearchOnKDTree< Spot > search = new NearestNeighborFlagSearchOnKDTree<>( tree );
+
+		/*
+		 * For each spot in the source frame, find its nearest neighbor in the
+		 * target frame.
+		 */
+		for ( final Spot source : sources )
+		{
+			final double[] coords = new double[ 3 ];
+			TMUtils.localize( source, coords );
+			final RealPoint sourceCoords = new RealPoint( coords );
+			search.search( sourceCoords );
+
+			final double squareDist = search.getSquareDistance();
+			final FlagNode< Spot > targetNode = search.getSampler().get();
+
+			/*
+			 * The closest we could find is too far. We skip this source spot
+			 * and do not create a link
+			 */
+			if ( squareDist > maxDistSquare )
+				continue;
+
+			/*
+			 * Everything is ok. This node is free and below max dist. We
+			 * create a link and mark this node as assigned.
+			 */
+
+			targetNode.setVisited( true );
+			synchronized ( graph )
+			{
+				final DefaultWeightedEdge edge = graph.addEdge( source, targetNode.getValue() );
+				graph.setEdgeWeight( edge, squareDist );
+			}
+		}
+	}
+
 	@Override
 	public SimpleWeightedGraph< Spot, DefaultWeightedEdge > getResult()
 	{
@@ -32,9 +32,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.jgrapht.graph.DefaultWeightedEdge;
@@ -45,7 +42,8 @@ import fiji.plugin.trackmate.Logger;
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.SpotCollection;
 import fiji.plugin.trackmate.SpotRoi;
-import fiji.plugin.trackmate.tracking.SpotTracker;
+import fiji.plugin.trackmate.tracking.FrameToFrameTracker;
+import fiji.plugin.trackmate.util.TrackMateExecutor;
 import math.geom2d.AffineTransform2D;
 import math.geom2d.Point2D;
 import math.geom2d.conic.Circle2D;
@@ -55,7 +53,7 @@ import math.geom2d.polygon.Rectangle2D;
 import math.geom2d.polygon.SimplePolygon2D;
 import net.imglib2.algorithm.MultiThreadedBenchmarkAlgorithm;
 
-public class OverlapTracker extends MultiThreadedBenchmarkAlgorithm implements SpotTracker, Cancelable
+public class OverlapTracker extends MultiThreadedBenchmarkAlgorithm implements FrameToFrameTracker, Cancelable
 {
 
 	public static enum IoUCalculation
@@ -207,25 +205,59 @@ public class OverlapTracker extends MultiThreadedBenchmarkAlgorithm implements S
 			if ( sourceGeometries.isEmpty() || targetGeometries.isEmpty() )
 				continue;
 
-			final ExecutorService executors = Executors.newFixedThreadPool( numThreads );
-			final List< Future< IoULink > > futures = new ArrayList<>();
+			if ( !link( sourceGeometries, targetGeometries, graph ) )
+				ok.set( false );
 
-			// Submit work.
-			for ( final Spot target : targetGeometries.keySet() )
-			{
-				final Polygon2D targetPoly = targetGeometries.get( target );
-				futures.add( executors.submit( new FindBestSourceTask( target, targetPoly, sourceGeometries, minIoU ) ) );
-			}
+			sourceGeometries = targetGeometries;
+			logger.setProgress( ( double ) progress++ / spots.keySet().size() );
+		}
 
-			// Get results.
-			for ( final Future< IoULink > future : futures )
-			{
-				if ( !ok.get() || isCanceled() )
-					break;
+		logger.setProgress( 1d );
+		logger.setStatus( "" );
+
+		final long end = System.currentTimeMillis();
+		processingTime = end - start;
+
+		return ok.get();
+	}
+
+	@Override
+	public boolean linkFrames( final List< Spot > sources, final List< Spot > targets, final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph )
+	{
+		if ( enlargeFactor <= 0 )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "The enlargement factor must be strictly positive, was " + enlargeFactor;
+			return false;
+		}
+
+		final Map< Spot, Polygon2D > sourceGeometries = createGeometry( sources, method, enlargeFactor );
+		final Map< Spot, Polygon2D > targetGeometries = createGeometry( targets, method, enlargeFactor );
+		if ( sourceGeometries.isEmpty() || targetGeometries.isEmpty() )
+			return true;
+
+		return link( sourceGeometries, targetGeometries, graph );
+	}
 
-				try
+	/**
+	 * Links each target to the source it overlaps the most with, and adds the
+	 * links to the specified graph.
+	 */
+	private boolean link( final Map< Spot, Polygon2D > sourceGeometries, final Map< Spot, Polygon2D > targetGeometries, final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph )
+	{
+		final List< FindBestSourceTask > tasks = new ArrayList<>( targetGeometries.size() );
+		for ( final Spot target : targetGeometries.keySet() )
+		{
+			final Polygon2D targetPoly = targetGeometries.get( target );
+			tasks.add( new FindBestSourceTask( target, targetPoly, sourceGeometries, minIoU ) );
+		}
+
+		try
+		{
+			final List< IoULink > links = TrackMateExecutor.current().invokeAll( "Overlap tracking", tasks, numThreads );
+			synchronized ( graph )
+			{
+				for ( final IoULink link : links )
 				{
-					final IoULink link = future.get();
 					if ( link.source == null )
 						continue;
 
@@ -233,27 +265,15 @@ public class OverlapTracker extends MultiThreadedBenchmarkAlgorithm implements S
 					graph.addVertex( link.target );
 					final DefaultWeightedEdge edge = graph.addEdge( link.source, link.target );
 					graph.setEdgeWeight( edge, 1. - link.iou );
-
-				}
-				catch ( InterruptedException | ExecutionException e )
-				{
-					errorMessage = e.getMessage();
-					ok.set( false );
 				}
 			}
-			executors.shutdown();
-
-			sourceGeometries = targetGeometries;
-			logger.setProgress( ( double ) progress++ / spots.keySet().size() );
 		}
-
-		logger.setProgress( 1d );
-		logger.setStatus( "" );
-
-		final long end = System.currentTimeMillis();
-		processingTime = end - start;
-
-		return ok.get();
+		catch ( InterruptedException | ExecutionException e )
+		{
+			errorMessage = e.getMessage();
+			return false;
+		}
+		return true;
 	}
 
 	@Override
@@ -22,21 +22,22 @@
 package fiji.plugin.trackmate.tracking.sparselap;
 
 import static fiji.plugin.trackmate.tracking.LAPUtils.checkFeatureMap;
+import static fiji.plugin.trackmate.tracking.LAPUtils.checkLAPSolver;
+import static fiji.plugin.trackmate.tracking.LAPUtils.getLAPSolverType;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALTERNATIVE_LINKING_COST_FACTOR;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LAP_SOLVER;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_FEATURE_PENALTIES;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_MAX_DISTANCE;
 import static fiji.plugin.trackmate.util.TMUtils.checkMapKeys;
 import static fiji.plugin.trackmate.util.TMUtils.checkParameter;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -47,15 +48,18 @@ import org.scijava.Cancelable;
 import fiji.plugin.trackmate.Logger;
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.SpotCollection;
-import fiji.plugin.trackmate.tracking.SpotTracker;
+import fiji.plugin.trackmate.tracking.FrameToFrameTracker;
 import fiji.plugin.trackmate.tracking.sparselap.costfunction.CostFunction;
 import fiji.plugin.trackmate.tracking.sparselap.costfunction.FeaturePenaltyCostFunction;
 import fiji.plugin.trackmate.tracking.sparselap.costfunction.SquareDistCostFunction;
 import fiji.plugin.trackmate.tracking.sparselap.costmatrix.JaqamanLinkingCostMatrixCreator;
 import fiji.plugin.trackmate.tracking.sparselap.linker.JaqamanLinker;
+import fiji.plugin.trackmate.tracking.sparselap.linker.LAPSolver;
+import fiji.plugin.trackmate.tracking.sparselap.linker.LAPSolverType;
+import fiji.plugin.trackmate.util.TrackMateExecutor;
 import net.imglib2.algorithm.MultiThreadedBenchmarkAlgorithm;
 
-public class SparseLAPFrameToFrameTracker extends MultiThreadedBenchmarkAlgorithm implements SpotTracker, Cancelable
+public class SparseLAPFrameToFrameTracker extends MultiThreadedBenchmarkAlgorithm implements FrameToFrameTracker, Cancelable
 {
 	private final static String BASE_ERROR_MESSAGE = "[SparseLAPFrameToFrameTracker] ";
 
@@ -173,85 +177,74 @@ public class SparseLAPFrameToFrameTracker extends MultiThreadedBenchmarkAlgorith
 		// Instantiate graph
 		graph = new SimpleWeightedGraph<>( DefaultWeightedEdge.class );
 
+		/*
+		 * Group frame pairs in blocks processed sequentially. A warm-started
+		 * solver carries the duals of one frame pair to the next, so we make
+		 * one block of consecutive frame pairs per thread. Otherwise, each
+		 * frame pair is a block.
+		 */
+		final LAPSolverType solverType = getLAPSolverType( settings );
+		final boolean chain = solverType.isWarmStarted();
+		final int nBlocks = chain ? Math.max( 1, Math.min( numThreads, framePairs.size() ) ) : framePairs.size();
+		final int threadsPerBlock = Math.max( 1, numThreads / Math.max( 1, nBlocks ) );
+		final List< List< int[] > > blocks = new ArrayList<>( nBlocks );
+		for ( int b = 0; b < nBlocks; b++ )
+		{
+			final int from = ( int ) ( ( long ) b * framePairs.size() / nBlocks );
+			final int to = ( int ) ( ( long ) ( b + 1 ) * framePairs.size() / nBlocks );
+			blocks.add( framePairs.subList( from, to ) );
+		}
+
 		// Prepare workers.
 		final AtomicInteger progress = new AtomicInteger( 0 );
 		final AtomicBoolean ok = new AtomicBoolean( true );
-		final ExecutorService executors = Executors.newFixedThreadPool( numThreads );
-		final List< Future< Void > > futures = new ArrayList<>( framePairs.size() );
-		for ( final int[] framePair : framePairs )
+		final List< Callable< Void > > tasks = new ArrayList<>( blocks.size() );
+		for ( final List< int[] > block : blocks )
 		{
-			final Future< Void > future = executors.submit( new Callable< Void >()
+			tasks.add( new Callable< Void >()
 			{
 
 				@Override
 				public Void call() throws Exception
 				{
-					if ( !ok.get() || isCanceled() )
-						return null;
-
-					// Get frame pairs
-					final int lFrame0 = framePair[ 0 ];
-					final int lFrame1 = framePair[ 1 ];
-
-					// Get spots - we have to create a list from each
-					// content.
-					final List< Spot > sources = new ArrayList<>( spots.getNSpots( lFrame0, true ) );
-					for ( final Iterator< Spot > iterator = spots.iterator( lFrame0, true ); iterator.hasNext(); )
-						sources.add( iterator.next() );
-
-					final List< Spot > targets = new ArrayList<>( spots.getNSpots( lFrame1, true ) );
-					for ( final Iterator< Spot > iterator = spots.iterator( lFrame1, true ); iterator.hasNext(); )
-						targets.add( iterator.next() );
-
-					if ( sources.isEmpty() || targets.isEmpty() )
-						return null;
+					final LAPSolver solver = solverType.create( threadsPerBlock );
+					final Map< Spot, double[] > duals = chain ? new HashMap<>() : null;
+					for ( final int[] framePair : block )
+					{
+						if ( !ok.get() || isCanceled() )
+							return null;
 
-					/*
-					 * Run the linker.
-					 */
+						// Get frame pairs
+						final int lFrame0 = framePair[ 0 ];
+						final int lFrame1 = framePair[ 1 ];
 
-					final JaqamanLinkingCostMatrixCreator< Spot, Spot > creator = new JaqamanLinkingCostMatrixCreator<>( sources, targets, costFunction, costThreshold, alternativeCostFactor, 1d );
-					final JaqamanLinker< Spot, Spot > linker = new JaqamanLinker<>( creator );
-					if ( !linker.checkInput() || !linker.process() )
-					{
-						errorMessage = "At frame " + lFrame0 + " to " + lFrame1 + ": " + linker.getErrorMessage();
-						ok.set( false );
-						return null;
-					}
+						// Get spots - we have to create a list from each
+						// content.
+						final List< Spot > sources = new ArrayList<>( spots.getNSpots( lFrame0, true ) );
+						for ( final Iterator< Spot > iterator = spots.iterator( lFrame0, true ); iterator.hasNext(); )
+							sources.add( iterator.next() );
 
-					/*
-					 * Update graph.
-					 */
+						final List< Spot > targets = new ArrayList<>( spots.getNSpots( lFrame1, true ) );
+						for ( final Iterator< Spot > iterator = spots.iterator( lFrame1, true ); iterator.hasNext(); )
+							targets.add( iterator.next() );
 
-					synchronized ( graph )
-					{
-						final Map< Spot, Double > costs = linker.getAssignmentCosts();
-						final Map< Spot, Spot > assignment = linker.getResult();
-						for ( final Spot source : assignment.keySet() )
+						if ( !link( sources, targets, costFunction, costThreshold, alternativeCostFactor, solver, duals, graph ) )
 						{
-							final double cost = costs.get( source );
-							final Spot target = assignment.get( source );
-							graph.addVertex( source );
-							graph.addVertex( target );
-							final DefaultWeightedEdge edge = graph.addEdge( source, target );
-							graph.setEdgeWeight( edge, cost );
+							ok.set( false );
+							return null;
 						}
-					}
 
-					logger.setProgress( progress.incrementAndGet() / framePairs.size() );
+						logger.setProgress( ( double ) progress.incrementAndGet() / framePairs.size() );
+					}
 					return null;
 				}
 			} );
-			futures.add( future );
 		}
 
 		logger.setStatus( "Frame to frame linking..." );
 		try
 		{
-			for ( final Future< ? > future : futures )
-				future.get();
-
-			executors.shutdown();
+			TrackMateExecutor.current().invokeAll( "Frame to frame linking", tasks, numThreads );
 		}
 		catch ( InterruptedException | ExecutionException e )
 		{
@@ -268,6 +261,95 @@ public class SparseLAPFrameToFrameTracker extends MultiThreadedBenchmarkAlgorith
 		return ok.get();
 	}
 
+	@Override
+	public boolean linkFrames( final List< Spot > sources, final List< Spot > targets, final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph )
+	{
+		final StringBuilder errorHolder = new StringBuilder();
+		if ( !checkSettingsValidity( settings, errorHolder ) )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + errorHolder.toString();
+			return false;
+		}
+
+		@SuppressWarnings( "unchecked" )
+		final Map< String, Double > featurePenalties = ( Map< String, Double > ) settings.get( KEY_LINKING_FEATURE_PENALTIES );
+		final CostFunction< Spot, Spot > costFunction = getCostFunction( featurePenalties );
+		final Double maxDist = ( Double ) settings.get( KEY_LINKING_MAX_DISTANCE );
+		final double costThreshold = maxDist * maxDist;
+		final double alternativeCostFactor = ( Double ) settings.get( KEY_ALTERNATIVE_LINKING_COST_FACTOR );
+		final LAPSolver solver = getLAPSolverType( settings ).create( numThreads );
+		return link( sources, targets, costFunction, costThreshold, alternativeCostFactor, solver, null, graph );
+	}
+
+	/**
+	 * Links two frames with the LAP framework and adds the links to the
+	 * specified graph.
+	 * <p>
+	 * If the <code>duals</code> map is not <code>null</code>, it is used to
+	 * warm-start the solver, and is replaced by the duals of this frame pair
+	 * on return, so that it can be passed to the next frame pair.
+	 */
+	private boolean link(
+			final List< Spot > sources,
+			final List< Spot > targets,
+			final CostFunction< Spot, Spot > costFunction,
+			final double costThreshold,
+			final double alternativeCostFactor,
+			final LAPSolver solver,
+			final Map< Spot, double[] > duals,
+			final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph )
+	{
+		if ( sources.isEmpty() || targets.isEmpty() )
+		{
+			if ( null != duals )
+				duals.clear();
+			return true;
+		}
+
+		/*
+		 * Run the linker.
+		 */
+
+		final JaqamanLinkingCostMatrixCreator< Spot, Spot > creator = new JaqamanLinkingCostMatrixCreator<>( sources, targets, costFunction, costThreshold, alternativeCostFactor, 1d );
+		final JaqamanLinker< Spot, Spot > linker = new JaqamanLinker<>( creator );
+		linker.setSolver( solver );
+		linker.setPreviousDuals( duals );
+		if ( !linker.checkInput() || !linker.process() )
+		{
+			errorMessage = "At frame " + sources.get( 0 ).getFeature( Spot.FRAME ).intValue()
+					+ " to " + targets.get( 0 ).getFeature( Spot.FRAME ).intValue()
+					+ ": " + linker.getErrorMessage();
+			return false;
+		}
+
+		if ( null != duals )
+		{
+			duals.clear();
+			if ( null != linker.getDuals() )
+				duals.putAll( linker.getDuals() );
+		}
+
+		/*
+		 * Update graph.
+		 */
+
+		synchronized ( graph )
+		{
+			final Map< Spot, Double > costs = linker.getAssignmentCosts();
+			final Map< Spot, Spot > assignment = linker.getResult();
+			for ( final Spot source : assignment.keySet() )
+			{
+				final double cost = costs.get( source );
+				final Spot target = assignment.get( source );
+				graph.addVertex( source );
+				graph.addVertex( target );
+				final DefaultWeightedEdge edge = graph.addEdge( source, target );
+				graph.setEdgeWeight( edge, cost );
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Creates a suitable cost function.
 	 *
@@ -303,6 +385,7 @@ public class SparseLAPFrameToFrameTracker extends MultiThreadedBenchmarkAlgorith
 		ok = ok & checkFeatureMap( settings, KEY_LINKING_FEATURE_PENALTIES, str );
 		// Others
 		ok = ok & checkParameter( settings, KEY_ALTERNATIVE_LINKING_COST_FACTOR, Double.class, str );
+		ok = ok & checkLAPSolver( settings, str );
 
 		// Check keys
 		final List< String > mandatoryKeys = new ArrayList<>();
@@ -310,6 +393,7 @@ public class SparseLAPFrameToFrameTracker extends MultiThreadedBenchmarkAlgorith
 		mandatoryKeys.add( KEY_ALTERNATIVE_LINKING_COST_FACTOR );
 		final List< String > optionalKeys = new ArrayList<>();
 		optionalKeys.add( KEY_LINKING_FEATURE_PENALTIES );
+		optionalKeys.add( KEY_LAP_SOLVER );
 		ok = ok & checkMapKeys( settings, mandatoryKeys, optionalKeys, str );
 
 		return ok;
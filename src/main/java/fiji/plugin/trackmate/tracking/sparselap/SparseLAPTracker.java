@@ -22,6 +22,7 @@
 package fiji.plugin.trackmate.tracking.sparselap;
 
 import static fiji.plugin.trackmate.tracking.LAPUtils.checkFeatureMap;
+import static fiji.plugin.trackmate.tracking.LAPUtils.checkLAPSolver;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_GAP_CLOSING;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_TRACK_MERGING;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_TRACK_SPLITTING;
@@ -31,6 +32,7 @@ import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_CUTOFF_PERCENTILE;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_FEATURE_PENALTIES;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_MAX_DISTANCE;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_MAX_FRAME_GAP;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LAP_SOLVER;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_FEATURE_PENALTIES;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_MAX_DISTANCE;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_MERGING_FEATURE_PENALTIES;
@@ -53,10 +55,10 @@ import fiji.plugin.trackmate.Logger;
 import fiji.plugin.trackmate.Logger.SlaveLogger;
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.SpotCollection;
-import fiji.plugin.trackmate.tracking.SpotTracker;
+import fiji.plugin.trackmate.tracking.FrameToFrameTracker;
 import net.imglib2.algorithm.MultiThreadedBenchmarkAlgorithm;
 
-public class SparseLAPTracker extends MultiThreadedBenchmarkAlgorithm implements SpotTracker, Cancelable
+public class SparseLAPTracker extends MultiThreadedBenchmarkAlgorithm implements FrameToFrameTracker, Cancelable
 {
 	private final static String BASE_ERROR_MESSAGE = "[SparseLAPTracker] ";
 
@@ -159,13 +161,7 @@ public class SparseLAPTracker extends MultiThreadedBenchmarkAlgorithm implements
 		 */
 
 
-		// Prepare settings object
-		final Map< String, Object > ftfSettings = new HashMap< >();
-		ftfSettings.put( KEY_LINKING_MAX_DISTANCE, settings.get( KEY_LINKING_MAX_DISTANCE ) );
-		ftfSettings.put( KEY_ALTERNATIVE_LINKING_COST_FACTOR, settings.get( KEY_ALTERNATIVE_LINKING_COST_FACTOR ) );
-		ftfSettings.put( KEY_LINKING_FEATURE_PENALTIES, settings.get( KEY_LINKING_FEATURE_PENALTIES ) );
-
-		final SparseLAPFrameToFrameTracker frameToFrameLinker = new SparseLAPFrameToFrameTracker( spots, ftfSettings );
+		final SparseLAPFrameToFrameTracker frameToFrameLinker = new SparseLAPFrameToFrameTracker( spots, getFrameToFrameSettings() );
 		cancelable = frameToFrameLinker;
 		frameToFrameLinker.setNumThreads( numThreads );
 		final SlaveLogger ftfLogger = new SlaveLogger( logger, 0, 0.5 );
@@ -202,6 +198,8 @@ public class SparseLAPTracker extends MultiThreadedBenchmarkAlgorithm implements
 
 		slSettings.put( KEY_ALTERNATIVE_LINKING_COST_FACTOR, settings.get( KEY_ALTERNATIVE_LINKING_COST_FACTOR ) );
 		slSettings.put( KEY_CUTOFF_PERCENTILE, settings.get( KEY_CUTOFF_PERCENTILE ) );
+		if ( settings.containsKey( KEY_LAP_SOLVER ) )
+			slSettings.put( KEY_LAP_SOLVER, settings.get( KEY_LAP_SOLVER ) );
 
 		// Solve.
 		final SparseLAPSegmentTracker segmentLinker = new SparseLAPSegmentTracker( graph, slSettings );
@@ -224,6 +222,43 @@ public class SparseLAPTracker extends MultiThreadedBenchmarkAlgorithm implements
 		return true;
 	}
 
+	/**
+	 * Returns <code>true</code> if gap-closing, track splitting and track
+	 * merging are all disabled. In that case, this tracker only performs
+	 * frame-to-frame linking.
+	 */
+	@Override
+	public boolean isFrameToFrame()
+	{
+		return !Boolean.TRUE.equals( settings.get( KEY_ALLOW_GAP_CLOSING ) )
+				&& !Boolean.TRUE.equals( settings.get( KEY_ALLOW_TRACK_SPLITTING ) )
+				&& !Boolean.TRUE.equals( settings.get( KEY_ALLOW_TRACK_MERGING ) );
+	}
+
+	@Override
+	public boolean linkFrames( final List< Spot > sources, final List< Spot > targets, final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph )
+	{
+		final SparseLAPFrameToFrameTracker frameToFrameLinker = new SparseLAPFrameToFrameTracker( spots, getFrameToFrameSettings() );
+		frameToFrameLinker.setNumThreads( numThreads );
+		if ( !frameToFrameLinker.linkFrames( sources, targets, graph ) )
+		{
+			errorMessage = frameToFrameLinker.getErrorMessage();
+			return false;
+		}
+		return true;
+	}
+
+	private Map< String, Object > getFrameToFrameSettings()
+	{
+		final Map< String, Object > ftfSettings = new HashMap< >();
+		ftfSettings.put( KEY_LINKING_MAX_DISTANCE, settings.get( KEY_LINKING_MAX_DISTANCE ) );
+		ftfSettings.put( KEY_ALTERNATIVE_LINKING_COST_FACTOR, settings.get( KEY_ALTERNATIVE_LINKING_COST_FACTOR ) );
+		ftfSettings.put( KEY_LINKING_FEATURE_PENALTIES, settings.get( KEY_LINKING_FEATURE_PENALTIES ) );
+		if ( settings.containsKey( KEY_LAP_SOLVER ) )
+			ftfSettings.put( KEY_LAP_SOLVER, settings.get( KEY_LAP_SOLVER ) );
+		return ftfSettings;
+	}
+
 	@Override
 	public void setLogger( final Logger logger )
 	{
@@ -258,6 +293,7 @@ public class SparseLAPTracker extends MultiThreadedBenchmarkAlgorithm implements
 		// Others
 		ok = ok & checkParameter( settings, KEY_CUTOFF_PERCENTILE, Double.class, str );
 		ok = ok & checkParameter( settings, KEY_ALTERNATIVE_LINKING_COST_FACTOR, Double.class, str );
+		ok = ok & checkLAPSolver( settings, str );
 
 		// Check keys
 		final List< String > mandatoryKeys = new ArrayList< >();
@@ -277,6 +313,7 @@ public class SparseLAPTracker extends MultiThreadedBenchmarkAlgorithm implements
 		optionalKeys.add( KEY_SPLITTING_FEATURE_PENALTIES );
 		optionalKeys.add( KEY_MERGING_FEATURE_PENALTIES );
 		optionalKeys.add( KEY_BLOCKING_VALUE );
+		optionalKeys.add( KEY_LAP_SOLVER );
 		ok = ok & checkMapKeys( settings, mandatoryKeys, optionalKeys, str );
 
 		return ok;
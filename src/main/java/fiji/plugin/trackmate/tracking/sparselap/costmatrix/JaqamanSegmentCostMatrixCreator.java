@@ -30,6 +30,7 @@ import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_CUTOFF_PERCENTILE;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_FEATURE_PENALTIES;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_MAX_DISTANCE;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_MAX_FRAME_GAP;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LAP_SOLVER;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_MERGING_FEATURE_PENALTIES;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_MERGING_MAX_DISTANCE;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_SPLITTING_FEATURE_PENALTIES;
@@ -41,14 +42,13 @@ import fiji.plugin.trackmate.tracking.sparselap.costfunction.CostFunction;
 import fiji.plugin.trackmate.tracking.sparselap.costfunction.FeaturePenaltyCostFunction;
 import fiji.plugin.trackmate.tracking.sparselap.costfunction.SquareDistCostFunction;
 import fiji.plugin.trackmate.tracking.sparselap.linker.SparseCostMatrix;
+import fiji.plugin.trackmate.util.TrackMateExecutor;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ExecutionException;
 
 import net.imglib2.algorithm.MultiThreaded;
 import org.jgrapht.Graph;
@@ -217,10 +217,10 @@ public class JaqamanSegmentCostMatrixCreator implements CostMatrixCreator< Spot,
 		 * (gap-closing) then the segment middles (merging).
 		 */
 
-		final ExecutorService executorGCM = Executors.newFixedThreadPool( numThreads );
+		final List< Runnable > tasksGCM = new ArrayList<>( segmentEnds.size() );
 		for ( final Spot source : segmentEnds )
 		{
-			executorGCM.submit( new Runnable()
+			tasksGCM.add( new Runnable()
 			{
 				@Override
 				public void run()
@@ -294,12 +294,11 @@ public class JaqamanSegmentCostMatrixCreator implements CostMatrixCreator< Spot,
 				}
 			} );
 		}
-		executorGCM.shutdown();
 		try
 		{
-			executorGCM.awaitTermination( 1, TimeUnit.DAYS );
+			TrackMateExecutor.current().runAll( "Gap-closing cost matrix", tasksGCM, numThreads );
 		}
-		catch ( final InterruptedException e )
+		catch ( final InterruptedException | ExecutionException e )
 		{
 			errorMessage = BASE_ERROR_MESSAGE + e.getMessage();
 			return false;
@@ -310,10 +309,10 @@ public class JaqamanSegmentCostMatrixCreator implements CostMatrixCreator< Spot,
 		 */
 		if ( allowSplitting )
 		{
-			final ExecutorService executorS = Executors.newFixedThreadPool( numThreads );
+			final List< Runnable > tasksS = new ArrayList<>( allMiddles.size() );
 			for ( final Spot source : allMiddles )
 			{
-				executorS.submit( new Runnable()
+				tasksS.add( new Runnable()
 				{
 					@Override
 					public void run()
@@ -347,12 +346,11 @@ public class JaqamanSegmentCostMatrixCreator implements CostMatrixCreator< Spot,
 				}
 						);
 			}
-			executorS.shutdown();
 			try
 			{
-				executorS.awaitTermination( 1, TimeUnit.DAYS );
+				TrackMateExecutor.current().runAll( "Splitting cost matrix", tasksS, numThreads );
 			}
-			catch ( final InterruptedException e )
+			catch ( final InterruptedException | ExecutionException e )
 			{
 				errorMessage = BASE_ERROR_MESSAGE + e.getMessage();
 			}
@@ -490,6 +488,7 @@ public class JaqamanSegmentCostMatrixCreator implements CostMatrixCreator< Spot,
 		optionalKeys.add( KEY_GAP_CLOSING_FEATURE_PENALTIES );
 		optionalKeys.add( KEY_SPLITTING_FEATURE_PENALTIES );
 		optionalKeys.add( KEY_MERGING_FEATURE_PENALTIES );
+		optionalKeys.add( KEY_LAP_SOLVER );
 		ok = ok & checkMapKeys( settings, mandatoryKeys, optionalKeys, str );
 
 		return ok;
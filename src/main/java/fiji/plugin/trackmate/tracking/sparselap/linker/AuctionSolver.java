@@ -0,0 +1,395 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.tracking.sparselap.linker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import fiji.plugin.trackmate.util.TrackMateExecutor;
+import net.imglib2.algorithm.MultiThreaded;
+
+/**
+ * A {@link LAPSolver} based on the &epsilon;-scaling auction algorithm of
+ * Bertsekas.
+ * <p>
+ * Rows bid for columns in rounds. In each round, all the unassigned rows
+ * compute their bids concurrently against the current column prices (Jacobi
+ * variant), then each column is given to its highest bidder. The bidding is
+ * distributed over several threads when there are many unassigned rows. The
+ * auction is run for decreasing values of &epsilon;, each phase starting from
+ * the prices of the previous one.
+ * <p>
+ * With real-valued costs, the auction only converges to an assignment within
+ * <code>n&epsilon;</code> of the optimum. To return the same optimal
+ * assignment cost as {@link LAPJV}, the last prices are therefore used to
+ * warm-start a Jonker-Volgenant solver, which has then very few rows to
+ * augment. If the auction takes too many bids, for instance because the
+ * problem is badly conditioned, it is stopped and the Jonker-Volgenant solver
+ * finishes the job from the current prices.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ * @see <a href="https://doi.org/10.1007/BF02186476">D. P. Bertsekas, "The
+ *      auction algorithm: A distributed relaxation method for the assignment
+ *      problem", Annals of Operations Research 14 (1988)</a>
+ */
+public class AuctionSolver implements LAPSolver, MultiThreaded
+{
+
+	private static final String BASE_ERROR_MESSAGE = "[AuctionSolver] ";
+
+	/**
+	 * Below this number of bidders in a round, bids are computed in the
+	 * calling thread.
+	 */
+	private static final int MIN_BIDDERS_PER_THREAD = 2048;
+
+	/**
+	 * The auction is stopped after this many bids per non-zero cost.
+	 */
+	private static final long MAX_BIDS_PER_ENTRY = 50;
+
+	/**
+	 * Factor by which &epsilon; is divided between two phases.
+	 */
+	private static final double EPSILON_FACTOR = 5.;
+
+	private int numThreads;
+
+	private int[] result;
+
+	private double[] columnDuals;
+
+	private String errorMessage;
+
+	private long processingTime;
+
+	public AuctionSolver()
+	{
+		setNumThreads();
+	}
+
+	@Override
+	public boolean solve( final SparseCostMatrix cm )
+	{
+		final long start = System.currentTimeMillis();
+		result = null;
+		columnDuals = null;
+
+		if ( cm.nRows > cm.nCols )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "This solver converges only if the cost matrix has more rows than column. Found " + cm.nRows + " rows and " + cm.nCols + " columns.";
+			return false;
+		}
+		double minCost = Double.POSITIVE_INFINITY;
+		double maxCost = Double.NEGATIVE_INFINITY;
+		for ( final double c : cm.cc )
+		{
+			minCost = Math.min( minCost, c );
+			maxCost = Math.max( maxCost, c );
+		}
+		if ( minCost <= 0 )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "This solver only accept strictly positive costs. Found " + minCost + ".";
+			return false;
+		}
+		for ( int i = 0; i < cm.nRows; i++ )
+		{
+			if ( cm.number[ i ] == 0 )
+			{
+				errorMessage = BASE_ERROR_MESSAGE + "The row " + i + " of the cost matrix has no cost. The problem is infeasible.";
+				return false;
+			}
+		}
+
+		/*
+		 * Auction phases.
+		 */
+
+		final double[] prices = new double[ cm.nCols ];
+		if ( cm.nRows > 0 )
+		{
+			final double scale = ( maxCost > minCost ) ? maxCost - minCost : maxCost;
+			final double epsilonMin = scale / ( 10. * ( cm.nRows + 1 ) );
+			final long maxBids = MAX_BIDS_PER_ENTRY * ( cm.cc.length + cm.nRows );
+			final Auction auction = new Auction( cm, prices, scale, maxBids );
+			double epsilon = scale / EPSILON_FACTOR;
+			while ( true )
+			{
+				try
+				{
+					if ( !auction.run( epsilon ) )
+						break;
+				}
+				catch ( InterruptedException | ExecutionException e )
+				{
+					errorMessage = BASE_ERROR_MESSAGE + e.getMessage();
+					return false;
+				}
+				if ( epsilon <= epsilonMin )
+					break;
+				epsilon = Math.max( epsilonMin, epsilon / EPSILON_FACTOR );
+			}
+		}
+
+		/*
+		 * Exact finish.
+		 */
+
+		final double[] v = new double[ cm.nCols ];
+		for ( int j = 0; j < v.length; j++ )
+			v[ j ] = -prices[ j ];
+
+		final LAPJV solver = new LAPJV( cm, v );
+		if ( !solver.process() )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + solver.getErrorMessage();
+			return false;
+		}
+		result = solver.getResult();
+		columnDuals = solver.getColumnDuals();
+
+		final long end = System.currentTimeMillis();
+		processingTime = end - start;
+		return true;
+	}
+
+	@Override
+	public int[] getResult()
+	{
+		return result;
+	}
+
+	@Override
+	public double[] getColumnDuals()
+	{
+		return columnDuals;
+	}
+
+	@Override
+	public String getErrorMessage()
+	{
+		return errorMessage;
+	}
+
+	@Override
+	public long getProcessingTime()
+	{
+		return processingTime;
+	}
+
+	@Override
+	public void setNumThreads()
+	{
+		this.numThreads = Runtime.getRuntime().availableProcessors();
+	}
+
+	@Override
+	public void setNumThreads( final int numThreads )
+	{
+		this.numThreads = numThreads;
+	}
+
+	@Override
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+
+	/**
+	 * The state of an auction over several &epsilon; phases.
+	 */
+	private final class Auction
+	{
+
+		private final SparseCostMatrix cm;
+
+		private final double[] prices;
+
+		/**
+		 * Bid increment for rows that have a single column to bid for.
+		 */
+		private final double scale;
+
+		private final long maxBids;
+
+		private long nBids;
+
+		private final int[] owner;
+
+		private final double[] bestBid;
+
+		private final int[] bidder;
+
+		private final int[] bidCol;
+
+		private final double[] bidPrice;
+
+		public Auction( final SparseCostMatrix cm, final double[] prices, final double scale, final long maxBids )
+		{
+			this.cm = cm;
+			this.prices = prices;
+			this.scale = scale;
+			this.maxBids = maxBids;
+			this.owner = new int[ cm.nCols ];
+			this.bestBid = new double[ cm.nCols ];
+			this.bidder = new int[ cm.nCols ];
+			this.bidCol = new int[ cm.nRows ];
+			this.bidPrice = new double[ cm.nRows ];
+		}
+
+		/**
+		 * Runs one auction phase from the current prices.
+		 *
+		 * @return <code>false</code> if the phase was stopped because it took
+		 *         too many bids.
+		 */
+		public boolean run( final double epsilon ) throws InterruptedException, ExecutionException
+		{
+			Arrays.fill( owner, -1 );
+			Arrays.fill( bestBid, Double.NEGATIVE_INFINITY );
+			int[] unassigned = new int[ cm.nRows ];
+			for ( int i = 0; i < unassigned.length; i++ )
+				unassigned[ i ] = i;
+			int nUnassigned = unassigned.length;
+			int[] next = new int[ cm.nRows ];
+			final int[] touched = new int[ cm.nCols ];
+
+			while ( nUnassigned > 0 )
+			{
+				nBids += nUnassigned;
+				if ( nBids > maxBids )
+					return false;
+
+				// Bidding.
+				bid( unassigned, nUnassigned, epsilon );
+
+				// Assignment: each column goes to its highest bidder.
+				int nTouched = 0;
+				for ( int b = 0; b < nUnassigned; b++ )
+				{
+					final int j = bidCol[ b ];
+					if ( bestBid[ j ] == Double.NEGATIVE_INFINITY )
+						touched[ nTouched++ ] = j;
+					if ( bidPrice[ b ] > bestBid[ j ] )
+					{
+						bestBid[ j ] = bidPrice[ b ];
+						bidder[ j ] = unassigned[ b ];
+					}
+				}
+
+				int nNext = 0;
+				for ( int b = 0; b < nUnassigned; b++ )
+				{
+					final int i = unassigned[ b ];
+					if ( bidder[ bidCol[ b ] ] != i )
+						next[ nNext++ ] = i;
+				}
+				for ( int t = 0; t < nTouched; t++ )
+				{
+					final int j = touched[ t ];
+					if ( owner[ j ] >= 0 )
+						next[ nNext++ ] = owner[ j ];
+					owner[ j ] = bidder[ j ];
+					prices[ j ] = bestBid[ j ];
+					bestBid[ j ] = Double.NEGATIVE_INFINITY;
+				}
+
+				final int[] tmp = unassigned;
+				unassigned = next;
+				next = tmp;
+				nUnassigned = nNext;
+			}
+			return true;
+		}
+
+		/**
+		 * Computes the bids of the specified unassigned rows, concurrently if
+		 * there are enough of them.
+		 */
+		private void bid( final int[] unassigned, final int nUnassigned, final double epsilon ) throws InterruptedException, ExecutionException
+		{
+			final int nTasks = Math.max( 1, Math.min( numThreads, nUnassigned / MIN_BIDDERS_PER_THREAD ) );
+			if ( nTasks == 1 )
+			{
+				bid( unassigned, 0, nUnassigned, epsilon );
+				return;
+			}
+
+			final List< Callable< Void > > tasks = new ArrayList<>( nTasks );
+			final int chunk = ( nUnassigned + nTasks - 1 ) / nTasks;
+			for ( int t = 0; t < nTasks; t++ )
+			{
+				final int from = t * chunk;
+				final int to = Math.min( nUnassigned, from + chunk );
+				tasks.add( new Callable< Void >()
+				{
+					@Override
+					public Void call() throws Exception
+					{
+						bid( unassigned, from, to, epsilon );
+						return null;
+					}
+				} );
+			}
+			TrackMateExecutor.current().invokeAll( "LAP auction", tasks, nTasks );
+		}
+
+		/**
+		 * Computes the bids of the unassigned rows in the specified range.
+		 * Only reads the prices, so that ranges can be processed
+		 * concurrently.
+		 */
+		private void bid( final int[] unassigned, final int from, final int to, final double epsilon )
+		{
+			for ( int b = from; b < to; b++ )
+			{
+				final int i = unassigned[ b ];
+				double w1 = Double.POSITIVE_INFINITY;
+				double w2 = Double.POSITIVE_INFINITY;
+				int j1 = -1;
+				for ( int k = cm.start[ i ]; k < cm.start[ i ] + cm.number[ i ]; k++ )
+				{
+					final int j = cm.kk[ k ];
+					final double w = cm.cc[ k ] + prices[ j ];
+					if ( w < w1 )
+					{
+						w2 = w1;
+						w1 = w;
+						j1 = j;
+					}
+					else if ( w < w2 )
+					{
+						w2 = w;
+					}
+				}
+				if ( w2 == Double.POSITIVE_INFINITY )
+					w2 = w1 + scale;
+
+				bidCol[ b ] = j1;
+				bidPrice[ b ] = prices[ j1 ] + ( w2 - w1 ) + epsilon;
+			}
+		}
+	}
+}
@@ -0,0 +1,330 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.tracking.sparselap.linker;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A fast approximate {@link LAPSolver} with a bounded optimality gap.
+ * <p>
+ * The cheapest costs of the matrix are assigned greedily, then the rows left
+ * unassigned are matched by augmenting paths, so that every row is assigned
+ * when the problem is feasible. The cost of this assignment is compared to a
+ * lower bound of the optimal cost, computed from a feasible solution of the
+ * dual problem. If the relative difference exceeds the maximal gap specified
+ * at construction, the problem is solved exactly with {@link LAPJV} instead.
+ * The cost of the returned assignment is therefore never larger than
+ * <code>(1 + maxGap)</code> times the optimal cost.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+public class GreedySolver implements LAPSolver
+{
+
+	private static final String BASE_ERROR_MESSAGE = "[GreedySolver] ";
+
+	/**
+	 * The default maximal relative optimality gap.
+	 */
+	public static final double DEFAULT_MAX_GAP = 0.05;
+
+	/**
+	 * Number of coordinate ascent iterations used to compute the dual lower
+	 * bound.
+	 */
+	private static final int N_DUAL_ITERATIONS = 3;
+
+	private final double maxGap;
+
+	private int[] result;
+
+	private double gap;
+
+	private boolean exact;
+
+	private String errorMessage;
+
+	private long processingTime;
+
+	/**
+	 * Creates a new greedy solver.
+	 *
+	 * @param maxGap
+	 *            the maximal relative optimality gap accepted for the greedy
+	 *            solution, before falling back to an exact solver.
+	 */
+	public GreedySolver( final double maxGap )
+	{
+		this.maxGap = maxGap;
+	}
+
+	/**
+	 * Creates a new greedy solver with the default maximal optimality gap.
+	 */
+	public GreedySolver()
+	{
+		this( DEFAULT_MAX_GAP );
+	}
+
+	@Override
+	public boolean solve( final SparseCostMatrix cm )
+	{
+		final long start = System.currentTimeMillis();
+		result = null;
+
+		final LAPJV exactSolver = new LAPJV( cm );
+		if ( !exactSolver.checkInput() )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + exactSolver.getErrorMessage();
+			return false;
+		}
+
+		final int[] x = new int[ cm.nRows ];
+		final int[] y = new int[ cm.nCols ];
+		Arrays.fill( x, -1 );
+		Arrays.fill( y, -1 );
+
+		/*
+		 * Greedy assignment, by increasing costs.
+		 */
+
+		final int[] rowOf = new int[ cm.cc.length ];
+		for ( int i = 0; i < cm.nRows; i++ )
+			for ( int k = cm.start[ i ]; k < cm.start[ i ] + cm.number[ i ]; k++ )
+				rowOf[ k ] = i;
+
+		final Integer[] order = new Integer[ cm.cc.length ];
+		for ( int k = 0; k < order.length; k++ )
+			order[ k ] = Integer.valueOf( k );
+		Arrays.sort( order, Comparator.comparingDouble( k -> cm.cc[ k ] ) );
+
+		int nAssigned = 0;
+		for ( final Integer ko : order )
+		{
+			final int k = ko.intValue();
+			final int i = rowOf[ k ];
+			final int j = cm.kk[ k ];
+			if ( x[ i ] < 0 && y[ j ] < 0 )
+			{
+				x[ i ] = j;
+				y[ j ] = i;
+				if ( ++nAssigned == cm.nRows )
+					break;
+			}
+		}
+
+		/*
+		 * Repair: assign the remaining rows with augmenting paths.
+		 */
+
+		boolean feasible = true;
+		if ( nAssigned < cm.nRows )
+		{
+			final int[] predRow = new int[ cm.nCols ];
+			final int[] visited = new int[ cm.nCols ];
+			final int[] queue = new int[ cm.nRows ];
+			Arrays.fill( visited, -1 );
+			for ( int i0 = 0; i0 < cm.nRows; i0++ )
+			{
+				if ( x[ i0 ] >= 0 )
+					continue;
+				if ( !augment( cm, i0, x, y, predRow, visited, queue ) )
+				{
+					feasible = false;
+					break;
+				}
+			}
+		}
+
+		/*
+		 * Check the gap against the dual lower bound.
+		 */
+
+		exact = true;
+		gap = 0.;
+		if ( feasible )
+		{
+			double cost = 0.;
+			for ( int i = 0; i < cm.nRows; i++ )
+				cost += cm.get( i, x[ i ], Double.POSITIVE_INFINITY );
+
+			final double lowerBound = lowerBound( cm );
+			final double g = ( lowerBound > 0 ) ? ( cost - lowerBound ) / lowerBound : Double.POSITIVE_INFINITY;
+			if ( g <= maxGap )
+			{
+				result = x;
+				gap = Math.max( 0., g );
+				exact = false;
+			}
+		}
+
+		if ( exact )
+		{
+			if ( !exactSolver.process() )
+			{
+				errorMessage = BASE_ERROR_MESSAGE + exactSolver.getErrorMessage();
+				return false;
+			}
+			result = exactSolver.getResult();
+		}
+
+		final long end = System.currentTimeMillis();
+		processingTime = end - start;
+		return true;
+	}
+
+	/**
+	 * Finds a shortest augmenting path from the free row <code>i0</code> with
+	 * a breadth-first search, and flips it.
+	 */
+	private static boolean augment( final SparseCostMatrix cm, final int i0, final int[] x, final int[] y, final int[] predRow, final int[] visited, final int[] queue )
+	{
+		int head = 0;
+		int tail = 0;
+		queue[ tail++ ] = i0;
+		while ( head < tail )
+		{
+			final int i = queue[ head++ ];
+			for ( int k = cm.start[ i ]; k < cm.start[ i ] + cm.number[ i ]; k++ )
+			{
+				final int j = cm.kk[ k ];
+				if ( visited[ j ] == i0 )
+					continue;
+				visited[ j ] = i0;
+				predRow[ j ] = i;
+				if ( y[ j ] < 0 )
+				{
+					// Flip the path.
+					int jj = j;
+					while ( jj >= 0 )
+					{
+						final int ii = predRow[ jj ];
+						final int previous = x[ ii ];
+						x[ ii ] = jj;
+						y[ jj ] = ii;
+						jj = ( ii == i0 ) ? -1 : previous;
+					}
+					return true;
+				}
+				queue[ tail++ ] = y[ j ];
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Computes a lower bound of the optimal assignment cost.
+	 * <p>
+	 * The sum of the row minima is always a lower bound. When the matrix is
+	 * square, all columns are assigned, and a better bound is obtained by
+	 * alternately maximizing the row and column duals <code>u</code> and
+	 * <code>v</code> under the constraint <code>u_i + v_j &le; c_ij</code>.
+	 */
+	private static double lowerBound( final SparseCostMatrix cm )
+	{
+		final double[] u = new double[ cm.nRows ];
+		Arrays.fill( u, Double.POSITIVE_INFINITY );
+		for ( int i = 0; i < cm.nRows; i++ )
+			for ( int k = cm.start[ i ]; k < cm.start[ i ] + cm.number[ i ]; k++ )
+				u[ i ] = Math.min( u[ i ], cm.cc[ k ] );
+
+		double rowBound = 0.;
+		for ( final double ui : u )
+			rowBound += ui;
+
+		if ( cm.nRows != cm.nCols )
+			return rowBound;
+
+		final double[] v = new double[ cm.nCols ];
+		Arrays.fill( u, 0. );
+		double dualBound = Double.NEGATIVE_INFINITY;
+		for ( int iter = 0; iter < N_DUAL_ITERATIONS; iter++ )
+		{
+			// Columns.
+			Arrays.fill( v, Double.POSITIVE_INFINITY );
+			for ( int i = 0; i < cm.nRows; i++ )
+			{
+				for ( int k = cm.start[ i ]; k < cm.start[ i ] + cm.number[ i ]; k++ )
+				{
+					final int j = cm.kk[ k ];
+					v[ j ] = Math.min( v[ j ], cm.cc[ k ] - u[ i ] );
+				}
+			}
+			// Rows.
+			Arrays.fill( u, Double.POSITIVE_INFINITY );
+			for ( int i = 0; i < cm.nRows; i++ )
+				for ( int k = cm.start[ i ]; k < cm.start[ i ] + cm.number[ i ]; k++ )
+					u[ i ] = Math.min( u[ i ], cm.cc[ k ] - v[ cm.kk[ k ] ] );
+
+			double sum = 0.;
+			for ( final double ui : u )
+				sum += ui;
+			for ( final double vj : v )
+				sum += vj;
+			dualBound = Math.max( dualBound, sum );
+		}
+		return Math.max( rowBound, dualBound );
+	}
+
+	/**
+	 * Returns an upper bound of the relative optimality gap of the last
+	 * assignment returned, that is the relative difference between its cost
+	 * and the optimal cost.
+	 *
+	 * @return the optimality gap, <code>0</code> if the problem was solved
+	 *         exactly.
+	 */
+	public double getOptimalityGap()
+	{
+		return gap;
+	}
+
+	/**
+	 * Returns whether the last problem had to be solved with the exact solver
+	 * because the greedy assignment was too far from optimal.
+	 *
+	 * @return <code>true</code> if the exact solver was used.
+	 */
+	public boolean isExact()
+	{
+		return exact;
+	}
+
+	@Override
+	public int[] getResult()
+	{
+		return result;
+	}
+
+	@Override
+	public String getErrorMessage()
+	{
+		return errorMessage;
+	}
+
+	@Override
+	public long getProcessingTime()
+	{
+		return processingTime;
+	}
+}
@@ -55,6 +55,12 @@ public class JaqamanLinker< K extends Comparable< K >, J extends Comparable< J >
 
 	private final Logger logger;
 
+	private LAPSolver solver = new JonkerVolgenantSolver();
+
+	private Map< K, double[] > previousDuals;
+
+	private Map< J, double[] > duals;
+
 	/**
 	 * Creates a new linker for the specified cost matrix creator. See Jaqaman
 	 * <i>et al.</i>, Nature Methods, <b>2008</b>, Figure 1b.
@@ -104,6 +110,60 @@ public class JaqamanLinker< K extends Comparable< K >, J extends Comparable< J >
 		return costs;
 	}
 
+	/**
+	 * Returns the dual variables computed by the solver in the last call to
+	 * {@link #process()}, keyed by target object.
+	 * <p>
+	 * For each target, the map stores an array of two values: the dual of the
+	 * target column, and the dual of the no-linking column of the source
+	 * assigned to this target (or {@link Double#NaN} if the target is not
+	 * assigned to a source). Both are expressed relative to the minimal cost
+	 * of their column.
+	 * <p>
+	 * These duals can be passed to the linker of the next frame pair with
+	 * {@link #setPreviousDuals(Map)}, to warm-start its solver.
+	 *
+	 * @return the duals, or <code>null</code> if the solver does not compute
+	 *         them.
+	 */
+	public Map< J, double[] > getDuals()
+	{
+		return duals;
+	}
+
+	/**
+	 * Sets the solver used to solve the linear assignment problem. By default,
+	 * a cold-started {@link JonkerVolgenantSolver} is used.
+	 *
+	 * @param solver
+	 *            the solver.
+	 */
+	public void setSolver( final LAPSolver solver )
+	{
+		this.solver = solver;
+	}
+
+	/**
+	 * Sets the duals of a previous, similar, problem to warm-start the solver
+	 * with, if it supports it.
+	 * <p>
+	 * The duals are expected to be the ones returned by {@link #getDuals()}
+	 * for the previous problem, whose targets are the sources of this
+	 * problem, as when linking consecutive frame pairs. The no-linking column
+	 * of each source starts from the no-linking dual of the source it was
+	 * linked to previously. Each target column starts from the target dual of
+	 * its cheapest source. The columns for which nothing is known start from
+	 * their minimal cost, as in a cold start.
+	 *
+	 * @param previousDuals
+	 *            the duals of the previous problem, or <code>null</code> to
+	 *            start from scratch.
+	 */
+	public void setPreviousDuals( final Map< K, double[] > previousDuals )
+	{
+		this.previousDuals = previousDuals;
+	}
+
 	@Override
 	public boolean checkInput()
 	{
@@ -135,6 +195,7 @@ public class JaqamanLinker< K extends Comparable< K >, J extends Comparable< J >
 		{
 			assignments = Collections.emptyMap();
 			costs = Collections.emptyMap();
+			duals = Collections.emptyMap();
 			final long end = System.currentTimeMillis();
 			processingTime = end - start;
 			return true;
@@ -198,14 +259,43 @@ public class JaqamanLinker< K extends Comparable< K >, J extends Comparable< J >
 		 * Solve the full cost matrix.
 		 */
 		logger.setStatus( "Solving the cost matrix..." );
-		final LAPJV solver = new LAPJV( full );
-		if ( !solver.checkInput() || !solver.process() )
+		/*
+		 * Duals are exchanged relative to the minimal cost of their column, so
+		 * that they do not depend on the offset of the dual solution.
+		 */
+		final int[] cheapest = new int[ nCols ];
+		final double[] colMin = columnMinima( tl, ccbl, cctr, minCost, cheapest );
+		if ( solver.isWarmStarted() && null != previousDuals && !previousDuals.isEmpty() )
+			solver.setInitialColumnDuals( initialColumnDuals( colMin, cheapest, matrixRows ) );
+		else
+			solver.setInitialColumnDuals( null );
+
+		if ( !solver.solve( full ) )
 		{
 			errorMessage = solver.getErrorMessage();
 			return false;
 		}
 
 		final int[] assgn = solver.getResult();
+		final double[] v = solver.getColumnDuals();
+		if ( null == v )
+		{
+			duals = null;
+		}
+		else
+		{
+			final double[][] d = new double[ nCols ][];
+			for ( int j = 0; j < nCols; j++ )
+				d[ j ] = new double[] { v[ j ] - colMin[ j ], Double.NaN };
+			for ( int i = 0; i < nRows; i++ )
+				if ( assgn[ i ] < nCols )
+					d[ assgn[ i ] ][ 1 ] = v[ nCols + i ] - colMin[ nCols + i ];
+
+			duals = new HashMap<>( nCols );
+			for ( int j = 0; j < nCols; j++ )
+				duals.put( matrixCols.get( j ), d[ j ] );
+		}
+
 		assignments = new HashMap< >();
 		costs = new HashMap< >();
 		for ( int i = 0; i < assgn.length; i++ )
@@ -230,6 +320,63 @@ public class JaqamanLinker< K extends Comparable< K >, J extends Comparable< J >
 		return true;
 	}
 
+	/**
+	 * Returns the minimal cost of each column of the full cost matrix, and
+	 * stores the row of the cheapest source of each target column in the
+	 * specified array, or -1 if there is none.
+	 */
+	private static double[] columnMinima( final SparseCostMatrix tl, final double[] ccbl, final double[] cctr, final double minCost, final int[] cheapest )
+	{
+		final int nCols = tl.nCols;
+		final double[] colMin = new double[ nCols + tl.nRows ];
+		final double[] linkMin = new double[ nCols ];
+		Arrays.fill( linkMin, Double.POSITIVE_INFINITY );
+		Arrays.fill( cheapest, -1 );
+		for ( int i = 0; i < tl.nRows; i++ )
+		{
+			for ( int k = tl.start[ i ]; k < tl.start[ i ] + tl.number[ i ]; k++ )
+			{
+				final int j = tl.kk[ k ];
+				if ( tl.cc[ k ] < linkMin[ j ] )
+				{
+					linkMin[ j ] = tl.cc[ k ];
+					cheapest[ j ] = i;
+				}
+			}
+			// Bottom-right is the transpose of top-left.
+			colMin[ nCols + i ] = ( tl.number[ i ] > 0 ) ? Math.min( cctr[ i ], minCost ) : cctr[ i ];
+		}
+		for ( int j = 0; j < nCols; j++ )
+			colMin[ j ] = Math.min( ccbl[ j ], linkMin[ j ] );
+		return colMin;
+	}
+
+	/**
+	 * Builds the initial column duals from the previous ones. Unknown duals
+	 * are left to NaN.
+	 */
+	private double[] initialColumnDuals( final double[] colMin, final int[] cheapest, final List< K > matrixRows )
+	{
+		final int nCols = cheapest.length;
+		final double[] v = new double[ colMin.length ];
+		Arrays.fill( v, Double.NaN );
+		for ( int j = 0; j < nCols; j++ )
+		{
+			if ( cheapest[ j ] < 0 )
+				continue;
+			final double[] dual = previousDuals.get( matrixRows.get( cheapest[ j ] ) );
+			if ( null != dual )
+				v[ j ] = colMin[ j ] + dual[ 0 ];
+		}
+		for ( int i = 0; i < matrixRows.size(); i++ )
+		{
+			final double[] dual = previousDuals.get( matrixRows.get( i ) );
+			if ( null != dual )
+				v[ nCols + i ] = colMin[ nCols + i ] + dual[ 1 ];
+		}
+		return v;
+	}
+
 	public String resultToString()
 	{
 		if ( null == assignments ) { return "Not solved yet. Process the algorithm prior to calling this method."; }
@@ -0,0 +1,125 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.tracking.sparselap.linker;
+
+/**
+ * A {@link LAPSolver} based on the sparse Jonker-Volgenant algorithm
+ * implemented in {@link LAPJV}.
+ * <p>
+ * If warm starts are enabled, the column duals set with
+ * {@link #setInitialColumnDuals(double[])} are used to initialize the
+ * algorithm in place of the column reduction phase. The solution is optimal
+ * in both cases.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+public class JonkerVolgenantSolver implements LAPSolver
+{
+
+	private final boolean warmStart;
+
+	private double[] initialColumnDuals;
+
+	private double[] columnDuals;
+
+	private int[] result;
+
+	private String errorMessage;
+
+	private long processingTime;
+
+	/**
+	 * Creates a new Jonker-Volgenant solver.
+	 *
+	 * @param warmStart
+	 *            whether to use the initial column duals, when they are
+	 *            specified.
+	 */
+	public JonkerVolgenantSolver( final boolean warmStart )
+	{
+		this.warmStart = warmStart;
+	}
+
+	/**
+	 * Creates a new Jonker-Volgenant solver that always starts from scratch.
+	 */
+	public JonkerVolgenantSolver()
+	{
+		this( false );
+	}
+
+	@Override
+	public boolean solve( final SparseCostMatrix cm )
+	{
+		final double[] v = ( warmStart && null != initialColumnDuals && initialColumnDuals.length == cm.nCols ) ? initialColumnDuals : null;
+		initialColumnDuals = null;
+
+		final LAPJV solver = new LAPJV( cm, v );
+		if ( !solver.checkInput() || !solver.process() )
+		{
+			errorMessage = solver.getErrorMessage();
+			result = null;
+			columnDuals = null;
+			return false;
+		}
+		result = solver.getResult();
+		columnDuals = solver.getColumnDuals();
+		processingTime = solver.getProcessingTime();
+		return true;
+	}
+
+	@Override
+	public int[] getResult()
+	{
+		return result;
+	}
+
+	@Override
+	public double[] getColumnDuals()
+	{
+		return columnDuals;
+	}
+
+	@Override
+	public void setInitialColumnDuals( final double[] columnDuals )
+	{
+		this.initialColumnDuals = columnDuals;
+	}
+
+	@Override
+	public boolean isWarmStarted()
+	{
+		return warmStart;
+	}
+
+	@Override
+	public String getErrorMessage()
+	{
+		return errorMessage;
+	}
+
+	@Override
+	public long getProcessingTime()
+	{
+		return processingTime;
+	}
+}
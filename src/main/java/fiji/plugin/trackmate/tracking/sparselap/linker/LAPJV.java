@@ -67,6 +67,12 @@ public class LAPJV implements OutputAlgorithm< int[] >, Benchmark
 
 	private static final String BASE_ERROR_MESSAGE = "[JonkerVolgenantSparseAlgorithm] ";
 
+	/**
+	 * Relative tolerance under which two reduced costs are considered equal
+	 * when warm-starting.
+	 */
+	private static final double TIE_TOLERANCE = 1e-10;
+
 	private int[] output;
 
 	private String errorMessage;
@@ -75,6 +81,10 @@ public class LAPJV implements OutputAlgorithm< int[] >, Benchmark
 
 	private final SparseCostMatrix cm;
 
+	private final double[] initialColumnDuals;
+
+	private double[] columnDuals;
+
 	/**
 	 * Instantiates a new Jonker-Volgenant algorithm for the specified sparse
 	 * cost matrix.
@@ -83,8 +93,34 @@ public class LAPJV implements OutputAlgorithm< int[] >, Benchmark
 	 *            the cost matrix of the linear assignment problem to solve.
 	 */
 	public LAPJV( final SparseCostMatrix cm )
+	{
+		this( cm, null );
+	}
+
+	/**
+	 * Instantiates a new Jonker-Volgenant algorithm for the specified sparse
+	 * cost matrix, warm-started from the specified column dual variables.
+	 * <p>
+	 * The column reduction and reduction transfer phases are replaced by an
+	 * initial assignment of each row to the column of minimal reduced cost,
+	 * given the initial duals. The algorithm then proceeds as usual with the
+	 * augmenting row reduction and augmentation phases. The solution is optimal
+	 * whatever the initial duals are, but it is found faster if they are close
+	 * to the optimal duals, for instance if they are the duals of a similar
+	 * problem solved previously.
+	 *
+	 * @param cm
+	 *            the cost matrix of the linear assignment problem to solve.
+	 * @param initialColumnDuals
+	 *            the initial column dual variables, one per column of the cost
+	 *            matrix. {@link Double#NaN} values are replaced by the minimal
+	 *            cost of their column. If <code>null</code>, the algorithm is
+	 *            cold-started.
+	 */
+	public LAPJV( final SparseCostMatrix cm, final double[] initialColumnDuals )
 	{
 		this.cm = cm;
+		this.initialColumnDuals = initialColumnDuals;
 	}
 
 	@Override
@@ -102,6 +138,155 @@ public class LAPJV implements OutputAlgorithm< int[] >, Benchmark
 			col[ j ] = j;
 		}
 
+		final int f;
+		final int[] free = new int[ cm.nRows ];
+		if ( null != initialColumnDuals )
+		{
+			f = warmStart( x, y, v, free );
+		}
+		else
+		{
+			f = coldStart( x, y, v, free );
+		}
+
+		if ( f > 0 )
+		{
+			augment( x, y, v, free, f, col );
+		}
+
+		/*
+		 * Terminate and prepare outputs.
+		 */
+
+		this.output = new int[ x.length ];
+		for ( int i = 0; i < x.length; i++ )
+		{
+			output[ i ] = x[ i ] - 1;
+		}
+		this.columnDuals = v;
+
+		final long end = System.currentTimeMillis();
+		processingTime = end - start;
+		return true;
+	}
+
+	/**
+	 * Initial assignment from the specified column duals. Each row is assigned
+	 * to a column of minimal reduced cost if one is not taken yet, so that all
+	 * assigned rows are tight.
+	 *
+	 * @return the number of free rows.
+	 */
+	private int warmStart( final int[] x, final int[] y, final double[] v, final int[] free )
+	{
+		if ( initialColumnDuals.length != cm.nCols )
+			throw new IllegalArgumentException( BASE_ERROR_MESSAGE + "Expected " + cm.nCols + " initial column duals, got " + initialColumnDuals.length + "." );
+
+		/*
+		 * Unknown duals start from the column minimum. So do the huge duals
+		 * the augmenting row reduction gives to the columns of rows with a
+		 * single cost: they would overflow the reduced costs.
+		 */
+		final boolean[] toFill = new boolean[ cm.nCols ];
+		boolean missing = false;
+		for ( int j = 0; j < cm.nCols; j++ )
+		{
+			final double vj = initialColumnDuals[ j ];
+			if ( Double.isNaN( vj ) || Math.abs( vj ) > Double.MAX_VALUE / 4 )
+			{
+				v[ j ] = Double.MAX_VALUE;
+				toFill[ j ] = true;
+				missing = true;
+			}
+			else
+			{
+				v[ j ] = vj;
+			}
+		}
+		if ( missing )
+		{
+			for ( int k = 0; k < cm.cc.length; k++ )
+			{
+				final int j = cm.kk[ k ];
+				if ( toFill[ j ] && cm.cc[ k ] < v[ j ] )
+					v[ j ] = cm.cc[ k ];
+			}
+		}
+
+		/*
+		 * Assign each row to a column of minimal reduced cost. Duals coming
+		 * from a solved problem make many rows hesitate between several
+		 * columns of equal reduced cost, up to round-off errors. Rows with a
+		 * single best column are served first, then the hesitating rows take
+		 * any best column still free.
+		 */
+		final double[] rowMin = new double[ cm.nRows ];
+		final int[] deferred = new int[ cm.nRows ];
+		int nDeferred = 0;
+		int f = 0;
+		for ( int i = 0; i < cm.nRows; i++ )
+		{
+			double min = Double.POSITIVE_INFINITY;
+			int jmin = -1;
+			for ( int k = cm.start[ i ]; k < cm.start[ i ] + cm.number[ i ]; k++ )
+			{
+				final double h = cm.cc[ k ] - v[ cm.kk[ k ] ];
+				if ( h < min )
+				{
+					min = h;
+					jmin = cm.kk[ k ];
+				}
+			}
+			rowMin[ i ] = min;
+
+			int nBest = 0;
+			final double tol = TIE_TOLERANCE * Math.max( 1., Math.abs( min ) );
+			for ( int k = cm.start[ i ]; k < cm.start[ i ] + cm.number[ i ]; k++ )
+				if ( cm.cc[ k ] - v[ cm.kk[ k ] ] <= min + tol )
+					nBest++;
+
+			if ( nBest > 1 )
+			{
+				deferred[ nDeferred++ ] = i;
+			}
+			else if ( jmin >= 0 && y[ jmin ] == 0 )
+			{
+				x[ i ] = jmin + 1;
+				y[ jmin ] = i + 1;
+			}
+			else
+			{
+				free[ f++ ] = i;
+			}
+		}
+
+		for ( int d = 0; d < nDeferred; d++ )
+		{
+			final int i = deferred[ d ];
+			final double tol = TIE_TOLERANCE * Math.max( 1., Math.abs( rowMin[ i ] ) );
+			for ( int k = cm.start[ i ]; k < cm.start[ i ] + cm.number[ i ]; k++ )
+			{
+				final int j = cm.kk[ k ];
+				if ( y[ j ] == 0 && cm.cc[ k ] - v[ j ] <= rowMin[ i ] + tol )
+				{
+					x[ i ] = j + 1;
+					y[ j ] = i + 1;
+					break;
+				}
+			}
+			if ( x[ i ] == 0 )
+				free[ f++ ] = i;
+		}
+		return f;
+	}
+
+	/**
+	 * Column reduction and reduction transfer.
+	 *
+	 * @return the number of free rows.
+	 */
+	private int coldStart( final int[] x, final int[] y, final double[] v, final int[] free )
+	{
 		/*
 		 * Column reduction
 		 */
@@ -142,7 +327,6 @@ public class LAPJV implements OutputAlgorithm< int[] >, Benchmark
 		 */
 
 		int f = 0;
-		final int[] free = new int[ cm.nRows ];
 		for ( int i = 0; i < cm.nRows; i++ )
 		{
 			if ( x[ i ] == 0 )
@@ -176,7 +360,15 @@ public class LAPJV implements OutputAlgorithm< int[] >, Benchmark
 			}
 		}
 
-		if ( f == 0 ) { return true; }
+		return f;
+	}
+
+	/**
+	 * Augmenting row reduction and augmentation of the specified free rows.
+	 */
+	private void augment( final int[] x, final int[] y, final double[] v, final int[] free, final int nFree, final int[] col )
+	{
+		int f = nFree;
 
 		/*
 		 * Augmenting row reduction.
@@ -357,20 +549,6 @@ public class LAPJV implements OutputAlgorithm< int[] >, Benchmark
 			}
 			while ( i1 != i );
 		}
-
-		/*
-		 * Terminate and prepare outputs.
-		 */
-
-		this.output = new int[ x.length ];
-		for ( int i = 0; i < x.length; i++ )
-		{
-			output[ i ] = x[ i ] - 1;
-		}
-
-		final long end = System.currentTimeMillis();
-		processingTime = end - start;
-		return true;
 	}
 
 	/*
@@ -419,6 +597,19 @@ public class LAPJV implements OutputAlgorithm< int[] >, Benchmark
 		return output;
 	}
 
+	/**
+	 * Returns the column dual variables at the end of the last
+	 * {@link #process()} call. They can be used to warm-start the solver on a
+	 * similar problem.
+	 *
+	 * @return the column duals, one per column of the cost matrix, or
+	 *         <code>null</code> if the algorithm has not been processed yet.
+	 */
+	public double[] getColumnDuals()
+	{
+		return columnDuals;
+	}
+
 	public String resultToString()
 	{
 		return resultToString( Collections.emptyList(), Collections.emptyList() );
@@ -0,0 +1,105 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.tracking.sparselap.linker;
+
+import net.imglib2.algorithm.Benchmark;
+
+/**
+ * Interface for solvers of linear assignment problems described by a
+ * {@link SparseCostMatrix}.
+ * <p>
+ * A solver assigns each row of the cost matrix to a distinct column, so that
+ * the sum of the costs of the assignments is minimal, or close to minimal for
+ * approximate solvers. The cost matrix must have at least as many columns as
+ * rows, and strictly positive costs.
+ * <p>
+ * Solver instances are not thread-safe, but can be reused for several
+ * problems. Solvers that support it can be warm-started with the column dual
+ * variables of a similar problem solved previously.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+public interface LAPSolver extends Benchmark
+{
+
+	/**
+	 * Solves the linear assignment problem for the specified cost matrix.
+	 *
+	 * @param cm
+	 *            the cost matrix.
+	 * @return <code>true</code> if the problem was solved successfully.
+	 */
+	public boolean solve( SparseCostMatrix cm );
+
+	/**
+	 * Returns the row assignments of the last problem solved. The row
+	 * <code>i</code> is associated to the column <code>x[i]</code> in the cost
+	 * matrix.
+	 *
+	 * @return the row assignments, or <code>null</code> if no problem was
+	 *         solved yet.
+	 */
+	public int[] getResult();
+
+	/**
+	 * Returns a meaningful error message if the last problem could not be
+	 * solved.
+	 *
+	 * @return the error message.
+	 */
+	public String getErrorMessage();
+
+	/**
+	 * Returns the column dual variables of the last problem solved, if this
+	 * solver computes them.
+	 *
+	 * @return the column duals, one per column of the cost matrix, or
+	 *         <code>null</code>. By default, returns <code>null</code>.
+	 */
+	public default double[] getColumnDuals()
+	{
+		return null;
+	}
+
+	/**
+	 * Sets the column dual variables to start from when solving the next
+	 * problem. Solvers that do not support warm starts ignore them.
+	 *
+	 * @param columnDuals
+	 *            the initial column duals, one per column of the next cost
+	 *            matrix. {@link Double#NaN} values stand for unknown duals. If
+	 *            <code>null</code>, the next problem is solved from scratch.
+	 */
+	public default void setInitialColumnDuals( final double[] columnDuals )
+	{}
+
+	/**
+	 * Returns whether this solver makes use of the initial column duals.
+	 *
+	 * @return <code>true</code> if this solver can be warm-started. By
+	 *         default, returns <code>false</code>.
+	 */
+	public default boolean isWarmStarted()
+	{
+		return false;
+	}
+}
@@ -0,0 +1,95 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.tracking.sparselap.linker;
+
+/**
+ * The {@link LAPSolver}s that can be used to solve the linear assignment
+ * problems of the LAP trackers.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+public enum LAPSolverType
+{
+	JONKER_VOLGENANT( "Jonker-Volgenant", "Exact solver. Each problem is solved from scratch." ),
+	WARM_JONKER_VOLGENANT( "Warm-started Jonker-Volgenant", "Exact solver. Each problem is started from the dual variables of the previous one, when there is one." ),
+	AUCTION( "Auction", "Exact solver. Epsilon-scaling auction with multi-threaded bidding, finished with the Jonker-Volgenant solver." ),
+	GREEDY( "Greedy", "Approximate solver. Greedy assignment repaired with augmenting paths, solved exactly if its cost is more than "
+			+ ( int ) ( 100 * GreedySolver.DEFAULT_MAX_GAP ) + "% above the optimum." );
+
+	private final String str;
+
+	private final String infoText;
+
+	private LAPSolverType( final String str, final String infoText )
+	{
+		this.str = str;
+		this.infoText = infoText;
+	}
+
+	public String getInfoText()
+	{
+		return infoText;
+	}
+
+	@Override
+	public String toString()
+	{
+		return str;
+	}
+
+	/**
+	 * Returns whether the solvers of this type start each problem from the
+	 * column duals of the previous one. This is what
+	 * {@link LAPSolver#isWarmStarted()} returns for them.
+	 *
+	 * @return <code>true</code> if the solvers of this type are warm-started.
+	 */
+	public boolean isWarmStarted()
+	{
+		return this == WARM_JONKER_VOLGENANT;
+	}
+
+	/**
+	 * Creates a new solver of this type.
+	 *
+	 * @param numThreads
+	 *            the number of threads the solver may use.
+	 * @return a new solver.
+	 */
+	public LAPSolver create( final int numThreads )
+	{
+		switch ( this )
+		{
+		case WARM_JONKER_VOLGENANT:
+			return new JonkerVolgenantSolver( true );
+		case AUCTION:
+			final AuctionSolver auction = new AuctionSolver();
+			auction.setNumThreads( numThreads );
+			return auction;
+		case GREEDY:
+			return new GreedySolver();
+		case JONKER_VOLGENANT:
+		default:
+			return new JonkerVolgenantSolver();
+		}
+	}
+}
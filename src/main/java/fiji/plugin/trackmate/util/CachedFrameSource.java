@@ -0,0 +1,225 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.util;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import net.imagej.ImgPlus;
+
+/**
+ * A {@link FrameSource} that reads the frames of an {@link ImagePlus} on
+ * demand, keeps the most recently used ones in a cache of bounded size, and
+ * loads the next frames in processing order ahead of time.
+ * <p>
+ * This is meant for virtual stacks and other images that do not fit in
+ * memory: the frames are read one after the other by a single loader thread,
+ * so that concurrent tasks do not contend on the stack, and the number of
+ * frames held by the cache is derived from a memory budget.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+public class CachedFrameSource implements FrameSource
+{
+
+	private final ImagePlus imp;
+
+	private final int capacity;
+
+	private final int prefetch;
+
+	private final ExecutorService loader;
+
+	/** Frame -> image, in access order. */
+	@SuppressWarnings( "rawtypes" )
+	private final Map< Integer, Future< ImgPlus > > cache;
+
+	private int[] order;
+
+	/** Position of each frame in the processing order, -1 if absent. */
+	private int[] rank;
+
+	/**
+	 * Creates a new cached frame source.
+	 *
+	 * @param imp
+	 *            the image to read frames from.
+	 * @param memoryBudget
+	 *            the maximal size of the cache, in bytes. At least one frame
+	 *            is cached.
+	 * @param prefetch
+	 *            the number of frames to load ahead of the frame requested.
+	 *            It is capped so that prefetched frames fit in the cache along
+	 *            with the frame requested.
+	 */
+	@SuppressWarnings( "rawtypes" )
+	public CachedFrameSource( final ImagePlus imp, final long memoryBudget, final int prefetch )
+	{
+		this.imp = imp;
+		this.capacity = ( int ) Math.max( 1l, Math.min( Integer.MAX_VALUE, memoryBudget / getBytesPerFrame( imp ) ) );
+		this.prefetch = Math.max( 0, Math.min( prefetch, capacity - 1 ) );
+		this.cache = new LinkedHashMap< Integer, Future< ImgPlus > >( 16, 0.75f, true )
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry( final Map.Entry< Integer, Future< ImgPlus > > eldest )
+			{
+				return size() > capacity;
+			}
+		};
+		this.loader = Executors.newSingleThreadExecutor( r -> {
+			final Thread thread = new Thread( r, "TrackMate frame loader - " + imp.getShortTitle() );
+			thread.setDaemon( true );
+			return thread;
+		} );
+		setProcessingOrder( null );
+	}
+
+	/**
+	 * Returns the maximal number of frames held in the cache.
+	 *
+	 * @return the cache capacity, in frames.
+	 */
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * Sets the order in which frames will be requested. If <code>null</code>,
+	 * frames are assumed to be requested in ascending order.
+	 */
+	@Override
+	public synchronized void setProcessingOrder( final int[] frames )
+	{
+		final int nFrames = imp.getNFrames();
+		if ( null == frames )
+		{
+			order = new int[ nFrames ];
+			for ( int t = 0; t < nFrames; t++ )
+				order[ t ] = t;
+		}
+		else
+		{
+			order = frames.clone();
+		}
+
+		rank = new int[ nFrames ];
+		Arrays.fill( rank, -1 );
+		for ( int i = 0; i < order.length; i++ )
+		{
+			final int t = order[ i ];
+			if ( t >= 0 && t < nFrames && rank[ t ] < 0 )
+				rank[ t ] = i;
+		}
+	}
+
+	@SuppressWarnings( "rawtypes" )
+	@Override
+	public ImgPlus getFrame( final int frame )
+	{
+		final Future< ImgPlus > future;
+		synchronized ( this )
+		{
+			future = request( frame );
+
+			// Look ahead.
+			final int r = ( frame >= 0 && frame < rank.length ) ? rank[ frame ] : -1;
+			if ( r >= 0 )
+				for ( int i = r + 1; i < Math.min( order.length, r + 1 + prefetch ); i++ )
+					request( order[ i ] );
+		}
+
+		try
+		{
+			return future.get();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException( "Interrupted while loading frame " + frame + ".", e );
+		}
+		catch ( final ExecutionException e )
+		{
+			synchronized ( this )
+			{
+				cache.remove( frame );
+			}
+			throw new RuntimeException( "Could not load frame " + frame + ": " + e.getCause().getMessage(), e.getCause() );
+		}
+	}
+
+	@Override
+	public synchronized void close()
+	{
+		loader.shutdownNow();
+		cache.clear();
+	}
+
+	@SuppressWarnings( "rawtypes" )
+	private Future< ImgPlus > request( final int frame )
+	{
+		Future< ImgPlus > future = cache.get( frame );
+		if ( null == future )
+		{
+			future = loader.submit( () -> load( frame ) );
+			cache.put( frame, future );
+		}
+		return future;
+	}
+
+	@SuppressWarnings( "rawtypes" )
+	private ImgPlus load( final int frame )
+	{
+		final ImageStack stack = imp.getStack();
+		final int nChannels = imp.getNChannels();
+		final int nSlices = imp.getNSlices();
+		final ImageStack frameStack = new ImageStack( imp.getWidth(), imp.getHeight() );
+		for ( int z = 0; z < nSlices; z++ )
+		{
+			for ( int c = 0; c < nChannels; c++ )
+			{
+				final int index = imp.getStackIndex( c + 1, z + 1, frame + 1 );
+				frameStack.addSlice( stack.getSliceLabel( index ), stack.getProcessor( index ) );
+			}
+		}
+
+		final ImagePlus frameImp = new ImagePlus( imp.getShortTitle() + "-T" + ( frame + 1 ), frameStack );
+		frameImp.setDimensions( nChannels, nSlices, 1 );
+		frameImp.setCalibration( imp.getCalibration() );
+		return TMUtils.rawWraps( frameImp );
+	}
+
+	private static long getBytesPerFrame( final ImagePlus imp )
+	{
+		final int bytesPerPixel = ( imp.getBitDepth() == 24 ) ? 4 : Math.max( 1, imp.getBitDepth() / 8 );
+		return Math.max( 1l, ( long ) imp.getWidth() * imp.getHeight() * imp.getNChannels() * imp.getNSlices() * bytesPerPixel );
+	}
+}
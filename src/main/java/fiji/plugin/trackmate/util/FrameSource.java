@@ -0,0 +1,68 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.util;
+
+import net.imagej.ImgPlus;
+
+/**
+ * Interface for classes that provide the image data of a time-lapse one frame
+ * at a time.
+ * <p>
+ * The image of a frame has all the channels and Z slices of a single time
+ * point. It has the same axes and calibration as the source image, except for
+ * the time axis, which is absent. Detectors and spot analyzers can be given
+ * the frame image with the frame index as usual: they only slice along time
+ * when the image has a time axis.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+public interface FrameSource extends AutoCloseable
+{
+
+	/**
+	 * Returns the image of the specified frame.
+	 *
+	 * @param frame
+	 *            the frame, 0-based.
+	 * @return the image of this frame, without a time axis.
+	 */
+	@SuppressWarnings( "rawtypes" )
+	public ImgPlus getFrame( int frame );
+
+	/**
+	 * Informs this source of the order in which the frames will be requested.
+	 * Sources that load frames ahead of time use it to pick the frames to
+	 * load next. By default, does nothing.
+	 *
+	 * @param frames
+	 *            the frames, in the order they will be requested.
+	 */
+	public default void setProcessingOrder( final int[] frames )
+	{}
+
+	/**
+	 * Releases the resources held by this source. By default, does nothing.
+	 */
+	@Override
+	public default void close()
+	{}
+}
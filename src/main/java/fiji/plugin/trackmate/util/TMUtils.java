@@ -404,7 +404,7 @@ public class TMUtils
 	 *            the number of data items this histogram was built on
 	 * @return the bin index of the histogram that thresholds it
 	 */
-	private static final int otsuThresholdIndex( final int[] hist, final int nPoints )
+	public static final int otsuThresholdIndex( final int[] hist, final int nPoints )
 	{
 		final int total = nPoints;
 
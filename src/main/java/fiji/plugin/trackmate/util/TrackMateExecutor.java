@@ -0,0 +1,886 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A thread pool shared by the TrackMate components that process data in
+ * parallel.
+ * <p>
+ * Instead of creating their own thread pool, components submit batches of
+ * tasks under a <i>stage</i> name (for instance "Detection" or "Spot
+ * filtering"), with a maximal parallelism that is typically the number of
+ * threads set through {@link net.imglib2.algorithm.MultiThreaded}. The batch
+ * is executed on the shared workers, so that several TrackMate instances in
+ * one JVM do not run more threads than this executor has.
+ * <p>
+ * Nested batches, submitted from a task that already runs on a worker of this
+ * executor, do not oversubscribe the CPUs: the submitting thread executes the
+ * tasks of the nested batch itself, and is helped only by the workers that are
+ * idle at the time of submission. For instance, when detection runs on
+ * several frames at once, the multi-threaded parts of a detector only use the
+ * threads left free by the frame-level parallelism.
+ * <p>
+ * Per-stage metrics (queued, running and completed tasks, busy time) are
+ * available through {@link #getMetrics()}.
+ * <p>
+ * The executor used by a component is returned by {@link #current()}. It is
+ * the executor that owns the calling thread if this one is a worker, the
+ * executor bound to the calling thread with {@link #bind(TrackMateExecutor)}
+ * otherwise, and {@link #getDefault()} if there is none.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+public class TrackMateExecutor
+{
+
+	private static TrackMateExecutor defaultExecutor;
+
+	private static final ThreadLocal< TrackMateExecutor > BOUND = new ThreadLocal<>();
+
+	private static final AtomicInteger POOL_COUNTER = new AtomicInteger( 0 );
+
+	private final int numThreads;
+
+	private final LinkedBlockingDeque< Job > queue = new LinkedBlockingDeque<>();
+
+	/**
+	 * Number of workers waiting for a job.
+	 */
+	private final AtomicInteger idle = new AtomicInteger( 0 );
+
+	/**
+	 * Number of jobs of nested batches pushed at the head of the queue, and
+	 * not taken yet.
+	 */
+	private final AtomicInteger headJobs = new AtomicInteger( 0 );
+
+	private final Map< String, Stage > stages = new ConcurrentHashMap<>();
+
+	private final List< Worker > workers;
+
+	/**
+	 * Batches submitted and not done yet, to be cancelled on shutdown.
+	 */
+	private final Set< Batch< ? > > batches = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Tasks submitted through the executor services and not done yet, to be
+	 * cancelled on shutdown.
+	 */
+	private final Set< Task< ? > > tasks = ConcurrentHashMap.newKeySet();
+
+	private volatile boolean shutdown = false;
+
+	/**
+	 * Creates a new executor with the specified number of worker threads.
+	 *
+	 * @param numThreads
+	 *            the number of worker threads.
+	 */
+	public TrackMateExecutor( final int numThreads )
+	{
+		this.numThreads = Math.max( 1, numThreads );
+		final int poolIndex = POOL_COUNTER.incrementAndGet();
+		final List< Worker > list = new ArrayList<>( this.numThreads );
+		for ( int i = 0; i < this.numThreads; i++ )
+		{
+			final Worker worker = new Worker( "TrackMate-pool-" + poolIndex + "-worker-" + ( i + 1 ) );
+			list.add( worker );
+			worker.start();
+		}
+		this.workers = Collections.unmodifiableList( list );
+	}
+
+	/**
+	 * Returns the process-wide executor, with one worker per available
+	 * processor.
+	 *
+	 * @return the default executor.
+	 */
+	public static synchronized TrackMateExecutor getDefault()
+	{
+		if ( null == defaultExecutor || defaultExecutor.shutdown )
+			defaultExecutor = new TrackMateExecutor( Runtime.getRuntime().availableProcessors() );
+		return defaultExecutor;
+	}
+
+	/**
+	 * Returns the executor that components running in the calling thread
+	 * should use.
+	 *
+	 * @return the current executor.
+	 */
+	public static TrackMateExecutor current()
+	{
+		final Thread thread = Thread.currentThread();
+		if ( thread instanceof Worker )
+			return ( ( Worker ) thread ).owner();
+
+		final TrackMateExecutor bound = BOUND.get();
+		if ( null != bound && !bound.shutdown )
+			return bound;
+
+		return getDefault();
+	}
+
+	/**
+	 * Binds the specified executor to the calling thread. Components called
+	 * from this thread will then use it, until another one is bound.
+	 *
+	 * @param executor
+	 *            the executor to bind. If <code>null</code>, the calling
+	 *            thread will use the default executor.
+	 * @return the executor bound to the calling thread before this call, or
+	 *         <code>null</code> if there was none. Can be used to restore it.
+	 */
+	public static TrackMateExecutor bind( final TrackMateExecutor executor )
+	{
+		final TrackMateExecutor previous = BOUND.get();
+		if ( null == executor )
+			BOUND.remove();
+		else
+			BOUND.set( executor );
+		return previous;
+	}
+
+	/**
+	 * Returns the number of worker threads of this executor.
+	 *
+	 * @return the number of threads.
+	 */
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+
+	/**
+	 * Returns <code>true</code> if the calling thread is a worker of this
+	 * executor.
+	 *
+	 * @return whether the calling thread is a worker of this executor.
+	 */
+	public boolean isWorkerThread()
+	{
+		final Thread thread = Thread.currentThread();
+		return ( thread instanceof Worker ) && ( ( Worker ) thread ).owner() == this;
+	}
+
+	/**
+	 * Executes the specified tasks and returns their results, in the order of
+	 * the task collection. The method returns when all the tasks are done.
+	 * <p>
+	 * If some tasks throw an exception, the other tasks are still executed
+	 * and the first exception is reported.
+	 *
+	 * @param stage
+	 *            the name of the stage the tasks belong to, used for metrics.
+	 * @param tasks
+	 *            the tasks to execute.
+	 * @param parallelism
+	 *            the maximal number of tasks to execute at the same time.
+	 * @param <T>
+	 *            the type of the task results.
+	 * @return the list of results.
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted while waiting.
+	 * @throws ExecutionException
+	 *             if a task threw an exception.
+	 * @throws CancellationException
+	 *             if the executor was shut down before all the tasks were
+	 *             done.
+	 */
+	public < T > List< T > invokeAll( final String stage, final Collection< ? extends Callable< T > > tasks, final int parallelism ) throws InterruptedException, ExecutionException
+	{
+		if ( shutdown )
+			throw new IllegalStateException( "Executor has been shut down." );
+		if ( tasks.isEmpty() )
+			return Collections.emptyList();
+
+		final Batch< T > batch = new Batch<>( getStage( stage ), new ArrayList<>( tasks ) );
+		batches.add( batch );
+		try
+		{
+			// Shut down since the check above: the batch may have been missed.
+			if ( shutdown )
+				batch.cancel();
+
+			final int nRunners = Math.max( 1, Math.min( Math.min( parallelism, numThreads ), tasks.size() ) );
+			if ( isWorkerThread() )
+			{
+				/*
+				 * Nested batch. Only use the workers that are idle now, and
+				 * run the rest in the calling thread: waiting for busy workers
+				 * could dead-lock, and creating more threads would
+				 * oversubscribe.
+				 */
+				for ( int i = 1; i < nRunners; i++ )
+					if ( !offerToIdleWorker( batch ) )
+						break;
+				batch.run();
+			}
+			else
+			{
+				for ( int i = 0; i < nRunners; i++ )
+					queue.offerLast( new Job( batch, false ) );
+			}
+
+			return batch.get();
+		}
+		finally
+		{
+			batches.remove( batch );
+		}
+	}
+
+	/**
+	 * Executes the specified tasks. The method returns when all the tasks are
+	 * done.
+	 *
+	 * @param stage
+	 *            the name of the stage the tasks belong to, used for metrics.
+	 * @param tasks
+	 *            the tasks to execute.
+	 * @param parallelism
+	 *            the maximal number of tasks to execute at the same time.
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted while waiting.
+	 * @throws ExecutionException
+	 *             if a task threw an exception.
+	 * @see #invokeAll(String, Collection, int)
+	 */
+	public void runAll( final String stage, final Collection< ? extends Runnable > tasks, final int parallelism ) throws InterruptedException, ExecutionException
+	{
+		final List< Callable< Object > > callables = new ArrayList<>( tasks.size() );
+		for ( final Runnable task : tasks )
+			callables.add( Executors.callable( task ) );
+		invokeAll( stage, callables, parallelism );
+	}
+
+	/**
+	 * Returns an {@link ExecutorService} that runs the tasks submitted to it
+	 * on this executor. It is meant for libraries that accept an
+	 * {@link ExecutorService}, such as the FFT convolution or the local
+	 * extrema search of ImgLib2.
+	 * <p>
+	 * It follows the same rules as {@link #invokeAll(String, Collection, int)}:
+	 * at most <code>parallelism</code> tasks run at once, and tasks submitted
+	 * from a worker of this executor run on idle workers or in the submitting
+	 * thread. A worker of this executor waiting for the result of a task not
+	 * started yet runs it itself.
+	 * <p>
+	 * Shutting down the returned service does not shut down this executor.
+	 *
+	 * @param stage
+	 *            the name of the stage the tasks belong to, used for metrics.
+	 * @param parallelism
+	 *            the maximal number of tasks to execute at the same time.
+	 * @return a new {@link ExecutorService}.
+	 */
+	public ExecutorService getExecutorService( final String stage, final int parallelism )
+	{
+		return new StageExecutorService( getStage( stage ), Math.max( 1, Math.min( parallelism, numThreads ) ) );
+	}
+
+	/**
+	 * Returns a snapshot of the metrics of all the stages that submitted tasks
+	 * to this executor, in the order in which they were first used.
+	 *
+	 * @return a new map from stage name to metrics.
+	 */
+	public Map< String, StageMetrics > getMetrics()
+	{
+		final List< Stage > list = new ArrayList<>( stages.values() );
+		list.sort( ( s1, s2 ) -> Long.compare( s1.order, s2.order ) );
+		final Map< String, StageMetrics > metrics = new LinkedHashMap<>( list.size() );
+		for ( final Stage s : list )
+			metrics.put( s.name, s.snapshot() );
+		return metrics;
+	}
+
+	/**
+	 * Resets the metrics of all the stages.
+	 */
+	public void resetMetrics()
+	{
+		for ( final Stage s : stages.values() )
+			s.reset();
+	}
+
+	/**
+	 * Stops the workers of this executor. The tasks not started yet are
+	 * discarded: the {@link #invokeAll(String, Collection, int)} calls still
+	 * waiting throw a {@link CancellationException}, or an
+	 * {@link ExecutionException} if a task of their batch failed, once their
+	 * running tasks return. Futures obtained from the executor services are
+	 * cancelled. Running tasks are interrupted. The default executor cannot
+	 * be shut down.
+	 */
+	public void shutdown()
+	{
+		if ( this == defaultExecutor )
+			return;
+		shutdown = true;
+		queue.clear();
+		for ( final Batch< ? > batch : batches )
+			batch.cancel();
+		for ( final Task< ? > task : tasks )
+			task.cancel( false );
+		for ( final Worker worker : workers )
+			worker.interrupt();
+	}
+
+	@Override
+	public String toString()
+	{
+		final StringBuilder str = new StringBuilder( super.toString() );
+		str.append( " - " + numThreads + " threads, " + idle.get() + " idle, " + queue.size() + " queued jobs." );
+		for ( final StageMetrics m : getMetrics().values() )
+			str.append( "\n  " + m );
+		return str.toString();
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private Stage getStage( final String name )
+	{
+		return stages.computeIfAbsent( name, n -> new Stage( n, stages.size() ) );
+	}
+
+	private boolean offerToIdleWorker( final Runnable runnable )
+	{
+		while ( true )
+		{
+			final int h = headJobs.get();
+			if ( idle.get() <= h )
+				return false;
+			if ( headJobs.compareAndSet( h, h + 1 ) )
+				break;
+		}
+		queue.offerFirst( new Job( runnable, true ) );
+		return true;
+	}
+
+	/*
+	 * INNER CLASSES
+	 */
+
+	private final class Worker extends Thread
+	{
+
+		private Worker( final String name )
+		{
+			super( name );
+			setDaemon( true );
+		}
+
+		private TrackMateExecutor owner()
+		{
+			return TrackMateExecutor.this;
+		}
+
+		@Override
+		public void run()
+		{
+			while ( !shutdown )
+			{
+				final Job job;
+				idle.incrementAndGet();
+				try
+				{
+					job = queue.takeFirst();
+				}
+				catch ( final InterruptedException e )
+				{
+					continue;
+				}
+				finally
+				{
+					idle.decrementAndGet();
+				}
+
+				if ( job.atHead )
+					headJobs.decrementAndGet();
+				job.runnable.run();
+			}
+		}
+	}
+
+	private static final class Job
+	{
+
+		private final Runnable runnable;
+
+		private final boolean atHead;
+
+		private Job( final Runnable runnable, final boolean atHead )
+		{
+			this.runnable = runnable;
+			this.atHead = atHead;
+		}
+	}
+
+	/**
+	 * A collection of tasks. Each thread running the batch takes the next task
+	 * not started yet, until there are none left.
+	 */
+	private static final class Batch< T > implements Runnable
+	{
+
+		private final Stage stage;
+
+		private final List< ? extends Callable< T > > tasks;
+
+		private final Object[] results;
+
+		private final AtomicInteger next = new AtomicInteger( 0 );
+
+		private final CountDownLatch done;
+
+		private final AtomicReference< Throwable > error = new AtomicReference<>();
+
+		private volatile boolean cancelled = false;
+
+		private Batch( final Stage stage, final List< ? extends Callable< T > > tasks )
+		{
+			this.stage = stage;
+			this.tasks = tasks;
+			this.results = new Object[ tasks.size() ];
+			this.done = new CountDownLatch( tasks.size() );
+			stage.submitted.addAndGet( tasks.size() );
+			stage.queued.addAndGet( tasks.size() );
+		}
+
+		@Override
+		public void run()
+		{
+			int i;
+			while ( ( i = next.getAndIncrement() ) < tasks.size() )
+			{
+				stage.queued.decrementAndGet();
+				stage.running.incrementAndGet();
+				final long start = System.nanoTime();
+				try
+				{
+					results[ i ] = tasks.get( i ).call();
+				}
+				catch ( final Throwable t )
+				{
+					error.compareAndSet( null, t );
+				}
+				finally
+				{
+					stage.busyTime.addAndGet( System.nanoTime() - start );
+					stage.running.decrementAndGet();
+					stage.completed.incrementAndGet();
+					done.countDown();
+				}
+			}
+		}
+
+		/**
+		 * Discards the tasks not started yet. The running ones are left to
+		 * complete.
+		 */
+		private void cancel()
+		{
+			cancelled = true;
+			final int first = next.getAndSet( tasks.size() );
+			for ( int i = first; i < tasks.size(); i++ )
+			{
+				stage.queued.decrementAndGet();
+				done.countDown();
+			}
+		}
+
+		@SuppressWarnings( "unchecked" )
+		private List< T > get() throws InterruptedException, ExecutionException
+		{
+			done.await();
+			final Throwable t = error.get();
+			if ( null != t )
+				throw new ExecutionException( t );
+			if ( cancelled )
+				throw new CancellationException( "Executor has been shut down." );
+			return ( List< T > ) Arrays.asList( results );
+		}
+	}
+
+	/**
+	 * A task that records the metrics of its stage. Waiting for its result
+	 * from a worker of the executor runs it, if it did not start yet.
+	 */
+	private final class Task< T > extends FutureTask< T >
+	{
+
+		private final Stage stage;
+
+		private final AtomicBoolean started = new AtomicBoolean( false );
+
+		private Task( final Callable< T > callable, final Stage stage )
+		{
+			super( callable );
+			this.stage = stage;
+			stage.submitted.incrementAndGet();
+			stage.queued.incrementAndGet();
+		}
+
+		@Override
+		public void run()
+		{
+			if ( !started.compareAndSet( false, true ) )
+				return;
+
+			stage.queued.decrementAndGet();
+			stage.running.incrementAndGet();
+			final long start = System.nanoTime();
+			try
+			{
+				super.run();
+			}
+			finally
+			{
+				stage.busyTime.addAndGet( System.nanoTime() - start );
+				stage.running.decrementAndGet();
+				stage.completed.incrementAndGet();
+			}
+		}
+
+		@Override
+		public boolean cancel( final boolean mayInterruptIfRunning )
+		{
+			if ( !super.cancel( mayInterruptIfRunning ) )
+				return false;
+			if ( started.compareAndSet( false, true ) )
+				stage.queued.decrementAndGet();
+			return true;
+		}
+
+		@Override
+		protected void done()
+		{
+			tasks.remove( this );
+		}
+
+		@Override
+		public T get() throws InterruptedException, ExecutionException
+		{
+			if ( !isDone() && isWorkerThread() )
+				run();
+			return super.get();
+		}
+
+		@Override
+		public T get( final long timeout, final TimeUnit unit ) throws InterruptedException, ExecutionException, TimeoutException
+		{
+			if ( !isDone() && isWorkerThread() )
+				run();
+			return super.get( timeout, unit );
+		}
+	}
+
+	private final class StageExecutorService extends AbstractExecutorService
+	{
+
+		private final Stage stage;
+
+		private final int parallelism;
+
+		private final ConcurrentLinkedQueue< Task< ? > > pending = new ConcurrentLinkedQueue<>();
+
+		private final AtomicInteger active = new AtomicInteger( 0 );
+
+		private volatile boolean isShutdown = false;
+
+		private StageExecutorService( final Stage stage, final int parallelism )
+		{
+			this.stage = stage;
+			this.parallelism = parallelism;
+		}
+
+		@Override
+		protected < T > RunnableFuture< T > newTaskFor( final Callable< T > callable )
+		{
+			return new Task<>( callable, stage );
+		}
+
+		@Override
+		protected < T > RunnableFuture< T > newTaskFor( final Runnable runnable, final T value )
+		{
+			return new Task<>( Executors.callable( runnable, value ), stage );
+		}
+
+		@Override
+		public void execute( final Runnable command )
+		{
+			if ( isShutdown || shutdown )
+				throw new RejectedExecutionException( "Executor service has been shut down." );
+
+			final Task< ? > task = ( command instanceof Task )
+					? ( Task< ? > ) command
+					: new Task<>( Executors.callable( command ), stage );
+			tasks.add( task );
+			// Shut down since the check above: the task may have been missed.
+			if ( shutdown )
+			{
+				task.cancel( false );
+				return;
+			}
+
+			if ( isWorkerThread() )
+			{
+				// Nested: use an idle worker or run it now.
+				if ( !offerToIdleWorker( task ) )
+					task.run();
+				return;
+			}
+
+			pending.add( task );
+			dispatch();
+		}
+
+		private void dispatch()
+		{
+			while ( !pending.isEmpty() )
+			{
+				final int a = active.get();
+				if ( a >= parallelism )
+					return;
+				if ( !active.compareAndSet( a, a + 1 ) )
+					continue;
+
+				final Task< ? > task = pending.poll();
+				if ( null == task )
+				{
+					active.decrementAndGet();
+					continue;
+				}
+				queue.offerLast( new Job( () -> {
+					try
+					{
+						task.run();
+					}
+					finally
+					{
+						active.decrementAndGet();
+						dispatch();
+						synchronized ( this )
+						{
+							notifyAll();
+						}
+					}
+				}, false ) );
+			}
+		}
+
+		@Override
+		public void shutdown()
+		{
+			isShutdown = true;
+		}
+
+		@Override
+		public List< Runnable > shutdownNow()
+		{
+			isShutdown = true;
+			final List< Runnable > notStarted = new ArrayList<>( pending );
+			pending.clear();
+			return notStarted;
+		}
+
+		@Override
+		public boolean isShutdown()
+		{
+			return isShutdown;
+		}
+
+		@Override
+		public boolean isTerminated()
+		{
+			return isShutdown && pending.isEmpty() && active.get() == 0;
+		}
+
+		@Override
+		public synchronized boolean awaitTermination( final long timeout, final TimeUnit unit ) throws InterruptedException
+		{
+			final long deadline = System.nanoTime() + unit.toNanos( timeout );
+			while ( !isTerminated() )
+			{
+				final long remaining = deadline - System.nanoTime();
+				if ( remaining <= 0 )
+					return false;
+				TimeUnit.NANOSECONDS.timedWait( this, remaining );
+			}
+			return true;
+		}
+	}
+
+	private static final class Stage
+	{
+
+		private final String name;
+
+		private final long order;
+
+		private final AtomicLong submitted = new AtomicLong( 0 );
+
+		private final AtomicLong completed = new AtomicLong( 0 );
+
+		private final AtomicInteger queued = new AtomicInteger( 0 );
+
+		private final AtomicInteger running = new AtomicInteger( 0 );
+
+		private final AtomicLong busyTime = new AtomicLong( 0 );
+
+		private Stage( final String name, final long order )
+		{
+			this.name = name;
+			this.order = order;
+		}
+
+		private StageMetrics snapshot()
+		{
+			return new StageMetrics( name, submitted.get(), completed.get(), queued.get(), running.get(), busyTime.get() );
+		}
+
+		private void reset()
+		{
+			submitted.set( 0 );
+			completed.set( 0 );
+			busyTime.set( 0 );
+		}
+	}
+
+	/**
+	 * Metrics of a stage at a given time.
+	 */
+	public static final class StageMetrics
+	{
+
+		private final String stage;
+
+		private final long submitted;
+
+		private final long completed;
+
+		private final int queued;
+
+		private final int running;
+
+		private final long busyTimeNanos;
+
+		private StageMetrics( final String stage, final long submitted, final long completed, final int queued, final int running, final long busyTimeNanos )
+		{
+			this.stage = stage;
+			this.submitted = submitted;
+			this.completed = completed;
+			this.queued = queued;
+			this.running = running;
+			this.busyTimeNanos = busyTimeNanos;
+		}
+
+		/**
+		 * Returns the stage name.
+		 */
+		public String getStage()
+		{
+			return stage;
+		}
+
+		/**
+		 * Returns the number of tasks submitted for this stage.
+		 */
+		public long getSubmittedTasks()
+		{
+			return submitted;
+		}
+
+		/**
+		 * Returns the number of tasks of this stage that are done.
+		 */
+		public long getCompletedTasks()
+		{
+			return completed;
+		}
+
+		/**
+		 * Returns the number of tasks of this stage waiting to be started.
+		 */
+		public int getQueueDepth()
+		{
+			return queued;
+		}
+
+		/**
+		 * Returns the number of tasks of this stage currently running.
+		 */
+		public int getRunningTasks()
+		{
+			return running;
+		}
+
+		/**
+		 * Returns the cumulated time spent running tasks of this stage, summed
+		 * over all threads, in milliseconds.
+		 */
+		public long getBusyTime()
+		{
+			return busyTimeNanos / 1_000_000L;
+		}
+
+		@Override
+		public String toString()
+		{
+			return stage + ": " + completed + "/" + submitted + " tasks done, "
+					+ queued + " queued, " + running + " running, busy " + getBusyTime() + " ms.";
+		}
+	}
+}
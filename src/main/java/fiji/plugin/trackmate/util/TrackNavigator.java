@@ -145,16 +145,7 @@ public class TrackNavigator {
 			return;
 		}
 
-		final int frame = spot.getFeature(Spot.FRAME).intValue();
-		final TreeSet<Spot> ring = new TreeSet<>(Spot.nameComparator);
-
-		final Set<Spot> spots = model.getTrackModel().trackSpots(trackID);
-		for (final Spot s : spots) {
-			final int fs = s.getFeature(Spot.FRAME).intValue();
-			if (frame == fs && s != spot) {
-				ring.add(s);
-			}
-		}
+		final TreeSet<Spot> ring = getSiblings(spot, trackID);
 
 		if (!ring.isEmpty()) {
 			Spot nextSibling = ring.ceiling(spot);
@@ -177,16 +168,7 @@ public class TrackNavigator {
 			return;
 		}
 
-		final int frame = spot.getFeature(Spot.FRAME).intValue();
-		final TreeSet<Spot> ring = new TreeSet<>(Spot.nameComparator);
-
-		final Set<Spot> spots = model.getTrackModel().trackSpots(trackID);
-		for (final Spot s : spots) {
-			final int fs = s.getFeature(Spot.FRAME).intValue();
-			if (frame == fs && s != spot) {
-				ring.add(s);
-			}
-		}
+		final TreeSet<Spot> ring = getSiblings(spot, trackID);
 
 		if (!ring.isEmpty()) {
 			Spot previousSibling = ring.floor(spot);
@@ -226,6 +208,21 @@ public class TrackNavigator {
 		}
 	}
 
+	/**
+	 * Returns the spots of the specified track in the same frame that the
+	 * specified spot, excluding it, sorted by name.
+	 */
+	private TreeSet<Spot> getSiblings(final Spot spot, final Integer trackID) {
+		final int frame = spot.getFeature(Spot.FRAME).intValue();
+		final TreeSet<Spot> ring = new TreeSet<>(Spot.nameComparator);
+		for (final Spot s : model.getTrackModel().getLineageIndex(trackID).getSpotsAt(frame)) {
+			if (s != spot) {
+				ring.add(s);
+			}
+		}
+		return ring;
+	}
+
 	/*
 	 * STATIC METHODS
 	 */
@@ -119,6 +119,8 @@ public class HyperStackDisplayer extends AbstractTrackMateModelView
 	{
 		if ( DEBUG )
 			System.out.println( "[HyperStackDisplayer] Received model changed event ID: " + event.getEventID() + " from " + event.getSource() );
+		trackOverlay.modelChanged( event );
+		spotOverlay.modelChanged( event );
 		switch ( event.getEventID() )
 		{
 		case ModelChangeEvent.MODEL_MODIFIED:
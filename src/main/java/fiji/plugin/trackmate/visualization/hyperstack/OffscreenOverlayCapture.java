@@ -0,0 +1,425 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.visualization.hyperstack;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+import fiji.plugin.trackmate.Logger;
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.SelectionModel;
+import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings;
+import fiji.plugin.trackmate.io.TiffStackWriter;
+import fiji.plugin.trackmate.io.TiffStackWriter.PixelType;
+import fiji.plugin.trackmate.util.TMUtils;
+import fiji.plugin.trackmate.util.TrackMateExecutor;
+import ij.CompositeImage;
+import ij.IJ;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.measure.Calibration;
+import ij.process.ColorProcessor;
+import ij.process.ImageProcessor;
+import ij.process.LUT;
+
+/**
+ * Captures the image and the TrackMate overlay of a hyperstack, frame by
+ * frame, without using the window the image is displayed in.
+ * <p>
+ * Each frame is painted in its own {@link BufferedImage}: the image plane
+ * with its display range and lookup tables, then the spot and track layers,
+ * as the {@link HyperStackDisplayer} paints them. Several frames are painted
+ * concurrently, and the frames are written to disk in order as soon as they
+ * are ready, either as a PNG sequence or as a single TIFF file. Only a few
+ * frames are kept in memory at once, so long movies can be captured.
+ * <p>
+ * Nothing is displayed, so the capture can run headless.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+public class OffscreenOverlayCapture
+{
+
+	private static final String BASE_ERROR_MESSAGE = "[OffscreenOverlayCapture] ";
+
+	private final ImagePlus imp;
+
+	private final double[] calibration;
+
+	private final SpotOverlay spotOverlay;
+
+	private final TrackOverlay trackOverlay;
+
+	private double magnification = 1.;
+
+	private boolean hideImage = false;
+
+	private int channel;
+
+	private int slice;
+
+	private int numThreads;
+
+	private Logger logger = Logger.VOID_LOGGER;
+
+	private String errorMessage;
+
+	/**
+	 * Creates a capture engine for the specified image and model.
+	 *
+	 * @param model
+	 *            the model to paint.
+	 * @param selectionModel
+	 *            the selection to highlight. Can be <code>null</code>.
+	 * @param imp
+	 *            the image to paint the overlay on. It does not need to be
+	 *            displayed.
+	 * @param displaySettings
+	 *            the display settings to paint with.
+	 */
+	public OffscreenOverlayCapture( final Model model, final SelectionModel selectionModel, final ImagePlus imp, final DisplaySettings displaySettings )
+	{
+		this.imp = imp;
+		this.calibration = TMUtils.getSpatialCalibration( imp );
+		this.spotOverlay = new SpotOverlay( model, imp, displaySettings );
+		this.trackOverlay = new TrackOverlay( model, imp, displaySettings );
+		if ( null != selectionModel )
+		{
+			spotOverlay.setSpotSelection( selectionModel.getSpotSelection() );
+			trackOverlay.setHighlight( selectionModel.getEdgeSelection() );
+		}
+		this.channel = imp.getChannel();
+		this.slice = imp.getSlice();
+		this.numThreads = TrackMateExecutor.current().getNumThreads();
+	}
+
+	/*
+	 * SETTERS
+	 */
+
+	/**
+	 * Sets the magnification of the capture. The captured frames are the
+	 * image size multiplied by the magnification. Default is 1.
+	 */
+	public void setMagnification( final double magnification )
+	{
+		this.magnification = magnification;
+	}
+
+	/**
+	 * Sets whether the image is hidden, in which case only the overlay is
+	 * painted, on a black background.
+	 */
+	public void setHideImage( final boolean hideImage )
+	{
+		this.hideImage = hideImage;
+	}
+
+	/**
+	 * Sets the channel and Z-slice to capture, 1-based. By default, the
+	 * current position of the image.
+	 */
+	public void setPosition( final int channel, final int slice )
+	{
+		this.channel = channel;
+		this.slice = slice;
+	}
+
+	/**
+	 * Sets the number of frames painted concurrently.
+	 */
+	public void setNumThreads( final int numThreads )
+	{
+		this.numThreads = Math.max( 1, numThreads );
+	}
+
+	/**
+	 * Sets the logger used to report progress.
+	 */
+	public void setLogger( final Logger logger )
+	{
+		this.logger = ( null == logger ) ? Logger.VOID_LOGGER : logger;
+	}
+
+	public String getErrorMessage()
+	{
+		return errorMessage;
+	}
+
+	/**
+	 * Returns the width of the captured frames.
+	 */
+	public int getWidth()
+	{
+		return Math.max( 1, ( int ) Math.round( imp.getWidth() * magnification ) );
+	}
+
+	/**
+	 * Returns the height of the captured frames.
+	 */
+	public int getHeight()
+	{
+		return Math.max( 1, ( int ) Math.round( imp.getHeight() * magnification ) );
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	/**
+	 * Paints the specified frame with its overlay. Can be called concurrently
+	 * for different frames.
+	 *
+	 * @param frame
+	 *            the frame to paint, 1-based.
+	 * @return a new RGB image.
+	 */
+	public BufferedImage render( final int frame )
+	{
+		final int width = getWidth();
+		final int height = getHeight();
+		final BufferedImage capture = new BufferedImage( width, height, BufferedImage.TYPE_INT_RGB );
+		final Graphics2D g2d = capture.createGraphics();
+		try
+		{
+			if ( !hideImage )
+			{
+				final BufferedImage plane = new BufferedImage( imp.getWidth(), imp.getHeight(), BufferedImage.TYPE_INT_RGB );
+				renderImage( frame, ( ( DataBufferInt ) plane.getRaster().getDataBuffer() ).getData() );
+				g2d.setRenderingHint( RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR );
+				g2d.drawImage( plane, AffineTransform.getScaleInstance( magnification, magnification ), null );
+			}
+
+			// Same order as in the HyperStackDisplayer.
+			final double zslice = ( slice - 1 ) * calibration[ 2 ];
+			spotOverlay.drawFrame( g2d, frame - 1, zslice, 0, 0, magnification, width, height );
+			trackOverlay.drawFrame( g2d, frame - 1, zslice, 0, 0, magnification, width, height );
+		}
+		finally
+		{
+			g2d.dispose();
+		}
+		return capture;
+	}
+
+	/**
+	 * Paints the image plane of the specified frame in the specified array,
+	 * with the display ranges and lookup tables of the image. For composite
+	 * images in composite mode, the active channels are summed.
+	 */
+	private void renderImage( final int frame, final int[] rgb )
+	{
+		final ImageStack stack = imp.getImageStack();
+		final boolean composite = imp.isComposite() && ( ( CompositeImage ) imp ).getMode() == IJ.COMPOSITE;
+		final boolean[] active = composite ? ( ( CompositeImage ) imp ).getActiveChannels() : null;
+		final int nChannels = composite ? imp.getNChannels() : 1;
+		for ( int c = 1; c <= nChannels; c++ )
+		{
+			final int ch = composite ? c : channel;
+			if ( composite && !active[ c - 1 ] )
+				continue;
+
+			final ImageProcessor ip = stack.getProcessor( imp.getStackIndex( ch, slice, frame ) );
+			if ( ip instanceof ColorProcessor )
+			{
+				add( rgb, ( int[] ) ip.getPixels() );
+				continue;
+			}
+
+			final IndexColorModel lut;
+			final double min;
+			final double max;
+			if ( imp.isComposite() )
+			{
+				final LUT channelLut = ( ( CompositeImage ) imp ).getChannelLut( ch );
+				lut = channelLut;
+				min = channelLut.min;
+				max = channelLut.max;
+			}
+			else
+			{
+				final ColorModel cm = imp.getProcessor().getColorModel();
+				lut = ( cm instanceof IndexColorModel ) ? ( IndexColorModel ) cm : null;
+				min = imp.getDisplayRangeMin();
+				max = imp.getDisplayRangeMax();
+			}
+
+			final int[] channelRgb = new int[ rgb.length ];
+			final double scale = ( max > min ) ? 256. / ( max - min ) : 1.;
+			for ( int i = 0; i < channelRgb.length; i++ )
+			{
+				final int index = Math.max( 0, Math.min( 255, ( int ) ( ( ip.getf( i ) - min ) * scale ) ) );
+				channelRgb[ i ] = ( null == lut ) ? ( index << 16 | index << 8 | index ) : lut.getRGB( index );
+			}
+			add( rgb, channelRgb );
+		}
+	}
+
+	/**
+	 * Adds the second RGB array to the first one, saturating each component.
+	 */
+	private static void add( final int[] rgb, final int[] other )
+	{
+		for ( int i = 0; i < rgb.length; i++ )
+		{
+			final int a = rgb[ i ];
+			final int b = other[ i ];
+			final int r = Math.min( 255, ( ( a >> 16 ) & 0xff ) + ( ( b >> 16 ) & 0xff ) );
+			final int g = Math.min( 255, ( ( a >> 8 ) & 0xff ) + ( ( b >> 8 ) & 0xff ) );
+			final int bl = Math.min( 255, ( a & 0xff ) + ( b & 0xff ) );
+			rgb[ i ] = ( r << 16 ) | ( g << 8 ) | bl;
+		}
+	}
+
+	/**
+	 * Captures the specified frames and writes them as a PNG sequence in the
+	 * specified folder. The files are named after the prefix and the frame
+	 * number.
+	 *
+	 * @param folder
+	 *            the folder to write to. Created if it does not exist.
+	 * @param prefix
+	 *            the file name prefix.
+	 * @param first
+	 *            the first frame to capture, 1-based, inclusive.
+	 * @param last
+	 *            the last frame to capture, 1-based, inclusive.
+	 * @return <code>true</code> if all the frames were written.
+	 */
+	public boolean exportToPngSequence( final File folder, final String prefix, final int first, final int last )
+	{
+		if ( !folder.isDirectory() && !folder.mkdirs() )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "Could not create folder " + folder + ".";
+			return false;
+		}
+		final int nDigits = Math.max( 4, Integer.toString( imp.getNFrames() ).length() );
+		final String format = "%s%0" + nDigits + "d.png";
+		return stream( first, last, ( frame, image ) -> {
+			final File file = new File( folder, String.format( format, prefix, frame ) );
+			if ( !ImageIO.write( image, "png", file ) )
+				throw new IOException( "No PNG writer available." );
+		} );
+	}
+
+	/**
+	 * Captures the specified frames and writes them to a single TIFF file,
+	 * readable by ImageJ as a calibrated time-lapse.
+	 *
+	 * @param file
+	 *            the file to write to.
+	 * @param first
+	 *            the first frame to capture, 1-based, inclusive.
+	 * @param last
+	 *            the last frame to capture, 1-based, inclusive.
+	 * @return <code>true</code> if all the frames were written.
+	 */
+	public boolean exportToTiff( final File file, final int first, final int last )
+	{
+		final int firstFrame = Math.max( 1, Math.min( first, last ) );
+		final int lastFrame = Math.min( imp.getNFrames(), Math.max( first, last ) );
+		final int nFrames = lastFrame - firstFrame + 1;
+		if ( nFrames <= 0 )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "No frame to capture.";
+			return false;
+		}
+
+		final Calibration cal = imp.getCalibration().copy();
+		cal.pixelWidth = cal.pixelWidth / magnification;
+		cal.pixelHeight = cal.pixelHeight / magnification;
+		final String description = TiffStackWriter.imageJDescription( 1, 1, nFrames, cal );
+		try (final TiffStackWriter writer = new TiffStackWriter( file, getWidth(), getHeight(), nFrames, PixelType.RGB, description, cal.pixelWidth, cal.pixelHeight ))
+		{
+			return stream( firstFrame, lastFrame, ( frame, image ) -> writer.writeRGB( ( ( DataBufferInt ) image.getRaster().getDataBuffer() ).getData() ) );
+		}
+		catch ( final IOException e )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "Could not write to " + file + ":\n" + e.getMessage();
+			return false;
+		}
+	}
+
+	/**
+	 * Paints the specified frames concurrently and passes them in order to
+	 * the specified consumer. At most two frames per thread are kept in
+	 * memory.
+	 */
+	private boolean stream( final int first, final int last, final FrameConsumer consumer )
+	{
+		final int firstFrame = Math.max( 1, Math.min( first, last ) );
+		final int lastFrame = Math.min( imp.getNFrames(), Math.max( first, last ) );
+		final int nFrames = lastFrame - firstFrame + 1;
+		logger.log( "Capturing TrackMate overlay from frame " + firstFrame + " to " + lastFrame + ".\n" );
+
+		final ExecutorService executorService = TrackMateExecutor.current().getExecutorService( "Overlay capture", numThreads );
+		final Deque< Future< BufferedImage > > pending = new ArrayDeque<>();
+		int next = firstFrame;
+		try
+		{
+			for ( int frame = firstFrame; frame <= lastFrame; frame++ )
+			{
+				while ( next <= lastFrame && pending.size() < 2 * numThreads )
+				{
+					final int toRender = next++;
+					pending.add( executorService.submit( () -> render( toRender ) ) );
+				}
+				consumer.accept( frame, pending.poll().get() );
+				logger.setProgress( ( double ) ( frame - firstFrame + 1 ) / nFrames );
+			}
+			logger.log( " done.\n" );
+			return true;
+		}
+		catch ( final InterruptedException | ExecutionException | IOException e )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "Capture failed:\n" + e.getMessage();
+			for ( final Future< BufferedImage > future : pending )
+				future.cancel( true );
+			return false;
+		}
+		finally
+		{
+			executorService.shutdown();
+			logger.setProgress( 0. );
+		}
+	}
+
+	@FunctionalInterface
+	private static interface FrameConsumer
+	{
+		public void accept( int frame, BufferedImage image ) throws IOException;
+	}
+}
@@ -0,0 +1,368 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.visualization.hyperstack;
+
+import java.awt.Color;
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotRoi;
+import fiji.plugin.trackmate.visualization.FeatureColorGenerator;
+
+/**
+ * An index of the spots of one frame, bucketed in a coarse spatial grid, so
+ * that the spots that may be painted in a viewport are found without iterating
+ * over all the spots of the frame.
+ * <p>
+ * Spots are stored in the grid cell of their center, in pixel coordinates.
+ * Queries are enlarged by the largest spot extent of the frame, so that the
+ * spots whose center is outside the viewport but whose shape overlaps it are
+ * also reported.
+ * <p>
+ * The index also caches the color of each spot, and the contour of each spot
+ * ROI scaled to the last magnification it was requested at. Instances are
+ * snapshots: they do not follow the changes of the model.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+public class SpotFrameIndex
+{
+
+	/** Maximal number of grid cells along X and Y. */
+	private static final int GRID_SIZE = 128;
+
+	private final Spot[] spots;
+
+	/** Spot center X, in pixel coordinates. */
+	private final double[] xs;
+
+	/** Spot center Y, in pixel coordinates. */
+	private final double[] ys;
+
+	private final Color[] colors;
+
+	private final Path2D[] rois;
+
+	/** The magnification the cached ROI contours are scaled to. */
+	private double roiMagnification = Double.NaN;
+
+	/** Spot indices, sorted by grid cell. */
+	private final int[] cellSpots;
+
+	/** Start of each grid cell in {@link #cellSpots}, plus a sentinel. */
+	private final int[] cellStarts;
+
+	private final double[] calibration;
+
+	private final double originX;
+
+	private final double originY;
+
+	private final double cellSize;
+
+	private final int nx;
+
+	private final int ny;
+
+	/** Largest spot radius or ROI extent, in pixel units. */
+	private final double maxExtent;
+
+	private SpotFrameIndex(
+			final Spot[] spots,
+			final double[] xs,
+			final double[] ys,
+			final int[] cellSpots,
+			final int[] cellStarts,
+			final double[] calibration,
+			final double originX,
+			final double originY,
+			final double cellSize,
+			final int nx,
+			final int ny,
+			final double maxExtent )
+	{
+		this.spots = spots;
+		this.xs = xs;
+		this.ys = ys;
+		this.colors = new Color[ spots.length ];
+		this.rois = new Path2D[ spots.length ];
+		this.cellSpots = cellSpots;
+		this.cellStarts = cellStarts;
+		this.calibration = calibration;
+		this.originX = originX;
+		this.originY = originY;
+		this.cellSize = cellSize;
+		this.nx = nx;
+		this.ny = ny;
+		this.maxExtent = maxExtent;
+	}
+
+	/**
+	 * Builds an index for the specified spots.
+	 *
+	 * @param spotsInFrame
+	 *            the spots to index, typically the visible spots of one frame.
+	 * @param calibration
+	 *            the spatial calibration of the image, used to convert spot
+	 *            positions to pixel coordinates.
+	 * @return a new index.
+	 */
+	public static SpotFrameIndex build( final Iterable< Spot > spotsInFrame, final double[] calibration )
+	{
+		final List< Spot > list = new ArrayList<>();
+		for ( final Spot spot : spotsInFrame )
+			list.add( spot );
+
+		final int n = list.size();
+		final Spot[] spots = list.toArray( new Spot[ n ] );
+		final double[] xs = new double[ n ];
+		final double[] ys = new double[ n ];
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		double maxExtent = 0.;
+		for ( int i = 0; i < n; i++ )
+		{
+			final Spot spot = spots[ i ];
+			xs[ i ] = spot.getFeature( Spot.POSITION_X ) / calibration[ 0 ] + 0.5;
+			ys[ i ] = spot.getFeature( Spot.POSITION_Y ) / calibration[ 1 ] + 0.5;
+			minX = Math.min( minX, xs[ i ] );
+			minY = Math.min( minY, ys[ i ] );
+			maxX = Math.max( maxX, xs[ i ] );
+			maxY = Math.max( maxY, ys[ i ] );
+
+			final Double radius = spot.getFeature( Spot.RADIUS );
+			if ( null != radius )
+				maxExtent = Math.max( maxExtent, radius / calibration[ 0 ] );
+			final SpotRoi roi = spot.getRoi();
+			if ( null != roi )
+			{
+				for ( int k = 0; k < roi.x.length; k++ )
+				{
+					maxExtent = Math.max( maxExtent, Math.abs( roi.x[ k ] ) / calibration[ 0 ] );
+					maxExtent = Math.max( maxExtent, Math.abs( roi.y[ k ] ) / calibration[ 1 ] );
+				}
+			}
+		}
+
+		if ( n == 0 )
+			return new SpotFrameIndex( spots, xs, ys, new int[ 0 ], new int[] { 0, 0 }, calibration, 0., 0., 1., 1, 1, 0. );
+
+		final double cellSize = Math.max( 1., Math.max( maxX - minX, maxY - minY ) / GRID_SIZE );
+		final int nx = ( int ) ( ( maxX - minX ) / cellSize ) + 1;
+		final int ny = ( int ) ( ( maxY - minY ) / cellSize ) + 1;
+
+		// Counting sort of the spots by cell.
+		final int[] cells = new int[ n ];
+		final int[] cellStarts = new int[ nx * ny + 1 ];
+		for ( int i = 0; i < n; i++ )
+		{
+			final int cx = ( int ) ( ( xs[ i ] - minX ) / cellSize );
+			final int cy = ( int ) ( ( ys[ i ] - minY ) / cellSize );
+			cells[ i ] = cy * nx + cx;
+			cellStarts[ cells[ i ] + 1 ]++;
+		}
+		for ( int c = 0; c < nx * ny; c++ )
+			cellStarts[ c + 1 ] += cellStarts[ c ];
+		final int[] fill = Arrays.copyOf( cellStarts, nx * ny );
+		final int[] cellSpots = new int[ n ];
+		for ( int i = 0; i < n; i++ )
+			cellSpots[ fill[ cells[ i ] ]++ ] = i;
+
+		return new SpotFrameIndex( spots, xs, ys, cellSpots, cellStarts, calibration, minX, minY, cellSize, nx, ny, maxExtent );
+	}
+
+	/**
+	 * Passes the index of each spot that may be painted in the specified
+	 * rectangle to the specified consumer. Each spot is reported once. The
+	 * rectangle is enlarged by the largest spot extent of the frame, scaled by
+	 * the specified factor, plus the specified margin.
+	 *
+	 * @param minx
+	 *            the rectangle min X, in pixel coordinates.
+	 * @param miny
+	 *            the rectangle min Y, in pixel coordinates.
+	 * @param maxx
+	 *            the rectangle max X, in pixel coordinates.
+	 * @param maxy
+	 *            the rectangle max Y, in pixel coordinates.
+	 * @param radiusRatio
+	 *            the factor by which spot radii are scaled when painted.
+	 * @param margin
+	 *            an extra margin, in pixel units.
+	 * @param consumer
+	 *            receives the spot indices.
+	 */
+	public void forEachSpot( final double minx, final double miny, final double maxx, final double maxy, final double radiusRatio, final double margin, final IntConsumer consumer )
+	{
+		if ( spots.length == 0 )
+			return;
+
+		final double pad = maxExtent * Math.max( 1., radiusRatio ) + margin;
+		final double x0 = minx - pad;
+		final double y0 = miny - pad;
+		final double x1 = maxx + pad;
+		final double y1 = maxy + pad;
+		if ( x1 < originX || y1 < originY || x0 > originX + nx * cellSize || y0 > originY + ny * cellSize )
+			return;
+
+		final int cx0 = clamp( ( int ) Math.floor( ( x0 - originX ) / cellSize ), nx );
+		final int cx1 = clamp( ( int ) Math.floor( ( x1 - originX ) / cellSize ), nx );
+		final int cy0 = clamp( ( int ) Math.floor( ( y0 - originY ) / cellSize ), ny );
+		final int cy1 = clamp( ( int ) Math.floor( ( y1 - originY ) / cellSize ), ny );
+		for ( int cy = cy0; cy <= cy1; cy++ )
+		{
+			// The cells of one row are contiguous.
+			final int from = cellStarts[ cy * nx + cx0 ];
+			final int to = cellStarts[ cy * nx + cx1 + 1 ];
+			for ( int k = from; k < to; k++ )
+			{
+				final int i = cellSpots[ k ];
+				if ( xs[ i ] >= x0 && xs[ i ] <= x1 && ys[ i ] >= y0 && ys[ i ] <= y1 )
+					consumer.accept( i );
+			}
+		}
+	}
+
+	private static int clamp( final int c, final int n )
+	{
+		return Math.max( 0, Math.min( n - 1, c ) );
+	}
+
+	/**
+	 * Returns the color of the specified spot, computing it with the specified
+	 * color generator the first time, and taking it from the cache afterwards.
+	 *
+	 * @param i
+	 *            the spot index.
+	 * @param colorGenerator
+	 *            the color generator.
+	 * @return the color.
+	 */
+	public Color getColor( final int i, final FeatureColorGenerator< Spot > colorGenerator )
+	{
+		Color color = colors[ i ];
+		if ( null == color )
+		{
+			color = colorGenerator.color( spots[ i ] );
+			colors[ i ] = color;
+		}
+		return color;
+	}
+
+	/**
+	 * Discards the cached colors.
+	 */
+	public void clearColors()
+	{
+		Arrays.fill( colors, null );
+	}
+
+	/**
+	 * Returns the contour of the ROI of the specified spot, relative to the
+	 * spot center, in pixel units multiplied by the specified magnification.
+	 * The contour is computed once per magnification and cached: the caller
+	 * only has to translate it to the spot position in the view.
+	 *
+	 * @param i
+	 *            the spot index.
+	 * @param magnification
+	 *            the magnification of the view.
+	 * @return the contour, or <code>null</code> if the spot has no ROI.
+	 */
+	public Path2D getRoi( final int i, final double magnification )
+	{
+		if ( magnification != roiMagnification )
+		{
+			Arrays.fill( rois, null );
+			roiMagnification = magnification;
+		}
+
+		Path2D polygon = rois[ i ];
+		if ( null == polygon )
+		{
+			final Spot spot = spots[ i ];
+			final SpotRoi roi = spot.getRoi();
+			if ( null == roi || roi.x.length < 2 )
+				return null;
+
+			final double[] polygonX = roi.toPolygonX( calibration[ 0 ], 0., 0., magnification );
+			final double[] polygonY = roi.toPolygonY( calibration[ 1 ], 0., 0., magnification );
+			polygon = new Path2D.Double( Path2D.WIND_NON_ZERO, polygonX.length + 1 );
+			polygon.moveTo( polygonX[ 0 ], polygonY[ 0 ] );
+			for ( int k = 1; k < polygonX.length; ++k )
+				polygon.lineTo( polygonX[ k ], polygonY[ k ] );
+			polygon.closePath();
+			rois[ i ] = polygon;
+		}
+		return polygon;
+	}
+
+	/**
+	 * Returns the number of spots in the index.
+	 *
+	 * @return the number of spots.
+	 */
+	public int size()
+	{
+		return spots.length;
+	}
+
+	/**
+	 * Returns the largest spot radius or ROI extent of the frame, in pixel
+	 * units.
+	 *
+	 * @return the largest spot extent.
+	 */
+	public double getMaxExtent()
+	{
+		return maxExtent;
+	}
+
+	public Spot getSpot( final int i )
+	{
+		return spots[ i ];
+	}
+
+	/**
+	 * Returns the X position of the center of the specified spot, in pixel
+	 * coordinates.
+	 */
+	public double getX( final int i )
+	{
+		return xs[ i ];
+	}
+
+	/**
+	 * Returns the Y position of the center of the specified spot, in pixel
+	 * coordinates.
+	 */
+	public double getY( final int i )
+	{
+		return ys[ i ];
+	}
+}
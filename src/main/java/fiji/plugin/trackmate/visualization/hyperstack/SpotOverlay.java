@@ -32,15 +32,20 @@ import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.Stroke;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
 import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.ModelChangeEvent;
 import fiji.plugin.trackmate.Spot;
-import fiji.plugin.trackmate.SpotCollection;
 import fiji.plugin.trackmate.SpotRoi;
 import fiji.plugin.trackmate.features.FeatureUtils;
 import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings;
@@ -73,6 +78,36 @@ public class SpotOverlay extends Roi
 
 	protected final Model model;
 
+	/**
+	 * Spot indices per frame, built on demand and dropped when the spots of a
+	 * frame change.
+	 */
+	private final Map< Integer, SpotFrameIndex > frameIndices = new HashMap<>();
+
+	/**
+	 * The color generator used to fill the color cache of the indices. Rebuilt
+	 * on the next paint when <code>null</code>.
+	 */
+	private FeatureColorGenerator< Spot > colorGenerator;
+
+	/**
+	 * Maximal number of spots painted in one call, to bound the size of the
+	 * batched paths.
+	 */
+	private static final int MAX_BATCH_SIZE = 10_000;
+
+	/**
+	 * Below this apparent diameter of the largest spot, in screen pixels, the
+	 * spots are painted as a density raster.
+	 */
+	private static final double DENSITY_RASTER_MAX_SPOT_SIZE = 1.;
+
+	/**
+	 * Frames with fewer spots than this are never painted as a density
+	 * raster.
+	 */
+	private static final int DENSITY_RASTER_MIN_SPOTS = 10_000;
+
 	/*
 	 * CONSTRUCTOR
 	 */
@@ -84,20 +119,105 @@ public class SpotOverlay extends Roi
 		this.imp = imp;
 		this.calibration = TMUtils.getSpatialCalibration( imp );
 		this.displaySettings = displaySettings;
+		displaySettings.listeners().add( () -> invalidateColors() );
 	}
 
 	/*
 	 * METHODS
 	 */
 
+	/**
+	 * Updates the spot indices and the color cache after a change in the
+	 * model.
+	 *
+	 * @param event
+	 *            the model change event.
+	 */
+	public synchronized void modelChanged( final ModelChangeEvent event )
+	{
+		switch ( event.getEventID() )
+		{
+		case ModelChangeEvent.SPOTS_COMPUTED:
+		case ModelChangeEvent.SPOTS_FILTERED:
+			frameIndices.clear();
+			invalidateColors();
+			break;
+		case ModelChangeEvent.MODEL_MODIFIED:
+			for ( final Spot spot : event.getSpots() )
+			{
+				if ( event.getSpotFlag( spot ) == ModelChangeEvent.FLAG_SPOT_FRAME_CHANGED )
+				{
+					frameIndices.remove( event.getFromFrame( spot ) );
+					frameIndices.remove( event.getToFrame( spot ) );
+				}
+				else
+				{
+					final Double frame = spot.getFeature( Spot.FRAME );
+					if ( null != frame )
+						frameIndices.remove( Integer.valueOf( frame.intValue() ) );
+				}
+			}
+			// Features, hence colors, may have changed.
+			invalidateColors();
+			break;
+		case ModelChangeEvent.FEATURES_COMPUTED:
+		case ModelChangeEvent.TRACKS_COMPUTED:
+			invalidateColors();
+			break;
+		default:
+			break;
+		}
+	}
+
+	private synchronized void invalidateColors()
+	{
+		colorGenerator = null;
+		for ( final SpotFrameIndex index : frameIndices.values() )
+			index.clearColors();
+	}
+
+	private synchronized SpotFrameIndex getFrameIndex( final int frame )
+	{
+		return frameIndices.computeIfAbsent( Integer.valueOf( frame ), f -> SpotFrameIndex.build( model.getSpots().iterable( f.intValue(), true ), calibration ) );
+	}
+
 	@Override
 	public void drawOverlay( final Graphics g )
 	{
-		final int xcorner = ic.offScreenX( 0 );
-		final int ycorner = ic.offScreenY( 0 );
-		final double magnification = getMagnification();
-		final SpotCollection spots = model.getSpots();
+		final double zslice = ( imp.getSlice() - 1 ) * calibration[ 2 ];
+		final int frame = imp.getFrame() - 1;
+		drawFrame( ( Graphics2D ) g, frame, zslice, ic.offScreenX( 0 ), ic.offScreenY( 0 ), getMagnification(), ic.getWidth(), ic.getHeight() );
+	}
 
+	/**
+	 * Paints the spots as they should appear for the specified frame and
+	 * Z-slice, in a view of the specified position, magnification and size.
+	 * <p>
+	 * This does not depend on the window the overlay is displayed in, so it
+	 * can be used to paint offscreen. Several frames can be painted
+	 * concurrently.
+	 *
+	 * @param g2d
+	 *            the graphics to paint on.
+	 * @param frame
+	 *            the frame to paint, 0-based.
+	 * @param zslice
+	 *            the Z position of the displayed slice, in physical units.
+	 * @param xcorner
+	 *            the X position of the top-left corner of the view, in pixel
+	 *            coordinates.
+	 * @param ycorner
+	 *            the Y position of the top-left corner of the view, in pixel
+	 *            coordinates.
+	 * @param magnification
+	 *            the magnification of the view.
+	 * @param width
+	 *            the width of the view, in screen pixels.
+	 * @param height
+	 *            the height of the view, in screen pixels.
+	 */
+	public void drawFrame( final Graphics2D g2d, final int frame, final double zslice, final int xcorner, final int ycorner, final double magnification, final int width, final int height )
+	{
 		if ( !displaySettings.isSpotVisible() )
 			return;
 
@@ -108,8 +228,6 @@ public class SpotOverlay extends Roi
 		final boolean filled = displaySettings.isSpotFilled();
 		final float alpha = ( float ) displaySettings.getSpotTransparencyAlpha();
 
-		final Graphics2D g2d = ( Graphics2D ) g;
-
 		// Save graphic device original settings
 		final AffineTransform originalTransform = g2d.getTransform();
 		final Composite originalComposite = g2d.getComposite();
@@ -123,12 +241,7 @@ public class SpotOverlay extends Roi
 				displaySettings.getUseAntialiasing() ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF );
 		fm = g2d.getFontMetrics();
 
-		final double zslice = ( imp.getSlice() - 1 ) * calibration[ 2 ];
 		final double lMag = magnification;
-		final int frame = imp.getFrame() - 1;
-
-		// Deal with normal spots.
-		final FeatureColorGenerator< Spot > colorGenerator = FeatureUtils.createSpotColorGenerator( model, displaySettings );
 
 		g2d.setStroke( new BasicStroke( ( float ) displaySettings.getLineThickness() ) );
 
@@ -148,7 +261,7 @@ public class SpotOverlay extends Roi
 				if ( doLimitDrawingDepth && Math.abs( z - zslice ) > drawingDepth )
 					continue;
 
-				final Color color = colorGenerator.color( spot );
+				final Color color = getColorGenerator().color( spot );
 				g2d.setColor( color );
 				drawSpot( g2d, spot, zslice, xcorner, ycorner, lMag, filled );
 			}
@@ -157,22 +270,7 @@ public class SpotOverlay extends Roi
 		else
 		{
 			// Other track displays.
-			for ( final Iterator< Spot > iterator = spots.iterator( frame, true ); iterator.hasNext(); )
-			{
-				final Spot spot = iterator.next();
-
-				if ( editingSpot == spot || ( spotSelection != null && spotSelection.contains( spot ) ) )
-					continue;
-
-				final Color color = colorGenerator.color( spot );
-				g2d.setColor( color );
-
-				final double z = spot.getFeature( Spot.POSITION_Z ).doubleValue();
-				if ( doLimitDrawingDepth && Math.abs( z - zslice ) > drawingDepth )
-					continue;
-
-				drawSpot( g2d, spot, zslice, xcorner, ycorner, lMag, filled );
-			}
+			drawSpots( g2d, frame, zslice, xcorner, ycorner, lMag, width, height );
 
 			// Deal with spot selection
 			if ( null != spotSelection )
@@ -229,6 +327,208 @@ public class SpotOverlay extends Roi
 		g2d.setFont( originalFont );
 	}
 
+	private synchronized FeatureColorGenerator< Spot > getColorGenerator()
+	{
+		if ( null == colorGenerator )
+			colorGenerator = FeatureUtils.createSpotColorGenerator( model, displaySettings );
+		return colorGenerator;
+	}
+
+	/**
+	 * Paints the visible spots of the specified frame that are neither
+	 * selected nor edited, and that are in the specified view.
+	 * <p>
+	 * Only the spots found by the frame index in the view are considered.
+	 * Spots of the same color are accumulated in one path, painted with a
+	 * single call. When the spots are too small to be seen, they are painted
+	 * as a density raster instead.
+	 *
+	 * @param g2d
+	 *            the graphics to paint on.
+	 * @param frame
+	 *            the frame to paint.
+	 * @param zslice
+	 *            the Z position of the displayed slice, in physical units.
+	 * @param xcorner
+	 *            the X position of the top-left corner of the view, in pixel
+	 *            coordinates.
+	 * @param ycorner
+	 *            the Y position of the top-left corner of the view, in pixel
+	 *            coordinates.
+	 * @param magnification
+	 *            the magnification of the view.
+	 * @param width
+	 *            the width of the view, in screen pixels.
+	 * @param height
+	 *            the height of the view, in screen pixels.
+	 */
+	protected void drawSpots( final Graphics2D g2d, final int frame, final double zslice, final int xcorner, final int ycorner, final double magnification, final int width, final int height )
+	{
+		final SpotFrameIndex index = getFrameIndex( frame );
+		final FeatureColorGenerator< Spot > colors = getColorGenerator();
+		final boolean doLimitDrawingDepth = displaySettings.isZDrawingDepthLimited();
+		final double drawingDepth = displaySettings.getZDrawingDepth();
+		final boolean filled = displaySettings.isSpotFilled();
+		final boolean showName = displaySettings.isSpotShowName();
+		final boolean asRoi = displaySettings.isSpotDisplayedAsRoi();
+		final double radiusRatio = displaySettings.getSpotDisplayRadius();
+		final Collection< Spot > selection = spotSelection;
+
+		final double minx = xcorner;
+		final double miny = ycorner;
+		final double maxx = xcorner + width / magnification;
+		final double maxy = ycorner + height / magnification;
+
+		final boolean asDensity = index.size() >= DENSITY_RASTER_MIN_SPOTS
+				&& 2. * index.getMaxExtent() * radiusRatio * magnification < DENSITY_RASTER_MAX_SPOT_SIZE;
+		if ( asDensity )
+		{
+			drawDensity( g2d, index, colors, zslice, xcorner, ycorner, magnification, width, height );
+			return;
+		}
+
+		final Map< Color, SpotBatch > batches = new HashMap<>();
+		final List< SpotLabel > labels = new ArrayList<>();
+		// Margin: out of focus spots are painted as 2-pixel discs.
+		index.forEachSpot( minx, miny, maxx, maxy, radiusRatio, 2., i -> {
+			final Spot spot = index.getSpot( i );
+			if ( editingSpot == spot || ( selection != null && selection.contains( spot ) ) )
+				return;
+
+			final double z = spot.getFeature( Spot.POSITION_Z ).doubleValue();
+			if ( doLimitDrawingDepth && Math.abs( z - zslice ) > drawingDepth )
+				return;
+
+			final Color color = index.getColor( i, colors );
+			SpotBatch batch = batches.get( color );
+			if ( null == batch )
+			{
+				batch = new SpotBatch();
+				batches.put( color, batch );
+			}
+
+			final double dz2 = ( z - zslice ) * ( z - zslice );
+			final double radius = spot.getFeature( Spot.RADIUS ) * radiusRatio;
+			/*
+			 * Read the current position rather than the indexed one: spots
+			 * can be moved by the edit tool before the model is notified.
+			 * The 0.5 is here so that spot centers are displayed on the
+			 * pixel centers.
+			 */
+			final double xp = spot.getFeature( Spot.POSITION_X ) / calibration[ 0 ] + 0.5;
+			final double yp = spot.getFeature( Spot.POSITION_Y ) / calibration[ 1 ] + 0.5;
+			// Scale to image zoom
+			final double xs = ( xp - xcorner ) * magnification;
+			final double ys = ( yp - ycorner ) * magnification;
+
+			if ( dz2 >= radius * radius )
+			{
+				batch.fill.append( new Ellipse2D.Double( xs - 2 * magnification, ys - 2 * magnification, 4 * magnification, 4 * magnification ), false );
+			}
+			else
+			{
+				final Path2D roi = asRoi ? index.getRoi( i, magnification ) : null;
+				final int textPos;
+				if ( null == roi )
+				{
+					final double apparentRadius = Math.sqrt( radius * radius - dz2 ) / calibration[ 0 ] * magnification;
+					final Ellipse2D disc = new Ellipse2D.Double( xs - apparentRadius, ys - apparentRadius, 2 * apparentRadius, 2 * apparentRadius );
+					if ( filled )
+						batch.fill.append( disc, false );
+					else
+						batch.draw.append( disc, false );
+					textPos = ( int ) apparentRadius;
+				}
+				else
+				{
+					final AffineTransform toView = AffineTransform.getTranslateInstance( xs, ys );
+					if ( filled )
+					{
+						batch.fill.append( roi.getPathIterator( toView ), false );
+						batch.outline.append( roi.getPathIterator( toView ), false );
+					}
+					else
+					{
+						batch.draw.append( roi.getPathIterator( toView ), false );
+					}
+					textPos = showName ? ( int ) roi.getBounds2D().getMaxX() : 0;
+				}
+				if ( showName )
+					labels.add( new SpotLabel( spot, color, xs, ys, textPos ) );
+			}
+
+			if ( ++batch.size >= MAX_BATCH_SIZE )
+				batch.flush( g2d, color );
+		} );
+
+		for ( final Map.Entry< Color, SpotBatch > entry : batches.entrySet() )
+			entry.getValue().flush( g2d, entry.getKey() );
+
+		for ( final SpotLabel label : labels )
+		{
+			g2d.setColor( label.color );
+			drawName( g2d, label.spot, label.xs, label.ys, label.textPos );
+		}
+	}
+
+	/**
+	 * Paints the spots of the view as a density raster: each screen pixel is
+	 * painted with the mean color of the spots it contains, more opaque as
+	 * there are more spots.
+	 */
+	private void drawDensity( final Graphics2D g2d, final SpotFrameIndex index, final FeatureColorGenerator< Spot > colors, final double zslice, final int xcorner, final int ycorner, final double magnification, final int width, final int height )
+	{
+		if ( width <= 0 || height <= 0 )
+			return;
+
+		final boolean doLimitDrawingDepth = displaySettings.isZDrawingDepthLimited();
+		final double drawingDepth = displaySettings.getZDrawingDepth();
+		final Collection< Spot > selection = spotSelection;
+		final int[] counts = new int[ width * height ];
+		final int[] reds = new int[ width * height ];
+		final int[] greens = new int[ width * height ];
+		final int[] blues = new int[ width * height ];
+		final int[] maxCount = new int[] { 0 };
+		index.forEachSpot( xcorner, ycorner, xcorner + width / magnification, ycorner + height / magnification, 0., 0., i -> {
+			final Spot spot = index.getSpot( i );
+			if ( editingSpot == spot || ( selection != null && selection.contains( spot ) ) )
+				return;
+			if ( doLimitDrawingDepth && Math.abs( spot.getFeature( Spot.POSITION_Z ).doubleValue() - zslice ) > drawingDepth )
+				return;
+
+			final int xs = ( int ) ( ( index.getX( i ) - xcorner ) * magnification );
+			final int ys = ( int ) ( ( index.getY( i ) - ycorner ) * magnification );
+			if ( xs < 0 || ys < 0 || xs >= width || ys >= height )
+				return;
+
+			final int p = ys * width + xs;
+			final Color color = index.getColor( i, colors );
+			reds[ p ] += color.getRed();
+			greens[ p ] += color.getGreen();
+			blues[ p ] += color.getBlue();
+			counts[ p ]++;
+			maxCount[ 0 ] = Math.max( maxCount[ 0 ], counts[ p ] );
+		} );
+		if ( maxCount[ 0 ] == 0 )
+			return;
+
+		final BufferedImage raster = new BufferedImage( width, height, BufferedImage.TYPE_INT_ARGB );
+		final int[] argb = ( ( DataBufferInt ) raster.getRaster().getDataBuffer() ).getData();
+		final double logMax = Math.log1p( maxCount[ 0 ] );
+		for ( int p = 0; p < argb.length; p++ )
+		{
+			final int count = counts[ p ];
+			if ( count == 0 )
+				continue;
+			final int alpha = ( int ) ( 255 * ( 0.25 + 0.75 * Math.log1p( count ) / logMax ) );
+			argb[ p ] = ( alpha << 24 )
+					| ( ( reds[ p ] / count ) << 16 )
+					| ( ( greens[ p ] / count ) << 8 )
+					| ( blues[ p ] / count );
+		}
+		g2d.drawImage( raster, 0, 0, null );
+	}
+
 	/**
 	 * @param g2d
 	 * @param frame
@@ -306,18 +606,73 @@ public class SpotOverlay extends Roi
 		}
 
 		if ( displaySettings.isSpotShowName() )
+			drawName( g2d, spot, xs, ys, textPos );
+	}
+
+	private void drawName( final Graphics2D g2d, final Spot spot, final double xs, final double ys, final int textPos )
+	{
+		final String str = spot.toString();
+
+		final int xindent = fm.stringWidth( str );
+		int xtext = ( int ) ( xs + textPos + 5 );
+		if ( null != imp.getWindow() && xtext + xindent > imp.getWindow().getWidth() )
+			xtext = ( int ) ( xs - textPos - 5 - xindent );
+
+		final int yindent = fm.getAscent() / 2;
+		final int ytext = ( int ) ys + yindent;
+
+		g2d.drawString( str, xtext, ytext );
+	}
+
+	/**
+	 * The shapes of the spots of one color, painted together.
+	 */
+	private static final class SpotBatch
+	{
+
+		private final Path2D fill = new Path2D.Float();
+
+		private final Path2D draw = new Path2D.Float();
+
+		/** Contours of filled ROIs, drawn in black. */
+		private final Path2D outline = new Path2D.Float();
+
+		private int size;
+
+		private void flush( final Graphics2D g2d, final Color color )
 		{
-			final String str = spot.toString();
+			g2d.setColor( color );
+			g2d.fill( fill );
+			g2d.draw( draw );
+			g2d.setColor( Color.BLACK );
+			g2d.draw( outline );
+			fill.reset();
+			draw.reset();
+			outline.reset();
+			size = 0;
+		}
+	}
+
+	private static final class SpotLabel
+	{
 
-			final int xindent = fm.stringWidth( str );
-			int xtext = ( int ) ( xs + textPos + 5 );
-			if ( xtext + xindent > imp.getWindow().getWidth() )
-				xtext = ( int ) ( xs - textPos - 5 - xindent );
+		private final Spot spot;
 
-			final int yindent = fm.getAscent() / 2;
-			final int ytext = ( int ) ys + yindent;
+		private final Color color;
 
-			g2d.drawString( spot.toString(), xtext, ytext );
+		private final double xs;
+
+		private final double ys;
+
+		private final int textPos;
+
+		private SpotLabel( final Spot spot, final Color color, final double xs, final double ys, final int textPos )
+		{
+			this.spot = spot;
+			this.color = color;
+			this.xs = xs;
+			this.ys = ys;
+			this.textPos = textPos;
 		}
 	}
 }
@@ -0,0 +1,368 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.visualization.hyperstack;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.TrackModel;
+import fiji.plugin.trackmate.visualization.FeatureColorGenerator;
+
+/**
+ * An index of the edges of the visible tracks, bucketed by frame and by a
+ * coarse spatial grid, so that the edges that may be painted in a time window
+ * and a viewport are found without iterating over all the edges of the model.
+ * <p>
+ * The frame of an edge is the frame of its source spot. The grid is laid over
+ * the bounding box of all edges, in pixel coordinates, and an edge is stored
+ * in every grid cell its bounding box overlaps. All the buckets are stored in
+ * one sorted array of keys, so that the buckets of one frame and one grid row
+ * are a contiguous range found by a binary search.
+ * <p>
+ * The index also caches the color of each edge. Instances are snapshots: they
+ * do not follow the changes of the model.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+public class TrackEdgeIndex
+{
+
+	/** Maximal number of grid cells along X and Y. */
+	private static final int GRID_SIZE = 64;
+
+	private final DefaultWeightedEdge[] edges;
+
+	private final Spot[] sources;
+
+	private final Spot[] targets;
+
+	private final int[] frames;
+
+	private final Color[] colors;
+
+	/**
+	 * Sorted bucket entries. The high 32 bits are the bucket key, the low 32
+	 * bits the edge index.
+	 */
+	private final long[] entries;
+
+	private final int minFrame;
+
+	private final int nFrames;
+
+	private final double originX;
+
+	private final double originY;
+
+	private final double cellSize;
+
+	private final int nx;
+
+	private final int ny;
+
+	/**
+	 * The first grid cell of each edge, <code>cy &lt;&lt; 16 | cx</code>. An
+	 * edge stored in several cells is reported only from the first of its
+	 * cells that is in the query, so that queries need no shared state.
+	 */
+	private final int[] firstCells;
+
+	private TrackEdgeIndex(
+			final DefaultWeightedEdge[] edges,
+			final Spot[] sources,
+			final Spot[] targets,
+			final int[] frames,
+			final int[] firstCells,
+			final long[] entries,
+			final int minFrame,
+			final int nFrames,
+			final double originX,
+			final double originY,
+			final double cellSize,
+			final int nx,
+			final int ny )
+	{
+		this.edges = edges;
+		this.sources = sources;
+		this.targets = targets;
+		this.frames = frames;
+		this.firstCells = firstCells;
+		this.colors = new Color[ edges.length ];
+		this.entries = entries;
+		this.minFrame = minFrame;
+		this.nFrames = nFrames;
+		this.originX = originX;
+		this.originY = originY;
+		this.cellSize = cellSize;
+		this.nx = nx;
+		this.ny = ny;
+	}
+
+	/**
+	 * Builds the index of the edges of the visible tracks of the specified
+	 * track model.
+	 *
+	 * @param trackModel
+	 *            the track model.
+	 * @param calibration
+	 *            the pixel sizes, to convert spot positions to pixel
+	 *            coordinates.
+	 * @return a new index.
+	 */
+	public static TrackEdgeIndex build( final TrackModel trackModel, final double[] calibration )
+	{
+		final Set< Integer > trackIDs = trackModel.unsortedTrackIDs( true );
+		int n = 0;
+		for ( final Integer trackID : trackIDs )
+			n += trackModel.trackEdges( trackID ).size();
+
+		final DefaultWeightedEdge[] edges = new DefaultWeightedEdge[ n ];
+		final Spot[] sources = new Spot[ n ];
+		final Spot[] targets = new Spot[ n ];
+		final int[] frames = new int[ n ];
+		final double[] xy = new double[ 4 * n ];
+		int minFrame = Integer.MAX_VALUE;
+		int maxFrame = Integer.MIN_VALUE;
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		int i = 0;
+		for ( final Integer trackID : trackIDs )
+		{
+			for ( final DefaultWeightedEdge edge : trackModel.trackEdges( trackID ) )
+			{
+				final Spot source = trackModel.getEdgeSource( edge );
+				final Spot target = trackModel.getEdgeTarget( edge );
+				edges[ i ] = edge;
+				sources[ i ] = source;
+				targets[ i ] = target;
+				frames[ i ] = source.getFeature( Spot.FRAME ).intValue();
+				minFrame = Math.min( minFrame, frames[ i ] );
+				maxFrame = Math.max( maxFrame, frames[ i ] );
+
+				final double x0 = source.getFeature( Spot.POSITION_X ) / calibration[ 0 ] + 0.5;
+				final double y0 = source.getFeature( Spot.POSITION_Y ) / calibration[ 1 ] + 0.5;
+				final double x1 = target.getFeature( Spot.POSITION_X ) / calibration[ 0 ] + 0.5;
+				final double y1 = target.getFeature( Spot.POSITION_Y ) / calibration[ 1 ] + 0.5;
+				xy[ 4 * i ] = Math.min( x0, x1 );
+				xy[ 4 * i + 1 ] = Math.min( y0, y1 );
+				xy[ 4 * i + 2 ] = Math.max( x0, x1 );
+				xy[ 4 * i + 3 ] = Math.max( y0, y1 );
+				minX = Math.min( minX, xy[ 4 * i ] );
+				minY = Math.min( minY, xy[ 4 * i + 1 ] );
+				maxX = Math.max( maxX, xy[ 4 * i + 2 ] );
+				maxY = Math.max( maxY, xy[ 4 * i + 3 ] );
+				i++;
+			}
+		}
+
+		if ( n == 0 )
+			return new TrackEdgeIndex( edges, sources, targets, frames, new int[ 0 ], new long[ 0 ], 0, 0, 0., 0., 1., 1, 1 );
+
+		/*
+		 * Grid. Coarser if there are many frames, so that keys fit in 31
+		 * bits.
+		 */
+
+		final int nFrames = maxFrame - minFrame + 1;
+		int gridSize = GRID_SIZE;
+		while ( gridSize > 1 && ( long ) nFrames * gridSize * gridSize >= Integer.MAX_VALUE )
+			gridSize /= 2;
+		final double cellSize = Math.max( 1., Math.max( maxX - minX, maxY - minY ) / gridSize );
+		final int nx = ( int ) ( ( maxX - minX ) / cellSize ) + 1;
+		final int ny = ( int ) ( ( maxY - minY ) / cellSize ) + 1;
+
+		// Count entries.
+		int nEntries = 0;
+		for ( int e = 0; e < n; e++ )
+		{
+			final int cx0 = ( int ) ( ( xy[ 4 * e ] - minX ) / cellSize );
+			final int cy0 = ( int ) ( ( xy[ 4 * e + 1 ] - minY ) / cellSize );
+			final int cx1 = ( int ) ( ( xy[ 4 * e + 2 ] - minX ) / cellSize );
+			final int cy1 = ( int ) ( ( xy[ 4 * e + 3 ] - minY ) / cellSize );
+			nEntries += ( cx1 - cx0 + 1 ) * ( cy1 - cy0 + 1 );
+		}
+
+		final long[] entries = new long[ nEntries ];
+		final int[] firstCells = new int[ n ];
+		int k = 0;
+		for ( int e = 0; e < n; e++ )
+		{
+			final int cx0 = ( int ) ( ( xy[ 4 * e ] - minX ) / cellSize );
+			final int cy0 = ( int ) ( ( xy[ 4 * e + 1 ] - minY ) / cellSize );
+			final int cx1 = ( int ) ( ( xy[ 4 * e + 2 ] - minX ) / cellSize );
+			final int cy1 = ( int ) ( ( xy[ 4 * e + 3 ] - minY ) / cellSize );
+			firstCells[ e ] = ( cy0 << 16 ) | cx0;
+			for ( int cy = cy0; cy <= cy1; cy++ )
+				for ( int cx = cx0; cx <= cx1; cx++ )
+					entries[ k++ ] = ( key( frames[ e ] - minFrame, cx, cy, nx, ny ) << 32 ) | e;
+		}
+		Arrays.sort( entries );
+
+		return new TrackEdgeIndex( edges, sources, targets, frames, firstCells, entries, minFrame, nFrames, minX, minY, cellSize, nx, ny );
+	}
+
+	private static long key( final int frameIndex, final int cx, final int cy, final int nx, final int ny )
+	{
+		return ( ( long ) frameIndex * ny + cy ) * nx + cx;
+	}
+
+	/**
+	 * Passes the index of each edge whose frame is in the specified range and
+	 * that may cross the specified rectangle to the specified consumer. Each
+	 * edge is reported once. The caller is expected to perform the exact clip
+	 * test. Several queries may run concurrently.
+	 *
+	 * @param minT
+	 *            the first frame, inclusive.
+	 * @param maxT
+	 *            the last frame, exclusive.
+	 * @param minx
+	 *            the rectangle min X, in pixel coordinates.
+	 * @param miny
+	 *            the rectangle min Y, in pixel coordinates.
+	 * @param maxx
+	 *            the rectangle max X, in pixel coordinates.
+	 * @param maxy
+	 *            the rectangle max Y, in pixel coordinates.
+	 * @param consumer
+	 *            receives the edge indices.
+	 */
+	public void forEachEdge( final int minT, final int maxT, final double minx, final double miny, final double maxx, final double maxy, final IntConsumer consumer )
+	{
+		if ( entries.length == 0 )
+			return;
+
+		final int f0 = ( int ) Math.max( 0l, ( long ) minT - minFrame );
+		final int f1 = ( int ) Math.min( nFrames - 1l, ( long ) maxT - 1 - minFrame );
+		final int cx0 = clamp( ( int ) Math.floor( ( minx - originX ) / cellSize ), nx );
+		final int cx1 = clamp( ( int ) Math.floor( ( maxx - originX ) / cellSize ), nx );
+		final int cy0 = clamp( ( int ) Math.floor( ( miny - originY ) / cellSize ), ny );
+		final int cy1 = clamp( ( int ) Math.floor( ( maxy - originY ) / cellSize ), ny );
+		if ( maxx < originX || maxy < originY || minx > originX + nx * cellSize || miny > originY + ny * cellSize )
+			return;
+
+		for ( int f = f0; f <= f1; f++ )
+		{
+			for ( int cy = cy0; cy <= cy1; cy++ )
+			{
+				final long from = key( f, cx0, cy, nx, ny ) << 32;
+				final long to = ( key( f, cx1, cy, nx, ny ) + 1 ) << 32;
+				for ( int k = lowerBound( from ); k < entries.length && entries[ k ] < to; k++ )
+				{
+					final int e = ( int ) entries[ k ];
+					// Only report the edge from its first cell in the query.
+					final int cx = ( int ) ( ( entries[ k ] >>> 32 ) % nx );
+					final int first = firstCells[ e ];
+					if ( cx != Math.max( first & 0xFFFF, cx0 ) || cy != Math.max( first >>> 16, cy0 ) )
+						continue;
+					consumer.accept( e );
+				}
+			}
+		}
+	}
+
+	private static int clamp( final int c, final int n )
+	{
+		return Math.max( 0, Math.min( n - 1, c ) );
+	}
+
+	private int lowerBound( final long value )
+	{
+		int lo = 0;
+		int hi = entries.length;
+		while ( lo < hi )
+		{
+			final int mid = ( lo + hi ) >>> 1;
+			if ( entries[ mid ] < value )
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Returns the color of the specified edge, computing it with the specified
+	 * color generator the first time, and taking it from the cache afterwards.
+	 *
+	 * @param e
+	 *            the edge index.
+	 * @param colorGenerator
+	 *            the color generator.
+	 * @return the color.
+	 */
+	public Color getColor( final int e, final FeatureColorGenerator< DefaultWeightedEdge > colorGenerator )
+	{
+		Color color = colors[ e ];
+		if ( null == color )
+		{
+			color = colorGenerator.color( edges[ e ] );
+			colors[ e ] = color;
+		}
+		return color;
+	}
+
+	/**
+	 * Discards the cached colors.
+	 */
+	public void clearColors()
+	{
+		Arrays.fill( colors, null );
+	}
+
+	/**
+	 * Returns the number of edges in the index.
+	 *
+	 * @return the number of edges.
+	 */
+	public int size()
+	{
+		return edges.length;
+	}
+
+	public DefaultWeightedEdge getEdge( final int e )
+	{
+		return edges[ e ];
+	}
+
+	public Spot getSource( final int e )
+	{
+		return sources[ e ];
+	}
+
+	public Spot getTarget( final int e )
+	{
+		return targets[ e ];
+	}
+
+	public int getFrame( final int e )
+	{
+		return frames[ e ];
+	}
+}
@@ -31,13 +31,16 @@ import java.awt.RenderingHints;
 import java.awt.Stroke;
 import java.awt.geom.AffineTransform;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
 import org.jgrapht.graph.DefaultWeightedEdge;
 
 import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.ModelChangeEvent;
 import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.TrackModel;
 import fiji.plugin.trackmate.features.FeatureUtils;
 import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings;
 import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings.TrackDisplayMode;
@@ -63,6 +66,29 @@ public class TrackOverlay extends Roi
 
 	protected final Model model;
 
+	/**
+	 * The index of the edges to paint. Rebuilt on the next paint when
+	 * <code>null</code>.
+	 */
+	private TrackEdgeIndex edgeIndex;
+
+	/**
+	 * Edges added, modified or removed since the index was built. They are
+	 * skipped when found in the index and painted from the model instead.
+	 */
+	private final Set< DefaultWeightedEdge > staleEdges = new HashSet<>();
+
+	/**
+	 * The color generator used to fill the color cache of the index. Rebuilt
+	 * on the next paint when <code>null</code>.
+	 */
+	private FeatureColorGenerator< DefaultWeightedEdge > colorGenerator;
+
+	/**
+	 * Above this number of stale edges, the index is rebuilt.
+	 */
+	private static final int MIN_STALE_EDGES_BEFORE_REBUILD = 10_000;
+
 	/*
 	 * CONSTRUCTOR
 	 */
@@ -74,6 +100,7 @@ public class TrackOverlay extends Roi
 		this.calibration = TMUtils.getSpatialCalibration( imp );
 		this.imp = imp;
 		this.displaySettings = displaySettings;
+		displaySettings.listeners().add( () -> invalidateColors() );
 	}
 
 	/*
@@ -85,27 +112,97 @@ public class TrackOverlay extends Roi
 		this.highlight = edges;
 	}
 
-	@Override
-	public final synchronized void drawOverlay( final Graphics g )
+	/**
+	 * Updates the edge index and the color cache after a change in the model.
+	 *
+	 * @param event
+	 *            the model change event.
+	 */
+	public synchronized void modelChanged( final ModelChangeEvent event )
 	{
-		final Graphics2D g2d = ( Graphics2D ) g;
+		switch ( event.getEventID() )
+		{
+		case ModelChangeEvent.MODEL_MODIFIED:
+			staleEdges.addAll( event.getEdges() );
+			if ( null != edgeIndex && staleEdges.size() > Math.max( MIN_STALE_EDGES_BEFORE_REBUILD, edgeIndex.size() / 100 ) )
+				invalidateIndex();
+			// Track features, hence colors, may have changed.
+			invalidateColors();
+			break;
+		case ModelChangeEvent.TRACKS_COMPUTED:
+		case ModelChangeEvent.TRACKS_VISIBILITY_CHANGED:
+			invalidateIndex();
+			invalidateColors();
+			break;
+		case ModelChangeEvent.FEATURES_COMPUTED:
+			invalidateColors();
+			break;
+		default:
+			break;
+		}
+	}
 
-		final double magnification = getMagnification();
+	private synchronized void invalidateIndex()
+	{
+		edgeIndex = null;
+		staleEdges.clear();
+	}
 
+	private synchronized void invalidateColors()
+	{
+		colorGenerator = null;
+		if ( null != edgeIndex )
+			edgeIndex.clearColors();
+	}
+
+	@Override
+	public final void drawOverlay( final Graphics g )
+	{
+		final double zslice = ( imp.getSlice() - 1 ) * calibration[ 2 ];
+		final int currentFrame = imp.getFrame() - 1;
+		drawFrame( ( Graphics2D ) g, currentFrame, zslice, ic.offScreenX( 0 ), ic.offScreenY( 0 ), getMagnification(), ic.getWidth(), ic.getHeight() );
+	}
+
+	/**
+	 * Paints the tracks as they should appear for the specified frame and
+	 * Z-slice, in a view of the specified position, magnification and size.
+	 * <p>
+	 * This does not depend on the window the overlay is displayed in, so it
+	 * can be used to paint offscreen. Several frames can be painted
+	 * concurrently.
+	 *
+	 * @param g2d
+	 *            the graphics to paint on.
+	 * @param currentFrame
+	 *            the frame to paint, 0-based.
+	 * @param zslice
+	 *            the Z position of the displayed slice, in physical units.
+	 * @param xcorner
+	 *            the X position of the top-left corner of the view, in pixel
+	 *            coordinates.
+	 * @param ycorner
+	 *            the Y position of the top-left corner of the view, in pixel
+	 *            coordinates.
+	 * @param magnification
+	 *            the magnification of the view.
+	 * @param width
+	 *            the width of the view, in screen pixels.
+	 * @param height
+	 *            the height of the view, in screen pixels.
+	 */
+	public void drawFrame( final Graphics2D g2d, final int currentFrame, final double zslice, final int xcorner, final int ycorner, final double magnification, final int width, final int height )
+	{
 		// Painted clip in window coordinates.
-		final int xcorner = ic.offScreenX( 0 );
-		final int ycorner = ic.offScreenY( 0 );
 		final double minx = xcorner;
 		final double miny = ycorner;
-		final double maxx = minx + ic.getWidth() / magnification;
-		final double maxy = miny + ic.getHeight() / magnification;
+		final double maxx = minx + width / magnification;
+		final double maxy = miny + height / magnification;
 
 		if ( !displaySettings.isTrackVisible() || model.getTrackModel().nTracks( true ) == 0 )
 			return;
 
 		final boolean doLimitDrawingDepth = displaySettings.isZDrawingDepthLimited();
 		final double drawingDepth = displaySettings.getZDrawingDepth();
-		final double zslice = ( imp.getSlice() - 1 ) * calibration[ 2 ];
 
 		// Save graphic device original settings
 		final AffineTransform originalTransform = g2d.getTransform();
@@ -114,10 +211,8 @@ public class TrackOverlay extends Roi
 		final Color originalColor = g2d.getColor();
 
 		// Normal edges
-		final int currentFrame = imp.getFrame() - 1;
 		final TrackDisplayMode trackDisplayMode = displaySettings.getTrackDisplayMode();
 		final int trackDisplayDepth = displaySettings.isFadeTracks() ? displaySettings.getFadeTrackRange() : 1_000_000_000;
-		final Set< Integer > filteredTrackKeys = model.getTrackModel().unsortedTrackIDs( true );
 
 		g2d.setStroke( new BasicStroke( ( float ) displaySettings.getLineThickness() ) );
 		if ( trackDisplayMode == TrackDisplayMode.LOCAL )
@@ -126,8 +221,27 @@ public class TrackOverlay extends Roi
 		g2d.setRenderingHint( RenderingHints.KEY_ANTIALIASING,
 				displaySettings.getUseAntialiasing() ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF );
 
-		// Color generator.
-		final FeatureColorGenerator< DefaultWeightedEdge > colorGenerator = FeatureUtils.createTrackColorGenerator( model, displaySettings );
+		// Color generator and edge index.
+		final FeatureColorGenerator< DefaultWeightedEdge > colorGenerator;
+		final TrackEdgeIndex edgeIndex;
+		final Set< DefaultWeightedEdge > staleEdges;
+		synchronized ( this )
+		{
+			if ( null == this.colorGenerator )
+				this.colorGenerator = FeatureUtils.createTrackColorGenerator( model, displaySettings );
+			if ( null == this.edgeIndex )
+			{
+				synchronized ( model )
+				{
+					this.edgeIndex = TrackEdgeIndex.build( model.getTrackModel(), calibration );
+				}
+				this.staleEdges.clear();
+			}
+			colorGenerator = this.colorGenerator;
+			edgeIndex = this.edgeIndex;
+			staleEdges = this.staleEdges.isEmpty() ? Collections.emptySet() : new HashSet<>( this.staleEdges );
+		}
+		final TrackModel trackModel = model.getTrackModel();
 
 		// Determine bounds for limited view modes
 		final int minT;
@@ -179,58 +293,73 @@ public class TrackOverlay extends Roi
 			break;
 		}
 		case FULL:
-		{
-			for ( final Integer trackID : filteredTrackKeys )
-			{
-				final Set< DefaultWeightedEdge > track = new HashSet<>( model.getTrackModel().trackEdges( trackID ) );
-				for ( final DefaultWeightedEdge edge : track )
-				{
-					final Spot source = model.getTrackModel().getEdgeSource( edge );
-					final Spot target = model.getTrackModel().getEdgeTarget( edge );
-					if ( !isOnClip( source, target, minx, miny, maxx, maxy, calibration ) )
-						continue;
-
-					final double zs = source.getFeature( Spot.POSITION_Z ).doubleValue();
-					final double zt = target.getFeature( Spot.POSITION_Z ).doubleValue();
-					if ( doLimitDrawingDepth && Math.abs( zs - zslice ) > drawingDepth && Math.abs( zt - zslice ) > drawingDepth )
-						continue;
-
-					g2d.setColor( colorGenerator.color( edge ) );
-					drawEdge( g2d, source, target, xcorner, ycorner, magnification );
-				}
-			}
-			break;
-		}
 		case LOCAL:
 		case LOCAL_BACKWARD:
 		case LOCAL_FORWARD:
 		{
+			final boolean fade = trackDisplayMode != TrackDisplayMode.FULL;
+			final int tStart = fade ? minT : Integer.MIN_VALUE;
+			final int tEnd = fade ? maxT : Integer.MAX_VALUE;
+			edgeIndex.forEachEdge( tStart, tEnd, minx, miny, maxx, maxy, e -> {
+				final DefaultWeightedEdge edge = edgeIndex.getEdge( e );
+				if ( staleEdges.contains( edge ) )
+					return;
+				final Spot source = edgeIndex.getSource( e );
+				final Spot target = edgeIndex.getTarget( e );
+				if ( !isOnClip( source, target, minx, miny, maxx, maxy, calibration ) )
+					return;
 
-			for ( final Integer trackID : filteredTrackKeys )
-			{
-				final Set< DefaultWeightedEdge > track;
-				synchronized ( model )
+				// Depth is only limited in full mode.
+				final double zs = source.getFeature( Spot.POSITION_Z ).doubleValue();
+				final double zt = target.getFeature( Spot.POSITION_Z ).doubleValue();
+				if ( !fade && doLimitDrawingDepth && Math.abs( zs - zslice ) > drawingDepth && Math.abs( zt - zslice ) > drawingDepth )
+					return;
+
+				g2d.setColor( edgeIndex.getColor( e, colorGenerator ) );
+				if ( fade )
 				{
-					track = new HashSet<>( model.getTrackModel().trackEdges( trackID ) );
+					final float transparency = ( float ) ( 1 - Math.abs( ( double ) edgeIndex.getFrame( e ) - currentFrame ) / trackDisplayDepth );
+					drawEdge( g2d, source, target, xcorner, ycorner, magnification, transparency );
 				}
-				for ( final DefaultWeightedEdge edge : track )
+				else
 				{
-					final Spot source = model.getTrackModel().getEdgeSource( edge );
-					final int sourceFrame = source.getFeature( Spot.FRAME ).intValue();
-					if ( sourceFrame < minT || sourceFrame >= maxT )
-						continue;
+					drawEdge( g2d, source, target, xcorner, ycorner, magnification );
+				}
+			} );
 
-					final float transparency = ( float ) ( 1 - Math.abs( ( double ) sourceFrame - currentFrame ) / trackDisplayDepth );
-					final Spot target = model.getTrackModel().getEdgeTarget( edge );
-					if ( !isOnClip( source, target, minx, miny, maxx, maxy, calibration ) )
-						continue;
+			// Edges changed since the index was built, read from the model.
+			for ( final DefaultWeightedEdge edge : staleEdges )
+			{
+				final Integer trackID = trackModel.trackIDOf( edge );
+				if ( null == trackID || !trackModel.isVisible( trackID ) )
+					continue;
+
+				final Spot source = trackModel.getEdgeSource( edge );
+				final Spot target = trackModel.getEdgeTarget( edge );
+				final int sourceFrame = source.getFeature( Spot.FRAME ).intValue();
+				if ( sourceFrame < tStart || sourceFrame >= tEnd )
+					continue;
+				if ( !isOnClip( source, target, minx, miny, maxx, maxy, calibration ) )
+					continue;
 
-					g2d.setColor( colorGenerator.color( edge ) );
+				// Depth is only limited in full mode.
+				final double zs = source.getFeature( Spot.POSITION_Z ).doubleValue();
+				final double zt = target.getFeature( Spot.POSITION_Z ).doubleValue();
+				if ( !fade && doLimitDrawingDepth && Math.abs( zs - zslice ) > drawingDepth && Math.abs( zt - zslice ) > drawingDepth )
+					continue;
+
+				g2d.setColor( colorGenerator.color( edge ) );
+				if ( fade )
+				{
+					final float transparency = ( float ) ( 1 - Math.abs( ( double ) sourceFrame - currentFrame ) / trackDisplayDepth );
 					drawEdge( g2d, source, target, xcorner, ycorner, magnification, transparency );
 				}
+				else
+				{
+					drawEdge( g2d, source, target, xcorner, ycorner, magnification );
+				}
 			}
 			break;
-
 		}
 		}
 
@@ -257,7 +386,7 @@ public class TrackOverlay extends Roi
 		g2d.setColor( originalColor );
 	}
 
-	private static final boolean isOnClip( final Spot source, final Spot target, final double minx, final double miny, final double maxx, final double maxy, final double[] calibration )
+	static final boolean isOnClip( final Spot source, final Spot target, final double minx, final double miny, final double maxx, final double maxy, final double[] calibration )
 	{
 		// Find x & y in physical coordinates
 		final double x0i = source.getFeature( Spot.POSITION_X );
@@ -59,6 +59,7 @@ import fiji.plugin.trackmate.SelectionChangeEvent;
 import fiji.plugin.trackmate.SelectionChangeListener;
 import fiji.plugin.trackmate.SelectionModel;
 import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
 import fiji.plugin.trackmate.features.FeatureUtils;
 import fiji.plugin.trackmate.features.manual.ManualSpotColorAnalyzerFactory;
 import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings;
@@ -257,10 +258,37 @@ public class AllSpotsTableView extends JFrame implements TrackMateModelView, Mod
 
 	@Override
 	public void modelChanged( final ModelChangeEvent event )
+	{
+		updateSpotTable( spotTable, model, event );
+		refresh();
+	}
+
+	/**
+	 * Updates the content of a table listing all the visible spots of a model
+	 * after a model change. Edits of the model are applied to the rows of the
+	 * changed spots only. When features are computed, the rows are sorted
+	 * again with the new values. Other changes rebuild the whole table.
+	 *
+	 * @param spotTable
+	 *            the table to update.
+	 * @param model
+	 *            the model the table displays.
+	 * @param event
+	 *            the model change event.
+	 */
+	static void updateSpotTable( final TablePanel< Spot > spotTable, final Model model, final ModelChangeEvent event )
 	{
 		if ( event.getEventID() == ModelChangeEvent.FEATURES_COMPUTED )
 		{
-			refresh();
+			spotTable.resort();
+			return;
+		}
+
+		if ( event.getEventID() == ModelChangeEvent.MODEL_MODIFIED )
+		{
+			final Integer removed = Integer.valueOf( ModelChangeEvent.FLAG_SPOT_REMOVED );
+			spotTable.update( event.getSpots(), spot -> !removed.equals( event.getSpotFlag( spot ) )
+					&& isVisible( spot ) );
 			return;
 		}
 
@@ -268,8 +296,12 @@ public class AllSpotsTableView extends JFrame implements TrackMateModelView, Mod
 		for ( final Spot spot : model.getSpots().iterable( true ) )
 			spots.add( spot );
 		spotTable.setObjects( spots );
+	}
 
-		refresh();
+	private static final boolean isVisible( final Spot spot )
+	{
+		final Double visibility = spot.getFeature( SpotCollection.VISIBILITY );
+		return visibility != null && visibility.doubleValue() > 0.;
 	}
 
 	/*
@@ -30,13 +30,17 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Function;
@@ -62,11 +66,11 @@ import fiji.plugin.trackmate.SelectionModel;
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.graph.ConvexBranchesDecomposition;
 import fiji.plugin.trackmate.graph.ConvexBranchesDecomposition.TrackBranchDecomposition;
-import fiji.plugin.trackmate.graph.TimeDirectedNeighborIndex;
 import fiji.plugin.trackmate.util.FileChooser;
 import fiji.plugin.trackmate.util.FileChooser.DialogType;
 import fiji.plugin.trackmate.util.FileChooser.SelectionMode;
 import fiji.plugin.trackmate.util.TMUtils;
+import fiji.plugin.trackmate.util.TrackMateExecutor;
 import fiji.plugin.trackmate.visualization.FeatureColorGenerator;
 import fiji.plugin.trackmate.visualization.TrackMateModelView;
 
@@ -158,112 +162,9 @@ public class BranchTableView extends JFrame implements TrackMateModelView
 		if ( ntracks == 0 )
 			logger.log( "No visible track found. Aborting.\n" );
 
-		final TimeDirectedNeighborIndex neighborIndex = model.getTrackModel().getDirectedNeighborIndex();
-
 		final List< Branch > brs = new ArrayList<>();
-		for ( final Integer trackID : model.getTrackModel().unsortedTrackIDs( true ) )
-		{
-			final TrackBranchDecomposition branchDecomposition = ConvexBranchesDecomposition.processTrack( trackID, model.getTrackModel(), neighborIndex, true, false );
-			final SimpleDirectedGraph< List< Spot >, DefaultEdge > branchGraph = ConvexBranchesDecomposition.buildBranchGraph( branchDecomposition );
-
-			final Map< Branch, Set< List< Spot > > > successorMap = new HashMap<>();
-			final Map< Branch, Set< List< Spot > > > predecessorMap = new HashMap<>();
-			final Map< List< Spot >, Branch > branchMap = new HashMap<>();
-
-			for ( final List< Spot > branch : branchGraph.vertexSet() )
-			{
-				final Branch br = new Branch();
-				branchMap.put( branch, br );
-
-				// Track name from ID
-				br.trackName = model.getTrackModel().name( trackID );
-				br.putFeature( TRACK_ID, Double.valueOf( trackID ) );
-
-				// First and last spot.
-				final Spot first = branch.get( 0 );
-				br.first = first;
-				br.putFeature( FIRST, Double.valueOf( first.ID() ) );
-
-				final Spot last = branch.get( branch.size() - 1 );
-				br.last = last;
-				br.putFeature( LAST, Double.valueOf( last.ID() ) );
-
-				// Delta T
-				br.putFeature( DELTA_T, Double.valueOf( br.dt() ) );
-
-				// Distance traveled.
-				final double distanceTraveled = Math.sqrt( br.last.squareDistanceTo( br.first ) );
-				br.putFeature( DISTANCE, Double.valueOf( distanceTraveled ) );
-
-				// Compute mean velocity "by hand".
-				final double meanV;
-				if ( branch.size() < 2 )
-				{
-					meanV = Double.NaN;
-				}
-				else
-				{
-					final Iterator< Spot > it = branch.iterator();
-					Spot previous = it.next();
-					double sum = 0;
-					while ( it.hasNext() )
-					{
-						final Spot next = it.next();
-						final double dr = Math.sqrt( next.squareDistanceTo( previous ) );
-						sum += dr;
-						previous = next;
-					}
-					meanV = sum / ( branch.size() - 1 );
-				}
-				br.putFeature( MEAN_VELOCITY, Double.valueOf( meanV ) );
-
-				// Predecessors
-				final Set< DefaultEdge > incomingEdges = branchGraph.incomingEdgesOf( branch );
-				final Set< List< Spot > > predecessors = new HashSet<>( incomingEdges.size() );
-				for ( final DefaultEdge edge : incomingEdges )
-				{
-					final List< Spot > predecessorBranch = branchGraph.getEdgeSource( edge );
-					predecessors.add( predecessorBranch );
-				}
-
-				// Successors
-				final Set< DefaultEdge > outgoingEdges = branchGraph.outgoingEdgesOf( branch );
-				final Set< List< Spot > > successors = new HashSet<>( outgoingEdges.size() );
-				for ( final DefaultEdge edge : outgoingEdges )
-				{
-					final List< Spot > successorBranch = branchGraph.getEdgeTarget( edge );
-					successors.add( successorBranch );
-				}
-
-				successorMap.put( br, successors );
-				predecessorMap.put( br, predecessors );
-			}
-
-			for ( final Branch br : successorMap.keySet() )
-			{
-				final Set< List< Spot > > succs = successorMap.get( br );
-				final Set< Branch > succBrs = new HashSet<>( succs.size() );
-				for ( final List< Spot > branch : succs )
-				{
-					final Branch succBr = branchMap.get( branch );
-					succBrs.add( succBr );
-				}
-				br.successors = succBrs;
-				br.putFeature( N_SUCCESSORS, Double.valueOf( succBrs.size() ) );
-
-				final Set< List< Spot > > preds = predecessorMap.get( br );
-				final Set< Branch > predBrs = new HashSet<>( preds.size() );
-				for ( final List< Spot > branch : preds )
-				{
-					final Branch predBr = branchMap.get( branch );
-					predBrs.add( predBr );
-				}
-				br.predecessors = predBrs;
-				br.putFeature( N_PREDECESSORS, Double.valueOf( predBrs.size() ) );
-			}
-
-			brs.addAll( successorMap.keySet() );
-		}
+		for ( final List< Branch > trackBranches : createBranches( model, model.getTrackModel().unsortedTrackIDs( true ) ).values() )
+			brs.addAll( trackBranches );
 		Collections.sort( brs );
 
 		/*
@@ -299,6 +200,77 @@ public class BranchTableView extends JFrame implements TrackMateModelView
 		return table;
 	}
 
+	/**
+	 * Decomposes the specified tracks in branches and computes the branch
+	 * features. The tracks are processed concurrently, and their branch
+	 * decompositions are cached by the track model.
+	 * <p>
+	 * This method does not require a GUI.
+	 *
+	 * @param model
+	 *            the model the tracks belong to.
+	 * @param trackIDs
+	 *            the IDs of the tracks to decompose.
+	 * @return a new map, from track ID to the sorted list of the branches of
+	 *         this track, iterated in the order of the specified track IDs.
+	 */
+	public static Map< Integer, List< Branch > > createBranches( final Model model, final Collection< Integer > trackIDs )
+	{
+		final List< Integer > ids = new ArrayList<>( trackIDs );
+		final List< Callable< List< Branch > > > tasks = new ArrayList<>( ids.size() );
+		for ( final Integer trackID : ids )
+			tasks.add( () -> {
+				final List< Branch > trackBranches = createBranches( model, trackID,
+						model.getTrackModel().getBranchDecomposition( trackID, true, false ) );
+				Collections.sort( trackBranches );
+				return trackBranches;
+			} );
+
+		final Map< Integer, List< Branch > > brs = new LinkedHashMap<>( ids.size() );
+		try
+		{
+			final TrackMateExecutor executor = TrackMateExecutor.current();
+			final List< List< Branch > > results = executor.invokeAll( "Branch analysis", tasks, executor.getNumThreads() );
+			for ( int i = 0; i < ids.size(); i++ )
+				brs.put( ids.get( i ), results.get( i ) );
+		}
+		catch ( InterruptedException | ExecutionException e )
+		{
+			model.getLogger().error( "Problem computing track branches: " + e.getMessage() + "\n" );
+		}
+		return brs;
+	}
+
+	/**
+	 * Returns the keys of the features computed for branches.
+	 *
+	 * @return the branch feature keys, in table order.
+	 */
+	public static List< String > getBranchFeatures()
+	{
+		return Collections.unmodifiableList( BRANCH_FEATURES );
+	}
+
+	public static Map< String, String > getBranchFeatureNames()
+	{
+		return Collections.unmodifiableMap( BRANCH_FEATURES_NAMES );
+	}
+
+	public static Map< String, String > getBranchFeatureShortNames()
+	{
+		return Collections.unmodifiableMap( BRANCH_FEATURES_SHORTNAMES );
+	}
+
+	public static Map< String, Boolean > getBranchFeatureIsInt()
+	{
+		return Collections.unmodifiableMap( BRANCH_FEATURES_ISINTS );
+	}
+
+	public static Map< String, Dimension > getBranchFeatureDimensions()
+	{
+		return Collections.unmodifiableMap( BRANCH_FEATURES_DIMENSIONS );
+	}
+
 	@Override
 	public void render()
 	{
@@ -378,6 +350,120 @@ public class BranchTableView extends JFrame implements TrackMateModelView
 		}
 	}
 
+	/**
+	 * Creates the branches of one track from its convex branch decomposition.
+	 *
+	 * @param model
+	 *            the model the track belongs to.
+	 * @param trackID
+	 *            the track ID.
+	 * @param branchDecomposition
+	 *            the convex branch decomposition of the track.
+	 * @return a new list of branches.
+	 */
+	private static final List< Branch > createBranches( final Model model, final Integer trackID, final TrackBranchDecomposition branchDecomposition )
+	{
+		final SimpleDirectedGraph< List< Spot >, DefaultEdge > branchGraph = ConvexBranchesDecomposition.buildBranchGraph( branchDecomposition );
+
+		final Map< Branch, Set< List< Spot > > > successorMap = new HashMap<>();
+		final Map< Branch, Set< List< Spot > > > predecessorMap = new HashMap<>();
+		final Map< List< Spot >, Branch > branchMap = new HashMap<>();
+
+		for ( final List< Spot > branch : branchGraph.vertexSet() )
+		{
+			final Branch br = new Branch();
+			branchMap.put( branch, br );
+
+			// Track name from ID
+			br.trackName = model.getTrackModel().name( trackID );
+			br.putFeature( TRACK_ID, Double.valueOf( trackID ) );
+
+			// First and last spot.
+			final Spot first = branch.get( 0 );
+			br.first = first;
+			br.putFeature( FIRST, Double.valueOf( first.ID() ) );
+
+			final Spot last = branch.get( branch.size() - 1 );
+			br.last = last;
+			br.putFeature( LAST, Double.valueOf( last.ID() ) );
+
+			// Delta T
+			br.putFeature( DELTA_T, Double.valueOf( br.dt() ) );
+
+			// Distance traveled.
+			final double distanceTraveled = Math.sqrt( br.last.squareDistanceTo( br.first ) );
+			br.putFeature( DISTANCE, Double.valueOf( distanceTraveled ) );
+
+			// Compute mean velocity "by hand".
+			final double meanV;
+			if ( branch.size() < 2 )
+			{
+				meanV = Double.NaN;
+			}
+			else
+			{
+				final Iterator< Spot > it = branch.iterator();
+				Spot previous = it.next();
+				double sum = 0;
+				while ( it.hasNext() )
+				{
+					final Spot next = it.next();
+					final double dr = Math.sqrt( next.squareDistanceTo( previous ) );
+					sum += dr;
+					previous = next;
+				}
+				meanV = sum / ( branch.size() - 1 );
+			}
+			br.putFeature( MEAN_VELOCITY, Double.valueOf( meanV ) );
+
+			// Predecessors
+			final Set< DefaultEdge > incomingEdges = branchGraph.incomingEdgesOf( branch );
+			final Set< List< Spot > > predecessors = new HashSet<>( incomingEdges.size() );
+			for ( final DefaultEdge edge : incomingEdges )
+			{
+				final List< Spot > predecessorBranch = branchGraph.getEdgeSource( edge );
+				predecessors.add( predecessorBranch );
+			}
+
+			// Successors
+			final Set< DefaultEdge > outgoingEdges = branchGraph.outgoingEdgesOf( branch );
+			final Set< List< Spot > > successors = new HashSet<>( outgoingEdges.size() );
+			for ( final DefaultEdge edge : outgoingEdges )
+			{
+				final List< Spot > successorBranch = branchGraph.getEdgeTarget( edge );
+				successors.add( successorBranch );
+			}
+
+			successorMap.put( br, successors );
+			predecessorMap.put( br, predecessors );
+		}
+
+		for ( final Branch br : successorMap.keySet() )
+		{
+			final Set< List< Spot > > succs = successorMap.get( br );
+			final Set< Branch > succBrs = new HashSet<>( succs.size() );
+			for ( final List< Spot > branch : succs )
+			{
+				final Branch succBr = branchMap.get( branch );
+				succBrs.add( succBr );
+			}
+			br.successors = succBrs;
+			br.putFeature( N_SUCCESSORS, Double.valueOf( succBrs.size() ) );
+
+			final Set< List< Spot > > preds = predecessorMap.get( br );
+			final Set< Branch > predBrs = new HashSet<>( preds.size() );
+			for ( final List< Spot > branch : preds )
+			{
+				final Branch predBr = branchMap.get( branch );
+				predBrs.add( predBr );
+			}
+			br.predecessors = predBrs;
+			br.putFeature( N_PREDECESSORS, Double.valueOf( predBrs.size() ) );
+		}
+
+		return new ArrayList<>( successorMap.keySet() );
+	}
+
 	/*
 	 * STATIC CLASSES AND ENUMS
 	 */
@@ -36,12 +36,17 @@ import java.io.IOException;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 
 import javax.swing.AbstractCellEditor;
@@ -79,6 +84,12 @@ public class TablePanel< O >
 
 	private static final int ROW_HEIGHT = 26;
 
+	/**
+	 * Below this number of changed rows, changes are always forwarded to the
+	 * row sorter one by one.
+	 */
+	private static final int MIN_INCREMENTAL_CHANGES = 64;
+
 	private final JTable table;
 
 	private final List< Class< ? > > columnClasses;
@@ -245,6 +256,8 @@ public class TablePanel< O >
 		// Sorting.
 		final TableRowSorter< MyTableModel > sorter = new TableRowSorter<>( tableModel );
 		table.setRowSorter( sorter );
+		// Re-position updated rows instead of leaving them in place.
+		sorter.setSortsOnUpdates( true );
 		for ( int c = 0; c < columnClasses.size(); c++ )
 		{
 			if ( columnClasses.get( c ).equals( Integer.class ) )
@@ -297,6 +310,193 @@ public class TablePanel< O >
 		( ( MyTableModel ) table.getModel() ).fireTableDataChanged();
 	}
 
+	/**
+	 * Applies a change to the content of the table without rebuilding it.
+	 * <p>
+	 * Rows of removed objects are deleted, and added objects are appended.
+	 * Rows of modified objects are deleted and appended again, so that the
+	 * row sorter positions them with the new values. Each change is forwarded
+	 * to the row sorter as a fine-grained event, so that the view order is
+	 * updated by insertion rather than by sorting all the rows again. When the
+	 * change affects a large fraction of the table, a single full refresh is
+	 * cheaper and is fired instead. Modified objects that were selected stay
+	 * selected.
+	 * <p>
+	 * Objects to add that are already in the table, and objects to remove or
+	 * to update that are not, are ignored.
+	 *
+	 * @param added
+	 *            the objects to append to the table.
+	 * @param removed
+	 *            the objects to remove from the table.
+	 * @param modified
+	 *            the objects whose values changed.
+	 */
+	@SuppressWarnings( "unchecked" )
+	public void update( final Collection< O > added, final Collection< O > removed, final Collection< O > modified )
+	{
+		final int nChanges = added.size() + removed.size() + modified.size();
+		if ( nChanges == 0 )
+			return;
+
+		final MyTableModel tableModel = ( MyTableModel ) table.getModel();
+		final boolean incremental = nChanges <= Math.max( MIN_INCREMENTAL_CHANGES, objects.size() / 10 );
+
+		/*
+		 * The sorter inserts an updated row by binary search among the other
+		 * rows, which is only correct if none of them has changed value. So
+		 * modified rows are not signaled as updated one by one: they are
+		 * deleted, then appended again with the added objects.
+		 */
+		final List< Integer > rows = new ArrayList<>( removed.size() + modified.size() );
+		for ( final O o : removed )
+		{
+			final int row = map.remove( o );
+			if ( row >= 0 )
+				rows.add( Integer.valueOf( row ) );
+		}
+		final Set< O > appended = new LinkedHashSet<>();
+		for ( final O o : added )
+			if ( !map.containsKey( o ) )
+				appended.add( o );
+		final List< O > reselect = new ArrayList<>();
+		if ( incremental )
+		{
+			for ( final O o : modified )
+			{
+				final int row = map.remove( o );
+				if ( row < 0 )
+					continue;
+				rows.add( Integer.valueOf( row ) );
+				appended.add( o );
+				if ( table.isRowSelected( table.convertRowIndexToView( row ) ) )
+					reselect.add( o );
+			}
+		}
+
+		// Do not forward the intermediate selections.
+		final ListSelectionModel selectionModel = table.getSelectionModel();
+		selectionModel.setValueIsAdjusting( true );
+		try
+		{
+			// Deletions: from the last row, so that the others keep their index.
+			rows.sort( Comparator.reverseOrder() );
+			for ( final Integer row : rows )
+			{
+				objects.remove( row.intValue() );
+				if ( incremental )
+					tableModel.fireTableRowsDeleted( row, row );
+			}
+			if ( !rows.isEmpty() )
+				for ( int row = rows.get( rows.size() - 1 ); row < objects.size(); row++ )
+					map.put( objects.get( row ), row );
+
+			// Additions: appended at the end.
+			final int first = objects.size();
+			for ( final O o : appended )
+			{
+				map.put( o, objects.size() );
+				objects.add( o );
+			}
+			if ( !incremental )
+			{
+				tableModel.fireTableDataChanged();
+				return;
+			}
+			if ( objects.size() > first )
+				tableModel.fireTableRowsInserted( first, objects.size() - 1 );
+
+			for ( final O o : reselect )
+			{
+				final int row = getViewRowForObject( o );
+				selectionModel.addSelectionInterval( row, row );
+			}
+		}
+		finally
+		{
+			selectionModel.setValueIsAdjusting( false );
+		}
+	}
+
+	/**
+	 * Sorts the rows again with the current values of the objects. To call
+	 * when the values of objects already in the table changed without the
+	 * table being told, for instance when their features are computed after
+	 * the model change that added or modified them. The selected objects stay
+	 * selected.
+	 */
+	public void resort()
+	{
+		final ListSelectionModel selectionModel = table.getSelectionModel();
+		selectionModel.setValueIsAdjusting( true );
+		try
+		{
+			table.getRowSorter().allRowsChanged();
+		}
+		finally
+		{
+			selectionModel.setValueIsAdjusting( false );
+		}
+	}
+
+	/**
+	 * Updates the table content for the specified objects only. Each candidate
+	 * that passes the specified filter is added to the table if it is not
+	 * there yet, or signaled as modified if it is. Each candidate that does not
+	 * pass the filter is removed from the table.
+	 *
+	 * @param candidates
+	 *            the objects that might have changed.
+	 * @param filter
+	 *            whether an object should be listed in the table.
+	 * @see #update(Collection, Collection, Collection)
+	 */
+	public void update( final Iterable< O > candidates, final Predicate< O > filter )
+	{
+		final List< O > added = new ArrayList<>();
+		final List< O > removed = new ArrayList<>();
+		final List< O > modified = new ArrayList<>();
+		for ( final O o : candidates )
+		{
+			final boolean listed = map.containsKey( o );
+			if ( filter.test( o ) )
+			{
+				if ( listed )
+					modified.add( o );
+				else
+					added.add( o );
+			}
+			else if ( listed )
+			{
+				removed.add( o );
+			}
+		}
+		update( added, removed, modified );
+	}
+
+	/**
+	 * Returns <code>true</code> if the specified object is listed in this
+	 * table.
+	 *
+	 * @param o
+	 *            the object to query.
+	 * @return whether the object is in the table.
+	 */
+	public boolean contains( final O o )
+	{
+		return map.containsKey( o );
+	}
+
+	/**
+	 * Returns the objects listed in this table, in <b>model</b> row order.
+	 *
+	 * @return an unmodifiable view of the table objects.
+	 */
+	public List< O > getObjects()
+	{
+		return Collections.unmodifiableList( objects );
+	}
+
 	/**
 	 * The panel in which the table is displayed. This is the component to add
 	 * to client UI.
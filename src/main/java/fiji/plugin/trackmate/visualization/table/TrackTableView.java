@@ -32,6 +32,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -63,6 +64,7 @@ import fiji.plugin.trackmate.SelectionChangeEvent;
 import fiji.plugin.trackmate.SelectionChangeListener;
 import fiji.plugin.trackmate.SelectionModel;
 import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.TrackModel;
 import fiji.plugin.trackmate.features.FeatureUtils;
 import fiji.plugin.trackmate.features.manual.ManualEdgeColorAnalyzer;
 import fiji.plugin.trackmate.features.manual.ManualSpotColorAnalyzerFactory;
@@ -403,27 +405,112 @@ public class TrackTableView extends JFrame implements TrackMateModelView, ModelC
 
 	@Override
 	public void modelChanged( final ModelChangeEvent event )
+	{
+		updateTables( spotTable, edgeTable, trackTable, model, event );
+		refresh();
+	}
+
+	/**
+	 * Updates the content of the spot, edge and track tables of a model after
+	 * a model change. The tables list the spots, edges and IDs of the visible
+	 * tracks.
+	 * <p>
+	 * Edits of the model are applied to the rows of the objects they affect:
+	 * the spots and edges of the event, the spots and edges of the tracks
+	 * that were updated, and the tracks that appeared, disappeared or were
+	 * updated. When features are computed, the rows are sorted again with the
+	 * new values. Other changes rebuild the whole tables.
+	 *
+	 * @param spotTable
+	 *            the spot table to update.
+	 * @param edgeTable
+	 *            the edge table to update.
+	 * @param trackTable
+	 *            the track table to update.
+	 * @param model
+	 *            the model the tables display.
+	 * @param event
+	 *            the model change event.
+	 */
+	static void updateTables(
+			final TablePanel< Spot > spotTable,
+			final TablePanel< DefaultWeightedEdge > edgeTable,
+			final TablePanel< Integer > trackTable,
+			final Model model,
+			final ModelChangeEvent event )
 	{
 		if ( event.getEventID() == ModelChangeEvent.FEATURES_COMPUTED )
 		{
-			refresh();
+			spotTable.resort();
+			edgeTable.resort();
+			trackTable.resort();
 			return;
 		}
 
-		final List< Spot > spots = new ArrayList<>();
-		for ( final Integer trackID : model.getTrackModel().unsortedTrackIDs( true ) )
-			spots.addAll( model.getTrackModel().trackSpots( trackID ) );
-		spotTable.setObjects( spots );
-
-		final List< DefaultWeightedEdge > edges = new ArrayList<>();
-		for ( final Integer trackID : model.getTrackModel().unsortedTrackIDs( true ) )
-			edges.addAll( model.getTrackModel().trackEdges( trackID ) );
-		edgeTable.setObjects( edges );
-
-		final List< Integer > trackIDs = new ArrayList<>( model.getTrackModel().trackIDs( true ) );
-		trackTable.setObjects( trackIDs );
+		final TrackModel trackModel = model.getTrackModel();
+		if ( event.getEventID() != ModelChangeEvent.MODEL_MODIFIED )
+		{
+			final List< Spot > spots = new ArrayList<>();
+			for ( final Integer trackID : trackModel.unsortedTrackIDs( true ) )
+				spots.addAll( trackModel.trackSpots( trackID ) );
+			spotTable.setObjects( spots );
+
+			final List< DefaultWeightedEdge > edges = new ArrayList<>();
+			for ( final Integer trackID : trackModel.unsortedTrackIDs( true ) )
+				edges.addAll( trackModel.trackEdges( trackID ) );
+			edgeTable.setObjects( edges );
+
+			final List< Integer > trackIDs = new ArrayList<>( trackModel.trackIDs( true ) );
+			trackTable.setObjects( trackIDs );
+			return;
+		}
 
-		refresh();
+		final Set< Integer > visibleTrackIDs = trackModel.unsortedTrackIDs( true );
+		final Set< Integer > updatedTrackIDs = new HashSet<>();
+		if ( event.getTrackUpdated() != null )
+			for ( final Integer trackID : event.getTrackUpdated() )
+				if ( visibleTrackIDs.contains( trackID ) )
+					updatedTrackIDs.add( trackID );
+
+		// Tracks.
+		final Set< Integer > trackCandidates = new LinkedHashSet<>( updatedTrackIDs );
+		for ( final Integer trackID : trackTable.getObjects() )
+			if ( !visibleTrackIDs.contains( trackID ) )
+				trackCandidates.add( trackID );
+		for ( final Integer trackID : visibleTrackIDs )
+			if ( !trackTable.contains( trackID ) )
+				trackCandidates.add( trackID );
+		trackTable.update( trackCandidates, visibleTrackIDs::contains );
+
+		// Edges.
+		final Set< DefaultWeightedEdge > edgeCandidates = new LinkedHashSet<>( event.getEdges() );
+		for ( final Integer trackID : updatedTrackIDs )
+			edgeCandidates.addAll( trackModel.trackEdges( trackID ) );
+		final Integer edgeRemoved = Integer.valueOf( ModelChangeEvent.FLAG_EDGE_REMOVED );
+		edgeTable.update( edgeCandidates, edge -> !edgeRemoved.equals( event.getEdgeFlag( edge ) )
+				&& visibleTrackIDs.contains( trackModel.trackIDOf( edge ) ) );
+
+		// Spots.
+		final Set< Spot > spotCandidates = new LinkedHashSet<>( event.getSpots() );
+		for ( final Integer trackID : updatedTrackIDs )
+			spotCandidates.addAll( trackModel.trackSpots( trackID ) );
+		/*
+		 * Removed edges can leave spots out of any track, and we cannot query
+		 * the extremities of a removed edge. Look for them in the table.
+		 */
+		for ( final DefaultWeightedEdge edge : event.getEdges() )
+		{
+			if ( edgeRemoved.equals( event.getEdgeFlag( edge ) ) )
+			{
+				for ( final Spot spot : spotTable.getObjects() )
+					if ( !visibleTrackIDs.contains( trackModel.trackIDOf( spot ) ) )
+						spotCandidates.add( spot );
+				break;
+			}
+		}
+		final Integer spotRemoved = Integer.valueOf( ModelChangeEvent.FLAG_SPOT_REMOVED );
+		spotTable.update( spotCandidates, spot -> !spotRemoved.equals( event.getSpotFlag( spot ) )
+				&& visibleTrackIDs.contains( trackModel.trackIDOf( spot ) ) );
 	}
 
 	/*
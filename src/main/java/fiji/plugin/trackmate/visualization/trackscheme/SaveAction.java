@@ -186,6 +186,7 @@ public class SaveAction extends AbstractAction {
 					public mxICanvas createCanvas(final int width, final int height) {
 						final TrackSchemeSvgCanvas lCanvas = new TrackSchemeSvgCanvas(mxDomUtils.createSvgDocument(width, height));
 						lCanvas.setEmbedded(true);
+						lCanvas.setThumbnails(trackScheme.getThumbnails());
 						return lCanvas;
 					}
 				});
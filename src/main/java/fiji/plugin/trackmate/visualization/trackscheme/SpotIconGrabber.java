@@ -76,6 +76,23 @@ public class SpotIconGrabber< T extends RealType< T >>
 	 *            this radius.
 	 */
 	public String getImageString( final Spot spot, final double radiusFactor )
+	{
+		return toImageString( getImage( spot, radiusFactor ) );
+	}
+
+	/**
+	 * Returns the thumbnail image of the specified spot, as in
+	 * {@link #getImageString(Spot, double)} but without encoding it.
+	 *
+	 * @param spot
+	 *            the spot to generate a thumbnail image from.
+	 * @param radiusFactor
+	 *            a factor that determines the size of the thumbnail. The
+	 *            thumbnail will have a size equal to the spot diameter times
+	 *            this radius.
+	 * @return a new image.
+	 */
+	public BufferedImage getImage( final Spot spot, final double radiusFactor )
 	{
 		// Get crop coordinates
 		final double[] calibration = TMUtils.getSpatialCalibration( img );
@@ -106,13 +123,23 @@ public class SpotIconGrabber< T extends RealType< T >>
 		final ImagePlus imp = ImageJFunctions.wrap( crop, crop.toString() );
 		final ImageProcessor ip = imp.getProcessor();
 		ip.resetMinAndMax();
+		return ip.getBufferedImage();
+	}
 
-		// Convert to base64
+	/**
+	 * Encodes the specified image as a base64 PNG string.
+	 *
+	 * @param image
+	 *            the image to encode.
+	 * @return the image string, or an empty string if the image could not be
+	 *         encoded.
+	 */
+	public static String toImageString( final BufferedImage image )
+	{
 		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
-		final BufferedImage lImg = ip.getBufferedImage();
 		try
 		{
-			ImageIO.write( lImg, "png", bos );
+			ImageIO.write( image, "png", bos );
 			return mxBase64.encodeToString( bos.toByteArray(), false );
 		}
 		catch ( final IOException e )
@@ -21,6 +21,8 @@
  */
 package fiji.plugin.trackmate.visualization.trackscheme;
 
+import java.awt.image.BufferedImage;
+
 import fiji.plugin.trackmate.Settings;
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.util.TMUtils;
@@ -83,4 +85,39 @@ public class SpotImageUpdater
 		}
 		return grabber.getImageString( spot, radiusFactor );
 	}
+
+	/**
+	 * Returns the 0-based channel thumbnails are taken from, which is the
+	 * current channel of the raw image.
+	 *
+	 * @return the target channel.
+	 */
+	public int getTargetChannel()
+	{
+		return settings.imp.getC() - 1;
+	}
+
+	/**
+	 * Returns the thumbnail image of the given spot in the specified channel.
+	 * Contrary to {@link #getImageString(Spot, double)}, this method keeps no
+	 * state and can be called concurrently.
+	 *
+	 * @param spot
+	 *            the spot.
+	 * @param radiusFactor
+	 *            a factor that determines the size of the thumbnail. The
+	 *            thumbnail will have a size equal to the spot diameter times
+	 *            this radius.
+	 * @param channel
+	 *            the 0-based channel.
+	 * @return a new image.
+	 */
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	public BufferedImage getImage( final Spot spot, final double radiusFactor, final int channel )
+	{
+		final int frame = spot.getFeature( Spot.FRAME ).intValue();
+		final ImgPlus img = TMUtils.rawWraps( settings.imp );
+		final ImgPlus< ? > imgCT = TMUtils.hyperSlice( img, channel, frame );
+		return new SpotIconGrabber( imgCT ).getImage( spot, radiusFactor );
+	}
 }
@@ -0,0 +1,391 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.visualization.trackscheme;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.function.IntSupplier;
+
+import fiji.plugin.trackmate.Logger;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.util.TrackMateExecutor;
+
+/**
+ * Renders spot thumbnails on demand, in background threads, and keeps them in
+ * a bounded cache.
+ * <p>
+ * Spots are first registered, which is cheap and does not render anything.
+ * Registering returns an image key to put in the cell style instead of the
+ * encoded image. When a cell is painted, the canvas asks this cache for the
+ * thumbnail of the key with {@link #get(String)}. If the thumbnail is not in
+ * the cache yet, its rendering is scheduled and <code>null</code> is returned,
+ * so that a placeholder can be painted instead. When the thumbnail is ready,
+ * the callback set with {@link #setOnLoaded(Runnable)} is called, so that the
+ * view can be repainted.
+ * <p>
+ * Since only the cells painted request their thumbnail, only the spots that
+ * scroll into view are rendered. Pending requests are served most recent
+ * first, and the oldest are dropped if there are more than the cache can hold:
+ * they belong to cells that scrolled out of view, and will be requested again
+ * if they are painted again.
+ * <p>
+ * Thumbnails are stored as raw {@link BufferedImage}s, keyed by spot ID and
+ * channel. The least recently used are evicted first. They are rendered by the
+ * {@link TrackMateExecutor} current when the cache is created.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+public class SpotThumbnailCache
+{
+
+	/**
+	 * Prefix of the image keys returned by {@link #register(Spot)}.
+	 */
+	public static final String IMAGE_KEY_PREFIX = "thumbnail:";
+
+	/**
+	 * Default maximal number of thumbnails kept in memory.
+	 */
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	/**
+	 * Interface for the functions that render the thumbnail of a spot. They
+	 * are called concurrently from several threads.
+	 */
+	@FunctionalInterface
+	public static interface ThumbnailRenderer
+	{
+		/**
+		 * Renders the thumbnail of the specified spot.
+		 *
+		 * @param spot
+		 *            the spot.
+		 * @param channel
+		 *            the channel to render, 0-based.
+		 * @return a new image, or <code>null</code> if it cannot be rendered.
+		 */
+		public BufferedImage render( Spot spot, int channel );
+	}
+
+	private final ThumbnailRenderer renderer;
+
+	private final IntSupplier channel;
+
+	private final int capacity;
+
+	private final int numThreads;
+
+	/** The registered spots, by ID. */
+	private final Map< Integer, Spot > spots = new ConcurrentHashMap<>();
+
+	/** The thumbnails, in access order. */
+	private final LinkedHashMap< Long, BufferedImage > cache;
+
+	/** Pending requests, most recent first. */
+	private final ArrayDeque< Long > pending = new ArrayDeque<>();
+
+	/** Requests pending or being rendered. */
+	private final Set< Long > requested = new HashSet<>();
+
+	private int nRunning = 0;
+
+	private final ExecutorService executorService;
+
+	private Runnable onLoaded = () -> {};
+
+	private Logger logger = Logger.DEFAULT_LOGGER;
+
+	/**
+	 * Creates a new thumbnail cache.
+	 *
+	 * @param renderer
+	 *            the function that renders thumbnails.
+	 * @param channel
+	 *            returns the channel to render, 0-based. Called for each
+	 *            request, so that changing the channel invalidates nothing.
+	 * @param capacity
+	 *            the maximal number of thumbnails kept in memory.
+	 * @param numThreads
+	 *            the maximal number of thumbnails rendered at the same time. It
+	 *            is capped by the number of threads of the executor.
+	 */
+	public SpotThumbnailCache( final ThumbnailRenderer renderer, final IntSupplier channel, final int capacity, final int numThreads )
+	{
+		this.renderer = renderer;
+		this.channel = channel;
+		this.capacity = Math.max( 1, capacity );
+		this.numThreads = Math.max( 1, numThreads );
+		this.executorService = TrackMateExecutor.current().getExecutorService( "TrackScheme thumbnails", this.numThreads );
+		this.cache = new LinkedHashMap< Long, BufferedImage >( 16, 0.75f, true )
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry( final Map.Entry< Long, BufferedImage > eldest )
+			{
+				return size() > SpotThumbnailCache.this.capacity;
+			}
+		};
+	}
+
+	/**
+	 * Sets the action to run when a requested thumbnail is ready. It is called
+	 * from a background thread.
+	 *
+	 * @param onLoaded
+	 *            the action.
+	 */
+	public void setOnLoaded( final Runnable onLoaded )
+	{
+		this.onLoaded = onLoaded;
+	}
+
+	/**
+	 * Sets the logger to report rendering failures to.
+	 *
+	 * @param logger
+	 *            the logger.
+	 */
+	public void setLogger( final Logger logger )
+	{
+		this.logger = logger;
+	}
+
+	/**
+	 * Registers the specified spot and returns the image key to use to
+	 * retrieve its thumbnail. Nothing is rendered.
+	 *
+	 * @param spot
+	 *            the spot.
+	 * @return the image key.
+	 */
+	public String register( final Spot spot )
+	{
+		spots.put( Integer.valueOf( spot.ID() ), spot );
+		return IMAGE_KEY_PREFIX + spot.ID();
+	}
+
+	/**
+	 * Unregisters the specified spot, and discards its thumbnails and its
+	 * pending requests.
+	 *
+	 * @param spot
+	 *            the spot.
+	 */
+	public synchronized void unregister( final Spot spot )
+	{
+		spots.remove( Integer.valueOf( spot.ID() ) );
+		invalidate( spot );
+		final long id = spot.ID();
+		pending.removeIf( key -> ( key.longValue() >> 32 ) == id );
+		requested.removeIf( key -> ( key.longValue() >> 32 ) == id );
+	}
+
+	/**
+	 * Discards the thumbnails of the specified spot, for instance after it
+	 * moved.
+	 *
+	 * @param spot
+	 *            the spot.
+	 */
+	public synchronized void invalidate( final Spot spot )
+	{
+		final long id = spot.ID();
+		cache.keySet().removeIf( key -> ( key.longValue() >> 32 ) == id );
+	}
+
+	/**
+	 * Discards all the thumbnails and pending requests. Registered spots
+	 * stay registered.
+	 */
+	public synchronized void clear()
+	{
+		cache.clear();
+		requested.removeAll( pending );
+		pending.clear();
+	}
+
+	/**
+	 * Returns the number of thumbnails in memory.
+	 *
+	 * @return the number of thumbnails.
+	 */
+	public synchronized int size()
+	{
+		return cache.size();
+	}
+
+	/**
+	 * Returns the number of thumbnails requested and not rendered yet.
+	 *
+	 * @return the number of requests.
+	 */
+	synchronized int getNRequested()
+	{
+		return requested.size();
+	}
+
+	/**
+	 * Returns the thumbnail for the specified image key, if it is in the
+	 * cache. Otherwise, schedules its rendering and returns <code>null</code>.
+	 *
+	 * @param imageKey
+	 *            an image key returned by {@link #register(Spot)}.
+	 * @return the thumbnail, or <code>null</code> if it is not ready or if the
+	 *         key is not known.
+	 */
+	public BufferedImage get( final String imageKey )
+	{
+		final Spot spot = getSpot( imageKey );
+		if ( null == spot )
+			return null;
+
+		final Long key = key( spot );
+		synchronized ( this )
+		{
+			final BufferedImage img = cache.get( key );
+			if ( null != img )
+				return img;
+
+			if ( requested.add( key ) )
+			{
+				pending.addFirst( key );
+				while ( pending.size() > capacity )
+					requested.remove( pending.removeLast() );
+			}
+			else if ( pending.remove( key ) )
+			{
+				// Requested again: serve it first.
+				pending.addFirst( key );
+			}
+
+			if ( nRunning < numThreads && !pending.isEmpty() )
+			{
+				nRunning++;
+				executorService.submit( this::drain );
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the thumbnail for the specified image key, rendering it in the
+	 * calling thread if it is not in the cache.
+	 *
+	 * @param imageKey
+	 *            an image key returned by {@link #register(Spot)}.
+	 * @return the thumbnail, or <code>null</code> if it cannot be rendered or
+	 *         if the key is not known.
+	 */
+	public BufferedImage getNow( final String imageKey )
+	{
+		final Spot spot = getSpot( imageKey );
+		if ( null == spot )
+			return null;
+
+		final Long key = key( spot );
+		synchronized ( this )
+		{
+			final BufferedImage img = cache.get( key );
+			if ( null != img )
+				return img;
+		}
+		final BufferedImage img = renderer.render( spot, ( int ) key.longValue() );
+		if ( null != img )
+		{
+			synchronized ( this )
+			{
+				cache.put( key, img );
+			}
+		}
+		return img;
+	}
+
+	/**
+	 * Renders the pending requests until there are none left.
+	 */
+	private void drain()
+	{
+		while ( true )
+		{
+			final Long key;
+			synchronized ( this )
+			{
+				key = pending.pollFirst();
+				if ( null == key )
+				{
+					nRunning--;
+					return;
+				}
+			}
+
+			BufferedImage img = null;
+			final Spot spot = spots.get( Integer.valueOf( ( int ) ( key.longValue() >> 32 ) ) );
+			try
+			{
+				if ( null != spot )
+					img = renderer.render( spot, ( int ) key.longValue() );
+			}
+			catch ( final RuntimeException e )
+			{
+				logger.error( "Could not render the thumbnail of spot " + spot + ": " + e.getMessage() + '\n' );
+			}
+
+			synchronized ( this )
+			{
+				requested.remove( key );
+				// The spot may have been unregistered while it was rendered.
+				if ( null != img && spots.get( Integer.valueOf( spot.ID() ) ) == spot )
+					cache.put( key, img );
+				else
+					img = null;
+			}
+			if ( null != img )
+				onLoaded.run();
+		}
+	}
+
+	private Spot getSpot( final String imageKey )
+	{
+		if ( null == imageKey || !imageKey.startsWith( IMAGE_KEY_PREFIX ) )
+			return null;
+		try
+		{
+			return spots.get( Integer.valueOf( imageKey.substring( IMAGE_KEY_PREFIX.length() ) ) );
+		}
+		catch ( final NumberFormatException e )
+		{
+			return null;
+		}
+	}
+
+	private Long key( final Spot spot )
+	{
+		return Long.valueOf( ( ( long ) spot.ID() << 32 ) | ( channel.getAsInt() & 0xffffffffL ) );
+	}
+}
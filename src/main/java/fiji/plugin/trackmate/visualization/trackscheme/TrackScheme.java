@@ -60,7 +60,9 @@ import fiji.plugin.trackmate.ModelChangeEvent;
 import fiji.plugin.trackmate.SelectionChangeEvent;
 import fiji.plugin.trackmate.SelectionModel;
 import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.TrackModel;
 import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings;
+import fiji.plugin.trackmate.util.TrackMateExecutor;
 import fiji.plugin.trackmate.visualization.AbstractTrackMateModelView;
 import ij.ImagePlus;
 
@@ -148,6 +150,15 @@ public class TrackScheme extends AbstractTrackMateModelView
 	 */
 	private SpotImageUpdater spotImageUpdater;
 
+	/**
+	 * Renders and caches the thumbnails of the spots painted, if thumbnails
+	 * are enabled.
+	 */
+	private SpotThumbnailCache thumbnails;
+
+	/** The spot radius factor the cached thumbnails were rendered with. */
+	private double thumbnailRadiusFactor;
+
 	TrackSchemeStylist stylist;
 
 	/**
@@ -168,13 +179,18 @@ public class TrackScheme extends AbstractTrackMateModelView
 		gui.setTitle( title );
 		gui.setSize( DEFAULT_SIZE );
 		
-		displaySettings.listeners().add( () -> doTrackStyle() );
+		displaySettings.listeners().add( () -> {
+			invalidateThumbnailsIfNeeded();
+			doTrackStyle();
+		} );
 		gui.addWindowListener( new WindowAdapter()
 		{
 			@Override
 			public void windowClosing( final WindowEvent e )
 			{
 				model.removeModelChangeListener( TrackScheme.this );
+				if ( null != thumbnails )
+					thumbnails.clear();
 			}
 		} );
 		gui.setLocationByPlatform( true );
@@ -189,6 +205,43 @@ public class TrackScheme extends AbstractTrackMateModelView
 	public void setSpotImageUpdater( final SpotImageUpdater spotImageUpdater )
 	{
 		this.spotImageUpdater = spotImageUpdater;
+		if ( null == spotImageUpdater )
+		{
+			thumbnails = null;
+			return;
+		}
+		this.thumbnailRadiusFactor = displaySettings.getSpotDisplayRadius();
+		this.thumbnails = new SpotThumbnailCache(
+				( spot, channel ) -> spotImageUpdater.getImage( spot, thumbnailRadiusFactor, channel ),
+				spotImageUpdater::getTargetChannel,
+				SpotThumbnailCache.DEFAULT_CAPACITY,
+				TrackMateExecutor.current().getNumThreads() );
+		thumbnails.setOnLoaded( () -> gui.graphComponent.getGraphControl().repaint() );
+		thumbnails.setLogger( model.getLogger() );
+	}
+
+	/**
+	 * Returns the cache of spot thumbnails, or <code>null</code> if no
+	 * {@link SpotImageUpdater} was set.
+	 *
+	 * @return the thumbnail cache.
+	 */
+	public SpotThumbnailCache getThumbnails()
+	{
+		return thumbnails;
+	}
+
+	/**
+	 * Discards the thumbnails if the spot radius factor changed since they
+	 * were rendered.
+	 */
+	private void invalidateThumbnailsIfNeeded()
+	{
+		if ( null == thumbnails || thumbnailRadiusFactor == displaySettings.getSpotDisplayRadius() )
+			return;
+		thumbnailRadiusFactor = displaySettings.getSpotDisplayRadius();
+		thumbnails.clear();
+		gui.graphComponent.getGraphControl().repaint();
 	}
 
 	public SelectionModel getSelectionModel()
@@ -305,12 +358,11 @@ public class TrackScheme extends AbstractTrackMateModelView
 			}
 
 			// Update cell look
-			if ( spotImageUpdater != null && doThumbnailCapture )
+			if ( thumbnails != null && doThumbnailCapture )
 			{
+				thumbnails.invalidate( spot );
 				String style = cell.getStyle();
-				final double radiusFactor = displaySettings.getSpotDisplayRadius();
-				final String imageStr = spotImageUpdater.getImageString( spot, radiusFactor );
-				style = mxStyleUtils.setStyle( style, mxConstants.STYLE_IMAGE, "data:image/base64," + imageStr );
+				style = mxStyleUtils.setStyle( style, mxConstants.STYLE_IMAGE, thumbnails.register( spot ) );
 				graph.getModel().setStyle( cell, style );
 			}
 		}
@@ -343,12 +395,8 @@ public class TrackScheme extends AbstractTrackMateModelView
 		final mxGeometry geometry = new mxGeometry( x, y, DEFAULT_CELL_WIDTH, DEFAULT_CELL_HEIGHT );
 		cellAdded.setGeometry( geometry );
 		// Set its style
-		final double radiusFactor = displaySettings.getSpotDisplayRadius();
-		if ( null != spotImageUpdater && doThumbnailCapture )
-		{
-			final String imageStr = spotImageUpdater.getImageString( spot, radiusFactor );
-			graph.getModel().setStyle( cellAdded, mxConstants.STYLE_IMAGE + "=" + "data:image/base64," + imageStr );
-		}
+		if ( null != thumbnails && doThumbnailCapture )
+			graph.getModel().setStyle( cellAdded, mxConstants.STYLE_IMAGE + "=" + thumbnails.register( spot ) );
 		return cellAdded;
 	}
 
@@ -588,6 +636,8 @@ public class TrackScheme extends AbstractTrackMateModelView
 
 						final mxICell cell = graph.getCellFor( spot );
 						cellsToRemove.add( cell );
+						if ( null != thumbnails )
+							thumbnails.unregister( spot );
 
 					}
 				}
@@ -977,11 +1027,8 @@ public class TrackScheme extends AbstractTrackMateModelView
 				 * orphan edges. Normally JGraphT handles that well, but we
 				 * enforce things here. To be sure.
 				 */
-				for ( final DefaultWeightedEdge edge : edgesToRemove )
-					model.removeEdge( edge );
-
-				for ( final Spot spot : spotsToRemove )
-					model.removeSpot( spot );
+				model.removeEdges( edgesToRemove );
+				model.removeSpots( spotsToRemove );
 
 			}
 			finally
@@ -1072,57 +1119,43 @@ public class TrackScheme extends AbstractTrackMateModelView
 	}
 
 	/**
-	 * Captures and stores the thumbnail image that will be displayed in each
-	 * spot cell, when using styles that can display images.
+	 * Sets the thumbnail image key of each spot cell, when using styles that
+	 * can display images. Nothing is rendered here: thumbnails are rendered in
+	 * the background when their cell is painted for the first time, and kept
+	 * in the {@link SpotThumbnailCache}.
 	 */
 	private void createThumbnails()
 	{
-		// Group spots per frame
-		final Set< Integer > frames = model.getSpots().keySet();
-		final HashMap< Integer, HashSet< Spot > > spotPerFrame = new HashMap<>( frames.size() );
-		for ( final Integer frame : frames )
-			spotPerFrame.put( frame, new HashSet< Spot >( model.getSpots().getNSpots( frame, true ) ) ); // max
-
-		for ( final Integer trackID : model.getTrackModel().trackIDs( true ) )
-		{
-			for ( final Spot spot : model.getTrackModel().trackSpots( trackID ) )
-			{
-				final int frame = spot.getFeature( Spot.FRAME ).intValue();
-				spotPerFrame.get( frame ).add( spot );
-			}
-		}
+		if ( null == thumbnails )
+			return;
+		registerThumbnails( graph, model.getTrackModel(), thumbnails );
+	}
 
-		// Set spot image to cell style
-		if ( null != spotImageUpdater )
+	/**
+	 * Registers the spots of the visible tracks in the specified thumbnail
+	 * cache, and sets the image key it returns as the image of their cell.
+	 */
+	static void registerThumbnails( final JGraphXAdapter graph, final TrackModel trackModel, final SpotThumbnailCache thumbnails )
+	{
+		try
 		{
-			gui.logger.setStatus( "Collecting spot thumbnails." );
-			final double radiusFactor = displaySettings.getSpotDisplayRadius();
-			int index = 0;
-			try
+			graph.getModel().beginUpdate();
+			for ( final Integer trackID : trackModel.trackIDs( true ) )
 			{
-				graph.getModel().beginUpdate();
-
-				// Iterate per frame
-				for ( final Integer frame : frames )
+				for ( final Spot spot : trackModel.trackSpots( trackID ) )
 				{
-					for ( final Spot spot : spotPerFrame.get( frame ) )
-					{
-						final mxICell cell = graph.getCellFor( spot );
-						final String imageStr = spotImageUpdater.getImageString( spot, radiusFactor );
-						String style = cell.getStyle();
-						style = mxStyleUtils.setStyle( style, mxConstants.STYLE_IMAGE, "data:image/base64," + imageStr );
-						graph.getModel().setStyle( cell, style );
-
-					}
-					gui.logger.setProgress( ( double ) index++ / frames.size() );
+					final mxICell cell = graph.getCellFor( spot );
+					if ( null == cell )
+						continue;
+					String style = cell.getStyle();
+					style = mxStyleUtils.setStyle( style, mxConstants.STYLE_IMAGE, thumbnails.register( spot ) );
+					graph.getModel().setStyle( cell, style );
 				}
 			}
-			finally
-			{
-				graph.getModel().endUpdate();
-				gui.logger.setProgress( 0d );
-				gui.logger.setStatus( "" );
-			}
+		}
+		finally
+		{
+			graph.getModel().endUpdate();
 		}
 	}
 
@@ -35,6 +35,7 @@ import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
 import java.util.EventObject;
 import java.util.Map;
 
@@ -51,6 +52,7 @@ import com.mxgraph.swing.mxGraphComponent;
 import com.mxgraph.swing.handler.mxGraphHandler;
 import com.mxgraph.swing.view.mxCellEditor;
 import com.mxgraph.swing.view.mxICellEditor;
+import com.mxgraph.swing.view.mxInteractiveCanvas;
 import com.mxgraph.util.mxEvent;
 import com.mxgraph.util.mxEventObject;
 import com.mxgraph.util.mxEventSource.mxIEventListener;
@@ -74,6 +76,8 @@ public class TrackSchemeGraphComponent extends mxGraphComponent implements mxIEv
 	/** The trackID for each column. */
 	Integer[] columnTrackIDs;
 
+	private static final BufferedImage THUMBNAIL_PLACEHOLDER = createPlaceholder();
+
 	private final TrackScheme trackScheme;
 
 	private int paintDecorationLevel = TrackScheme.DEFAULT_PAINT_DECORATION_LEVEL;
@@ -341,6 +345,32 @@ public class TrackSchemeGraphComponent extends mxGraphComponent implements mxIEv
 		};
 	}
 
+	/**
+	 * Override this so that the thumbnail image keys of spot cells are
+	 * resolved against the {@link SpotThumbnailCache} of the TrackScheme. A
+	 * placeholder is painted until the thumbnail is rendered.
+	 */
+	@Override
+	public mxInteractiveCanvas createCanvas()
+	{
+		return new mxInteractiveCanvas( this )
+		{
+			@Override
+			public BufferedImage loadImage( final String image )
+			{
+				if ( null == image || !image.startsWith( SpotThumbnailCache.IMAGE_KEY_PREFIX ) )
+					return super.loadImage( image );
+
+				// Called from the super constructor, before trackScheme is set.
+				final SpotThumbnailCache thumbnails = ( null == trackScheme ) ? null : trackScheme.getThumbnails();
+				if ( null == thumbnails )
+					return null;
+				final BufferedImage thumbnail = thumbnails.get( image );
+				return ( null == thumbnail ) ? THUMBNAIL_PLACEHOLDER : thumbnail;
+			}
+		};
+	}
+
 	/**
 	 * Override this so as to paint the background with colored rows and
 	 * columns.
@@ -739,4 +769,11 @@ public class TrackSchemeGraphComponent extends mxGraphComponent implements mxIEv
 			return new Dimension( ( int ) xcs, ( int ) viewport.getPreferredSize().getHeight() );
 		}
 	}
+
+	private static BufferedImage createPlaceholder()
+	{
+		final BufferedImage placeholder = new BufferedImage( 1, 1, BufferedImage.TYPE_INT_RGB );
+		placeholder.setRGB( 0, 0, Color.LIGHT_GRAY.getRGB() );
+		return placeholder;
+	}
 }
@@ -26,12 +26,12 @@ import static fiji.plugin.trackmate.visualization.trackscheme.TrackScheme.DEFAUL
 import static fiji.plugin.trackmate.visualization.trackscheme.TrackScheme.X_COLUMN_SIZE;
 import static fiji.plugin.trackmate.visualization.trackscheme.TrackScheme.Y_COLUMN_SIZE;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
 
 import org.jgrapht.graph.DefaultEdge;
 import org.jgrapht.graph.DefaultWeightedEdge;
@@ -39,12 +39,12 @@ import org.jgrapht.graph.SimpleDirectedGraph;
 import org.jgrapht.traverse.DepthFirstIterator;
 
 import com.mxgraph.layout.mxGraphLayout;
-import com.mxgraph.model.mxCell;
 import com.mxgraph.model.mxGeometry;
 import com.mxgraph.model.mxICell;
 
 import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.TrackModel;
 import fiji.plugin.trackmate.graph.ConvexBranchesDecomposition;
 import fiji.plugin.trackmate.graph.ConvexBranchesDecomposition.TrackBranchDecomposition;
 import fiji.plugin.trackmate.graph.GraphUtils;
@@ -57,6 +57,9 @@ import net.imglib2.algorithm.Benchmark;
  * to tracks. It also sets the style of each cell so that they have a coloring
  * depending on the lane they belong to. Each lane's width and color is
  * available to other classes for further exploitation.
+ * <p>
+ * The layout is computed in time linear with the number of spots, and without
+ * recursion, so that large and deep lineages can be laid out.
  *
  * @author Jean-Yves Tinevez &lt;jeanyves.tinevez@gmail.com&gt; - Mar 2011 - 2012 -
  *         2014
@@ -65,7 +68,7 @@ import net.imglib2.algorithm.Benchmark;
 public class TrackSchemeGraphLayout extends mxGraphLayout implements Benchmark
 {
 
-	private static final int START_COLUMN = 1;
+	static final int START_COLUMN = 1;
 
 	/** The target model to draw spot from. */
 	private final Model model;
@@ -111,21 +114,7 @@ public class TrackSchemeGraphLayout extends mxGraphLayout implements Benchmark
 		 * part of a track), we retrieve the list of all cells.
 		 */
 		final Object[] objs = graphAdapter.getChildVertices( graphAdapter.getDefaultParent() );
-		final ArrayList< mxCell > lonelyCells = new ArrayList< >( objs.length );
-		for ( final Object obj : objs )
-		{
-			lonelyCells.add( ( mxCell ) obj );
-		}
-
-		/*
-		 * Get a neighbor cache
-		 */
-		final TimeDirectedNeighborIndex neighborCache = model.getTrackModel().getDirectedNeighborIndex();
-
-		/*
-		 * Compute column width from recursive cumsum
-		 */
-		final Map< Spot, Integer > cumulativeBranchWidth = GraphUtils.cumulativeBranchWidth( model.getTrackModel() );
+		final Set< mxICell > cellsInTracks = Collections.newSetFromMap( new IdentityHashMap<>( objs.length ) );
 
 		/*
 		 * How many rows do we have to parse?
@@ -143,192 +132,226 @@ public class TrackSchemeGraphLayout extends mxGraphLayout implements Benchmark
 			component.columnWidths = new int[ ntracks ];
 			component.columnTrackIDs = new Integer[ ntracks ];
 
-			/*
-			 * Initialize the column occupancy array
-			 */
-			final int[] columns = new int[ maxFrame + 1 ];
-			for ( int i = 0; i < columns.length; i++ )
+			final Columns columns = layoutTracks( model.getTrackModel(), maxFrame, component.columnWidths, component.columnTrackIDs,
+					( final Spot spot, final int frame, final int column ) -> {
+						// Get corresponding JGraphX cell, add it if it does not
+						// exist in the JGraphX yet
+						final mxICell cell = graphAdapter.getCellFor( spot );
+						cellsInTracks.add( cell );
+						setCellGeometry( cell, frame, column );
+					} );
+
+			// Deal with lonely cells
+			for ( final Object obj : objs )
 			{
-				columns[ i ] = START_COLUMN;
+				final mxICell cell = ( mxICell ) obj;
+				if ( cellsInTracks.contains( cell ) )
+					continue;
+
+				final Spot spot = graphAdapter.getSpotFor( cell );
+				final int frame = spot.getFeature( Spot.FRAME ).intValue();
+				final int column = columns.get( frame );
+				setCellGeometry( cell, frame, column );
+				columns.set( frame, column + 1 );
 			}
 
-			int trackIndex = 0;
-			for ( final Integer trackID : model.getTrackModel().trackIDs( true ) )
-			{ // will be sorted by track name
+			// Before we leave, we regenerate the row length, for our brothers
+			rowLengths = new HashMap< >( columns.size() );
+			for ( int i = 0; i < columns.size(); i++ )
+			{
+				rowLengths.put( i, columns.get( i ) );
+			}
 
-				// Get Tracks
-				final Set< Spot > track = model.getTrackModel().trackSpots( trackID );
+			// Move vertices cells to front, to make them easily selectable.
+			final Object[] verticesCells = graphAdapter.getVertexCells().toArray();
+			graphAdapter.cellsOrdered( verticesCells, false );
 
-				// Pass name & trackID to component
-				component.columnTrackIDs[ trackIndex ] = trackID;
+		}
+		finally
+		{
+			graphAdapter.getModel().endUpdate();
+		}
 
-				// Get first spot
-				final TreeSet< Spot > sortedTrack = new TreeSet< >( Spot.frameComparator );
-				sortedTrack.addAll( track );
-				final Spot first = sortedTrack.first();
+		final long end = System.currentTimeMillis();
+		processingTime = end - start;
+	}
 
-				/*
-				 * A special case: our quick layout below fails for graph that
-				 * are not trees. That is: if a track has at least a spot that
-				 * has more than one predecessor. If we have to deal with such a
-				 * case, we revert to the old, slow scheme.
-				 */
+	/**
+	 * Computes the position of the spots of the visible tracks of the
+	 * specified track model.
+	 *
+	 * @param trackModel
+	 *            the track model to lay out.
+	 * @param maxFrame
+	 *            the last frame containing spots.
+	 * @param columnWidths
+	 *            an array, of length the number of visible tracks, that will
+	 *            receive the width of each track, in columns.
+	 * @param columnTrackIDs
+	 *            an array, of length the number of visible tracks, that will
+	 *            receive the ID of each track.
+	 * @param placer
+	 *            receives the row and column of each spot in a track.
+	 * @return the column occupancy of each frame after laying out the tracks.
+	 */
+	static Columns layoutTracks( final TrackModel trackModel, final int maxFrame, final int[] columnWidths, final Integer[] columnTrackIDs, final CellPlacer placer )
+	{
+		/*
+		 * Get a neighbor cache
+		 */
+		final TimeDirectedNeighborIndex neighborCache = trackModel.getDirectedNeighborIndex();
 
-				final boolean isTree = GraphUtils.isTree( track, neighborCache );
+		/*
+		 * Compute column width from cumsum
+		 */
+		final Map< Spot, Integer > cumulativeBranchWidth = GraphUtils.cumulativeBranchWidth( trackModel );
 
-				if ( isTree )
-				{
+		/*
+		 * Initialize the column occupancy array
+		 */
+		final Columns columns = new Columns( maxFrame + 1, START_COLUMN );
 
-					/*
-					 * Quick layout for a tree-like track
-					 */
+		int trackIndex = 0;
+		int sumWidth = START_COLUMN;
+		for ( final Integer trackID : trackModel.trackIDs( true ) )
+		{ // will be sorted by track name
 
-					// First loop: Loop over spots in good order
-					final SortedDepthFirstIterator< Spot, DefaultWeightedEdge > iterator = model.getTrackModel().getSortedDepthFirstIterator( first, Spot.nameComparator, false );
+			// Pass name & trackID to component
+			columnTrackIDs[ trackIndex ] = trackID;
 
-					while ( iterator.hasNext() )
-					{
+			layoutTrack( trackModel, trackID, neighborCache, cumulativeBranchWidth, columns, placer );
 
-						final Spot spot = iterator.next();
+			// When done with a track, move all columns to the next free
+			// column
+			final int maxCol = columns.max();
+			columns.fill( maxCol + 1 );
 
-						// Get corresponding JGraphX cell, add it if it does not
-						// exist in the JGraphX yet
-						final mxICell cell = graphAdapter.getCellFor( spot );
+			// Store column widths for the panel background
+			columnWidths[ trackIndex ] = maxCol - sumWidth;
+			sumWidth += columnWidths[ trackIndex ];
 
-						// This is cell is in a track, remove it from the list
-						// of lonely cells
-						lonelyCells.remove( cell );
-
-						// Determine in what row to put the spot
-						final int frame = spot.getFeature( Spot.FRAME ).intValue();
-
-						// Cell size, position and style
-						final int cellPos = columns[ frame ] + cumulativeBranchWidth.get( spot ) / 2;
-						setCellGeometry( cell, frame, cellPos );
-						columns[ frame ] += cumulativeBranchWidth.get( spot );
-
-						// If it is a leaf, we fill the remaining row below and
-						// above
-						if ( neighborCache.successorsOf( spot ).size() == 0 )
-						{
-							final int target = columns[ frame ];
-							for ( int i = 0; i <= maxFrame; i++ )
-							{
-								columns[ i ] = target;
-							}
-						}
+			trackIndex++;
+		} // loop over tracks
 
-					}
+		return columns;
+	}
 
-				}
-				else
-				{
+	/**
+	 * Computes the position of the spots of one track, from the column
+	 * occupancy left by the tracks laid out before it. The column occupancy
+	 * is updated as spots are placed.
+	 *
+	 * @param trackModel
+	 *            the track model to lay out.
+	 * @param trackID
+	 *            the ID of the track to lay out.
+	 * @param neighborCache
+	 *            the neighbor index of the track model.
+	 * @param cumulativeBranchWidth
+	 *            the cumulative branch width of the spots of the track, as
+	 *            computed by {@link GraphUtils#cumulativeBranchWidth}.
+	 * @param columns
+	 *            the next free column of each frame.
+	 * @param placer
+	 *            receives the row and column of each spot of the track.
+	 */
+	static void layoutTrack( final TrackModel trackModel, final Integer trackID, final TimeDirectedNeighborIndex neighborCache, final Map< Spot, Integer > cumulativeBranchWidth, final Columns columns, final CellPlacer placer )
+	{
+		// Get Tracks
+		final Set< Spot > track = trackModel.trackSpots( trackID );
 
-					/*
-					 * Layout in branches for merging tracks
-					 */
+		// Get first spot
+		Spot first = null;
+		for ( final Spot spot : track )
+			if ( null == first || Spot.frameComparator.compare( spot, first ) < 0 )
+				first = spot;
 
-					final TrackBranchDecomposition branchDecomposition = ConvexBranchesDecomposition.processTrack( trackID, model.getTrackModel(), neighborCache, false, false );
-					final SimpleDirectedGraph< List< Spot >, DefaultEdge > branchGraph = ConvexBranchesDecomposition.buildBranchGraph( branchDecomposition );
-					final DepthFirstIterator< List< Spot >, DefaultEdge > depthFirstIterator = new DepthFirstIterator< >( branchGraph );
+		/*
+		 * A special case: our quick layout below fails for graph that are
+		 * not trees. That is: if a track has at least a spot that has more
+		 * than one predecessor. If we have to deal with such a case, we
+		 * revert to the old, slow scheme.
+		 */
 
-					while ( depthFirstIterator.hasNext() )
-					{
-						final List< Spot > branch = depthFirstIterator.next();
-
-						final int firstFrame = branch.get( 0 ).getFeature( Spot.FRAME ).intValue();
-						final int lastFrame = branch.get( branch.size() - 1 ).getFeature( Spot.FRAME ).intValue();
-
-						// Determine target column.
-						int targetColumn = columns[ firstFrame ];
-						for ( final Spot spot : branch )
-						{
-							final int sFrame = spot.getFeature( Spot.FRAME ).intValue();
-							if ( columns[ sFrame ] > targetColumn )
-							{
-								targetColumn = columns[ sFrame ];
-							}
-						}
-
-						// Place spots.
-						for ( final Spot spot : branch )
-						{
-							// Get corresponding JGraphX cell, add it if it does
-							// not exist in the JGraphX yet
-							final mxICell cell = graphAdapter.getCellFor( spot );
-
-							// This is cell is in a track, remove it from the
-							// list of lonely cells
-							lonelyCells.remove( cell );
-
-							// Determine in what row to put the spot
-							final int frame = spot.getFeature( Spot.FRAME ).intValue();
-
-							// Cell position
-							setCellGeometry( cell, frame, targetColumn );
-						}
-
-						// Update column index.
-						for ( int frame = firstFrame; frame <= lastFrame; frame++ )
-						{
-							columns[ frame ] = targetColumn + 1;
-						}
-					}
-				}
+		final boolean isTree = GraphUtils.isTree( track, neighborCache );
 
-				// When done with a track, move all columns to the next free
-				// column
-				int maxCol = 0;
-				for ( int j = 0; j < columns.length; j++ )
-				{
-					if ( columns[ j ] > maxCol )
-					{
-						maxCol = columns[ j ];
-					}
-				}
-				for ( int i = 0; i < columns.length; i++ )
-				{
-					columns[ i ] = maxCol + 1;
-				}
+		if ( isTree )
+		{
 
-				// Store column widths for the panel background
-				int sumWidth = START_COLUMN;
-				for ( int i = 0; i < trackIndex; i++ )
-				{
-					sumWidth += component.columnWidths[ i ];
-				}
-				component.columnWidths[ trackIndex ] = maxCol - sumWidth;
+			/*
+			 * Quick layout for a tree-like track
+			 */
 
-				trackIndex++;
-			} // loop over tracks
+			// First loop: Loop over spots in good order
+			final SortedDepthFirstIterator< Spot, DefaultWeightedEdge > iterator = trackModel.getSortedDepthFirstIterator( first, Spot.nameComparator, false );
 
-			// Deal with lonely cells
-			for ( final mxCell cell : lonelyCells )
+			while ( iterator.hasNext() )
 			{
-				final Spot spot = graphAdapter.getSpotFor( cell );
+
+				final Spot spot = iterator.next();
+
+				// Determine in what row to put the spot
 				final int frame = spot.getFeature( Spot.FRAME ).intValue();
-				setCellGeometry( cell, frame, columns[ frame ]++ );
-			}
 
-			// Before we leave, we regenerate the row length, for our brothers
-			rowLengths = new HashMap< >( columns.length );
-			for ( int i = 0; i < columns.length; i++ )
-			{
-				rowLengths.put( i, columns[ i ] );
-			}
+				// Cell size, position and style
+				final int width = cumulativeBranchWidth.get( spot ).intValue();
+				final int column = columns.get( frame );
+				placer.place( spot, frame, column + width / 2 );
+				columns.set( frame, column + width );
 
-			// Move vertices cells to front, to make them easily selectable.
-			final Object[] verticesCells = graphAdapter.getVertexCells().toArray();
-			graphAdapter.cellsOrdered( verticesCells, false );
+				// If it is a leaf, we fill the remaining row below and
+				// above
+				if ( neighborCache.successorsOf( spot ).size() == 0 )
+					columns.fill( column + width );
+			}
 
 		}
-		finally
+		else
 		{
-			graphAdapter.getModel().endUpdate();
-		}
 
-		final long end = System.currentTimeMillis();
-		processingTime = end - start;
+			/*
+			 * Layout in branches for merging tracks
+			 */
+
+			final TrackBranchDecomposition branchDecomposition = trackModel.getBranchDecomposition( trackID, false, false );
+			final SimpleDirectedGraph< List< Spot >, DefaultEdge > branchGraph = ConvexBranchesDecomposition.buildBranchGraph( branchDecomposition );
+			final DepthFirstIterator< List< Spot >, DefaultEdge > depthFirstIterator = new DepthFirstIterator< >( branchGraph );
+
+			while ( depthFirstIterator.hasNext() )
+			{
+				final List< Spot > branch = depthFirstIterator.next();
+
+				final int firstFrame = branch.get( 0 ).getFeature( Spot.FRAME ).intValue();
+				final int lastFrame = branch.get( branch.size() - 1 ).getFeature( Spot.FRAME ).intValue();
+
+				// Determine target column.
+				int targetColumn = columns.get( firstFrame );
+				for ( final Spot spot : branch )
+				{
+					final int sFrame = spot.getFeature( Spot.FRAME ).intValue();
+					if ( columns.get( sFrame ) > targetColumn )
+					{
+						targetColumn = columns.get( sFrame );
+					}
+				}
+
+				// Place spots.
+				for ( final Spot spot : branch )
+				{
+					// Determine in what row to put the spot
+					final int frame = spot.getFeature( Spot.FRAME ).intValue();
+
+					// Cell position
+					placer.place( spot, frame, targetColumn );
+				}
+
+				// Update column index.
+				for ( int frame = firstFrame; frame <= lastFrame; frame++ )
+				{
+					columns.set( frame, targetColumn + 1 );
+				}
+			}
+		}
 	}
 
 	private final void setCellGeometry( final mxICell cell, final int row, final int targetColumn )
@@ -357,4 +380,76 @@ public class TrackSchemeGraphLayout extends mxGraphLayout implements Benchmark
 	{
 		return processingTime;
 	}
+
+	/**
+	 * Receives the position computed for a spot.
+	 */
+	@FunctionalInterface
+	interface CellPlacer
+	{
+		void place( Spot spot, int frame, int column );
+	}
+
+	/**
+	 * The next free column of each frame, indexed by frame. Setting all the
+	 * frames to the same column is done in constant time: each value is
+	 * stamped when set, and values set before the last fill are ignored.
+	 * <p>
+	 * The maximal column is tracked as values are set. This is exact because
+	 * the layout only ever moves the free column of a frame to the right,
+	 * except when filling.
+	 */
+	static final class Columns
+	{
+
+		private final int[] values;
+
+		private final int[] stamps;
+
+		private int stamp;
+
+		private int fillValue;
+
+		private int fillStamp;
+
+		private int max;
+
+		Columns( final int nFrames, final int start )
+		{
+			this.values = new int[ nFrames ];
+			this.stamps = new int[ nFrames ];
+			this.fillValue = start;
+			this.max = start;
+		}
+
+		int size()
+		{
+			return values.length;
+		}
+
+		int get( final int frame )
+		{
+			return stamps[ frame ] > fillStamp ? values[ frame ] : fillValue;
+		}
+
+		void set( final int frame, final int column )
+		{
+			values[ frame ] = column;
+			stamps[ frame ] = ++stamp;
+			if ( column > max )
+				max = column;
+		}
+
+		void fill( final int column )
+		{
+			fillValue = column;
+			fillStamp = ++stamp;
+			max = column;
+		}
+
+		int max()
+		{
+			return max;
+		}
+	}
 }
@@ -0,0 +1,693 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.visualization.trackscheme;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.TrackModel;
+import fiji.plugin.trackmate.graph.GraphUtils;
+import fiji.plugin.trackmate.graph.TimeDirectedNeighborIndex;
+
+/**
+ * A compact TrackScheme layout of the visible tracks of a model, stored in
+ * primitive arrays rather than in one graph cell per spot and edge.
+ * <p>
+ * Spots are laid out exactly as by {@link TrackSchemeGraphLayout}: one row per
+ * frame, track lanes side by side, and the spots that are not in a track in a
+ * column after the last lane. They are stored sorted by row then
+ * column, so that the spots and edges intersecting a rectangle of rows and
+ * columns can be retrieved without iterating over the whole model. Spots are
+ * addressed by their index in this layout.
+ * <p>
+ * Instances are immutable snapshots. When the model changes,
+ * {@link #update(Model, Collection, Collection)} returns a new snapshot that
+ * only lays out again the tracks that changed.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+public class TrackSchemeLayoutIndex
+{
+
+	/** The spots, sorted by row then column. */
+	private final Spot[] spots;
+
+	private final int[] rows;
+
+	private final int[] columns;
+
+	/**
+	 * The spots of row <code>r</code> have indices from
+	 * <code>rowStart[r]</code> (inclusive) to <code>rowStart[r+1]</code>
+	 * (exclusive).
+	 */
+	private final int[] rowStart;
+
+	/** Spot IDs, sorted, to find the index of a spot. */
+	private final int[] sortedIDs;
+
+	/** The index of the spot with ID <code>sortedIDs[i]</code>. */
+	private final int[] idToIndex;
+
+	/** The edges, sorted by the row of their upper spot. */
+	private final DefaultWeightedEdge[] edges;
+
+	private final int[] edgeSources;
+
+	private final int[] edgeTargets;
+
+	private final int[] edgeRowStart;
+
+	/** The largest number of rows spanned by an edge. */
+	private final int maxEdgeSpan;
+
+	private final int nColumns;
+
+	private final int[] trackColumnWidths;
+
+	private final Integer[] trackIDs;
+
+	/** The layout of each visible track, reused by {@link #update}. */
+	private final Map< Integer, Lane > lanes;
+
+	/** The visible spots that are not in a track, sorted by frame then ID. */
+	private final Spot[] lonelySpots;
+
+	private TrackSchemeLayoutIndex(
+			final Spot[] spots,
+			final int[] rows,
+			final int[] columns,
+			final int[] rowStart,
+			final int[] sortedIDs,
+			final int[] idToIndex,
+			final DefaultWeightedEdge[] edges,
+			final int[] edgeSources,
+			final int[] edgeTargets,
+			final int[] edgeRowStart,
+			final int maxEdgeSpan,
+			final int nColumns,
+			final int[] trackColumnWidths,
+			final Integer[] trackIDs,
+			final Map< Integer, Lane > lanes,
+			final Spot[] lonelySpots )
+	{
+		this.spots = spots;
+		this.rows = rows;
+		this.columns = columns;
+		this.rowStart = rowStart;
+		this.sortedIDs = sortedIDs;
+		this.idToIndex = idToIndex;
+		this.edges = edges;
+		this.edgeSources = edgeSources;
+		this.edgeTargets = edgeTargets;
+		this.edgeRowStart = edgeRowStart;
+		this.maxEdgeSpan = maxEdgeSpan;
+		this.nColumns = nColumns;
+		this.trackColumnWidths = trackColumnWidths;
+		this.trackIDs = trackIDs;
+		this.lanes = lanes;
+		this.lonelySpots = lonelySpots;
+	}
+
+	/**
+	 * Lays out the visible tracks and the visible spots that are not in a
+	 * track of the specified model.
+	 *
+	 * @param model
+	 *            the model.
+	 * @return a new layout index.
+	 */
+	public static TrackSchemeLayoutIndex build( final Model model )
+	{
+		final TrackModel trackModel = model.getTrackModel();
+		final List< Spot > lonely = new ArrayList<>();
+		for ( final Spot spot : model.getSpots().iterable( true ) )
+			if ( null == trackModel.trackIDOf( spot ) )
+				lonely.add( spot );
+		return assemble( trackModel, trackModel.trackIDs( true ), Collections.emptyMap(), lonely );
+	}
+
+	/**
+	 * Returns the layout of the specified model after a change, reusing the
+	 * layout of this index for the tracks that did not change. Track lanes
+	 * are only recomputed for the specified tracks and for the tracks that
+	 * were not laid out in this index. The position of the other lanes is
+	 * shifted to make room for them.
+	 * <p>
+	 * Changes that are not reported this way, such as a change in spot
+	 * visibility, require a new {@link #build(Model)}.
+	 *
+	 * @param model
+	 *            the model, after the change.
+	 * @param changedTrackIDs
+	 *            the IDs of the tracks that changed, as they were before and
+	 *            as they are after the change.
+	 * @param changedSpots
+	 *            the spots that were added, removed or moved by the change.
+	 * @return a new layout index.
+	 */
+	public TrackSchemeLayoutIndex update( final Model model, final Collection< Integer > changedTrackIDs, final Collection< Spot > changedSpots )
+	{
+		final TrackModel trackModel = model.getTrackModel();
+
+		// The spots that may have left or joined the lonely spots.
+		final Set< Spot > candidates = Collections.newSetFromMap( new IdentityHashMap<>() );
+		candidates.addAll( changedSpots );
+		final Map< Integer, Lane > kept = new HashMap<>( lanes );
+		for ( final Integer trackID : changedTrackIDs )
+		{
+			final Lane lane = kept.remove( trackID );
+			if ( null != lane )
+				candidates.addAll( Arrays.asList( lane.spots ) );
+		}
+		// The spots of a track that vanished may now be lonely.
+		final Set< Integer > visibleIDs = trackModel.trackIDs( true );
+		for ( final Iterator< Lane > it = kept.values().iterator(); it.hasNext(); )
+		{
+			final Lane lane = it.next();
+			if ( visibleIDs.contains( lane.trackID ) )
+				continue;
+			candidates.addAll( Arrays.asList( lane.spots ) );
+			it.remove();
+		}
+
+		final List< Spot > lonely = new ArrayList<>( lonelySpots.length + candidates.size() );
+		for ( final Spot spot : lonelySpots )
+			if ( !candidates.contains( spot ) && null == trackModel.trackIDOf( spot ) )
+				lonely.add( spot );
+		for ( final Spot spot : candidates )
+			if ( null == trackModel.trackIDOf( spot ) && isVisibleIn( model.getSpots(), spot ) )
+				lonely.add( spot );
+
+		return assemble( trackModel, visibleIDs, kept, lonely );
+	}
+
+	private static boolean isVisibleIn( final SpotCollection spots, final Spot spot )
+	{
+		final Double frame = spot.getFeature( Spot.FRAME );
+		if ( null == frame )
+			return false;
+		for ( final Spot s : spots.iterable( frame.intValue(), true ) )
+			if ( s == spot )
+				return true;
+		return false;
+	}
+
+	/**
+	 * Places the lanes of the visible tracks side by side, in the order of the
+	 * track model, then the lonely spots in one column after them. Lanes that
+	 * are not in the specified map are laid out.
+	 */
+	private static TrackSchemeLayoutIndex assemble( final TrackModel trackModel, final Set< Integer > visibleIDs, final Map< Integer, Lane > kept, final List< Spot > lonely )
+	{
+		/*
+		 * Lay out the tracks that are not in the map, all with the same
+		 * column occupancy array.
+		 */
+
+		final List< Integer > toLayout = new ArrayList<>();
+		int maxTrackFrame = 0;
+		for ( final Integer trackID : visibleIDs )
+		{
+			if ( kept.containsKey( trackID ) )
+				continue;
+			toLayout.add( trackID );
+			for ( final Spot spot : trackModel.trackSpots( trackID ) )
+				maxTrackFrame = Math.max( maxTrackFrame, spot.getFeature( Spot.FRAME ).intValue() );
+		}
+
+		final Map< Integer, Lane > lanes = new HashMap<>( kept );
+		if ( !toLayout.isEmpty() )
+		{
+			final TimeDirectedNeighborIndex neighborCache = trackModel.getDirectedNeighborIndex();
+			final TrackSchemeGraphLayout.Columns free = new TrackSchemeGraphLayout.Columns( maxTrackFrame + 1, 1 );
+			for ( final Integer trackID : toLayout )
+				lanes.put( trackID, Lane.layout( trackModel, trackID, neighborCache, free ) );
+		}
+
+		final int nTracks = visibleIDs.size();
+		final Lane[] ordered = new Lane[ nTracks ];
+		final Integer[] trackIDs = new Integer[ nTracks ];
+		int n = lonely.size();
+		int nEdges = 0;
+		int maxFrame = 0;
+		int t = 0;
+		for ( final Integer trackID : visibleIDs )
+		{
+			final Lane lane = lanes.get( trackID );
+			ordered[ t ] = lane;
+			trackIDs[ t ] = trackID;
+			n += lane.spots.length;
+			nEdges += lane.edges.length;
+			maxFrame = Math.max( maxFrame, lane.maxRow );
+			t++;
+		}
+
+		final Spot[] lonelySpots = lonely.toArray( new Spot[ lonely.size() ] );
+		Arrays.sort( lonelySpots, LONELY_ORDER );
+		for ( final Spot spot : lonelySpots )
+			maxFrame = Math.max( maxFrame, spot.getFeature( Spot.FRAME ).intValue() );
+
+		/*
+		 * Bucket spots by row. Within a row, the lanes come in order and the
+		 * spots of a lane are already sorted by column, so no further sort is
+		 * needed.
+		 */
+
+		final int nRows = maxFrame + 1;
+		final int[] rowStart = new int[ nRows + 1 ];
+		for ( final Lane lane : ordered )
+			for ( final int row : lane.rows )
+				rowStart[ row + 1 ]++;
+		for ( final Spot spot : lonelySpots )
+			rowStart[ spot.getFeature( Spot.FRAME ).intValue() + 1 ]++;
+		for ( int r = 0; r < nRows; r++ )
+			rowStart[ r + 1 ] += rowStart[ r ];
+
+		final Spot[] spots = new Spot[ n ];
+		final int[] rows = new int[ n ];
+		final int[] columns = new int[ n ];
+		final int[] fill = Arrays.copyOf( rowStart, nRows );
+
+		final DefaultWeightedEdge[] unsortedEdges = new DefaultWeightedEdge[ nEdges ];
+		final int[] unsortedSources = new int[ nEdges ];
+		final int[] unsortedTargets = new int[ nEdges ];
+		final int[] edgeRowStart = new int[ nRows + 1 ];
+		int ne = 0;
+		int maxEdgeSpan = 0;
+
+		final int[] trackColumnWidths = new int[ nTracks ];
+		int offset = TrackSchemeGraphLayout.START_COLUMN - 1;
+		int sumWidth = TrackSchemeGraphLayout.START_COLUMN;
+		for ( t = 0; t < nTracks; t++ )
+		{
+			final Lane lane = ordered[ t ];
+			final int[] index = new int[ lane.spots.length ];
+			for ( int i = 0; i < lane.spots.length; i++ )
+			{
+				final int j = fill[ lane.rows[ i ] ]++;
+				spots[ j ] = lane.spots[ i ];
+				rows[ j ] = lane.rows[ i ];
+				columns[ j ] = lane.columns[ i ] + offset;
+				index[ i ] = j;
+			}
+			for ( int e = 0; e < lane.edges.length; e++ )
+			{
+				final int source = index[ lane.edgeSources[ e ] ];
+				final int target = index[ lane.edgeTargets[ e ] ];
+				unsortedEdges[ ne ] = lane.edges[ e ];
+				unsortedSources[ ne ] = source;
+				unsortedTargets[ ne ] = target;
+				edgeRowStart[ Math.min( rows[ source ], rows[ target ] ) + 1 ]++;
+				maxEdgeSpan = Math.max( maxEdgeSpan, Math.abs( rows[ source ] - rows[ target ] ) );
+				ne++;
+			}
+
+			// Same lane widths as TrackSchemeGraphLayout.
+			final int maxColumn = lane.maxColumn + offset;
+			trackColumnWidths[ t ] = maxColumn - sumWidth;
+			sumWidth += trackColumnWidths[ t ];
+			offset = maxColumn;
+		}
+
+		/*
+		 * Lonely spots go in the column after the last lane, side by side when
+		 * they share a frame.
+		 */
+
+		final int lonelyColumn = offset + 1;
+		int nColumns = lonelyColumn;
+		final int[] lonelyCount = new int[ nRows ];
+		for ( final Spot spot : lonelySpots )
+		{
+			final int row = spot.getFeature( Spot.FRAME ).intValue();
+			final int j = fill[ row ]++;
+			spots[ j ] = spot;
+			rows[ j ] = row;
+			columns[ j ] = lonelyColumn + lonelyCount[ row ]++;
+			nColumns = Math.max( nColumns, columns[ j ] + 1 );
+		}
+
+		final long[] ids = new long[ n ];
+		for ( int j = 0; j < n; j++ )
+			ids[ j ] = ( ( long ) spots[ j ].ID() << 32 ) | j;
+		Arrays.sort( ids );
+		final int[] sortedIDs = new int[ n ];
+		final int[] idToIndex = new int[ n ];
+		for ( int j = 0; j < n; j++ )
+		{
+			sortedIDs[ j ] = ( int ) ( ids[ j ] >> 32 );
+			idToIndex[ j ] = ( int ) ids[ j ];
+		}
+
+		/*
+		 * Edges, sorted by the row of their upper spot.
+		 */
+
+		for ( int r = 0; r < nRows; r++ )
+			edgeRowStart[ r + 1 ] += edgeRowStart[ r ];
+
+		final DefaultWeightedEdge[] edges = new DefaultWeightedEdge[ ne ];
+		final int[] edgeSources = new int[ ne ];
+		final int[] edgeTargets = new int[ ne ];
+		final int[] edgeFill = Arrays.copyOf( edgeRowStart, nRows );
+		for ( int e = 0; e < ne; e++ )
+		{
+			final int row = Math.min( rows[ unsortedSources[ e ] ], rows[ unsortedTargets[ e ] ] );
+			final int k = edgeFill[ row ]++;
+			edges[ k ] = unsortedEdges[ e ];
+			edgeSources[ k ] = unsortedSources[ e ];
+			edgeTargets[ k ] = unsortedTargets[ e ];
+		}
+
+		return new TrackSchemeLayoutIndex( spots, rows, columns, rowStart, sortedIDs, idToIndex,
+				edges, edgeSources, edgeTargets, edgeRowStart, maxEdgeSpan, nColumns, trackColumnWidths, trackIDs,
+				lanes, lonelySpots );
+	}
+
+	private static int indexOf( final Spot spot, final int[] sortedIDs, final int[] idToIndex )
+	{
+		if ( null == spot )
+			return -1;
+		final int k = Arrays.binarySearch( sortedIDs, spot.ID() );
+		return k < 0 ? -1 : idToIndex[ k ];
+	}
+
+	/**
+	 * Returns the index of the specified spot in this layout.
+	 *
+	 * @param spot
+	 *            the spot.
+	 * @return the spot index, or -1 if the spot is not laid out.
+	 */
+	public int indexOf( final Spot spot )
+	{
+		return indexOf( spot, sortedIDs, idToIndex );
+	}
+
+	/**
+	 * Returns the index of the spot at the specified row and column.
+	 *
+	 * @param row
+	 *            the row.
+	 * @param column
+	 *            the column.
+	 * @return the spot index, or -1 if there is no spot there.
+	 */
+	public int indexAt( final int row, final int column )
+	{
+		if ( row < 0 || row >= getNRows() )
+			return -1;
+		final int k = firstInRow( row, column );
+		return ( k < rowStart[ row + 1 ] && columns[ k ] == column ) ? k : -1;
+	}
+
+	/**
+	 * Returns the index of the first spot of the specified row with a column
+	 * larger than or equal to the specified one.
+	 */
+	private int firstInRow( final int row, final int column )
+	{
+		int lo = rowStart[ row ];
+		int hi = rowStart[ row + 1 ];
+		while ( lo < hi )
+		{
+			final int mid = ( lo + hi ) >>> 1;
+			if ( columns[ mid ] < column )
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Passes the index of each spot whose row and column are in the specified
+	 * ranges (inclusive) to the specified consumer.
+	 */
+	public void forEachSpot( final int minRow, final int maxRow, final int minColumn, final int maxColumn, final IntConsumer consumer )
+	{
+		final int r0 = Math.max( 0, minRow );
+		final int r1 = Math.min( getNRows() - 1, maxRow );
+		for ( int r = r0; r <= r1; r++ )
+		{
+			final int end = rowStart[ r + 1 ];
+			for ( int k = firstInRow( r, minColumn ); k < end && columns[ k ] <= maxColumn; k++ )
+				consumer.accept( k );
+		}
+	}
+
+	/**
+	 * Passes the index of each edge that may cross the specified ranges of rows
+	 * and columns (inclusive) to the specified consumer.
+	 */
+	public void forEachEdge( final int minRow, final int maxRow, final int minColumn, final int maxColumn, final IntConsumer consumer )
+	{
+		final int r0 = Math.max( 0, minRow - maxEdgeSpan );
+		final int r1 = Math.min( getNRows() - 1, maxRow );
+		for ( int r = r0; r <= r1; r++ )
+		{
+			for ( int e = edgeRowStart[ r ]; e < edgeRowStart[ r + 1 ]; e++ )
+			{
+				final int s = edgeSources[ e ];
+				final int t = edgeTargets[ e ];
+				if ( Math.max( rows[ s ], rows[ t ] ) < minRow )
+					continue;
+				if ( Math.max( columns[ s ], columns[ t ] ) < minColumn || Math.min( columns[ s ], columns[ t ] ) > maxColumn )
+					continue;
+				consumer.accept( e );
+			}
+		}
+	}
+
+	public int getNSpots()
+	{
+		return spots.length;
+	}
+
+	public int getNEdges()
+	{
+		return edges.length;
+	}
+
+	/**
+	 * Returns the number of rows, that is the number of frames.
+	 */
+	public int getNRows()
+	{
+		return rowStart.length - 1;
+	}
+
+	/**
+	 * Returns the number of columns, including the empty first ones.
+	 */
+	public int getNColumns()
+	{
+		return nColumns;
+	}
+
+	public Spot getSpot( final int index )
+	{
+		return spots[ index ];
+	}
+
+	public int getRow( final int index )
+	{
+		return rows[ index ];
+	}
+
+	public int getColumn( final int index )
+	{
+		return columns[ index ];
+	}
+
+	public DefaultWeightedEdge getEdge( final int edgeIndex )
+	{
+		return edges[ edgeIndex ];
+	}
+
+	/**
+	 * Returns the index of the source spot of the specified edge.
+	 */
+	public int getEdgeSource( final int edgeIndex )
+	{
+		return edgeSources[ edgeIndex ];
+	}
+
+	/**
+	 * Returns the index of the target spot of the specified edge.
+	 */
+	public int getEdgeTarget( final int edgeIndex )
+	{
+		return edgeTargets[ edgeIndex ];
+	}
+
+	/**
+	 * Returns the width in columns of the lane of each visible track, in the
+	 * order of {@link #getTrackIDs()}.
+	 */
+	public int[] getTrackColumnWidths()
+	{
+		return trackColumnWidths;
+	}
+
+	/**
+	 * Returns the IDs of the visible tracks, in the order of their lanes.
+	 */
+	public Integer[] getTrackIDs()
+	{
+		return trackIDs;
+	}
+
+	private static final Comparator< Spot > LONELY_ORDER = ( s1, s2 ) -> {
+		final int c = Integer.compare( s1.getFeature( Spot.FRAME ).intValue(), s2.getFeature( Spot.FRAME ).intValue() );
+		return c != 0 ? c : Integer.compare( s1.ID(), s2.ID() );
+	};
+
+	/**
+	 * The layout of one track, with columns relative to the left of its lane.
+	 * The spots are sorted by row then column, and edges refer to spots by
+	 * their index in the lane.
+	 */
+	static final class Lane
+	{
+
+		private final Integer trackID;
+
+		private final Spot[] spots;
+
+		private final int[] rows;
+
+		private final int[] columns;
+
+		private final int maxRow;
+
+		/** The last column of the lane. The next lane starts after it. */
+		private final int maxColumn;
+
+		private final DefaultWeightedEdge[] edges;
+
+		private final int[] edgeSources;
+
+		private final int[] edgeTargets;
+
+		private Lane( final Integer trackID, final Spot[] spots, final int[] rows, final int[] columns, final int maxRow, final int maxColumn,
+				final DefaultWeightedEdge[] edges, final int[] edgeSources, final int[] edgeTargets )
+		{
+			this.trackID = trackID;
+			this.spots = spots;
+			this.rows = rows;
+			this.columns = columns;
+			this.maxRow = maxRow;
+			this.maxColumn = maxColumn;
+			this.edges = edges;
+			this.edgeSources = edgeSources;
+			this.edgeTargets = edgeTargets;
+		}
+
+		/**
+		 * Lays out one track, starting at column 1.
+		 *
+		 * @param free
+		 *            a column occupancy array with at least as many frames as
+		 *            the track. It is reset before use.
+		 */
+		static Lane layout( final TrackModel trackModel, final Integer trackID, final TimeDirectedNeighborIndex neighborCache, final TrackSchemeGraphLayout.Columns free )
+		{
+			final Set< Spot > track = trackModel.trackSpots( trackID );
+			final int n = track.size();
+			final Spot[] placed = new Spot[ n ];
+			final int[] placedRows = new int[ n ];
+			final int[] placedColumns = new int[ n ];
+			final int[] count = new int[ 1 ];
+
+			free.fill( 1 );
+			final Map< Spot, Integer > cumulativeBranchWidth = GraphUtils.cumulativeBranchWidth( neighborCache, track );
+			TrackSchemeGraphLayout.layoutTrack( trackModel, trackID, neighborCache, cumulativeBranchWidth, free,
+					( spot, frame, column ) -> {
+						final int i = count[ 0 ]++;
+						placed[ i ] = spot;
+						placedRows[ i ] = frame;
+						placedColumns[ i ] = column;
+					} );
+
+			// Sort by row then column.
+			final Integer[] order = new Integer[ count[ 0 ] ];
+			for ( int i = 0; i < order.length; i++ )
+				order[ i ] = i;
+			Arrays.sort( order, ( i1, i2 ) -> {
+				final int c = Integer.compare( placedRows[ i1 ], placedRows[ i2 ] );
+				return c != 0 ? c : Integer.compare( placedColumns[ i1 ], placedColumns[ i2 ] );
+			} );
+
+			final Spot[] spots = new Spot[ order.length ];
+			final int[] rows = new int[ order.length ];
+			final int[] columns = new int[ order.length ];
+			final Map< Spot, Integer > index = new IdentityHashMap<>( order.length );
+			int maxRow = 0;
+			for ( int j = 0; j < order.length; j++ )
+			{
+				final int i = order[ j ];
+				spots[ j ] = placed[ i ];
+				rows[ j ] = placedRows[ i ];
+				columns[ j ] = placedColumns[ i ];
+				index.put( spots[ j ], j );
+				maxRow = Math.max( maxRow, rows[ j ] );
+			}
+
+			final Set< DefaultWeightedEdge > trackEdges = trackModel.trackEdges( trackID );
+			final DefaultWeightedEdge[] edges = new DefaultWeightedEdge[ trackEdges.size() ];
+			final int[] edgeSources = new int[ edges.length ];
+			final int[] edgeTargets = new int[ edges.length ];
+			int ne = 0;
+			for ( final DefaultWeightedEdge edge : trackEdges )
+			{
+				final Integer source = index.get( trackModel.getEdgeSource( edge ) );
+				final Integer target = index.get( trackModel.getEdgeTarget( edge ) );
+				if ( null == source || null == target )
+					continue;
+				edges[ ne ] = edge;
+				edgeSources[ ne ] = source.intValue();
+				edgeTargets[ ne ] = target.intValue();
+				ne++;
+			}
+
+			return new Lane( trackID, spots, rows, columns, maxRow, free.max(),
+					Arrays.copyOf( edges, ne ), Arrays.copyOf( edgeSources, ne ), Arrays.copyOf( edgeTargets, ne ) );
+		}
+	}
+}
@@ -123,6 +123,58 @@ public class TrackSchemeStylist
 		styleSheet.putCellStyle( SIMPLE_STYLE_NAME, simpleStyle );
 	}
 
+	/**
+	 * Returns the color generator for the edges of TrackScheme. Edges without
+	 * a value for the color feature get the missing value color.
+	 *
+	 * @param model
+	 *            the model.
+	 * @param displaySettings
+	 *            the display settings.
+	 * @return a new color generator.
+	 */
+	public static FeatureColorGenerator< DefaultWeightedEdge > createEdgeColorGenerator( final Model model, final DisplaySettings displaySettings )
+	{
+		return withMissingValueColor( FeatureUtils.createTrackColorGenerator( model, displaySettings ), displaySettings.getMissingValueColor() );
+	}
+
+	/**
+	 * Returns the color generator for the spots of TrackScheme. Spots without
+	 * a value for the color feature get the missing value color.
+	 *
+	 * @param model
+	 *            the model.
+	 * @param displaySettings
+	 *            the display settings.
+	 * @return a new color generator.
+	 */
+	public static FeatureColorGenerator< Spot > createSpotColorGenerator( final Model model, final DisplaySettings displaySettings )
+	{
+		return withMissingValueColor( FeatureUtils.createSpotColorGenerator( model, displaySettings ), displaySettings.getMissingValueColor() );
+	}
+
+	private static < K > FeatureColorGenerator< K > withMissingValueColor( final FeatureColorGenerator< K > colorGenerator, final Color missingValueColor )
+	{
+		return obj -> {
+			final Color color = colorGenerator.color( obj );
+			return ( null == color ) ? missingValueColor : color;
+		};
+	}
+
+	/**
+	 * Returns the color to fill the box of a spot with, in the full style.
+	 *
+	 * @param color
+	 *            the color of the spot.
+	 * @param displaySettings
+	 *            the display settings.
+	 * @return the fill color.
+	 */
+	public static Color getFillColor( final Color color, final DisplaySettings displaySettings )
+	{
+		return displaySettings.isTrackSchemeFillBox() ? color : Color.WHITE;
+	}
+
 	public void setStyle( final String styleName )
 	{
 		if ( !graphx.getStylesheet().getStyles().containsKey( styleName ) )
@@ -140,18 +192,14 @@ public class TrackSchemeStylist
 	 */
 	public synchronized void updateEdgeStyle( final Collection< mxCell > edges )
 	{
-		final FeatureColorGenerator< DefaultWeightedEdge > trackColorGenerator = FeatureUtils.createTrackColorGenerator( model, displaySettings );
-		final Color missingValueColor = displaySettings.getMissingValueColor();
+		final FeatureColorGenerator< DefaultWeightedEdge > trackColorGenerator = createEdgeColorGenerator( model, displaySettings );
 		graphx.getModel().beginUpdate();
 		try
 		{
 			for ( final mxCell cell : edges )
 			{
 				final DefaultWeightedEdge edge = graphx.getEdgeFor( cell );
-				Color color = trackColorGenerator.color( edge );
-				if ( color == null )
-					color = missingValueColor;
-
+				final Color color = trackColorGenerator.color( edge );
 				final String colorstr = Integer.toHexString( color.getRGB() ).substring( 2 );
 				String style = cell.getStyle();
 				style = mxStyleUtils.setStyle( style, mxConstants.STYLE_STROKECOLOR, colorstr );
@@ -172,8 +220,7 @@ public class TrackSchemeStylist
 		fullStyle.put( mxConstants.STYLE_FONTSIZE, "" + font.getSize() );
 		fullStyle.put( mxConstants.STYLE_FONTSTYLE, "" + font.getStyle() );
 		
-		final FeatureColorGenerator< Spot > spotColorGenerator = FeatureUtils.createSpotColorGenerator( model, displaySettings );
-		final Color missingValueColor = displaySettings.getMissingValueColor();
+		final FeatureColorGenerator< Spot > spotColorGenerator = createSpotColorGenerator( model, displaySettings );
 
 		graphx.getModel().beginUpdate();
 		try
@@ -183,12 +230,9 @@ public class TrackSchemeStylist
 				final Spot spot = graphx.getSpotFor( vertex );
 				if ( spot != null )
 				{
-					Color color = spotColorGenerator.color( spot );
-					if ( color == null )
-						color = missingValueColor;
-
+					final Color color = spotColorGenerator.color( spot );
 					final String colorstr = Integer.toHexString( color.getRGB() ).substring( 2 );
-					final String fillcolorstr = displaySettings.isTrackSchemeFillBox() ? colorstr : "white";
+					final String fillcolorstr = Integer.toHexString( getFillColor( color, displaySettings ).getRGB() ).substring( 2 );
 					setVertexStyle( vertex, colorstr, fillcolorstr );
 				}
 			}
@@ -26,6 +26,7 @@ import com.mxgraph.util.mxConstants;
 import com.mxgraph.util.mxRectangle;
 import com.mxgraph.util.mxUtils;
 
+import java.awt.image.BufferedImage;
 import java.util.Map;
 
 import org.w3c.dom.Document;
@@ -33,10 +34,34 @@ import org.w3c.dom.Element;
 
 public class TrackSchemeSvgCanvas extends mxSvgCanvas {
 
+	private SpotThumbnailCache thumbnails;
+
 	public TrackSchemeSvgCanvas(Document document) {
 		super(document);
 	}
 
+	/**
+	 * Sets the cache used to resolve the thumbnail image keys of spot cells.
+	 * Thumbnails not in the cache are rendered when the cell is drawn.
+	 */
+	public void setThumbnails(SpotThumbnailCache thumbnails) {
+		this.thumbnails = thumbnails;
+	}
+
+	@Override
+	public String getImageForStyle(Map<String, Object> style) {
+		String img = mxUtils.getString(style, mxConstants.STYLE_IMAGE);
+		if (img == null || !img.startsWith(SpotThumbnailCache.IMAGE_KEY_PREFIX))
+			return super.getImageForStyle(style);
+
+		if (thumbnails == null)
+			return null;
+		BufferedImage thumbnail = thumbnails.getNow(img);
+		if (thumbnail == null)
+			return null;
+		return "data:image/base64," + SpotIconGrabber.toImageString(thumbnail);
+	}
+
 	@Override
 	public Element drawShape(int x, int y, int w, int h, Map<String, Object> style) {
 
@@ -0,0 +1,317 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.visualization.trackscheme;
+
+import static fiji.plugin.trackmate.gui.Icons.TRACK_SCHEME_ICON;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JScrollPane;
+import javax.swing.SwingUtilities;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.ModelChangeEvent;
+import fiji.plugin.trackmate.SelectionChangeEvent;
+import fiji.plugin.trackmate.SelectionModel;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.TrackModel;
+import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings;
+import fiji.plugin.trackmate.visualization.AbstractTrackMateModelView;
+
+/**
+ * A TrackScheme view for very large models. Contrary to {@link TrackScheme},
+ * it does not create one graph cell per spot and edge: the model is laid out
+ * in a {@link TrackSchemeLayoutIndex}, and only the part of it visible on
+ * screen is painted, by a {@link VirtualTrackSchemePanel}.
+ * <p>
+ * This view offers selection, deletion and linking, but not the other
+ * editing tools of the full TrackScheme.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+public class VirtualTrackScheme extends AbstractTrackMateModelView
+{
+
+	public static final String KEY = "VIRTUAL_TRACKSCHEME";
+
+	/**
+	 * Above this number of spots, TrackMate offers to open the virtual
+	 * TrackScheme rather than the full one.
+	 */
+	public static final int SPOT_NUMBER_THRESHOLD = 100_000;
+
+	private static final Dimension DEFAULT_SIZE = new Dimension( 800, 600 );
+
+	private final JFrame frame;
+
+	private final VirtualTrackSchemePanel panel;
+
+	private final JLabel status;
+
+	/** Whether a layout is being computed. */
+	private final AtomicBoolean building = new AtomicBoolean( false );
+
+	/*
+	 * The changes received since the layout being computed started, guarded
+	 * by the lock. They are consumed by the layout thread.
+	 */
+
+	private final Object lock = new Object();
+
+	private boolean dirty = false;
+
+	private boolean fullRebuild = true;
+
+	private final Set< Integer > dirtyTrackIDs = new HashSet<>();
+
+	private final Set< Spot > dirtySpots = new HashSet<>();
+
+	/** The last layout computed. Only accessed by the layout thread. */
+	private TrackSchemeLayoutIndex layout;
+
+	public VirtualTrackScheme( final Model model, final SelectionModel selectionModel, final DisplaySettings displaySettings )
+	{
+		super( model, selectionModel, displaySettings );
+		this.panel = new VirtualTrackSchemePanel( model, selectionModel, displaySettings );
+		this.status = new JLabel( " " );
+
+		this.frame = new JFrame( "TrackScheme (large model)" );
+		frame.setIconImage( TRACK_SCHEME_ICON.getImage() );
+		final JScrollPane scrollPane = new JScrollPane( panel );
+		scrollPane.getViewport().setBackground( displaySettings.getTrackSchemeBackgroundColor1() );
+		frame.getContentPane().add( scrollPane, BorderLayout.CENTER );
+		frame.getContentPane().add( status, BorderLayout.SOUTH );
+		frame.setSize( DEFAULT_SIZE );
+		frame.setLocationByPlatform( true );
+
+		displaySettings.listeners().add( () -> panel.repaint() );
+		frame.addWindowListener( new WindowAdapter()
+		{
+			@Override
+			public void windowClosing( final WindowEvent e )
+			{
+				model.removeModelChangeListener( VirtualTrackScheme.this );
+				selectionModel.removeSelectionChangeListener( VirtualTrackScheme.this );
+			}
+		} );
+	}
+
+	/**
+	 * Lays out the whole model again, and then displays it.
+	 */
+	private void rebuild()
+	{
+		synchronized ( lock )
+		{
+			fullRebuild = true;
+			dirty = true;
+		}
+		startLayout();
+	}
+
+	/**
+	 * Lays out again the specified tracks, and the specified spots if they are
+	 * not in a track, then displays the model. The lanes of the other tracks
+	 * are reused from the previous layout.
+	 */
+	private void update( final Collection< Integer > trackIDs, final Collection< Spot > spots )
+	{
+		synchronized ( lock )
+		{
+			dirtyTrackIDs.addAll( trackIDs );
+			dirtySpots.addAll( spots );
+			dirty = true;
+		}
+		startLayout();
+	}
+
+	/**
+	 * Lays out the model in a background thread, then displays the layout.
+	 * Changes received while a layout is being computed are coalesced in one
+	 * subsequent layout.
+	 */
+	private void startLayout()
+	{
+		if ( !building.compareAndSet( false, true ) )
+			return;
+
+		final Thread thread = new Thread( "Virtual TrackScheme layout thread" )
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					while ( true )
+					{
+						final boolean full;
+						final List< Integer > trackIDs;
+						final List< Spot > spots;
+						synchronized ( lock )
+						{
+							if ( !dirty )
+								break;
+							full = fullRebuild || null == layout;
+							trackIDs = new ArrayList<>( dirtyTrackIDs );
+							spots = new ArrayList<>( dirtySpots );
+							dirty = false;
+							fullRebuild = false;
+							dirtyTrackIDs.clear();
+							dirtySpots.clear();
+						}
+
+						SwingUtilities.invokeLater( () -> status.setText( "Laying out tracks..." ) );
+						final long start = System.currentTimeMillis();
+						final TrackSchemeLayoutIndex lLayout = full
+								? TrackSchemeLayoutIndex.build( model )
+								: layout.update( model, trackIDs, spots );
+						layout = lLayout;
+						final long end = System.currentTimeMillis();
+						SwingUtilities.invokeLater( () -> {
+							panel.setLayoutIndex( lLayout );
+							status.setText( String.format( "%d spots, %d links, %d frames. Laid out in %d ms. "
+									+ "Ctrl + wheel to zoom, DEL to delete the selection, L to link the selected spots.",
+									lLayout.getNSpots(), lLayout.getNEdges(), lLayout.getNRows(), end - start ) );
+						} );
+					}
+				}
+				finally
+				{
+					building.set( false );
+				}
+				// A change may have come in after the last check.
+				synchronized ( lock )
+				{
+					if ( !dirty )
+						return;
+				}
+				startLayout();
+			}
+		};
+		thread.setDaemon( true );
+		thread.start();
+	}
+
+	/*
+	 * TRACKMATEMODELVIEW
+	 */
+
+	@Override
+	public void render()
+	{
+		rebuild();
+		SwingUtilities.invokeLater( () -> frame.setVisible( true ) );
+	}
+
+	@Override
+	public void refresh()
+	{
+		panel.repaint();
+	}
+
+	@Override
+	public void clear()
+	{
+		panel.setLayoutIndex( null );
+	}
+
+	@Override
+	public void centerViewOn( final Spot spot )
+	{
+		SwingUtilities.invokeLater( () -> panel.centerOn( spot ) );
+	}
+
+	@Override
+	public String getKey()
+	{
+		return KEY;
+	}
+
+	@Override
+	public void modelChanged( final ModelChangeEvent event )
+	{
+		switch ( event.getEventID() )
+		{
+		case ModelChangeEvent.MODEL_MODIFIED:
+			update( changedTrackIDs( model.getTrackModel(), event ), event.getSpots() );
+			break;
+		case ModelChangeEvent.TRACKS_VISIBILITY_CHANGED:
+			// Lanes are added and removed, but none changes.
+			update( Collections.emptyList(), Collections.emptyList() );
+			break;
+		case ModelChangeEvent.SPOTS_COMPUTED:
+		case ModelChangeEvent.SPOTS_FILTERED:
+		case ModelChangeEvent.TRACKS_COMPUTED:
+			rebuild();
+			break;
+		default:
+			refresh();
+			break;
+		}
+	}
+
+	/**
+	 * Returns the IDs of the tracks whose lane must be laid out again after
+	 * the specified {@link ModelChangeEvent#MODEL_MODIFIED} event. Tracks that
+	 * vanished are not included.
+	 */
+	static Set< Integer > changedTrackIDs( final TrackModel trackModel, final ModelChangeEvent event )
+	{
+		final Set< Integer > trackIDs = new HashSet<>();
+		if ( null != event.getTrackUpdated() )
+			trackIDs.addAll( event.getTrackUpdated() );
+		for ( final Spot spot : event.getSpots() )
+		{
+			final Integer trackID = trackModel.trackIDOf( spot );
+			if ( null != trackID )
+				trackIDs.add( trackID );
+		}
+		for ( final DefaultWeightedEdge edge : event.getEdges() )
+		{
+			final Integer trackID = trackModel.trackIDOf( edge );
+			if ( null != trackID )
+				trackIDs.add( trackID );
+		}
+		return trackIDs;
+	}
+
+	@Override
+	public void selectionChanged( final SelectionChangeEvent event )
+	{
+		super.selectionChanged( event );
+		refresh();
+	}
+}
@@ -0,0 +1,591 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.visualization.trackscheme;
+
+import static fiji.plugin.trackmate.visualization.trackscheme.TrackScheme.DEFAULT_CELL_HEIGHT;
+import static fiji.plugin.trackmate.visualization.trackscheme.TrackScheme.DEFAULT_CELL_WIDTH;
+import static fiji.plugin.trackmate.visualization.trackscheme.TrackScheme.X_COLUMN_SIZE;
+import static fiji.plugin.trackmate.visualization.trackscheme.TrackScheme.Y_COLUMN_SIZE;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Stroke;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.geom.Line2D;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import javax.swing.JComponent;
+import javax.swing.JViewport;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.SelectionModel;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings;
+import fiji.plugin.trackmate.visualization.FeatureColorGenerator;
+
+/**
+ * Paints a {@link TrackSchemeLayoutIndex} without creating any graph cell.
+ * Only the spots and edges intersecting the visible part of the component are
+ * retrieved from the layout and painted.
+ * <p>
+ * The level of details depends on the zoom level. When the spot cells would
+ * be very small, only the edges are drawn. At intermediate zoom levels, spots
+ * are painted as discs. When zoomed in, they are painted as boxes with their
+ * name, as in the full style of {@link TrackSchemeStylist}. Colors are given
+ * by the color generators of {@link TrackSchemeStylist}.
+ * <p>
+ * Selection is read from and written to the {@link SelectionModel}. Clicking
+ * selects a spot or an edge, shift-clicking toggles it. The
+ * <code>DELETE</code> key removes the selected spots and edges from the
+ * model, and the <code>L</code> key links the selected spots in time order.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+public class VirtualTrackSchemePanel extends JComponent implements Scrollable
+{
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Below this cell height in pixels, only edges are painted.
+	 */
+	private static final double LOD_EDGES_ONLY = 4.;
+
+	/**
+	 * Below this cell height in pixels, spots are painted as discs without
+	 * labels.
+	 */
+	private static final double LOD_NO_LABELS = 20.;
+
+	private static final double MIN_SCALE = 1. / 256.;
+
+	private static final double MAX_SCALE = 4.;
+
+	/** Tolerance in pixels to pick an edge. */
+	private static final double EDGE_PICK_TOLERANCE = 4.;
+
+	private final Model model;
+
+	private final SelectionModel selectionModel;
+
+	private final DisplaySettings displaySettings;
+
+	private TrackSchemeLayoutIndex layout;
+
+	private double scale = 0.5;
+
+	public VirtualTrackSchemePanel( final Model model, final SelectionModel selectionModel, final DisplaySettings displaySettings )
+	{
+		this.model = model;
+		this.selectionModel = selectionModel;
+		this.displaySettings = displaySettings;
+		setOpaque( true );
+		setFocusable( true );
+
+		final MouseAdapter mouseHandler = new MouseHandler();
+		addMouseListener( mouseHandler );
+		addMouseWheelListener( mouseHandler );
+		addKeyListener( new KeyHandler() );
+	}
+
+	/**
+	 * Sets the layout to paint.
+	 *
+	 * @param layout
+	 *            the layout. Can be <code>null</code>.
+	 */
+	public void setLayoutIndex( final TrackSchemeLayoutIndex layout )
+	{
+		this.layout = layout;
+		revalidate();
+		repaint();
+	}
+
+	public TrackSchemeLayoutIndex getLayoutIndex()
+	{
+		return layout;
+	}
+
+	public double getScale()
+	{
+		return scale;
+	}
+
+	/**
+	 * Changes the zoom level, keeping the specified point of the component
+	 * fixed on screen.
+	 *
+	 * @param newScale
+	 *            the new scale.
+	 * @param anchor
+	 *            the point to keep fixed, in component coordinates. If
+	 *            <code>null</code>, the center of the visible rectangle is
+	 *            used.
+	 */
+	public void setScale( final double newScale, final Point anchor )
+	{
+		final double s = Math.max( MIN_SCALE, Math.min( MAX_SCALE, newScale ) );
+		final Rectangle visible = getVisibleRect();
+		final Point p = ( null == anchor ) ? new Point( visible.x + visible.width / 2, visible.y + visible.height / 2 ) : anchor;
+		final double ratio = s / scale;
+		scale = s;
+		revalidate();
+
+		if ( getParent() instanceof JViewport )
+		{
+			final JViewport viewport = ( JViewport ) getParent();
+			final int x = ( int ) Math.round( p.x * ratio ) - ( p.x - visible.x );
+			final int y = ( int ) Math.round( p.y * ratio ) - ( p.y - visible.y );
+			viewport.setViewSize( getPreferredSize() );
+			viewport.setViewPosition( new Point( Math.max( 0, x ), Math.max( 0, y ) ) );
+		}
+		repaint();
+	}
+
+	/**
+	 * Scrolls the view so that the specified spot is centered, if it is laid
+	 * out.
+	 *
+	 * @param spot
+	 *            the spot to center on.
+	 */
+	public void centerOn( final Spot spot )
+	{
+		if ( null == layout )
+			return;
+		final int index = layout.indexOf( spot );
+		if ( index < 0 )
+			return;
+
+		final Rectangle visible = getVisibleRect();
+		final int x = ( int ) Math.round( xOf( layout.getColumn( index ) ) ) - visible.width / 2;
+		final int y = ( int ) Math.round( yOf( layout.getRow( index ) ) ) - visible.height / 2;
+		scrollRectToVisible( new Rectangle( x, y, visible.width, visible.height ) );
+	}
+
+	/*
+	 * COORDINATES
+	 */
+
+	private double xOf( final int column )
+	{
+		return column * X_COLUMN_SIZE * scale;
+	}
+
+	private double yOf( final int row )
+	{
+		return ( 0.5 + row ) * Y_COLUMN_SIZE * scale;
+	}
+
+	private int columnAt( final double x )
+	{
+		return ( int ) Math.floor( x / ( X_COLUMN_SIZE * scale ) + 0.5 );
+	}
+
+	private int rowAt( final double y )
+	{
+		return ( int ) Math.floor( y / ( Y_COLUMN_SIZE * scale ) );
+	}
+
+	/*
+	 * PAINTING
+	 */
+
+	@Override
+	public Dimension getPreferredSize()
+	{
+		if ( null == layout )
+			return new Dimension( 1, 1 );
+		return new Dimension(
+				( int ) Math.ceil( ( layout.getNColumns() + 1 ) * X_COLUMN_SIZE * scale ),
+				( int ) Math.ceil( layout.getNRows() * Y_COLUMN_SIZE * scale ) );
+	}
+
+	@Override
+	protected void paintComponent( final Graphics g )
+	{
+		final Graphics2D g2d = ( Graphics2D ) g;
+		final Rectangle clip = g2d.getClipBounds();
+		g2d.setColor( displaySettings.getTrackSchemeBackgroundColor1() );
+		g2d.fillRect( clip.x, clip.y, clip.width, clip.height );
+
+		final TrackSchemeLayoutIndex lLayout = layout;
+		if ( null == lLayout )
+			return;
+
+		final double cellHeight = DEFAULT_CELL_HEIGHT * scale;
+		if ( cellHeight >= LOD_EDGES_ONLY )
+			g2d.setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON );
+
+		paintLanes( g2d, lLayout, clip );
+
+		// Visible range, with a margin for cells overlapping the border.
+		final int minRow = rowAt( clip.y ) - 1;
+		final int maxRow = rowAt( clip.y + clip.height ) + 1;
+		final int minColumn = columnAt( clip.x ) - 1;
+		final int maxColumn = columnAt( clip.x + clip.width ) + 1;
+
+		/*
+		 * Edges.
+		 */
+
+		final FeatureColorGenerator< DefaultWeightedEdge > edgeColors = TrackSchemeStylist.createEdgeColorGenerator( model, displaySettings );
+		final Color highlightColor = displaySettings.getHighlightColor();
+		final Set< DefaultWeightedEdge > edgeSelection = selectionModel.getEdgeSelection();
+		final Stroke normalStroke = new BasicStroke( ( float ) Math.max( 1., displaySettings.getLineThickness() * Math.min( 1., scale * 2 ) ) );
+		final Stroke selectedStroke = new BasicStroke( ( float ) Math.max( 2., 2. * displaySettings.getLineThickness() * Math.min( 1., scale * 2 ) ) );
+		final Line2D.Double line = new Line2D.Double();
+		lLayout.forEachEdge( minRow, maxRow, minColumn, maxColumn, e -> {
+			final int s = lLayout.getEdgeSource( e );
+			final int t = lLayout.getEdgeTarget( e );
+			final DefaultWeightedEdge edge = lLayout.getEdge( e );
+			final boolean selected = edgeSelection.contains( edge );
+			g2d.setColor( selected ? highlightColor : edgeColors.color( edge ) );
+			g2d.setStroke( selected ? selectedStroke : normalStroke );
+			line.setLine( xOf( lLayout.getColumn( s ) ), yOf( lLayout.getRow( s ) ), xOf( lLayout.getColumn( t ) ), yOf( lLayout.getRow( t ) ) );
+			g2d.draw( line );
+		} );
+
+		/*
+		 * Spots.
+		 */
+
+		final Set< Spot > spotSelection = selectionModel.getSpotSelection();
+		if ( cellHeight < LOD_EDGES_ONLY )
+		{
+			// Only mark the selected spots.
+			if ( spotSelection.isEmpty() )
+				return;
+			g2d.setColor( highlightColor );
+			lLayout.forEachSpot( minRow, maxRow, minColumn, maxColumn, i -> {
+				if ( spotSelection.contains( lLayout.getSpot( i ) ) )
+					g2d.fillRect( ( int ) xOf( lLayout.getColumn( i ) ) - 2, ( int ) yOf( lLayout.getRow( i ) ) - 2, 5, 5 );
+			} );
+			return;
+		}
+
+		final FeatureColorGenerator< Spot > spotColors = TrackSchemeStylist.createSpotColorGenerator( model, displaySettings );
+		final boolean labels = cellHeight >= LOD_NO_LABELS;
+		final int h = ( int ) Math.round( cellHeight );
+		final int w = labels ? ( int ) Math.round( DEFAULT_CELL_WIDTH * scale ) : h;
+		final Font font = displaySettings.getFont();
+		if ( labels )
+			g2d.setFont( font.deriveFont( ( float ) Math.max( 1., font.getSize2D() * scale * 2 ) ) );
+		final Stroke spotStroke = new BasicStroke( 1.5f );
+
+		lLayout.forEachSpot( minRow, maxRow, minColumn, maxColumn, i -> {
+			final Spot spot = lLayout.getSpot( i );
+			final Color color = spotColors.color( spot );
+			final int x = ( int ) Math.round( xOf( lLayout.getColumn( i ) ) ) - w / 2;
+			final int y = ( int ) Math.round( yOf( lLayout.getRow( i ) ) ) - h / 2;
+			final boolean selected = spotSelection.contains( spot );
+
+			if ( !labels )
+			{
+				g2d.setColor( color );
+				g2d.fillOval( x, y, w, h );
+			}
+			else
+			{
+				g2d.setColor( TrackSchemeStylist.getFillColor( color, displaySettings ) );
+				g2d.fillRoundRect( x, y, w, h, h / 2, h / 2 );
+				g2d.setColor( color );
+				g2d.setStroke( spotStroke );
+				g2d.drawRoundRect( x, y, w, h, h / 2, h / 2 );
+				// Black labels, as in the full style.
+				g2d.setColor( Color.BLACK );
+				final String name = spot.getName();
+				final int textWidth = g2d.getFontMetrics().stringWidth( name );
+				g2d.drawString( name, x + w - textWidth - h / 4, y + h / 2 + g2d.getFontMetrics().getAscent() / 2 );
+			}
+
+			if ( selected )
+			{
+				g2d.setColor( highlightColor );
+				g2d.setStroke( selectedStroke );
+				if ( labels )
+					g2d.drawRoundRect( x - 2, y - 2, w + 4, h + 4, h / 2, h / 2 );
+				else
+					g2d.drawOval( x - 2, y - 2, w + 4, h + 4 );
+			}
+		} );
+	}
+
+	/**
+	 * Paints alternating backgrounds behind track lanes.
+	 */
+	private void paintLanes( final Graphics2D g2d, final TrackSchemeLayoutIndex lLayout, final Rectangle clip )
+	{
+		final int[] widths = lLayout.getTrackColumnWidths();
+		int start = 1;
+		for ( int i = 0; i < widths.length; i++ )
+		{
+			final int x0 = ( int ) Math.round( xOf( start ) - X_COLUMN_SIZE * scale / 2 );
+			final int x1 = ( int ) Math.round( xOf( start + widths[ i ] ) - X_COLUMN_SIZE * scale / 2 );
+			start += widths[ i ];
+			if ( x1 < clip.x || x0 > clip.x + clip.width )
+				continue;
+			if ( i % 2 == 1 )
+			{
+				g2d.setColor( displaySettings.getTrackSchemeBackgroundColor2() );
+				g2d.fillRect( x0, clip.y, x1 - x0, clip.height );
+			}
+		}
+	}
+
+	/*
+	 * PICKING AND EDITING
+	 */
+
+	/**
+	 * Returns the index of the spot under the specified point, or -1.
+	 */
+	private int spotAt( final Point p )
+	{
+		final TrackSchemeLayoutIndex lLayout = layout;
+		if ( null == lLayout )
+			return -1;
+		final int index = lLayout.indexAt( rowAt( p.y ), columnAt( p.x ) );
+		if ( index < 0 )
+			return -1;
+
+		final double cellHeight = Math.max( LOD_EDGES_ONLY, DEFAULT_CELL_HEIGHT * scale );
+		final double cellWidth = cellHeight >= LOD_NO_LABELS ? DEFAULT_CELL_WIDTH * scale : cellHeight;
+		final double dx = Math.abs( p.x - xOf( lLayout.getColumn( index ) ) );
+		final double dy = Math.abs( p.y - yOf( lLayout.getRow( index ) ) );
+		return ( dx <= cellWidth / 2 && dy <= cellHeight / 2 ) ? index : -1;
+	}
+
+	/**
+	 * Returns the index of the edge under the specified point, or -1.
+	 */
+	private int edgeAt( final Point p )
+	{
+		final TrackSchemeLayoutIndex lLayout = layout;
+		if ( null == lLayout )
+			return -1;
+		final int row = rowAt( p.y );
+		final int column = columnAt( p.x );
+		final int[] best = new int[] { -1 };
+		final double[] bestDist = new double[] { EDGE_PICK_TOLERANCE };
+		lLayout.forEachEdge( row, row + 1, column - 1, column + 1, e -> {
+			final int s = lLayout.getEdgeSource( e );
+			final int t = lLayout.getEdgeTarget( e );
+			final double d = Line2D.ptSegDist(
+					xOf( lLayout.getColumn( s ) ), yOf( lLayout.getRow( s ) ),
+					xOf( lLayout.getColumn( t ) ), yOf( lLayout.getRow( t ) ),
+					p.x, p.y );
+			if ( d <= bestDist[ 0 ] )
+			{
+				bestDist[ 0 ] = d;
+				best[ 0 ] = e;
+			}
+		} );
+		return best[ 0 ];
+	}
+
+	private void select( final Point p, final boolean toggle )
+	{
+		final int spotIndex = spotAt( p );
+		final int edgeIndex = spotIndex < 0 ? edgeAt( p ) : -1;
+		if ( !toggle )
+			selectionModel.clearSelection();
+
+		if ( spotIndex >= 0 )
+		{
+			final Spot spot = layout.getSpot( spotIndex );
+			if ( toggle && selectionModel.getSpotSelection().contains( spot ) )
+				selectionModel.removeSpotFromSelection( spot );
+			else
+				selectionModel.addSpotToSelection( spot );
+		}
+		else if ( edgeIndex >= 0 )
+		{
+			final DefaultWeightedEdge edge = layout.getEdge( edgeIndex );
+			if ( toggle && selectionModel.getEdgeSelection().contains( edge ) )
+				selectionModel.removeEdgeFromSelection( edge );
+			else
+				selectionModel.addEdgeToSelection( edge );
+		}
+	}
+
+	/**
+	 * Removes the selected spots and edges from the model.
+	 */
+	public void removeSelection()
+	{
+		final Collection< DefaultWeightedEdge > edges = new ArrayList<>( selectionModel.getEdgeSelection() );
+		final Collection< Spot > spots = new ArrayList<>( selectionModel.getSpotSelection() );
+		if ( edges.isEmpty() && spots.isEmpty() )
+			return;
+
+		selectionModel.clearSelection();
+		model.beginUpdate();
+		try
+		{
+			model.removeEdges( edges );
+			model.removeSpots( spots );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+	}
+
+	/**
+	 * Links the selected spots in time order.
+	 */
+	public void linkSelection()
+	{
+		final List< Spot > spots = new ArrayList<>( selectionModel.getSpotSelection() );
+		if ( spots.size() < 2 )
+			return;
+		Collections.sort( spots, Comparator.comparingDouble( s -> s.getFeature( Spot.FRAME ) ) );
+
+		model.beginUpdate();
+		try
+		{
+			for ( int i = 1; i < spots.size(); i++ )
+			{
+				final Spot source = spots.get( i - 1 );
+				final Spot target = spots.get( i );
+				if ( source.diffTo( target, Spot.FRAME ) == 0 )
+					continue;
+				if ( null == model.getTrackModel().getEdge( source, target ) )
+					model.addEdge( source, target, -1 );
+			}
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+	}
+
+	private final class MouseHandler extends MouseAdapter
+	{
+
+		@Override
+		public void mousePressed( final MouseEvent e )
+		{
+			requestFocusInWindow();
+			if ( e.getButton() == MouseEvent.BUTTON1 )
+				select( e.getPoint(), e.isShiftDown() );
+		}
+
+		@Override
+		public void mouseWheelMoved( final MouseWheelEvent e )
+		{
+			if ( !e.isControlDown() )
+			{
+				// Let the scroll pane scroll.
+				getParent().dispatchEvent( e );
+				return;
+			}
+			final double factor = Math.pow( 1.2, -e.getPreciseWheelRotation() );
+			setScale( scale * factor, e.getPoint() );
+		}
+	}
+
+	private final class KeyHandler extends KeyAdapter
+	{
+
+		@Override
+		public void keyPressed( final KeyEvent e )
+		{
+			switch ( e.getKeyCode() )
+			{
+			case KeyEvent.VK_DELETE:
+			case KeyEvent.VK_BACK_SPACE:
+				removeSelection();
+				break;
+			case KeyEvent.VK_L:
+				linkSelection();
+				break;
+			case KeyEvent.VK_ADD:
+			case KeyEvent.VK_EQUALS:
+				setScale( scale * 1.2, null );
+				break;
+			case KeyEvent.VK_SUBTRACT:
+			case KeyEvent.VK_MINUS:
+				setScale( scale / 1.2, null );
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	/*
+	 * SCROLLABLE
+	 */
+
+	@Override
+	public Dimension getPreferredScrollableViewportSize()
+	{
+		return new Dimension( 800, 600 );
+	}
+
+	@Override
+	public int getScrollableUnitIncrement( final Rectangle visibleRect, final int orientation, final int direction )
+	{
+		final double size = orientation == SwingConstants.HORIZONTAL ? X_COLUMN_SIZE : Y_COLUMN_SIZE;
+		return Math.max( 1, ( int ) ( size * scale / 2 ) );
+	}
+
+	@Override
+	public int getScrollableBlockIncrement( final Rectangle visibleRect, final int orientation, final int direction )
+	{
+		return orientation == SwingConstants.HORIZONTAL ? visibleRect.width : visibleRect.height;
+	}
+
+	@Override
+	public boolean getScrollableTracksViewportWidth()
+	{
+		return false;
+	}
+
+	@Override
+	public boolean getScrollableTracksViewportHeight()
+	{
+		return false;
+	}
+}
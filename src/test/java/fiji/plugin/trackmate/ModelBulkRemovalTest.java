@@ -0,0 +1,281 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.junit.Test;
+
+/**
+ * Checks that {@link Model#removeSpots(java.util.Collection)} and
+ * {@link Model#removeEdges(java.util.Collection)} give the same tracks as
+ * removing spots and edges one by one.
+ */
+public class ModelBulkRemovalTest
+{
+
+	/*
+	 * Indices of the spots in the test model.
+	 */
+
+	/** Linear track A: 0 - 1 - ... - 9. */
+	private static final int A = 0;
+
+	/** Linear track B: 10 - 11 - 12 - 13. Invisible. */
+	private static final int B = 10;
+
+	/** Linear track C: 14 - 15 - 16. */
+	private static final int C = 14;
+
+	/**
+	 * Branching track D: 17 - 18 - 19, then 19 - 20 - ... - 25 and 19 - 26 -
+	 * 27.
+	 */
+	private static final int D = 17;
+
+	/** Lonely spot. */
+	private static final int LONELY = 28;
+
+	@Test
+	public void testRemoveSpots()
+	{
+		final List< Spot > ref = new ArrayList<>();
+		final Model refModel = createModel( ref );
+		final List< Spot > bulk = new ArrayList<>();
+		final Model bulkModel = createModel( bulk );
+		final Set< Integer > originalIDs = new HashSet<>( bulkModel.getTrackModel().trackIDs( false ) );
+
+		// Split A, trim B, dissolve C, split D in 3, remove the lonely spot.
+		final int[] toRemove = new int[] { A + 3, B, B + 1, C + 1, D + 2, LONELY };
+
+		refModel.beginUpdate();
+		try
+		{
+			for ( final int i : toRemove )
+				refModel.removeSpot( ref.get( i ) );
+		}
+		finally
+		{
+			refModel.endUpdate();
+		}
+
+		final List< Spot > removed = new ArrayList<>();
+		for ( final int i : toRemove )
+			removed.add( bulk.get( i ) );
+		bulkModel.beginUpdate();
+		try
+		{
+			assertEquals( toRemove.length, bulkModel.removeSpots( removed ) );
+		}
+		finally
+		{
+			bulkModel.endUpdate();
+		}
+
+		assertSameTracks( originalIDs, refModel, ref, bulkModel, bulk );
+		assertEquals( refModel.getSpots().getNSpots( false ), bulkModel.getSpots().getNSpots( false ) );
+		assertEquals( 6, bulkModel.getTrackModel().nTracks( false ) );
+		assertNull( bulkModel.getTrackModel().trackIDOf( bulk.get( C ) ) );
+		assertFalse( bulkModel.getTrackModel().isVisible( bulkModel.getTrackModel().trackIDOf( bulk.get( B + 2 ) ) ) );
+	}
+
+	@Test
+	public void testRemoveEdges()
+	{
+		final List< Spot > ref = new ArrayList<>();
+		final Model refModel = createModel( ref );
+		final List< Spot > bulk = new ArrayList<>();
+		final Model bulkModel = createModel( bulk );
+		final Set< Integer > originalIDs = new HashSet<>( bulkModel.getTrackModel().trackIDs( false ) );
+
+		// Split A in 3, dissolve C, detach the short branch of D.
+		final int[][] toRemove = new int[][] { { A + 5, A + 6 }, { A + 7, A + 8 }, { C, C + 1 }, { C + 1, C + 2 }, { D + 2, D + 9 } };
+
+		refModel.beginUpdate();
+		try
+		{
+			for ( final int[] pair : toRemove )
+				refModel.removeEdge( ref.get( pair[ 0 ] ), ref.get( pair[ 1 ] ) );
+		}
+		finally
+		{
+			refModel.endUpdate();
+		}
+
+		final List< DefaultWeightedEdge > removed = new ArrayList<>();
+		for ( final int[] pair : toRemove )
+			removed.add( bulkModel.getTrackModel().getEdge( bulk.get( pair[ 0 ] ), bulk.get( pair[ 1 ] ) ) );
+		bulkModel.beginUpdate();
+		try
+		{
+			assertEquals( toRemove.length, bulkModel.removeEdges( removed ) );
+		}
+		finally
+		{
+			bulkModel.endUpdate();
+		}
+
+		assertSameTracks( originalIDs, refModel, ref, bulkModel, bulk );
+		assertEquals( 29, bulkModel.getSpots().getNSpots( false ) );
+		assertEquals( 6, bulkModel.getTrackModel().nTracks( false ) );
+	}
+
+	@Test
+	public void testSingleEvent()
+	{
+		final List< Spot > spots = new ArrayList<>();
+		final Model model = createModel( spots );
+		final Integer idA = model.getTrackModel().trackIDOf( spots.get( A ) );
+		final List< ModelChangeEvent > events = new ArrayList<>();
+		model.addModelChangeListener( e -> events.add( e ) );
+
+		final List< Spot > toRemove = Arrays.asList( spots.get( A + 1 ), spots.get( A + 6 ), spots.get( C + 1 ) );
+		model.beginUpdate();
+		try
+		{
+			model.removeSpots( toRemove );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+
+		assertEquals( 1, events.size() );
+		final ModelChangeEvent event = events.get( 0 );
+		assertEquals( ModelChangeEvent.MODEL_MODIFIED, event.getEventID() );
+		assertEquals( new HashSet<>( toRemove ), event.getSpots() );
+		for ( final Spot spot : toRemove )
+			assertEquals( ModelChangeEvent.FLAG_SPOT_REMOVED, event.getSpotFlag( spot ).intValue() );
+		// 2 edges for each of the 3 spots.
+		assertEquals( 6, event.getEdges().size() );
+		for ( final DefaultWeightedEdge edge : event.getEdges() )
+			assertEquals( ModelChangeEvent.FLAG_EDGE_REMOVED, event.getEdgeFlag( edge ).intValue() );
+
+		// A is cut in 2 tracks and a lonely spot. The largest one keeps the ID.
+		final TrackModel tm = model.getTrackModel();
+		assertNull( tm.trackIDOf( spots.get( A ) ) );
+		assertEquals( idA, tm.trackIDOf( spots.get( A + 3 ) ) );
+		assertEquals( 4, tm.trackSpots( idA ).size() );
+		assertTrue( event.getTrackUpdated().contains( idA ) );
+		assertTrue( event.getTrackUpdated().contains( tm.trackIDOf( spots.get( A + 8 ) ) ) );
+	}
+
+	/*
+	 * HELPERS.
+	 */
+
+	/**
+	 * Asserts that the two models have the same tracks, matching spots by
+	 * their index in the specified lists. Tracks that kept an ID of the
+	 * original model must have the same ID and name in both models. New
+	 * tracks may be numbered in a different order.
+	 */
+	private static void assertSameTracks( final Set< Integer > originalIDs, final Model refModel, final List< Spot > ref, final Model model, final List< Spot > spots )
+	{
+		final TrackModel refTM = refModel.getTrackModel();
+		final TrackModel tm = model.getTrackModel();
+		assertEquals( refTM.trackIDs( false ), tm.trackIDs( false ) );
+		assertEquals( refTM.nTracks( true ), tm.nTracks( true ) );
+
+		final Set< Set< Integer > > refSets = new HashSet<>();
+		for ( final Integer id : refTM.trackIDs( false ) )
+			refSets.add( indices( refTM.trackSpots( id ), ref ) );
+		final Set< Set< Integer > > sets = new HashSet<>();
+		for ( final Integer id : tm.trackIDs( false ) )
+			sets.add( indices( tm.trackSpots( id ), spots ) );
+		assertEquals( refSets, sets );
+
+		for ( int i = 0; i < ref.size(); i++ )
+		{
+			final Integer refID = refTM.trackIDOf( ref.get( i ) );
+			final Integer id = tm.trackIDOf( spots.get( i ) );
+			if ( null == refID )
+			{
+				assertNull( id );
+				continue;
+			}
+			assertEquals( refTM.trackSpots( refID ).size(), tm.trackSpots( id ).size() );
+			assertEquals( refTM.trackEdges( refID ).size(), tm.trackEdges( id ).size() );
+			assertEquals( refTM.isVisible( refID ), tm.isVisible( id ) );
+			if ( originalIDs.contains( refID ) )
+			{
+				assertEquals( refID, id );
+				assertEquals( refTM.name( refID ), tm.name( id ) );
+			}
+		}
+	}
+
+	private static Set< Integer > indices( final Set< Spot > track, final List< Spot > spots )
+	{
+		final Set< Integer > indices = new HashSet<>();
+		for ( final Spot spot : track )
+			indices.add( Integer.valueOf( spots.indexOf( spot ) ) );
+		return indices;
+	}
+
+	private static Model createModel( final List< Spot > spots )
+	{
+		final Model model = new Model();
+		model.beginUpdate();
+		try
+		{
+			addChain( model, spots, 0, 10, null );
+			addChain( model, spots, 0, 4, null );
+			addChain( model, spots, 0, 3, null );
+			final Spot branchPoint = addChain( model, spots, 0, 3, null );
+			addChain( model, spots, 3, 6, branchPoint );
+			addChain( model, spots, 3, 2, branchPoint );
+			addChain( model, spots, 0, 1, null );
+			model.setTrackVisibility( model.getTrackModel().trackIDOf( spots.get( B ) ), false );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+		return model;
+	}
+
+	private static Spot addChain( final Model model, final List< Spot > spots, final int firstFrame, final int n, final Spot parent )
+	{
+		Spot previous = parent;
+		for ( int t = 0; t < n; t++ )
+		{
+			final Spot spot = new Spot( spots.size(), 0., 0., 1., -1. );
+			model.addSpotTo( spot, Integer.valueOf( firstFrame + t ) );
+			spots.add( spot );
+			if ( null != previous )
+				model.addEdge( previous, spot, 1. );
+			previous = spot;
+		}
+		return previous;
+	}
+}
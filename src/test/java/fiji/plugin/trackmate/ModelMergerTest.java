@@ -0,0 +1,290 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.junit.Test;
+
+import net.imglib2.realtransform.AffineTransform3D;
+
+public class ModelMergerTest
+{
+
+	private static final String EDGE_FEATURE = "TEST_EDGE_FEATURE";
+
+	private static final String TRACK_FEATURE = "TEST_TRACK_FEATURE";
+
+	@Test
+	public void testAppendWithOffsetAndTransform()
+	{
+		final Model target = new Model();
+		addTrack( target, 0, 5, 0., 0. );
+		addTrack( target, 0, 5, 0., 50. );
+		final Set< Integer > targetIDs = new HashSet<>( target.getTrackModel().trackIDs( false ) );
+
+		final Model source = new Model();
+		final Integer id1 = addTrack( source, 0, 5, 0., 0. );
+		final Integer id2 = addTrack( source, 0, 5, 0., 50. );
+		source.beginUpdate();
+		try
+		{
+			source.addSpotTo( new Spot( 1., 2., 3., 1., 1., "Lonely" ), 2 );
+		}
+		finally
+		{
+			source.endUpdate();
+		}
+		declareFeatures( source );
+		for ( final DefaultWeightedEdge edge : source.getTrackModel().edgeSet() )
+			source.getFeatureModel().putEdgeFeature( edge, EDGE_FEATURE, Double.valueOf( 7. ) );
+		source.getFeatureModel().putTrackFeature( id1, TRACK_FEATURE, Double.valueOf( 1. ) );
+		source.getFeatureModel().putTrackFeature( id2, TRACK_FEATURE, Double.valueOf( 2. ) );
+		source.getTrackModel().setName( id1, "First" );
+
+		final AffineTransform3D transform = new AffineTransform3D();
+		transform.scale( 2. );
+		transform.translate( 100., 0., 0. );
+
+		final ModelMerger merger = new ModelMerger( target, source );
+		merger.setTimeOffset( 5, 0.5 );
+		merger.setTransform( transform );
+		assertTrue( merger.getErrorMessage(), merger.checkInput() && merger.process() );
+
+		// Source is untouched.
+		assertEquals( 11, source.getSpots().getNSpots( false ) );
+		assertEquals( 2, source.getTrackModel().nTracks( false ) );
+
+		// Spots.
+		assertEquals( 11, merger.getNSpotsAppended() );
+		assertEquals( 21, target.getSpots().getNSpots( false ) );
+		assertEquals( 10, target.getSpots().keySet().size() );
+		assertEquals( 3, target.getSpots().getNSpots( 7, false ) );
+		for ( final Spot spot : target.getSpots().iterable( 5, false ) )
+		{
+			assertTrue( spot.getDoublePosition( 0 ) >= 100. );
+			assertEquals( 2., spot.getFeature( Spot.RADIUS ).doubleValue(), 1e-9 );
+			assertEquals( 2.5, spot.getFeature( Spot.POSITION_T ).doubleValue(), 1e-9 );
+		}
+
+		// Tracks.
+		final TrackModel tm = target.getTrackModel();
+		assertEquals( 4, tm.nTracks( false ) );
+		assertTrue( tm.trackIDs( false ).containsAll( targetIDs ) );
+		final Map< Integer, Integer > idMap = merger.getTrackIDMap();
+		assertEquals( 2, idMap.size() );
+		final Integer newID1 = idMap.get( id1 );
+		final Integer newID2 = idMap.get( id2 );
+		assertFalse( targetIDs.contains( newID1 ) );
+		assertFalse( targetIDs.contains( newID2 ) );
+		assertEquals( "First", tm.name( newID1 ) );
+		assertEquals( 5, tm.trackSpots( newID1 ).size() );
+		assertEquals( 4, tm.trackEdges( newID2 ).size() );
+		for ( final Spot spot : tm.trackSpots( newID1 ) )
+			assertTrue( spot.getFeature( Spot.FRAME ).intValue() >= 5 );
+
+		// Features.
+		final FeatureModel fm = target.getFeatureModel();
+		assertTrue( fm.getEdgeFeatures().contains( EDGE_FEATURE ) );
+		assertTrue( fm.getTrackFeatures().contains( TRACK_FEATURE ) );
+		for ( final DefaultWeightedEdge edge : tm.trackEdges( newID1 ) )
+			assertEquals( 7., fm.getEdgeFeature( edge, EDGE_FEATURE ).doubleValue(), 0. );
+		assertEquals( 1., fm.getTrackFeature( newID1, TRACK_FEATURE ).doubleValue(), 0. );
+		assertEquals( 2., fm.getTrackFeature( newID2, TRACK_FEATURE ).doubleValue(), 0. );
+
+		// The merged model can still be edited.
+		final Spot first = tm.trackSpots( newID1 ).iterator().next();
+		target.beginUpdate();
+		try
+		{
+			target.removeSpot( first );
+		}
+		finally
+		{
+			target.endUpdate();
+		}
+		assertEquals( 20, target.getSpots().getNSpots( false ) );
+	}
+
+	@Test
+	public void testSingleEvent()
+	{
+		final Model target = new Model();
+		addTrack( target, 0, 3, 0., 0. );
+		final Set< DefaultWeightedEdge > targetEdges = new HashSet<>( target.getTrackModel().edgeSet() );
+
+		final Model source = new Model();
+		addTrack( source, 0, 3, 0., 0. );
+		addTrack( source, 0, 3, 0., 20. );
+
+		final List< ModelChangeEvent > events = new ArrayList<>();
+		target.addModelChangeListener( events::add );
+
+		final ModelMerger merger = new ModelMerger( target, source );
+		merger.setTimeOffset( 3, 1. );
+		assertTrue( merger.getErrorMessage(), merger.checkInput() && merger.process() );
+
+		assertEquals( 1, events.size() );
+		final ModelChangeEvent event = events.get( 0 );
+		assertEquals( ModelChangeEvent.MODEL_MODIFIED, event.getEventID() );
+		assertEquals( 6, event.getSpots().size() );
+		for ( final Spot spot : event.getSpots() )
+			assertEquals( ModelChangeEvent.FLAG_SPOT_ADDED, event.getSpotFlag( spot ).intValue() );
+		assertEquals( 4, event.getEdges().size() );
+		for ( final DefaultWeightedEdge edge : event.getEdges() )
+		{
+			assertFalse( targetEdges.contains( edge ) );
+			assertEquals( ModelChangeEvent.FLAG_EDGE_ADDED, event.getEdgeFlag( edge ).intValue() );
+		}
+		assertEquals( new HashSet<>( merger.getTrackIDMap().values() ), event.getTrackUpdated() );
+	}
+
+	@Test
+	public void testVisibleTracksOnly()
+	{
+		final Model target = new Model();
+		addTrack( target, 0, 3, 0., 0. );
+
+		final Model source = new Model();
+		final Integer visible = addTrack( source, 0, 3, 0., 0. );
+		final Integer hidden = addTrack( source, 0, 3, 0., 20. );
+		source.beginUpdate();
+		try
+		{
+			source.addSpotTo( new Spot( 1., 2., 3., 1., 1., "Lonely" ), 1 );
+			source.setTrackVisibility( hidden, false );
+		}
+		finally
+		{
+			source.endUpdate();
+		}
+
+		final ModelMerger merger = new ModelMerger( target, source );
+		merger.setVisibleTracksOnly( true );
+		assertTrue( merger.getErrorMessage(), merger.checkInput() && merger.process() );
+
+		assertEquals( 3, merger.getNSpotsAppended() );
+		assertEquals( 6, target.getSpots().getNSpots( false ) );
+		assertEquals( Collections.singleton( visible ), merger.getTrackIDMap().keySet() );
+		assertEquals( 2, target.getTrackModel().nTracks( false ) );
+	}
+
+	@Test
+	public void testStitching()
+	{
+		final Model target = new Model();
+		final Integer near = addTrack( target, 0, 5, 0., 0. );
+		addTrack( target, 0, 5, 0., 100. );
+
+		// Starts where the first target track ends, at frame 5 after offset.
+		final Model source = new Model();
+		final Integer stitched = addTrack( source, 0, 5, 5.5, 0. );
+		final Integer apart = addTrack( source, 0, 5, 5.5, 300. );
+		declareFeatures( source );
+		source.getFeatureModel().putTrackFeature( stitched, TRACK_FEATURE, Double.valueOf( 1. ) );
+		source.getFeatureModel().putTrackFeature( apart, TRACK_FEATURE, Double.valueOf( 2. ) );
+
+		final ModelMerger merger = new ModelMerger( target, source );
+		merger.setTimeOffset( 5, 1. );
+		merger.setStitching( 2. );
+		assertTrue( merger.getErrorMessage(), merger.checkInput() && merger.process() );
+
+		assertEquals( 1, merger.getNStitched() );
+		final TrackModel tm = target.getTrackModel();
+		assertEquals( 3, tm.nTracks( false ) );
+		assertNotNull( tm.name( near ) );
+		assertEquals( 10, tm.trackSpots( near ).size() );
+		assertEquals( 9, tm.trackEdges( near ).size() );
+		for ( final Integer id : tm.trackIDs( false ) )
+			if ( !id.equals( near ) )
+				assertEquals( 5, tm.trackSpots( id ).size() );
+
+		// The track merged into the target one is gone, with its features.
+		final Integer absorbed = merger.getTrackIDMap().get( stitched );
+		assertFalse( tm.trackIDs( false ).contains( absorbed ) );
+		assertNull( tm.name( absorbed ) );
+		final FeatureModel fm = target.getFeatureModel();
+		assertNull( fm.getTrackFeature( absorbed, TRACK_FEATURE ) );
+		assertEquals( 2., fm.getTrackFeature( merger.getTrackIDMap().get( apart ), TRACK_FEATURE ).doubleValue(), 0. );
+
+		// Visibility was not changed by stitching.
+		assertEquals( 20, target.getSpots().getNSpots( true ) );
+	}
+
+	/*
+	 * HELPERS.
+	 */
+
+	/**
+	 * Adds a linear track moving along X by 1 per frame, starting at the
+	 * specified X and Y. Returns its ID.
+	 */
+	private static Integer addTrack( final Model model, final int firstFrame, final int nFrames, final double x0, final double y )
+	{
+		Spot previous = null;
+		model.beginUpdate();
+		try
+		{
+			for ( int t = 0; t < nFrames; t++ )
+			{
+				final Spot spot = new Spot( x0 + t, y, 0., 1., 1. );
+				spot.putFeature( Spot.POSITION_T, Double.valueOf( ( firstFrame + t ) * 0.5 ) );
+				model.addSpotTo( spot, Integer.valueOf( firstFrame + t ) );
+				if ( null != previous )
+					model.addEdge( previous, spot, 1. );
+				previous = spot;
+			}
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+		return model.getTrackModel().trackIDOf( previous );
+	}
+
+	private static void declareFeatures( final Model model )
+	{
+		final FeatureModel fm = model.getFeatureModel();
+		fm.declareEdgeFeatures( Collections.singleton( EDGE_FEATURE ),
+				Collections.singletonMap( EDGE_FEATURE, "Edge feature" ),
+				Collections.singletonMap( EDGE_FEATURE, "E" ),
+				Collections.singletonMap( EDGE_FEATURE, Dimension.NONE ),
+				Collections.singletonMap( EDGE_FEATURE, Boolean.FALSE ) );
+		fm.declareTrackFeatures( Collections.singleton( TRACK_FEATURE ),
+				Collections.singletonMap( TRACK_FEATURE, "Track feature" ),
+				Collections.singletonMap( TRACK_FEATURE, "T" ),
+				Collections.singletonMap( TRACK_FEATURE, Dimension.NONE ),
+				Collections.singletonMap( TRACK_FEATURE, Boolean.FALSE ) );
+	}
+}
@@ -0,0 +1,168 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate;
+
+import static fiji.plugin.trackmate.detection.DetectorKeys.KEY_RADIUS;
+import static fiji.plugin.trackmate.detection.DetectorKeys.KEY_THRESHOLD;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_GAP_CLOSING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_TRACK_MERGING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_TRACK_SPLITTING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_MAX_DISTANCE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.detection.LogDetectorFactory;
+import fiji.plugin.trackmate.tracking.LAPUtils;
+import fiji.plugin.trackmate.tracking.sparselap.SparseLAPTrackerFactory;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.FloatProcessor;
+
+public class TrackMatePipelinedTest
+{
+
+	private static final int N_FRAMES = 6;
+
+	private static final int EMPTY_FRAME = 3;
+
+	private static final int N_BLOBS = 4;
+
+	@Test
+	public void testSameResultsAsStaged()
+	{
+		final ImagePlus imp = createImage();
+		final Model staged = run( imp, false );
+		final Model pipelined = run( imp, true );
+
+		// Blobs in all frames but the empty one.
+		assertEquals( ( N_FRAMES - 1 ) * N_BLOBS, staged.getSpots().getNSpots( true ) );
+		assertEquals( 0, staged.getSpots().getNSpots( EMPTY_FRAME, true ) );
+		// The empty frame splits each blob trajectory in two tracks.
+		assertEquals( 2 * N_BLOBS, staged.getTrackModel().nTracks( false ) );
+
+		assertEquals( spotKeys( staged ), spotKeys( pipelined ) );
+		assertEquals( edgeKeys( staged ), edgeKeys( pipelined ) );
+		assertEquals( trackKeys( staged ), trackKeys( pipelined ) );
+	}
+
+	private static Model run( final ImagePlus imp, final boolean pipelined )
+	{
+		final Settings settings = new Settings();
+		settings.setFrom( imp );
+		settings.detectorFactory = new LogDetectorFactory<>();
+		settings.detectorSettings = settings.detectorFactory.getDefaultSettings();
+		settings.detectorSettings.put( KEY_RADIUS, Double.valueOf( 3. ) );
+		settings.detectorSettings.put( KEY_THRESHOLD, Double.valueOf( 1. ) );
+		settings.trackerFactory = new SparseLAPTrackerFactory();
+		final Map< String, Object > trackerSettings = LAPUtils.getDefaultLAPSettingsMap();
+		trackerSettings.put( KEY_LINKING_MAX_DISTANCE, Double.valueOf( 5. ) );
+		trackerSettings.put( KEY_ALLOW_GAP_CLOSING, Boolean.FALSE );
+		trackerSettings.put( KEY_ALLOW_TRACK_SPLITTING, Boolean.FALSE );
+		trackerSettings.put( KEY_ALLOW_TRACK_MERGING, Boolean.FALSE );
+		settings.trackerSettings = trackerSettings;
+
+		final TrackMate trackmate = new TrackMate( settings );
+		trackmate.setNumThreads( 4 );
+		trackmate.setPipelined( pipelined );
+		assertTrue( trackmate.getErrorMessage(), trackmate.checkInput() && trackmate.process() );
+		return trackmate.getModel();
+	}
+
+	/**
+	 * Creates a movie of blobs moving along X, with one frame without any.
+	 */
+	private static ImagePlus createImage()
+	{
+		final int width = 80;
+		final int height = 60;
+		final double sigma = 3. / Math.sqrt( 2. );
+		final ImageStack stack = new ImageStack( width, height );
+		for ( int t = 0; t < N_FRAMES; t++ )
+		{
+			final FloatProcessor fp = new FloatProcessor( width, height );
+			if ( t != EMPTY_FRAME )
+			{
+				for ( int b = 0; b < N_BLOBS; b++ )
+				{
+					final double x0 = 15. + 2. * t;
+					final double y0 = 8. + 14. * b;
+					for ( int y = 0; y < height; y++ )
+						for ( int x = 0; x < width; x++ )
+						{
+							final double d2 = ( x - x0 ) * ( x - x0 ) + ( y - y0 ) * ( y - y0 );
+							fp.setf( x, y, fp.getf( x, y ) + ( float ) ( 1000. * Math.exp( -d2 / ( 2. * sigma * sigma ) ) ) );
+						}
+				}
+			}
+			stack.addSlice( fp );
+		}
+		final ImagePlus imp = new ImagePlus( "Blobs", stack );
+		imp.setDimensions( 1, 1, N_FRAMES );
+		return imp;
+	}
+
+	private static String key( final Spot spot )
+	{
+		return String.format( "%d:%.6f:%.6f",
+				spot.getFeature( Spot.FRAME ).intValue(),
+				spot.getFeature( Spot.POSITION_X ).doubleValue(),
+				spot.getFeature( Spot.POSITION_Y ).doubleValue() );
+	}
+
+	private static Set< String > spotKeys( final Model model )
+	{
+		final Set< String > keys = new HashSet<>();
+		for ( final Spot spot : model.getSpots().iterable( true ) )
+			keys.add( key( spot ) );
+		return keys;
+	}
+
+	private static Set< String > edgeKeys( final Model model )
+	{
+		final TrackModel tm = model.getTrackModel();
+		final Set< String > keys = new HashSet<>();
+		for ( final DefaultWeightedEdge edge : tm.edgeSet() )
+			keys.add( key( tm.getEdgeSource( edge ) ) + "->" + key( tm.getEdgeTarget( edge ) ) );
+		return keys;
+	}
+
+	private static Set< Set< String > > trackKeys( final Model model )
+	{
+		final TrackModel tm = model.getTrackModel();
+		final Set< Set< String > > keys = new HashSet<>();
+		for ( final Integer id : tm.trackIDs( false ) )
+		{
+			final Set< String > track = new HashSet<>();
+			for ( final Spot spot : tm.trackSpots( id ) )
+				track.add( key( spot ) );
+			keys.add( track );
+		}
+		return keys;
+	}
+}
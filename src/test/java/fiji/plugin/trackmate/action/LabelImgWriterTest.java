@@ -0,0 +1,204 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.action;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.action.LabelImgExporter.LabelIdPainting;
+import fiji.plugin.trackmate.detection.LabelImageDetector;
+import ij.IJ;
+import ij.ImagePlus;
+import ij.measure.Calibration;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.type.numeric.real.FloatType;
+
+public class LabelImgWriterTest
+{
+
+	private static final int WIDTH = 64;
+
+	private static final int HEIGHT = 48;
+
+	private static final int N_FRAMES = 5;
+
+	private static final int N_SPOTS_PER_FRAME = 4;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Model model;
+
+	private final Calibration calibration = new Calibration();
+
+	@Before
+	public void setUp()
+	{
+		// Spots move to the right, the last one of each frame is not linked.
+		model = new Model();
+		model.beginUpdate();
+		try
+		{
+			Spot[] previous = null;
+			for ( int frame = 0; frame < N_FRAMES; frame++ )
+			{
+				final Spot[] current = new Spot[ N_SPOTS_PER_FRAME ];
+				for ( int i = 0; i < N_SPOTS_PER_FRAME; i++ )
+				{
+					final double x = 8. + 2 * frame + 14 * i;
+					final double y = 10. + 9 * i;
+					current[ i ] = model.addSpotTo( new Spot( x, y, 0., 3., -1. ), frame );
+					if ( null != previous && i < N_SPOTS_PER_FRAME - 1 )
+						model.addEdge( previous[ i ], current[ i ], -1. );
+				}
+				previous = current;
+			}
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+	}
+
+	private LabelImgWriter writer( final LabelIdPainting labelIdPainting )
+	{
+		final LabelImgWriter writer = new LabelImgWriter( model, new int[] { WIDTH, HEIGHT, 1, N_FRAMES }, calibration );
+		writer.setLabelIdPainting( labelIdPainting );
+		writer.setNumThreads( 3 );
+		return writer;
+	}
+
+	private static float labelAt( final float[] pixels, final Spot spot )
+	{
+		final int x = ( int ) Math.round( spot.getDoublePosition( 0 ) );
+		final int y = ( int ) Math.round( spot.getDoublePosition( 1 ) );
+		return pixels[ y * WIDTH + x ];
+	}
+
+	@Test
+	public void testRoundTrip()
+	{
+		final File file = new File( folder.getRoot(), "labels.tif" );
+		final LabelImgWriter writer = writer( LabelIdPainting.LABEL_IS_SPOT_ID );
+		assertTrue( writer.getErrorMessage(), writer.exportToTiff( file ) );
+
+		final ImagePlus imp = IJ.openImage( file.getAbsolutePath() );
+		assertNotNull( imp );
+		assertEquals( N_FRAMES, imp.getStackSize() );
+		assertEquals( 32, imp.getBitDepth() );
+
+		for ( int frame = 0; frame < N_FRAMES; frame++ )
+		{
+			final float[] pixels = ( float[] ) imp.getStack().getPixels( frame + 1 );
+			final ArrayImg< FloatType, FloatArray > img = ArrayImgs.floats( pixels, WIDTH, HEIGHT );
+			final LabelImageDetector< FloatType > detector = new LabelImageDetector<>( img, img, new double[] { 1., 1. }, false );
+			assertTrue( detector.process() );
+			final List< Spot > detected = detector.getResult();
+			assertEquals( N_SPOTS_PER_FRAME, detected.size() );
+
+			for ( final Spot spot : model.getSpots().iterable( frame, true ) )
+			{
+				assertEquals( spot.ID() + 1, labelAt( pixels, spot ), 0. );
+
+				double minDist = Double.POSITIVE_INFINITY;
+				for ( final Spot other : detected )
+					minDist = Math.min( minDist, Math.sqrt( spot.squareDistanceTo( other ) ) );
+				assertEquals( "Spot " + spot + " in frame " + frame, 0., minDist, 1. );
+			}
+		}
+	}
+
+	@Test
+	public void testTrackIDs()
+	{
+		final LabelImgWriter writer = writer( LabelIdPainting.LABEL_IS_TRACK_ID );
+
+		// Spots not in tracks are numbered after the tracks, by spot ID.
+		int maxTrackID = -1;
+		for ( final Integer trackID : model.getTrackModel().trackIDs( false ) )
+			maxTrackID = Math.max( maxTrackID, trackID.intValue() );
+		final List< Integer > lonelySpotIDs = new ArrayList<>();
+		for ( final Spot spot : model.getSpots().iterable( true ) )
+			if ( null == model.getTrackModel().trackIDOf( spot ) )
+				lonelySpotIDs.add( Integer.valueOf( spot.ID() ) );
+		Collections.sort( lonelySpotIDs );
+		assertEquals( N_FRAMES, lonelySpotIDs.size() );
+
+		final Set< Float > lonelyLabels = new HashSet<>();
+		for ( int frame = 0; frame < N_FRAMES; frame++ )
+		{
+			final float[] pixels = writer.render( frame );
+			for ( final Spot spot : model.getSpots().iterable( frame, true ) )
+			{
+				final Integer trackID = model.getTrackModel().trackIDOf( spot );
+				final float expected = ( null == trackID )
+						? maxTrackID + 2 + lonelySpotIDs.indexOf( Integer.valueOf( spot.ID() ) )
+						: trackID + 1;
+				assertEquals( expected, labelAt( pixels, spot ), 0. );
+				if ( null == trackID )
+					lonelyLabels.add( Float.valueOf( labelAt( pixels, spot ) ) );
+			}
+		}
+		assertEquals( N_FRAMES, lonelyLabels.size() );
+		assertEquals( maxTrackID + 1 + N_FRAMES, Collections.max( lonelyLabels ), 0. );
+
+		writer.setExportTracksOnly( true );
+		final float[] pixels = writer.render( 0 );
+		for ( final Spot spot : model.getSpots().iterable( 0, true ) )
+			if ( null == model.getTrackModel().trackIDOf( spot ) )
+				assertEquals( 0f, labelAt( pixels, spot ), 0. );
+	}
+
+	@Test
+	public void testSeries()
+	{
+		final File dir = new File( folder.getRoot(), "series" );
+		final LabelImgWriter writer = writer( LabelIdPainting.LABEL_IS_SPOT_ID );
+		assertTrue( writer.getErrorMessage(), writer.exportToTiffSeries( dir, "lbl-" ) );
+
+		for ( int frame = 0; frame < N_FRAMES; frame++ )
+		{
+			final File file = new File( dir, String.format( "lbl-%04d.tif", frame ) );
+			assertTrue( file.exists() );
+			final ImagePlus imp = IJ.openImage( file.getAbsolutePath() );
+			assertArrayEquals( writer.render( frame ), ( float[] ) imp.getProcessor().getPixels(), 0f );
+		}
+	}
+}
@@ -0,0 +1,387 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.action.fit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.action.fit.GaussianRefiner.Estimator;
+import net.imglib2.Interval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.DoubleArray;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.util.Intervals;
+
+/**
+ * Checks the accuracy of {@link GaussianRefiner} on synthetic Gaussian blobs
+ * with Poisson noise, against the Cramer-Rao lower bound computed from the
+ * Fisher information of the same model.
+ */
+public class GaussianRefinerTest
+{
+
+	private static final int N_TRIALS = 300;
+
+	@Test
+	public void testPoissonMLEReachesCramerRaoBound2D() throws InterruptedException, ExecutionException
+	{
+		final double ratio = rmseOverCRLB2D( Estimator.POISSON_MLE, false, 1l );
+		assertTrue( "MLE localization error should be close to the Cramer-Rao bound, got a ratio of " + ratio, ratio > 0.8 && ratio < 1.2 );
+	}
+
+	@Test
+	public void testPoissonMLEFixedRadius2D() throws InterruptedException, ExecutionException
+	{
+		final double ratio = rmseOverCRLB2D( Estimator.POISSON_MLE, true, 2l );
+		assertTrue( "MLE localization error should be close to the Cramer-Rao bound, got a ratio of " + ratio, ratio > 0.8 && ratio < 1.2 );
+	}
+
+	@Test
+	public void testLeastSquares2D() throws InterruptedException, ExecutionException
+	{
+		// Least-squares is not efficient on Poisson data, but not far off.
+		final double ratio = rmseOverCRLB2D( Estimator.LEAST_SQUARES, false, 3l );
+		assertTrue( "Least-squares localization error should be within 50% of the Cramer-Rao bound, got a ratio of " + ratio, ratio > 0.8 && ratio < 1.5 );
+	}
+
+	@Test
+	public void testPoissonMLE3DAnisotropic() throws InterruptedException, ExecutionException
+	{
+		final Random ran = new Random( 4l );
+		final double[] calibration = new double[] { 1., 1., 2. };
+		final long[] dims = new long[] { 21, 21, 15 };
+		final double sigma = 1.5;
+		final double sigmaZ = 3.;
+		final double nPhotons = 3000.;
+		final double background = 3.;
+		final double amplitude = nPhotons / ( Math.pow( 2. * Math.PI, 1.5 ) * sigma * sigma * sigmaZ / calibration[ 2 ] );
+
+		double se = 0.;
+		double seZ = 0.;
+		double[] crlb = null;
+		final GaussianRefiner refiner = new GaussianRefiner( 3, calibration, false, Estimator.POISSON_MLE );
+		for ( int t = 0; t < N_TRIALS / 2; t++ )
+		{
+			final double[] params = new double[] {
+					10. + ran.nextDouble() - 0.5,
+					10. + ran.nextDouble() - 0.5,
+					14. + 2. * ( ran.nextDouble() - 0.5 ),
+					amplitude, background, sigma, sigmaZ };
+			if ( null == crlb )
+				crlb = crlb( params, dims, calibration );
+
+			final ArrayImg< DoubleType, DoubleArray > img = simulate( params, dims, calibration, ran );
+			final Spot spot = new Spot( Math.round( params[ 0 ] ), Math.round( params[ 1 ] ), 2. * Math.round( params[ 2 ] / 2. ), sigma * Math.sqrt( 3. ), 1. );
+			assertEquals( 1, refiner.refine( img, img, Collections.singletonList( spot ), 1 ) );
+
+			final double dx = spot.getDoublePosition( 0 ) - params[ 0 ];
+			final double dz = spot.getDoublePosition( 2 ) - params[ 2 ];
+			se += dx * dx;
+			seZ += dz * dz;
+		}
+		final double ratio = Math.sqrt( se / ( N_TRIALS / 2 ) / crlb[ 0 ] );
+		final double ratioZ = Math.sqrt( seZ / ( N_TRIALS / 2 ) / crlb[ 2 ] );
+		assertTrue( "MLE X localization error should be close to the Cramer-Rao bound, got a ratio of " + ratio, ratio > 0.75 && ratio < 1.3 );
+		assertTrue( "MLE Z localization error should be close to the Cramer-Rao bound, got a ratio of " + ratioZ, ratioZ > 0.75 && ratioZ < 1.3 );
+	}
+
+	@Test
+	public void testBatchRefinement() throws InterruptedException, ExecutionException
+	{
+		final Random ran = new Random( 5l );
+		final double[] calibration = new double[] { 0.2, 0.2, 1. };
+		final long[] dims = new long[] { 384, 256 };
+		final double sigma = 0.3;
+		final int nSpots = 200;
+
+		final ArrayImg< DoubleType, DoubleArray > img = ArrayImgs.doubles( dims );
+		final List< double[] > truth = new ArrayList<>( nSpots );
+		final List< Spot > spots = new ArrayList<>( nSpots );
+		for ( int i = 0; i < 20; i++ )
+		{
+			for ( int j = 0; j < nSpots / 20; j++ )
+			{
+				final double x = ( 10 + i * 18 + ran.nextDouble() ) * calibration[ 0 ];
+				final double y = ( 10 + j * 24 + ran.nextDouble() ) * calibration[ 1 ];
+				truth.add( new double[] { x, y } );
+				spots.add( new Spot( x + 0.1 * ( ran.nextDouble() - 0.5 ), y + 0.1 * ( ran.nextDouble() - 0.5 ), 0., 1.2 * sigma * Math.sqrt( 2. ), 1. ) );
+			}
+		}
+		final double[] data = img.update( null ).getCurrentStorageArray();
+		for ( final double[] xy : truth )
+			add( data, dims, calibration, new double[] { xy[ 0 ], xy[ 1 ], 100., 0., sigma } );
+
+		final GaussianRefiner refiner = new GaussianRefiner( 2, calibration, false, Estimator.LEAST_SQUARES );
+		assertEquals( nSpots, refiner.refine( img, img, spots, 4 ) );
+		for ( int i = 0; i < nSpots; i++ )
+		{
+			final Spot spot = spots.get( i );
+			assertEquals( truth.get( i )[ 0 ], spot.getDoublePosition( 0 ), 1e-4 );
+			assertEquals( truth.get( i )[ 1 ], spot.getDoublePosition( 1 ), 1e-4 );
+			assertEquals( sigma * Math.sqrt( 2. ), spot.getFeature( Spot.RADIUS ).doubleValue(), 1e-4 );
+		}
+	}
+
+	@Test
+	public void testFailureIsReported() throws InterruptedException
+	{
+		// The interval claims pixels the image does not have.
+		final ArrayImg< DoubleType, DoubleArray > img = ArrayImgs.doubles( 21, 21 );
+		final Interval interval = Intervals.expand( img, 10 );
+		final GaussianRefiner refiner = new GaussianRefiner( 2, new double[] { 1., 1., 1. }, false, Estimator.LEAST_SQUARES );
+		for ( final int numThreads : new int[] { 1, 4 } )
+		{
+			final List< Spot > spots = new ArrayList<>();
+			for ( int i = 0; i < 2 * GaussianRefiner.CHUNK_SIZE; i++ )
+				spots.add( new Spot( 0., 0., 0., 2., 1. ) );
+			try
+			{
+				refiner.refine( img, interval, spots, numThreads );
+				fail( "Refinement failures must be reported, with " + numThreads + " threads." );
+			}
+			catch ( final ExecutionException e )
+			{
+				// Expected.
+			}
+		}
+	}
+
+	/*
+	 * HELPERS.
+	 */
+
+	/**
+	 * Fits many noisy isotropic blobs and returns the ratio of the RMS X
+	 * localization error to the square root of the Cramer-Rao bound.
+	 */
+	private static double rmseOverCRLB2D( final Estimator estimator, final boolean fixRadius, final long seed ) throws InterruptedException, ExecutionException
+	{
+		final Random ran = new Random( seed );
+		final double[] calibration = new double[] { 1., 1., 1. };
+		final long[] dims = new long[] { 21, 21 };
+		final double sigma = 1.5;
+		final double nPhotons = 1000.;
+		final double background = 5.;
+		final double amplitude = nPhotons / ( 2. * Math.PI * sigma * sigma );
+
+		final GaussianRefiner refiner = new GaussianRefiner( 2, calibration, fixRadius, estimator );
+		double se = 0.;
+		double[] crlb = null;
+		for ( int t = 0; t < N_TRIALS; t++ )
+		{
+			final double[] params = new double[] {
+					10. + ran.nextDouble() - 0.5,
+					10. + ran.nextDouble() - 0.5,
+					amplitude, background, sigma };
+			if ( null == crlb )
+				crlb = crlb( fixRadius ? new double[] { params[ 0 ], params[ 1 ], amplitude, background } : params, dims, calibration, sigma );
+
+			final ArrayImg< DoubleType, DoubleArray > img = simulate( params, dims, calibration, ran );
+			final Spot spot = new Spot( Math.round( params[ 0 ] ), Math.round( params[ 1 ] ), 0., sigma * Math.sqrt( 2. ), 1. );
+			assertEquals( 1, refiner.refine( img, img, Collections.singletonList( spot ), 1 ) );
+
+			final double dx = spot.getDoublePosition( 0 ) - params[ 0 ];
+			se += dx * dx;
+		}
+		return Math.sqrt( se / N_TRIALS / crlb[ 0 ] );
+	}
+
+	/**
+	 * Model value and derivatives at one pixel, with the parameter layout of
+	 * the refiner: <code>[ x, y, (z), A, b, sigma, (sigmaZ) ]</code>. If the
+	 * sigmas are not in the parameters, they are taken from the fixed sigma.
+	 */
+	private static double model( final double[] params, final int nDims, final double[] position, final double fixedSigma, final double[] derivatives )
+	{
+		final boolean fitSigma = params.length > nDims + 2;
+		final double s = fitSigma ? params[ nDims + 2 ] : fixedSigma;
+		final double sz = ( nDims == 3 ) ? ( fitSigma ? params[ nDims + 3 ] : fixedSigma ) : s;
+		final double a = params[ nDims ];
+		double r2xy = 0.;
+		double r2z = 0.;
+		for ( int d = 0; d < nDims; d++ )
+		{
+			final double dx = position[ d ] - params[ d ];
+			if ( d < 2 )
+				r2xy += dx * dx;
+			else
+				r2z += dx * dx;
+		}
+		final double g = Math.exp( -0.5 * ( r2xy / ( s * s ) + r2z / ( sz * sz ) ) );
+		if ( null != derivatives )
+		{
+			for ( int d = 0; d < nDims; d++ )
+				derivatives[ d ] = a * g * ( position[ d ] - params[ d ] ) / ( d < 2 ? s * s : sz * sz );
+			derivatives[ nDims ] = g;
+			derivatives[ nDims + 1 ] = 1.;
+			if ( fitSigma )
+			{
+				derivatives[ nDims + 2 ] = a * g * r2xy / ( s * s * s );
+				if ( nDims == 3 )
+					derivatives[ nDims + 3 ] = a * g * r2z / ( sz * sz * sz );
+			}
+		}
+		return a * g + params[ nDims + 1 ];
+	}
+
+	private static double[] crlb( final double[] params, final long[] dims, final double[] calibration )
+	{
+		return crlb( params, dims, calibration, Double.NaN );
+	}
+
+	/**
+	 * Returns the diagonal of the inverse of the Fisher information matrix of
+	 * Poisson-distributed pixels.
+	 */
+	private static double[] crlb( final double[] params, final long[] dims, final double[] calibration, final double fixedSigma )
+	{
+		final int nDims = dims.length;
+		final int n = params.length;
+		final double[][] fisher = new double[ n ][ n ];
+		final double[] derivatives = new double[ n ];
+		final double[] position = new double[ nDims ];
+		final int nPixels = ( int ) intervalSize( dims );
+		for ( int k = 0; k < nPixels; k++ )
+		{
+			toPosition( k, dims, calibration, position );
+			final double f = model( params, nDims, position, fixedSigma, derivatives );
+			for ( int i = 0; i < n; i++ )
+				for ( int j = 0; j < n; j++ )
+					fisher[ i ][ j ] += derivatives[ i ] * derivatives[ j ] / f;
+		}
+		final double[][] inverse = invert( fisher );
+		final double[] diagonal = new double[ n ];
+		for ( int i = 0; i < n; i++ )
+			diagonal[ i ] = inverse[ i ][ i ];
+		return diagonal;
+	}
+
+	private static ArrayImg< DoubleType, DoubleArray > simulate( final double[] params, final long[] dims, final double[] calibration, final Random ran )
+	{
+		final ArrayImg< DoubleType, DoubleArray > img = ArrayImgs.doubles( dims );
+		final double[] data = img.update( null ).getCurrentStorageArray();
+		add( data, dims, calibration, params );
+		for ( int k = 0; k < data.length; k++ )
+			data[ k ] = poisson( data[ k ], ran );
+		return img;
+	}
+
+	private static void add( final double[] data, final long[] dims, final double[] calibration, final double[] params )
+	{
+		final double[] position = new double[ dims.length ];
+		for ( int k = 0; k < data.length; k++ )
+		{
+			toPosition( k, dims, calibration, position );
+			data[ k ] += model( params, dims.length, position, Double.NaN, null );
+		}
+	}
+
+	private static void toPosition( final int index, final long[] dims, final double[] calibration, final double[] position )
+	{
+		long rest = index;
+		for ( int d = 0; d < dims.length; d++ )
+		{
+			position[ d ] = ( rest % dims[ d ] ) * calibration[ d ];
+			rest /= dims[ d ];
+		}
+	}
+
+	private static long intervalSize( final long[] dims )
+	{
+		long size = 1;
+		for ( final long dim : dims )
+			size *= dim;
+		return size;
+	}
+
+	/**
+	 * Poisson deviate. Knuth's method for small means, normal approximation
+	 * for large ones.
+	 */
+	private static double poisson( final double mean, final Random ran )
+	{
+		if ( mean < 30. )
+		{
+			final double l = Math.exp( -mean );
+			double p = 1.;
+			int k = 0;
+			do
+			{
+				k++;
+				p *= ran.nextDouble();
+			}
+			while ( p > l );
+			return k - 1;
+		}
+		return Math.max( 0., Math.round( mean + Math.sqrt( mean ) * ran.nextGaussian() ) );
+	}
+
+	/**
+	 * Gauss-Jordan inversion with partial pivoting.
+	 */
+	private static double[][] invert( final double[][] matrix )
+	{
+		final int n = matrix.length;
+		final double[][] a = new double[ n ][ 2 * n ];
+		for ( int i = 0; i < n; i++ )
+		{
+			System.arraycopy( matrix[ i ], 0, a[ i ], 0, n );
+			a[ i ][ n + i ] = 1.;
+		}
+		for ( int c = 0; c < n; c++ )
+		{
+			int pivot = c;
+			for ( int i = c + 1; i < n; i++ )
+				if ( Math.abs( a[ i ][ c ] ) > Math.abs( a[ pivot ][ c ] ) )
+					pivot = i;
+			final double[] tmp = a[ c ];
+			a[ c ] = a[ pivot ];
+			a[ pivot ] = tmp;
+			final double v = a[ c ][ c ];
+			for ( int j = 0; j < 2 * n; j++ )
+				a[ c ][ j ] /= v;
+			for ( int i = 0; i < n; i++ )
+			{
+				if ( i == c )
+					continue;
+				final double f = a[ i ][ c ];
+				for ( int j = 0; j < 2 * n; j++ )
+					a[ i ][ j ] -= f * a[ c ][ j ];
+			}
+		}
+		final double[][] inverse = new double[ n ][ n ];
+		for ( int i = 0; i < n; i++ )
+			System.arraycopy( a[ i ], n, inverse[ i ], 0, n );
+		return inverse;
+	}
+}
@@ -0,0 +1,109 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.detection.DogDetector;
+import fiji.plugin.trackmate.detection.LogDetector;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+/**
+ * Benchmarks the LoG and DoG detectors on one synthetic frame.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+public class DetectorBenchmark
+{
+
+	@Param( { "2", "3" } )
+	public int nDims;
+
+	@Param( { "1", "4" } )
+	public int numThreads;
+
+	private ArrayImg< UnsignedShortType, ShortArray > img;
+
+	private double[] calibration;
+
+	private double radius;
+
+	@Setup
+	public void setup()
+	{
+		final SyntheticDataGenerator.Parameters p = new SyntheticDataGenerator.Parameters();
+		p.nFrames = 1;
+		if ( nDims == 3 )
+		{
+			p.width = 256;
+			p.height = 256;
+			p.depth = 32;
+			p.nParticles = 500;
+		}
+		else
+		{
+			p.width = 1024;
+			p.height = 1024;
+			p.nParticles = 2000;
+		}
+		final SyntheticDataGenerator generator = new SyntheticDataGenerator( p );
+		img = generator.renderFrame( generator.generateModel(), 0 );
+		calibration = new double[] { 1., 1., 1. };
+		radius = p.radius;
+	}
+
+	@Benchmark
+	public List< Spot > log()
+	{
+		return run( new LogDetector<>( img, img, calibration, radius, 0., true, false ) );
+	}
+
+	@Benchmark
+	public List< Spot > dog()
+	{
+		return run( new DogDetector<>( img, img, calibration, radius, 0., true, false ) );
+	}
+
+	private List< Spot > run( final LogDetector< UnsignedShortType > detector )
+	{
+		detector.setNumThreads( numThreads );
+		if ( !detector.checkInput() || !detector.process() )
+			throw new IllegalStateException( detector.getErrorMessage() );
+		return detector.getResult();
+	}
+}
@@ -0,0 +1,98 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Settings;
+import fiji.plugin.trackmate.TrackMate;
+import ij.ImagePlus;
+
+/**
+ * Benchmarks the computation of all the spot, edge and track features on a
+ * synthetic movie and its ground-truth tracks.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+public class FeatureBenchmark
+{
+
+	@Param( { "200", "2000" } )
+	public int nParticles;
+
+	@Param( { "1", "4" } )
+	public int numThreads;
+
+	private TrackMate trackmate;
+
+	@Setup
+	public void setup()
+	{
+		final SyntheticDataGenerator.Parameters p = new SyntheticDataGenerator.Parameters();
+		p.nFrames = 20;
+		p.nParticles = nParticles;
+		p.width = ( int ) Math.sqrt( 1300. * nParticles );
+		p.height = p.width;
+		p.pDivision = 0.01;
+		p.pBlink = 0.02;
+		final SyntheticDataGenerator generator = new SyntheticDataGenerator( p );
+		final Model model = generator.generateModel();
+		final ImagePlus imp = generator.renderMovie( model );
+
+		final Settings settings = new Settings();
+		settings.setFrom( imp );
+		settings.addAllAnalyzers();
+		trackmate = new TrackMate( model, settings );
+		trackmate.setNumThreads( numThreads );
+	}
+
+	@Benchmark
+	public boolean spotFeatures()
+	{
+		return trackmate.computeSpotFeatures( false );
+	}
+
+	@Benchmark
+	public boolean edgeFeatures()
+	{
+		return trackmate.computeEdgeFeatures( false );
+	}
+
+	@Benchmark
+	public boolean trackFeatures()
+	{
+		return trackmate.computeTrackFeatures( false );
+	}
+}
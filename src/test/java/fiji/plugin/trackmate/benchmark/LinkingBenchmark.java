@@ -0,0 +1,170 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.tracking.sparselap.costfunction.SquareDistCostFunction;
+import fiji.plugin.trackmate.tracking.sparselap.costmatrix.JaqamanLinkingCostMatrixCreator;
+import fiji.plugin.trackmate.tracking.sparselap.linker.JaqamanLinker;
+import fiji.plugin.trackmate.tracking.sparselap.linker.LAPJV;
+import fiji.plugin.trackmate.tracking.sparselap.linker.SparseCostMatrix;
+import net.imglib2.util.Util;
+
+/**
+ * Benchmarks the frame-to-frame linking step of the LAP tracker: the creation
+ * of the sparse cost matrix, the LAPJV solver alone on the complete cost
+ * matrix, and both together through the {@link JaqamanLinker}.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+public class LinkingBenchmark
+{
+
+	private static final double MAX_DISTANCE = 15.;
+
+	private static final double ALTERNATIVE_COST_FACTOR = 1.05;
+
+	private static final double PERCENTILE = 1.;
+
+	@Param( { "1000", "10000" } )
+	public int nParticles;
+
+	private List< Spot > sources;
+
+	private List< Spot > targets;
+
+	private SparseCostMatrix full;
+
+	@Setup
+	public void setup()
+	{
+		final SyntheticDataGenerator.Parameters p = new SyntheticDataGenerator.Parameters();
+		p.nFrames = 2;
+		p.nParticles = nParticles;
+		// Keep the density constant.
+		p.width = ( int ) Math.sqrt( 1300. * nParticles );
+		p.height = p.width;
+		final Model model = new SyntheticDataGenerator( p ).generateModel();
+
+		sources = new ArrayList<>();
+		model.getSpots().iterable( 0, false ).forEach( sources::add );
+		targets = new ArrayList<>();
+		model.getSpots().iterable( 1, false ).forEach( targets::add );
+		full = completeCostMatrix( createCostMatrix() );
+	}
+
+	@Benchmark
+	public SparseCostMatrix costMatrix()
+	{
+		final JaqamanLinkingCostMatrixCreator< Spot, Spot > creator = createCostMatrix();
+		return creator.getResult();
+	}
+
+	@Benchmark
+	public int[] lapjv()
+	{
+		final LAPJV solver = new LAPJV( full );
+		if ( !solver.checkInput() || !solver.process() )
+			throw new IllegalStateException( solver.getErrorMessage() );
+		return solver.getResult();
+	}
+
+	@Benchmark
+	public Map< Spot, Spot > linker()
+	{
+		final JaqamanLinker< Spot, Spot > linker = new JaqamanLinker<>( creator() );
+		if ( !linker.checkInput() || !linker.process() )
+			throw new IllegalStateException( linker.getErrorMessage() );
+		return linker.getResult();
+	}
+
+	private JaqamanLinkingCostMatrixCreator< Spot, Spot > creator()
+	{
+		return new JaqamanLinkingCostMatrixCreator<>( sources, targets, new SquareDistCostFunction(),
+				MAX_DISTANCE * MAX_DISTANCE, ALTERNATIVE_COST_FACTOR, PERCENTILE );
+	}
+
+	private JaqamanLinkingCostMatrixCreator< Spot, Spot > createCostMatrix()
+	{
+		final JaqamanLinkingCostMatrixCreator< Spot, Spot > creator = creator();
+		if ( !creator.checkInput() || !creator.process() )
+			throw new IllegalStateException( creator.getErrorMessage() );
+		return creator;
+	}
+
+	/**
+	 * Same as in {@link JaqamanLinker#process()}.
+	 */
+	private static SparseCostMatrix completeCostMatrix( final JaqamanLinkingCostMatrixCreator< Spot, Spot > creator )
+	{
+		final SparseCostMatrix tl = creator.getResult();
+		final List< Spot > rows = creator.getSourceList();
+		final List< Spot > cols = creator.getTargetList();
+		final int nRows = tl.getNRows();
+		final int nCols = tl.getNCols();
+
+		final double[] cctr = new double[ nRows ];
+		final int[] kktr = new int[ nRows ];
+		for ( int i = 0; i < nRows; i++ )
+		{
+			kktr[ i ] = i;
+			cctr[ i ] = creator.getAlternativeCostForSource( rows.get( i ) );
+		}
+		final int[] numbertr = new int[ nRows ];
+		Arrays.fill( numbertr, 1 );
+		final SparseCostMatrix tr = new SparseCostMatrix( cctr, kktr, numbertr, nRows );
+
+		final double[] ccbl = new double[ nCols ];
+		final int[] kkbl = new int[ nCols ];
+		for ( int i = 0; i < nCols; i++ )
+		{
+			kkbl[ i ] = i;
+			ccbl[ i ] = creator.getAlternativeCostForTarget( cols.get( i ) );
+		}
+		final int[] numberbl = new int[ nCols ];
+		Arrays.fill( numberbl, 1 );
+		final SparseCostMatrix bl = new SparseCostMatrix( ccbl, kkbl, numberbl, nCols );
+
+		final SparseCostMatrix br = tl.transpose();
+		br.fillWith( Math.min( Util.min( ccbl ), Util.min( cctr ) ) );
+		return ( tl.hcat( tr ) ).vcat( bl.hcat( br ) );
+	}
+}
@@ -0,0 +1,116 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.benchmark;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings;
+import fiji.plugin.trackmate.visualization.hyperstack.SpotOverlay;
+import fiji.plugin.trackmate.visualization.hyperstack.TrackOverlay;
+import ij.ImagePlus;
+import ij.process.ByteProcessor;
+
+/**
+ * Benchmarks painting the spot and track overlays of a synthetic model in an
+ * offscreen image, at 100% and zoomed out on the whole image. Run with
+ * <code>-Djava.awt.headless=true</code>.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+public class OverlayRenderingBenchmark
+{
+
+	private static final int VIEW_SIZE = 1024;
+
+	@Param( { "1000", "20000" } )
+	public int nParticles;
+
+	@Param( { "1.0", "0.25" } )
+	public double magnification;
+
+	private SpotOverlay spotOverlay;
+
+	private TrackOverlay trackOverlay;
+
+	private BufferedImage image;
+
+	private int frame;
+
+	private int xcorner;
+
+	private int ycorner;
+
+	@Setup
+	public void setup()
+	{
+		final SyntheticDataGenerator.Parameters p = new SyntheticDataGenerator.Parameters();
+		p.nFrames = 20;
+		p.nParticles = nParticles;
+		p.width = ( int ) Math.sqrt( 1300. * nParticles );
+		p.height = p.width;
+		p.pDivision = 0.01;
+		final Model model = new SyntheticDataGenerator( p ).generateModel();
+
+		final ImagePlus imp = new ImagePlus( "Benchmark", new ByteProcessor( p.width, p.height ) );
+		final DisplaySettings ds = DisplaySettings.defaultStyle().copy();
+		spotOverlay = new SpotOverlay( model, imp, ds );
+		trackOverlay = new TrackOverlay( model, imp, ds );
+		image = new BufferedImage( VIEW_SIZE, VIEW_SIZE, BufferedImage.TYPE_INT_ARGB );
+		frame = p.nFrames / 2;
+		// Centered view.
+		xcorner = Math.max( 0, ( int ) ( p.width / 2 - VIEW_SIZE / ( 2 * magnification ) ) );
+		ycorner = Math.max( 0, ( int ) ( p.height / 2 - VIEW_SIZE / ( 2 * magnification ) ) );
+	}
+
+	@Benchmark
+	public BufferedImage spots()
+	{
+		final Graphics2D g2d = image.createGraphics();
+		spotOverlay.drawFrame( g2d, frame, 0., xcorner, ycorner, magnification, VIEW_SIZE, VIEW_SIZE );
+		g2d.dispose();
+		return image;
+	}
+
+	@Benchmark
+	public BufferedImage tracks()
+	{
+		final Graphics2D g2d = image.createGraphics();
+		trackOverlay.drawFrame( g2d, frame, 0., xcorner, ycorner, magnification, VIEW_SIZE, VIEW_SIZE );
+		g2d.dispose();
+		return image;
+	}
+}
@@ -0,0 +1,455 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ShortProcessor;
+import net.imglib2.Cursor;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+/**
+ * Generates synthetic, reproducible datasets: a ground-truth model of
+ * particles moving in 2D or 3D, and the images of these particles.
+ * <p>
+ * Particles undergo Brownian or directed motion, and bounce on the image
+ * borders. They can divide (a spot linked to 2 spots in the next frame),
+ * merge (2 spots linked to 1 spot in the next frame) and blink (no spot for
+ * one or several frames, the track then spans a gap). All the randomness
+ * comes from the seed in the {@link Parameters}: the same parameters always
+ * give the same spot positions, links and pixel values.
+ * <p>
+ * Particles are rendered as Gaussian blobs with a standard deviation of
+ * <code>radius / sqrt(nDims)</code> on a constant background, with additive
+ * Gaussian noise. The frame interval and the pixel size are 1.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+public class SyntheticDataGenerator
+{
+
+	public enum Motion
+	{
+		BROWNIAN, DIRECTED;
+	}
+
+	/**
+	 * The parameters of the generator. Distances are in pixels and times in
+	 * frames.
+	 */
+	public static class Parameters
+	{
+
+		public int width = 512;
+
+		public int height = 512;
+
+		/** Depth of the image. 1 for 2D. */
+		public int depth = 1;
+
+		public int nFrames = 50;
+
+		/** Number of particles in the first frame. */
+		public int nParticles = 200;
+
+		public double radius = 3.;
+
+		public Motion motion = Motion.BROWNIAN;
+
+		/** Standard deviation of the random displacement per frame, along each axis. */
+		public double diffusion = 1.5;
+
+		/** Displacement per frame, for directed motion. */
+		public double speed = 2.;
+
+		/** Probability for a particle to divide at each frame. */
+		public double pDivision = 0.;
+
+		/** Probability for a particle to merge with a close neighbor at each frame. */
+		public double pMerge = 0.;
+
+		/** Probability for a particle to be invisible in a frame. */
+		public double pBlink = 0.;
+
+		/** Maximal number of consecutive frames a particle can be invisible. */
+		public int maxBlinkFrames = 2;
+
+		public double amplitude = 1000.;
+
+		public double background = 100.;
+
+		/** Standard deviation of the additive Gaussian noise. */
+		public double noise = 20.;
+
+		public long seed = 1l;
+
+		public int nDims()
+		{
+			return depth > 1 ? 3 : 2;
+		}
+	}
+
+	private final Parameters p;
+
+	public SyntheticDataGenerator( final Parameters parameters )
+	{
+		this.p = parameters;
+	}
+
+	/**
+	 * Generates the ground-truth model.
+	 *
+	 * @return a new model.
+	 */
+	public Model generateModel()
+	{
+		final Random ran = new Random( p.seed );
+		final Model model = new Model();
+		List< Particle > alive = new ArrayList<>( p.nParticles );
+		for ( int i = 0; i < p.nParticles; i++ )
+			alive.add( new Particle( randomPosition( ran ), randomVelocity( ran ), Collections.emptyList() ) );
+
+		model.beginUpdate();
+		try
+		{
+			for ( int t = 0; t < p.nFrames; t++ )
+			{
+				if ( t > 0 )
+					alive = step( alive, ran );
+
+				for ( final Particle particle : alive )
+				{
+					if ( ran.nextDouble() < p.pBlink && particle.nBlinks < p.maxBlinkFrames )
+					{
+						particle.nBlinks++;
+						continue;
+					}
+
+					final Spot spot = new Spot( particle.pos[ 0 ], particle.pos[ 1 ], particle.pos[ 2 ], p.radius, p.amplitude );
+					spot.putFeature( Spot.POSITION_T, Double.valueOf( t ) );
+					model.addSpotTo( spot, Integer.valueOf( t ) );
+					for ( final Spot parent : particle.parents )
+						model.addEdge( parent, spot, spot.squareDistanceTo( parent ) );
+
+					particle.parents = Collections.singletonList( spot );
+					particle.nBlinks = 0;
+				}
+			}
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+		return model;
+	}
+
+	/**
+	 * Moves the particles by one frame and applies divisions and merges.
+	 */
+	private List< Particle > step( final List< Particle > alive, final Random ran )
+	{
+		final List< Particle > next = new ArrayList<>( alive.size() );
+		final double mergeRadius = 4. * p.radius;
+		for ( int i = 0; i < alive.size(); i++ )
+		{
+			final Particle particle = alive.get( i );
+			if ( particle.consumed )
+				continue;
+
+			if ( ran.nextDouble() < p.pDivision )
+			{
+				final double[] u = randomUnitVector( ran );
+				final double[] pos1 = new double[ 3 ];
+				final double[] pos2 = new double[ 3 ];
+				for ( int d = 0; d < 3; d++ )
+				{
+					pos1[ d ] = particle.pos[ d ] + p.radius * u[ d ];
+					pos2[ d ] = particle.pos[ d ] - p.radius * u[ d ];
+				}
+				reflect( pos1, null );
+				reflect( pos2, null );
+				final Particle d1 = new Particle( pos1, particle.vel.clone(), particle.parents );
+				final Particle d2 = new Particle( pos2, randomVelocity( ran ), particle.parents );
+				d1.nBlinks = particle.nBlinks;
+				d2.nBlinks = particle.nBlinks;
+				next.add( d1 );
+				next.add( d2 );
+				continue;
+			}
+
+			if ( ran.nextDouble() < p.pMerge )
+			{
+				// Merge with the closest particle not processed yet.
+				Particle partner = null;
+				double minD2 = mergeRadius * mergeRadius;
+				for ( int j = i + 1; j < alive.size(); j++ )
+				{
+					final Particle other = alive.get( j );
+					if ( other.consumed )
+						continue;
+					final double d2 = sqDist( particle.pos, other.pos );
+					if ( d2 < minD2 )
+					{
+						minD2 = d2;
+						partner = other;
+					}
+				}
+				if ( null != partner )
+				{
+					partner.consumed = true;
+					final double[] pos = new double[ 3 ];
+					final double[] vel = new double[ 3 ];
+					for ( int d = 0; d < 3; d++ )
+					{
+						pos[ d ] = 0.5 * ( particle.pos[ d ] + partner.pos[ d ] );
+						vel[ d ] = 0.5 * ( particle.vel[ d ] + partner.vel[ d ] );
+					}
+					final List< Spot > parents = new ArrayList<>( particle.parents );
+					parents.addAll( partner.parents );
+					final Particle merged = new Particle( pos, vel, parents );
+					merged.nBlinks = Math.max( particle.nBlinks, partner.nBlinks );
+					next.add( merged );
+					continue;
+				}
+			}
+
+			for ( int d = 0; d < p.nDims(); d++ )
+				particle.pos[ d ] += particle.vel[ d ] + p.diffusion * ran.nextGaussian();
+			reflect( particle.pos, particle.vel );
+			next.add( particle );
+		}
+		return next;
+	}
+
+	/**
+	 * Renders the spots of the specified frame of a model.
+	 *
+	 * @param model
+	 *            the model, typically generated by {@link #generateModel()}.
+	 * @param frame
+	 *            the frame to render.
+	 * @return a new 16-bit image, 2D or 3D.
+	 */
+	public ArrayImg< UnsignedShortType, ShortArray > renderFrame( final Model model, final int frame )
+	{
+		final int nDims = p.nDims();
+		final long[] dims = ( nDims == 3 )
+				? new long[] { p.width, p.height, p.depth }
+				: new long[] { p.width, p.height };
+		final double[] values = new double[ p.width * p.height * p.depth ];
+		final SpotCollection spots = model.getSpots();
+		final double sigma = p.radius / Math.sqrt( nDims );
+		final int halfSize = ( int ) Math.ceil( 3. * sigma );
+		final double[] pos = new double[ 3 ];
+		for ( final Spot spot : spots.iterable( frame, false ) )
+		{
+			spot.localize( pos );
+			final double amplitude = spot.getFeature( Spot.QUALITY ).doubleValue();
+			final int zmin = ( nDims == 3 ) ? Math.max( 0, ( int ) Math.round( pos[ 2 ] ) - halfSize ) : 0;
+			final int zmax = ( nDims == 3 ) ? Math.min( p.depth - 1, ( int ) Math.round( pos[ 2 ] ) + halfSize ) : 0;
+			final int ymin = Math.max( 0, ( int ) Math.round( pos[ 1 ] ) - halfSize );
+			final int ymax = Math.min( p.height - 1, ( int ) Math.round( pos[ 1 ] ) + halfSize );
+			final int xmin = Math.max( 0, ( int ) Math.round( pos[ 0 ] ) - halfSize );
+			final int xmax = Math.min( p.width - 1, ( int ) Math.round( pos[ 0 ] ) + halfSize );
+			for ( int z = zmin; z <= zmax; z++ )
+			{
+				final double dz = ( nDims == 3 ) ? z - pos[ 2 ] : 0.;
+				for ( int y = ymin; y <= ymax; y++ )
+				{
+					final double dy = y - pos[ 1 ];
+					for ( int x = xmin; x <= xmax; x++ )
+					{
+						final double dx = x - pos[ 0 ];
+						final double r2 = dx * dx + dy * dy + dz * dz;
+						values[ x + p.width * ( y + p.height * z ) ] += amplitude * Math.exp( -r2 / ( 2. * sigma * sigma ) );
+					}
+				}
+			}
+		}
+
+		final Random ran = new Random( 31 * p.seed + frame );
+		final ArrayImg< UnsignedShortType, ShortArray > img = ArrayImgs.unsignedShorts( dims );
+		final Cursor< UnsignedShortType > cursor = img.cursor();
+		int i = 0;
+		while ( cursor.hasNext() )
+		{
+			final double val = p.background + values[ i++ ] + p.noise * ran.nextGaussian();
+			cursor.next().set( ( int ) Math.max( 0, Math.min( 65535, Math.round( val ) ) ) );
+		}
+		return img;
+	}
+
+	/**
+	 * Renders all the frames of a model in a hyperstack.
+	 *
+	 * @param model
+	 *            the model, typically generated by {@link #generateModel()}.
+	 * @return a new {@link ImagePlus}.
+	 */
+	public ImagePlus renderMovie( final Model model )
+	{
+		final ImageStack stack = new ImageStack( p.width, p.height );
+		final int planeSize = p.width * p.height;
+		for ( int t = 0; t < p.nFrames; t++ )
+		{
+			final short[] pixels = renderFrame( model, t ).update( null ).getCurrentStorageArray();
+			for ( int z = 0; z < p.depth; z++ )
+			{
+				final short[] plane = new short[ planeSize ];
+				System.arraycopy( pixels, z * planeSize, plane, 0, planeSize );
+				stack.addSlice( new ShortProcessor( p.width, p.height, plane, null ) );
+			}
+		}
+		final ImagePlus imp = new ImagePlus( "Synthetic", stack );
+		imp.setDimensions( 1, p.depth, p.nFrames );
+		imp.setOpenAsHyperStack( true );
+		imp.getCalibration().frameInterval = 1.;
+		return imp;
+	}
+
+	/**
+	 * Returns a copy of the spots of a model, without links, to be given to
+	 * a tracker.
+	 *
+	 * @param model
+	 *            the model.
+	 * @return a new {@link SpotCollection}, with all the spots visible.
+	 */
+	public static SpotCollection unlinkedSpots( final Model model )
+	{
+		final SpotCollection source = model.getSpots();
+		final SpotCollection spots = new SpotCollection();
+		for ( final Integer frame : source.keySet() )
+			for ( final Spot spot : source.iterable( frame, false ) )
+				spots.add( new Spot( spot ), frame );
+		spots.setVisible( true );
+		return spots;
+	}
+
+	/*
+	 * PRIVATE METHODS.
+	 */
+
+	private double[] randomPosition( final Random ran )
+	{
+		return new double[] {
+				ran.nextDouble() * ( p.width - 1 ),
+				ran.nextDouble() * ( p.height - 1 ),
+				( p.nDims() == 3 ) ? ran.nextDouble() * ( p.depth - 1 ) : 0. };
+	}
+
+	private double[] randomVelocity( final Random ran )
+	{
+		final double[] vel = new double[ 3 ];
+		if ( p.motion == Motion.DIRECTED )
+		{
+			final double[] u = randomUnitVector( ran );
+			for ( int d = 0; d < 3; d++ )
+				vel[ d ] = p.speed * u[ d ];
+		}
+		return vel;
+	}
+
+	private double[] randomUnitVector( final Random ran )
+	{
+		final double[] u = new double[ 3 ];
+		double norm = 0.;
+		while ( norm < 1e-6 )
+		{
+			norm = 0.;
+			for ( int d = 0; d < p.nDims(); d++ )
+			{
+				u[ d ] = ran.nextGaussian();
+				norm += u[ d ] * u[ d ];
+			}
+			norm = Math.sqrt( norm );
+		}
+		for ( int d = 0; d < p.nDims(); d++ )
+			u[ d ] /= norm;
+		return u;
+	}
+
+	/**
+	 * Bounces the specified position on the image borders, and flips the
+	 * velocity accordingly if it is not <code>null</code>.
+	 */
+	private void reflect( final double[] pos, final double[] vel )
+	{
+		final double[] max = new double[] { p.width - 1, p.height - 1, p.depth - 1 };
+		for ( int d = 0; d < p.nDims(); d++ )
+		{
+			if ( pos[ d ] < 0. )
+			{
+				pos[ d ] = Math.min( max[ d ], -pos[ d ] );
+				if ( null != vel )
+					vel[ d ] = -vel[ d ];
+			}
+			else if ( pos[ d ] > max[ d ] )
+			{
+				pos[ d ] = Math.max( 0., 2. * max[ d ] - pos[ d ] );
+				if ( null != vel )
+					vel[ d ] = -vel[ d ];
+			}
+		}
+	}
+
+	private static double sqDist( final double[] a, final double[] b )
+	{
+		double d2 = 0.;
+		for ( int d = 0; d < a.length; d++ )
+			d2 += ( a[ d ] - b[ d ] ) * ( a[ d ] - b[ d ] );
+		return d2;
+	}
+
+	private static final class Particle
+	{
+
+		private final double[] pos;
+
+		private final double[] vel;
+
+		/** The spots the next spot of this particle will be linked to. */
+		private List< Spot > parents;
+
+		private int nBlinks;
+
+		private boolean consumed;
+
+		private Particle( final double[] pos, final double[] vel, final List< Spot > parents )
+		{
+			this.pos = pos;
+			this.vel = vel;
+			this.parents = parents;
+		}
+	}
+}
@@ -0,0 +1,170 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.benchmark;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.TrackModel;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+public class SyntheticDataGeneratorTest
+{
+
+	@Test
+	public void testDeterministic()
+	{
+		final SyntheticDataGenerator.Parameters p = events();
+		final Model m1 = new SyntheticDataGenerator( p ).generateModel();
+		final Model m2 = new SyntheticDataGenerator( p ).generateModel();
+		assertEquals( m1.getTrackModel().edgeSet().size(), m2.getTrackModel().edgeSet().size() );
+		for ( int t = 0; t < p.nFrames; t++ )
+			assertArrayEquals( "Spot positions differ in frame " + t, sortedX( m1, t ), sortedX( m2, t ), 0. );
+
+		final SyntheticDataGenerator generator = new SyntheticDataGenerator( p );
+		final short[] i1 = generator.renderFrame( m1, 3 ).update( null ).getCurrentStorageArray();
+		final short[] i2 = generator.renderFrame( m2, 3 ).update( null ).getCurrentStorageArray();
+		assertArrayEquals( i1, i2 );
+	}
+
+	@Test
+	public void testNoEvents()
+	{
+		final SyntheticDataGenerator.Parameters p = new SyntheticDataGenerator.Parameters();
+		p.nParticles = 50;
+		p.nFrames = 10;
+		final Model model = new SyntheticDataGenerator( p ).generateModel();
+		final TrackModel tm = model.getTrackModel();
+
+		assertEquals( p.nParticles, tm.nTracks( false ) );
+		assertEquals( p.nParticles * ( p.nFrames - 1 ), tm.edgeSet().size() );
+		for ( int t = 0; t < p.nFrames; t++ )
+			assertEquals( p.nParticles, model.getSpots().getNSpots( t, false ) );
+		for ( final DefaultWeightedEdge edge : tm.edgeSet() )
+			assertEquals( 1, frameSpan( tm, edge ) );
+	}
+
+	@Test
+	public void testEvents()
+	{
+		final SyntheticDataGenerator.Parameters p = events();
+		final Model model = new SyntheticDataGenerator( p ).generateModel();
+		final TrackModel tm = model.getTrackModel();
+
+		boolean division = false;
+		boolean merge = false;
+		for ( final Spot spot : model.getSpots().iterable( false ) )
+		{
+			final double t = spot.getFeature( Spot.POSITION_T ).doubleValue();
+			int nBefore = 0;
+			int nAfter = 0;
+			for ( final DefaultWeightedEdge edge : tm.edgesOf( spot ) )
+			{
+				final Spot source = tm.getEdgeSource( edge );
+				final Spot other = ( source == spot ) ? tm.getEdgeTarget( edge ) : source;
+				if ( other.getFeature( Spot.POSITION_T ).doubleValue() < t )
+					nBefore++;
+				else
+					nAfter++;
+			}
+			division |= nAfter == 2;
+			merge |= nBefore == 2;
+		}
+		assertTrue( "Expected at least one division.", division );
+		assertTrue( "Expected at least one merge.", merge );
+
+		int maxSpan = 0;
+		for ( final DefaultWeightedEdge edge : tm.edgeSet() )
+			maxSpan = Math.max( maxSpan, frameSpan( tm, edge ) );
+		assertTrue( "Expected at least one gap.", maxSpan > 1 );
+		assertTrue( maxSpan <= p.maxBlinkFrames + 1 );
+	}
+
+	@Test
+	public void testRender()
+	{
+		final SyntheticDataGenerator.Parameters p = new SyntheticDataGenerator.Parameters();
+		p.width = 128;
+		p.height = 96;
+		p.nParticles = 10;
+		p.nFrames = 2;
+		p.noise = 0.;
+		final SyntheticDataGenerator generator = new SyntheticDataGenerator( p );
+		final Model model = generator.generateModel();
+		final ArrayImg< UnsignedShortType, ShortArray > img = generator.renderFrame( model, 1 );
+		assertEquals( p.width, img.dimension( 0 ) );
+		assertEquals( p.height, img.dimension( 1 ) );
+
+		final RandomAccess< UnsignedShortType > ra = img.randomAccess();
+		for ( final Spot spot : model.getSpots().iterable( 1, false ) )
+		{
+			ra.setPosition( Math.round( spot.getDoublePosition( 0 ) ), 0 );
+			ra.setPosition( Math.round( spot.getDoublePosition( 1 ) ), 1 );
+			assertTrue( ra.get().get() > p.background + 0.5 * p.amplitude );
+		}
+		ra.setPosition( new long[] { 0, 0 } );
+		assertTrue( ra.get().get() >= p.background );
+	}
+
+	private static SyntheticDataGenerator.Parameters events()
+	{
+		final SyntheticDataGenerator.Parameters p = new SyntheticDataGenerator.Parameters();
+		p.width = 256;
+		p.height = 256;
+		p.nParticles = 100;
+		p.nFrames = 30;
+		p.motion = SyntheticDataGenerator.Motion.DIRECTED;
+		p.pDivision = 0.02;
+		p.pMerge = 0.05;
+		p.pBlink = 0.05;
+		p.seed = 42l;
+		return p;
+	}
+
+	private static double[] sortedX( final Model model, final int frame )
+	{
+		final double[] xs = new double[ model.getSpots().getNSpots( frame, false ) ];
+		int i = 0;
+		for ( final Spot spot : model.getSpots().iterable( frame, false ) )
+			xs[ i++ ] = spot.getDoublePosition( 0 );
+		Arrays.sort( xs );
+		return xs;
+	}
+
+	private static int frameSpan( final TrackModel tm, final DefaultWeightedEdge edge )
+	{
+		final double t1 = tm.getEdgeSource( edge ).getFeature( Spot.POSITION_T ).doubleValue();
+		final double t2 = tm.getEdgeTarget( edge ).getFeature( Spot.POSITION_T ).doubleValue();
+		return ( int ) Math.round( Math.abs( t2 - t1 ) );
+	}
+}
@@ -0,0 +1,73 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.benchmark;
+
+import java.io.File;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Runs all the JMH benchmarks of this package and writes the results to a
+ * JSON file.
+ * <p>
+ * From Maven: <code>mvn test-compile exec:exec -Pbenchmark</code>. The path
+ * to the result file can be given as first argument, or with
+ * <code>-Dbenchmark.results=...</code> from Maven. A regular expression
+ * restricting the benchmarks to run can be given as second argument.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+public class TrackMateBenchmarks
+{
+
+	private static final String DEFAULT_RESULT_FILE = "target/trackmate-benchmarks.json";
+
+	public static void main( final String[] args ) throws RunnerException
+	{
+		final String results = ( args.length > 0 ) ? args[ 0 ] : DEFAULT_RESULT_FILE;
+		final String include = ( args.length > 1 )
+				? args[ 1 ]
+				: TrackMateBenchmarks.class.getPackage().getName().replace( ".", "\\." ) + "\\..*";
+
+		final File parent = new File( results ).getAbsoluteFile().getParentFile();
+		if ( null != parent )
+			parent.mkdirs();
+
+		final Options options = new OptionsBuilder()
+				.include( include )
+				.forks( 1 )
+				.jvmArgsAppend( "-Djava.awt.headless=true" )
+				.warmupIterations( 3 )
+				.warmupTime( TimeValue.seconds( 2 ) )
+				.measurementIterations( 5 )
+				.measurementTime( TimeValue.seconds( 2 ) )
+				.resultFormat( ResultFormatType.JSON )
+				.result( results )
+				.build();
+		new Runner( options ).run();
+	}
+}
@@ -0,0 +1,129 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.benchmark;
+
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_TRACK_MERGING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_TRACK_SPLITTING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_MAX_DISTANCE;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.benchmark.SyntheticDataGenerator.Motion;
+import fiji.plugin.trackmate.tracking.LAPUtils;
+import fiji.plugin.trackmate.tracking.SpotTracker;
+import fiji.plugin.trackmate.tracking.kalman.KalmanTracker;
+import fiji.plugin.trackmate.tracking.kdtree.NearestNeighborTracker;
+import fiji.plugin.trackmate.tracking.overlap.OverlapTracker;
+import fiji.plugin.trackmate.tracking.overlap.OverlapTracker.IoUCalculation;
+import fiji.plugin.trackmate.tracking.sparselap.SparseLAPTracker;
+
+/**
+ * Benchmarks the trackers on the unlinked spots of a synthetic dataset with
+ * directed motion, divisions, merges and blinking.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+public class TrackerBenchmark
+{
+
+	private static final double MAX_DISTANCE = 15.;
+
+	@Param( { "500", "5000" } )
+	public int nParticles;
+
+	@Param( { "1", "4" } )
+	public int numThreads;
+
+	private SpotCollection spots;
+
+	@Setup
+	public void setup()
+	{
+		final SyntheticDataGenerator.Parameters p = new SyntheticDataGenerator.Parameters();
+		p.nFrames = 50;
+		p.nParticles = nParticles;
+		p.width = ( int ) Math.sqrt( 1300. * nParticles );
+		p.height = p.width;
+		p.motion = Motion.DIRECTED;
+		p.diffusion = 0.5;
+		p.pDivision = 0.005;
+		p.pMerge = 0.005;
+		p.pBlink = 0.02;
+		spots = SyntheticDataGenerator.unlinkedSpots( new SyntheticDataGenerator( p ).generateModel() );
+	}
+
+	@Benchmark
+	public SimpleWeightedGraph< Spot, DefaultWeightedEdge > kalman()
+	{
+		return run( new KalmanTracker( spots, MAX_DISTANCE, 2, MAX_DISTANCE ) );
+	}
+
+	@Benchmark
+	public SimpleWeightedGraph< Spot, DefaultWeightedEdge > overlap()
+	{
+		return run( new OverlapTracker( spots, IoUCalculation.FAST, 0.3, 1.2 ) );
+	}
+
+	@Benchmark
+	public SimpleWeightedGraph< Spot, DefaultWeightedEdge > nearestNeighbor()
+	{
+		final Map< String, Object > settings = new HashMap<>();
+		settings.put( KEY_LINKING_MAX_DISTANCE, Double.valueOf( MAX_DISTANCE ) );
+		return run( new NearestNeighborTracker( spots, settings ) );
+	}
+
+	@Benchmark
+	public SimpleWeightedGraph< Spot, DefaultWeightedEdge > sparseLAP()
+	{
+		final Map< String, Object > settings = LAPUtils.getDefaultLAPSettingsMap();
+		settings.put( KEY_LINKING_MAX_DISTANCE, Double.valueOf( MAX_DISTANCE ) );
+		settings.put( KEY_ALLOW_TRACK_SPLITTING, Boolean.TRUE );
+		settings.put( KEY_ALLOW_TRACK_MERGING, Boolean.TRUE );
+		return run( new SparseLAPTracker( spots, settings ) );
+	}
+
+	private SimpleWeightedGraph< Spot, DefaultWeightedEdge > run( final SpotTracker tracker )
+	{
+		tracker.setNumThreads( numThreads );
+		if ( !tracker.checkInput() || !tracker.process() )
+			throw new IllegalStateException( tracker.getErrorMessage() );
+		return tracker.getResult();
+	}
+}
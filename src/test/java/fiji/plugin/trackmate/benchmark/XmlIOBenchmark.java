@@ -0,0 +1,121 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Settings;
+import fiji.plugin.trackmate.TrackMate;
+import fiji.plugin.trackmate.io.TmXmlReader;
+import fiji.plugin.trackmate.io.TmXmlWriter;
+
+/**
+ * Benchmarks writing and reading a TrackMate XML file, with the features of
+ * a synthetic model.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+public class XmlIOBenchmark
+{
+
+	@Param( { "1000", "10000" } )
+	public int nParticles;
+
+	private Model model;
+
+	private File readFile;
+
+	private File writeFile;
+
+	@Setup( Level.Trial )
+	public void setup() throws IOException
+	{
+		final SyntheticDataGenerator.Parameters p = new SyntheticDataGenerator.Parameters();
+		p.nFrames = 20;
+		p.nParticles = nParticles;
+		p.width = ( int ) Math.sqrt( 1300. * nParticles );
+		p.height = p.width;
+		p.pDivision = 0.01;
+		model = new SyntheticDataGenerator( p ).generateModel();
+
+		// Edge and track features only: they do not need an image.
+		final Settings settings = new Settings();
+		settings.addAllAnalyzers();
+		final TrackMate trackmate = new TrackMate( model, settings );
+		trackmate.computeEdgeFeatures( false );
+		trackmate.computeTrackFeatures( false );
+
+		readFile = File.createTempFile( "TrackMateBenchmark-read", ".xml" );
+		readFile.deleteOnExit();
+		writeFile = File.createTempFile( "TrackMateBenchmark-write", ".xml" );
+		writeFile.deleteOnExit();
+		write( readFile );
+	}
+
+	@TearDown( Level.Trial )
+	public void tearDown()
+	{
+		readFile.delete();
+		writeFile.delete();
+	}
+
+	@Benchmark
+	public File writeXml() throws IOException
+	{
+		write( writeFile );
+		return writeFile;
+	}
+
+	@Benchmark
+	public Model readXml()
+	{
+		final TmXmlReader reader = new TmXmlReader( readFile );
+		final Model read = reader.getModel();
+		if ( !reader.isReadingOk() )
+			throw new IllegalStateException( reader.getErrorMessage() );
+		return read;
+	}
+
+	private void write( final File file ) throws IOException
+	{
+		final TmXmlWriter writer = new TmXmlWriter( file );
+		writer.appendModel( model );
+		writer.writeToFile();
+	}
+}
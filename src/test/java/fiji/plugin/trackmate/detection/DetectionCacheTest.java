@@ -0,0 +1,289 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.detection;
+
+import static fiji.plugin.trackmate.detection.DetectionTestUtils.CALIBRATION;
+import static fiji.plugin.trackmate.detection.DetectionTestUtils.RADIUS;
+import static fiji.plugin.trackmate.detection.DetectionTestUtils.assertSameSpots;
+import static fiji.plugin.trackmate.detection.DetectionTestUtils.createBlobImage;
+import static fiji.plugin.trackmate.detection.DetectorKeys.KEY_DO_MEDIAN_FILTERING;
+import static fiji.plugin.trackmate.detection.DetectorKeys.KEY_DO_SUBPIXEL_LOCALIZATION;
+import static fiji.plugin.trackmate.detection.DetectorKeys.KEY_RADIUS;
+import static fiji.plugin.trackmate.detection.DetectorKeys.KEY_TARGET_CHANNEL;
+import static fiji.plugin.trackmate.detection.DetectorKeys.KEY_THRESHOLD;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Spot;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.exception.IncompatibleTypeException;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+public class DetectionCacheTest
+{
+
+	// Most LoG qualities of the test image are between 2 and 2.7, DoG ones reach 4.6.
+	private static final double[] THRESHOLDS = new double[] { 2.4, 1., 0., -10. };
+
+	@Test
+	public void testLogMatchesFreshDetection() throws IncompatibleTypeException
+	{
+		final ArrayImg< UnsignedShortType, ShortArray > img = createBlobImage( true );
+		final DetectionCache cache = new DetectionCache( DetectionCache.DEFAULT_MAX_CANDIDATES );
+		final DetectionCache.Key key = key( 0 );
+
+		for ( final boolean subpixel : new boolean[] { true, false } )
+		{
+			for ( final double threshold : THRESHOLDS )
+			{
+				final LogDetector< UnsignedShortType > fresh = new LogDetector<>( img, img, CALIBRATION, RADIUS, threshold, subpixel, false );
+				final LogDetector< UnsignedShortType > cached = new LogDetector<>( img, img, CALIBRATION, RADIUS, threshold, subpixel, false );
+				cached.setCache( cache, key );
+				assertSameSpots( run( fresh ), run( cached ), 0. );
+			}
+		}
+		// Only the first detection filtered the image.
+		assertEquals( 1, cache.getMisses() );
+		assertEquals( 2 * THRESHOLDS.length - 1, cache.getHits() );
+		assertEquals( 1, cache.size() );
+	}
+
+	@Test
+	public void testDogMatchesFreshDetection() throws IncompatibleTypeException
+	{
+		final ArrayImg< UnsignedShortType, ShortArray > img = createBlobImage( true );
+		final DetectionCache cache = new DetectionCache( DetectionCache.DEFAULT_MAX_CANDIDATES );
+		final DetectionCache.Key key = key( 0 );
+
+		for ( final double threshold : THRESHOLDS )
+		{
+			final DogDetector< UnsignedShortType > fresh = new DogDetector<>( img, img, CALIBRATION, RADIUS, threshold, true, true );
+			final DogDetector< UnsignedShortType > cached = new DogDetector<>( img, img, CALIBRATION, RADIUS, threshold, true, true );
+			cached.setCache( cache, key );
+			assertSameSpots( run( fresh ), run( cached ), 0. );
+		}
+		assertEquals( 1, cache.getMisses() );
+	}
+
+	@Test
+	public void testSubpixelRequiresNewDetection() throws IncompatibleTypeException
+	{
+		final ArrayImg< UnsignedShortType, ShortArray > img = createBlobImage( true );
+		final DetectionCache cache = new DetectionCache( DetectionCache.DEFAULT_MAX_CANDIDATES );
+		final DetectionCache.Key key = key( 0 );
+
+		final LogDetector< UnsignedShortType > integer = new LogDetector<>( img, img, CALIBRATION, RADIUS, 1., false, false );
+		integer.setCache( cache, key );
+		run( integer );
+		assertFalse( cache.get( key, false ).hasSubpixel() );
+
+		final LogDetector< UnsignedShortType > subpixel = new LogDetector<>( img, img, CALIBRATION, RADIUS, 1., true, false );
+		subpixel.setCache( cache, key );
+		final LogDetector< UnsignedShortType > fresh = new LogDetector<>( img, img, CALIBRATION, RADIUS, 1., true, false );
+		assertSameSpots( run( fresh ), run( subpixel ), 0. );
+		assertTrue( cache.get( key, true ).hasSubpixel() );
+		assertEquals( 1, cache.size() );
+	}
+
+	@Test
+	public void testFailureIsNotCached() throws IncompatibleTypeException
+	{
+		final ArrayImg< UnsignedShortType, ShortArray > image = createBlobImage( true );
+		final DetectionCache cache = new DetectionCache( DetectionCache.DEFAULT_MAX_CANDIDATES );
+		final DetectionCache.Key key = key( 0 );
+
+		// The search for local maxima fails.
+		final RandomAccessible< FloatType > broken = new RandomAccessible< FloatType >()
+		{
+			@Override
+			public RandomAccess< FloatType > randomAccess()
+			{
+				throw new IllegalStateException( "Cannot read the filtered image." );
+			}
+
+			@Override
+			public RandomAccess< FloatType > randomAccess( final Interval interval )
+			{
+				return randomAccess();
+			}
+
+			@Override
+			public int numDimensions()
+			{
+				return image.numDimensions();
+			}
+		};
+		final LogDetector< UnsignedShortType > failing = new LogDetector< UnsignedShortType >( image, image, CALIBRATION, RADIUS, 1., false, false )
+		{
+			@Override
+			protected RandomAccessibleInterval< FloatType > filter()
+			{
+				return Views.interval( broken, image );
+			}
+		};
+		failing.setCache( cache, key );
+		assertTrue( failing.checkInput() );
+		assertFalse( failing.process() );
+		assertNotNull( failing.getErrorMessage() );
+		assertEquals( 0, cache.size() );
+
+		// The next detection on the same frame is not affected.
+		final LogDetector< UnsignedShortType > fresh = new LogDetector<>( image, image, CALIBRATION, RADIUS, 1., false, false );
+		final LogDetector< UnsignedShortType > cached = new LogDetector<>( image, image, CALIBRATION, RADIUS, 1., false, false );
+		cached.setCache( cache, key );
+		final List< Spot > spots = run( cached );
+		assertFalse( spots.isEmpty() );
+		assertSameSpots( run( fresh ), spots, 0. );
+		assertEquals( 1, cache.size() );
+	}
+
+	@Test
+	public void testKey()
+	{
+		final ImagePlus imp = new ImagePlus( "Test", new ByteProcessor( 64, 48 ) );
+		final FinalInterval interval = new FinalInterval( 64, 48 );
+		final Map< String, Object > settings = settings( 20., true );
+		final DetectionCache.Key key = DetectionCache.key( imp, LogDetectorFactory.DETECTOR_KEY, settings, 0, interval );
+
+		// Threshold and sub-pixel localization do not matter.
+		assertEquals( key, DetectionCache.key( imp, LogDetectorFactory.DETECTOR_KEY, settings( 500., false ), 0, interval ) );
+		assertEquals( key.hashCode(), DetectionCache.key( imp, LogDetectorFactory.DETECTOR_KEY, settings( 500., false ), 0, interval ).hashCode() );
+
+		// The rest does.
+		assertNotEquals( key, DetectionCache.key( imp, LogDetectorFactory.DETECTOR_KEY, settings, 1, interval ) );
+		assertNotEquals( key, DetectionCache.key( imp, DogDetectorFactory.THIS_DETECTOR_KEY, settings, 0, interval ) );
+		assertNotEquals( key, DetectionCache.key( imp, LogDetectorFactory.DETECTOR_KEY, settings, 0, new FinalInterval( new long[] { 1, 0 }, new long[] { 63, 47 } ) ) );
+		final Map< String, Object > median = settings( 20., true );
+		median.put( KEY_DO_MEDIAN_FILTERING, Boolean.TRUE );
+		assertNotEquals( key, DetectionCache.key( imp, LogDetectorFactory.DETECTOR_KEY, median, 0, interval ) );
+		final Map< String, Object > radius = settings( 20., true );
+		radius.put( KEY_RADIUS, Double.valueOf( 2. ) );
+		assertNotEquals( key, DetectionCache.key( imp, LogDetectorFactory.DETECTOR_KEY, radius, 0, interval ) );
+		final ImagePlus other = new ImagePlus( "Test", new ByteProcessor( 64, 48 ) );
+		assertNotEquals( key, DetectionCache.key( other, LogDetectorFactory.DETECTOR_KEY, settings, 0, interval ) );
+	}
+
+	@Test
+	public void testEditedPixelsMissTheCache()
+	{
+		final ImageStack stack = new ImageStack( 64, 48 );
+		stack.addSlice( new ByteProcessor( 64, 48 ) );
+		stack.addSlice( new ByteProcessor( 64, 48 ) );
+		final ImagePlus imp = new ImagePlus( "Test", stack );
+		imp.setDimensions( 1, 1, 2 );
+		final FinalInterval interval = new FinalInterval( 64, 48 );
+		final Map< String, Object > settings = settings( 20., false );
+
+		final DetectionCache cache = new DetectionCache( DetectionCache.DEFAULT_MAX_CANDIDATES );
+		cache.put( DetectionCache.key( imp, LogDetectorFactory.DETECTOR_KEY, settings, 0, interval ), candidates( 4 ) );
+		cache.put( DetectionCache.key( imp, LogDetectorFactory.DETECTOR_KEY, settings, 1, interval ), candidates( 4 ) );
+		assertNotNull( cache.get( DetectionCache.key( imp, LogDetectorFactory.DETECTOR_KEY, settings, 0, interval ), false ) );
+		assertEquals( 0, cache.getMisses() );
+
+		// Editing the second frame invalidates it, not the first one.
+		stack.getProcessor( 2 ).set( 10, 10, 255 );
+		assertNull( cache.get( DetectionCache.key( imp, LogDetectorFactory.DETECTOR_KEY, settings, 1, interval ), false ) );
+		assertEquals( 1, cache.getMisses() );
+		assertNotNull( cache.get( DetectionCache.key( imp, LogDetectorFactory.DETECTOR_KEY, settings, 0, interval ), false ) );
+		assertEquals( 1, cache.getMisses() );
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEviction()
+	{
+		final DetectionCache cache = new DetectionCache( 10 );
+		final DetectionCache.Key k1 = key( 1 );
+		final DetectionCache.Key k2 = key( 2 );
+		final DetectionCache.Key k3 = key( 3 );
+
+		cache.put( k1, candidates( 4 ) );
+		cache.put( k2, candidates( 4 ) );
+		assertEquals( 8, cache.getNCandidates() );
+
+		// Touch k1 so that k2 is the least recently used.
+		assertNotNull( cache.get( k1, false ) );
+		cache.put( k3, candidates( 4 ) );
+		assertEquals( 2, cache.size() );
+		assertEquals( 8, cache.getNCandidates() );
+		assertNotNull( cache.get( k1, false ) );
+		assertNull( cache.get( k2, false ) );
+		assertNotNull( cache.get( k3, false ) );
+
+		// An entry larger than the capacity is kept alone.
+		cache.put( k2, candidates( 20 ) );
+		assertEquals( 1, cache.size() );
+		assertEquals( 20, cache.getNCandidates() );
+
+		cache.clear();
+		assertEquals( 0, cache.size() );
+		assertEquals( 0, cache.getNCandidates() );
+	}
+
+	private static DetectionCache.Key key( final int frame )
+	{
+		return new DetectionCache.Key( 1, 0l, CALIBRATION, LogDetectorFactory.DETECTOR_KEY, settings( 0., false ), frame, new long[] { 0, 0 }, new long[] { 229, 169 } );
+	}
+
+	private static Map< String, Object > settings( final double threshold, final boolean subpixel )
+	{
+		final Map< String, Object > settings = new HashMap<>();
+		settings.put( KEY_TARGET_CHANNEL, Integer.valueOf( 1 ) );
+		settings.put( KEY_RADIUS, Double.valueOf( RADIUS ) );
+		settings.put( KEY_THRESHOLD, Double.valueOf( threshold ) );
+		settings.put( KEY_DO_SUBPIXEL_LOCALIZATION, Boolean.valueOf( subpixel ) );
+		settings.put( KEY_DO_MEDIAN_FILTERING, Boolean.FALSE );
+		return settings;
+	}
+
+	private static DetectionCache.Candidates candidates( final int n )
+	{
+		return new DetectionCache.Candidates( new float[ n ], new double[ 3 * n ], null );
+	}
+
+	private static List< Spot > run( final LogDetector< UnsignedShortType > detector )
+	{
+		detector.setNumThreads( 1 );
+		assertTrue( detector.getErrorMessage(), detector.checkInput() && detector.process() );
+		return detector.getResult();
+	}
+}
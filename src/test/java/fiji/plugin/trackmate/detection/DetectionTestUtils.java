@@ -0,0 +1,125 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.detection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import fiji.plugin.trackmate.Spot;
+import net.imglib2.algorithm.gauss3.Gauss3;
+import net.imglib2.exception.IncompatibleTypeException;
+import net.imglib2.img.array.ArrayCursor;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.array.ArrayRandomAccess;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.view.Views;
+
+/**
+ * Test images and assertions shared by the detection tests.
+ *
+ * @author Jean-Yves Tinevez - 2021
+ */
+public class DetectionTestUtils
+{
+
+	public static final double RADIUS = 3.;
+
+	public static final double[] CALIBRATION = new double[] { 0.5, 0.5, 1. };
+
+	/**
+	 * Creates a 230 x 170 image with blobs of radius {@link #RADIUS} on a
+	 * jittered grid, always the same.
+	 *
+	 * @param noisy
+	 *            if <code>true</code>, noise is added to the background, so
+	 *            that there are many local maxima of low quality.
+	 * @return a new image.
+	 */
+	public static ArrayImg< UnsignedShortType, ShortArray > createBlobImage( final boolean noisy ) throws IncompatibleTypeException
+	{
+		final ArrayImg< UnsignedShortType, ShortArray > img = ArrayImgs.unsignedShorts( 230, 170 );
+		final ArrayRandomAccess< UnsignedShortType > ra = img.randomAccess();
+		final Random ran = new Random( 1l );
+		for ( int x = 8; x < img.dimension( 0 ) - 8; x += 19 )
+		{
+			for ( int y = 8; y < img.dimension( 1 ) - 8; y += 17 )
+			{
+				ra.setPosition( x + ran.nextInt( 3 ) - 1, 0 );
+				ra.setPosition( y + ran.nextInt( 3 ) - 1, 1 );
+				ra.get().set( 5000 + ran.nextInt( 1000 ) );
+			}
+		}
+		Gauss3.gauss( new double[] { RADIUS / CALIBRATION[ 0 ] / Math.sqrt( 2 ), RADIUS / CALIBRATION[ 1 ] / Math.sqrt( 2 ) }, Views.extendMirrorSingle( img ), img );
+		if ( noisy )
+		{
+			final ArrayCursor< UnsignedShortType > cursor = img.cursor();
+			while ( cursor.hasNext() )
+			{
+				final UnsignedShortType t = cursor.next();
+				t.set( t.get() + 100 + ran.nextInt( 20 ) );
+			}
+		}
+		return img;
+	}
+
+	/**
+	 * Asserts that two detections found the same spots, in any order, and
+	 * that they found more than 10 of them.
+	 *
+	 * @param expected
+	 *            the reference spots.
+	 * @param actual
+	 *            the spots to compare to the reference.
+	 * @param tolerance
+	 *            the tolerance on positions, and on qualities relative to
+	 *            the expected ones.
+	 */
+	public static void assertSameSpots( final List< Spot > expected, final List< Spot > actual, final double tolerance )
+	{
+		assertTrue( "Expected to find spots.", expected.size() > 10 );
+		assertEquals( "The detection did not find the same number of spots.", expected.size(), actual.size() );
+
+		final Comparator< Spot > byPosition = Comparator
+				.comparingDouble( ( final Spot s ) -> Math.round( s.getFeature( Spot.POSITION_X ) ) )
+				.thenComparingDouble( s -> s.getFeature( Spot.POSITION_Y ) );
+		final List< Spot > s1 = new ArrayList<>( expected );
+		final List< Spot > s2 = new ArrayList<>( actual );
+		s1.sort( byPosition );
+		s2.sort( byPosition );
+		for ( int i = 0; i < s1.size(); i++ )
+		{
+			final Spot a = s1.get( i );
+			final Spot b = s2.get( i );
+			assertEquals( a.getFeature( Spot.POSITION_X ), b.getFeature( Spot.POSITION_X ), tolerance );
+			assertEquals( a.getFeature( Spot.POSITION_Y ), b.getFeature( Spot.POSITION_Y ), tolerance );
+			assertEquals( a.getFeature( Spot.QUALITY ), b.getFeature( Spot.QUALITY ), tolerance * Math.abs( a.getFeature( Spot.QUALITY ) ) );
+			assertEquals( a.getFeature( Spot.RADIUS ), b.getFeature( Spot.RADIUS ), 0. );
+		}
+	}
+}
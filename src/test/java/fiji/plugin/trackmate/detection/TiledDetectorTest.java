@@ -0,0 +1,129 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.detection;
+
+import static fiji.plugin.trackmate.detection.DetectionTestUtils.CALIBRATION;
+import static fiji.plugin.trackmate.detection.DetectionTestUtils.RADIUS;
+import static fiji.plugin.trackmate.detection.DetectionTestUtils.assertSameSpots;
+import static fiji.plugin.trackmate.detection.DetectionTestUtils.createBlobImage;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imglib2.algorithm.gauss3.Gauss3;
+import net.imglib2.exception.IncompatibleTypeException;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.view.Views;
+
+public class TiledDetectorTest
+{
+
+	private static final double THRESHOLD = 1.;
+
+	private static final long[] CORE_SIZE = new long[] { 60, 50 };
+
+	@Test
+	public void testLogMatchesUntiled() throws IncompatibleTypeException
+	{
+		final ArrayImg< UnsignedShortType, ShortArray > img = createBlobImage( false );
+		final long[] halo = TiledDetector.getHalo( RADIUS / Math.sqrt( 2 ), CALIBRATION, 2 );
+
+		final LogDetector< UnsignedShortType > untiled = new LogDetector<>( img, img, CALIBRATION, RADIUS, THRESHOLD, true, false );
+		untiled.setNumThreads( 1 );
+		assertTrue( untiled.checkInput() && untiled.process() );
+
+		final TiledDetector< UnsignedShortType > tiled = new TiledDetector<>( img, CALIBRATION, CORE_SIZE, halo,
+				tile -> new LogDetector<>( img, tile, CALIBRATION, RADIUS, THRESHOLD, true, false ) );
+		tiled.setNumThreads( 4 );
+		assertTrue( tiled.getErrorMessage(), tiled.checkInput() && tiled.process() );
+
+		assertSameSpots( untiled.getResult(), tiled.getResult(), 1e-3 );
+	}
+
+	@Test
+	public void testDogMatchesUntiled() throws IncompatibleTypeException
+	{
+		final ArrayImg< UnsignedShortType, ShortArray > img = createBlobImage( false );
+		final long[] halo = TiledDetector.getHalo( 1.1 * RADIUS / Math.sqrt( 2 ), CALIBRATION, 2 );
+
+		final DogDetector< UnsignedShortType > untiled = new DogDetector<>( img, img, CALIBRATION, RADIUS, THRESHOLD, true, true );
+		untiled.setNumThreads( 1 );
+		assertTrue( untiled.checkInput() && untiled.process() );
+
+		final TiledDetector< UnsignedShortType > tiled = new TiledDetector<>( img, CALIBRATION, CORE_SIZE, halo,
+				tile -> new DogDetector<>( img, tile, CALIBRATION, RADIUS, THRESHOLD, true, true ) );
+		tiled.setNumThreads( 4 );
+		assertTrue( tiled.getErrorMessage(), tiled.checkInput() && tiled.process() );
+
+		assertSameSpots( untiled.getResult(), tiled.getResult(), 1e-3 );
+	}
+
+	@Test
+	public void testLargeObjectsMatchUntiled() throws IncompatibleTypeException
+	{
+		// Objects much larger than the halo, spanning several tile cores.
+		final ArrayImg< UnsignedShortType, ShortArray > img = ArrayImgs.unsignedShorts( 230, 170 );
+		for ( int x = 10; x < img.dimension( 0 ) - 50; x += 70 )
+			for ( int y = 10; y < img.dimension( 1 ) - 40; y += 55 )
+				for ( final UnsignedShortType p : Views.interval( img, new long[] { x, y }, new long[] { x + 44, y + 34 } ) )
+					p.set( 3000 );
+		Gauss3.gauss( new double[] { 1.5, 1.5 }, Views.extendMirrorSingle( img ), img );
+
+		final long[] halo = TiledDetector.getHalo( RADIUS / Math.sqrt( 2 ), CALIBRATION, 2 );
+		assertTrue( 45 > 2 * halo[ 0 ] );
+
+		final LogDetector< UnsignedShortType > untiled = new LogDetector<>( img, img, CALIBRATION, RADIUS, THRESHOLD, true, false );
+		untiled.setNumThreads( 1 );
+		assertTrue( untiled.checkInput() && untiled.process() );
+
+		final TiledDetector< UnsignedShortType > tiled = new TiledDetector<>( img, CALIBRATION, CORE_SIZE, halo,
+				tile -> new LogDetector<>( img, tile, CALIBRATION, RADIUS, THRESHOLD, true, false ) );
+		tiled.setNumThreads( 4 );
+		assertTrue( tiled.getErrorMessage(), tiled.checkInput() && tiled.process() );
+
+		assertSameSpots( untiled.getResult(), tiled.getResult(), 1e-3 );
+	}
+
+	@Test
+	public void testThresholdDetectorIsNotTiled()
+	{
+		// Thresholded regions can be larger than any halo.
+		final ImgPlus< UnsignedShortType > img = new ImgPlus<>( ArrayImgs.unsignedShorts( 1000, 1000 ), "Large", Axes.X, Axes.Y );
+		final Map< String, Object > settings = new HashMap<>();
+		settings.put( DetectorKeys.KEY_TARGET_CHANNEL, 1 );
+		settings.put( ThresholdDetectorFactory.KEY_INTENSITY_THRESHOLD, 100. );
+		settings.put( ThresholdDetectorFactory.KEY_SIMPLIFY_CONTOURS, true );
+		settings.put( DetectorKeys.KEY_DO_TILING, true );
+
+		final ThresholdDetectorFactory< UnsignedShortType > factory = new ThresholdDetectorFactory<>();
+		assertTrue( factory.getErrorMessage(), factory.setTarget( img, settings ) );
+		assertTrue( factory.getDetector( img, 0 ) instanceof ThresholdDetector );
+	}
+}
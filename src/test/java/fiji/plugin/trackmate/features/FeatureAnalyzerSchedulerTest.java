@@ -0,0 +1,269 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.features;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.FeatureModel;
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Settings;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.features.edges.DirectionalChangeAnalyzer;
+import fiji.plugin.trackmate.features.edges.EdgeSpeedAnalyzer;
+import fiji.plugin.trackmate.features.edges.EdgeTimeLocationAnalyzer;
+import fiji.plugin.trackmate.features.track.TrackAnalyzer;
+import fiji.plugin.trackmate.features.track.TrackBranchingAnalyzer;
+import fiji.plugin.trackmate.features.track.TrackDurationAnalyzer;
+import fiji.plugin.trackmate.features.track.TrackLocationAnalyzer;
+import fiji.plugin.trackmate.features.track.TrackMotilityAnalyzer;
+import fiji.plugin.trackmate.features.track.TrackSpeedStatisticsAnalyzer;
+
+public class FeatureAnalyzerSchedulerTest
+{
+
+	@Test
+	public void testLevels()
+	{
+		final TrackMotilityAnalyzer motility = new TrackMotilityAnalyzer();
+		final TrackDurationAnalyzer duration = new TrackDurationAnalyzer();
+		final TrackSpeedStatisticsAnalyzer speed = new TrackSpeedStatisticsAnalyzer();
+		final TrackBranchingAnalyzer branching = new TrackBranchingAnalyzer();
+		final TrackLocationAnalyzer location = new TrackLocationAnalyzer();
+
+		// Motility first on purpose.
+		final List< TrackAnalyzer > analyzers = Arrays.asList( motility, duration, branching, speed, location );
+		final List< List< TrackAnalyzer > > levels = FeatureAnalyzerScheduler.sortInLevels( analyzers );
+
+		assertEquals( "Expected two levels.", 2, levels.size() );
+		assertEquals( Arrays.asList( duration, branching, speed, location ), levels.get( 0 ) );
+		assertEquals( Collections.singletonList( motility ), levels.get( 1 ) );
+
+		final List< TrackAnalyzer > sorted = FeatureAnalyzerScheduler.sort( analyzers );
+		assertEquals( analyzers.size(), sorted.size() );
+		assertEquals( motility, sorted.get( sorted.size() - 1 ) );
+	}
+
+	@Test
+	public void testCrossStageDependencies()
+	{
+		// Dependencies computed by an analyzer of another stage are ignored.
+		final TrackMotilityAnalyzer motility = new TrackMotilityAnalyzer();
+		final DirectionalChangeAnalyzer directional = new DirectionalChangeAnalyzer();
+		final List< FeatureAnalyzer > analyzers = Arrays.asList( motility, directional );
+		final List< List< FeatureAnalyzer > > levels = FeatureAnalyzerScheduler.sortInLevels( analyzers );
+		assertEquals( 2, levels.size() );
+		assertEquals( Collections.singletonList( directional ), levels.get( 0 ) );
+
+		final List< List< TrackAnalyzer > > alone = FeatureAnalyzerScheduler.sortInLevels( Collections.< TrackAnalyzer >singletonList( motility ) );
+		assertEquals( 1, alone.size() );
+	}
+
+	@Test
+	public void testExecuteRespectsDependencies() throws InterruptedException, ExecutionException
+	{
+		final TrackMotilityAnalyzer motility = new TrackMotilityAnalyzer();
+		final List< TrackAnalyzer > analyzers = Arrays.asList(
+				motility,
+				new TrackDurationAnalyzer(),
+				new TrackSpeedStatisticsAnalyzer(),
+				new TrackBranchingAnalyzer(),
+				new TrackLocationAnalyzer() );
+
+		final List< TrackAnalyzer > executed = Collections.synchronizedList( new ArrayList<>() );
+		FeatureAnalyzerScheduler.execute( analyzers, 4, ( analyzer, nThreads ) -> {
+			assertTrue( nThreads.intValue() >= 1 );
+			executed.add( analyzer );
+		}, () -> false );
+
+		assertEquals( analyzers.size(), executed.size() );
+		assertEquals( "Motility analyzer must be executed last.", motility, executed.get( executed.size() - 1 ) );
+
+		// Canceled: nothing runs.
+		executed.clear();
+		FeatureAnalyzerScheduler.execute( analyzers, 4, ( analyzer, nThreads ) -> executed.add( analyzer ), () -> true );
+		assertTrue( executed.isEmpty() );
+	}
+
+	@Test
+	public void testExecuteReportsFailures() throws InterruptedException
+	{
+		final TrackMotilityAnalyzer motility = new TrackMotilityAnalyzer();
+		final TrackDurationAnalyzer duration = new TrackDurationAnalyzer();
+		final List< TrackAnalyzer > analyzers = Arrays.asList( motility, duration, new TrackSpeedStatisticsAnalyzer() );
+
+		// Sequentially and concurrently.
+		for ( final int numThreads : new int[] { 1, 4 } )
+		{
+			final List< TrackAnalyzer > executed = Collections.synchronizedList( new ArrayList<>() );
+			try
+			{
+				FeatureAnalyzerScheduler.execute( analyzers, numThreads, ( analyzer, nThreads ) -> {
+					if ( analyzer == duration )
+						throw new IllegalStateException( "Duration failed." );
+					executed.add( analyzer );
+				}, () -> false );
+				fail( "The failure of an analyzer should be reported." );
+			}
+			catch ( final ExecutionException e )
+			{
+				assertTrue( e.getCause() instanceof IllegalStateException );
+			}
+			assertFalse( "Analyzers depending on a failed one should not run.", executed.contains( motility ) );
+		}
+	}
+
+	@Test
+	public void testCalculatorReportsFailures()
+	{
+		final Settings settings = new Settings();
+		settings.addEdgeAnalyzer( new EdgeSpeedAnalyzer() );
+		settings.addTrackAnalyzer( new TrackMotilityAnalyzer() );
+		settings.addTrackAnalyzer( new TrackDurationAnalyzer()
+		{
+			@Override
+			public void process( final Collection< Integer > trackIDs, final Model model )
+			{
+				throw new IllegalStateException( "Duration failed." );
+			}
+		} );
+		final EdgeAndTrackFeatureCalculator calculator = new EdgeAndTrackFeatureCalculator( createModel(), settings );
+		calculator.setNumThreads( 4 );
+		assertTrue( calculator.checkInput() );
+		assertFalse( calculator.process() );
+		assertTrue( calculator.getErrorMessage(), calculator.getErrorMessage().contains( "Duration failed." ) );
+
+		final TrackFeatureCalculator trackCalculator = new TrackFeatureCalculator( createModel(), settings );
+		trackCalculator.setNumThreads( 1 );
+		assertFalse( trackCalculator.process() );
+		assertTrue( trackCalculator.getErrorMessage(), trackCalculator.getErrorMessage().contains( "Duration failed." ) );
+	}
+
+	@Test
+	public void testEdgeAndTrackFeaturesTogether()
+	{
+		final Model separate = createModel();
+		final Settings s1 = createSettings();
+		final EdgeFeatureCalculator edgeCalculator = new EdgeFeatureCalculator( separate, s1 );
+		assertTrue( edgeCalculator.checkInput() && edgeCalculator.process() );
+		final TrackFeatureCalculator trackCalculator = new TrackFeatureCalculator( separate, s1 );
+		assertTrue( trackCalculator.checkInput() && trackCalculator.process() );
+
+		final Model together = createModel();
+		final EdgeAndTrackFeatureCalculator calculator = new EdgeAndTrackFeatureCalculator( together, createSettings() );
+		calculator.setNumThreads( 4 );
+		assertTrue( calculator.checkInput() && calculator.process() );
+
+		final Map< String, Double > expected = featureValues( separate );
+		assertTrue( "Expected edge and track features.", expected.size() > 45 );
+		final Map< String, Double > actual = featureValues( together );
+		assertEquals( expected.keySet(), actual.keySet() );
+		for ( final String key : expected.keySet() )
+		{
+			final Double e = expected.get( key );
+			final Double a = actual.get( key );
+			if ( null == e || null == a )
+				assertEquals( key, e, a );
+			else
+				// Sums over the track may be made in another order.
+				assertEquals( key, e.doubleValue(), a.doubleValue(), 1e-12 * Math.abs( e.doubleValue() ) );
+		}
+	}
+
+	/**
+	 * Creates a model with 5 tracks of 10 spots moving in diagonal.
+	 */
+	private static Model createModel()
+	{
+		final Model model = new Model();
+		model.beginUpdate();
+		try
+		{
+			for ( int i = 0; i < 5; i++ )
+			{
+				Spot previous = null;
+				for ( int t = 0; t < 10; t++ )
+				{
+					final Spot spot = new Spot( 10. * i + t, 0.5 * t * t, 0., 1., 1. );
+					spot.putFeature( Spot.POSITION_T, Double.valueOf( t ) );
+					model.addSpotTo( spot, Integer.valueOf( t ) );
+					if ( null != previous )
+						model.addEdge( previous, spot, 1. );
+					previous = spot;
+				}
+			}
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+		return model;
+	}
+
+	private static Settings createSettings()
+	{
+		final Settings settings = new Settings();
+		settings.addEdgeAnalyzer( new EdgeSpeedAnalyzer() );
+		settings.addEdgeAnalyzer( new EdgeTimeLocationAnalyzer() );
+		settings.addEdgeAnalyzer( new DirectionalChangeAnalyzer() );
+		settings.addTrackAnalyzer( new TrackMotilityAnalyzer() );
+		settings.addTrackAnalyzer( new TrackDurationAnalyzer() );
+		settings.addTrackAnalyzer( new TrackSpeedStatisticsAnalyzer() );
+		settings.addTrackAnalyzer( new TrackBranchingAnalyzer() );
+		settings.addTrackAnalyzer( new TrackLocationAnalyzer() );
+		return settings;
+	}
+
+	/**
+	 * Returns the edge and track feature values of the model, keyed by a
+	 * string that does not depend on the edge objects.
+	 */
+	private static Map< String, Double > featureValues( final Model model )
+	{
+		final FeatureModel fm = model.getFeatureModel();
+		final Map< String, Double > values = new TreeMap<>();
+		for ( final DefaultWeightedEdge edge : model.getTrackModel().edgeSet() )
+		{
+			final Spot source = model.getTrackModel().getEdgeSource( edge );
+			for ( final String feature : fm.getEdgeFeatures() )
+				values.put( "Edge " + source.getDoublePosition( 0 ) + " " + feature, fm.getEdgeFeature( edge, feature ) );
+		}
+		for ( final Integer trackID : model.getTrackModel().trackIDs( false ) )
+			for ( final String feature : fm.getTrackFeatures() )
+				values.put( "Track " + trackID + " " + feature, fm.getTrackFeature( trackID, feature ) );
+		return values;
+	}
+}
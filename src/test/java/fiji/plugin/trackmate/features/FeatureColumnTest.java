@@ -0,0 +1,163 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.features;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings.TrackMateObject;
+import fiji.plugin.trackmate.util.TMUtils;
+
+public class FeatureColumnTest
+{
+
+	private static double[] randomValues( final int n, final long seed )
+	{
+		final Random ran = new Random( seed );
+		final double[] values = new double[ n ];
+		for ( int i = 0; i < n; i++ )
+			values[ i ] = ran.nextGaussian() * 10. + ( ran.nextBoolean() ? 50. : 0. );
+		return values;
+	}
+
+	@Test
+	public void testStatistics()
+	{
+		final double[] values = randomValues( 10_000, 1l );
+		final FeatureColumn column = FeatureColumn.of( values );
+
+		assertEquals( values.length, column.size() );
+		assertEquals( Arrays.stream( values ).min().getAsDouble(), column.min(), 0. );
+		assertEquals( Arrays.stream( values ).max().getAsDouble(), column.max(), 0. );
+		for ( final double p : new double[] { 0.01, 0.25, 0.5, 0.75, 1. } )
+			assertEquals( TMUtils.getPercentile( values, p ), column.getPercentile( p ), 0. );
+		assertEquals( TMUtils.getNBins( values, 8, 100 ), column.getNBins( 8, 100 ) );
+
+		// Otsu threshold matches the one computed on raw values.
+		final double binWidth = ( column.max() - column.min() ) / column.getNBins( 8, 256 );
+		assertEquals( TMUtils.otsuThreshold( values ), column.otsuThreshold(), binWidth );
+	}
+
+	@Test
+	public void testCounts()
+	{
+		final double[] values = randomValues( 5_000, 2l );
+		final FeatureColumn column = FeatureColumn.of( values );
+		final Random ran = new Random( 3l );
+		for ( int i = 0; i < 100; i++ )
+		{
+			final double threshold = i == 0 ? values[ 0 ] : 80. * ran.nextDouble() - 20.;
+			final long above = Arrays.stream( values ).filter( v -> v > threshold ).count();
+			final long below = Arrays.stream( values ).filter( v -> v < threshold ).count();
+			assertEquals( above, column.countAbove( threshold ) );
+			assertEquals( below, column.countBelow( threshold ) );
+		}
+	}
+
+	@Test
+	public void testHistogram()
+	{
+		final double[] values = randomValues( 5_000, 4l );
+		final FeatureColumn column = FeatureColumn.of( values );
+		final int nBins = 37;
+		final int[] hist = column.histogram( nBins );
+		assertEquals( nBins, hist.length );
+		assertEquals( values.length, Arrays.stream( hist ).sum() );
+		assertSame( "Histogram should be cached.", hist, column.histogram( nBins ) );
+
+		// Same as binning each value.
+		final double binWidth = ( column.max() - column.min() ) / nBins;
+		final int[] expected = new int[ nBins ];
+		for ( final double v : values )
+			expected[ Math.min( ( int ) Math.floor( ( v - column.min() ) / binWidth ), nBins - 1 ) ]++;
+		int diff = 0;
+		for ( int i = 0; i < nBins; i++ )
+			diff += Math.abs( expected[ i ] - hist[ i ] );
+		// Values lying exactly on a bin edge may be attributed differently.
+		assertTrue( "Histograms differ by " + diff + " values.", diff <= 2 );
+	}
+
+	@Test
+	public void testMissingValues()
+	{
+		final FeatureColumn column = FeatureColumn.of( new double[] { 3., Double.NaN, 1., 2. } );
+		assertArrayEquals( new double[] { 1., 2., 3. }, column.toArray(), 0. );
+
+		final FeatureColumn empty = FeatureColumn.of( new double[ 0 ] );
+		assertTrue( empty.isEmpty() );
+		assertEquals( 0, empty.countAbove( 0. ) );
+		assertTrue( Double.isNaN( empty.otsuThreshold() ) );
+	}
+
+	@Test
+	public void testCacheInvalidation()
+	{
+		final Model model = new Model();
+		final Spot spot;
+		model.beginUpdate();
+		try
+		{
+			spot = model.addSpotTo( new Spot( 1., 2., 3., 1., 10. ), 0 );
+			model.addSpotTo( new Spot( 4., 5., 6., 1., 20. ), 0 );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+
+		final FeatureColumnCache cache = model.getFeatureColumns();
+		final FeatureColumn c1 = cache.get( TrackMateObject.SPOTS, Spot.QUALITY, false );
+		assertEquals( 2, c1.size() );
+		assertEquals( 20., c1.max(), 0. );
+		assertSame( "Column should be cached.", c1, cache.get( TrackMateObject.SPOTS, Spot.QUALITY, false ) );
+
+		// Editing a spot invalidates the spot columns.
+		model.beginUpdate();
+		try
+		{
+			spot.putFeature( Spot.QUALITY, 30. );
+			model.updateFeatures( spot );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+		final FeatureColumn c2 = cache.get( TrackMateObject.SPOTS, Spot.QUALITY, false );
+		assertNotSame( c1, c2 );
+		assertEquals( 30., c2.max(), 0. );
+		assertArrayEquals( new double[] { 20., 30. }, FeatureUtils.autoMinMax( model, null, TrackMateObject.SPOTS, Spot.QUALITY ), 0. );
+
+		// Explicit invalidation.
+		cache.invalidate( TrackMateObject.SPOTS, Spot.QUALITY );
+		assertNotSame( c2, cache.get( TrackMateObject.SPOTS, Spot.QUALITY, false ) );
+	}
+}
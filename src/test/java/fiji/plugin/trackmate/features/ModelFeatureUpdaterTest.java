@@ -0,0 +1,234 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.features;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.ModelChangeEvent;
+import fiji.plugin.trackmate.Settings;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.features.edges.EdgeSpeedAnalyzer;
+import fiji.plugin.trackmate.features.edges.EdgeTargetAnalyzer;
+import fiji.plugin.trackmate.features.track.TrackSpeedStatisticsAnalyzer;
+import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings.TrackMateObject;
+
+public class ModelFeatureUpdaterTest
+{
+
+	private static final double EPSILON = 1e-12;
+
+	private Model model;
+
+	private Settings settings;
+
+	private ModelFeatureUpdater updater;
+
+	private final AtomicInteger nEdgeTargetCalls = new AtomicInteger( 0 );
+
+	private Spot s0;
+
+	private Spot s1;
+
+	private Spot s2;
+
+	private DefaultWeightedEdge e01;
+
+	private DefaultWeightedEdge e12;
+
+	@Before
+	public void setUp()
+	{
+		model = new Model();
+		model.beginUpdate();
+		try
+		{
+			s0 = model.addSpotTo( new Spot( 0., 0., 0., 1., -1. ), 0 );
+			s1 = model.addSpotTo( new Spot( 1., 0., 0., 1., -1. ), 1 );
+			s2 = model.addSpotTo( new Spot( 3., 0., 0., 1., -1. ), 2 );
+			s0.putFeature( Spot.POSITION_T, 0. );
+			s1.putFeature( Spot.POSITION_T, 1. );
+			s2.putFeature( Spot.POSITION_T, 2. );
+			e01 = model.addEdge( s0, s1, -1. );
+			e12 = model.addEdge( s1, s2, -1. );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+
+		settings = new Settings();
+		settings.addEdgeAnalyzer( new EdgeSpeedAnalyzer() );
+		settings.addEdgeAnalyzer( new EdgeTargetAnalyzer()
+		{
+			@Override
+			protected void analyze( final DefaultWeightedEdge edge, final Model model )
+			{
+				nEdgeTargetCalls.incrementAndGet();
+				super.analyze( edge, model );
+			}
+		} );
+		settings.addTrackAnalyzer( new TrackSpeedStatisticsAnalyzer() );
+
+		new EdgeFeatureCalculator( model, settings ).process();
+		new TrackFeatureCalculator( model, settings ).process();
+		nEdgeTargetCalls.set( 0 );
+
+		updater = new ModelFeatureUpdater( model, settings );
+	}
+
+	@After
+	public void tearDown()
+	{
+		updater.quit();
+	}
+
+	private void setAsynchronous()
+	{
+		updater.quit();
+		updater = new ModelFeatureUpdater( model, settings, true );
+	}
+
+	private double speed( final DefaultWeightedEdge edge )
+	{
+		return model.getFeatureModel().getEdgeFeature( edge, EdgeSpeedAnalyzer.SPEED ).doubleValue();
+	}
+
+	private double meanTrackSpeed()
+	{
+		final Integer trackID = model.getTrackModel().trackIDOf( s0 );
+		return model.getFeatureModel().getTrackFeature( trackID, TrackSpeedStatisticsAnalyzer.TRACK_MEAN_SPEED ).doubleValue();
+	}
+
+	@Test
+	public void testMoveSpot()
+	{
+		assertEquals( 1., speed( e01 ), EPSILON );
+		assertEquals( 2., speed( e12 ), EPSILON );
+		assertEquals( 1.5, meanTrackSpeed(), EPSILON );
+
+		model.beginUpdate();
+		try
+		{
+			s1.putFeature( Spot.POSITION_X, 2. );
+			model.updateFeatures( s1 );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+		// Up to date as soon as the edit is over.
+
+		assertEquals( 2., speed( e01 ), EPSILON );
+		assertEquals( 1., speed( e12 ), EPSILON );
+		assertEquals( 1.5, meanTrackSpeed(), EPSILON );
+		// Source and target IDs do not depend on spot positions.
+		assertEquals( 0, nEdgeTargetCalls.get() );
+	}
+
+	@Test
+	public void testAddEdge()
+	{
+		final DefaultWeightedEdge e23;
+		model.beginUpdate();
+		try
+		{
+			final Spot s3 = model.addSpotTo( new Spot( 7., 0., 0., 1., -1. ), 3 );
+			s3.putFeature( Spot.POSITION_T, 3. );
+			e23 = model.addEdge( s2, s3, -1. );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+
+		assertEquals( 4., speed( e23 ), EPSILON );
+		assertNotNull( model.getFeatureModel().getEdgeFeature( e23, EdgeTargetAnalyzer.SPOT_TARGET_ID ) );
+		assertEquals( 1, nEdgeTargetCalls.get() );
+		assertEquals( 7. / 3., meanTrackSpeed(), EPSILON );
+	}
+
+	@Test
+	public void testCoalescedEdits() throws InterruptedException
+	{
+		setAsynchronous();
+		for ( int i = 1; i <= 10; i++ )
+		{
+			model.beginUpdate();
+			try
+			{
+				s2.putFeature( Spot.POSITION_X, 1. + i );
+				model.updateFeatures( s2 );
+			}
+			finally
+			{
+				model.endUpdate();
+			}
+		}
+		updater.waitForUpdates();
+
+		assertEquals( 1., speed( e01 ), EPSILON );
+		assertEquals( 10., speed( e12 ), EPSILON );
+		assertEquals( 5.5, meanTrackSpeed(), EPSILON );
+		assertEquals( 0, nEdgeTargetCalls.get() );
+	}
+
+	@Test
+	public void testFeatureColumnAfterEdit() throws InterruptedException
+	{
+		setAsynchronous();
+		final AtomicInteger nFeaturesComputed = new AtomicInteger( 0 );
+		model.addModelChangeListener( event -> {
+			if ( event.getEventID() == ModelChangeEvent.FEATURES_COMPUTED )
+				nFeaturesComputed.incrementAndGet();
+		} );
+
+		model.beginUpdate();
+		try
+		{
+			s2.putFeature( Spot.POSITION_X, 10. );
+			model.updateFeatures( s2 );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+		// Read and cache the column while the update may still be running.
+		model.getFeatureColumns().get( TrackMateObject.EDGES, EdgeSpeedAnalyzer.SPEED, false );
+		updater.waitForUpdates();
+
+		final FeatureColumn column = model.getFeatureColumns().get( TrackMateObject.EDGES, EdgeSpeedAnalyzer.SPEED, false );
+		assertEquals( 2, column.size() );
+		assertEquals( 1., column.min(), EPSILON );
+		assertEquals( 9., column.max(), EPSILON );
+		assertTrue( nFeaturesComputed.get() > 0 );
+	}
+}
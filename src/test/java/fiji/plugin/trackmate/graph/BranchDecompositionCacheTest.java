@@ -0,0 +1,214 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.junit.Before;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.TrackModel;
+import fiji.plugin.trackmate.graph.ConvexBranchesDecomposition.TrackBranchDecomposition;
+
+public class BranchDecompositionCacheTest
+{
+
+	private static final int N_FRAMES = 20;
+
+	private Model model;
+
+	private Random ran;
+
+	private List< Spot > spots;
+
+	@Before
+	public void setUp()
+	{
+		ran = new Random( 1l );
+		model = new Model();
+		spots = new ArrayList<>();
+		model.beginUpdate();
+		try
+		{
+			// A few dividing and merging tracks.
+			for ( int t = 0; t < 5; t++ )
+			{
+				List< Spot > previous = new ArrayList<>();
+				for ( int frame = 0; frame < N_FRAMES; frame++ )
+				{
+					final List< Spot > current = new ArrayList<>();
+					final int n = previous.isEmpty() ? 1 : Math.max( 1, Math.min( 4, previous.size() + ran.nextInt( 3 ) - 1 ) );
+					for ( int i = 0; i < n; i++ )
+					{
+						final Spot spot = add( frame );
+						current.add( spot );
+						if ( !previous.isEmpty() )
+							model.addEdge( previous.get( ran.nextInt( previous.size() ) ), spot, -1 );
+					}
+					previous = current;
+				}
+			}
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+	}
+
+	private Spot add( final int frame )
+	{
+		final Spot spot = model.addSpotTo( new Spot( frame, 0., 0., 1., 1. ), frame );
+		spots.add( spot );
+		return spot;
+	}
+
+	@Test
+	public void testCached()
+	{
+		final TrackModel tm = model.getTrackModel();
+		final Integer trackID = tm.trackIDs( false ).iterator().next();
+		final TrackBranchDecomposition d1 = tm.getBranchDecomposition( trackID, true, false );
+		assertNotNull( d1 );
+		assertSame( d1, tm.getBranchDecomposition( trackID, true, false ) );
+		assertNotSame( d1, tm.getBranchDecomposition( trackID, false, false ) );
+		assertNull( tm.getBranchDecomposition( Integer.valueOf( -1 ), true, false ) );
+
+		// Modify the track.
+		final Spot spot = tm.trackSpots( trackID ).iterator().next();
+		final Set< DefaultWeightedEdge > edges = new HashSet<>( tm.edgesOf( spot ) );
+		model.beginUpdate();
+		try
+		{
+			model.removeEdge( edges.iterator().next() );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+		for ( final Integer id : tm.trackIDs( false ) )
+			assertNotSame( d1, tm.getBranchDecomposition( id, true, false ) );
+	}
+
+	@Test
+	public void testRandomEdits() throws Exception
+	{
+		final TrackModel tm = model.getTrackModel();
+		for ( int round = 0; round < 50; round++ )
+		{
+			// Fill the cache.
+			for ( final Integer id : tm.trackIDs( false ) )
+				tm.getBranchDecomposition( id, round % 2 == 0, round % 3 == 0 );
+
+			model.beginUpdate();
+			try
+			{
+				switch ( ran.nextInt( 5 ) )
+				{
+				case 0:
+				{
+					// Remove a spot.
+					final Spot spot = spots.remove( ran.nextInt( spots.size() ) );
+					model.removeSpot( spot );
+					break;
+				}
+				case 1:
+				{
+					// Add a spot linked to an existing one.
+					final Spot source = spots.get( ran.nextInt( spots.size() ) );
+					final int frame = source.getFeature( Spot.FRAME ).intValue() + 1;
+					model.addEdge( source, add( frame ), -1 );
+					break;
+				}
+				case 2:
+				{
+					// Remove an edge.
+					final Set< DefaultWeightedEdge > edges = tm.edgeSet();
+					if ( edges.isEmpty() )
+						break;
+					model.removeEdge( new ArrayList<>( edges ).get( ran.nextInt( edges.size() ) ) );
+					break;
+				}
+				case 3:
+				{
+					// Link two spots in different frames.
+					final Spot s1 = spots.get( ran.nextInt( spots.size() ) );
+					final Spot s2 = spots.get( ran.nextInt( spots.size() ) );
+					final int f1 = s1.getFeature( Spot.FRAME ).intValue();
+					final int f2 = s2.getFeature( Spot.FRAME ).intValue();
+					if ( f1 < f2 && !tm.containsEdge( s1, s2 ) )
+						model.addEdge( s1, s2, -1 );
+					break;
+				}
+				default:
+				{
+					// Move a spot with no successor one frame later.
+					final Spot spot = spots.get( ran.nextInt( spots.size() ) );
+					if ( !tm.getDirectedNeighborIndex().successorsOf( spot ).isEmpty() )
+						break;
+					final int frame = spot.getFeature( Spot.FRAME ).intValue();
+					model.moveSpotFrom( spot, frame, frame + 1 );
+					break;
+				}
+				}
+			}
+			finally
+			{
+				model.endUpdate();
+			}
+
+			for ( int slot = 0; slot < 4; slot++ )
+			{
+				final boolean forbidMiddleLinks = ( slot & 1 ) != 0;
+				final boolean forbidGaps = ( slot & 2 ) != 0;
+				final Map< Integer, TrackBranchDecomposition > all = ConvexBranchesDecomposition.processTracks( tm.trackIDs( false ), tm, forbidMiddleLinks, forbidGaps );
+				assertEquals( tm.nTracks( false ), all.size() );
+				for ( final Integer id : tm.trackIDs( false ) )
+				{
+					final TrackBranchDecomposition expected = ConvexBranchesDecomposition.processTrack( id, tm, tm.getDirectedNeighborIndex(), forbidMiddleLinks, forbidGaps );
+					assertSameDecomposition( expected, tm.getBranchDecomposition( id, forbidMiddleLinks, forbidGaps ) );
+					assertSameDecomposition( expected, all.get( id ) );
+				}
+			}
+		}
+	}
+
+	private static void assertSameDecomposition( final TrackBranchDecomposition expected, final TrackBranchDecomposition actual )
+	{
+		assertNotNull( actual );
+		assertEquals( new HashSet<>( expected.branches ), new HashSet<>( actual.branches ) );
+		assertEquals( new HashSet<>( expected.links ), new HashSet<>( actual.links ) );
+	}
+}
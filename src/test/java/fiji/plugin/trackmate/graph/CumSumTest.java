@@ -28,7 +28,7 @@ import org.jgrapht.graph.SimpleDirectedGraph;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
-public class RecursiveCumSumTest {
+public class CumSumTest {
 
 	private static SimpleDirectedGraph<int[], DefaultEdge> tree;
 	private static int[] root;
@@ -69,7 +69,7 @@ public class RecursiveCumSumTest {
 				output[0] =  input1[0] + input2[0];
 			}
 		};
-		RecursiveCumSum<int[], DefaultEdge> fun = new RecursiveCumSum<>(tree, function);
+		CumSum<int[], DefaultEdge> fun = new CumSum<>(tree, function);
 		int[] val = fun.apply(root);
 		assertEquals(7, val[0]);
 	}
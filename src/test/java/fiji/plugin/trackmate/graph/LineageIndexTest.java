@@ -0,0 +1,211 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.junit.Before;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.SelectionModel;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.TrackModel;
+
+public class LineageIndexTest
+{
+
+	private Model model;
+
+	/*
+	 * A dividing lineage:
+	 * 
+	 * <pre>
+	 * frame 0:     r
+	 * frame 1:     a
+	 * frame 2:   b   c
+	 * frame 3:   d   e
+	 * </pre>
+	 */
+
+	private Spot r;
+
+	private Spot a;
+
+	private Spot b;
+
+	private Spot c;
+
+	private Spot d;
+
+	private Spot e;
+
+	@Before
+	public void setUp()
+	{
+		model = new Model();
+		model.beginUpdate();
+		try
+		{
+			r = add( 0 );
+			a = add( 1 );
+			b = add( 2 );
+			c = add( 2 );
+			d = add( 3 );
+			e = add( 3 );
+			// Add some edges backward in time on purpose.
+			model.addEdge( r, a, -1 );
+			model.addEdge( b, a, -1 );
+			model.addEdge( a, c, -1 );
+			model.addEdge( b, d, -1 );
+			model.addEdge( e, c, -1 );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+	}
+
+	private Spot add( final int frame )
+	{
+		return model.addSpotTo( new Spot( frame, 0., 0., 1., 1. ), frame );
+	}
+
+	private LineageIndex index()
+	{
+		final TrackModel trackModel = model.getTrackModel();
+		return trackModel.getLineageIndex( trackModel.trackIDOf( r ) );
+	}
+
+	@Test
+	public void testAncestry()
+	{
+		final LineageIndex index = index();
+		assertTrue( index.isTree() );
+		assertEquals( 6, index.size() );
+
+		assertTrue( index.isAncestor( r, e ) );
+		assertTrue( index.isAncestor( a, d ) );
+		assertTrue( index.isAncestor( b, d ) );
+		assertFalse( index.isAncestor( b, e ) );
+		assertFalse( index.isAncestor( d, b ) );
+		assertFalse( index.isAncestor( b, b ) );
+		assertFalse( index.isAncestor( b, c ) );
+
+		assertEquals( new HashSet<>( Arrays.asList( b, c ) ), new HashSet<>( index.getSpotsAt( 2 ) ) );
+		assertTrue( index.getSpotsAt( 4 ).isEmpty() );
+		assertEquals( r, index.getSpots().get( 0 ) );
+	}
+
+	@Test
+	public void testSelectTrack()
+	{
+		final SelectionModel selectionModel = new SelectionModel( model );
+
+		// Forward in time from b and from c.
+		selectionModel.selectTrack( Arrays.asList( b, c ), Collections.emptyList(), -1 );
+		assertEquals( new HashSet<>( Arrays.asList( b, c, d, e ) ), selectionModel.getSpotSelection() );
+		assertEquals( 2, selectionModel.getEdgeSelection().size() );
+		assertTrue( selectionModel.getEdgeSelection().contains( model.getTrackModel().getEdge( b, d ) ) );
+		assertTrue( selectionModel.getEdgeSelection().contains( model.getTrackModel().getEdge( e, c ) ) );
+
+		// Backward in time from d.
+		selectionModel.clearSelection();
+		selectionModel.selectTrack( Collections.singleton( d ), Collections.emptyList(), 1 );
+		assertEquals( new HashSet<>( Arrays.asList( r, a, b, d ) ), selectionModel.getSpotSelection() );
+		assertEquals( 3, selectionModel.getEdgeSelection().size() );
+
+		// Whole track.
+		selectionModel.clearSelection();
+		selectionModel.selectTrack( Collections.singleton( d ), Collections.emptyList(), 0 );
+		assertEquals( 6, selectionModel.getSpotSelection().size() );
+		assertEquals( 5, selectionModel.getEdgeSelection().size() );
+	}
+
+	@Test
+	public void testMerge()
+	{
+		// Merge d and e into a new spot m.
+		final Spot m;
+		model.beginUpdate();
+		try
+		{
+			m = add( 4 );
+			model.addEdge( d, m, -1 );
+			model.addEdge( e, m, -1 );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+
+		final LineageIndex index = index();
+		assertFalse( index.isTree() );
+		assertTrue( index.isAncestor( b, m ) );
+		assertTrue( index.isAncestor( c, m ) );
+		assertFalse( index.isAncestor( b, e ) );
+
+		final Set< Spot > spots = new HashSet<>();
+		final Set< DefaultWeightedEdge > edges = new HashSet<>();
+		index.collectAncestors( Collections.singleton( m ), spots, edges );
+		assertEquals( 7, spots.size() );
+		assertEquals( 7, edges.size() );
+	}
+
+	@Test
+	public void testInvalidation()
+	{
+		final LineageIndex before = index();
+		assertSame( before, index() );
+
+		// Cut the lineage between a and c.
+		model.beginUpdate();
+		try
+		{
+			model.removeEdge( a, c );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+
+		final LineageIndex after = index();
+		assertNotSame( before, after );
+		assertEquals( 4, after.size() );
+		assertFalse( after.contains( c ) );
+
+		final TrackModel trackModel = model.getTrackModel();
+		final LineageIndex other = trackModel.getLineageIndex( trackModel.trackIDOf( c ) );
+		assertEquals( 2, other.size() );
+		assertTrue( other.isAncestor( c, e ) );
+	}
+}
@@ -0,0 +1,257 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fiji.plugin.trackmate.Dimension;
+import fiji.plugin.trackmate.FeatureModel;
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.io.StatsExporter.Format;
+import fiji.plugin.trackmate.io.StatsExporter.StatsTable;
+
+/**
+ * Exports a synthetic model made of linear tracks and lonely spots. The
+ * number of spots can be raised to millions with the
+ * <code>trackmate.test.stats.nspots</code> system property.
+ */
+public class StatsExporterTest
+{
+
+	private static final int TRACK_LENGTH = 50;
+
+	private static final String EDGE_FEATURE = "TEST_SPEED";
+
+	private static final String TRACK_FEATURE = "TEST_TRACK_SCORE";
+
+	private static int nTracks;
+
+	private static int nLonely;
+
+	private static Model model;
+
+	private static Map< Integer, Spot > spotsByID;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@BeforeClass
+	public static void createModel()
+	{
+		final int nSpots = Integer.getInteger( "trackmate.test.stats.nspots", 20_000 ).intValue();
+		nTracks = Math.max( 1, nSpots / ( TRACK_LENGTH + 1 ) );
+		nLonely = nTracks;
+
+		model = new Model();
+		final FeatureModel fm = model.getFeatureModel();
+		fm.declareEdgeFeatures( Collections.singleton( EDGE_FEATURE ),
+				Collections.singletonMap( EDGE_FEATURE, "Test speed" ),
+				Collections.singletonMap( EDGE_FEATURE, "Speed" ),
+				Collections.singletonMap( EDGE_FEATURE, Dimension.VELOCITY ),
+				Collections.singletonMap( EDGE_FEATURE, Boolean.FALSE ) );
+		fm.declareTrackFeatures( Collections.singleton( TRACK_FEATURE ),
+				Collections.singletonMap( TRACK_FEATURE, "Test track score" ),
+				Collections.singletonMap( TRACK_FEATURE, "Score" ),
+				Collections.singletonMap( TRACK_FEATURE, Dimension.NONE ),
+				Collections.singletonMap( TRACK_FEATURE, Boolean.FALSE ) );
+
+		spotsByID = new HashMap<>();
+		model.beginUpdate();
+		try
+		{
+			for ( int i = 0; i < nTracks; i++ )
+			{
+				Spot previous = null;
+				for ( int t = 0; t < TRACK_LENGTH; t++ )
+				{
+					final Spot spot = new Spot( i + 0.1 * t, 2. * t, 0., 1., i, "S" + i + "_" + t );
+					spot.putFeature( Spot.POSITION_T, Double.valueOf( t ) );
+					model.addSpotTo( spot, Integer.valueOf( t ) );
+					spotsByID.put( Integer.valueOf( spot.ID() ), spot );
+					if ( null != previous )
+						model.addEdge( previous, spot, t );
+					previous = spot;
+				}
+
+				final Spot lonely = new Spot( -i, -1., 0., 1., -1., "L" + i );
+				lonely.putFeature( Spot.POSITION_T, Double.valueOf( i % TRACK_LENGTH ) );
+				model.addSpotTo( lonely, Integer.valueOf( i % TRACK_LENGTH ) );
+				spotsByID.put( Integer.valueOf( lonely.ID() ), lonely );
+			}
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+
+		for ( final DefaultWeightedEdge edge : model.getTrackModel().edgeSet() )
+			fm.putEdgeFeature( edge, EDGE_FEATURE, Double.valueOf( model.getTrackModel().getEdgeWeight( edge ) / 2. ) );
+		for ( final Integer trackID : model.getTrackModel().trackIDs( false ) )
+			fm.putTrackFeature( trackID, TRACK_FEATURE, Double.valueOf( trackID.doubleValue() + 0.5 ) );
+	}
+
+	@Test
+	public void testBinary() throws IOException
+	{
+		final File target = folder.newFolder();
+		final StatsExporter exporter = new StatsExporter( model, target, Format.BINARY );
+		assertTrue( exporter.getErrorMessage(), exporter.checkInput() && exporter.process() );
+
+		// Spots, ordered by frame then ID.
+		final StatsTable spots = StatsExporter.readBinary( exporter.getFile( StatsExporter.SPOTS ) );
+		assertEquals( nTracks * TRACK_LENGTH + nLonely, spots.size() );
+		final double[] frames = spots.getColumn( Spot.FRAME );
+		final double[] ids = spots.getColumn( "ID" );
+		final double[] trackIDs = spots.getColumn( "TRACK_ID" );
+		final double[] xs = spots.getColumn( Spot.POSITION_X );
+		for ( int r = 0; r < spots.size(); r++ )
+		{
+			if ( r > 0 )
+				assertTrue( frames[ r ] > frames[ r - 1 ] || ( frames[ r ] == frames[ r - 1 ] && ids[ r ] > ids[ r - 1 ] ) );
+
+			final Spot spot = spotsByID.get( Integer.valueOf( ( int ) ids[ r ] ) );
+			assertEquals( spot.getName(), spots.getLabel( r ) );
+			assertEquals( spot.getFeature( Spot.POSITION_X ).doubleValue(), xs[ r ], 0. );
+			assertEquals( spot.getFeature( Spot.FRAME ).doubleValue(), frames[ r ], 0. );
+			final Integer trackID = model.getTrackModel().trackIDOf( spot );
+			if ( null == trackID )
+				assertTrue( Double.isNaN( trackIDs[ r ] ) );
+			else
+				assertEquals( trackID.doubleValue(), trackIDs[ r ], 0. );
+		}
+
+		// Edges, ordered by track.
+		final StatsTable edges = StatsExporter.readBinary( exporter.getFile( StatsExporter.EDGES ) );
+		assertEquals( nTracks * ( TRACK_LENGTH - 1 ), edges.size() );
+		final double[] edgeTrackIDs = edges.getColumn( "TRACK_ID" );
+		final double[] speeds = edges.getColumn( EDGE_FEATURE );
+		for ( int r = 1; r < edges.size(); r++ )
+			assertTrue( edgeTrackIDs[ r ] >= edgeTrackIDs[ r - 1 ] );
+		// First edge of each track has weight 1.
+		assertEquals( 0.5, speeds[ 0 ], 0. );
+		assertEquals( model.getSpaceUnits() + "/" + model.getTimeUnits(), edges.getFeatureUnits().get( EDGE_FEATURE ) );
+
+		// Tracks.
+		final StatsTable tracks = StatsExporter.readBinary( exporter.getFile( StatsExporter.TRACKS ) );
+		assertEquals( nTracks, tracks.size() );
+		final double[] tids = tracks.getColumn( "TRACK_ID" );
+		final double[] scores = tracks.getColumn( TRACK_FEATURE );
+		for ( int r = 0; r < tracks.size(); r++ )
+		{
+			assertEquals( tids[ r ] + 0.5, scores[ r ], 0. );
+			assertEquals( model.getTrackModel().name( Integer.valueOf( ( int ) tids[ r ] ) ), tracks.getLabel( r ) );
+		}
+
+		// Branches: one per linear track.
+		final StatsTable branches = StatsExporter.readBinary( exporter.getFile( StatsExporter.BRANCHES ) );
+		assertEquals( nTracks, branches.size() );
+		for ( final double dt : branches.getColumn( "DELTA_T" ) )
+			assertEquals( TRACK_LENGTH - 1, dt, 1e-9 );
+	}
+
+	@Test
+	public void testCsvMatchesBinary() throws IOException
+	{
+		final File csvFolder = folder.newFolder();
+		final StatsExporter csv = new StatsExporter( model, csvFolder, Format.CSV );
+		assertTrue( csv.getErrorMessage(), csv.checkInput() && csv.process() );
+		final File binFolder = folder.newFolder();
+		final StatsExporter bin = new StatsExporter( model, binFolder, Format.BINARY );
+		assertTrue( bin.getErrorMessage(), bin.checkInput() && bin.process() );
+
+		for ( final String table : new String[] { StatsExporter.SPOTS, StatsExporter.EDGES, StatsExporter.TRACKS, StatsExporter.BRANCHES } )
+		{
+			final StatsTable expected = StatsExporter.readBinary( bin.getFile( table ) );
+			try (BufferedReader reader = Files.newBufferedReader( csv.getFile( table ).toPath(), StandardCharsets.UTF_8 ))
+			{
+				final String[] keys = split( reader.readLine() );
+				assertEquals( "NAME", keys[ 0 ] );
+				assertEquals( expected.getFeatures().size() + 1, keys.length );
+				for ( int i = 0; i < 3; i++ )
+					reader.readLine();
+
+				int r = 0;
+				String line;
+				while ( null != ( line = reader.readLine() ) )
+				{
+					final String[] values = split( line );
+					assertEquals( expected.getLabel( r ), values[ 0 ] );
+					for ( int c = 1; c < values.length; c++ )
+					{
+						final double val = values[ c ].isEmpty() ? Double.NaN : Double.parseDouble( values[ c ] );
+						assertEquals( table + " " + keys[ c ] + " row " + r, expected.getColumn( keys[ c ] )[ r ], val, 0. );
+					}
+					r++;
+				}
+				assertEquals( expected.size(), r );
+			}
+		}
+	}
+
+	@Test
+	public void testChunkSizeDoesNotChangeOutput() throws IOException
+	{
+		final File a = folder.newFolder();
+		final StatsExporter exporterA = new StatsExporter( model, a, Format.CSV );
+		exporterA.setNumThreads( 1 );
+		assertTrue( exporterA.getErrorMessage(), exporterA.checkInput() && exporterA.process() );
+
+		final File b = folder.newFolder();
+		final StatsExporter exporterB = new StatsExporter( model, b, Format.CSV );
+		exporterB.setChunkSize( 7 );
+		exporterB.setNumThreads( 4 );
+		assertTrue( exporterB.getErrorMessage(), exporterB.checkInput() && exporterB.process() );
+
+		for ( final String table : new String[] { StatsExporter.SPOTS, StatsExporter.EDGES, StatsExporter.TRACKS, StatsExporter.BRANCHES } )
+			assertArrayEquals( table, Files.readAllBytes( exporterA.getFile( table ).toPath() ), Files.readAllBytes( exporterB.getFile( table ).toPath() ) );
+	}
+
+	/**
+	 * Splits a CSV line with all fields quoted and no quote in the values.
+	 */
+	private static String[] split( final String line )
+	{
+		final String[] tokens = line.split( "\",\"", -1 );
+		tokens[ 0 ] = tokens[ 0 ].substring( 1 );
+		final String last = tokens[ tokens.length - 1 ];
+		tokens[ tokens.length - 1 ] = last.substring( 0, last.length() - 1 );
+		return tokens;
+	}
+}
@@ -0,0 +1,247 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import Jama.EigenvalueDecomposition;
+import Jama.Matrix;
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.util.LinAlgHelpers;
+import net.imglib2.util.Util;
+
+/**
+ * Compares the streaming {@link TGMMImporter} with a sequential DOM reading
+ * of synthetic TGMM folders, done the way the importer used to do it.
+ */
+public class TGMMImporterTest
+{
+
+	private static final int N_FRAMES = 25;
+
+	private static final int N_SPOTS = 40;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testSameAsDOMReading() throws IOException, JDOMException
+	{
+		final File dir = folder.newFolder( "tgmm" );
+		final List< AffineTransform3D > transforms = generate( dir, N_FRAMES, N_SPOTS, new Random( 1l ) );
+
+		final TGMMImporter importer = new TGMMImporter( dir, transforms );
+		// Small windows, so that the links across windows are tested.
+		importer.setNumThreads( 2 );
+		assertTrue( importer.getErrorMessage(), importer.checkInput() && importer.process() );
+		final Model model = importer.getResult();
+
+		final Map< String, double[] > expectedSpots = new HashMap<>();
+		final Set< String > expectedLinks = new HashSet<>();
+		readWithDOM( dir, transforms, expectedSpots, expectedLinks );
+
+		assertEquals( expectedSpots.size(), model.getSpots().getNSpots( true ) );
+		for ( final Integer frame : model.getSpots().keySet() )
+		{
+			for ( final Spot spot : model.getSpots().iterable( frame, true ) )
+			{
+				final double[] expected = expectedSpots.get( key( frame.intValue(), spot.getName() ) );
+				assertNotNull( "Unexpected spot " + spot.getName() + " in frame " + frame, expected );
+				assertEquals( expected[ 0 ], spot.getDoublePosition( 0 ), 1e-9 );
+				assertEquals( expected[ 1 ], spot.getDoublePosition( 1 ), 1e-9 );
+				assertEquals( expected[ 2 ], spot.getDoublePosition( 2 ), 1e-9 );
+				assertEquals( expected[ 3 ], spot.getFeature( Spot.RADIUS ).doubleValue(), 1e-9 );
+				assertEquals( expected[ 4 ], spot.getFeature( Spot.QUALITY ).doubleValue(), 1e-9 );
+			}
+		}
+
+		final Set< String > links = new HashSet<>();
+		for ( final DefaultWeightedEdge edge : model.getTrackModel().edgeSet() )
+		{
+			final Spot source = model.getTrackModel().getEdgeSource( edge );
+			final Spot target = model.getTrackModel().getEdgeTarget( edge );
+			final Spot first = source.diffTo( target, Spot.FRAME ) < 0 ? source : target;
+			final Spot second = first == source ? target : source;
+			links.add( key( first.getFeature( Spot.FRAME ).intValue(), first.getName() ) + " -> " + key( second.getFeature( Spot.FRAME ).intValue(), second.getName() ) );
+		}
+		assertFalse( expectedLinks.isEmpty() );
+		assertEquals( expectedLinks, links );
+	}
+
+	@Test
+	public void testMissingAttribute() throws IOException
+	{
+		final File dir = folder.newFolder( "broken" );
+		final List< AffineTransform3D > transforms = generate( dir, 3, 5, new Random( 2l ) );
+		try (Writer writer = new FileWriter( new File( dir, "synthetic_frame0003.xml" ) ))
+		{
+			writer.write( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<document>\n" );
+			writer.write( "<GaussianMixtureModel id=\"0\" lineage=\"0\" parent=\"-1\" splitScore=\"1\" nu=\"1\" W=\"1 0 0 0 1 0 0 0 1\"></GaussianMixtureModel>\n" );
+			writer.write( "</document>\n" );
+		}
+		transforms.add( new AffineTransform3D() );
+
+		final TGMMImporter importer = new TGMMImporter( dir, transforms );
+		assertTrue( importer.checkInput() );
+		assertFalse( importer.process() );
+		assertTrue( importer.getErrorMessage(), importer.getErrorMessage().contains( "centroid" ) );
+	}
+
+	/*
+	 * HELPERS.
+	 */
+
+	private static String key( final int frame, final String name )
+	{
+		return frame + ":" + name;
+	}
+
+	/**
+	 * Writes one TGMM file per frame in the specified folder, with spots that
+	 * divide, disappear and appear, and returns one transform per frame.
+	 */
+	private static List< AffineTransform3D > generate( final File dir, final int nFrames, final int nSpots, final Random ran ) throws IOException
+	{
+		final List< AffineTransform3D > transforms = new ArrayList<>( nFrames );
+		List< Integer > previousIDs = Collections.emptyList();
+		final Map< Integer, Integer > lineages = new HashMap<>();
+		for ( int t = 0; t < nFrames; t++ )
+		{
+			final AffineTransform3D transform = new AffineTransform3D();
+			transform.set( 0.5 + ran.nextDouble(), 0.1 * ran.nextDouble(), 0., 10. * ran.nextDouble(),
+					0., 0.5 + ran.nextDouble(), 0., 10. * ran.nextDouble(),
+					0., 0., 2. + ran.nextDouble(), 0. );
+			transforms.add( transform );
+
+			// IDs are shuffled in each frame.
+			final List< Integer > ids = new ArrayList<>( nSpots );
+			for ( int i = 0; i < nSpots; i++ )
+				ids.add( Integer.valueOf( 1000 * t + i ) );
+			Collections.shuffle( ids, ran );
+
+			try (Writer writer = new FileWriter( new File( dir, String.format( "synthetic_frame%04d.xml", t ) ) ))
+			{
+				writer.write( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<document>\n" );
+				for ( int i = 0; i < nSpots; i++ )
+				{
+					final int parent = ( previousIDs.isEmpty() || ran.nextDouble() < 0.1 ) ? -1 : previousIDs.get( ran.nextInt( previousIDs.size() ) ).intValue();
+					final Integer lineage = ( parent < 0 ) ? Integer.valueOf( lineages.size() ) : lineages.get( Integer.valueOf( parent ) );
+					lineages.put( ids.get( i ), lineage );
+					final double sx = 1. + ran.nextDouble();
+					final double sy = 1. + ran.nextDouble();
+					final double sz = 0.5 + ran.nextDouble();
+					final double cxy = 0.1 * ran.nextDouble();
+					writer.write( String.format( Locale.US,
+							"<GaussianMixtureModel id=\"%d\" lineage=\"%d\" parent=\"%d\" splitScore=\"%d\" scale=\"1 1 1\" nu=\"%f\" beta=\"1\" alpha=\"1\" "
+									+ "m=\"%f %f %f \" W=\"%f %f 0 %f %f 0 0 0 %f \"></GaussianMixtureModel>\n",
+							ids.get( i ), lineage, parent, ran.nextInt( 5 ), 10. + ran.nextDouble(),
+							100. * ran.nextDouble(), 100. * ran.nextDouble(), 20. * ran.nextDouble(),
+							1. / sx, cxy, cxy, 1. / sy, 1. / sz ) );
+				}
+				writer.write( "</document>\n" );
+			}
+			previousIDs = ids;
+		}
+		return transforms;
+	}
+
+	/**
+	 * Reads the folder one file after another in frame order, with a DOM
+	 * parser, the way the importer used to.
+	 */
+	private static void readWithDOM( final File dir, final List< AffineTransform3D > transforms, final Map< String, double[] > spots, final Set< String > links ) throws JDOMException, IOException
+	{
+		final File[] files = dir.listFiles( ( f, name ) -> name.endsWith( ".xml" ) );
+		Arrays.sort( files );
+		final SAXBuilder saxBuilder = new SAXBuilder();
+		Map< Integer, String > previousSpotID = null;
+		for ( int t = 0; t < files.length; t++ )
+		{
+			final AffineTransform3D transform = transforms.get( t );
+			final Map< Integer, String > currentSpotID = new HashMap<>();
+			for ( final Element el : saxBuilder.build( files[ t ] ).getRootElement().getChildren( "GaussianMixtureModel" ) )
+			{
+				final String[] m = el.getAttributeValue( "m" ).split( " " );
+				final double[] source = new double[] { Double.parseDouble( m[ 0 ] ), Double.parseDouble( m[ 1 ] ), Double.parseDouble( m[ 2 ] ) };
+				final double[] target = new double[ 3 ];
+				transform.apply( source, target );
+
+				final int id = Integer.parseInt( el.getAttributeValue( "id" ) );
+				final int parent = Integer.parseInt( el.getAttributeValue( "parent" ) );
+				final double nu = Double.parseDouble( el.getAttributeValue( "nu" ) );
+				final String[] w = el.getAttributeValue( "W" ).split( " " );
+				final double[] vals = new double[ 9 ];
+				for ( int j = 0; j < 9; j++ )
+					vals[ j ] = nu * Double.parseDouble( w[ j ] );
+				final Matrix covMat = new Matrix( vals, 3 ).inverse();
+				final double[][] S = covMat.getArray();
+				final double[][] T = new double[ 3 ][ 3 ];
+				for ( int r = 0; r < 3; ++r )
+					for ( int c = 0; c < 3; ++c )
+						T[ r ][ c ] = transform.get( r, c );
+				final double[][] TS = new double[ 3 ][ 3 ];
+				LinAlgHelpers.mult( T, S, TS );
+				LinAlgHelpers.multABT( TS, T, S );
+				final EigenvalueDecomposition eig = covMat.eig();
+				final double[] radii = eig.getRealEigenvalues();
+				for ( int i = 0; i < radii.length; ++i )
+					radii[ i ] = Math.sqrt( radii[ i ] );
+				final double radius = 2. * Util.average( radii );
+
+				final String name = el.getAttributeValue( "lineage" ) + " (" + id + ")";
+				spots.put( key( t, name ), new double[] { target[ 0 ], target[ 1 ], target[ 2 ], radius, Double.parseDouble( el.getAttributeValue( "splitScore" ) ) } );
+				currentSpotID.put( Integer.valueOf( id ), name );
+				if ( parent >= 0 && null != previousSpotID && previousSpotID.containsKey( Integer.valueOf( parent ) ) )
+					links.add( key( t - 1, previousSpotID.get( Integer.valueOf( parent ) ) ) + " -> " + key( t, name ) );
+			}
+			previousSpotID = currentSpotID;
+		}
+	}
+}
@@ -0,0 +1,151 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.tracking;
+
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_GAP_CLOSING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_TRACK_MERGING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_TRACK_SPLITTING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LAP_SOLVER;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_MAX_DISTANCE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+import org.junit.Before;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.tracking.kdtree.NearestNeighborTracker;
+import fiji.plugin.trackmate.tracking.sparselap.SparseLAPTracker;
+import fiji.plugin.trackmate.tracking.sparselap.linker.LAPSolverType;
+
+public class FrameToFrameTrackerTest
+{
+
+	private static final int N_FRAMES = 20;
+
+	private static final int N_SPOTS = 30;
+
+	private SpotCollection spots;
+
+	@Before
+	public void setUp()
+	{
+		final Random ran = new Random( 1l );
+		spots = new SpotCollection();
+		for ( int frame = 0; frame < N_FRAMES; frame++ )
+		{
+			final List< Spot > list = new ArrayList<>( N_SPOTS );
+			for ( int i = 0; i < N_SPOTS; i++ )
+			{
+				final double x = 20. * i + frame + ran.nextDouble();
+				final double y = 10. + ran.nextDouble();
+				list.add( new Spot( x, y, 0., 1., 1. ) );
+			}
+			spots.put( frame, list );
+		}
+		spots.setVisible( true );
+	}
+
+	@Test
+	public void testNearestNeighbor()
+	{
+		final Map< String, Object > settings = new HashMap<>();
+		settings.put( KEY_LINKING_MAX_DISTANCE, Double.valueOf( 5. ) );
+		checkSameLinks( new NearestNeighborTracker( spots, settings ) );
+	}
+
+	@Test
+	public void testSparseLAP()
+	{
+		final Map< String, Object > settings = LAPUtils.getDefaultLAPSettingsMap();
+		settings.put( KEY_LINKING_MAX_DISTANCE, Double.valueOf( 5. ) );
+		settings.put( KEY_ALLOW_GAP_CLOSING, Boolean.TRUE );
+		final SparseLAPTracker tracker = new SparseLAPTracker( spots, settings );
+		assertFalse( "Tracker with gap-closing should not be frame-to-frame.", tracker.isFrameToFrame() );
+
+		settings.put( KEY_ALLOW_GAP_CLOSING, Boolean.FALSE );
+		settings.put( KEY_ALLOW_TRACK_SPLITTING, Boolean.FALSE );
+		settings.put( KEY_ALLOW_TRACK_MERGING, Boolean.FALSE );
+		assertTrue( "Tracker with linking only should be frame-to-frame.", tracker.isFrameToFrame() );
+		checkSameLinks( tracker );
+	}
+
+	@Test
+	public void testSparseLAPSolvers()
+	{
+		for ( final LAPSolverType type : LAPSolverType.values() )
+		{
+			final Map< String, Object > settings = LAPUtils.getDefaultLAPSettingsMap();
+			settings.put( KEY_LINKING_MAX_DISTANCE, Double.valueOf( 5. ) );
+			settings.put( KEY_ALLOW_GAP_CLOSING, Boolean.FALSE );
+			settings.put( KEY_ALLOW_TRACK_SPLITTING, Boolean.FALSE );
+			settings.put( KEY_ALLOW_TRACK_MERGING, Boolean.FALSE );
+			settings.put( KEY_LAP_SOLVER, type.name() );
+			checkSameLinks( new SparseLAPTracker( spots, settings ) );
+		}
+	}
+
+	private void checkSameLinks( final FrameToFrameTracker tracker )
+	{
+		assertTrue( tracker.getErrorMessage(), tracker.checkInput() && tracker.process() );
+		final Set< String > expected = toLinks( tracker.getResult() );
+		assertEquals( "All spots should have been linked.", ( N_FRAMES - 1 ) * N_SPOTS, expected.size() );
+
+		// Link frame pairs in reverse order, as a pipeline could.
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = new SimpleWeightedGraph<>( DefaultWeightedEdge.class );
+		for ( int frame = N_FRAMES - 1; frame > 0; frame-- )
+		{
+			final List< Spot > sources = new ArrayList<>();
+			spots.iterable( frame - 1, true ).forEach( sources::add );
+			final List< Spot > targets = new ArrayList<>();
+			spots.iterable( frame, true ).forEach( targets::add );
+			assertTrue( tracker.getErrorMessage(), tracker.linkFrames( sources, targets, graph ) );
+		}
+		assertEquals( "Linking frame pairs should yield the same links than processing the collection.", expected, toLinks( graph ) );
+	}
+
+	private static Set< String > toLinks( final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph )
+	{
+		final Set< String > links = new HashSet<>();
+		for ( final DefaultWeightedEdge edge : graph.edgeSet() )
+		{
+			final Spot source = graph.getEdgeSource( edge );
+			final Spot target = graph.getEdgeTarget( edge );
+			final Spot first = source.diffTo( target, Spot.FRAME ) < 0 ? source : target;
+			final Spot second = first == source ? target : source;
+			links.add( first.ID() + "->" + second.ID() );
+		}
+		return links;
+	}
+}
@@ -0,0 +1,228 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.tracking.sparselap.linker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+public class LAPSolversTest
+{
+
+	private static final int N_INSTANCES = 20;
+
+	@Test
+	public void testOptimalSolversMatchLAPJV()
+	{
+		final Random ran = new Random( 1l );
+		for ( int t = 0; t < N_INSTANCES; t++ )
+		{
+			final int n = 1 + ran.nextInt( 200 );
+			final SparseCostMatrix cm = randomMatrix( ran, n, 0.05 );
+			final double expected = solveWithLAPJV( cm );
+
+			final double[] initialDuals = new double[ n ];
+			for ( int j = 0; j < n; j++ )
+				initialDuals[ j ] = ran.nextBoolean() ? Double.NaN : 100. * ran.nextDouble();
+
+			final JonkerVolgenantSolver warm = new JonkerVolgenantSolver( true );
+			warm.setInitialColumnDuals( initialDuals );
+			final AuctionSolver auction = new AuctionSolver();
+			auction.setNumThreads( 1 + t % 4 );
+
+			final LAPSolver[] solvers = new LAPSolver[] { new JonkerVolgenantSolver(), warm, auction };
+			for ( final LAPSolver solver : solvers )
+			{
+				final String name = solver.getClass().getSimpleName() + " on instance " + t;
+				assertTrue( name + ": " + solver.getErrorMessage(), solver.solve( cm ) );
+				assertValid( name, cm, solver.getResult() );
+				assertEquals( name + " found a different assignment cost.", expected, cm.totalAssignmentCost( solver.getResult() ), 1e-9 * expected );
+			}
+		}
+	}
+
+	@Test
+	public void testSolverTypes()
+	{
+		for ( final LAPSolverType type : LAPSolverType.values() )
+			assertEquals( type.toString(), type.create( 1 ).isWarmStarted(), type.isWarmStarted() );
+	}
+
+	@Test
+	public void testWarmStartFromSimilarProblem()
+	{
+		final Random ran = new Random( 2l );
+		final int n = 300;
+		final SparseCostMatrix cm = randomMatrix( ran, n, 0.02 );
+		final JonkerVolgenantSolver solver = new JonkerVolgenantSolver( true );
+		assertTrue( solver.getErrorMessage(), solver.solve( cm ) );
+		final double[] duals = solver.getColumnDuals();
+		assertNotNull( duals );
+
+		// Perturb the costs by a few percents.
+		final double[] cc = cm.cc.clone();
+		for ( int k = 0; k < cc.length; k++ )
+			cc[ k ] *= 1. + 0.05 * ( ran.nextDouble() - 0.5 );
+		final SparseCostMatrix perturbed = new SparseCostMatrix( cc, cm.kk, cm.number, cm.nCols );
+
+		solver.setInitialColumnDuals( duals );
+		assertTrue( solver.getErrorMessage(), solver.solve( perturbed ) );
+		assertValid( "Warm-started solver", perturbed, solver.getResult() );
+		final double expected = solveWithLAPJV( perturbed );
+		assertEquals( "Warm-started solver found a different assignment cost.", expected, perturbed.totalAssignmentCost( solver.getResult() ), 1e-9 * expected );
+	}
+
+	@Test
+	public void testParallelAuction()
+	{
+		final Random ran = new Random( 3l );
+		final int n = 10000;
+		final SparseCostMatrix cm = randomMatrix( ran, n, 5. / n );
+		final AuctionSolver auction = new AuctionSolver();
+		auction.setNumThreads( 4 );
+		assertTrue( auction.getErrorMessage(), auction.solve( cm ) );
+		assertValid( "Auction solver", cm, auction.getResult() );
+		final double expected = solveWithLAPJV( cm );
+		assertEquals( "Auction solver found a different assignment cost.", expected, cm.totalAssignmentCost( auction.getResult() ), 1e-9 * expected );
+	}
+
+	@Test
+	public void testGreedyBoundedGap()
+	{
+		final Random ran = new Random( 4l );
+		for ( int t = 0; t < N_INSTANCES; t++ )
+		{
+			final int n = 1 + ran.nextInt( 200 );
+			final SparseCostMatrix cm = randomMatrix( ran, n, 0.05 );
+			final double optimum = solveWithLAPJV( cm );
+
+			final GreedySolver greedy = new GreedySolver( 0.1 );
+			assertTrue( greedy.getErrorMessage(), greedy.solve( cm ) );
+			assertValid( "Greedy solver", cm, greedy.getResult() );
+			final double cost = cm.totalAssignmentCost( greedy.getResult() );
+			assertTrue( "Greedy solver cost " + cost + " is more than 10% above the optimum " + optimum + ".", cost <= 1.1 * optimum * ( 1. + 1e-9 ) );
+			assertTrue( "Reported gap does not bound the actual gap.", ( cost - optimum ) / optimum <= greedy.getOptimalityGap() + 1e-9 );
+
+			final GreedySolver exact = new GreedySolver( 0. );
+			assertTrue( exact.getErrorMessage(), exact.solve( cm ) );
+			assertEquals( "Greedy solver with a 0 gap should be optimal.", optimum, cm.totalAssignmentCost( exact.getResult() ), 1e-9 * optimum );
+		}
+	}
+
+	@Test
+	public void testGreedyMatchesTrivialProblem()
+	{
+		// Diagonal is the unique solution, and greedy finds it.
+		final double[] cc = new double[] { 1., 10., 10., 1. };
+		final int[] kk = new int[] { 0, 1, 0, 1 };
+		final int[] number = new int[] { 2, 2 };
+		final SparseCostMatrix cm = new SparseCostMatrix( cc, kk, number, 2 );
+		final GreedySolver greedy = new GreedySolver();
+		assertTrue( greedy.getErrorMessage(), greedy.solve( cm ) );
+		assertFalse( greedy.isExact() );
+		assertEquals( 0., greedy.getOptimalityGap(), 1e-12 );
+		assertEquals( 2., cm.totalAssignmentCost( greedy.getResult() ), 1e-12 );
+	}
+
+	private static double solveWithLAPJV( final SparseCostMatrix cm )
+	{
+		final LAPJV lapjv = new LAPJV( cm );
+		assertTrue( lapjv.getErrorMessage(), lapjv.checkInput() && lapjv.process() );
+		return cm.totalAssignmentCost( lapjv.getResult() );
+	}
+
+	private static void assertValid( final String name, final SparseCostMatrix cm, final int[] assignment )
+	{
+		assertNotNull( name + " returned no assignment.", assignment );
+		assertEquals( name + " returned an assignment of the wrong size.", cm.nRows, assignment.length );
+		final boolean[] taken = new boolean[ cm.nCols ];
+		for ( int i = 0; i < assignment.length; i++ )
+		{
+			final int j = assignment[ i ];
+			assertTrue( name + " did not assign row " + i + ".", j >= 0 && j < cm.nCols );
+			assertFalse( name + " assigned column " + j + " twice.", taken[ j ] );
+			taken[ j ] = true;
+			assertTrue( name + " assigned row " + i + " to a forbidden column.", cm.get( i, j, Double.NaN ) > 0 );
+		}
+	}
+
+	/**
+	 * Random square sparse cost matrix with strictly positive costs, made
+	 * feasible by including a random permutation. The LAP trackers always
+	 * solve square problems.
+	 */
+	private static SparseCostMatrix randomMatrix( final Random ran, final int n, final double density )
+	{
+		final int[] perm = new int[ n ];
+		for ( int j = 0; j < n; j++ )
+			perm[ j ] = j;
+		for ( int j = n - 1; j > 0; j-- )
+		{
+			final int r = ran.nextInt( j + 1 );
+			final int tmp = perm[ j ];
+			perm[ j ] = perm[ r ];
+			perm[ r ] = tmp;
+		}
+
+		final int[] number = new int[ n ];
+		final TreeSet< Integer >[] rows = newRows( n );
+		int nnz = 0;
+		for ( int i = 0; i < n; i++ )
+		{
+			rows[ i ].add( Integer.valueOf( perm[ i ] ) );
+			final int nExtra = ( int ) Math.round( density * n * 2 * ran.nextDouble() );
+			for ( int e = 0; e < nExtra; e++ )
+				rows[ i ].add( Integer.valueOf( ran.nextInt( n ) ) );
+			number[ i ] = rows[ i ].size();
+			nnz += number[ i ];
+		}
+
+		final double[] cc = new double[ nnz ];
+		final int[] kk = new int[ nnz ];
+		int k = 0;
+		for ( int i = 0; i < n; i++ )
+		{
+			for ( final Integer j : rows[ i ] )
+			{
+				kk[ k ] = j.intValue();
+				cc[ k ] = 1. + 99. * ran.nextDouble();
+				k++;
+			}
+		}
+		return new SparseCostMatrix( cc, kk, number, n );
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private static TreeSet< Integer >[] newRows( final int nRows )
+	{
+		final TreeSet< Integer >[] rows = new TreeSet[ nRows ];
+		for ( int i = 0; i < nRows; i++ )
+			rows[ i ] = new TreeSet<>();
+		return rows;
+	}
+}
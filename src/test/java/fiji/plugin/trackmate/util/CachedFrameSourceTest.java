@@ -0,0 +1,96 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imglib2.type.numeric.RealType;
+
+public class CachedFrameSourceTest
+{
+
+	private static final int WIDTH = 16;
+
+	private static final int HEIGHT = 8;
+
+	private static final int N_CHANNELS = 2;
+
+	private static final int N_FRAMES = 6;
+
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	@Test
+	public void testFrames()
+	{
+		// Pixel value = 10 * frame + channel.
+		final ImageStack stack = new ImageStack( WIDTH, HEIGHT );
+		for ( int t = 0; t < N_FRAMES; t++ )
+		{
+			for ( int c = 0; c < N_CHANNELS; c++ )
+			{
+				final ByteProcessor ip = new ByteProcessor( WIDTH, HEIGHT );
+				ip.setValue( 10 * t + c );
+				ip.fill();
+				stack.addSlice( ip );
+			}
+		}
+		final ImagePlus imp = new ImagePlus( "Test", stack );
+		imp.setDimensions( N_CHANNELS, 1, N_FRAMES );
+
+		// Room for 2 frames.
+		final long budget = 2l * WIDTH * HEIGHT * N_CHANNELS;
+		final CachedFrameSource source = new CachedFrameSource( imp, budget, 5 );
+		try
+		{
+			assertEquals( "Unexpected cache capacity.", 2, source.getCapacity() );
+
+			// In reverse order to exercise prefetching.
+			final int[] order = new int[ N_FRAMES ];
+			for ( int i = 0; i < N_FRAMES; i++ )
+				order[ i ] = N_FRAMES - 1 - i;
+			source.setProcessingOrder( order );
+
+			for ( final int t : order )
+			{
+				final ImgPlus frame = source.getFrame( t );
+				assertEquals( "Frame images should not have a time axis.", -1, frame.dimensionIndex( Axes.TIME ) );
+				final int cDim = frame.dimensionIndex( Axes.CHANNEL );
+				assertEquals( "Frame images should keep the channel axis.", N_CHANNELS, frame.dimension( cDim ) );
+				for ( int c = 0; c < N_CHANNELS; c++ )
+				{
+					final RealType< ? > pixel = ( RealType< ? > ) TMUtils.hyperSlice( frame, c, t ).firstElement();
+					assertEquals( "Unexpected pixel value at frame " + t + ", channel " + c, 10 * t + c, pixel.getRealDouble(), 0. );
+				}
+			}
+		}
+		finally
+		{
+			source.close();
+		}
+	}
+}
@@ -0,0 +1,199 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class TrackMateExecutorTest
+{
+
+	@Test
+	public void testNestedInvokeAll() throws Exception
+	{
+		final TrackMateExecutor executor = new TrackMateExecutor( 2 );
+		try
+		{
+			final List< Callable< Integer > > outer = new ArrayList<>();
+			for ( int i = 0; i < 8; i++ )
+			{
+				outer.add( () -> {
+					final List< Callable< Integer > > inner = new ArrayList<>();
+					for ( int j = 0; j < 10; j++ )
+					{
+						final int val = j;
+						inner.add( () -> val );
+					}
+					int sum = 0;
+					for ( final Integer val : TrackMateExecutor.current().invokeAll( "Inner", inner, 2 ) )
+						sum += val.intValue();
+
+					// Library-style submission from within a worker.
+					final ExecutorService service = TrackMateExecutor.current().getExecutorService( "Service", 2 );
+					final List< Future< Integer > > futures = new ArrayList<>();
+					for ( int j = 0; j < 10; j++ )
+					{
+						final int val = j;
+						futures.add( service.submit( () -> val ) );
+					}
+					for ( final Future< Integer > future : futures )
+						sum += future.get().intValue();
+					service.shutdown();
+					return Integer.valueOf( sum );
+				} );
+			}
+
+			final List< Integer > results = executor.invokeAll( "Outer", outer, 2 );
+			assertEquals( 8, results.size() );
+			for ( final Integer result : results )
+				assertEquals( 90, result.intValue() );
+
+			assertEquals( 8, executor.getMetrics().get( "Outer" ).getCompletedTasks() );
+			assertEquals( 80, executor.getMetrics().get( "Inner" ).getCompletedTasks() );
+			assertEquals( 0, executor.getMetrics().get( "Inner" ).getQueueDepth() );
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testException() throws Exception
+	{
+		final TrackMateExecutor executor = new TrackMateExecutor( 2 );
+		try
+		{
+			final Callable< Void > failing = () -> {
+				throw new IllegalStateException( "Expected." );
+			};
+			executor.invokeAll( "Failing", Collections.singletonList( failing ), 2 );
+			fail( "An ExecutionException should have been thrown." );
+		}
+		catch ( final ExecutionException e )
+		{
+			assertTrue( e.getCause() instanceof IllegalStateException );
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	@Test( timeout = 10000 )
+	public void testShutdownWhileWaiting() throws Exception
+	{
+		final TrackMateExecutor executor = new TrackMateExecutor( 1 );
+		final CountDownLatch started = new CountDownLatch( 1 );
+		final CountDownLatch release = new CountDownLatch( 1 );
+		final AtomicInteger nRun = new AtomicInteger( 0 );
+
+		// The first task blocks the only worker, ignoring interruptions.
+		final List< Callable< Integer > > tasks = new ArrayList<>();
+		tasks.add( () -> {
+			started.countDown();
+			while ( true )
+			{
+				try
+				{
+					release.await();
+					return Integer.valueOf( 0 );
+				}
+				catch ( final InterruptedException e )
+				{
+					continue;
+				}
+			}
+		} );
+		for ( int i = 1; i < 5; i++ )
+			tasks.add( () -> Integer.valueOf( nRun.incrementAndGet() ) );
+
+		final AtomicReference< Throwable > thrown = new AtomicReference<>();
+		final Thread caller = new Thread( () -> {
+			try
+			{
+				executor.invokeAll( "Blocked", tasks, 1 );
+			}
+			catch ( final Throwable t )
+			{
+				thrown.set( t );
+			}
+		} );
+		caller.start();
+		assertTrue( started.await( 5, TimeUnit.SECONDS ) );
+
+		final ExecutorService service = executor.getExecutorService( "Service", 1 );
+		final Future< Integer > future = service.submit( () -> Integer.valueOf( nRun.incrementAndGet() ) );
+
+		executor.shutdown();
+		release.countDown();
+		caller.join();
+
+		assertTrue( "Expected a CancellationException, got " + thrown.get(), thrown.get() instanceof CancellationException );
+		assertTrue( future.isCancelled() );
+		try
+		{
+			future.get();
+			fail( "A CancellationException should have been thrown." );
+		}
+		catch ( final CancellationException e )
+		{
+			// Expected.
+		}
+		assertEquals( 0, nRun.get() );
+		assertEquals( 0, executor.getMetrics().get( "Blocked" ).getQueueDepth() );
+		assertEquals( 0, executor.getMetrics().get( "Service" ).getQueueDepth() );
+	}
+
+	@Test
+	public void testBinding()
+	{
+		final TrackMateExecutor executor = new TrackMateExecutor( 1 );
+		final TrackMateExecutor previous = TrackMateExecutor.bind( executor );
+		try
+		{
+			assertTrue( TrackMateExecutor.current() == executor );
+		}
+		finally
+		{
+			TrackMateExecutor.bind( previous );
+			executor.shutdown();
+		}
+		assertTrue( TrackMateExecutor.current() != executor );
+	}
+}
@@ -0,0 +1,190 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.visualization.hyperstack;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.features.FeatureUtils;
+import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings;
+import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings.TrackMateObject;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.io.Opener;
+import ij.process.ByteProcessor;
+
+public class OffscreenOverlayCaptureTest
+{
+
+	private static final int N_FRAMES = 5;
+
+	private static final int SIZE = 64;
+
+	private File folder;
+
+	private OffscreenOverlayCapture capture;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		folder = Files.createTempDirectory( "trackmate-capture" ).toFile();
+
+		final ImageStack stack = new ImageStack( SIZE, SIZE );
+		for ( int t = 0; t < N_FRAMES; t++ )
+			stack.addSlice( new ByteProcessor( SIZE, SIZE ) );
+		final ImagePlus imp = new ImagePlus( "Capture test", stack );
+		imp.setDimensions( 1, 1, N_FRAMES );
+
+		final Model model = new Model();
+		model.beginUpdate();
+		try
+		{
+			Spot previous = null;
+			for ( int t = 0; t < N_FRAMES; t++ )
+			{
+				final Spot spot = new Spot( 20. + 4 * t, 32., 0., 3., 1. );
+				model.addSpotTo( spot, t );
+				if ( null != previous )
+					model.addEdge( previous, spot, 1. );
+				previous = spot;
+			}
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+
+		final DisplaySettings ds = DisplaySettings.defaultStyle().copy();
+		ds.setSpotColorBy( TrackMateObject.DEFAULT, FeatureUtils.USE_UNIFORM_COLOR_KEY );
+		ds.setSpotUniformColor( Color.RED );
+		ds.setSpotShowName( false );
+		ds.setTrackColorBy( TrackMateObject.DEFAULT, FeatureUtils.USE_UNIFORM_COLOR_KEY );
+		ds.setTrackUniformColor( Color.GREEN );
+
+		capture = new OffscreenOverlayCapture( model, null, imp, ds );
+		capture.setNumThreads( 2 );
+	}
+
+	@After
+	public void tearDown()
+	{
+		final File[] files = folder.listFiles();
+		if ( null != files )
+			for ( final File file : files )
+				file.delete();
+		folder.delete();
+	}
+
+	@Test
+	public void testRender()
+	{
+		for ( int frame = 1; frame <= N_FRAMES; frame++ )
+		{
+			final BufferedImage image = capture.render( frame );
+			assertEquals( SIZE, image.getWidth() );
+			assertEquals( SIZE, image.getHeight() );
+
+			// Something painted around the spot.
+			final int xc = 20 + 4 * ( frame - 1 );
+			boolean painted = false;
+			for ( int y = 32 - 5; y <= 32 + 5; y++ )
+				for ( int x = xc - 5; x <= xc + 5; x++ )
+					painted |= ( image.getRGB( x, y ) & 0xffffff ) != 0;
+			assertTrue( "The spot of frame " + frame + " should be painted.", painted );
+
+			// Nothing far from it, the image is black.
+			assertEquals( 0, image.getRGB( 2, 2 ) & 0xffffff );
+			assertEquals( 0, image.getRGB( SIZE - 3, SIZE - 3 ) & 0xffffff );
+		}
+	}
+
+	@Test
+	public void testMagnification()
+	{
+		capture.setMagnification( 2. );
+		final BufferedImage image = capture.render( 1 );
+		assertEquals( 2 * SIZE, image.getWidth() );
+		assertEquals( 2 * SIZE, image.getHeight() );
+	}
+
+	@Test
+	public void testExportToTiff()
+	{
+		final File file = new File( folder, "capture.tif" );
+		assertTrue( capture.getErrorMessage(), capture.exportToTiff( file, 1, N_FRAMES ) );
+
+		final ImagePlus imp = new Opener().openImage( file.getAbsolutePath() );
+		assertNotNull( imp );
+		assertEquals( ImagePlus.COLOR_RGB, imp.getType() );
+		assertEquals( SIZE, imp.getWidth() );
+		assertEquals( SIZE, imp.getHeight() );
+		assertEquals( N_FRAMES, imp.getStackSize() );
+		assertEquals( N_FRAMES, imp.getNFrames() );
+		for ( int frame = 1; frame <= N_FRAMES; frame++ )
+		{
+			final int[] expected = pixels( capture.render( frame ) );
+			final int[] actual = ( int[] ) imp.getStack().getPixels( frame );
+			for ( int i = 0; i < actual.length; i++ )
+				actual[ i ] &= 0xffffff;
+			assertArrayEquals( "Frame " + frame, expected, actual );
+		}
+	}
+
+	@Test
+	public void testExportToPngSequence() throws IOException
+	{
+		assertTrue( capture.getErrorMessage(), capture.exportToPngSequence( folder, "capture-", 2, 4 ) );
+
+		final File[] files = folder.listFiles( ( dir, name ) -> name.endsWith( ".png" ) );
+		assertEquals( 3, files.length );
+		for ( int frame = 2; frame <= 4; frame++ )
+		{
+			final File file = new File( folder, String.format( "capture-%04d.png", frame ) );
+			assertTrue( file.exists() );
+			assertArrayEquals( "Frame " + frame, pixels( capture.render( frame ) ), pixels( ImageIO.read( file ) ) );
+		}
+	}
+
+	private static int[] pixels( final BufferedImage image )
+	{
+		final int[] pixels = image.getRGB( 0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth() );
+		for ( int i = 0; i < pixels.length; i++ )
+			pixels[ i ] &= 0xffffff;
+		return pixels;
+	}
+}
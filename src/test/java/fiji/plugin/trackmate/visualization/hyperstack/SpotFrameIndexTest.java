@@ -0,0 +1,271 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.visualization.hyperstack;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.features.FeatureUtils;
+import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings;
+import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings.TrackMateObject;
+import ij.ImagePlus;
+import ij.process.ByteProcessor;
+
+public class SpotFrameIndexTest
+{
+
+	private static final int SIZE = 256;
+
+	private static final int FRAME = 2;
+
+	@Test
+	public void testQueryFindsSpotsIntersectingView()
+	{
+		final Random ran = new Random( 1l );
+		final List< Spot > spots = new ArrayList<>();
+		for ( int i = 0; i < 2000; i++ )
+		{
+			// Mostly small spots, some much larger than the grid cells.
+			final double radius = ran.nextDouble() < 0.02 ? 20. + 30. * ran.nextDouble() : 1. + 3. * ran.nextDouble();
+			spots.add( new Spot( ran.nextDouble() * SIZE, ran.nextDouble() * SIZE, 0., radius, 1. ) );
+		}
+		final double[] calibration = new double[] { 0.5, 0.5, 1. };
+		final SpotFrameIndex index = SpotFrameIndex.build( spots, calibration );
+		assertEquals( spots.size(), index.size() );
+
+		for ( int i = 0; i < 200; i++ )
+		{
+			final double minx = ran.nextDouble() * 2. * SIZE - 40.;
+			final double miny = ran.nextDouble() * 2. * SIZE - 40.;
+			final double maxx = minx + 1. + ran.nextDouble() * SIZE / 2;
+			final double maxy = miny + 1. + ran.nextDouble() * SIZE / 2;
+			final double radiusRatio = 0.5 + 1.5 * ran.nextDouble();
+
+			final List< Spot > reported = new ArrayList<>();
+			index.forEachSpot( minx, miny, maxx, maxy, radiusRatio, 0., k -> reported.add( index.getSpot( k ) ) );
+			final Set< Spot > actual = new HashSet<>( reported );
+			assertEquals( "Spots reported more than once.", reported.size(), actual.size() );
+
+			for ( final Spot spot : spots )
+			{
+				// The painted disc, in pixel coordinates.
+				final double xp = spot.getFeature( Spot.POSITION_X ) / calibration[ 0 ] + 0.5;
+				final double yp = spot.getFeature( Spot.POSITION_Y ) / calibration[ 1 ] + 0.5;
+				final double r = spot.getFeature( Spot.RADIUS ) * radiusRatio / calibration[ 0 ];
+				final double dx = xp - Math.max( minx, Math.min( maxx, xp ) );
+				final double dy = yp - Math.max( miny, Math.min( maxy, yp ) );
+				if ( dx * dx + dy * dy <= r * r )
+					assertTrue( "Spot at " + xp + ", " + yp + " with radius " + r + " crosses the view x = [" + minx + ", " + maxx + "], y = [" + miny + ", " + maxy + "] but was not reported.",
+							actual.contains( spot ) );
+			}
+		}
+	}
+
+	@Test
+	public void testCulledPaintingMatchesFullPainting()
+	{
+		final Random ran = new Random( 2l );
+		final OverlayFixture fixture = new OverlayFixture();
+		/*
+		 * Filled discs: Java2D strokes shapes cut by the image border
+		 * slightly differently, filling does not depend on it.
+		 */
+		fixture.displaySettings.setSpotFilled( true );
+		fixture.model.beginUpdate();
+		try
+		{
+			for ( int i = 0; i < 300; i++ )
+			{
+				final double radius = ran.nextDouble() < 0.05 ? 15. + 20. * ran.nextDouble() : 1. + 3. * ran.nextDouble();
+				fixture.model.addSpotTo( new Spot( ran.nextDouble() * SIZE, ran.nextDouble() * SIZE, 0., radius, 1. ), FRAME );
+			}
+		}
+		finally
+		{
+			fixture.model.endUpdate();
+		}
+
+		final BufferedImage full = fixture.paint( FRAME, 0, 0, SIZE, SIZE );
+		for ( int i = 0; i < 20; i++ )
+		{
+			// Views that cut through the spots, including the large ones.
+			final int xcorner = ran.nextInt( SIZE - 10 );
+			final int ycorner = ran.nextInt( SIZE - 10 );
+			final int width = 10 + ran.nextInt( SIZE - xcorner - 9 );
+			final int height = 10 + ran.nextInt( SIZE - ycorner - 9 );
+			final BufferedImage view = fixture.paint( FRAME, xcorner, ycorner, width, height );
+			assertArrayEquals( "View at " + xcorner + ", " + ycorner + " of size " + width + " x " + height,
+					pixels( full, xcorner, ycorner, width, height ), pixels( view, 0, 0, width, height ) );
+		}
+	}
+
+	@Test
+	public void testSpotMoved()
+	{
+		final OverlayFixture fixture = new OverlayFixture();
+		final Spot spot = fixture.addSpot( 20., 20., FRAME );
+		assertTrue( fixture.painted( FRAME, 0, 0, 50 ) );
+		assertFalse( fixture.painted( FRAME, 150, 150, 50 ) );
+
+		fixture.model.beginUpdate();
+		try
+		{
+			spot.putFeature( Spot.POSITION_X, 170. );
+			spot.putFeature( Spot.POSITION_Y, 170. );
+			fixture.model.updateFeatures( spot );
+		}
+		finally
+		{
+			fixture.model.endUpdate();
+		}
+		assertFalse( "A moved spot must not be painted at its old position.", fixture.painted( FRAME, 0, 0, 50 ) );
+		assertTrue( "A moved spot must be painted at its new position.", fixture.painted( FRAME, 150, 150, 50 ) );
+	}
+
+	@Test
+	public void testSpotMovedToOtherFrame()
+	{
+		final OverlayFixture fixture = new OverlayFixture();
+		final Spot spot = fixture.addSpot( 20., 20., FRAME );
+		assertTrue( fixture.painted( FRAME, 0, 0, 50 ) );
+		assertFalse( fixture.painted( FRAME + 1, 0, 0, 50 ) );
+
+		fixture.model.beginUpdate();
+		try
+		{
+			fixture.model.moveSpotFrom( spot, FRAME, FRAME + 1 );
+		}
+		finally
+		{
+			fixture.model.endUpdate();
+		}
+		assertFalse( "A spot must not be painted in the frame it left.", fixture.painted( FRAME, 0, 0, 50 ) );
+		assertTrue( "A spot must be painted in the frame it moved to.", fixture.painted( FRAME + 1, 0, 0, 50 ) );
+	}
+
+	@Test
+	public void testSpotRemoved()
+	{
+		final OverlayFixture fixture = new OverlayFixture();
+		final Spot spot = fixture.addSpot( 20., 20., FRAME );
+		fixture.addSpot( 170., 170., FRAME );
+		assertTrue( fixture.painted( FRAME, 0, 0, 50 ) );
+
+		fixture.model.beginUpdate();
+		try
+		{
+			fixture.model.removeSpot( spot );
+		}
+		finally
+		{
+			fixture.model.endUpdate();
+		}
+		assertFalse( "A removed spot must not be painted.", fixture.painted( FRAME, 0, 0, 50 ) );
+		assertTrue( fixture.painted( FRAME, 150, 150, 50 ) );
+	}
+
+	private static int[] pixels( final BufferedImage image, final int x, final int y, final int width, final int height )
+	{
+		final int[] pixels = image.getRGB( x, y, width, height, null, 0, width );
+		for ( int i = 0; i < pixels.length; i++ )
+			pixels[ i ] &= 0xffffff;
+		return pixels;
+	}
+
+	/**
+	 * A spot overlay following an empty model, painting the spots in red.
+	 */
+	private static class OverlayFixture
+	{
+
+		private final Model model = new Model();
+
+		private final DisplaySettings displaySettings = DisplaySettings.defaultStyle().copy();
+
+		private final SpotOverlay overlay;
+
+		private OverlayFixture()
+		{
+			displaySettings.setSpotColorBy( TrackMateObject.DEFAULT, FeatureUtils.USE_UNIFORM_COLOR_KEY );
+			displaySettings.setSpotUniformColor( Color.RED );
+			displaySettings.setSpotShowName( false );
+			displaySettings.setSpotTransparencyAlpha( 1. );
+			displaySettings.setUseAntialiasing( false );
+			displaySettings.setZDrawingDepthLimited( false );
+
+			final ImagePlus imp = new ImagePlus( "Spot overlay test", new ByteProcessor( SIZE, SIZE ) );
+			overlay = new SpotOverlay( model, imp, displaySettings );
+			model.addModelChangeListener( overlay::modelChanged );
+		}
+
+		private Spot addSpot( final double x, final double y, final int frame )
+		{
+			final Spot spot = new Spot( x, y, 0., 3., 1. );
+			model.beginUpdate();
+			try
+			{
+				model.addSpotTo( spot, frame );
+			}
+			finally
+			{
+				model.endUpdate();
+			}
+			return spot;
+		}
+
+		private BufferedImage paint( final int frame, final int xcorner, final int ycorner, final int width, final int height )
+		{
+			final BufferedImage image = new BufferedImage( width, height, BufferedImage.TYPE_INT_RGB );
+			final Graphics2D g2d = image.createGraphics();
+			overlay.drawFrame( g2d, frame, 0., xcorner, ycorner, 1., width, height );
+			g2d.dispose();
+			return image;
+		}
+
+		/**
+		 * Paints the spots in a square view and returns whether anything was
+		 * painted. The first call for a frame builds its index.
+		 */
+		private boolean painted( final int frame, final int xcorner, final int ycorner, final int size )
+		{
+			for ( final int pixel : pixels( paint( frame, xcorner, ycorner, size, size ), 0, 0, size, size ) )
+				if ( pixel != 0 )
+					return true;
+			return false;
+		}
+	}
+}
@@ -0,0 +1,137 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.visualization.hyperstack;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.features.FeatureUtils;
+import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings;
+import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings.TrackMateObject;
+import fiji.plugin.trackmate.visualization.FeatureColorGenerator;
+import ij.ImagePlus;
+import ij.process.ByteProcessor;
+import net.imglib2.util.Util;
+
+/**
+ * Headless benchmark of the {@link SpotOverlay} painting, with 10<sup>6</sup>
+ * spots in one frame, rendered into a {@link BufferedImage}.
+ * <p>
+ * Three views are compared: zoomed in on a small region, at 100% on a region
+ * of the size of the view, and zoomed out on the whole image, where the spots
+ * are painted as a density raster. Each view is painted with the batched and
+ * culled painting of the overlay, and by painting every spot of the frame one
+ * by one, as the overlay used to do. Run with <code>-Djava.awt.headless=true</code>.
+ */
+public class SpotOverlayBenchmark
+{
+
+	private static final int N_SPOTS = 1_000_000;
+
+	private static final int IMAGE_SIZE = 10_000;
+
+	private static final int VIEW_SIZE = 1024;
+
+	private static final int N_TESTS = 10;
+
+	public static void main( final String[] args )
+	{
+		final Model model = new Model();
+		final Random ran = new Random( 1l );
+		model.beginUpdate();
+		try
+		{
+			for ( int i = 0; i < N_SPOTS; i++ )
+			{
+				final Spot spot = new Spot( ran.nextDouble() * IMAGE_SIZE, ran.nextDouble() * IMAGE_SIZE, 0., 2., ran.nextDouble() );
+				model.addSpotTo( spot, 0 );
+			}
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+
+		final ImagePlus imp = new ImagePlus( "Benchmark", new ByteProcessor( IMAGE_SIZE, IMAGE_SIZE ) );
+		final DisplaySettings ds = DisplaySettings.defaultStyle().copy();
+		ds.setSpotShowName( false );
+
+		System.out.println( String.format( "Painting %d spots in a %d x %d view.", N_SPOTS, VIEW_SIZE, VIEW_SIZE ) );
+		System.out.println( String.format( "%-10s  %-14s  %14s  %14s", "Coloring", "View", "Batched (ms)", "One by one (ms)" ) );
+		for ( final boolean uniform : new boolean[] { true, false } )
+		{
+			if ( uniform )
+				ds.setSpotColorBy( TrackMateObject.DEFAULT, FeatureUtils.USE_UNIFORM_COLOR_KEY );
+			else
+				ds.setSpotColorBy( TrackMateObject.SPOTS, Spot.QUALITY );
+			ds.setSpotMinMax( 0., 1. );
+
+			final SpotOverlay overlay = new SpotOverlay( model, imp, ds );
+			bench( overlay, model, ds, uniform, "Zoom 800%", 8., IMAGE_SIZE / 2, IMAGE_SIZE / 2 );
+			bench( overlay, model, ds, uniform, "Zoom 100%", 1., IMAGE_SIZE / 2, IMAGE_SIZE / 2 );
+			bench( overlay, model, ds, uniform, "Whole image", ( double ) VIEW_SIZE / IMAGE_SIZE, 0, 0 );
+		}
+	}
+
+	private static void bench( final SpotOverlay overlay, final Model model, final DisplaySettings ds, final boolean uniform, final String name, final double magnification, final int xcorner, final int ycorner )
+	{
+		final BufferedImage image = new BufferedImage( VIEW_SIZE, VIEW_SIZE, BufferedImage.TYPE_INT_ARGB );
+		final double[] batched = new double[ N_TESTS ];
+		final double[] oneByOne = new double[ N_TESTS ];
+		for ( int t = 0; t < N_TESTS; t++ )
+		{
+			Graphics2D g2d = createGraphics( image, ds );
+			long start = System.nanoTime();
+			overlay.drawSpots( g2d, 0, 0., xcorner, ycorner, magnification, VIEW_SIZE, VIEW_SIZE );
+			long end = System.nanoTime();
+			g2d.dispose();
+			batched[ t ] = ( end - start ) / 1e6;
+
+			g2d = createGraphics( image, ds );
+			start = System.nanoTime();
+			final FeatureColorGenerator< Spot > colorGenerator = FeatureUtils.createSpotColorGenerator( model, ds );
+			for ( final Spot spot : model.getSpots().iterable( 0, true ) )
+			{
+				g2d.setColor( colorGenerator.color( spot ) );
+				overlay.drawSpot( g2d, spot, 0., xcorner, ycorner, magnification, ds.isSpotFilled() );
+			}
+			end = System.nanoTime();
+			g2d.dispose();
+			oneByOne[ t ] = ( end - start ) / 1e6;
+		}
+		System.out.println( String.format( "%-10s  %-14s  %14.1f  %14.1f",
+				uniform ? "Uniform" : "Quality", name, Util.median( batched ), Util.median( oneByOne ) ) );
+	}
+
+	private static Graphics2D createGraphics( final BufferedImage image, final DisplaySettings ds )
+	{
+		final Graphics2D g2d = image.createGraphics();
+		g2d.setComposite( AlphaComposite.getInstance( AlphaComposite.SRC_OVER, ( float ) ds.getSpotTransparencyAlpha() ) );
+		g2d.setStroke( new BasicStroke( ( float ) ds.getLineThickness() ) );
+		return g2d;
+	}
+}
@@ -0,0 +1,174 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.visualization.hyperstack;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.TrackModel;
+import net.imglib2.util.Util;
+
+/**
+ * Measures the time needed to find the edges to paint in a fixed viewport and
+ * time window, as the total number of edges grows. The density of edges per
+ * area and per frame is kept constant: the field of view grows with the
+ * number of edges, so the number of edges actually painted stays the same.
+ * <p>
+ * The query time with the {@link TrackEdgeIndex} should stay flat, while
+ * iterating over all the edges, as {@link TrackOverlay} did before, grows
+ * linearly. Going up to 10<sup>7</sup> edges requires a large heap, e.g.
+ * <code>-Xmx24g</code>. The largest number of edges can be passed as first
+ * argument.
+ */
+public class TrackEdgeIndexBenchmark
+{
+
+	private static final int N_FRAMES = 100;
+
+	private static final double EDGES_PER_PIXEL_PER_FRAME = 1e-3;
+
+	private static final int VIEWPORT = 512;
+
+	private static final int TIME_WINDOW = 10;
+
+	private static final int N_TESTS = 20;
+
+	public static void main( final String[] args )
+	{
+		final long maxEdges = args.length > 0 ? Long.parseLong( args[ 0 ] ) : 10_000_000l;
+		final double[] calibration = new double[] { 1., 1., 1. };
+		final Random ran = new Random( 1l );
+
+		System.out.println( String.format( "%10s  %10s  %12s  %12s  %12s", "N edges", "Painted", "Build (ms)", "Index (ms)", "Scan all (ms)" ) );
+		for ( long nEdges = 10_000; nEdges <= maxEdges; nEdges *= 10 )
+		{
+			final TrackModel trackModel = createTracks( ( int ) nEdges, ran );
+
+			final long startBuild = System.currentTimeMillis();
+			final TrackEdgeIndex index = TrackEdgeIndex.build( trackModel, calibration );
+			final long endBuild = System.currentTimeMillis();
+
+			final double size = Math.sqrt( nEdges / N_FRAMES / EDGES_PER_PIXEL_PER_FRAME );
+			final double minx = ( size - VIEWPORT ) / 2;
+			final double maxx = minx + VIEWPORT;
+			final int minT = N_FRAMES / 2 - TIME_WINDOW;
+			final int maxT = N_FRAMES / 2 + TIME_WINDOW;
+
+			final double[] indexTimes = new double[ N_TESTS ];
+			final double[] scanTimes = new double[ N_TESTS ];
+			final int[] nCandidates = new int[ 1 ];
+			for ( int t = 0; t < N_TESTS; t++ )
+			{
+				nCandidates[ 0 ] = 0;
+				final long start = System.nanoTime();
+				index.forEachEdge( minT, maxT, minx, minx, maxx, maxx, e -> {
+					if ( isInside( index.getSource( e ), minx, maxx ) || isInside( index.getTarget( e ), minx, maxx ) )
+						nCandidates[ 0 ]++;
+				} );
+				final long end = System.nanoTime();
+				indexTimes[ t ] = ( end - start ) / 1e6;
+
+				// What the overlay used to do: look at every edge.
+				final long startScan = System.nanoTime();
+				int nScanned = 0;
+				for ( final Integer trackID : trackModel.unsortedTrackIDs( true ) )
+				{
+					for ( final DefaultWeightedEdge edge : trackModel.trackEdges( trackID ) )
+					{
+						final Spot source = trackModel.getEdgeSource( edge );
+						final int frame = source.getFeature( Spot.FRAME ).intValue();
+						if ( frame < minT || frame >= maxT )
+							continue;
+						if ( isInside( source, minx, maxx ) || isInside( trackModel.getEdgeTarget( edge ), minx, maxx ) )
+							nScanned++;
+					}
+				}
+				final long endScan = System.nanoTime();
+				scanTimes[ t ] = ( endScan - startScan ) / 1e6;
+				if ( nScanned != nCandidates[ 0 ] )
+					throw new IllegalStateException( "The index missed edges: " + nCandidates[ 0 ] + " instead of " + nScanned + "." );
+			}
+
+			System.out.println( String.format( "%10d  %10d  %12d  %12.3f  %12.3f",
+					nEdges, nCandidates[ 0 ], endBuild - startBuild, Util.median( indexTimes ), Util.median( scanTimes ) ) );
+		}
+	}
+
+	private static boolean isInside( final Spot spot, final double min, final double max )
+	{
+		final double x = spot.getFeature( Spot.POSITION_X ) + 0.5;
+		final double y = spot.getFeature( Spot.POSITION_Y ) + 0.5;
+		return x > min && x < max && y > min && y < max;
+	}
+
+	/**
+	 * Creates linear tracks spanning all the frames, spread uniformly over a
+	 * square field whose area grows with the number of edges.
+	 */
+	private static TrackModel createTracks( final int nEdges, final Random ran )
+	{
+		final double size = Math.sqrt( nEdges / N_FRAMES / EDGES_PER_PIXEL_PER_FRAME );
+		final int nTracks = Math.max( 1, nEdges / ( N_FRAMES - 1 ) );
+
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = new SimpleWeightedGraph<>( DefaultWeightedEdge.class );
+		final Map< Integer, Set< Spot > > trackSpots = new HashMap<>( nTracks );
+		final Map< Integer, Set< DefaultWeightedEdge > > trackEdges = new HashMap<>( nTracks );
+		final Map< Integer, Boolean > visibility = new HashMap<>( nTracks );
+		final Map< Integer, String > names = new HashMap<>( nTracks );
+		for ( int i = 0; i < nTracks; i++ )
+		{
+			final Set< Spot > spots = new HashSet<>( 2 * N_FRAMES );
+			final Set< DefaultWeightedEdge > edges = new HashSet<>( 2 * N_FRAMES );
+			double x = ran.nextDouble() * size;
+			double y = ran.nextDouble() * size;
+			Spot previous = null;
+			for ( int frame = 0; frame < N_FRAMES; frame++ )
+			{
+				final Spot spot = new Spot( x, y, 0., 1., 1. );
+				spot.putFeature( Spot.FRAME, Double.valueOf( frame ) );
+				graph.addVertex( spot );
+				spots.add( spot );
+				if ( null != previous )
+					edges.add( graph.addEdge( previous, spot ) );
+				previous = spot;
+				x = Math.max( 0., Math.min( size, x + ran.nextGaussian() * 2. ) );
+				y = Math.max( 0., Math.min( size, y + ran.nextGaussian() * 2. ) );
+			}
+			trackSpots.put( i, spots );
+			trackEdges.put( i, edges );
+			visibility.put( i, Boolean.TRUE );
+			names.put( i, "Track_" + i );
+		}
+
+		final TrackModel trackModel = new Model().getTrackModel();
+		trackModel.from( graph, trackSpots, trackEdges, visibility, names );
+		return trackModel;
+	}
+}
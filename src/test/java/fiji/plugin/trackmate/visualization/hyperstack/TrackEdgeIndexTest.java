@@ -0,0 +1,290 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.visualization.hyperstack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.TrackModel;
+import fiji.plugin.trackmate.features.FeatureUtils;
+import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings;
+import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings.TrackDisplayMode;
+import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings.TrackMateObject;
+import ij.ImagePlus;
+import ij.process.ByteProcessor;
+
+public class TrackEdgeIndexTest
+{
+
+	private static final int SIZE = 256;
+
+	private static final int N_FRAMES = 20;
+
+	/** The first frame with spots, so that frame indices have an offset. */
+	private static final int FIRST_FRAME = 3;
+
+	@Test
+	public void testQueryMatchesFullScan()
+	{
+		final Random ran = new Random( 1l );
+		final Model model = new Model();
+		model.beginUpdate();
+		try
+		{
+			for ( int track = 0; track < 50; track++ )
+			{
+				double x = ran.nextDouble() * SIZE;
+				double y = ran.nextDouble() * SIZE;
+				Spot previous = null;
+				for ( int t = FIRST_FRAME; t < N_FRAMES; t++ )
+				{
+					// Mostly short steps, some across the whole image.
+					final double step = ran.nextDouble() < 0.1 ? SIZE : 10.;
+					x = Math.max( 0., Math.min( SIZE, x + step * ( ran.nextDouble() - 0.5 ) ) );
+					y = Math.max( 0., Math.min( SIZE, y + step * ( ran.nextDouble() - 0.5 ) ) );
+					final Spot spot = model.addSpotTo( new Spot( x, y, 0., 1., 1. ), t );
+					if ( null != previous )
+						model.addEdge( previous, spot, 1. );
+					previous = spot;
+				}
+			}
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+		final TrackModel trackModel = model.getTrackModel();
+		int hidden = 0;
+		for ( final Integer trackID : trackModel.trackIDs( false ) )
+			if ( hidden++ % 5 == 0 )
+				model.setTrackVisibility( trackID, false );
+
+		final double[] calibration = new double[] { 0.5, 0.5, 1. };
+		final TrackEdgeIndex index = TrackEdgeIndex.build( trackModel, calibration );
+
+		// Whole image and all frames, as in the FULL display mode.
+		assertQueryMatchesFullScan( index, trackModel, calibration, Integer.MIN_VALUE, Integer.MAX_VALUE, 0., 0., 2. * SIZE, 2. * SIZE );
+		// Outside of the image.
+		assertQueryMatchesFullScan( index, trackModel, calibration, Integer.MIN_VALUE, Integer.MAX_VALUE, -100., -100., -10., -10. );
+		for ( int i = 0; i < 200; i++ )
+		{
+			final int minT = ran.nextInt( N_FRAMES + 4 ) - 2;
+			final int maxT = minT + 1 + ran.nextInt( 5 );
+			final double minx = ran.nextDouble() * 2. * SIZE - 20.;
+			final double miny = ran.nextDouble() * 2. * SIZE - 20.;
+			final double width = 1. + ran.nextDouble() * SIZE;
+			final double height = 1. + ran.nextDouble() * SIZE;
+			assertQueryMatchesFullScan( index, trackModel, calibration, minT, maxT, minx, miny, minx + width, miny + height );
+		}
+	}
+
+	private static void assertQueryMatchesFullScan( final TrackEdgeIndex index, final TrackModel trackModel, final double[] calibration,
+			final int minT, final int maxT, final double minx, final double miny, final double maxx, final double maxy )
+	{
+		// What TrackOverlay painted before the index.
+		final Set< DefaultWeightedEdge > expected = new HashSet<>();
+		for ( final Integer trackID : trackModel.trackIDs( true ) )
+		{
+			for ( final DefaultWeightedEdge edge : trackModel.trackEdges( trackID ) )
+			{
+				final Spot source = trackModel.getEdgeSource( edge );
+				final Spot target = trackModel.getEdgeTarget( edge );
+				final int frame = source.getFeature( Spot.FRAME ).intValue();
+				if ( frame >= minT && frame < maxT && TrackOverlay.isOnClip( source, target, minx, miny, maxx, maxy, calibration ) )
+					expected.add( edge );
+			}
+		}
+
+		final List< DefaultWeightedEdge > reported = new ArrayList<>();
+		index.forEachEdge( minT, maxT, minx, miny, maxx, maxy, e -> reported.add( index.getEdge( e ) ) );
+		assertEquals( "Edges reported more than once.", reported.size(), new HashSet<>( reported ).size() );
+
+		final Set< DefaultWeightedEdge > actual = new HashSet<>();
+		for ( final DefaultWeightedEdge edge : reported )
+		{
+			final Spot source = trackModel.getEdgeSource( edge );
+			final Spot target = trackModel.getEdgeTarget( edge );
+			final int frame = source.getFeature( Spot.FRAME ).intValue();
+			assertTrue( "Edge reported out of the time window.", frame >= minT && frame < maxT );
+			if ( TrackOverlay.isOnClip( source, target, minx, miny, maxx, maxy, calibration ) )
+				actual.add( edge );
+		}
+		assertEquals( "Query t = [" + minT + ", " + maxT + "[, x = [" + minx + ", " + maxx + "], y = [" + miny + ", " + maxy + "]",
+				expected, actual );
+	}
+
+	@Test
+	public void testEdgeAdded()
+	{
+		final OverlayFixture fixture = new OverlayFixture();
+		assertFalse( fixture.painted( 150, 150, 50 ) );
+
+		fixture.model.beginUpdate();
+		try
+		{
+			final Spot source = fixture.model.addSpotTo( new Spot( 160., 170., 0., 1., 1. ), FIRST_FRAME );
+			final Spot target = fixture.model.addSpotTo( new Spot( 180., 170., 0., 1., 1. ), FIRST_FRAME + 1 );
+			fixture.model.addEdge( source, target, 1. );
+		}
+		finally
+		{
+			fixture.model.endUpdate();
+		}
+		assertTrue( "A new edge must be painted.", fixture.painted( 150, 150, 50 ) );
+		assertTrue( fixture.painted( 0, 0, 50 ) );
+	}
+
+	@Test
+	public void testEdgeRemoved()
+	{
+		final OverlayFixture fixture = new OverlayFixture();
+		assertTrue( fixture.painted( 0, 0, 50 ) );
+
+		fixture.model.beginUpdate();
+		try
+		{
+			fixture.model.removeEdge( fixture.source, fixture.target );
+		}
+		finally
+		{
+			fixture.model.endUpdate();
+		}
+		assertFalse( "A removed edge must not be painted.", fixture.painted( 0, 0, 50 ) );
+	}
+
+	@Test
+	public void testSpotsMoved()
+	{
+		final OverlayFixture fixture = new OverlayFixture();
+		assertTrue( fixture.painted( 0, 0, 50 ) );
+		assertFalse( fixture.painted( 150, 150, 50 ) );
+
+		fixture.model.beginUpdate();
+		try
+		{
+			fixture.source.putFeature( Spot.POSITION_X, 160. );
+			fixture.source.putFeature( Spot.POSITION_Y, 170. );
+			fixture.target.putFeature( Spot.POSITION_X, 180. );
+			fixture.target.putFeature( Spot.POSITION_Y, 170. );
+			fixture.model.updateFeatures( fixture.source );
+			fixture.model.updateFeatures( fixture.target );
+		}
+		finally
+		{
+			fixture.model.endUpdate();
+		}
+		assertFalse( "A moved edge must not be painted at its old position.", fixture.painted( 0, 0, 50 ) );
+		assertTrue( "A moved edge must be painted at its new position.", fixture.painted( 150, 150, 50 ) );
+	}
+
+	@Test
+	public void testTrackHidden()
+	{
+		final OverlayFixture fixture = new OverlayFixture();
+		assertTrue( fixture.painted( 0, 0, 50 ) );
+
+		final Integer trackID = fixture.model.getTrackModel().trackIDOf( fixture.source );
+		fixture.model.beginUpdate();
+		try
+		{
+			fixture.model.setTrackVisibility( trackID, false );
+		}
+		finally
+		{
+			fixture.model.endUpdate();
+		}
+		assertFalse( "The edges of a hidden track must not be painted.", fixture.painted( 0, 0, 50 ) );
+	}
+
+	/**
+	 * A track overlay following a model made of one edge, painting the
+	 * tracks in green.
+	 */
+	private static class OverlayFixture
+	{
+
+		private final Model model = new Model();
+
+		private final Spot source = new Spot( 10., 20., 0., 1., 1. );
+
+		private final Spot target = new Spot( 30., 20., 0., 1., 1. );
+
+		private final TrackOverlay overlay;
+
+		private OverlayFixture()
+		{
+			model.beginUpdate();
+			try
+			{
+				model.addSpotTo( source, FIRST_FRAME );
+				model.addSpotTo( target, FIRST_FRAME + 1 );
+				model.addEdge( source, target, 1. );
+			}
+			finally
+			{
+				model.endUpdate();
+			}
+
+			final DisplaySettings ds = DisplaySettings.defaultStyle().copy();
+			ds.setTrackDisplayMode( TrackDisplayMode.FULL );
+			ds.setZDrawingDepthLimited( false );
+			ds.setTrackColorBy( TrackMateObject.DEFAULT, FeatureUtils.USE_UNIFORM_COLOR_KEY );
+			ds.setTrackUniformColor( Color.GREEN );
+
+			final ImagePlus imp = new ImagePlus( "Track overlay test", new ByteProcessor( SIZE, SIZE ) );
+			overlay = new TrackOverlay( model, imp, ds );
+			model.addModelChangeListener( overlay::modelChanged );
+		}
+
+		/**
+		 * Paints the tracks in a square view and returns whether anything was
+		 * painted. The first call builds the edge index.
+		 */
+		private boolean painted( final int xcorner, final int ycorner, final int size )
+		{
+			final BufferedImage image = new BufferedImage( size, size, BufferedImage.TYPE_INT_RGB );
+			final Graphics2D g2d = image.createGraphics();
+			overlay.drawFrame( g2d, FIRST_FRAME, 0., xcorner, ycorner, 1., size, size );
+			g2d.dispose();
+			for ( int y = 0; y < size; y++ )
+				for ( int x = 0; x < size; x++ )
+					if ( ( image.getRGB( x, y ) & 0xffffff ) != 0 )
+						return true;
+			return false;
+		}
+	}
+}
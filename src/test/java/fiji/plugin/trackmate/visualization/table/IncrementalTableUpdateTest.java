@@ -0,0 +1,390 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.visualization.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.swing.JTable;
+import javax.swing.RowSorter.SortKey;
+import javax.swing.SortOrder;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.junit.Before;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.ModelChangeEvent;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.TrackModel;
+import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings;
+
+public class IncrementalTableUpdateTest
+{
+
+	private static final int N_FRAMES = 20;
+
+	private static final int N_SPOTS_PER_FRAME = 10;
+
+	private Model model;
+
+	private List< List< Spot > > spotsPerFrame;
+
+	private Random ran;
+
+	private TablePanel< Spot > allSpotTable;
+
+	private TablePanel< Spot > spotTable;
+
+	private TablePanel< DefaultWeightedEdge > edgeTable;
+
+	private TablePanel< Integer > trackTable;
+
+	@Before
+	public void setUp()
+	{
+		ran = new Random( 1l );
+		model = new Model();
+		spotsPerFrame = new ArrayList<>();
+		model.beginUpdate();
+		try
+		{
+			for ( int t = 0; t < N_FRAMES; t++ )
+			{
+				final List< Spot > spots = new ArrayList<>();
+				for ( int i = 0; i < N_SPOTS_PER_FRAME; i++ )
+				{
+					final Spot spot = model.addSpotTo( new Spot( 100. * ran.nextDouble(), 100. * ran.nextDouble(), 0., 1., 1. ), t );
+					// Link half of the spots in chains.
+					if ( t > 0 && i % 2 == 0 )
+						model.addEdge( spotsPerFrame.get( t - 1 ).get( i ), spot, 1. );
+					spots.add( spot );
+				}
+				spotsPerFrame.add( spots );
+			}
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+
+		final DisplaySettings ds = DisplaySettings.defaultStyle().copy();
+		allSpotTable = AllSpotsTableView.createSpotTable( model, ds );
+		spotTable = AllSpotsTableView.createSpotTable( model, ds );
+		edgeTable = createTable();
+		trackTable = createTable();
+		rebuild( spotTable, edgeTable, trackTable, allSpotTable );
+
+		// Sort the spot tables by X position.
+		final int column = new ArrayList<>( model.getFeatureModel().getSpotFeatures() ).indexOf( Spot.POSITION_X ) + 2;
+		final List< SortKey > sortKeys = Collections.singletonList( new SortKey( column, SortOrder.ASCENDING ) );
+		allSpotTable.getTable().getRowSorter().setSortKeys( sortKeys );
+		spotTable.getTable().getRowSorter().setSortKeys( sortKeys );
+
+		model.addModelChangeListener( event -> {
+			AllSpotsTableView.updateSpotTable( allSpotTable, model, event );
+			TrackTableView.updateTables( spotTable, edgeTable, trackTable, model, event );
+		} );
+	}
+
+	@Test
+	public void testRandomEdits()
+	{
+		for ( int i = 0; i < 200; i++ )
+		{
+			model.beginUpdate();
+			try
+			{
+				final int nEdits = 1 + ran.nextInt( 3 );
+				for ( int j = 0; j < nEdits; j++ )
+					randomEdit();
+			}
+			finally
+			{
+				model.endUpdate();
+			}
+			assertConsistent();
+		}
+	}
+
+	@Test
+	public void testLargeChange()
+	{
+		// Remove most of the spots at once: falls back on a full refresh.
+		model.beginUpdate();
+		try
+		{
+			for ( int t = 0; t < N_FRAMES - 2; t++ )
+				for ( final Spot spot : spotsPerFrame.get( t ) )
+					model.removeSpot( spot );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+		assertConsistent();
+	}
+
+	@Test
+	public void testTrackVisibility()
+	{
+		final Integer trackID = model.getTrackModel().unsortedTrackIDs( true ).iterator().next();
+		model.beginUpdate();
+		try
+		{
+			model.setTrackVisibility( trackID, false );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+		assertConsistent();
+
+		// Edit a spot of the hidden track.
+		final Spot spot = model.getTrackModel().trackSpots( trackID ).iterator().next();
+		model.beginUpdate();
+		try
+		{
+			spot.putFeature( Spot.POSITION_X, -1. );
+			model.updateFeatures( spot );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+		assertConsistent();
+		assertEquals( "Spot of hidden track should not be in the track spot table.", false, spotTable.contains( spot ) );
+		assertEquals( "Spot should be first in the table sorted by X.", spot, allSpotTable.getObjectForViewRow( 0 ) );
+	}
+
+	@Test
+	public void testSelectionKept()
+	{
+		// Select two spots, then move them to both ends of the table.
+		final Spot first = allSpotTable.getObjectForViewRow( 1 );
+		final Spot last = allSpotTable.getObjectForViewRow( allSpotTable.getTable().getRowCount() - 2 );
+		for ( final Spot spot : new Spot[] { first, last } )
+		{
+			final int row = allSpotTable.getViewRowForObject( spot );
+			allSpotTable.getTable().getSelectionModel().addSelectionInterval( row, row );
+		}
+
+		model.beginUpdate();
+		try
+		{
+			first.putFeature( Spot.POSITION_X, 1000. );
+			model.updateFeatures( first );
+			last.putFeature( Spot.POSITION_X, -1000. );
+			model.updateFeatures( last );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+		assertConsistent();
+
+		final JTable table = allSpotTable.getTable();
+		assertEquals( "Moved spot should be first in the table sorted by X.", last, allSpotTable.getObjectForViewRow( 0 ) );
+		assertEquals( "Moved spot should be last in the table sorted by X.", first, allSpotTable.getObjectForViewRow( table.getRowCount() - 1 ) );
+		assertEquals( "Unexpected number of selected rows.", 2, table.getSelectedRowCount() );
+		assertTrue( "Moved spot should still be selected.", table.isRowSelected( 0 ) );
+		assertTrue( "Moved spot should still be selected.", table.isRowSelected( table.getRowCount() - 1 ) );
+	}
+
+	@Test
+	public void testFeaturesComputedLater()
+	{
+		// Signal the spots as modified, but change their value afterwards.
+		final Spot first = allSpotTable.getObjectForViewRow( 0 );
+		final Spot last = allSpotTable.getObjectForViewRow( allSpotTable.getTable().getRowCount() - 1 );
+		final int row = allSpotTable.getViewRowForObject( first );
+		allSpotTable.getTable().getSelectionModel().addSelectionInterval( row, row );
+		model.beginUpdate();
+		try
+		{
+			model.updateFeatures( first );
+			model.updateFeatures( last );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+		first.putFeature( Spot.POSITION_X, 1000. );
+		last.putFeature( Spot.POSITION_X, -1000. );
+
+		model.notifyFeaturesComputed();
+		assertConsistent();
+		final JTable table = allSpotTable.getTable();
+		assertEquals( "Spot should be first in the table sorted by X.", last, allSpotTable.getObjectForViewRow( 0 ) );
+		assertEquals( "Spot should be last in the table sorted by X.", first, allSpotTable.getObjectForViewRow( table.getRowCount() - 1 ) );
+		assertEquals( "Unexpected number of selected rows.", 1, table.getSelectedRowCount() );
+		assertTrue( "Spot should still be selected.", table.isRowSelected( table.getRowCount() - 1 ) );
+	}
+
+	private void randomEdit()
+	{
+		final TrackModel trackModel = model.getTrackModel();
+		final int t = ran.nextInt( N_FRAMES );
+		final List< Spot > spots = spotsPerFrame.get( t );
+		switch ( ran.nextInt( 5 ) )
+		{
+		case 0:
+		{
+			// Add a spot, linked to the previous frame if possible.
+			final Spot spot = model.addSpotTo( new Spot( 100. * ran.nextDouble(), 100. * ran.nextDouble(), 0., 1., 1. ), t );
+			if ( t > 0 && !spotsPerFrame.get( t - 1 ).isEmpty() && ran.nextBoolean() )
+			{
+				final List< Spot > previous = spotsPerFrame.get( t - 1 );
+				model.addEdge( previous.get( ran.nextInt( previous.size() ) ), spot, 1. );
+			}
+			spots.add( spot );
+			break;
+		}
+		case 1:
+		{
+			// Remove a spot.
+			if ( spots.isEmpty() )
+				return;
+			model.removeSpot( spots.remove( ran.nextInt( spots.size() ) ) );
+			break;
+		}
+		case 2:
+		{
+			// Move a spot.
+			if ( spots.isEmpty() )
+				return;
+			final Spot spot = spots.get( ran.nextInt( spots.size() ) );
+			spot.putFeature( Spot.POSITION_X, 100. * ran.nextDouble() );
+			model.updateFeatures( spot );
+			break;
+		}
+		case 3:
+		{
+			// Link two spots.
+			if ( t == 0 || spots.isEmpty() || spotsPerFrame.get( t - 1 ).isEmpty() )
+				return;
+			final List< Spot > previous = spotsPerFrame.get( t - 1 );
+			final Spot source = previous.get( ran.nextInt( previous.size() ) );
+			final Spot target = spots.get( ran.nextInt( spots.size() ) );
+			if ( !trackModel.containsEdge( source, target ) )
+				model.addEdge( source, target, 1. );
+			break;
+		}
+		case 4:
+		{
+			// Unlink two spots.
+			if ( spots.isEmpty() )
+				return;
+			final Spot spot = spots.get( ran.nextInt( spots.size() ) );
+			final List< DefaultWeightedEdge > edges = new ArrayList<>( trackModel.edgesOf( spot ) );
+			if ( edges.isEmpty() )
+				return;
+			model.removeEdge( edges.get( ran.nextInt( edges.size() ) ) );
+			break;
+		}
+		}
+	}
+
+	/**
+	 * Compares the tables updated incrementally with tables rebuilt from
+	 * scratch.
+	 */
+	private void assertConsistent()
+	{
+		final DisplaySettings ds = DisplaySettings.defaultStyle().copy();
+		final TablePanel< Spot > refAllSpotTable = AllSpotsTableView.createSpotTable( model, ds );
+		final TablePanel< Spot > refSpotTable = AllSpotsTableView.createSpotTable( model, ds );
+		final TablePanel< DefaultWeightedEdge > refEdgeTable = createTable();
+		final TablePanel< Integer > refTrackTable = createTable();
+		rebuild( refSpotTable, refEdgeTable, refTrackTable, refAllSpotTable );
+
+		assertSameRows( refAllSpotTable, allSpotTable );
+		assertSameRows( refSpotTable, spotTable );
+		assertSameRows( refEdgeTable, edgeTable );
+		assertSameRows( refTrackTable, trackTable );
+
+		assertSortedByX( allSpotTable );
+		assertSortedByX( spotTable );
+	}
+
+	private static < O > void assertSameRows( final TablePanel< O > expected, final TablePanel< O > actual )
+	{
+		assertEquals( "Unexpected table content.", new HashSet<>( expected.getObjects() ), new HashSet<>( actual.getObjects() ) );
+		assertEquals( "Duplicate rows in the table.", expected.getObjects().size(), actual.getObjects().size() );
+
+		// View and model indices must agree.
+		final int nRows = actual.getTable().getRowCount();
+		assertEquals( "Unexpected number of rows in the view.", actual.getObjects().size(), nRows );
+		for ( int row = 0; row < nRows; row++ )
+		{
+			final O o = actual.getObjectForViewRow( row );
+			assertEquals( "Inconsistent row mapping.", row, actual.getViewRowForObject( o ) );
+		}
+	}
+
+	private static void assertSortedByX( final TablePanel< Spot > table )
+	{
+		double previous = Double.NEGATIVE_INFINITY;
+		for ( int row = 0; row < table.getTable().getRowCount(); row++ )
+		{
+			final double x = table.getObjectForViewRow( row ).getFeature( Spot.POSITION_X ).doubleValue();
+			assertTrue( "Rows are not sorted by X.", x >= previous );
+			previous = x;
+		}
+	}
+
+	private void rebuild(
+			final TablePanel< Spot > spotTable,
+			final TablePanel< DefaultWeightedEdge > edgeTable,
+			final TablePanel< Integer > trackTable,
+			final TablePanel< Spot > allSpotTable )
+	{
+		final ModelChangeEvent event = new ModelChangeEvent( this, ModelChangeEvent.TRACKS_COMPUTED );
+		TrackTableView.updateTables( spotTable, edgeTable, trackTable, model, event );
+		AllSpotsTableView.updateSpotTable( allSpotTable, model, event );
+	}
+
+	private static < O > TablePanel< O > createTable()
+	{
+		final Map< String, String > empty = new HashMap<>();
+		return new TablePanel<>(
+				Collections.emptyList(),
+				Collections.emptyList(),
+				( o, feature ) -> null,
+				empty,
+				empty,
+				empty,
+				new HashMap<>(),
+				empty,
+				() -> null,
+				o -> String.valueOf( o ),
+				null );
+	}
+}
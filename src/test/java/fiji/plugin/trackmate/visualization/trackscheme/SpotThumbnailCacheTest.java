@@ -0,0 +1,283 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.visualization.trackscheme;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.mxgraph.util.mxConstants;
+
+import fiji.plugin.trackmate.Logger;
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.util.TrackMateExecutor;
+import fiji.plugin.trackmate.util.TrackMateExecutor.StageMetrics;
+import fiji.plugin.trackmate.visualization.trackscheme.SpotThumbnailCache.ThumbnailRenderer;
+
+public class SpotThumbnailCacheTest
+{
+
+	private static final class CountingRenderer implements ThumbnailRenderer
+	{
+
+		private final AtomicInteger nRendered = new AtomicInteger();
+
+		@Override
+		public BufferedImage render( final Spot spot, final int channel )
+		{
+			nRendered.incrementAndGet();
+			return new BufferedImage( 4, 4, BufferedImage.TYPE_BYTE_GRAY );
+		}
+	}
+
+	@Test
+	public void testEviction()
+	{
+		final int capacity = 10;
+		final CountingRenderer renderer = new CountingRenderer();
+		final SpotThumbnailCache cache = new SpotThumbnailCache( renderer, () -> 0, capacity, 1 );
+
+		final List< String > keys = new ArrayList<>();
+		for ( int i = 0; i < 2 * capacity; i++ )
+			keys.add( cache.register( new Spot( i, 0., 0., 1., 1. ) ) );
+
+		for ( final String key : keys )
+			assertNotNull( cache.getNow( key ) );
+		assertEquals( 2 * capacity, renderer.nRendered.get() );
+		assertEquals( capacity, cache.size() );
+
+		// The most recent are still in the cache.
+		final BufferedImage last = cache.getNow( keys.get( keys.size() - 1 ) );
+		assertSame( last, cache.getNow( keys.get( keys.size() - 1 ) ) );
+		assertEquals( 2 * capacity, renderer.nRendered.get() );
+
+		// The oldest were evicted and must be rendered again.
+		assertNotNull( cache.getNow( keys.get( 0 ) ) );
+		assertEquals( 2 * capacity + 1, renderer.nRendered.get() );
+		assertEquals( capacity, cache.size() );
+
+		// Unknown keys are not rendered.
+		assertNull( cache.getNow( "thumbnail:-1" ) );
+		assertNull( cache.getNow( "data:image/base64," ) );
+	}
+
+	/**
+	 * Registering the spots of a large scheme renders nothing. Only the
+	 * thumbnails requested by painting cells are rendered, in the background.
+	 */
+	@Test
+	public void testLargeSchemeRendersVisibleOnly() throws InterruptedException
+	{
+		final int nSpots = 100_000;
+		final int nVisible = 200;
+		final CountingRenderer renderer = new CountingRenderer();
+		final SpotThumbnailCache cache = new SpotThumbnailCache( renderer, () -> 0, SpotThumbnailCache.DEFAULT_CAPACITY, 4 );
+		final CountDownLatch loaded = new CountDownLatch( nVisible );
+		cache.setOnLoaded( loaded::countDown );
+
+		final List< String > keys = new ArrayList<>( nSpots );
+		for ( int i = 0; i < nSpots; i++ )
+			keys.add( cache.register( new Spot( i, 0., 0., 1., 1. ) ) );
+		assertEquals( 0, renderer.nRendered.get() );
+
+		// Paint the visible cells: placeholders at first.
+		for ( int i = 0; i < nVisible; i++ )
+			assertNull( cache.get( keys.get( i ) ) );
+		assertTrue( "Thumbnails were not rendered in time.", loaded.await( 10, TimeUnit.SECONDS ) );
+
+		// Paint them again: they are now available.
+		for ( int i = 0; i < nVisible; i++ )
+			assertNotNull( cache.get( keys.get( i ) ) );
+		assertEquals( nVisible, renderer.nRendered.get() );
+		assertEquals( nVisible, cache.size() );
+	}
+
+	/**
+	 * Thumbnails are rendered by the executor current when the cache was
+	 * created, even if they are requested from another thread.
+	 */
+	@Test
+	public void testRendersWithCurrentExecutor() throws InterruptedException
+	{
+		final TrackMateExecutor executor = new TrackMateExecutor( 2 );
+		final TrackMateExecutor previous = TrackMateExecutor.bind( executor );
+		final SpotThumbnailCache cache;
+		try
+		{
+			cache = new SpotThumbnailCache( new CountingRenderer(), () -> 0, SpotThumbnailCache.DEFAULT_CAPACITY, 4 );
+		}
+		finally
+		{
+			TrackMateExecutor.bind( previous );
+		}
+
+		try
+		{
+			final CountDownLatch loaded = new CountDownLatch( 10 );
+			cache.setOnLoaded( loaded::countDown );
+			for ( int i = 0; i < 10; i++ )
+				assertNull( cache.get( cache.register( new Spot( i, 0., 0., 1., 1. ) ) ) );
+			assertTrue( "Thumbnails were not rendered in time.", loaded.await( 10, TimeUnit.SECONDS ) );
+
+			final StageMetrics metrics = executor.getMetrics().get( "TrackScheme thumbnails" );
+			assertNotNull( "Thumbnails must be rendered by the current executor.", metrics );
+			assertTrue( metrics.getCompletedTasks() > 0 );
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Registering the thumbnails of a TrackScheme graph with 10⁵ spots renders
+	 * nothing.
+	 */
+	@Test
+	public void testLargeGraphRendersNothing()
+	{
+		final int nTracks = 1000;
+		final int nFrames = 100;
+		final Model model = new Model();
+		model.beginUpdate();
+		try
+		{
+			for ( int t = 0; t < nTracks; t++ )
+			{
+				Spot previous = null;
+				for ( int frame = 0; frame < nFrames; frame++ )
+				{
+					final Spot spot = model.addSpotTo( new Spot( t, frame, 0., 1., 1. ), frame );
+					if ( null != previous )
+						model.addEdge( previous, spot, -1 );
+					previous = spot;
+				}
+			}
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+
+		final JGraphXAdapter graph = new JGraphXAdapter( model );
+		final CountingRenderer renderer = new CountingRenderer();
+		final SpotThumbnailCache cache = new SpotThumbnailCache( renderer, () -> 0, SpotThumbnailCache.DEFAULT_CAPACITY, 4 );
+		TrackScheme.registerThumbnails( graph, model.getTrackModel(), cache );
+
+		assertEquals( 0, renderer.nRendered.get() );
+		assertEquals( 0, cache.size() );
+		for ( final Spot spot : model.getSpots().iterable( true ) )
+		{
+			final String style = graph.getCellFor( spot ).getStyle();
+			assertTrue( style.contains( mxConstants.STYLE_IMAGE + "=" + SpotThumbnailCache.IMAGE_KEY_PREFIX + spot.ID() ) );
+		}
+	}
+
+	/**
+	 * Unregistered spots are not rendered, even if they were requested.
+	 */
+	@Test
+	public void testUnregisterDropsRequests() throws InterruptedException
+	{
+		final CountDownLatch started = new CountDownLatch( 1 );
+		final CountDownLatch release = new CountDownLatch( 1 );
+		final List< Integer > rendered = Collections.synchronizedList( new ArrayList<>() );
+		final ThumbnailRenderer renderer = ( spot, channel ) -> {
+			rendered.add( spot.ID() );
+			started.countDown();
+			try
+			{
+				release.await();
+			}
+			catch ( final InterruptedException e )
+			{
+				Thread.currentThread().interrupt();
+			}
+			return new BufferedImage( 4, 4, BufferedImage.TYPE_BYTE_GRAY );
+		};
+		final SpotThumbnailCache cache = new SpotThumbnailCache( renderer, () -> 0, 10, 1 );
+		final CountDownLatch loaded = new CountDownLatch( 1 );
+		cache.setOnLoaded( loaded::countDown );
+
+		final Spot a = new Spot( 0., 0., 0., 1., 1. );
+		final Spot b = new Spot( 1., 0., 0., 1., 1. );
+		final Spot c = new Spot( 2., 0., 0., 1., 1. );
+		final String ka = cache.register( a );
+		final String kb = cache.register( b );
+		final String kc = cache.register( c );
+
+		// a is being rendered, b waits behind it.
+		assertNull( cache.get( ka ) );
+		assertTrue( started.await( 10, TimeUnit.SECONDS ) );
+		assertNull( cache.get( kb ) );
+		assertEquals( 2, cache.getNRequested() );
+		cache.unregister( a );
+		cache.unregister( b );
+		assertEquals( 0, cache.getNRequested() );
+
+		// The thumbnail of a is dropped, and b is never rendered.
+		assertNull( cache.get( kc ) );
+		release.countDown();
+		assertTrue( "Thumbnail was not rendered in time.", loaded.await( 10, TimeUnit.SECONDS ) );
+		assertEquals( Arrays.asList( a.ID(), c.ID() ), rendered );
+		assertEquals( 1, cache.size() );
+		assertNotNull( cache.get( kc ) );
+	}
+
+	@Test
+	public void testRenderFailureIsLogged() throws InterruptedException
+	{
+		final SpotThumbnailCache cache = new SpotThumbnailCache( ( spot, channel ) -> {
+			throw new IllegalStateException( "No image." );
+		}, () -> 0, 10, 1 );
+		final CountDownLatch failed = new CountDownLatch( 1 );
+		final StringBuilder errors = new StringBuilder();
+		cache.setLogger( new Logger.StringBuilderLogger( errors )
+		{
+			@Override
+			public void error( final String message )
+			{
+				super.error( message );
+				failed.countDown();
+			}
+		} );
+
+		assertNull( cache.get( cache.register( new Spot( 0., 0., 0., 1., 1. ) ) ) );
+		assertTrue( "Failure was not reported in time.", failed.await( 10, TimeUnit.SECONDS ) );
+		assertTrue( errors.toString().contains( "No image." ) );
+		assertEquals( 0, cache.size() );
+	}
+}
@@ -0,0 +1,117 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.visualization.trackscheme;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.TrackModel;
+import fiji.plugin.trackmate.graph.GraphUtils;
+
+public class TrackSchemeGraphLayoutTest
+{
+
+	/** Length of the main branch of the lineage. */
+	private static final int DEPTH = 100_000;
+
+	/** Length of the side branches, including their first spot. */
+	private static final int BRANCH_LENGTH = 2;
+
+	/**
+	 * A lineage with a main branch 10⁵ frames deep, far beyond what a
+	 * recursive layout survives, and a side branch starting at each of its
+	 * spots. Small enough to run with the default heap.
+	 */
+	@Test
+	public void testDeepLineage()
+	{
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = new SimpleWeightedGraph<>( DefaultWeightedEdge.class );
+		Spot previous = null;
+		Spot root = null;
+		for ( int frame = 0; frame < DEPTH; frame++ )
+		{
+			final Spot spot = createSpot( graph, frame );
+			if ( null == previous )
+				root = spot;
+			else
+				graph.addEdge( previous, spot );
+
+			Spot branchPrevious = spot;
+			for ( int i = 1; i < BRANCH_LENGTH; i++ )
+			{
+				final Spot branchSpot = createSpot( graph, frame + i );
+				graph.addEdge( branchPrevious, branchSpot );
+				branchPrevious = branchSpot;
+			}
+			previous = spot;
+		}
+		final int nSpots = graph.vertexSet().size();
+		assertEquals( DEPTH * BRANCH_LENGTH, nSpots );
+
+		final TrackModel trackModel = new Model().getTrackModel();
+		final Map< Integer, Set< Spot > > trackSpots = new HashMap<>();
+		trackSpots.put( 0, new HashSet<>( graph.vertexSet() ) );
+		final Map< Integer, Set< DefaultWeightedEdge > > trackEdges = new HashMap<>();
+		trackEdges.put( 0, new HashSet<>( graph.edgeSet() ) );
+		final Map< Integer, Boolean > visibility = new HashMap<>( Collections.singletonMap( 0, true ) );
+		final Map< Integer, String > names = new HashMap<>( Collections.singletonMap( 0, "Track_0" ) );
+		trackModel.from( graph, trackSpots, trackEdges, visibility, names );
+
+		// One leaf per side branch.
+		final Map< Spot, Integer > widths = GraphUtils.cumulativeBranchWidth( trackModel );
+		assertEquals( DEPTH, widths.get( root ).intValue() );
+
+		final int[] columnWidths = new int[ 1 ];
+		final Integer[] columnTrackIDs = new Integer[ 1 ];
+		final Set< Long > positions = new HashSet<>( 2 * nSpots );
+		final int[] nPlaced = new int[ 1 ];
+		final int maxFrame = DEPTH + BRANCH_LENGTH - 2;
+		TrackSchemeGraphLayout.layoutTracks( trackModel, maxFrame, columnWidths, columnTrackIDs, ( spot, frame, column ) -> {
+			nPlaced[ 0 ]++;
+			assertTrue( "Two spots placed in the same cell.", positions.add( ( long ) frame * Integer.MAX_VALUE + column ) );
+		} );
+
+		assertEquals( nSpots, nPlaced[ 0 ] );
+		assertEquals( Integer.valueOf( 0 ), columnTrackIDs[ 0 ] );
+		assertTrue( columnWidths[ 0 ] >= DEPTH );
+	}
+
+	private static Spot createSpot( final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph, final int frame )
+	{
+		final Spot spot = new Spot( 0., 0., 0., 1., 1. );
+		spot.putFeature( Spot.FRAME, Double.valueOf( frame ) );
+		graph.addVertex( spot );
+		return spot;
+	}
+}
@@ -0,0 +1,271 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2021 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.visualization.trackscheme;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.ModelChangeEvent;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.TrackModel;
+
+public class TrackSchemeLayoutIndexTest
+{
+
+	private static final int N_FRAMES = 50;
+
+	@Test
+	public void testIndex()
+	{
+		final Model model = new Model();
+		final List< Spot > spots = createTracks( model );
+
+		final TrackSchemeLayoutIndex layout = TrackSchemeLayoutIndex.build( model );
+		assertEquals( spots.size(), layout.getNSpots() );
+		assertEquals( model.getTrackModel().edgeSet().size(), layout.getNEdges() );
+		assertEquals( N_FRAMES, layout.getNRows() );
+		assertEquals( 3, layout.getTrackIDs().length );
+
+		// Every spot can be found back, by reference and by position.
+		for ( final Spot spot : spots )
+		{
+			final int index = layout.indexOf( spot );
+			assertTrue( index >= 0 );
+			assertEquals( spot, layout.getSpot( index ) );
+			assertEquals( spot.getFeature( Spot.FRAME ).intValue(), layout.getRow( index ) );
+			assertEquals( index, layout.indexAt( layout.getRow( index ), layout.getColumn( index ) ) );
+		}
+		assertEquals( -1, layout.indexOf( new Spot( 0., 0., 0., 1., 1. ) ) );
+
+		// Window queries return exactly the spots in the window.
+		final int minRow = 20;
+		final int maxRow = 30;
+		final int minColumn = 2;
+		final int maxColumn = 4;
+		final Set< Integer > inWindow = new HashSet<>();
+		layout.forEachSpot( minRow, maxRow, minColumn, maxColumn, i -> assertTrue( inWindow.add( i ) ) );
+		int expected = 0;
+		for ( int i = 0; i < layout.getNSpots(); i++ )
+		{
+			final int r = layout.getRow( i );
+			final int c = layout.getColumn( i );
+			if ( r >= minRow && r <= maxRow && c >= minColumn && c <= maxColumn )
+			{
+				expected++;
+				assertTrue( inWindow.contains( i ) );
+			}
+		}
+		assertEquals( expected, inWindow.size() );
+
+		// Edge queries return at least the edges with one end in the window.
+		final Set< DefaultWeightedEdge > edges = new HashSet<>();
+		layout.forEachEdge( minRow, maxRow, minColumn, maxColumn, e -> edges.add( layout.getEdge( e ) ) );
+		for ( int e = 0; e < layout.getNEdges(); e++ )
+		{
+			final int s = layout.getEdgeSource( e );
+			if ( inWindow.contains( s ) || inWindow.contains( layout.getEdgeTarget( e ) ) )
+				assertTrue( edges.contains( layout.getEdge( e ) ) );
+		}
+	}
+
+	@Test
+	public void testSameAsGraphLayout()
+	{
+		final Model model = new Model();
+		createTracks( model );
+		final TrackModel trackModel = model.getTrackModel();
+
+		final int nTracks = trackModel.nTracks( true );
+		final int[] widths = new int[ nTracks ];
+		final Integer[] trackIDs = new Integer[ nTracks ];
+		final Map< Spot, Integer > expected = new HashMap<>();
+		TrackSchemeGraphLayout.layoutTracks( trackModel, N_FRAMES - 1, widths, trackIDs,
+				( spot, frame, column ) -> expected.put( spot, column ) );
+
+		final TrackSchemeLayoutIndex layout = TrackSchemeLayoutIndex.build( model );
+		assertArrayEquals( trackIDs, layout.getTrackIDs() );
+		assertArrayEquals( widths, layout.getTrackColumnWidths() );
+		for ( final Spot spot : expected.keySet() )
+			assertEquals( expected.get( spot ).intValue(), layout.getColumn( layout.indexOf( spot ) ) );
+	}
+
+	@Test
+	public void testLonelySpots()
+	{
+		final Model model = new Model();
+		createTracks( model );
+		final int nColumns = TrackSchemeLayoutIndex.build( model ).getNColumns();
+
+		final Spot a = model.addSpotTo( new Spot( 10., 10., 0., 1., 1. ), 5 );
+		final Spot b = model.addSpotTo( new Spot( 11., 10., 0., 1., 1. ), 5 );
+		final Spot c = model.addSpotTo( new Spot( 12., 10., 0., 1., 1. ), 8 );
+
+		// In the column after the tracks, side by side in the same frame.
+		final TrackSchemeLayoutIndex layout = TrackSchemeLayoutIndex.build( model );
+		assertEquals( nColumns, layout.getColumn( layout.indexOf( a ) ) );
+		assertEquals( nColumns + 1, layout.getColumn( layout.indexOf( b ) ) );
+		assertEquals( nColumns, layout.getColumn( layout.indexOf( c ) ) );
+		assertEquals( 5, layout.getRow( layout.indexOf( a ) ) );
+		assertEquals( nColumns + 2, layout.getNColumns() );
+	}
+
+	@Test
+	public void testUpdate()
+	{
+		final Model model = new Model();
+		final List< Spot > spots = createTracks( model );
+		final int perTrack = spots.size() / 3;
+		final TrackModel trackModel = model.getTrackModel();
+		final List< ModelChangeEvent > events = new ArrayList<>();
+		model.addModelChangeListener( events::add );
+		final TrackSchemeLayoutIndex[] layout = new TrackSchemeLayoutIndex[] { TrackSchemeLayoutIndex.build( model ) };
+
+		// Each modification is checked against a layout built from scratch.
+		final Consumer< Runnable > edit = modification -> {
+			model.beginUpdate();
+			try
+			{
+				modification.run();
+			}
+			finally
+			{
+				model.endUpdate();
+			}
+			for ( final ModelChangeEvent event : events )
+			{
+				if ( event.getEventID() == ModelChangeEvent.MODEL_MODIFIED )
+					layout[ 0 ] = layout[ 0 ].update( model, VirtualTrackScheme.changedTrackIDs( trackModel, event ), event.getSpots() );
+				else
+					layout[ 0 ] = layout[ 0 ].update( model, Collections.emptyList(), Collections.emptyList() );
+			}
+			events.clear();
+			assertSameLayout( TrackSchemeLayoutIndex.build( model ), layout[ 0 ] );
+		};
+
+		// A lonely spot.
+		final Spot lonely = new Spot( 10., 10., 0., 1., 1. );
+		edit.accept( () -> model.addSpotTo( lonely, N_FRAMES ) );
+		assertEquals( N_FRAMES + 1, layout[ 0 ].getNRows() );
+
+		// Linked to the first track.
+		edit.accept( () -> model.addEdge( spots.get( 20 ), lonely, -1 ) );
+
+		// A track split in two.
+		edit.accept( () -> model.removeSpot( spots.get( 5 ) ) );
+
+		// A track merged into another.
+		edit.accept( () -> {
+			model.addEdge( spots.get( 2 * perTrack + 20 ), model.addSpotTo( new Spot( 20., 10., 0., 1., 1. ), 22 ), -1 );
+			model.addEdge( spots.get( 2 * perTrack ), spots.get( perTrack + 1 ), -1 );
+		} );
+
+		// A track reduced to one spot, which becomes lonely.
+		edit.accept( () -> model.removeSpot( spots.get( 1 ) ) );
+		assertTrue( layout[ 0 ].indexOf( spots.get( 0 ) ) >= 0 );
+
+		// A hidden track.
+		edit.accept( () -> model.setTrackVisibility( trackModel.trackIDs( true ).iterator().next(), false ) );
+	}
+
+	private static void assertSameLayout( final TrackSchemeLayoutIndex expected, final TrackSchemeLayoutIndex actual )
+	{
+		assertArrayEquals( expected.getTrackIDs(), actual.getTrackIDs() );
+		assertArrayEquals( expected.getTrackColumnWidths(), actual.getTrackColumnWidths() );
+		assertEquals( expected.getNRows(), actual.getNRows() );
+		assertEquals( expected.getNColumns(), actual.getNColumns() );
+		assertEquals( expected.getNSpots(), actual.getNSpots() );
+		for ( int i = 0; i < expected.getNSpots(); i++ )
+		{
+			assertSame( expected.getSpot( i ), actual.getSpot( i ) );
+			assertEquals( expected.getRow( i ), actual.getRow( i ) );
+			assertEquals( expected.getColumn( i ), actual.getColumn( i ) );
+		}
+		assertEquals( expected.getNEdges(), actual.getNEdges() );
+		final Map< DefaultWeightedEdge, Integer > edges = new HashMap<>();
+		for ( int e = 0; e < expected.getNEdges(); e++ )
+			edges.put( expected.getEdge( e ), e );
+		for ( int e = 0; e < actual.getNEdges(); e++ )
+		{
+			final Integer k = edges.get( actual.getEdge( e ) );
+			assertNotNull( k );
+			assertEquals( expected.getEdgeSource( k ), actual.getEdgeSource( e ) );
+			assertEquals( expected.getEdgeTarget( k ), actual.getEdgeTarget( e ) );
+		}
+	}
+
+	/**
+	 * Adds three tracks to the model and returns their spots, track after
+	 * track. Before the division, the spot of frame <code>f</code> is the
+	 * <code>f</code>-th spot of its track.
+	 */
+	private static List< Spot > createTracks( final Model model )
+	{
+		final List< Spot > spots = new ArrayList<>();
+		model.beginUpdate();
+		try
+		{
+			// Three tracks, each dividing once at mid-course.
+			for ( int t = 0; t < 3; t++ )
+			{
+				Spot previous = null;
+				Spot daughter = null;
+				for ( int frame = 0; frame < N_FRAMES; frame++ )
+				{
+					final Spot spot = model.addSpotTo( new Spot( t, frame, 0., 1., 1. ), frame );
+					spots.add( spot );
+					if ( null != previous )
+						model.addEdge( previous, spot, -1 );
+					if ( frame > N_FRAMES / 2 )
+					{
+						final Spot other = model.addSpotTo( new Spot( t + 0.5, frame, 0., 1., 1. ), frame );
+						spots.add( other );
+						model.addEdge( ( null == daughter ) ? previous : daughter, other, -1 );
+						daughter = other;
+					}
+					previous = spot;
+				}
+			}
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+
+		return spots;
+	}
+}